@@ -5,13 +5,19 @@ import static bio.terra.cbas.common.JavaMethodUtil.loggableMethodName;
 import bio.terra.cbas.models.CbasRunStatus;
 import io.micrometer.core.instrument.Counter;
 import io.micrometer.core.instrument.DistributionSummary;
+import io.micrometer.core.instrument.Gauge;
 import io.micrometer.core.instrument.ImmutableTag;
 import io.micrometer.core.instrument.MeterRegistry;
 import io.micrometer.core.instrument.Tag;
 import io.micrometer.core.instrument.Timer;
+import java.util.Collection;
 import java.util.Collections;
 import java.util.List;
+import java.util.Map;
+import java.util.Set;
 import java.util.UUID;
+import java.util.concurrent.ConcurrentHashMap;
+import okhttp3.ConnectionPool;
 import org.springframework.stereotype.Component;
 
 @Component
@@ -21,6 +27,12 @@ public class MicrometerMetrics {
 
   private static final String STATUS_TAG = "status";
   private static final String RESPONSE_CODE_TAG = "response_code";
+  private static final String CLIENT_TAG = "client";
+
+  // Live submission pipeline queues per stage. Each stage gauge reports the total number of items
+  // waiting in the queues of all the run sets currently being submitted.
+  private final Map<String, Set<Collection<?>>> submissionPipelineQueues =
+      new ConcurrentHashMap<>();
 
   public MicrometerMetrics(MeterRegistry meterRegistry) {
     this.meterRegistry = meterRegistry;
@@ -40,6 +52,11 @@ public class MicrometerMetrics {
         1);
   }
 
+  public void recordStaleConnectionRetry(String clientName) {
+    recordCounterMetric(
+        "http_stale_connection_retry", List.of(new ImmutableTag(CLIENT_TAG, clientName)), 1);
+  }
+
   public void increaseEventCounter(String metricName, long count) {
     recordCounterMetric(metricName, Collections.emptyList(), count);
   }
@@ -57,6 +74,43 @@ public class MicrometerMetrics {
         runsCount);
   }
 
+  /* ******** Gauge metrics ******** */
+
+  public void registerSubmissionPipelineQueue(String stageName, Collection<?> queue) {
+    submissionPipelineQueues
+        .computeIfAbsent(
+            stageName,
+            stage -> {
+              Set<Collection<?>> queues = ConcurrentHashMap.newKeySet();
+              Gauge.builder(
+                      "submission_pipeline_queue_depth",
+                      queues,
+                      qs -> qs.stream().mapToInt(Collection::size).sum())
+                  .tag("stage", stage)
+                  .register(meterRegistry);
+              return queues;
+            })
+        .add(queue);
+  }
+
+  public void unregisterSubmissionPipelineQueue(String stageName, Collection<?> queue) {
+    Set<Collection<?>> queues = submissionPipelineQueues.get(stageName);
+    if (queues != null) {
+      queues.remove(queue);
+    }
+  }
+
+  public void registerConnectionPool(String clientName, ConnectionPool connectionPool) {
+    Gauge.builder(
+            "http_connection_pool_connections", connectionPool, ConnectionPool::connectionCount)
+        .tags(CLIENT_TAG, clientName, "state", "open")
+        .register(meterRegistry);
+    Gauge.builder(
+            "http_connection_pool_connections", connectionPool, ConnectionPool::idleConnectionCount)
+        .tags(CLIENT_TAG, clientName, "state", "idle")
+        .register(meterRegistry);
+  }
+
   /* ******** Timer metrics ******** */
 
   public void recordPostMethodHandlerCompletion(
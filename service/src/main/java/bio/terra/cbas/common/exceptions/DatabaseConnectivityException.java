@@ -22,5 +22,11 @@ public class DatabaseConnectivityException extends Exception {
           "Failed to create new Run with ID %s for WDS record %s in RunSet %s."
               .formatted(runId, recordId, runSetId));
     }
+
+    public RunCreationException(UUID runSetId, int expectedRuns, int createdRuns) {
+      super(
+          "Failed to create new Runs in RunSet %s. Expected %s Runs but created %s."
+              .formatted(runSetId, expectedRuns, createdRuns));
+    }
   }
 }
@@ -0,0 +1,16 @@
+package bio.terra.cbas.common.exceptions;
+
+import bio.terra.common.exception.ErrorReportException;
+import java.util.ArrayList;
+import org.springframework.http.HttpStatus;
+
+public class InvalidPageCursorException extends ErrorReportException {
+
+  public InvalidPageCursorException(String cursor) {
+    super(
+        "Invalid page cursor '%s'. Use the next_page value of a previous response."
+            .formatted(cursor),
+        new ArrayList<>(),
+        HttpStatus.BAD_REQUEST);
+  }
+}
@@ -0,0 +1,16 @@
+package bio.terra.cbas.common.exceptions;
+
+import bio.terra.common.exception.ErrorReportException;
+import java.util.ArrayList;
+import org.springframework.http.HttpStatus;
+
+public class InvalidStatusEventIdException extends ErrorReportException {
+
+  public InvalidStatusEventIdException(String lastEventId) {
+    super(
+        "Invalid event ID '%s'. Use the ID of an event received from the stream."
+            .formatted(lastEventId),
+        new ArrayList<>(),
+        HttpStatus.BAD_REQUEST);
+  }
+}
@@ -0,0 +1,12 @@
+package bio.terra.cbas.common.exceptions;
+
+import bio.terra.common.exception.ErrorReportException;
+import java.util.ArrayList;
+import org.springframework.http.HttpStatus;
+
+public class RunSetAbortNotFoundException extends ErrorReportException {
+
+  public RunSetAbortNotFoundException(String message) {
+    super(message, new ArrayList<>(), HttpStatus.NOT_FOUND);
+  }
+}
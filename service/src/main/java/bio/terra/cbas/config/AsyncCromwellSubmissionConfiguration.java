@@ -0,0 +1,39 @@
+package bio.terra.cbas.config;
+
+import java.util.concurrent.ThreadPoolExecutor;
+import org.springframework.boot.context.properties.ConfigurationProperties;
+import org.springframework.context.annotation.Bean;
+import org.springframework.scheduling.concurrent.ThreadPoolTaskExecutor;
+
+@ConfigurationProperties(prefix = "cbas.async.cromwell-submission")
+public class AsyncCromwellSubmissionConfiguration {
+  private final int coreThreadPoolSize;
+  private final int maxThreadPoolSize;
+  private final int queueCapacity;
+  private final int maxBatchesInFlight;
+
+  public AsyncCromwellSubmissionConfiguration(
+      int coreThreadPoolSize, int maxThreadPoolSize, int queueCapacity, int maxBatchesInFlight) {
+    this.coreThreadPoolSize = coreThreadPoolSize;
+    this.maxThreadPoolSize = maxThreadPoolSize;
+    this.queueCapacity = queueCapacity;
+    this.maxBatchesInFlight = maxBatchesInFlight;
+  }
+
+  /** Maximum number of batches of a single run set that are being submitted at the same time. */
+  public int getMaxBatchesInFlight() {
+    return Math.max(1, maxBatchesInFlight);
+  }
+
+  @Bean("cromwellSubmissionExecutor")
+  public ThreadPoolTaskExecutor getCromwellSubmissionExecutor() {
+    ThreadPoolTaskExecutor executor = new ThreadPoolTaskExecutor();
+    executor.setCorePoolSize(coreThreadPoolSize);
+    executor.setMaxPoolSize(maxThreadPoolSize);
+    executor.setQueueCapacity(queueCapacity);
+    executor.setThreadNamePrefix("CromwellSubmissionExecutor-");
+    executor.setRejectedExecutionHandler(new ThreadPoolExecutor.CallerRunsPolicy());
+    executor.initialize();
+    return executor;
+  }
+}
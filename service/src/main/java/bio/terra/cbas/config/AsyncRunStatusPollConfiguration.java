@@ -0,0 +1,37 @@
+package bio.terra.cbas.config;
+
+import java.util.concurrent.ThreadPoolExecutor;
+import org.springframework.boot.context.properties.ConfigurationProperties;
+import org.springframework.context.annotation.Bean;
+import org.springframework.scheduling.concurrent.ThreadPoolTaskExecutor;
+
+@ConfigurationProperties(prefix = "cbas.async.run-status-poll")
+public class AsyncRunStatusPollConfiguration {
+  private final int concurrency;
+  private final int queueCapacity;
+
+  public AsyncRunStatusPollConfiguration(int concurrency, int queueCapacity) {
+    this.concurrency = concurrency;
+    this.queueCapacity = queueCapacity;
+  }
+
+  /** Maximum number of batches of runs that are being polled at the same time. */
+  public int getConcurrency() {
+    return Math.max(1, concurrency);
+  }
+
+  // Shared by all the polls running at the same time, so it also bounds the number of queries to
+  // Cromwell across API requests. Each poll has at most `concurrency` batches in the pool. Once
+  // the queue is full, a poll polls its next batch itself, which holds back its further batches.
+  @Bean("runStatusPollExecutor")
+  public ThreadPoolTaskExecutor getRunStatusPollExecutor() {
+    ThreadPoolTaskExecutor executor = new ThreadPoolTaskExecutor();
+    executor.setCorePoolSize(getConcurrency());
+    executor.setMaxPoolSize(getConcurrency());
+    executor.setQueueCapacity(queueCapacity);
+    executor.setThreadNamePrefix("RunStatusPollExecutor-");
+    executor.setRejectedExecutionHandler(new ThreadPoolExecutor.CallerRunsPolicy());
+    executor.initialize();
+    return executor;
+  }
+}
@@ -7,12 +7,16 @@ import org.springframework.context.annotation.Configuration;
 @ConfigurationProperties(prefix = "cbas.cbas-api")
 public class CbasApiConfiguration {
   private int runSetsMaximumRecordIds;
+  private int largeRunSetsMaximumRecordIds;
+  private int largeRunSetsChunkSize;
   private int maxWorkflowInputs;
   private int maxWorkflowOutputs;
   private int maxSmartPollRunUpdateSeconds;
   private int maxSmartPollRunSetUpdateSeconds;
   private int minSecondsBetweenRunStatusPolls;
+  private int runStatusPollBatchSize;
   private int maxWorkflowsInBatch;
+  private boolean streamInputsJson;
 
   public void setRunSetsMaximumRecordIds(int runSetsMaximumRecordIds) {
     this.runSetsMaximumRecordIds = runSetsMaximumRecordIds;
@@ -22,6 +26,22 @@ public class CbasApiConfiguration {
     return this.runSetsMaximumRecordIds;
   }
 
+  public int getLargeRunSetsMaximumRecordIds() {
+    return largeRunSetsMaximumRecordIds;
+  }
+
+  public void setLargeRunSetsMaximumRecordIds(int largeRunSetsMaximumRecordIds) {
+    this.largeRunSetsMaximumRecordIds = largeRunSetsMaximumRecordIds;
+  }
+
+  public int getLargeRunSetsChunkSize() {
+    return largeRunSetsChunkSize;
+  }
+
+  public void setLargeRunSetsChunkSize(int largeRunSetsChunkSize) {
+    this.largeRunSetsChunkSize = largeRunSetsChunkSize;
+  }
+
   public void setMaxWorkflowInputs(int maxWorkflowInputs) {
     this.maxWorkflowInputs = maxWorkflowInputs;
   }
@@ -62,6 +82,14 @@ public class CbasApiConfiguration {
     this.minSecondsBetweenRunStatusPolls = minSecondsBetweenRunStatusPolls;
   }
 
+  public int getRunStatusPollBatchSize() {
+    return runStatusPollBatchSize;
+  }
+
+  public void setRunStatusPollBatchSize(int runStatusPollBatchSize) {
+    this.runStatusPollBatchSize = runStatusPollBatchSize;
+  }
+
   public int getMaxWorkflowsInBatch() {
     return maxWorkflowsInBatch;
   }
@@ -69,4 +97,12 @@ public class CbasApiConfiguration {
   public void setMaxWorkflowsInBatch(int maxWorkflowsInBatch) {
     this.maxWorkflowsInBatch = maxWorkflowsInBatch;
   }
+
+  public boolean isStreamInputsJson() {
+    return streamInputsJson;
+  }
+
+  public void setStreamInputsJson(boolean streamInputsJson) {
+    this.streamInputsJson = streamInputsJson;
+  }
 }
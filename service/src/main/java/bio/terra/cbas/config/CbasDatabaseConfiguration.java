@@ -1,5 +1,6 @@
 package bio.terra.cbas.config;
 
+import javax.sql.DataSource;
 import org.springframework.boot.context.properties.ConfigurationProperties;
 import org.springframework.context.annotation.Bean;
 import org.springframework.context.annotation.Configuration;
@@ -13,9 +14,11 @@ import org.springframework.transaction.annotation.EnableTransactionManagement;
 public class CbasDatabaseConfiguration extends BaseDatabaseConfiguration {
 
   // This bean plus the @EnableTransactionManagement annotation above enables the use of the
-  // @Transaction annotation to control the transaction properties of the data source.
+  // @Transaction annotation to control the transaction properties of the data source. It manages
+  // the primary data source, which the DAOs' NamedParameterJdbcTemplate uses, so that their
+  // statements take part in the transaction rather than each committing on its own.
   @Bean("transactionManager")
-  public PlatformTransactionManager getTransactionManager() {
-    return new JdbcTransactionManager(getDataSource());
+  public PlatformTransactionManager getTransactionManager(DataSource dataSource) {
+    return new JdbcTransactionManager(dataSource);
   }
 }
@@ -0,0 +1,48 @@
+package bio.terra.cbas.config;
+
+import org.springframework.boot.context.properties.ConfigurationProperties;
+
+@ConfigurationProperties(prefix = "cbas.connection-pool")
+public class ConnectionPoolConfiguration {
+  private final boolean enabled;
+  private final int maxIdleConnections;
+  private final long keepAliveSeconds;
+  private final int maxStaleConnectionRetries;
+
+  public ConnectionPoolConfiguration(
+      boolean enabled,
+      int maxIdleConnections,
+      long keepAliveSeconds,
+      int maxStaleConnectionRetries) {
+    this.enabled = enabled;
+    this.maxIdleConnections = maxIdleConnections;
+    this.keepAliveSeconds = keepAliveSeconds;
+    this.maxStaleConnectionRetries = maxStaleConnectionRetries;
+  }
+
+  /**
+   * Whether connections to Cromwell and WDS are kept open and reused, instead of being closed after
+   * each request.
+   */
+  public boolean isEnabled() {
+    return enabled;
+  }
+
+  /** Number of idle connections kept open per client. */
+  public int getMaxIdleConnections() {
+    return Math.max(1, maxIdleConnections);
+  }
+
+  /**
+   * How long an idle connection is kept open. Should be shorter than the idle timeout of the Azure
+   * Relay, which closes idle connections without notice.
+   */
+  public long getKeepAliveSeconds() {
+    return keepAliveSeconds;
+  }
+
+  /** Number of times a request that is safe to repeat is retried when its connection is reset. */
+  public int getMaxStaleConnectionRetries() {
+    return Math.max(0, maxStaleConnectionRetries);
+  }
+}
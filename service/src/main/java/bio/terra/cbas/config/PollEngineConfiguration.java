@@ -0,0 +1,53 @@
+package bio.terra.cbas.config;
+
+import org.springframework.boot.context.properties.ConfigurationProperties;
+
+@ConfigurationProperties(prefix = "cbas.scheduler.poll-engine")
+public class PollEngineConfiguration {
+  private final boolean enabled;
+  private final long pollIntervalMillis;
+  private final int maxRunsPerSecond;
+  private final int runSetsPerPoll;
+  private final int staleAfterSeconds;
+
+  public PollEngineConfiguration(
+      boolean enabled,
+      long pollIntervalMillis,
+      int maxRunsPerSecond,
+      int runSetsPerPoll,
+      int staleAfterSeconds) {
+    this.enabled = enabled;
+    this.pollIntervalMillis = pollIntervalMillis;
+    this.maxRunsPerSecond = maxRunsPerSecond;
+    this.runSetsPerPoll = runSetsPerPoll;
+    this.staleAfterSeconds = staleAfterSeconds;
+  }
+
+  public boolean isEnabled() {
+    return enabled;
+  }
+
+  public long getPollIntervalMillis() {
+    return pollIntervalMillis;
+  }
+
+  /** Maximum number of runs polled from the engine per second, on average. */
+  public int getMaxRunsPerSecond() {
+    return maxRunsPerSecond;
+  }
+
+  /** Number of runs polled every poll interval to stay within {@link #getMaxRunsPerSecond()}. */
+  public int getRunsPerPoll() {
+    return (int) Math.max(1, maxRunsPerSecond * pollIntervalMillis / 1000);
+  }
+
+  /** Maximum number of run sets whose status is refreshed every poll interval. */
+  public int getRunSetsPerPoll() {
+    return Math.max(1, runSetsPerPoll);
+  }
+
+  /** How long after it was last polled a non-terminal run or run set is no longer up to date. */
+  public int getStaleAfterSeconds() {
+    return staleAfterSeconds;
+  }
+}
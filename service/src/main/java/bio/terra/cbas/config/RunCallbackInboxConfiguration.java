@@ -0,0 +1,79 @@
+package bio.terra.cbas.config;
+
+import org.springframework.boot.context.properties.ConfigurationProperties;
+import org.springframework.context.annotation.Bean;
+import org.springframework.scheduling.concurrent.ThreadPoolTaskExecutor;
+
+@ConfigurationProperties(prefix = "cbas.async.run-callback-inbox")
+public class RunCallbackInboxConfiguration {
+  private final boolean enabled;
+  private final int workers;
+  private final long pollIntervalMillis;
+  private final int batchSize;
+  private final int leaseSeconds;
+  private final int retryDelaySeconds;
+  private final int maxAttempts;
+
+  public RunCallbackInboxConfiguration(
+      boolean enabled,
+      int workers,
+      long pollIntervalMillis,
+      int batchSize,
+      int leaseSeconds,
+      int retryDelaySeconds,
+      int maxAttempts) {
+    this.enabled = enabled;
+    this.workers = workers;
+    this.pollIntervalMillis = pollIntervalMillis;
+    this.batchSize = batchSize;
+    this.leaseSeconds = leaseSeconds;
+    this.retryDelaySeconds = retryDelaySeconds;
+    this.maxAttempts = maxAttempts;
+  }
+
+  public boolean isEnabled() {
+    return enabled;
+  }
+
+  /** Number of batches of callbacks this instance processes at the same time. */
+  public int getWorkers() {
+    return Math.max(1, workers);
+  }
+
+  /** How often idle workers claim stored callbacks. */
+  public long getPollIntervalMillis() {
+    return pollIntervalMillis;
+  }
+
+  /** Maximum number of callbacks a worker claims and processes together. */
+  public int getBatchSize() {
+    return Math.max(1, batchSize);
+  }
+
+  /** How long a worker has to process a batch before its callbacks can be claimed again. */
+  public int getLeaseSeconds() {
+    return leaseSeconds;
+  }
+
+  /** How long a callback that failed to be processed waits before it is claimed again. */
+  public int getRetryDelaySeconds() {
+    return retryDelaySeconds;
+  }
+
+  /** Number of times a callback is claimed before it is given up on. */
+  public int getMaxAttempts() {
+    return maxAttempts;
+  }
+
+  // Workers only claim a batch when one of them is idle, as for the submission queue.
+  @Bean("runCallbackInboxExecutor")
+  public ThreadPoolTaskExecutor getRunCallbackInboxExecutor() {
+    ThreadPoolTaskExecutor executor = new ThreadPoolTaskExecutor();
+    executor.setCorePoolSize(getWorkers());
+    executor.setMaxPoolSize(getWorkers());
+    executor.setQueueCapacity(getWorkers());
+    executor.setThreadNamePrefix("RunCallbackInboxWorker-");
+    executor.initialize();
+    return executor;
+  }
+}
@@ -0,0 +1,49 @@
+package bio.terra.cbas.config;
+
+import org.springframework.boot.context.properties.ConfigurationProperties;
+import org.springframework.context.annotation.Bean;
+import org.springframework.scheduling.concurrent.ThreadPoolTaskExecutor;
+
+@ConfigurationProperties(prefix = "cbas.async.run-set-abort")
+public class RunSetAbortConfiguration {
+  private final boolean enabled;
+  private final int maxAbortRequestsInFlight;
+  private final int staleAfterSeconds;
+
+  public RunSetAbortConfiguration(
+      boolean enabled, int maxAbortRequestsInFlight, int staleAfterSeconds) {
+    this.enabled = enabled;
+    this.maxAbortRequestsInFlight = maxAbortRequestsInFlight;
+    this.staleAfterSeconds = staleAfterSeconds;
+  }
+
+  /** Whether the abort requests of a run set are sent after POST /run_sets/abort responds. */
+  public boolean isEnabled() {
+    return enabled;
+  }
+
+  /** Number of abort requests this instance sends to Cromwell at the same time. */
+  public int getMaxAbortRequestsInFlight() {
+    return Math.max(1, maxAbortRequestsInFlight);
+  }
+
+  /**
+   * How long an abort can go without progress before the run set can be aborted again, for aborts
+   * left behind by an instance that went away.
+   */
+  public int getStaleAfterSeconds() {
+    return staleAfterSeconds;
+  }
+
+  // Shared by all the run sets being aborted, so that aborting many runs at once does not flood
+  // Cromwell with requests.
+  @Bean("runSetAbortExecutor")
+  public ThreadPoolTaskExecutor getRunSetAbortExecutor() {
+    ThreadPoolTaskExecutor executor = new ThreadPoolTaskExecutor();
+    executor.setCorePoolSize(getMaxAbortRequestsInFlight());
+    executor.setMaxPoolSize(getMaxAbortRequestsInFlight());
+    executor.setThreadNamePrefix("RunSetAbort-");
+    executor.initialize();
+    return executor;
+  }
+}
@@ -0,0 +1,17 @@
+package bio.terra.cbas.config;
+
+import org.springframework.boot.context.properties.ConfigurationProperties;
+
+@ConfigurationProperties(prefix = "cbas.scheduler.status-counts-check")
+public class StatusCountsCheckConfiguration {
+  private final long intervalSeconds;
+
+  public StatusCountsCheckConfiguration(long intervalSeconds) {
+    this.intervalSeconds = intervalSeconds;
+  }
+
+  /** How often the run status counters of run sets are compared with the statuses of their runs. */
+  public long getIntervalSeconds() {
+    return intervalSeconds;
+  }
+}
@@ -0,0 +1,73 @@
+package bio.terra.cbas.config;
+
+import org.springframework.boot.context.properties.ConfigurationProperties;
+
+@ConfigurationProperties(prefix = "cbas.scheduler.status-events")
+public class StatusEventsConfiguration {
+  private final long pollIntervalMillis;
+  private final int eventsPerPoll;
+  private final int heartbeatIntervalSeconds;
+  private final int streamTimeoutSeconds;
+  private final int retentionHours;
+  private final int sendThreads;
+  private final int sendTimeoutSeconds;
+  private final int maxLagSeconds;
+
+  public StatusEventsConfiguration(
+      long pollIntervalMillis,
+      int eventsPerPoll,
+      int heartbeatIntervalSeconds,
+      int streamTimeoutSeconds,
+      int retentionHours,
+      int sendThreads,
+      int sendTimeoutSeconds,
+      int maxLagSeconds) {
+    this.pollIntervalMillis = pollIntervalMillis;
+    this.eventsPerPoll = eventsPerPoll;
+    this.heartbeatIntervalSeconds = heartbeatIntervalSeconds;
+    this.streamTimeoutSeconds = streamTimeoutSeconds;
+    this.retentionHours = retentionHours;
+    this.sendThreads = sendThreads;
+    this.sendTimeoutSeconds = sendTimeoutSeconds;
+    this.maxLagSeconds = maxLagSeconds;
+  }
+
+  public long getPollIntervalMillis() {
+    return pollIntervalMillis;
+  }
+
+  /** Maximum number of events read and sent to a stream every poll interval. */
+  public int getEventsPerPoll() {
+    return eventsPerPoll;
+  }
+
+  /** How long a stream can go without events before a comment is sent to keep it open. */
+  public int getHeartbeatIntervalSeconds() {
+    return heartbeatIntervalSeconds;
+  }
+
+  /** How long a stream stays open before the client has to reconnect. */
+  public int getStreamTimeoutSeconds() {
+    return streamTimeoutSeconds;
+  }
+
+  /** How long events are kept, and so how far back a stream can be resumed. */
+  public int getRetentionHours() {
+    return retentionHours;
+  }
+
+  /** Number of threads reading and sending the events of streams. */
+  public int getSendThreads() {
+    return Math.max(1, sendThreads);
+  }
+
+  /** How long sending to a stream can take before the stream is closed. */
+  public int getSendTimeoutSeconds() {
+    return sendTimeoutSeconds;
+  }
+
+  /** How far behind streams can fall, held back by a long transaction, before a warning. */
+  public int getMaxLagSeconds() {
+    return maxLagSeconds;
+  }
+}
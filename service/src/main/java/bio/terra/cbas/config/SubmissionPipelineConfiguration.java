@@ -0,0 +1,42 @@
+package bio.terra.cbas.config;
+
+import org.springframework.boot.context.properties.ConfigurationProperties;
+import org.springframework.context.annotation.Bean;
+import org.springframework.scheduling.concurrent.ThreadPoolTaskExecutor;
+
+@ConfigurationProperties(prefix = "cbas.async.submission-pipeline")
+public class SubmissionPipelineConfiguration {
+  private final boolean enabled;
+  private final int queueCapacity;
+  private final int threadPoolSize;
+
+  public SubmissionPipelineConfiguration(boolean enabled, int queueCapacity, int threadPoolSize) {
+    this.enabled = enabled;
+    this.queueCapacity = queueCapacity;
+    this.threadPoolSize = threadPoolSize;
+  }
+
+  public boolean isEnabled() {
+    return enabled;
+  }
+
+  public int getQueueCapacity() {
+    return queueCapacity;
+  }
+
+  // Pipeline stages block on each other's queues, so every stage needs its own thread rather than
+  // a slot in a task queue behind the stages it is waiting for. The pool has no task queue: once
+  // all of its threads are taken, a pipeline that cannot start all of its stages fails before
+  // processing any item (see SubmissionPipeline).
+  @Bean("submissionPipelineExecutor")
+  public ThreadPoolTaskExecutor getSubmissionPipelineExecutor() {
+    ThreadPoolTaskExecutor executor = new ThreadPoolTaskExecutor();
+    executor.setCorePoolSize(threadPoolSize);
+    executor.setMaxPoolSize(threadPoolSize);
+    executor.setQueueCapacity(0);
+    executor.setAllowCoreThreadTimeOut(true);
+    executor.setThreadNamePrefix("SubmissionPipeline-");
+    executor.initialize();
+    return executor;
+  }
+}
@@ -0,0 +1,58 @@
+package bio.terra.cbas.config;
+
+import org.springframework.boot.context.properties.ConfigurationProperties;
+import org.springframework.context.annotation.Bean;
+import org.springframework.scheduling.concurrent.ThreadPoolTaskExecutor;
+
+@ConfigurationProperties(prefix = "cbas.async.submission-queue")
+public class SubmissionQueueConfiguration {
+  private final boolean enabled;
+  private final int workers;
+  private final int leaseSeconds;
+  private final int maxAttempts;
+
+  public SubmissionQueueConfiguration(
+      boolean enabled, int workers, int leaseSeconds, int maxAttempts) {
+    this.enabled = enabled;
+    this.workers = workers;
+    this.leaseSeconds = leaseSeconds;
+    this.maxAttempts = maxAttempts;
+  }
+
+  public boolean isEnabled() {
+    return enabled;
+  }
+
+  /** Number of submission jobs this instance works on at the same time. */
+  public int getWorkers() {
+    return Math.max(1, workers);
+  }
+
+  public int getLeaseSeconds() {
+    return leaseSeconds;
+  }
+
+  /** How often the leases of the jobs being worked on are renewed: three times per lease. */
+  public long getLeaseRenewalIntervalMillis() {
+    return Math.max(1000L, leaseSeconds * 1000L / 3);
+  }
+
+  /** Number of times a job is worked on before its remaining runs are given up on. */
+  public int getMaxAttempts() {
+    return maxAttempts;
+  }
+
+  // Workers only claim a job when one of them is idle, so at most `workers` jobs are ever handed
+  // to the pool. The queue only holds a job while the thread that finished the previous one is
+  // returning to the pool.
+  @Bean("submissionQueueExecutor")
+  public ThreadPoolTaskExecutor getSubmissionQueueExecutor() {
+    ThreadPoolTaskExecutor executor = new ThreadPoolTaskExecutor();
+    executor.setCorePoolSize(getWorkers());
+    executor.setMaxPoolSize(getWorkers());
+    executor.setQueueCapacity(getWorkers());
+    executor.setThreadNamePrefix("SubmissionQueueWorker-");
+    executor.initialize();
+    return executor;
+  }
+}
@@ -0,0 +1,27 @@
+package bio.terra.cbas.config;
+
+import org.springframework.boot.context.properties.ConfigurationProperties;
+
+@ConfigurationProperties(prefix = "cbas.user-token-storage")
+public class UserTokenStorageConfiguration {
+  private final String encryptionKey;
+  private final long maxAgeSeconds;
+
+  public UserTokenStorageConfiguration(String encryptionKey, long maxAgeSeconds) {
+    this.encryptionKey = encryptionKey;
+    this.maxAgeSeconds = maxAgeSeconds;
+  }
+
+  /**
+   * Base64 encoded AES key that user tokens are encrypted with before they are stored. Can only be
+   * blank when none of the features that store user tokens is enabled.
+   */
+  public String getEncryptionKey() {
+    return encryptionKey;
+  }
+
+  /** How long a stored user token is used for when it does not tell when it expires. */
+  public long getMaxAgeSeconds() {
+    return maxAgeSeconds;
+  }
+}
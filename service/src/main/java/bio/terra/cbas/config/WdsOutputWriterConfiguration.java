@@ -0,0 +1,51 @@
+package bio.terra.cbas.config;
+
+import org.springframework.boot.context.properties.ConfigurationProperties;
+import org.springframework.context.annotation.Bean;
+import org.springframework.scheduling.concurrent.ThreadPoolTaskExecutor;
+
+@ConfigurationProperties(prefix = "cbas.async.wds-output-writer")
+public class WdsOutputWriterConfiguration {
+  private final boolean enabled;
+  private final long flushWindowMillis;
+  private final int maxBatchSize;
+  private final int flushThreads;
+
+  public WdsOutputWriterConfiguration(
+      boolean enabled, long flushWindowMillis, int maxBatchSize, int flushThreads) {
+    this.enabled = enabled;
+    this.flushWindowMillis = flushWindowMillis;
+    this.maxBatchSize = maxBatchSize;
+    this.flushThreads = flushThreads;
+  }
+
+  public boolean isEnabled() {
+    return enabled;
+  }
+
+  /** How long the outputs of a record type are buffered after the first of them is written. */
+  public long getFlushWindowMillis() {
+    return flushWindowMillis;
+  }
+
+  /** Number of buffered outputs that are written to WDS right away, without waiting any longer. */
+  public int getMaxBatchSize() {
+    return Math.max(1, maxBatchSize);
+  }
+
+  /** Number of batches of outputs this instance writes to WDS at the same time. */
+  public int getFlushThreads() {
+    return Math.max(1, flushThreads);
+  }
+
+  // Not a TaskScheduler, which would take the place of the scheduler of @Scheduled methods.
+  @Bean("wdsOutputWriterExecutor")
+  public ThreadPoolTaskExecutor getWdsOutputWriterExecutor() {
+    ThreadPoolTaskExecutor executor = new ThreadPoolTaskExecutor();
+    executor.setCorePoolSize(getFlushThreads());
+    executor.setMaxPoolSize(getFlushThreads());
+    executor.setThreadNamePrefix("WdsOutputWriter-");
+    executor.initialize();
+    return executor;
+  }
+}
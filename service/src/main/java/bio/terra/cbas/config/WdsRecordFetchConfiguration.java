@@ -0,0 +1,38 @@
+package bio.terra.cbas.config;
+
+import org.springframework.boot.context.properties.ConfigurationProperties;
+import org.springframework.context.annotation.Bean;
+import org.springframework.scheduling.concurrent.ThreadPoolTaskExecutor;
+
+@ConfigurationProperties(prefix = "cbas.async.wds-record-fetch")
+public class WdsRecordFetchConfiguration {
+  private final int maxRequestsInFlight;
+  private final long capabilitiesCacheSeconds;
+
+  public WdsRecordFetchConfiguration(int maxRequestsInFlight, long capabilitiesCacheSeconds) {
+    this.maxRequestsInFlight = maxRequestsInFlight;
+    this.capabilitiesCacheSeconds = capabilitiesCacheSeconds;
+  }
+
+  /** Number of record requests this instance sends to WDS at the same time. */
+  public int getMaxRequestsInFlight() {
+    return Math.max(1, maxRequestsInFlight);
+  }
+
+  /** How long the capabilities of the WDS instance are reused before they are requested again. */
+  public long getCapabilitiesCacheSeconds() {
+    return capabilitiesCacheSeconds;
+  }
+
+  // Shared by all the run sets being submitted, so that fetching many records at once does not
+  // flood WDS with requests.
+  @Bean("wdsRecordFetchExecutor")
+  public ThreadPoolTaskExecutor getWdsRecordFetchExecutor() {
+    ThreadPoolTaskExecutor executor = new ThreadPoolTaskExecutor();
+    executor.setCorePoolSize(getMaxRequestsInFlight());
+    executor.setMaxPoolSize(getMaxRequestsInFlight());
+    executor.setThreadNamePrefix("WdsRecordFetch-");
+    executor.initialize();
+    return executor;
+  }
+}
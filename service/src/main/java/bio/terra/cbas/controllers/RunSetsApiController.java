@@ -10,11 +10,16 @@ import bio.terra.cbas.common.exceptions.DatabaseConnectivityException.RunCreatio
 import bio.terra.cbas.common.exceptions.DatabaseConnectivityException.RunSetCreationException;
 import bio.terra.cbas.common.exceptions.ForbiddenException;
 import bio.terra.cbas.common.exceptions.MethodProcessingException;
+import bio.terra.cbas.common.exceptions.RunSetAbortNotFoundException;
 import bio.terra.cbas.config.CbasApiConfiguration;
+import bio.terra.cbas.config.SubmissionQueueConfiguration;
 import bio.terra.cbas.dao.MethodVersionDao;
 import bio.terra.cbas.dao.RunSetDao;
+import bio.terra.cbas.dao.util.ListingVersion;
+import bio.terra.cbas.dao.util.PageCursor;
 import bio.terra.cbas.dependencies.dockstore.DockstoreService;
 import bio.terra.cbas.dependencies.sam.SamService;
+import bio.terra.cbas.model.AbortRunSetProgressResponse;
 import bio.terra.cbas.model.AbortRunSetResponse;
 import bio.terra.cbas.model.OutputDestination;
 import bio.terra.cbas.model.RunSetDetailsResponse;
@@ -24,11 +29,16 @@ import bio.terra.cbas.model.RunSetStateResponse;
 import bio.terra.cbas.model.RunStateResponse;
 import bio.terra.cbas.models.CbasRunSetStatus;
 import bio.terra.cbas.models.MethodVersion;
+import bio.terra.cbas.models.RegisterRunSetResponse;
 import bio.terra.cbas.models.RunSet;
+import bio.terra.cbas.models.RunSetAbort;
+import bio.terra.cbas.models.RunSetAbortStatus;
 import bio.terra.cbas.monitoring.TimeLimitedUpdater;
 import bio.terra.cbas.runsets.monitoring.RunSetAbortManager;
 import bio.terra.cbas.runsets.monitoring.RunSetAbortManager.AbortRequestDetails;
+import bio.terra.cbas.runsets.monitoring.ScheduledPollEngine;
 import bio.terra.cbas.runsets.monitoring.SmartRunSetsPoller;
+import bio.terra.cbas.runsets.submission.SubmissionQueueWorker;
 import bio.terra.cbas.service.MethodVersionService;
 import bio.terra.cbas.service.RunSetsService;
 import bio.terra.cbas.util.UuidSource;
@@ -40,12 +50,14 @@ import jakarta.servlet.http.HttpServletRequest;
 import java.net.MalformedURLException;
 import java.net.URISyntaxException;
 import java.util.ArrayList;
+import java.util.Arrays;
 import java.util.Collections;
 import java.util.List;
 import java.util.Map;
 import java.util.UUID;
 import java.util.stream.Collectors;
 import org.broadinstitute.dsde.workbench.client.sam.model.UserStatusInfo;
+import org.springframework.http.HttpHeaders;
 import org.springframework.http.HttpStatus;
 import org.springframework.http.ResponseEntity;
 import org.springframework.stereotype.Controller;
@@ -59,12 +71,15 @@ public class RunSetsApiController implements RunSetsApi {
   private final RunSetDao runSetDao;
   private final CbasApiConfiguration cbasApiConfiguration;
   private final SmartRunSetsPoller smartRunSetsPoller;
+  private final ScheduledPollEngine scheduledPollEngine;
   private final UuidSource uuidSource;
   private final RunSetAbortManager abortManager;
   private final BearerTokenFactory bearerTokenFactory;
   private final HttpServletRequest httpServletRequest;
   private final RunSetsService runSetsService;
   private final MicrometerMetrics micrometerMetrics;
+  private final SubmissionQueueConfiguration submissionQueueConfiguration;
+  private final SubmissionQueueWorker submissionQueueWorker;
 
   public RunSetsApiController(
       SamService samService,
@@ -73,24 +88,30 @@ public class RunSetsApiController implements RunSetsApi {
       RunSetDao runSetDao,
       CbasApiConfiguration cbasApiConfiguration,
       SmartRunSetsPoller smartRunSetsPoller,
+      ScheduledPollEngine scheduledPollEngine,
       UuidSource uuidSource,
       RunSetAbortManager abortManager,
       BearerTokenFactory bearerTokenFactory,
       HttpServletRequest httpServletRequest,
       RunSetsService runSetsService,
-      MicrometerMetrics micrometerMetrics) {
+      MicrometerMetrics micrometerMetrics,
+      SubmissionQueueConfiguration submissionQueueConfiguration,
+      SubmissionQueueWorker submissionQueueWorker) {
     this.samService = samService;
     this.dockstoreService = dockstoreService;
     this.methodVersionDao = methodVersionDao;
     this.runSetDao = runSetDao;
     this.cbasApiConfiguration = cbasApiConfiguration;
     this.smartRunSetsPoller = smartRunSetsPoller;
+    this.scheduledPollEngine = scheduledPollEngine;
     this.uuidSource = uuidSource;
     this.abortManager = abortManager;
     this.bearerTokenFactory = bearerTokenFactory;
     this.httpServletRequest = httpServletRequest;
     this.runSetsService = runSetsService;
     this.micrometerMetrics = micrometerMetrics;
+    this.submissionQueueConfiguration = submissionQueueConfiguration;
+    this.submissionQueueWorker = submissionQueueWorker;
   }
 
   private RunSetDetailsResponse convertToRunSetDetails(RunSet runSet) {
@@ -114,7 +135,8 @@ public class RunSetsApiController implements RunSetsApi {
   }
 
   @Override
-  public ResponseEntity<RunSetListResponse> getRunSets(UUID methodId, Integer pageSize) {
+  public ResponseEntity<RunSetListResponse> getRunSets(
+      UUID methodId, Integer pageSize, String after) {
     // extract bearer token from request to pass down to API calls
     BearerToken userToken = bearerTokenFactory.from(httpServletRequest);
 
@@ -122,27 +144,61 @@ public class RunSetsApiController implements RunSetsApi {
       throw new ForbiddenException(SamService.READ_ACTION, SamService.RESOURCE_TYPE_WORKSPACE);
     }
 
+    String eTag = null;
+    if (scheduledPollEngine.isEnabled()) {
+      // The run sets are kept up to date in the background
+      scheduledPollEngine.offerUserToken(userToken);
+      if (methodId == null) {
+        // The listed run sets only change when their version does. The version is read before the
+        // run sets: if they change in between, the next request gets them again.
+        ListingVersion version = runSetDao.getRunSetsVersion(false);
+        eTag = version.eTag();
+        if (version.isMatchedBy(httpServletRequest.getHeader(HttpHeaders.IF_NONE_MATCH))) {
+          return ResponseEntity.status(HttpStatus.NOT_MODIFIED).eTag(eTag).build();
+        }
+      }
+    }
+
     RunSetListResponse response;
 
     List<RunSet> filteredRunSet;
+    String nextPage = null;
 
     if (methodId != null) {
       filteredRunSet = Collections.singletonList(runSetDao.getLatestRunSetWithMethodId(methodId));
     } else {
-      filteredRunSet = runSetDao.getRunSets(pageSize, false);
+      Integer limit = pageSize == null ? null : Math.max(pageSize, 1);
+      // Read one run set more than the page holds, to know whether there is a next page
+      filteredRunSet =
+          runSetDao.getRunSets(limit == null ? null : limit + 1, PageCursor.decode(after), false);
+      if (limit != null && filteredRunSet.size() > limit) {
+        filteredRunSet = filteredRunSet.subList(0, limit);
+        RunSet lastRunSet = filteredRunSet.get(limit - 1);
+        nextPage = new PageCursor(lastRunSet.submissionTimestamp(), lastRunSet.runSetId()).encode();
+      }
     }
 
-    TimeLimitedUpdater.UpdateResult<RunSet> runSetUpdateResult =
-        smartRunSetsPoller.updateRunSets(filteredRunSet, userToken);
+    TimeLimitedUpdater.UpdateResult<RunSet> runSetUpdateResult;
+    if (scheduledPollEngine.isEnabled()) {
+      // Only fully updated if the run sets were refreshed recently enough
+      runSetUpdateResult = scheduledPollEngine.runSetsAsPolled(filteredRunSet);
+    } else {
+      runSetUpdateResult = smartRunSetsPoller.updateRunSets(filteredRunSet, userToken);
+    }
     List<RunSet> updatedRunSets = runSetUpdateResult.updatedList();
     List<RunSetDetailsResponse> filteredRunSetDetails =
         updatedRunSets.stream().map(this::convertToRunSetDetails).toList();
     response =
         new RunSetListResponse()
             .runSets(filteredRunSetDetails)
-            .fullyUpdated(runSetUpdateResult.fullyUpdated());
+            .fullyUpdated(runSetUpdateResult.fullyUpdated())
+            .nextPage(nextPage);
 
-    return new ResponseEntity<>(response, HttpStatus.OK);
+    ResponseEntity.BodyBuilder responseBuilder = ResponseEntity.ok();
+    if (eTag != null) {
+      responseBuilder.eTag(eTag);
+    }
+    return responseBuilder.body(response);
   }
 
   @Override
@@ -159,7 +215,10 @@ public class RunSetsApiController implements RunSetsApi {
     Timer.Sample responseTimerSample = micrometerMetrics.startTimer();
 
     // request validation
-    List<String> requestErrors = validateRequest(request, this.cbasApiConfiguration);
+    // Large run sets are only accepted when the submission queue can submit them chunk by chunk
+    boolean largeRunSetsEnabled = submissionQueueConfiguration.isEnabled();
+    List<String> requestErrors =
+        validateRequest(request, this.cbasApiConfiguration, largeRunSetsEnabled);
     if (!requestErrors.isEmpty()) {
       String errorMsg = "Bad user request. Error(s): " + requestErrors;
       log.warn(errorMsg);
@@ -202,10 +261,40 @@ public class RunSetsApiController implements RunSetsApi {
 
     UserStatusInfo user = samService.getSamUser(userToken);
 
-    // register RunSet
+    // The runs of a large run set are registered chunk by chunk once its submission is claimed
+    boolean largeRunSet = largeRunSetsEnabled && isLargeRunSet(request, this.cbasApiConfiguration);
+
+    // create mapping between Record IDs to Run IDs to register runs in database
+    Map<String, UUID> recordIdToRunIdMapping =
+        largeRunSet
+            ? Map.of()
+            : request.getWdsRecords().getRecordIds().stream()
+                .map(recordId -> Map.entry(recordId, uuidSource.generateUUID()))
+                .collect(Collectors.toMap(Map.Entry::getKey, Map.Entry::getValue));
+
+    // register RunSet and Runs
     RunSet runSet;
+    List<RunStateResponse> runStateResponseList;
     try {
-      runSet = runSetsService.registerRunSet(request, user, methodVersion);
+      RegisterRunSetResponse registered;
+      if (largeRunSet) {
+        registered =
+            runSetsService.registerLargeRunSetAndQueueSubmission(
+                request, user, methodVersion, resolvedMethodUrl, userToken);
+      } else if (submissionQueueConfiguration.isEnabled()) {
+        // With the submission queue enabled, the submission is queued along with the run set
+        registered =
+            runSetsService.registerRunSetAndQueueSubmission(
+                request, user, methodVersion, recordIdToRunIdMapping, resolvedMethodUrl, userToken);
+      } else {
+        registered =
+            runSetsService.registerRunSetAndRuns(
+                request, user, methodVersion, recordIdToRunIdMapping);
+      }
+      runSet = registered.runSet();
+      runStateResponseList = registered.runStateResponseList();
+      // The runs of the run set are polled in the background with the submitting user's token
+      scheduledPollEngine.storeUserToken(user.getUserSubjectId(), userToken);
     } catch (JsonProcessingException | RunSetCreationException e) {
       log.warn("Failed to record run set to database", e);
       micrometerMetrics.recordPostRunSetHandlerCompletion(
@@ -218,22 +307,8 @@ public class RunSetsApiController implements RunSetsApi {
           new RunSetStateResponse()
               .errors("Failed to register submission request. Error(s): " + e.getMessage()),
           HttpStatus.INTERNAL_SERVER_ERROR);
-    }
-
-    // create mapping between Record IDs to Run IDs to register runs in database
-    Map<String, UUID> recordIdToRunIdMapping =
-        request.getWdsRecords().getRecordIds().stream()
-            .map(recordId -> Map.entry(recordId, uuidSource.generateUUID()))
-            .collect(Collectors.toMap(Map.Entry::getKey, Map.Entry::getValue));
-
-    // register Runs
-    List<RunStateResponse> runStateResponseList;
-    try {
-      runStateResponseList = runSetsService.registerRunsInRunSet(runSet, recordIdToRunIdMapping);
     } catch (RunCreationException e) {
-      String errorMsg =
-          "Failed to record runs to database for RunSet %s".formatted(runSet.runSetId());
-      log.error(errorMsg, e);
+      log.error("Failed to record runs to database", e);
       micrometerMetrics.recordPostRunSetHandlerCompletion(
           responseTimerSample,
           request.getWorkflowInputDefinitions().size(),
@@ -255,14 +330,24 @@ public class RunSetsApiController implements RunSetsApi {
     runSet = runSet.withUpdatedRunCount(runStateResponseList.size());
 
     // trigger workflow submission
-    runSetsService.triggerWorkflowSubmission(
-        request,
-        runSet,
-        recordIdToRunIdMapping,
-        userToken,
-        resolvedMethodUrl,
-        methodVersion,
-        requestTimerSample);
+    if (submissionQueueConfiguration.isEnabled()) {
+      // don't wait for the next poll if a worker in this instance is idle
+      try {
+        submissionQueueWorker.wakeUp();
+      } catch (RuntimeException e) {
+        log.warn(
+            "Failed to wake up the submission queue, leaving the run set for the next poll", e);
+      }
+    } else {
+      runSetsService.triggerWorkflowSubmission(
+          request,
+          runSet,
+          recordIdToRunIdMapping,
+          userToken,
+          resolvedMethodUrl,
+          methodVersion,
+          requestTimerSample);
+    }
 
     micrometerMetrics.recordPostRunSetHandlerCompletion(
         responseTimerSample,
@@ -320,6 +405,39 @@ public class RunSetsApiController implements RunSetsApi {
     return new ResponseEntity<>(aborted, HttpStatus.OK);
   }
 
+  @Override
+  public ResponseEntity<AbortRunSetProgressResponse> getAbortRunSetProgress(UUID runSetId) {
+    // extract bearer token from request to pass down to API calls
+    BearerToken userToken = bearerTokenFactory.from(httpServletRequest);
+
+    if (!samService.hasReadPermission(userToken)) {
+      throw new ForbiddenException(SamService.READ_ACTION, SamService.RESOURCE_TYPE_WORKSPACE);
+    }
+
+    RunSetAbort abort =
+        abortManager
+            .getAbort(runSetId)
+            .orElseThrow(
+                () ->
+                    new RunSetAbortNotFoundException(
+                        "Run set %s has not been aborted.".formatted(runSetId)));
+
+    List<UUID> failedRuns =
+        abort.failedRunIds() == null
+            ? List.of()
+            : Arrays.stream(abort.failedRunIds().split(",")).map(UUID::fromString).toList();
+
+    return new ResponseEntity<>(
+        new AbortRunSetProgressResponse()
+            .runSetId(runSetId)
+            .complete(abort.status() == RunSetAbortStatus.COMPLETE)
+            .runsToAbort(abort.runsToAbort())
+            .abortRequestsSubmitted(abort.abortRequestsSubmitted())
+            .abortRequestsFailed(abort.abortRequestsFailed())
+            .failedRuns(failedRuns),
+        HttpStatus.OK);
+  }
+
   public void captureRequestMetrics(RunSetRequest request) {
     micrometerMetrics.recordEventDistributionMetric(
         "inputs_per_request", request.getWorkflowInputDefinitions().size());
@@ -330,19 +448,44 @@ public class RunSetsApiController implements RunSetsApi {
   }
 
   public static List<String> validateRequest(RunSetRequest request, CbasApiConfiguration config) {
+    return validateRequest(request, config, false);
+  }
+
+  public static List<String> validateRequest(
+      RunSetRequest request, CbasApiConfiguration config, boolean largeRunSetsEnabled) {
     List<String> errorList = new ArrayList<>();
-    errorList.addAll(validateRequestRecordIds(request, config));
+    errorList.addAll(validateRequestRecordIds(request, config, largeRunSetsEnabled));
     errorList.addAll(validateRequestInputsAndOutputs(request, config));
     return errorList;
   }
 
   public static List<String> validateRequestRecordIds(
       RunSetRequest request, CbasApiConfiguration config) {
+    return validateRequestRecordIds(request, config, false);
+  }
+
+  public static List<String> validateRequestRecordIds(
+      RunSetRequest request, CbasApiConfiguration config, boolean largeRunSetsEnabled) {
     List<String> errorList = new ArrayList<>();
+    List<String> recordIds = request.getWdsRecords().getRecordIds();
+
+    // check that all the records of the record type are only selected where that is supported
+    if (Boolean.TRUE.equals(request.getWdsRecords().isAllRecords())) {
+      if (!largeRunSetsEnabled) {
+        errorList.add("Selecting all the records of a record type is not enabled.");
+      }
+      if (!recordIds.isEmpty()) {
+        errorList.add("Record IDs can't be submitted along with all the records of their type.");
+      }
+      return errorList;
+    }
 
     // check number of Record IDs in request is within allowed limit
-    int recordIdsSize = request.getWdsRecords().getRecordIds().size();
+    int recordIdsSize = recordIds.size();
     int recordIdsMax = config.getRunSetsMaximumRecordIds();
+    if (largeRunSetsEnabled) {
+      recordIdsMax = Math.max(recordIdsMax, config.getLargeRunSetsMaximumRecordIds());
+    }
     if (recordIdsSize > recordIdsMax) {
       errorList.add(
           "%s record IDs submitted exceeds the maximum value of %s."
@@ -350,15 +493,25 @@ public class RunSetsApiController implements RunSetsApi {
     }
 
     // check that there are no duplicated Record IDs present in the request
-    List<String> recordIds = request.getWdsRecords().getRecordIds();
+    Map<String, Long> recordIdCounts =
+        recordIds.stream().collect(Collectors.groupingBy(e -> e, Collectors.counting()));
     List<String> duplicateRecordIds =
-        recordIds.stream().filter(e -> Collections.frequency(recordIds, e) > 1).distinct().toList();
+        recordIds.stream().filter(e -> recordIdCounts.get(e) > 1).distinct().toList();
     if (!duplicateRecordIds.isEmpty()) {
       errorList.add("Duplicate Record ID(s) %s present in request.".formatted(duplicateRecordIds));
     }
     return errorList;
   }
 
+  /**
+   * Whether the request selects all the records of its record type, or more records than a regular
+   * run set allows.
+   */
+  public static boolean isLargeRunSet(RunSetRequest request, CbasApiConfiguration config) {
+    return Boolean.TRUE.equals(request.getWdsRecords().isAllRecords())
+        || request.getWdsRecords().getRecordIds().size() > config.getRunSetsMaximumRecordIds();
+  }
+
   public static List<String> validateRequestInputsAndOutputs(
       RunSetRequest request, CbasApiConfiguration config) {
     List<String> errorList = new ArrayList<>();
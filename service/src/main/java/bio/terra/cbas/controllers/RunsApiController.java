@@ -8,23 +8,33 @@ import bio.terra.cbas.common.exceptions.InvalidStatusTypeException;
 import bio.terra.cbas.common.exceptions.MissingRunOutputsException;
 import bio.terra.cbas.common.exceptions.RunNotFoundException;
 import bio.terra.cbas.dao.RunDao;
+import bio.terra.cbas.dao.util.ListingVersion;
+import bio.terra.cbas.dao.util.PageCursor;
 import bio.terra.cbas.dependencies.sam.SamService;
 import bio.terra.cbas.model.RunLog;
 import bio.terra.cbas.model.RunLogResponse;
 import bio.terra.cbas.model.RunResultsRequest;
 import bio.terra.cbas.models.CbasRunStatus;
+import bio.terra.cbas.models.PollableRun;
 import bio.terra.cbas.models.Run;
 import bio.terra.cbas.monitoring.TimeLimitedUpdater.UpdateResult;
+import bio.terra.cbas.runsets.monitoring.ScheduledPollEngine;
 import bio.terra.cbas.runsets.monitoring.SmartRunsPoller;
+import bio.terra.cbas.runsets.results.RunCallbackInbox;
 import bio.terra.cbas.runsets.results.RunCompletionHandler;
 import bio.terra.cbas.runsets.results.RunCompletionResult;
 import bio.terra.common.iam.BearerToken;
 import bio.terra.common.iam.BearerTokenFactory;
+import com.fasterxml.jackson.core.JsonProcessingException;
 import jakarta.servlet.http.HttpServletRequest;
 import java.util.ArrayList;
 import java.util.List;
+import java.util.Map;
 import java.util.Optional;
 import java.util.UUID;
+import java.util.function.Function;
+import java.util.stream.Collectors;
+import org.springframework.http.HttpHeaders;
 import org.springframework.http.HttpStatus;
 import org.springframework.http.ResponseEntity;
 import org.springframework.stereotype.Controller;
@@ -32,9 +42,11 @@ import org.springframework.stereotype.Controller;
 @Controller
 public class RunsApiController implements RunsApi {
   private final SmartRunsPoller smartPoller;
+  private final ScheduledPollEngine scheduledPollEngine;
   private final SamService samService;
   private final RunDao runDao;
   private final RunCompletionHandler runCompletionHandler;
+  private final RunCallbackInbox runCallbackInbox;
   private final MicrometerMetrics micrometerMetrics;
   private final BearerTokenFactory bearerTokenFactory;
   private final HttpServletRequest httpServletRequest;
@@ -42,15 +54,19 @@ public class RunsApiController implements RunsApi {
   public RunsApiController(
       RunDao runDao,
       SmartRunsPoller smartPoller,
+      ScheduledPollEngine scheduledPollEngine,
       SamService samService,
       RunCompletionHandler runCompletionHandler,
+      RunCallbackInbox runCallbackInbox,
       MicrometerMetrics micrometerMetrics,
       BearerTokenFactory bearerTokenFactory,
       HttpServletRequest httpServletRequest) {
     this.runDao = runDao;
     this.smartPoller = smartPoller;
+    this.scheduledPollEngine = scheduledPollEngine;
     this.samService = samService;
     this.runCompletionHandler = runCompletionHandler;
+    this.runCallbackInbox = runCallbackInbox;
     this.micrometerMetrics = micrometerMetrics;
     this.bearerTokenFactory = bearerTokenFactory;
     this.httpServletRequest = httpServletRequest;
@@ -75,7 +91,7 @@ public class RunsApiController implements RunsApi {
   }
 
   @Override
-  public ResponseEntity<RunLogResponse> getRuns(UUID runSetId) {
+  public ResponseEntity<RunLogResponse> getRuns(UUID runSetId, String after, Integer limit) {
     // extract bearer token from request to pass down to API calls
     BearerToken userToken = bearerTokenFactory.from(httpServletRequest);
 
@@ -84,14 +100,79 @@ public class RunsApiController implements RunsApi {
       throw new ForbiddenException(SamService.READ_ACTION, SamService.RESOURCE_TYPE_WORKSPACE);
     }
 
-    List<Run> queryResults = runDao.getRuns(new RunDao.RunsFilters(runSetId, null));
-    UpdateResult<Run> updatedRunsResult = smartPoller.updateRuns(queryResults, userToken);
+    RunDao.RunsFilters filters = new RunDao.RunsFilters(runSetId, null);
+    PageCursor afterCursor = PageCursor.decode(after);
+    Integer pageSize = limit == null ? null : Math.max(limit, 1);
+    // Read one run more than the page holds, to know whether there is a next page
+    Integer readLimit = pageSize == null ? null : pageSize + 1;
+    String eTag = null;
+    if (scheduledPollEngine.isEnabled()) {
+      // The runs are kept up to date in the background, so they only change when their version
+      // does. The version is read before the runs: if they change in between, the next request
+      // gets them again rather than missing the change.
+      scheduledPollEngine.offerUserToken(userToken);
+      ListingVersion version = runDao.getRunsVersion(filters, afterCursor, readLimit);
+      eTag = version.eTag();
+      if (version.isMatchedBy(httpServletRequest.getHeader(HttpHeaders.IF_NONE_MATCH))) {
+        return ResponseEntity.status(HttpStatus.NOT_MODIFIED).eTag(eTag).build();
+      }
+    }
+
+    List<Run> queryResults;
+    if (pageSize == null && afterCursor == null) {
+      queryResults = runDao.getRuns(filters);
+    } else {
+      queryResults = runDao.getRuns(filters, afterCursor, readLimit);
+    }
+    String nextPage = null;
+    if (pageSize != null && queryResults.size() > pageSize) {
+      queryResults = queryResults.subList(0, pageSize);
+      Run lastRun = queryResults.get(pageSize - 1);
+      nextPage = new PageCursor(lastRun.submissionTimestamp(), lastRun.runId()).encode();
+    }
+    UpdateResult<Run> updatedRunsResult;
+    if (eTag != null) {
+      // Only fully updated if the runs were polled recently enough
+      updatedRunsResult = scheduledPollEngine.runsAsPolled(queryResults);
+    } else {
+      updatedRunsResult = pollRuns(queryResults, userToken);
+    }
 
     List<RunLog> responseList =
         updatedRunsResult.updatedList().stream().map(this::runToRunLog).toList();
-    return new ResponseEntity<>(
-        new RunLogResponse().runs(responseList).fullyUpdated(updatedRunsResult.fullyUpdated()),
-        HttpStatus.OK);
+    ResponseEntity.BodyBuilder response = ResponseEntity.ok();
+    if (eTag != null) {
+      response.eTag(eTag);
+    }
+    return response.body(
+        new RunLogResponse()
+            .runs(responseList)
+            .fullyUpdated(updatedRunsResult.fullyUpdated())
+            .nextPage(nextPage));
+  }
+
+  // Polls the listed runs, and applies the polled statuses to them
+  private UpdateResult<Run> pollRuns(List<Run> runs, BearerToken userToken) {
+    UpdateResult<PollableRun> polledResult =
+        smartPoller.updateRuns(runs.stream().map(PollableRun::of).toList(), userToken);
+    Map<UUID, PollableRun> polledRuns =
+        polledResult.updatedList().stream()
+            .collect(Collectors.toMap(PollableRun::runId, Function.identity()));
+    List<Run> updatedRuns =
+        runs.stream()
+            .map(
+                run -> {
+                  PollableRun polled = polledRuns.get(run.runId());
+                  return run.withStatus(polled.status())
+                      .withLastModified(polled.lastModifiedTimestamp())
+                      .withLastPolled(polled.lastPolledTimestamp());
+                })
+            .toList();
+    return new UpdateResult<>(
+        updatedRuns,
+        polledResult.totalEligible(),
+        polledResult.totalUpdated(),
+        polledResult.fullyUpdated());
   }
 
   @Override
@@ -115,13 +196,22 @@ public class RunsApiController implements RunsApi {
               .formatted(resultsStatus));
     }
 
-    // lookup runID in database
-    Optional<Run> runRecord =
-        runDao.getRuns(new RunDao.RunsFilters(null, null, engineId.toString())).stream()
-            .findFirst();
-    if (runRecord.isEmpty()) {
-      throw new RunNotFoundException(
-          "Workflow ID with engine ID %s is not found.".formatted(engineId));
+    // lookup runID in database. A stored callback only needs its run to exist, as the run is read
+    // when the callback is processed.
+    Optional<PollableRun> runRecord = Optional.empty();
+    if (runCallbackInbox.isEnabled()) {
+      if (!runDao.engineIdExists(engineId.toString())) {
+        throw new RunNotFoundException(
+            "Workflow ID with engine ID %s is not found.".formatted(engineId));
+      }
+    } else {
+      runRecord =
+          runDao.getPollableRuns(new RunDao.RunsFilters(null, null, engineId.toString())).stream()
+              .findFirst();
+      if (runRecord.isEmpty()) {
+        throw new RunNotFoundException(
+            "Workflow ID with engine ID %s is not found.".formatted(engineId));
+      }
     }
 
     if (resultsStatus == CbasRunStatus.COMPLETE && body.getOutputs() == null) {
@@ -144,6 +234,19 @@ public class RunsApiController implements RunsApi {
               .formatted(engineId));
     }
 
+    if (runCallbackInbox.isEnabled()) {
+      // Cromwell gets its response once the callback is stored. Its workflow completion work is
+      // done along with other callbacks (see RunCallbackInbox).
+      try {
+        runCallbackInbox.receive(engineId, resultsStatus, body.getOutputs(), failures, userToken);
+      } catch (JsonProcessingException e) {
+        log.error("Failed to store workflow callback for run ID %s.".formatted(engineId), e);
+        return new ResponseEntity<>(RunCompletionResult.ERROR.toHttpStatus());
+      }
+      micrometerMetrics.recordRunCallback(resultsStatus);
+      return new ResponseEntity<>(HttpStatus.OK);
+    }
+
     // perform workflow completion work
     RunCompletionResult result =
         runCompletionHandler.updateResults(
@@ -0,0 +1,72 @@
+package bio.terra.cbas.controllers;
+
+import bio.terra.cbas.common.exceptions.ForbiddenException;
+import bio.terra.cbas.dependencies.sam.SamService;
+import bio.terra.cbas.runsets.monitoring.ScheduledPollEngine;
+import bio.terra.cbas.runsets.monitoring.StatusEventBroadcaster;
+import bio.terra.common.iam.BearerToken;
+import bio.terra.common.iam.BearerTokenFactory;
+import jakarta.servlet.http.HttpServletRequest;
+import java.util.UUID;
+import org.springframework.http.MediaType;
+import org.springframework.stereotype.Controller;
+import org.springframework.web.bind.annotation.GetMapping;
+import org.springframework.web.bind.annotation.RequestHeader;
+import org.springframework.web.bind.annotation.RequestParam;
+import org.springframework.web.servlet.mvc.method.annotation.SseEmitter;
+
+/**
+ * Streams run and run set status changes as server-sent events (see {@link
+ * StatusEventBroadcaster}). Not part of openapi.yml, since the generated interfaces cannot return
+ * an event stream.
+ *
+ * <p>Events named {@value StatusEventBroadcaster#RUN_EVENT} carry the {@code run_set_id}, {@code
+ * run_id}, {@code state} and {@code timestamp} of a run, and events named {@value
+ * StatusEventBroadcaster#RUN_SET_EVENT} the {@code run_set_id}, {@code state} and {@code timestamp}
+ * of a run set.
+ */
+@Controller
+public class StatusEventsController {
+
+  private final StatusEventBroadcaster statusEventBroadcaster;
+  private final ScheduledPollEngine scheduledPollEngine;
+  private final SamService samService;
+  private final BearerTokenFactory bearerTokenFactory;
+  private final HttpServletRequest httpServletRequest;
+
+  public StatusEventsController(
+      StatusEventBroadcaster statusEventBroadcaster,
+      ScheduledPollEngine scheduledPollEngine,
+      SamService samService,
+      BearerTokenFactory bearerTokenFactory,
+      HttpServletRequest httpServletRequest) {
+    this.statusEventBroadcaster = statusEventBroadcaster;
+    this.scheduledPollEngine = scheduledPollEngine;
+    this.samService = samService;
+    this.bearerTokenFactory = bearerTokenFactory;
+    this.httpServletRequest = httpServletRequest;
+  }
+
+  /**
+   * @param runSetId the run set whose status changes to stream, or null for all run sets
+   * @param lastEventId sent by clients reconnecting to a stream, to resume after the last event
+   *     they received
+   */
+  @GetMapping(value = "/api/batch/v1/events", produces = MediaType.TEXT_EVENT_STREAM_VALUE)
+  public SseEmitter streamStatusEvents(
+      @RequestParam(value = "run_set_id", required = false) UUID runSetId,
+      @RequestHeader(value = "Last-Event-ID", required = false) String lastEventId) {
+    // extract bearer token from request to pass down to API calls
+    BearerToken userToken = bearerTokenFactory.from(httpServletRequest);
+
+    if (!samService.hasReadPermission(userToken)) {
+      throw new ForbiddenException(SamService.READ_ACTION, SamService.RESOURCE_TYPE_WORKSPACE);
+    }
+
+    // Clients streaming events no longer poll GET /runs and GET /run_sets, which is where the
+    // background poll engine gets its user token from otherwise
+    scheduledPollEngine.offerUserToken(userToken);
+
+    return statusEventBroadcaster.subscribe(runSetId, lastEventId);
+  }
+}
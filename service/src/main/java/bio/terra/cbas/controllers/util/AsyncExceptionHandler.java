@@ -13,6 +13,7 @@ import bio.terra.cbas.models.RunSet;
 import java.lang.reflect.Method;
 import java.time.OffsetDateTime;
 import java.util.List;
+import java.util.stream.Collectors;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 import org.springframework.aop.interceptor.AsyncUncaughtExceptionHandler;
@@ -62,10 +63,12 @@ public class AsyncExceptionHandler implements AsyncUncaughtExceptionHandler {
       // mark any Runs that are not submitted to Error state
       List<Run> runsInRunSet =
           runDao.getRuns(new RunDao.RunsFilters(runSet.runSetId(), List.of(QUEUED)));
-      runsInRunSet.forEach(
-          run ->
-              runDao.updateRunStatusWithError(
-                  run.runId(), CbasRunStatus.SYSTEM_ERROR, DateUtils.currentTimeInUTC(), errorMsg));
+      if (!runsInRunSet.isEmpty()) {
+        runDao.updateRunStatusesWithErrors(
+            runsInRunSet.stream().collect(Collectors.toMap(Run::runId, run -> errorMsg)),
+            CbasRunStatus.SYSTEM_ERROR,
+            DateUtils.currentTimeInUTC());
+      }
 
       if (params[0] instanceof RunSetRequest runSetRequest) {
         int runsCount = runsInRunSet.size();
@@ -0,0 +1,182 @@
+package bio.terra.cbas.dao;
+
+import static bio.terra.cbas.models.Run.truncatedErrorMessage;
+
+import bio.terra.cbas.common.DateUtils;
+import bio.terra.cbas.dao.util.UserTokenEncryption;
+import bio.terra.cbas.models.CbasRunStatus;
+import bio.terra.cbas.models.RunCallback;
+import bio.terra.cbas.models.RunCallbackStatus;
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.time.OffsetDateTime;
+import java.util.Collection;
+import java.util.Comparator;
+import java.util.List;
+import org.springframework.jdbc.core.RowMapper;
+import org.springframework.jdbc.core.namedparam.MapSqlParameterSource;
+import org.springframework.jdbc.core.namedparam.NamedParameterJdbcTemplate;
+import org.springframework.stereotype.Repository;
+
+/**
+ * The inbox of Cromwell callbacks waiting for, or claimed by, a callback worker. Workers claim
+ * callbacks in batches, with a lease timed with the database clock as for submission jobs (see
+ * {@link SubmissionJobDao}).
+ *
+ * <p>User tokens are stored encrypted, and are dropped once expired, as for submission jobs.
+ */
+@Repository
+public class RunCallbackDao {
+
+  private final NamedParameterJdbcTemplate jdbcTemplate;
+  private final UserTokenEncryption userTokenEncryption;
+
+  private static final String LEASE_EXPIRY_SQL = "now() + :lease_seconds * interval '1 second'";
+
+  public RunCallbackDao(
+      NamedParameterJdbcTemplate jdbcTemplate, UserTokenEncryption userTokenEncryption) {
+    this.jdbcTemplate = jdbcTemplate;
+    this.userTokenEncryption = userTokenEncryption;
+  }
+
+  public int createCallback(
+      String engineId, CbasRunStatus runStatus, String outputs, String failures, String userToken) {
+    return jdbcTemplate.update(
+        "INSERT INTO run_callback (engine_id, status, run_status, outputs, failures, user_token, user_token_expires_timestamp, received_timestamp)"
+            + " VALUES (:engine_id, :status, :run_status, :outputs, :failures, :user_token, :user_token_expires_timestamp, :received_timestamp)",
+        new MapSqlParameterSource()
+            .addValue(RunCallback.ENGINE_ID_COL, engineId)
+            .addValue(RunCallback.STATUS_COL, RunCallbackStatus.QUEUED.toString())
+            .addValue(RunCallback.RUN_STATUS_COL, runStatus.toString())
+            .addValue(RunCallback.OUTPUTS_COL, outputs)
+            .addValue(RunCallback.FAILURES_COL, failures)
+            .addValue(RunCallback.USER_TOKEN_COL, userTokenEncryption.encrypt(userToken))
+            .addValue(
+                RunCallback.USER_TOKEN_EXPIRES_TIMESTAMP_COL, userTokenEncryption.expiry(userToken))
+            .addValue(RunCallback.RECEIVED_TIMESTAMP_COL, DateUtils.currentTimeInUTC()));
+  }
+
+  /**
+   * Claims the oldest callbacks that are either queued or whose previous worker let their lease
+   * expire. Callbacks locked by another worker's claim are skipped rather than waited for, so
+   * workers in any number of CBAS instances can claim callbacks at the same time. The user tokens
+   * of the claimed callbacks that have expired are dropped.
+   *
+   * @param leaseOwner identifies the claiming worker in later calls
+   * @param limit the maximum number of callbacks claimed
+   * @param leaseSeconds how long the callbacks stay claimed
+   * @return the claimed callbacks, oldest first, with their attempts already incremented
+   */
+  public List<RunCallback> claimCallbacks(String leaseOwner, int limit, int leaseSeconds) {
+    String sql =
+        ("UPDATE run_callback SET status = :running, lease_owner = :lease_owner, lease_expires_timestamp = %s, attempts = attempts + 1,"
+                + " user_token = CASE WHEN user_token_expires_timestamp > now() THEN user_token END"
+                + " WHERE callback_id IN (SELECT callback_id FROM run_callback"
+                + " WHERE status = :queued OR (status = :running AND lease_expires_timestamp < now())"
+                + " ORDER BY callback_id LIMIT :limit FOR UPDATE SKIP LOCKED)"
+                + " RETURNING *")
+            .formatted(LEASE_EXPIRY_SQL);
+    return jdbcTemplate
+        .query(
+            sql,
+            leaseParams(leaseOwner, leaseSeconds)
+                .addValue("queued", RunCallbackStatus.QUEUED.toString())
+                .addValue("limit", limit),
+            runCallbackMapper)
+        .stream()
+        .sorted(Comparator.comparing(RunCallback::callbackId))
+        .toList();
+  }
+
+  /**
+   * Removes callbacks that their worker has processed.
+   *
+   * @return the number of callbacks whose lease the worker still held
+   */
+  public int completeCallbacks(Collection<Long> callbackIds, String leaseOwner) {
+    if (callbackIds.isEmpty()) {
+      return 0;
+    }
+    return jdbcTemplate.update(
+        "DELETE FROM run_callback WHERE callback_id IN (:callback_ids) AND lease_owner = :lease_owner",
+        new MapSqlParameterSource()
+            .addValue("callback_ids", callbackIds)
+            .addValue(RunCallback.LEASE_OWNER_COL, leaseOwner));
+  }
+
+  /**
+   * Leaves callbacks to be claimed again once {@code retryDelaySeconds} have passed, by shortening
+   * or extending their lease to end then.
+   *
+   * @return the number of callbacks whose lease the worker still held
+   */
+  public int retryCallbacks(
+      Collection<Long> callbackIds, String leaseOwner, int retryDelaySeconds) {
+    if (callbackIds.isEmpty()) {
+      return 0;
+    }
+    String sql =
+        ("UPDATE run_callback SET lease_expires_timestamp = %s"
+                + " WHERE callback_id IN (:callback_ids) AND lease_owner = :lease_owner AND status = :running")
+            .formatted(LEASE_EXPIRY_SQL);
+    return jdbcTemplate.update(
+        sql, leaseParams(leaseOwner, retryDelaySeconds).addValue("callback_ids", callbackIds));
+  }
+
+  /**
+   * Marks a callback as failed so that no worker claims it again. The user token is dropped along
+   * with the lease.
+   *
+   * @return 0 if the worker no longer holds the lease on the callback, 1 otherwise
+   */
+  public int failCallback(Long callbackId, String leaseOwner, String errorMessage) {
+    return jdbcTemplate.update(
+        "UPDATE run_callback SET status = :status, user_token = NULL, user_token_expires_timestamp = NULL, lease_owner = NULL, lease_expires_timestamp = NULL, error_messages = :error_messages"
+            + " WHERE callback_id = :callback_id AND lease_owner = :lease_owner",
+        new MapSqlParameterSource()
+            .addValue(RunCallback.CALLBACK_ID_COL, callbackId)
+            .addValue(RunCallback.LEASE_OWNER_COL, leaseOwner)
+            .addValue(RunCallback.STATUS_COL, RunCallbackStatus.FAILED.toString())
+            .addValue(RunCallback.ERROR_MESSAGES_COL, truncatedErrorMessage(errorMessage)));
+  }
+
+  public List<RunCallback> getCallbacks() {
+    return jdbcTemplate.query(
+        "SELECT * FROM run_callback ORDER BY callback_id", runCallbackMapper);
+  }
+
+  private static MapSqlParameterSource leaseParams(String leaseOwner, int leaseSeconds) {
+    return new MapSqlParameterSource()
+        .addValue(RunCallback.LEASE_OWNER_COL, leaseOwner)
+        .addValue("lease_seconds", leaseSeconds)
+        .addValue("running", RunCallbackStatus.RUNNING.toString());
+  }
+
+  private final RowMapper<RunCallback> runCallbackMapper = this::mapRunCallback;
+
+  private RunCallback mapRunCallback(ResultSet rs, int rowNum) throws SQLException {
+    return new RunCallback(
+        rs.getLong(RunCallback.CALLBACK_ID_COL),
+        rs.getString(RunCallback.ENGINE_ID_COL),
+        RunCallbackStatus.valueOf(rs.getString(RunCallback.STATUS_COL)),
+        CbasRunStatus.fromValue(rs.getString(RunCallback.RUN_STATUS_COL)),
+        rs.getString(RunCallback.OUTPUTS_COL),
+        rs.getString(RunCallback.FAILURES_COL),
+        readUserToken(rs),
+        rs.getString(RunCallback.LEASE_OWNER_COL),
+        rs.getObject(RunCallback.LEASE_EXPIRES_TIMESTAMP_COL, OffsetDateTime.class),
+        rs.getInt(RunCallback.ATTEMPTS_COL),
+        rs.getObject(RunCallback.RECEIVED_TIMESTAMP_COL, OffsetDateTime.class),
+        rs.getString(RunCallback.ERROR_MESSAGES_COL));
+  }
+
+  private String readUserToken(ResultSet rs) throws SQLException {
+    String encryptedUserToken = rs.getString(RunCallback.USER_TOKEN_COL);
+    OffsetDateTime expires =
+        rs.getObject(RunCallback.USER_TOKEN_EXPIRES_TIMESTAMP_COL, OffsetDateTime.class);
+    if (encryptedUserToken == null || expires == null || !expires.isAfter(OffsetDateTime.now())) {
+      return null;
+    }
+    return userTokenEncryption.decrypt(encryptedUserToken).orElse(null);
+  }
+}
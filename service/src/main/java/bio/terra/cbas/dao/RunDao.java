@@ -6,31 +6,64 @@ import static bio.terra.cbas.dao.MethodVersionDao.METHOD_VERSION_JOIN_METHOD;
 import static bio.terra.cbas.models.Run.truncatedErrorMessage;
 
 import bio.terra.cbas.common.DateUtils;
+import bio.terra.cbas.dao.mappers.ListingVersionMapper;
 import bio.terra.cbas.dao.mappers.RunSetMapper;
+import bio.terra.cbas.dao.util.ListingVersion;
+import bio.terra.cbas.dao.util.PageCursor;
 import bio.terra.cbas.dao.util.SqlPlaceholderMapping;
 import bio.terra.cbas.dao.util.WhereClause;
+import bio.terra.cbas.models.CbasRunSetStatus;
 import bio.terra.cbas.models.CbasRunStatus;
+import bio.terra.cbas.models.PollableRun;
+import bio.terra.cbas.models.PollableRunSet;
 import bio.terra.cbas.models.Run;
 import bio.terra.cbas.models.RunSet;
+import bio.terra.common.db.WriteTransaction;
+import com.google.common.collect.Lists;
 import java.sql.ResultSet;
 import java.sql.SQLException;
+import java.sql.Statement;
 import java.time.OffsetDateTime;
+import java.util.ArrayList;
+import java.util.Arrays;
 import java.util.Collection;
 import java.util.HashMap;
+import java.util.HashSet;
 import java.util.LinkedList;
 import java.util.List;
 import java.util.Map;
+import java.util.Set;
 import java.util.UUID;
+import java.util.function.Function;
 import java.util.stream.Collectors;
 import org.springframework.jdbc.core.RowMapper;
 import org.springframework.jdbc.core.namedparam.MapSqlParameterSource;
 import org.springframework.jdbc.core.namedparam.NamedParameterJdbcTemplate;
+import org.springframework.jdbc.core.namedparam.SqlParameterSource;
 import org.springframework.stereotype.Repository;
 
 @Repository
 public class RunDao {
 
   private final NamedParameterJdbcTemplate jdbcTemplate;
+
+  // Maximum number of runs written by a single batched or bulk statement.
+  private static final int BULK_WRITE_BATCH_SIZE = 1000;
+
+  private static final String RUN_INSERT_SQL =
+      "insert into run (run_id, engine_id, run_set_id, record_id, submission_timestamp, status, last_modified_timestamp, last_polled_timestamp, error_messages)"
+          + " values (:runId, :engineId, :runSetId, :recordId, :submissionTimestamp, :status, :lastModifiedTimestamp, :lastPolledTimestamp, :errorMessages)";
+
+  // The non-terminal statuses are written into the query rather than bound as parameters, so that
+  // the planner can match it to the partial index idx_run_non_terminal_last_polled_timestamp even
+  // once the statement is prepared with a generic plan.
+  private static final String NON_TERMINAL_STATUS_CONDITION =
+      "run.status in (%s)"
+          .formatted(
+              CbasRunStatus.NON_TERMINAL_STATES.stream()
+                  .map(status -> "'%s'".formatted(status))
+                  .collect(Collectors.joining(", ")));
+
   // SQL query for reading Run records.
 
   private static final String RUN_SELECT_SQL =
@@ -39,15 +72,60 @@ public class RunDao {
           + METHOD_VERSION_JOIN_METHOD
           + METHOD_VERSION_JOIN_GITHUB_METHOD_VERSION_DETAILS;
 
+  // The columns of runs and run sets read for polling, aborting or completing runs, and read by
+  // PollableRunMapper and PollableRunSetMapper.
+  private static final String POLLABLE_RUN_COLUMNS =
+      "run.run_id, run.engine_id, run.run_set_id, run.record_id, run.status, run.last_modified_timestamp, run.last_polled_timestamp";
+
+  private static final String CLAIMED_RUN_COLUMNS =
+      "run.run_id, run.engine_id, run.run_set_id, run.record_id, run.status, run.last_modified_timestamp, claimed.last_polled_timestamp";
+
+  static final String POLLABLE_RUN_SET_COLUMNS =
+      "run_set_id, status, last_polled_timestamp, run_count, error_count, record_type";
+
+  private static final String POLLABLE_RUN_SET_SELECT_SQL =
+      "SELECT %s FROM run_set WHERE run_set_id IN (:runSetIds)".formatted(POLLABLE_RUN_SET_COLUMNS);
+
   public RunDao(NamedParameterJdbcTemplate jdbcTemplate) {
     this.jdbcTemplate = jdbcTemplate;
   }
 
   public int createRun(Run run) {
-    return jdbcTemplate.update(
-        "insert into run (run_id, engine_id, run_set_id, record_id, submission_timestamp, status, last_modified_timestamp, last_polled_timestamp, error_messages)"
-            + " values (:runId, :engineId, :runSetId, :recordId, :submissionTimestamp, :status, :lastModifiedTimestamp, :lastPolledTimestamp, :errorMessages)",
-        new EnumAwareBeanPropertySqlParameterSource(run));
+    return jdbcTemplate.update(RUN_INSERT_SQL, new EnumAwareBeanPropertySqlParameterSource(run));
+  }
+
+  /**
+   * Inserts many runs using JDBC batches instead of one round trip per run. With the PostgreSQL
+   * driver's {@code reWriteBatchedInserts} option each batch is sent as multi-row INSERTs, which
+   * report no row count; the runs of such a batch are counted in the table instead.
+   *
+   * @param runs the runs to insert
+   * @return the number of rows inserted
+   */
+  public int createRuns(List<Run> runs) {
+    int created = 0;
+    for (List<Run> batch : Lists.partition(runs, BULK_WRITE_BATCH_SIZE)) {
+      SqlParameterSource[] batchParams =
+          batch.stream()
+              .map(EnumAwareBeanPropertySqlParameterSource::new)
+              .toArray(SqlParameterSource[]::new);
+      int[] batchRowsAffected = jdbcTemplate.batchUpdate(RUN_INSERT_SQL, batchParams);
+      if (Arrays.stream(batchRowsAffected).anyMatch(rows -> rows == Statement.SUCCESS_NO_INFO)) {
+        created += countRuns(batch.stream().map(Run::runId).toList());
+      } else {
+        created += Arrays.stream(batchRowsAffected).sum();
+      }
+    }
+    return created;
+  }
+
+  private int countRuns(List<UUID> runIds) {
+    Integer count =
+        jdbcTemplate.queryForObject(
+            "SELECT count(1) FROM run WHERE run_id IN (:runIds)",
+            new MapSqlParameterSource("runIds", runIds),
+            Integer.class);
+    return count == null ? 0 : count;
   }
 
   public List<Run> getRuns(RunsFilters filters) {
@@ -58,6 +136,160 @@ public class RunDao {
         sql, new MapSqlParameterSource(whereClause.params()), new RunMapper());
   }
 
+  /**
+   * A page of runs in order of submission. Pages are read by position (keyset pagination) rather
+   * than by offset, so reading a page costs the same however many pages come before it.
+   *
+   * @param after the position of the last run of the previous page, or null for the first page
+   * @param limit the maximum number of runs returned, or null for all of them
+   */
+  public List<Run> getRuns(RunsFilters filters, PageCursor after, Integer limit) {
+    WhereClause pageClause = pageWhereClause(filters, after);
+    Map<String, Object> params = new HashMap<>(pageClause.params());
+
+    String sql =
+        RUN_SELECT_SQL
+            + METHOD_JOIN_GITHUB_METHOD_DETAILS
+            + pageClause
+            + " ORDER BY run.submission_timestamp ASC, run.run_id ASC";
+    if (limit != null) {
+      sql = sql + " LIMIT :limit";
+      params.put("limit", limit);
+    }
+    return jdbcTemplate.query(sql, new MapSqlParameterSource(params), new RunMapper());
+  }
+
+  private static WhereClause pageWhereClause(RunsFilters filters, PageCursor after) {
+    WhereClause filtersClause = filters.buildWhereClause();
+    List<String> conditions = new ArrayList<>(filtersClause.conditions());
+    Map<String, Object> params = new HashMap<>(filtersClause.params());
+    if (after != null) {
+      conditions.add(
+          "(run.submission_timestamp, run.run_id) > (:afterSubmissionTimestamp, :afterRunId)");
+      params.put("afterSubmissionTimestamp", after.submissionTimestamp());
+      params.put("afterRunId", after.id());
+    }
+    return new WhereClause(conditions, params);
+  }
+
+  /**
+   * Reads runs for polling, aborting or completing them. Unlike {@link #getRuns}, only the run
+   * table is queried per run: the run set of the runs is read once per run set, and shared by its
+   * runs.
+   */
+  public List<PollableRun> getPollableRuns(RunsFilters filters) {
+    WhereClause whereClause = filters.buildWhereClause();
+    String sql = "SELECT %s FROM run %s".formatted(POLLABLE_RUN_COLUMNS, whereClause);
+    return withPollableRunSets(
+        jdbcTemplate.query(
+            sql, new MapSqlParameterSource(whereClause.params()), new PollableRunRowMapper()));
+  }
+
+  /**
+   * Reads the runs with the given engine IDs in one query, as {@link #getPollableRuns} reads runs.
+   */
+  public List<PollableRun> getPollableRunsByEngineIds(Collection<String> engineIds) {
+    if (engineIds.isEmpty()) {
+      return List.of();
+    }
+    return withPollableRunSets(
+        jdbcTemplate.query(
+            "SELECT %s FROM run WHERE run.engine_id IN (:engineIds)"
+                .formatted(POLLABLE_RUN_COLUMNS),
+            new MapSqlParameterSource("engineIds", engineIds),
+            new PollableRunRowMapper()));
+  }
+
+  /** Whether a run was submitted to the engine with the given engine ID. */
+  public boolean engineIdExists(String engineId) {
+    return Boolean.TRUE.equals(
+        jdbcTemplate.queryForObject(
+            "SELECT EXISTS (SELECT 1 FROM run WHERE engine_id = :engine_id)",
+            new MapSqlParameterSource(Run.ENGINE_ID_COL, engineId),
+            Boolean.class));
+  }
+
+  /**
+   * Claims the non-terminal runs submitted to the engine that were last polled before {@code
+   * polledBefore}, least recently polled first, among the runs of run sets with an unexpired user
+   * token (see {@link RunSetUserTokenDao}). Claimed runs count as polled now, and runs locked by
+   * another instance's claim are skipped, so that CBAS instances polling at the same time poll
+   * different runs. The runs are read as by {@link #getPollableRuns}, with the last polled
+   * timestamps they had before they were claimed.
+   *
+   * @param limit the maximum number of runs claimed
+   */
+  public List<PollableRun> claimRunsToPoll(OffsetDateTime polledBefore, int limit) {
+    List<String> conditions =
+        List.of(
+            NON_TERMINAL_STATUS_CONDITION,
+            "run.engine_id IS NOT NULL",
+            "run.last_polled_timestamp < :polledBefore",
+            "run.run_set_id IN (SELECT run_set_id FROM run_set_user_token WHERE user_token_expires_timestamp > now())");
+    Map<String, Object> params =
+        Map.of(
+            "polledBefore",
+            polledBefore,
+            "limit",
+            limit,
+            Run.LAST_POLLED_TIMESTAMP_COL,
+            DateUtils.currentTimeInUTC());
+
+    String sql =
+        "WITH claimed AS (SELECT run.run_id, run.last_polled_timestamp FROM run "
+            + new WhereClause(conditions, params)
+            + " ORDER BY run.last_polled_timestamp ASC LIMIT :limit FOR UPDATE SKIP LOCKED)"
+            + " UPDATE run SET last_polled_timestamp = :last_polled_timestamp FROM claimed"
+            + " WHERE run.run_id = claimed.run_id RETURNING "
+            + CLAIMED_RUN_COLUMNS;
+    return withPollableRunSets(
+        jdbcTemplate.query(sql, new MapSqlParameterSource(params), new PollableRunRowMapper()));
+  }
+
+  private List<PollableRun> withPollableRunSets(List<PollableRunRow> rows) {
+    if (rows.isEmpty()) {
+      return List.of();
+    }
+    Set<UUID> runSetIds = rows.stream().map(PollableRunRow::runSetId).collect(Collectors.toSet());
+    Map<UUID, PollableRunSet> runSets =
+        jdbcTemplate
+            .query(
+                POLLABLE_RUN_SET_SELECT_SQL,
+                new MapSqlParameterSource("runSetIds", runSetIds),
+                new PollableRunSetMapper())
+            .stream()
+            .collect(Collectors.toMap(PollableRunSet::runSetId, Function.identity()));
+    return rows.stream().map(row -> row.toRun(runSets.get(row.runSetId()))).toList();
+  }
+
+  /**
+   * The version of the runs listed by {@link #getRuns(RunsFilters, PageCursor, Integer)} for the
+   * same arguments, read without reading the runs. Only the listed runs are aggregated, along with
+   * the method and method version they are listed with.
+   */
+  public ListingVersion getRunsVersion(RunsFilters filters, PageCursor after, Integer limit) {
+    WhereClause pageClause = pageWhereClause(filters, after);
+    Map<String, Object> params = new HashMap<>(pageClause.params());
+    String listedRuns =
+        "SELECT run.run_set_id, run.last_modified_timestamp, run.last_polled_timestamp FROM run "
+            + pageClause;
+    if (limit != null) {
+      listedRuns =
+          listedRuns + " ORDER BY run.submission_timestamp ASC, run.run_id ASC LIMIT :limit";
+      params.put("limit", limit);
+    }
+    String sql =
+        "SELECT count(1) AS row_count,"
+            + " GREATEST(max(listed.last_modified_timestamp), max(method_version.method_version_last_modified_timestamp), max(method.method_last_modified_timestamp)) AS last_modified,"
+            + " max(listed.last_polled_timestamp) AS last_polled"
+            + " FROM (%s) AS listed".formatted(listedRuns)
+            + " INNER JOIN run_set ON listed.run_set_id = run_set.run_set_id"
+            + " INNER JOIN method_version ON run_set.method_version_id = method_version.method_version_id "
+            + METHOD_VERSION_JOIN_METHOD;
+    return jdbcTemplate.queryForObject(
+        sql, new MapSqlParameterSource(params), new ListingVersionMapper());
+  }
+
   public Map<CbasRunStatus, StatusCountRecord> getRunStatusCounts(RunsFilters filters) {
     WhereClause whereClause = filters.buildWhereClause();
     String sql =
@@ -71,6 +303,74 @@ public class RunDao {
         .collect(Collectors.toMap(StatusCountRecord::status, r -> r));
   }
 
+  /**
+   * The run counts of a run set by status, read from the run_set_status_count table rather than
+   * counted from its runs. The counters are kept up to date by triggers on the run table whenever
+   * runs are created, change status or are deleted.
+   */
+  public Map<CbasRunStatus, StatusCountRecord> getRunSetStatusCounts(UUID runSetId) {
+    String sql =
+        "SELECT status, run_count as status_count, last_modified_timestamp as last_modified"
+            + " FROM run_set_status_count WHERE run_set_id = :runSetId AND run_count > 0";
+    return jdbcTemplate
+        .query(sql, new MapSqlParameterSource("runSetId", runSetId), new StatusCountMapper())
+        .stream()
+        .collect(Collectors.toMap(StatusCountRecord::status, r -> r));
+  }
+
+  /**
+   * The non-terminal run sets whose status counters do not match the statuses of their runs.
+   *
+   * @param limit the maximum number of run sets returned
+   */
+  public List<UUID> getRunSetsWithStaleStatusCounts(int limit) {
+    SqlPlaceholderMapping<String> statusMapping =
+        new SqlPlaceholderMapping<>(
+            "status",
+            CbasRunSetStatus.NON_TERMINAL_STATES.stream().map(CbasRunSetStatus::toString).toList());
+    String counted =
+        "SELECT run.status, count(1) FROM run WHERE run.run_set_id = run_set.run_set_id"
+            + " GROUP BY run.status";
+    String counters =
+        "SELECT c.status, c.run_count FROM run_set_status_count c"
+            + " WHERE c.run_set_id = run_set.run_set_id AND c.run_count <> 0";
+    String sql =
+        ("SELECT run_set.run_set_id FROM run_set WHERE run_set.is_template = false"
+                + " AND run_set.status in (%s)"
+                + " AND (EXISTS (%s EXCEPT %s) OR EXISTS (%s EXCEPT %s)) LIMIT :limit")
+            .formatted(
+                statusMapping.getSqlPlaceholderList(), counted, counters, counters, counted);
+    MapSqlParameterSource params =
+        new MapSqlParameterSource(statusMapping.getPlaceholderToValueMap())
+            .addValue("limit", limit);
+    return jdbcTemplate.queryForList(sql, params, UUID.class);
+  }
+
+  /**
+   * Recounts the status counters of a run set from its runs. The runs of the run set are locked
+   * first, so that no status change of theirs is lost to the recount.
+   *
+   * @return the number of counters written
+   */
+  @WriteTransaction
+  public int rebuildRunSetStatusCounts(UUID runSetId) {
+    MapSqlParameterSource params = new MapSqlParameterSource("runSetId", runSetId);
+    String sql =
+        "INSERT INTO run_set_status_count AS c (run_set_id, status, run_count, last_modified_timestamp)"
+            + " SELECT :runSetId, statuses.status, coalesce(counted.run_count, 0), counted.last_modified"
+            + " FROM (SELECT status FROM run_set_status_count WHERE run_set_id = :runSetId"
+            + " UNION SELECT status FROM run WHERE run_set_id = :runSetId) AS statuses"
+            + " LEFT JOIN (SELECT status, count(1) AS run_count, max(last_modified_timestamp) AS last_modified"
+            + " FROM run WHERE run_set_id = :runSetId GROUP BY status) AS counted"
+            + " ON counted.status = statuses.status"
+            + " ORDER BY statuses.status"
+            + " ON CONFLICT (run_set_id, status) DO UPDATE"
+            + " SET run_count = EXCLUDED.run_count, last_modified_timestamp = EXCLUDED.last_modified_timestamp";
+    jdbcTemplate.queryForList(
+        "SELECT run_id FROM run WHERE run_set_id = :runSetId FOR UPDATE", params, UUID.class);
+    return jdbcTemplate.update(sql, params);
+  }
+
   public int updateRunStatus(
       UUID runId, CbasRunStatus newStatus, OffsetDateTime lastModifiedTimestamp) {
     OffsetDateTime currentTimestamp = DateUtils.currentTimeInUTC();
@@ -112,6 +412,214 @@ public class RunDao {
                 currentTimestamp)));
   }
 
+  /**
+   * Sets the engine ID of many runs, and moves them all to the same status, using one {@code UPDATE
+   * ... FROM (VALUES ...)} statement per {@value #BULK_WRITE_BATCH_SIZE} runs.
+   *
+   * @param runIdToEngineId the engine ID to record for each run
+   * @return the number of rows updated
+   */
+  public int updateEngineIdsAndRunStatus(
+      Map<UUID, UUID> runIdToEngineId,
+      CbasRunStatus newStatus,
+      OffsetDateTime lastModifiedTimestamp) {
+    return bulkUpdateRuns(
+        runIdToEngineId,
+        Run.ENGINE_ID_COL,
+        UUID::toString,
+        "engine_id = v.engine_id",
+        newStatus,
+        lastModifiedTimestamp);
+  }
+
+  /**
+   * Records the engine IDs that QUEUED runs are about to be submitted with, before they are sent to
+   * the engine, using one {@code UPDATE ... FROM (VALUES ...)} statement per {@value
+   * #BULK_WRITE_BATCH_SIZE} runs. Runs that are no longer QUEUED are left unchanged.
+   *
+   * @return the number of rows updated
+   */
+  public int recordRequestedEngineIds(Map<UUID, UUID> runIdToEngineId) {
+    int updated = 0;
+    for (List<Map.Entry<UUID, UUID>> batch :
+        Lists.partition(List.copyOf(runIdToEngineId.entrySet()), BULK_WRITE_BATCH_SIZE)) {
+      MapSqlParameterSource params =
+          new MapSqlParameterSource(Run.STATUS_COL, CbasRunStatus.QUEUED.toString());
+      List<String> rows = new ArrayList<>();
+      for (int i = 0; i < batch.size(); i++) {
+        String runIdParam = "%s_%d".formatted(Run.RUN_ID_COL, i);
+        String engineIdParam = "%s_%d".formatted(Run.REQUESTED_ENGINE_ID_COL, i);
+        params.addValue(runIdParam, batch.get(i).getKey());
+        params.addValue(engineIdParam, batch.get(i).getValue().toString());
+        rows.add("(CAST(:%s AS uuid), :%s)".formatted(runIdParam, engineIdParam));
+      }
+      String sql =
+          ("UPDATE run SET requested_engine_id = v.requested_engine_id"
+                  + " FROM (VALUES %s) AS v(run_id, requested_engine_id)"
+                  + " WHERE run.run_id = v.run_id AND run.status = :status")
+              .formatted(String.join(", ", rows));
+      updated += jdbcTemplate.update(sql, params);
+    }
+    return updated;
+  }
+
+  /**
+   * The engine IDs recorded by {@link #recordRequestedEngineIds} for the runs of a run set that are
+   * still QUEUED, by run ID.
+   */
+  public Map<UUID, UUID> getRequestedEngineIds(UUID runSetId) {
+    Map<UUID, UUID> runIdToEngineId = new HashMap<>();
+    jdbcTemplate.query(
+        "SELECT run_id, requested_engine_id FROM run"
+            + " WHERE run_set_id = :runSetId AND status = :status AND requested_engine_id IS NOT NULL",
+        new MapSqlParameterSource()
+            .addValue("runSetId", runSetId)
+            .addValue(Run.STATUS_COL, CbasRunStatus.QUEUED.toString()),
+        rs -> {
+          runIdToEngineId.put(
+              rs.getObject(Run.RUN_ID_COL, UUID.class),
+              UUID.fromString(rs.getString(Run.REQUESTED_ENGINE_ID_COL)));
+        });
+    return runIdToEngineId;
+  }
+
+  /** The IDs of all the runs of a run set that are still QUEUED, by record ID. */
+  public Map<String, UUID> getQueuedRunIds(UUID runSetId) {
+    Map<String, UUID> recordIdToRunId = new HashMap<>();
+    jdbcTemplate.query(
+        "SELECT record_id, run_id FROM run WHERE run_set_id = :runSetId AND status = :status",
+        new MapSqlParameterSource()
+            .addValue("runSetId", runSetId)
+            .addValue(Run.STATUS_COL, CbasRunStatus.QUEUED.toString()),
+        rs -> {
+          recordIdToRunId.put(
+              rs.getString(Run.RECORD_ID_COL), rs.getObject(Run.RUN_ID_COL, UUID.class));
+        });
+    return recordIdToRunId;
+  }
+
+  /**
+   * The IDs of the runs of a run set that are still QUEUED among the runs of the given records, by
+   * record ID. Records without such a run are left out.
+   */
+  public Map<String, UUID> getQueuedRunIds(UUID runSetId, Collection<String> recordIds) {
+    Map<String, UUID> recordIdToRunId = new HashMap<>();
+    if (recordIds.isEmpty()) {
+      return recordIdToRunId;
+    }
+    jdbcTemplate.query(
+        "SELECT record_id, run_id FROM run"
+            + " WHERE run_set_id = :runSetId AND status = :status AND record_id IN (:recordIds)",
+        new MapSqlParameterSource()
+            .addValue("runSetId", runSetId)
+            .addValue(Run.STATUS_COL, CbasRunStatus.QUEUED.toString())
+            .addValue("recordIds", recordIds),
+        rs -> {
+          recordIdToRunId.put(
+              rs.getString(Run.RECORD_ID_COL), rs.getObject(Run.RUN_ID_COL, UUID.class));
+        });
+    return recordIdToRunId;
+  }
+
+  /**
+   * Moves many runs to the same (error) status, recording a separate error message for each, using
+   * one {@code UPDATE ... FROM (VALUES ...)} statement per {@value #BULK_WRITE_BATCH_SIZE} runs.
+   *
+   * @param runIdToErrorMessage the error message to record for each run
+   * @return the number of rows updated
+   */
+  public int updateRunStatusesWithErrors(
+      Map<UUID, String> runIdToErrorMessage,
+      CbasRunStatus newStatus,
+      OffsetDateTime lastModifiedTimestamp) {
+    return bulkUpdateRuns(
+        runIdToErrorMessage,
+        Run.ERROR_MESSAGES_COL,
+        Run::truncatedErrorMessage,
+        "error_messages = v.error_messages",
+        newStatus,
+        lastModifiedTimestamp);
+  }
+
+  private <A> int bulkUpdateRuns(
+      Map<UUID, A> runIdToValue,
+      String valueColumn,
+      Function<A, String> valueToParam,
+      String valueAssignment,
+      CbasRunStatus newStatus,
+      OffsetDateTime lastModifiedTimestamp) {
+    OffsetDateTime currentTimestamp = DateUtils.currentTimeInUTC();
+    int updated = 0;
+    for (List<Map.Entry<UUID, A>> batch :
+        Lists.partition(List.copyOf(runIdToValue.entrySet()), BULK_WRITE_BATCH_SIZE)) {
+      MapSqlParameterSource params =
+          new MapSqlParameterSource()
+              .addValue(Run.STATUS_COL, newStatus.toString())
+              .addValue(Run.LAST_MODIFIED_TIMESTAMP_COL, lastModifiedTimestamp)
+              .addValue(Run.LAST_POLLED_TIMESTAMP_COL, currentTimestamp);
+      List<String> rows = new ArrayList<>();
+      for (int i = 0; i < batch.size(); i++) {
+        String runIdParam = "%s_%d".formatted(Run.RUN_ID_COL, i);
+        String valueParam = "%s_%d".formatted(valueColumn, i);
+        params.addValue(runIdParam, batch.get(i).getKey());
+        params.addValue(valueParam, valueToParam.apply(batch.get(i).getValue()));
+        rows.add("(CAST(:%s AS uuid), :%s)".formatted(runIdParam, valueParam));
+      }
+      String sql =
+          ("UPDATE run SET %s, status = :status, last_modified_timestamp = :last_modified_timestamp, last_polled_timestamp = :last_polled_timestamp"
+                  + " FROM (VALUES %s) AS v(run_id, %s) WHERE run.run_id = v.run_id")
+              .formatted(valueAssignment, String.join(", ", rows), valueColumn);
+      updated += jdbcTemplate.update(sql, params);
+    }
+    return updated;
+  }
+
+  /**
+   * The new status of a run, written along with others by {@link #updateRunStatuses}.
+   *
+   * @param errorMessages replaces the run's error messages, unless null
+   */
+  public record RunStatusUpdate(
+      UUID runId,
+      CbasRunStatus status,
+      OffsetDateTime lastModifiedTimestamp,
+      String errorMessages) {}
+
+  /**
+   * Moves many runs to a status of their own, using one {@code UPDATE ... FROM (VALUES ...)}
+   * statement per {@value #BULK_WRITE_BATCH_SIZE} runs.
+   *
+   * @return the IDs of the runs that were updated
+   */
+  public Set<UUID> updateRunStatuses(List<RunStatusUpdate> updates) {
+    OffsetDateTime currentTimestamp = DateUtils.currentTimeInUTC();
+    Set<UUID> updated = new HashSet<>();
+    for (List<RunStatusUpdate> batch : Lists.partition(updates, BULK_WRITE_BATCH_SIZE)) {
+      MapSqlParameterSource params =
+          new MapSqlParameterSource(Run.LAST_POLLED_TIMESTAMP_COL, currentTimestamp);
+      List<String> rows = new ArrayList<>();
+      for (int i = 0; i < batch.size(); i++) {
+        RunStatusUpdate update = batch.get(i);
+        params
+            .addValue("run_id_" + i, update.runId())
+            .addValue("status_" + i, update.status().toString())
+            .addValue("last_modified_timestamp_" + i, update.lastModifiedTimestamp())
+            .addValue("error_messages_" + i, truncatedErrorMessage(update.errorMessages()));
+        rows.add(
+            "(CAST(:run_id_%1$d AS uuid), :status_%1$d, CAST(:last_modified_timestamp_%1$d AS timestamptz), CAST(:error_messages_%1$d AS text))"
+                .formatted(i));
+      }
+      String sql =
+          ("UPDATE run SET status = v.status, last_modified_timestamp = v.last_modified_timestamp, last_polled_timestamp = :last_polled_timestamp,"
+                  + " error_messages = COALESCE(v.error_messages, run.error_messages)"
+                  + " FROM (VALUES %s) AS v(run_id, status, last_modified_timestamp, error_messages)"
+                  + " WHERE run.run_id = v.run_id RETURNING run.run_id")
+              .formatted(String.join(", ", rows));
+      updated.addAll(jdbcTemplate.queryForList(sql, params, UUID.class));
+    }
+    return updated;
+  }
+
   public int updateRunStatusWithError(
       UUID runId,
       CbasRunStatus newStatus,
@@ -149,6 +657,27 @@ public class RunDao {
                 DateUtils.currentTimeInUTC())));
   }
 
+  /**
+   * Updates the last polled timestamp of many runs in one statement per {@value
+   * #BULK_WRITE_BATCH_SIZE} runs.
+   *
+   * @return the IDs of the runs that were updated
+   */
+  public Set<UUID> updateLastPolledTimestamps(Collection<UUID> runIds) {
+    OffsetDateTime currentTimestamp = DateUtils.currentTimeInUTC();
+    Set<UUID> updated = new HashSet<>();
+    for (List<UUID> batch : Lists.partition(List.copyOf(runIds), BULK_WRITE_BATCH_SIZE)) {
+      updated.addAll(
+          jdbcTemplate.queryForList(
+              "UPDATE run SET last_polled_timestamp = :last_polled_timestamp WHERE run_id IN (:run_ids) RETURNING run_id",
+              new MapSqlParameterSource()
+                  .addValue(Run.LAST_POLLED_TIMESTAMP_COL, currentTimestamp)
+                  .addValue("run_ids", batch),
+              UUID.class));
+    }
+    return updated;
+  }
+
   public record RunsFilters(UUID runSetId, Collection<CbasRunStatus> statuses, String engineId) {
     public RunsFilters(UUID runSetId, Collection<CbasRunStatus> statuses) {
       this(runSetId, statuses, null);
@@ -187,9 +716,22 @@ public class RunDao {
     }
   }
 
+  /**
+   * Maps the rows of a single query. The runs of a run set share one RunSet, mapped from the first
+   * of their rows, rather than each holding its own copy of the run set's definitions and method
+   * version.
+   */
   private static class RunMapper implements RowMapper<Run> {
+    private final RunSetMapper runSetMapper = new RunSetMapper();
+    private final Map<UUID, RunSet> runSets = new HashMap<>();
+
     public Run mapRow(ResultSet rs, int rowNum) throws SQLException {
-      RunSet runSet = new RunSetMapper().mapRow(rs, rowNum);
+      UUID runSetId = rs.getObject(Run.RUN_SET_ID_COL, UUID.class);
+      RunSet runSet = runSets.get(runSetId);
+      if (runSet == null) {
+        runSet = runSetMapper.mapRow(rs, rowNum);
+        runSets.put(runSetId, runSet);
+      }
 
       return new Run(
           rs.getObject(Run.RUN_ID_COL, UUID.class),
@@ -204,6 +746,47 @@ public class RunDao {
     }
   }
 
+  // A run as read from the run table alone, before its run set is attached
+  private record PollableRunRow(
+      UUID runId,
+      String engineId,
+      UUID runSetId,
+      String recordId,
+      CbasRunStatus status,
+      OffsetDateTime lastModifiedTimestamp,
+      OffsetDateTime lastPolledTimestamp) {
+
+    PollableRun toRun(PollableRunSet runSet) {
+      return new PollableRun(
+          runId, engineId, runSet, recordId, status, lastModifiedTimestamp, lastPolledTimestamp);
+    }
+  }
+
+  private static class PollableRunRowMapper implements RowMapper<PollableRunRow> {
+    public PollableRunRow mapRow(ResultSet rs, int rowNum) throws SQLException {
+      return new PollableRunRow(
+          rs.getObject(Run.RUN_ID_COL, UUID.class),
+          rs.getString(Run.ENGINE_ID_COL),
+          rs.getObject(Run.RUN_SET_ID_COL, UUID.class),
+          rs.getString(Run.RECORD_ID_COL),
+          CbasRunStatus.fromValue(rs.getString(Run.STATUS_COL)),
+          rs.getObject(Run.LAST_MODIFIED_TIMESTAMP_COL, OffsetDateTime.class),
+          rs.getObject(Run.LAST_POLLED_TIMESTAMP_COL, OffsetDateTime.class));
+    }
+  }
+
+  static class PollableRunSetMapper implements RowMapper<PollableRunSet> {
+    public PollableRunSet mapRow(ResultSet rs, int rowNum) throws SQLException {
+      return new PollableRunSet(
+          rs.getObject(RunSet.RUN_SET_ID_COL, UUID.class),
+          CbasRunSetStatus.fromValue(rs.getString(RunSet.STATUS_COL)),
+          rs.getObject(RunSet.LAST_POLLED_TIMESTAMP_COL, OffsetDateTime.class),
+          rs.getInt(RunSet.RUN_COUNT_COL),
+          rs.getInt(RunSet.ERROR_COUNT_COL),
+          rs.getString(RunSet.RECORD_TYPE_COL));
+    }
+  }
+
   public record StatusCountRecord(
       CbasRunStatus status, Integer count, OffsetDateTime lastModified) {}
 
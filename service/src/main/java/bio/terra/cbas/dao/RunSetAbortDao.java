@@ -0,0 +1,97 @@
+package bio.terra.cbas.dao;
+
+import bio.terra.cbas.common.DateUtils;
+import bio.terra.cbas.models.RunSetAbort;
+import bio.terra.cbas.models.RunSetAbortStatus;
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.time.OffsetDateTime;
+import java.util.Optional;
+import java.util.UUID;
+import org.springframework.jdbc.core.RowMapper;
+import org.springframework.jdbc.core.namedparam.MapSqlParameterSource;
+import org.springframework.jdbc.core.namedparam.NamedParameterJdbcTemplate;
+import org.springframework.stereotype.Repository;
+
+/** The progress of aborting run sets, one row per run set that was aborted. */
+@Repository
+public class RunSetAbortDao {
+
+  private final NamedParameterJdbcTemplate jdbcTemplate;
+
+  public RunSetAbortDao(NamedParameterJdbcTemplate jdbcTemplate) {
+    this.jdbcTemplate = jdbcTemplate;
+  }
+
+  /**
+   * Starts tracking the abort of a run set, replacing the progress of any earlier abort of the run
+   * set. An abort that is still running is only replaced once it has made no progress for {@code
+   * staleSeconds}, which happens when the instance sending its abort requests went away.
+   *
+   * @return 0 if another abort of the run set is still running, 1 otherwise
+   */
+  public int startAbort(UUID runSetId, int runsToAbort, int staleSeconds) {
+    OffsetDateTime currentTimestamp = DateUtils.currentTimeInUTC();
+    return jdbcTemplate.update(
+        "INSERT INTO run_set_abort (run_set_id, status, runs_to_abort, submission_timestamp, last_modified_timestamp)"
+            + " VALUES (:run_set_id, :status, :runs_to_abort, :submission_timestamp, :last_modified_timestamp)"
+            + " ON CONFLICT (run_set_id) DO UPDATE SET status = EXCLUDED.status, runs_to_abort = EXCLUDED.runs_to_abort, abort_requests_submitted = 0, abort_requests_failed = 0, failed_run_ids = NULL,"
+            + " submission_timestamp = EXCLUDED.submission_timestamp, last_modified_timestamp = EXCLUDED.last_modified_timestamp"
+            + " WHERE run_set_abort.status <> :status OR run_set_abort.last_modified_timestamp < now() - :stale_seconds * interval '1 second'",
+        new MapSqlParameterSource()
+            .addValue(RunSetAbort.RUN_SET_ID_COL, runSetId)
+            .addValue(RunSetAbort.STATUS_COL, RunSetAbortStatus.RUNNING.toString())
+            .addValue(RunSetAbort.RUNS_TO_ABORT_COL, runsToAbort)
+            .addValue(RunSetAbort.SUBMISSION_TIMESTAMP_COL, currentTimestamp)
+            .addValue(RunSetAbort.LAST_MODIFIED_TIMESTAMP_COL, currentTimestamp)
+            .addValue("stale_seconds", staleSeconds));
+  }
+
+  public int recordAbortRequestSubmitted(UUID runSetId) {
+    return jdbcTemplate.update(
+        "UPDATE run_set_abort SET abort_requests_submitted = abort_requests_submitted + 1, last_modified_timestamp = now()"
+            + " WHERE run_set_id = :run_set_id",
+        new MapSqlParameterSource(RunSetAbort.RUN_SET_ID_COL, runSetId));
+  }
+
+  public int recordAbortRequestFailed(UUID runSetId, UUID runId) {
+    return jdbcTemplate.update(
+        "UPDATE run_set_abort SET abort_requests_failed = abort_requests_failed + 1, failed_run_ids = concat_ws(',', failed_run_ids, :run_id), last_modified_timestamp = now()"
+            + " WHERE run_set_id = :run_set_id",
+        new MapSqlParameterSource()
+            .addValue(RunSetAbort.RUN_SET_ID_COL, runSetId)
+            .addValue("run_id", runId.toString()));
+  }
+
+  public int completeAbort(UUID runSetId) {
+    return jdbcTemplate.update(
+        "UPDATE run_set_abort SET status = :status, last_modified_timestamp = now() WHERE run_set_id = :run_set_id",
+        new MapSqlParameterSource()
+            .addValue(RunSetAbort.RUN_SET_ID_COL, runSetId)
+            .addValue(RunSetAbort.STATUS_COL, RunSetAbortStatus.COMPLETE.toString()));
+  }
+
+  public Optional<RunSetAbort> getAbort(UUID runSetId) {
+    return jdbcTemplate
+        .query(
+            "SELECT * FROM run_set_abort WHERE run_set_id = :run_set_id",
+            new MapSqlParameterSource(RunSetAbort.RUN_SET_ID_COL, runSetId),
+            new RunSetAbortMapper())
+        .stream()
+        .findFirst();
+  }
+
+  private static class RunSetAbortMapper implements RowMapper<RunSetAbort> {
+    public RunSetAbort mapRow(ResultSet rs, int rowNum) throws SQLException {
+      return new RunSetAbort(
+          rs.getObject(RunSetAbort.RUN_SET_ID_COL, UUID.class),
+          RunSetAbortStatus.valueOf(rs.getString(RunSetAbort.STATUS_COL)),
+          rs.getInt(RunSetAbort.RUNS_TO_ABORT_COL),
+          rs.getInt(RunSetAbort.ABORT_REQUESTS_SUBMITTED_COL),
+          rs.getInt(RunSetAbort.ABORT_REQUESTS_FAILED_COL),
+          rs.getString(RunSetAbort.FAILED_RUN_IDS_COL),
+          rs.getObject(RunSetAbort.SUBMISSION_TIMESTAMP_COL, OffsetDateTime.class),
+          rs.getObject(RunSetAbort.LAST_MODIFIED_TIMESTAMP_COL, OffsetDateTime.class));
+    }
+  }
+}
@@ -5,10 +5,14 @@ import static bio.terra.cbas.dao.MethodVersionDao.METHOD_VERSION_JOIN_GITHUB_MET
 import static bio.terra.cbas.dao.MethodVersionDao.METHOD_VERSION_JOIN_METHOD;
 
 import bio.terra.cbas.common.DateUtils;
+import bio.terra.cbas.dao.mappers.ListingVersionMapper;
 import bio.terra.cbas.dao.mappers.RunSetMapper;
+import bio.terra.cbas.dao.util.ListingVersion;
+import bio.terra.cbas.dao.util.PageCursor;
 import bio.terra.cbas.dao.util.SqlPlaceholderMapping;
 import bio.terra.cbas.models.CbasRunSetStatus;
 import bio.terra.cbas.models.MethodVersion;
+import bio.terra.cbas.models.PollableRunSet;
 import bio.terra.cbas.models.RunSet;
 import java.time.OffsetDateTime;
 import java.util.HashMap;
@@ -34,6 +38,26 @@ public class RunSetDao {
           .formatted(RunSet.METHOD_VERSION_ID_COL, MethodVersion.METHOD_VERSION_ID_COL);
 
   public List<RunSet> getRunSets(Integer pageSize, boolean isTemplate) {
+    return getRunSets(pageSize, null, isTemplate);
+  }
+
+  /**
+   * Run sets in order of submission, most recent first. Pages are read by position (keyset
+   * pagination) rather than by offset.
+   *
+   * @param pageSize the maximum number of run sets returned, or null for all of them
+   * @param after the position of the last run set of the previous page, or null for the first page
+   */
+  public List<RunSet> getRunSets(Integer pageSize, PageCursor after, boolean isTemplate) {
+    HashMap<String, Object> parameterMap = new HashMap<>(Map.of("isTemplate", isTemplate));
+    String afterCondition = "";
+    if (after != null) {
+      afterCondition =
+          "AND (run_set.submission_timestamp, run_set.run_set_id) < (:afterSubmissionTimestamp, :afterRunSetId) ";
+      parameterMap.put("afterSubmissionTimestamp", after.submissionTimestamp());
+      parameterMap.put("afterRunSetId", after.id());
+    }
+
     String sql =
         "SELECT * FROM run_set "
             + RUN_SET_JOIN_METHOD_VERSION
@@ -41,9 +65,8 @@ public class RunSetDao {
             + METHOD_VERSION_JOIN_GITHUB_METHOD_VERSION_DETAILS
             + METHOD_JOIN_GITHUB_METHOD_DETAILS
             + "WHERE run_set.is_template = :isTemplate "
-            + "ORDER BY run_set.submission_timestamp DESC";
-
-    HashMap<String, Object> parameterMap = new HashMap<>(Map.of("isTemplate", isTemplate));
+            + afterCondition
+            + "ORDER BY run_set.submission_timestamp DESC, run_set.run_set_id DESC";
 
     if (pageSize != null) {
       sql = sql + " LIMIT :pageSize";
@@ -53,6 +76,44 @@ public class RunSetDao {
     return jdbcTemplate.query(sql, new MapSqlParameterSource(parameterMap), new RunSetMapper());
   }
 
+  /** The version of the run sets listed by {@link #getRunSets}, read without reading them. */
+  public ListingVersion getRunSetsVersion(boolean isTemplate) {
+    String sql =
+        "SELECT count(1) AS row_count, max(last_modified_timestamp) AS last_modified, max(last_polled_timestamp) AS last_polled"
+            + " FROM run_set WHERE is_template = :isTemplate";
+    return jdbcTemplate.queryForObject(
+        sql, new MapSqlParameterSource("isTemplate", isTemplate), new ListingVersionMapper());
+  }
+
+  /**
+   * Claims the run sets that are not in a terminal status yet and were last polled before {@code
+   * polledBefore}, least recently polled first. Claimed run sets count as polled now, and run sets
+   * locked by another instance's claim are skipped, so that CBAS instances refreshing run sets at
+   * the same time refresh different ones. Only the columns of a {@link PollableRunSet} are read.
+   *
+   * @param limit the maximum number of run sets claimed
+   */
+  public List<PollableRunSet> claimRunSetsToRefresh(OffsetDateTime polledBefore, int limit) {
+    String sql =
+        ("UPDATE run_set SET last_polled_timestamp = :last_polled_timestamp WHERE run_set_id IN (SELECT run_set_id FROM run_set"
+                + " WHERE is_template = false AND status IN (:statuses) AND last_polled_timestamp < :polledBefore"
+                + " ORDER BY last_polled_timestamp ASC LIMIT :limit FOR UPDATE SKIP LOCKED)"
+                + " RETURNING %s")
+            .formatted(RunDao.POLLABLE_RUN_SET_COLUMNS);
+    return jdbcTemplate.query(
+        sql,
+        new MapSqlParameterSource()
+            .addValue(
+                "statuses",
+                CbasRunSetStatus.NON_TERMINAL_STATES.stream()
+                    .map(CbasRunSetStatus::toString)
+                    .toList())
+            .addValue("polledBefore", polledBefore)
+            .addValue("limit", limit)
+            .addValue(RunSet.LAST_POLLED_TIMESTAMP_COL, DateUtils.currentTimeInUTC()),
+        new RunDao.PollableRunSetMapper());
+  }
+
   public RunSet getRunSet(UUID runSetId) {
     String sql =
         "SELECT * FROM run_set "
@@ -66,6 +127,14 @@ public class RunSetDao {
         .get(0);
   }
 
+  /** The output definition of a run set, which does not change once the run set is created. */
+  public String getOutputDefinition(UUID runSetId) {
+    return jdbcTemplate.queryForObject(
+        "SELECT output_definition FROM run_set WHERE run_set_id = :runSetId",
+        new MapSqlParameterSource("runSetId", runSetId),
+        String.class);
+  }
+
   public RunSet getLatestRunSetWithMethodId(UUID methodId) {
     return getRunSetsWithMethodId(methodId).get(0);
   }
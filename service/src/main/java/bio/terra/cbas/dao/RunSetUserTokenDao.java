@@ -0,0 +1,103 @@
+package bio.terra.cbas.dao;
+
+import bio.terra.cbas.dao.util.UserTokenEncryption;
+import bio.terra.cbas.models.CbasRunSetStatus;
+import bio.terra.cbas.models.RunSet;
+import bio.terra.cbas.models.RunSetUserToken;
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.time.OffsetDateTime;
+import java.util.Collection;
+import java.util.List;
+import java.util.Map;
+import java.util.UUID;
+import java.util.stream.Collectors;
+import org.springframework.jdbc.core.RowMapper;
+import org.springframework.jdbc.core.namedparam.MapSqlParameterSource;
+import org.springframework.jdbc.core.namedparam.NamedParameterJdbcTemplate;
+import org.springframework.stereotype.Repository;
+
+/**
+ * The tokens of the users who submitted the run sets that are not terminal yet, which the
+ * background poll engine polls each run set's runs with. Tokens are stored encrypted (see {@link
+ * UserTokenEncryption}), are replaced by newer tokens of the same user, and are deleted once
+ * expired or once their run set is terminal.
+ */
+@Repository
+public class RunSetUserTokenDao {
+
+  private final NamedParameterJdbcTemplate jdbcTemplate;
+  private final UserTokenEncryption userTokenEncryption;
+
+  private static final List<String> NON_TERMINAL_STATUSES =
+      CbasRunSetStatus.NON_TERMINAL_STATES.stream().map(CbasRunSetStatus::toString).toList();
+
+  public RunSetUserTokenDao(
+      NamedParameterJdbcTemplate jdbcTemplate, UserTokenEncryption userTokenEncryption) {
+    this.jdbcTemplate = jdbcTemplate;
+    this.userTokenEncryption = userTokenEncryption;
+  }
+
+  /**
+   * Stores a user's token for each of the non-terminal run sets the user submitted, unless the run
+   * set already has a token that expires later.
+   *
+   * @param userId the Sam subject ID of the user
+   * @return the number of run sets whose token was stored
+   */
+  public int storeUserToken(String userId, String userToken) {
+    return jdbcTemplate.update(
+        "INSERT INTO run_set_user_token (run_set_id, user_token, user_token_expires_timestamp)"
+            + " SELECT run_set_id, :user_token, :user_token_expires_timestamp FROM run_set"
+            + " WHERE user_id = :user_id AND is_template = false AND status IN (:statuses)"
+            + " ON CONFLICT (run_set_id) DO UPDATE SET user_token = EXCLUDED.user_token, user_token_expires_timestamp = EXCLUDED.user_token_expires_timestamp"
+            + " WHERE run_set_user_token.user_token_expires_timestamp < EXCLUDED.user_token_expires_timestamp",
+        new MapSqlParameterSource()
+            .addValue(RunSet.USER_ID_COL, userId)
+            .addValue("statuses", NON_TERMINAL_STATUSES)
+            .addValue(RunSetUserToken.USER_TOKEN_COL, userTokenEncryption.encrypt(userToken))
+            .addValue(
+                RunSetUserToken.USER_TOKEN_EXPIRES_TIMESTAMP_COL,
+                userTokenEncryption.expiry(userToken)));
+  }
+
+  /**
+   * Reads the tokens of the given run sets.
+   *
+   * @return the token of each run set that has an unexpired token
+   */
+  public Map<UUID, String> getUserTokens(Collection<UUID> runSetIds) {
+    if (runSetIds.isEmpty()) {
+      return Map.of();
+    }
+    return jdbcTemplate
+        .query(
+            "SELECT * FROM run_set_user_token WHERE run_set_id IN (:run_set_ids) AND user_token_expires_timestamp > now()",
+            new MapSqlParameterSource("run_set_ids", runSetIds),
+            runSetUserTokenMapper)
+        .stream()
+        .filter(token -> token.userToken() != null)
+        .collect(Collectors.toMap(RunSetUserToken::runSetId, RunSetUserToken::userToken));
+  }
+
+  /**
+   * Deletes the tokens that expired and the tokens of run sets that are terminal.
+   *
+   * @return the number of tokens deleted
+   */
+  public int deleteUnusableUserTokens() {
+    return jdbcTemplate.update(
+        "DELETE FROM run_set_user_token WHERE user_token_expires_timestamp <= now()"
+            + " OR run_set_id IN (SELECT run_set_id FROM run_set WHERE status NOT IN (:statuses))",
+        new MapSqlParameterSource("statuses", NON_TERMINAL_STATUSES));
+  }
+
+  private final RowMapper<RunSetUserToken> runSetUserTokenMapper = this::mapRunSetUserToken;
+
+  private RunSetUserToken mapRunSetUserToken(ResultSet rs, int rowNum) throws SQLException {
+    return new RunSetUserToken(
+        rs.getObject(RunSetUserToken.RUN_SET_ID_COL, UUID.class),
+        userTokenEncryption.decrypt(rs.getString(RunSetUserToken.USER_TOKEN_COL)).orElse(null),
+        rs.getObject(RunSetUserToken.USER_TOKEN_EXPIRES_TIMESTAMP_COL, OffsetDateTime.class));
+  }
+}
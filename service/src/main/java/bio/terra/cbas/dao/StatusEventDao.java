@@ -0,0 +1,128 @@
+package bio.terra.cbas.dao;
+
+import bio.terra.cbas.dao.util.StatusEventCursor;
+import bio.terra.cbas.models.StatusEvent;
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.time.OffsetDateTime;
+import java.util.List;
+import java.util.Optional;
+import java.util.UUID;
+import org.springframework.jdbc.core.RowMapper;
+import org.springframework.jdbc.core.namedparam.MapSqlParameterSource;
+import org.springframework.jdbc.core.namedparam.NamedParameterJdbcTemplate;
+import org.springframework.stereotype.Repository;
+
+/**
+ * Reads the status events that triggers on the run and run_set tables record (see {@link
+ * StatusEvent}).
+ *
+ * <p>Event IDs are handed out when events are recorded, not when their transactions commit, so a
+ * reader that went by event ID alone could move past an event whose transaction commits late.
+ * Events are therefore read in the order of the transactions that recorded them, and only up to
+ * the oldest transaction that is still running: every event recorded from then on belongs to that
+ * transaction or a later one, so it comes after everything read so far.
+ *
+ * <p>The oldest running transaction is the oldest of the whole database server, not only of the
+ * transactions that record events: while any transaction stays open, such as a long report or a
+ * stuck session, the events recorded after it started are held back from every reader until it
+ * finishes. {@link #getOldestHeldBackEventTimestamp()} tells how far behind readers are.
+ */
+@Repository
+public class StatusEventDao {
+
+  private final NamedParameterJdbcTemplate jdbcTemplate;
+
+  // Transactions older than this have all finished, in the snapshot of the current statement
+  private static final String OLDEST_RUNNING_TRANSACTION_SQL =
+      "pg_snapshot_xmin(pg_current_snapshot())::text::bigint";
+
+  public StatusEventDao(NamedParameterJdbcTemplate jdbcTemplate) {
+    this.jdbcTemplate = jdbcTemplate;
+  }
+
+  /** The position after every event that can be read now, to stream the events that follow. */
+  public StatusEventCursor getCurrentCursor() {
+    Long oldestRunningTransaction =
+        jdbcTemplate.queryForObject(
+            "SELECT " + OLDEST_RUNNING_TRANSACTION_SQL, new MapSqlParameterSource(), Long.class);
+    return new StatusEventCursor(oldestRunningTransaction, 0);
+  }
+
+  /** The position of the last event that can be read now, if there is one. */
+  public Optional<StatusEventCursor> getLatestCursor() {
+    return jdbcTemplate
+        .query(
+            "SELECT transaction_id, event_id FROM status_event WHERE transaction_id < %s"
+                    .formatted(OLDEST_RUNNING_TRANSACTION_SQL)
+                + " ORDER BY transaction_id DESC, event_id DESC LIMIT 1",
+            new MapSqlParameterSource(),
+            (rs, rowNum) ->
+                new StatusEventCursor(
+                    rs.getLong(StatusEvent.TRANSACTION_ID_COL),
+                    rs.getLong(StatusEvent.EVENT_ID_COL)))
+        .stream()
+        .findFirst();
+  }
+
+  /**
+   * The time the oldest committed event that can not be read yet was recorded, because a
+   * transaction that started before it is still running.
+   */
+  public Optional<OffsetDateTime> getOldestHeldBackEventTimestamp() {
+    return Optional.ofNullable(
+        jdbcTemplate.queryForObject(
+            "SELECT min(event_timestamp) FROM status_event WHERE transaction_id >= %s"
+                .formatted(OLDEST_RUNNING_TRANSACTION_SQL),
+            new MapSqlParameterSource(),
+            OffsetDateTime.class));
+  }
+
+  /**
+   * @param runSetId the run set whose events to read, or null for the events of all run sets
+   * @param after the position of the last event read
+   * @param limit the maximum number of events to read
+   * @return the events after {@code after}, in the order they are read
+   */
+  public List<StatusEvent> getEventsAfter(UUID runSetId, StatusEventCursor after, int limit) {
+    String sql =
+        ("SELECT * FROM status_event"
+                + " WHERE (transaction_id, event_id) > (:transaction_id, :event_id)"
+                + " AND transaction_id < %s"
+                + (runSetId == null ? "" : " AND run_set_id = :run_set_id")
+                + " ORDER BY transaction_id, event_id LIMIT :limit")
+            .formatted(OLDEST_RUNNING_TRANSACTION_SQL);
+    return jdbcTemplate.query(
+        sql,
+        new MapSqlParameterSource()
+            .addValue(StatusEvent.TRANSACTION_ID_COL, after.transactionId())
+            .addValue(StatusEvent.EVENT_ID_COL, after.eventId())
+            .addValue(StatusEvent.RUN_SET_ID_COL, runSetId)
+            .addValue("limit", limit),
+        new StatusEventMapper());
+  }
+
+  /**
+   * Deletes the events recorded before {@code before}. Clients resuming a stream from an older
+   * event miss the events deleted in between.
+   *
+   * @return the number of events deleted
+   */
+  public int deleteEventsBefore(OffsetDateTime before) {
+    return jdbcTemplate.update(
+        "DELETE FROM status_event WHERE event_timestamp < :before",
+        new MapSqlParameterSource("before", before));
+  }
+
+  private static class StatusEventMapper implements RowMapper<StatusEvent> {
+    public StatusEvent mapRow(ResultSet rs, int rowNum) throws SQLException {
+      return new StatusEvent(
+          rs.getLong(StatusEvent.EVENT_ID_COL),
+          rs.getLong(StatusEvent.TRANSACTION_ID_COL),
+          rs.getObject(StatusEvent.RUN_SET_ID_COL, UUID.class),
+          rs.getObject(StatusEvent.RUN_ID_COL, UUID.class),
+          rs.getString(StatusEvent.STATUS_COL),
+          rs.getObject(StatusEvent.EVENT_TIMESTAMP_COL, OffsetDateTime.class));
+    }
+  }
+}
@@ -0,0 +1,263 @@
+package bio.terra.cbas.dao;
+
+import static bio.terra.cbas.models.Run.truncatedErrorMessage;
+
+import bio.terra.cbas.common.DateUtils;
+import bio.terra.cbas.dao.util.UserTokenEncryption;
+import bio.terra.cbas.models.SubmissionJob;
+import bio.terra.cbas.models.SubmissionJobStatus;
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.time.OffsetDateTime;
+import java.util.Collection;
+import java.util.Optional;
+import java.util.UUID;
+import org.springframework.jdbc.core.RowMapper;
+import org.springframework.jdbc.core.namedparam.MapSqlParameterSource;
+import org.springframework.jdbc.core.namedparam.NamedParameterJdbcTemplate;
+import org.springframework.stereotype.Repository;
+
+/**
+ * The queue of run set submissions waiting for, or claimed by, a submission worker. Workers claim
+ * jobs with a lease that they keep renewing while they work on the job. Leases are timed with the
+ * database clock so that the clocks of the CBAS instances sharing the queue do not matter.
+ *
+ * <p>The user token that a job is submitted with is stored encrypted (see {@link
+ * UserTokenEncryption}) until the job ends or the token expires. Jobs read once their token has
+ * expired come without a token.
+ */
+@Repository
+public class SubmissionJobDao {
+
+  private final NamedParameterJdbcTemplate jdbcTemplate;
+  private final UserTokenEncryption userTokenEncryption;
+
+  private static final String LEASE_EXPIRY_SQL = "now() + :lease_seconds * interval '1 second'";
+
+  public SubmissionJobDao(
+      NamedParameterJdbcTemplate jdbcTemplate, UserTokenEncryption userTokenEncryption) {
+    this.jdbcTemplate = jdbcTemplate;
+    this.userTokenEncryption = userTokenEncryption;
+  }
+
+  /**
+   * @param recordsRegistered the number of records of a large run set whose runs were registered
+   *     along with it
+   */
+  public int createJob(
+      UUID runSetId,
+      String runSetRequest,
+      String rawMethodUrl,
+      String userToken,
+      boolean largeRunSet,
+      int recordsRegistered) {
+    OffsetDateTime currentTimestamp = DateUtils.currentTimeInUTC();
+    return jdbcTemplate.update(
+        "INSERT INTO submission_job (run_set_id, status, run_set_request, raw_method_url, user_token, user_token_expires_timestamp, large_run_set, records_registered, submission_timestamp, last_modified_timestamp)"
+            + " VALUES (:run_set_id, :status, :run_set_request, :raw_method_url, :user_token, :user_token_expires_timestamp, :large_run_set, :records_registered, :submission_timestamp, :last_modified_timestamp)",
+        new MapSqlParameterSource()
+            .addValue(SubmissionJob.RUN_SET_ID_COL, runSetId)
+            .addValue(SubmissionJob.STATUS_COL, SubmissionJobStatus.QUEUED.toString())
+            .addValue(SubmissionJob.RUN_SET_REQUEST_COL, runSetRequest)
+            .addValue(SubmissionJob.RAW_METHOD_URL_COL, rawMethodUrl)
+            .addValue(SubmissionJob.USER_TOKEN_COL, userTokenEncryption.encrypt(userToken))
+            .addValue(
+                SubmissionJob.USER_TOKEN_EXPIRES_TIMESTAMP_COL,
+                userTokenEncryption.expiry(userToken))
+            .addValue(SubmissionJob.LARGE_RUN_SET_COL, largeRunSet)
+            .addValue(SubmissionJob.RECORDS_REGISTERED_COL, recordsRegistered)
+            .addValue(SubmissionJob.SUBMISSION_TIMESTAMP_COL, currentTimestamp)
+            .addValue(SubmissionJob.LAST_MODIFIED_TIMESTAMP_COL, currentTimestamp));
+  }
+
+  public Optional<SubmissionJob> getJob(UUID runSetId) {
+    return jdbcTemplate
+        .query(
+            "SELECT * FROM submission_job WHERE run_set_id = :run_set_id",
+            new MapSqlParameterSource(SubmissionJob.RUN_SET_ID_COL, runSetId),
+            submissionJobMapper)
+        .stream()
+        .findFirst();
+  }
+
+  /** Whether the run set has a submission that is queued or being worked on. */
+  public boolean hasPendingJob(UUID runSetId) {
+    return Boolean.TRUE.equals(
+        jdbcTemplate.queryForObject(
+            "SELECT EXISTS (SELECT 1 FROM submission_job WHERE run_set_id = :run_set_id AND status IN (:queued, :running))",
+            new MapSqlParameterSource()
+                .addValue(SubmissionJob.RUN_SET_ID_COL, runSetId)
+                .addValue("queued", SubmissionJobStatus.QUEUED.toString())
+                .addValue("running", SubmissionJobStatus.RUNNING.toString()),
+            Boolean.class));
+  }
+
+  /**
+   * Claims the oldest job that is either queued or whose previous worker let its lease expire. Jobs
+   * locked by another worker's claim are skipped rather than waited for, so workers in any number
+   * of CBAS instances can claim jobs at the same time without blocking each other.
+   *
+   * @param leaseOwner identifies the claiming worker in later calls
+   * @param leaseSeconds how long the job stays claimed unless the lease is renewed
+   * @return the claimed job, with its attempts already incremented, or empty if there is none
+   */
+  public Optional<SubmissionJob> claimNextJob(String leaseOwner, int leaseSeconds) {
+    String sql =
+        ("UPDATE submission_job SET status = :running, lease_owner = :lease_owner, lease_expires_timestamp = %s, attempts = attempts + 1, last_modified_timestamp = now()"
+                + " WHERE run_set_id = (SELECT run_set_id FROM submission_job"
+                + " WHERE status = :queued OR (status = :running AND lease_expires_timestamp < now())"
+                + " ORDER BY submission_timestamp LIMIT 1 FOR UPDATE SKIP LOCKED)"
+                + " RETURNING *")
+            .formatted(LEASE_EXPIRY_SQL);
+    return jdbcTemplate
+        .query(
+            sql,
+            new MapSqlParameterSource()
+                .addValue("queued", SubmissionJobStatus.QUEUED.toString())
+                .addValue("running", SubmissionJobStatus.RUNNING.toString())
+                .addValue(SubmissionJob.LEASE_OWNER_COL, leaseOwner)
+                .addValue("lease_seconds", leaseSeconds),
+            submissionJobMapper)
+        .stream()
+        .findFirst();
+  }
+
+  /**
+   * Extends the leases that a worker holds on the given jobs, in one statement.
+   *
+   * @return the number of jobs whose lease was renewed
+   */
+  public int renewLeases(String leaseOwner, Collection<UUID> runSetIds, int leaseSeconds) {
+    if (runSetIds.isEmpty()) {
+      return 0;
+    }
+    String sql =
+        ("UPDATE submission_job SET lease_expires_timestamp = %s"
+                + " WHERE run_set_id IN (:run_set_ids) AND lease_owner = :lease_owner AND status = :running")
+            .formatted(LEASE_EXPIRY_SQL);
+    return jdbcTemplate.update(
+        sql, leaseParams(leaseOwner, leaseSeconds).addValue("run_set_ids", runSetIds));
+  }
+
+  /**
+   * Records that one more batch of the job has been submitted and recorded, renewing its lease.
+   *
+   * @return 0 if the worker no longer holds the lease on the job, 1 otherwise
+   */
+  public int recordBatchCompleted(UUID runSetId, String leaseOwner, int leaseSeconds) {
+    String sql =
+        ("UPDATE submission_job SET batches_completed = batches_completed + 1, lease_expires_timestamp = %s, last_modified_timestamp = now()"
+                + " WHERE run_set_id = :run_set_id AND lease_owner = :lease_owner AND status = :running")
+            .formatted(LEASE_EXPIRY_SQL);
+    return jdbcTemplate.update(
+        sql,
+        leaseParams(leaseOwner, leaseSeconds).addValue(SubmissionJob.RUN_SET_ID_COL, runSetId));
+  }
+
+  /**
+   * Replaces the request of a job, renewing its lease. Used to record the IDs of the records that a
+   * large run set selecting all the records of a type is submitted for.
+   *
+   * @return 0 if the worker no longer holds the lease on the job, 1 otherwise
+   */
+  public int recordRunSetRequest(
+      UUID runSetId, String leaseOwner, String runSetRequest, int leaseSeconds) {
+    String sql =
+        ("UPDATE submission_job SET run_set_request = :run_set_request, lease_expires_timestamp = %s, last_modified_timestamp = now()"
+                + " WHERE run_set_id = :run_set_id AND lease_owner = :lease_owner AND status = :running")
+            .formatted(LEASE_EXPIRY_SQL);
+    return jdbcTemplate.update(
+        sql,
+        leaseParams(leaseOwner, leaseSeconds)
+            .addValue(SubmissionJob.RUN_SET_ID_COL, runSetId)
+            .addValue(SubmissionJob.RUN_SET_REQUEST_COL, runSetRequest));
+  }
+
+  /**
+   * Records that the runs for more records of a large run set have been registered, renewing its
+   * lease. Called before registering the runs, in the same transaction, so that no runs are
+   * registered once the lease is lost and a job claimed again carries on with the records that
+   * follow.
+   *
+   * @return 0 if the worker no longer holds the lease on the job, 1 otherwise
+   */
+  public int recordRunsRegistered(
+      UUID runSetId, String leaseOwner, int recordCount, int leaseSeconds) {
+    String sql =
+        ("UPDATE submission_job SET records_registered = records_registered + :record_count, lease_expires_timestamp = %s, last_modified_timestamp = now()"
+                + " WHERE run_set_id = :run_set_id AND lease_owner = :lease_owner AND status = :running")
+            .formatted(LEASE_EXPIRY_SQL);
+    return jdbcTemplate.update(
+        sql,
+        leaseParams(leaseOwner, leaseSeconds)
+            .addValue(SubmissionJob.RUN_SET_ID_COL, runSetId)
+            .addValue("record_count", recordCount));
+  }
+
+  /**
+   * Removes a job that its worker has finished.
+   *
+   * @return 0 if the worker no longer holds the lease on the job, 1 otherwise
+   */
+  public int completeJob(UUID runSetId, String leaseOwner) {
+    return jdbcTemplate.update(
+        "DELETE FROM submission_job WHERE run_set_id = :run_set_id AND lease_owner = :lease_owner",
+        new MapSqlParameterSource()
+            .addValue(SubmissionJob.RUN_SET_ID_COL, runSetId)
+            .addValue(SubmissionJob.LEASE_OWNER_COL, leaseOwner));
+  }
+
+  /**
+   * Marks a job as failed so that no worker claims it again. The user token is dropped along with
+   * the lease, as it is when a finished job is removed.
+   *
+   * @return 0 if the worker no longer holds the lease on the job, 1 otherwise
+   */
+  public int failJob(UUID runSetId, String leaseOwner, String errorMessage) {
+    return jdbcTemplate.update(
+        "UPDATE submission_job SET status = :status, user_token = NULL, user_token_expires_timestamp = NULL, lease_owner = NULL, lease_expires_timestamp = NULL, error_messages = :error_messages, last_modified_timestamp = now()"
+            + " WHERE run_set_id = :run_set_id AND lease_owner = :lease_owner",
+        new MapSqlParameterSource()
+            .addValue(SubmissionJob.RUN_SET_ID_COL, runSetId)
+            .addValue(SubmissionJob.LEASE_OWNER_COL, leaseOwner)
+            .addValue(SubmissionJob.STATUS_COL, SubmissionJobStatus.FAILED.toString())
+            .addValue(SubmissionJob.ERROR_MESSAGES_COL, truncatedErrorMessage(errorMessage)));
+  }
+
+  private static MapSqlParameterSource leaseParams(String leaseOwner, int leaseSeconds) {
+    return new MapSqlParameterSource()
+        .addValue(SubmissionJob.LEASE_OWNER_COL, leaseOwner)
+        .addValue("lease_seconds", leaseSeconds)
+        .addValue("running", SubmissionJobStatus.RUNNING.toString());
+  }
+
+  private final RowMapper<SubmissionJob> submissionJobMapper = this::mapSubmissionJob;
+
+  private SubmissionJob mapSubmissionJob(ResultSet rs, int rowNum) throws SQLException {
+    return new SubmissionJob(
+        rs.getObject(SubmissionJob.RUN_SET_ID_COL, UUID.class),
+        SubmissionJobStatus.valueOf(rs.getString(SubmissionJob.STATUS_COL)),
+        rs.getString(SubmissionJob.RUN_SET_REQUEST_COL),
+        rs.getString(SubmissionJob.RAW_METHOD_URL_COL),
+        readUserToken(rs),
+        rs.getString(SubmissionJob.LEASE_OWNER_COL),
+        rs.getObject(SubmissionJob.LEASE_EXPIRES_TIMESTAMP_COL, OffsetDateTime.class),
+        rs.getInt(SubmissionJob.ATTEMPTS_COL),
+        rs.getInt(SubmissionJob.BATCHES_COMPLETED_COL),
+        rs.getBoolean(SubmissionJob.LARGE_RUN_SET_COL),
+        rs.getInt(SubmissionJob.RECORDS_REGISTERED_COL),
+        rs.getObject(SubmissionJob.SUBMISSION_TIMESTAMP_COL, OffsetDateTime.class),
+        rs.getObject(SubmissionJob.LAST_MODIFIED_TIMESTAMP_COL, OffsetDateTime.class),
+        rs.getString(SubmissionJob.ERROR_MESSAGES_COL));
+  }
+
+  private String readUserToken(ResultSet rs) throws SQLException {
+    String encryptedUserToken = rs.getString(SubmissionJob.USER_TOKEN_COL);
+    OffsetDateTime expires =
+        rs.getObject(SubmissionJob.USER_TOKEN_EXPIRES_TIMESTAMP_COL, OffsetDateTime.class);
+    if (encryptedUserToken == null || expires == null || !expires.isAfter(OffsetDateTime.now())) {
+      return null;
+    }
+    return userTokenEncryption.decrypt(encryptedUserToken).orElse(null);
+  }
+}
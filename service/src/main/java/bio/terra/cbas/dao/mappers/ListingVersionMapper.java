@@ -0,0 +1,19 @@
+package bio.terra.cbas.dao.mappers;
+
+import bio.terra.cbas.dao.util.ListingVersion;
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.time.OffsetDateTime;
+import org.springframework.jdbc.core.RowMapper;
+
+/** Maps the row_count, last_modified and last_polled columns of an aggregate query. */
+public class ListingVersionMapper implements RowMapper<ListingVersion> {
+
+  @Override
+  public ListingVersion mapRow(ResultSet rs, int rowNum) throws SQLException {
+    return new ListingVersion(
+        rs.getLong("row_count"),
+        rs.getObject("last_modified", OffsetDateTime.class),
+        rs.getObject("last_polled", OffsetDateTime.class));
+  }
+}
@@ -0,0 +1,41 @@
+package bio.terra.cbas.dao.util;
+
+import java.time.Instant;
+import java.time.OffsetDateTime;
+import java.time.temporal.ChronoUnit;
+import java.util.Arrays;
+
+/**
+ * Identifies the state of the rows behind a listing, without reading them. Every write to a run or
+ * run set moves its last modified or last polled timestamp, and a deleted row lowers the row count,
+ * so the version changes whenever the listing could have.
+ */
+public record ListingVersion(
+    long rowCount, OffsetDateTime lastModifiedTimestamp, OffsetDateTime lastPolledTimestamp) {
+
+  /** The version as a weak entity tag, since it identifies the rows rather than their JSON. */
+  public String eTag() {
+    return "W/\"%x-%x-%x\""
+        .formatted(rowCount, epochMicros(lastModifiedTimestamp), epochMicros(lastPolledTimestamp));
+  }
+
+  /**
+   * @param ifNoneMatch the If-None-Match header of a request, or null
+   * @return whether the client already holds the listing at this version
+   */
+  public boolean isMatchedBy(String ifNoneMatch) {
+    if (ifNoneMatch == null) {
+      return false;
+    }
+    // Weak comparison, as If-None-Match calls for: the W/ prefix of either tag is ignored
+    String opaqueTag = eTag().substring(2);
+    return Arrays.stream(ifNoneMatch.split(","))
+        .map(String::trim)
+        .anyMatch(
+            tag -> tag.equals("*") || tag.equals(opaqueTag) || tag.equals("W/" + opaqueTag));
+  }
+
+  private static long epochMicros(OffsetDateTime timestamp) {
+    return timestamp == null ? 0 : ChronoUnit.MICROS.between(Instant.EPOCH, timestamp.toInstant());
+  }
+}
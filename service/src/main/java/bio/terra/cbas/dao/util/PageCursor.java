@@ -0,0 +1,46 @@
+package bio.terra.cbas.dao.util;
+
+import bio.terra.cbas.common.exceptions.InvalidPageCursorException;
+import java.nio.charset.StandardCharsets;
+import java.time.OffsetDateTime;
+import java.time.format.DateTimeParseException;
+import java.util.Base64;
+import java.util.UUID;
+
+/**
+ * The position of the last row of a page, for keyset pagination over rows ordered by submission
+ * timestamp and then ID. Handed to API clients as an opaque string.
+ */
+public record PageCursor(OffsetDateTime submissionTimestamp, UUID id) {
+
+  private static final String SEPARATOR = "|";
+
+  public String encode() {
+    String position = submissionTimestamp.toString() + SEPARATOR + id;
+    return Base64.getUrlEncoder()
+        .withoutPadding()
+        .encodeToString(position.getBytes(StandardCharsets.UTF_8));
+  }
+
+  /**
+   * @param cursor a string returned by {@link #encode()}, or null
+   * @return null if {@code cursor} is null
+   */
+  public static PageCursor decode(String cursor) {
+    if (cursor == null) {
+      return null;
+    }
+    try {
+      String position = new String(Base64.getUrlDecoder().decode(cursor), StandardCharsets.UTF_8);
+      int separatorIndex = position.lastIndexOf(SEPARATOR);
+      if (separatorIndex < 0) {
+        throw new InvalidPageCursorException(cursor);
+      }
+      return new PageCursor(
+          OffsetDateTime.parse(position.substring(0, separatorIndex)),
+          UUID.fromString(position.substring(separatorIndex + 1)));
+    } catch (IllegalArgumentException | DateTimeParseException e) {
+      throw new InvalidPageCursorException(cursor);
+    }
+  }
+}
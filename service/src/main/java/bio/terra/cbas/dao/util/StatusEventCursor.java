@@ -0,0 +1,45 @@
+package bio.terra.cbas.dao.util;
+
+import bio.terra.cbas.common.exceptions.InvalidStatusEventIdException;
+import java.util.Comparator;
+
+/**
+ * The position of the last status event a client has received, in the order events are read:
+ * by the transaction that recorded them, and then by event ID. Handed to clients as the ID of
+ * server-sent events, so that they can resume a stream with the Last-Event-ID header.
+ */
+public record StatusEventCursor(long transactionId, long eventId)
+    implements Comparable<StatusEventCursor> {
+
+  private static final Comparator<StatusEventCursor> ORDER =
+      Comparator.comparingLong(StatusEventCursor::transactionId)
+          .thenComparingLong(StatusEventCursor::eventId);
+
+  private static final String SEPARATOR = "-";
+
+  @Override
+  public int compareTo(StatusEventCursor other) {
+    return ORDER.compare(this, other);
+  }
+
+  public String encode() {
+    return transactionId + SEPARATOR + eventId;
+  }
+
+  /**
+   * @param lastEventId a string returned by {@link #encode()}
+   */
+  public static StatusEventCursor decode(String lastEventId) {
+    int separatorIndex = lastEventId.indexOf(SEPARATOR);
+    if (separatorIndex < 0) {
+      throw new InvalidStatusEventIdException(lastEventId);
+    }
+    try {
+      return new StatusEventCursor(
+          Long.parseLong(lastEventId.substring(0, separatorIndex)),
+          Long.parseLong(lastEventId.substring(separatorIndex + 1)));
+    } catch (NumberFormatException e) {
+      throw new InvalidStatusEventIdException(lastEventId);
+    }
+  }
+}
@@ -0,0 +1,148 @@
+package bio.terra.cbas.dao.util;
+
+import bio.terra.cbas.config.PollEngineConfiguration;
+import bio.terra.cbas.config.RunCallbackInboxConfiguration;
+import bio.terra.cbas.config.SubmissionQueueConfiguration;
+import bio.terra.cbas.config.UserTokenStorageConfiguration;
+import com.fasterxml.jackson.databind.JsonNode;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+import java.security.GeneralSecurityException;
+import java.security.SecureRandom;
+import java.time.Instant;
+import java.time.OffsetDateTime;
+import java.time.ZoneOffset;
+import java.util.Base64;
+import java.util.Optional;
+import javax.crypto.Cipher;
+import javax.crypto.SecretKey;
+import javax.crypto.spec.GCMParameterSpec;
+import javax.crypto.spec.SecretKeySpec;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.stereotype.Component;
+
+/**
+ * Encrypts the user tokens that are kept in the database for work done in the background, so that
+ * the tokens are never stored as they are. Tokens are encrypted with AES-GCM, each with its own
+ * random IV, which is stored in front of the encrypted token.
+ *
+ * <p>All the instances sharing the database must be configured with the same key to read each
+ * other's tokens. A token that cannot be decrypted is treated like an expired one. CBAS does not
+ * start without a key when the submission queue, the poll engine or the callback inbox, which
+ * store user tokens, is enabled.
+ */
+@Component
+public class UserTokenEncryption {
+
+  private static final String CIPHER_TRANSFORMATION = "AES/GCM/NoPadding";
+  private static final int IV_BYTES = 12;
+  private static final int TAG_BITS = 128;
+
+  private static final Logger logger = LoggerFactory.getLogger(UserTokenEncryption.class);
+
+  private final Optional<SecretKey> key;
+  private final long maxAgeSeconds;
+  private final SecureRandom secureRandom = new SecureRandom();
+  private final ObjectMapper objectMapper = new ObjectMapper();
+
+  @Autowired
+  public UserTokenEncryption(
+      UserTokenStorageConfiguration userTokenStorageConfiguration,
+      SubmissionQueueConfiguration submissionQueueConfiguration,
+      PollEngineConfiguration pollEngineConfiguration,
+      RunCallbackInboxConfiguration runCallbackInboxConfiguration) {
+    this(
+        userTokenStorageConfiguration,
+        submissionQueueConfiguration.isEnabled()
+            || pollEngineConfiguration.isEnabled()
+            || runCallbackInboxConfiguration.isEnabled());
+  }
+
+  UserTokenEncryption(
+      UserTokenStorageConfiguration userTokenStorageConfiguration, boolean tokensAreStored) {
+    this.key = loadKey(userTokenStorageConfiguration.getEncryptionKey());
+    this.maxAgeSeconds = userTokenStorageConfiguration.getMaxAgeSeconds();
+    if (key.isEmpty() && tokensAreStored) {
+      throw new IllegalStateException(
+          "A user token encryption key must be configured (cbas.user-token-storage.encryption-key)"
+              + " when the submission queue, the poll engine or the callback inbox is enabled");
+    }
+  }
+
+  public String encrypt(String userToken) {
+    SecretKey encryptionKey =
+        key.orElseThrow(
+            () -> new IllegalStateException("No user token encryption key is configured"));
+    byte[] iv = new byte[IV_BYTES];
+    secureRandom.nextBytes(iv);
+    try {
+      Cipher cipher = Cipher.getInstance(CIPHER_TRANSFORMATION);
+      cipher.init(Cipher.ENCRYPT_MODE, encryptionKey, new GCMParameterSpec(TAG_BITS, iv));
+      byte[] encrypted = cipher.doFinal(userToken.getBytes(StandardCharsets.UTF_8));
+      byte[] ivAndEncrypted =
+          ByteBuffer.allocate(iv.length + encrypted.length).put(iv).put(encrypted).array();
+      return Base64.getEncoder().encodeToString(ivAndEncrypted);
+    } catch (GeneralSecurityException e) {
+      throw new IllegalStateException("Failed to encrypt user token", e);
+    }
+  }
+
+  /**
+   * @return the token, or empty if it was encrypted with another key or is not an encrypted token
+   */
+  public Optional<String> decrypt(String encryptedUserToken) {
+    if (key.isEmpty()) {
+      return Optional.empty();
+    }
+    try {
+      byte[] stored = Base64.getDecoder().decode(encryptedUserToken);
+      Cipher cipher = Cipher.getInstance(CIPHER_TRANSFORMATION);
+      cipher.init(
+          Cipher.DECRYPT_MODE, key.get(), new GCMParameterSpec(TAG_BITS, stored, 0, IV_BYTES));
+      byte[] decrypted = cipher.doFinal(stored, IV_BYTES, stored.length - IV_BYTES);
+      return Optional.of(new String(decrypted, StandardCharsets.UTF_8));
+    } catch (GeneralSecurityException | IllegalArgumentException e) {
+      logger.warn("Failed to decrypt a stored user token: {}", e.getMessage());
+      return Optional.empty();
+    }
+  }
+
+  /**
+   * When the token expires, read from its "exp" claim if it is a JWT. Other tokens are assumed to
+   * expire {@code maxAgeSeconds} after now, as do JWTs that expire later than that.
+   */
+  public OffsetDateTime expiry(String userToken) {
+    OffsetDateTime latestExpiry = OffsetDateTime.now(ZoneOffset.UTC).plusSeconds(maxAgeSeconds);
+    String[] parts = userToken.split("\\.");
+    if (parts.length != 3) {
+      return latestExpiry;
+    }
+    try {
+      JsonNode exp = objectMapper.readTree(Base64.getUrlDecoder().decode(parts[1])).path("exp");
+      if (!exp.canConvertToLong()) {
+        return latestExpiry;
+      }
+      OffsetDateTime expiry =
+          OffsetDateTime.ofInstant(Instant.ofEpochSecond(exp.asLong()), ZoneOffset.UTC);
+      return expiry.isBefore(latestExpiry) ? expiry : latestExpiry;
+    } catch (IOException | IllegalArgumentException e) {
+      return latestExpiry;
+    }
+  }
+
+  private static Optional<SecretKey> loadKey(String encodedKey) {
+    if (encodedKey == null || encodedKey.isBlank()) {
+      return Optional.empty();
+    }
+    byte[] keyBytes = Base64.getDecoder().decode(encodedKey.trim());
+    if (keyBytes.length != 16 && keyBytes.length != 24 && keyBytes.length != 32) {
+      throw new IllegalArgumentException(
+          "The user token encryption key must be 16, 24 or 32 bytes long, base64 encoded");
+    }
+    return Optional.of(new SecretKeySpec(keyBytes, "AES"));
+  }
+}
@@ -0,0 +1,72 @@
+package bio.terra.cbas.dependencies.common;
+
+import com.google.common.cache.Cache;
+import com.google.common.cache.CacheBuilder;
+import com.google.common.hash.Hashing;
+import com.google.common.util.concurrent.UncheckedExecutionException;
+import java.nio.charset.StandardCharsets;
+import java.time.Duration;
+import java.util.concurrent.ExecutionException;
+import java.util.function.BiFunction;
+
+/**
+ * Reuses the generated API clients of a dependency, instead of setting up a new client (JSON
+ * mappers, date formats, default headers and often an HTTP client) for every request.
+ *
+ * <p>Generated clients hold their access token, so a client is cached per base URI and access
+ * token. The cache is keyed by a hash of the token rather than the token itself, and clients of
+ * unused tokens are dropped after a while. Clients without an access token are shared by all
+ * callers of a base URI. Clients must not be modified once built, and since many of them can be
+ * cached, they should all share the same HTTP client (connection pool and dispatcher threads).
+ *
+ * @param <C> the generated API client type of the dependency
+ */
+public class ApiClientCache<C> {
+
+  // Long enough for a user's clients to be reused across polls and submissions, short enough not
+  // to keep clients of expired access tokens around for long.
+  private static final Duration UNUSED_CLIENT_EXPIRY = Duration.ofMinutes(10);
+  private static final long MAXIMUM_CLIENTS = 1000;
+
+  private record ApiClientKey(String baseUri, String accessTokenHash) {}
+
+  private final Cache<ApiClientKey, C> apiClients =
+      CacheBuilder.newBuilder()
+          .expireAfterAccess(UNUSED_CLIENT_EXPIRY)
+          .maximumSize(MAXIMUM_CLIENTS)
+          .build();
+
+  private final BiFunction<String, String, C> newApiClient;
+
+  /**
+   * @param newApiClient builds a client from a base URI and an access token, which is null for
+   *     clients that make unauthenticated requests
+   */
+  public ApiClientCache(BiFunction<String, String, C> newApiClient) {
+    this.newApiClient = newApiClient;
+  }
+
+  public C getApiClient(String baseUri) {
+    return getApiClient(baseUri, null);
+  }
+
+  public C getApiClient(String baseUri, String accessToken) {
+    try {
+      return apiClients.get(
+          new ApiClientKey(baseUri, hash(accessToken)),
+          () -> newApiClient.apply(baseUri, accessToken));
+    } catch (ExecutionException | UncheckedExecutionException e) {
+      if (e.getCause() instanceof RuntimeException cause) {
+        throw cause;
+      }
+      throw new IllegalStateException("Failed to set up API client for " + baseUri, e);
+    }
+  }
+
+  private static String hash(String accessToken) {
+    if (accessToken == null) {
+      return null;
+    }
+    return Hashing.sha256().hashString(accessToken, StandardCharsets.UTF_8).toString();
+  }
+}
@@ -0,0 +1,102 @@
+package bio.terra.cbas.dependencies.common;
+
+import bio.terra.cbas.common.MicrometerMetrics;
+import bio.terra.cbas.config.ConnectionPoolConfiguration;
+import java.io.IOException;
+import java.util.Set;
+import java.util.concurrent.TimeUnit;
+import okhttp3.ConnectionPool;
+import okhttp3.Interceptor;
+import okhttp3.OkHttpClient;
+import okhttp3.Request;
+import okhttp3.Response;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.stereotype.Component;
+
+/**
+ * Sets up the HTTP clients of dependencies reached through the Azure Relay, which closes idle
+ * connections without notice.
+ *
+ * <p>By default, clients close their connection after each request. When enabled in {@link
+ * ConnectionPoolConfiguration}, each client keeps its own pool of connections open for less time
+ * than the relay lets them idle. Requests that are safe to repeat are retried on a new connection
+ * when a pooled connection turns out to have been closed anyway. Other requests are not retried, so
+ * that, for instance, a workflow is never submitted twice.
+ */
+@Component
+public class HttpConnectionPools {
+
+  private static final Logger logger = LoggerFactory.getLogger(HttpConnectionPools.class);
+
+  private static final Set<String> IDEMPOTENT_METHODS =
+      Set.of("GET", "HEAD", "OPTIONS", "PUT", "DELETE");
+
+  private final ConnectionPoolConfiguration connectionPoolConfiguration;
+  private final MicrometerMetrics micrometerMetrics;
+
+  public HttpConnectionPools(
+      ConnectionPoolConfiguration connectionPoolConfiguration,
+      MicrometerMetrics micrometerMetrics) {
+    this.connectionPoolConfiguration = connectionPoolConfiguration;
+    this.micrometerMetrics = micrometerMetrics;
+  }
+
+  /** Whether clients should ask for their connection to be closed after each request. */
+  public boolean closeConnectionAfterEachRequest() {
+    return !connectionPoolConfiguration.isEnabled();
+  }
+
+  /**
+   * @return the client unchanged when connections are not pooled, and a client with its own pool of
+   *     connections, reported in metrics under {@code clientName}, otherwise
+   */
+  public OkHttpClient configure(String clientName, OkHttpClient httpClient) {
+    if (!connectionPoolConfiguration.isEnabled()) {
+      return httpClient;
+    }
+    ConnectionPool connectionPool =
+        new ConnectionPool(
+            connectionPoolConfiguration.getMaxIdleConnections(),
+            connectionPoolConfiguration.getKeepAliveSeconds(),
+            TimeUnit.SECONDS);
+    micrometerMetrics.registerConnectionPool(clientName, connectionPool);
+    return httpClient
+        .newBuilder()
+        .connectionPool(connectionPool)
+        // OkHttp would otherwise retry any request, including ones that must not be sent twice
+        .retryOnConnectionFailure(false)
+        .addInterceptor(chain -> retryOnStaleConnection(clientName, connectionPool, chain))
+        .build();
+  }
+
+  private Response retryOnStaleConnection(
+      String clientName, ConnectionPool connectionPool, Interceptor.Chain chain)
+      throws IOException {
+    Request request = chain.request();
+    if (!IDEMPOTENT_METHODS.contains(request.method())) {
+      return chain.proceed(request);
+    }
+    int retries = 0;
+    while (true) {
+      try {
+        return chain.proceed(request);
+      } catch (IOException e) {
+        if (chain.call().isCanceled()
+            || retries >= connectionPoolConfiguration.getMaxStaleConnectionRetries()) {
+          throw e;
+        }
+        retries++;
+        logger.info(
+            "{} {} failed on a {} connection ({}), retrying on a new connection.",
+            request.method(),
+            request.url().encodedPath(),
+            clientName,
+            e.getMessage());
+        micrometerMetrics.recordStaleConnectionRetry(clientName);
+        // The other idle connections were probably closed by the relay as well
+        connectionPool.evictAll();
+      }
+    }
+  }
+}
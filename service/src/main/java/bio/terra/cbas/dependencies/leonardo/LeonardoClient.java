@@ -1,6 +1,8 @@
 package bio.terra.cbas.dependencies.leonardo;
 
 import bio.terra.cbas.config.LeonardoServerConfiguration;
+import bio.terra.cbas.dependencies.common.ApiClientCache;
+import okhttp3.OkHttpClient;
 import org.broadinstitute.dsde.workbench.client.leonardo.ApiClient;
 import org.springframework.stereotype.Component;
 
@@ -8,20 +10,29 @@ import org.springframework.stereotype.Component;
 public class LeonardoClient {
 
   private final LeonardoServerConfiguration leonardoServerConfiguration;
+  private final OkHttpClient singletonHttpClient;
+  private final ApiClientCache<ApiClient> apiClients;
 
   public LeonardoClient(LeonardoServerConfiguration leonardoServerConfiguration) {
     this.leonardoServerConfiguration = leonardoServerConfiguration;
+    this.singletonHttpClient = new ApiClient().getHttpClient();
+    this.apiClients = new ApiClientCache<>(this::newApiClient);
   }
 
   public ApiClient getUnauthorizedApiClient() {
-    var apiClient = new ApiClient().setBasePath(leonardoServerConfiguration.baseUri());
-    apiClient.setDebugging(leonardoServerConfiguration.debugApiLogging());
-    return apiClient;
+    return apiClients.getApiClient(leonardoServerConfiguration.baseUri());
   }
 
   public ApiClient getApiClient(String accessToken) {
-    ApiClient apiClient = getUnauthorizedApiClient();
-    apiClient.setAccessToken(accessToken);
+    return apiClients.getApiClient(leonardoServerConfiguration.baseUri(), accessToken);
+  }
+
+  private ApiClient newApiClient(String baseUri, String accessToken) {
+    var apiClient = new ApiClient().setHttpClient(singletonHttpClient).setBasePath(baseUri);
+    apiClient.setDebugging(leonardoServerConfiguration.debugApiLogging());
+    if (accessToken != null) {
+      apiClient.setAccessToken(accessToken);
+    }
     return apiClient;
   }
 }
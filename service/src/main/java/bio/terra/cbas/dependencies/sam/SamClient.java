@@ -1,6 +1,7 @@
 package bio.terra.cbas.dependencies.sam;
 
 import bio.terra.cbas.config.SamServerConfiguration;
+import bio.terra.cbas.dependencies.common.ApiClientCache;
 import bio.terra.common.iam.BearerToken;
 import java.util.List;
 import okhttp3.OkHttpClient;
@@ -13,26 +14,36 @@ public class SamClient {
 
   private final SamServerConfiguration samServerConfiguration;
   private final OkHttpClient singletonHttpClient;
+  private final ApiClientCache<ApiClient> apiClients;
 
   public SamClient(SamServerConfiguration samServerConfiguration) {
     this.samServerConfiguration = samServerConfiguration;
     this.singletonHttpClient =
         new ApiClient().getHttpClient().newBuilder().protocols(List.of(Protocol.HTTP_1_1)).build();
+    this.apiClients = new ApiClientCache<>(this::newApiClient);
   }
 
   public ApiClient getApiClient() {
-    return new ApiClient()
-        .setHttpClient(singletonHttpClient)
-        // By closing the connection after each request, we avoid the problem of the open connection
-        // being force-closed ungracefully by the Azure Relay/Listener infrastructure:
-        .addDefaultHeader("Connection", "close")
-        .setBasePath(samServerConfiguration.baseUri())
-        .setDebugging(samServerConfiguration.debugApiLogging());
+    return apiClients.getApiClient(samServerConfiguration.baseUri());
   }
 
   public ApiClient getApiClient(BearerToken userToken) {
-    ApiClient apiClient = getApiClient();
-    apiClient.setAccessToken(userToken.getToken());
+    return apiClients.getApiClient(samServerConfiguration.baseUri(), userToken.getToken());
+  }
+
+  private ApiClient newApiClient(String baseUri, String accessToken) {
+    ApiClient apiClient =
+        new ApiClient()
+            .setHttpClient(singletonHttpClient)
+            // By closing the connection after each request, we avoid the problem of the open
+            // connection being force-closed ungracefully by the Azure Relay/Listener
+            // infrastructure:
+            .addDefaultHeader("Connection", "close")
+            .setBasePath(baseUri)
+            .setDebugging(samServerConfiguration.debugApiLogging());
+    if (accessToken != null) {
+      apiClient.setAccessToken(accessToken);
+    }
     return apiClient;
   }
 
@@ -2,7 +2,9 @@ package bio.terra.cbas.dependencies.wds;
 
 import bio.terra.cbas.common.exceptions.DependencyNotAvailableException;
 import bio.terra.cbas.config.WdsServerConfiguration;
+import bio.terra.cbas.dependencies.common.ApiClientCache;
 import bio.terra.cbas.dependencies.common.DependencyUrlLoader;
+import bio.terra.cbas.dependencies.common.HttpConnectionPools;
 import bio.terra.common.iam.BearerToken;
 import java.util.Optional;
 import okhttp3.OkHttpClient;
@@ -16,14 +18,21 @@ public class WdsClient {
 
   private final WdsServerConfiguration wdsServerConfiguration;
   private final DependencyUrlLoader dependencyUrlLoader;
+  private final HttpConnectionPools httpConnectionPools;
 
   private final OkHttpClient singletonHttpClient;
+  private final ApiClientCache<ApiClient> apiClients;
 
   public WdsClient(
-      WdsServerConfiguration wdsServerConfiguration, DependencyUrlLoader dependencyUrlLoader) {
+      WdsServerConfiguration wdsServerConfiguration,
+      DependencyUrlLoader dependencyUrlLoader,
+      HttpConnectionPools httpConnectionPools) {
     this.wdsServerConfiguration = wdsServerConfiguration;
     this.dependencyUrlLoader = dependencyUrlLoader;
-    singletonHttpClient = new ApiClient().getHttpClient().newBuilder().build();
+    this.httpConnectionPools = httpConnectionPools;
+    singletonHttpClient =
+        httpConnectionPools.configure("wds", new ApiClient().getHttpClient().newBuilder().build());
+    apiClients = new ApiClientCache<>(this::newApiClient);
   }
 
   protected ApiClient getApiClient(BearerToken userToken) throws DependencyNotAvailableException {
@@ -39,12 +48,18 @@ public class WdsClient {
               DependencyUrlLoader.DependencyUrlType.WDS_URL, userToken);
     }
 
-    ApiClient apiClient = new ApiClient().setBasePath(uri);
+    return apiClients.getApiClient(uri, userToken.getToken());
+  }
+
+  private ApiClient newApiClient(String baseUri, String accessToken) {
+    ApiClient apiClient = new ApiClient().setBasePath(baseUri);
     apiClient.setHttpClient(singletonHttpClient);
-    apiClient.addDefaultHeader("Authorization", "Bearer " + userToken.getToken());
+    apiClient.addDefaultHeader("Authorization", "Bearer " + accessToken);
     // By closing the connection after each request, we avoid the problem of the open connection
     // being force-closed ungracefully by the Azure Relay/Listener infrastructure:
-    apiClient.addDefaultHeader("Connection", "close");
+    if (httpConnectionPools.closeConnectionAfterEachRequest()) {
+      apiClient.addDefaultHeader("Connection", "close");
+    }
     apiClient.setDebugging(wdsServerConfiguration.debugApiLogging());
     return apiClient;
   }
@@ -0,0 +1,229 @@
+package bio.terra.cbas.dependencies.wds;
+
+import bio.terra.cbas.common.MicrometerMetrics;
+import bio.terra.cbas.config.WdsOutputWriterConfiguration;
+import bio.terra.common.iam.BearerToken;
+import io.micrometer.core.instrument.Timer;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.Executor;
+import java.util.concurrent.TimeUnit;
+import java.util.stream.Collectors;
+import org.databiosphere.workspacedata.model.BatchRecordRequest;
+import org.databiosphere.workspacedata.model.RecordAttributes;
+import org.databiosphere.workspacedata.model.RecordRequest;
+import org.databiosphere.workspacedata.model.RecordResponse;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Qualifier;
+import org.springframework.stereotype.Component;
+
+/**
+ * Writes the outputs of completed runs to their records in WDS.
+ *
+ * <p>When enabled, the outputs of runs that complete at about the same time are buffered per record
+ * type (and user token, since a batch is written with a single token) and written to WDS with one
+ * batch upsert. A buffer is written {@code flushWindowMillis} after its first outputs, or as soon
+ * as it holds {@code maxBatchSize} of them. If a batch cannot be written, its outputs are written
+ * one record at a time, so that only the runs whose own outputs cannot be written fail.
+ *
+ * <p>A batch upsert differs from updating records one at a time in two ways, which the writer
+ * makes up for. It creates records that do not exist, so the records of a buffer are looked up
+ * first and the ones that were not found are updated on their own, failing as they would have
+ * without batching. And it sets the attributes that some records of a batch have and others do
+ * not to null on the others, so a buffer is written in one batch per set of attribute names.
+ */
+@Component
+public class WdsOutputWriter {
+
+  private final WdsService wdsService;
+  private final WdsOutputWriterConfiguration wdsOutputWriterConfiguration;
+  private final Executor flushExecutor;
+  private final MicrometerMetrics micrometerMetrics;
+
+  // Outputs waiting to be written. Guarded by this.
+  private final Map<BufferKey, List<PendingWrite>> buffers = new HashMap<>();
+
+  private static final Logger logger = LoggerFactory.getLogger(WdsOutputWriter.class);
+
+  private record BufferKey(String recordType, String userToken) {}
+
+  private record PendingWrite(
+      String recordId,
+      RecordAttributes attributes,
+      BearerToken userToken,
+      CompletableFuture<Void> written) {}
+
+  public WdsOutputWriter(
+      WdsService wdsService,
+      WdsOutputWriterConfiguration wdsOutputWriterConfiguration,
+      @Qualifier("wdsOutputWriterExecutor") Executor flushExecutor,
+      MicrometerMetrics micrometerMetrics) {
+    this.wdsService = wdsService;
+    this.wdsOutputWriterConfiguration = wdsOutputWriterConfiguration;
+    this.flushExecutor = flushExecutor;
+    this.micrometerMetrics = micrometerMetrics;
+  }
+
+  /**
+   * Writes attributes of a record. They are written before this returns when the writer is
+   * disabled, or when they fill up their buffer.
+   *
+   * @return completes once the attributes are written, or exceptionally with the {@link
+   *     WdsServiceException} that kept them from being written
+   */
+  public CompletableFuture<Void> write(
+      String recordType, String recordId, RecordAttributes attributes, BearerToken userToken) {
+    if (!wdsOutputWriterConfiguration.isEnabled()) {
+      try {
+        updateRecord(recordType, recordId, attributes, userToken);
+        return CompletableFuture.completedFuture(null);
+      } catch (WdsServiceException e) {
+        return CompletableFuture.failedFuture(e);
+      }
+    }
+
+    BufferKey key = new BufferKey(recordType, userToken.getToken());
+    PendingWrite write =
+        new PendingWrite(recordId, attributes, userToken, new CompletableFuture<>());
+    List<PendingWrite> fullBuffer = null;
+    synchronized (this) {
+      List<PendingWrite> buffer = buffers.computeIfAbsent(key, k -> new ArrayList<>());
+      buffer.add(write);
+      if (buffer.size() >= wdsOutputWriterConfiguration.getMaxBatchSize()) {
+        fullBuffer = buffers.remove(key);
+      } else if (buffer.size() == 1) {
+        CompletableFuture.delayedExecutor(
+                wdsOutputWriterConfiguration.getFlushWindowMillis(),
+                TimeUnit.MILLISECONDS,
+                flushExecutor)
+            .execute(() -> flushIfBuffered(key, buffer));
+      }
+    }
+    if (fullBuffer != null) {
+      flush(key, fullBuffer);
+    }
+    return write.written();
+  }
+
+  private void flushIfBuffered(BufferKey key, List<PendingWrite> buffer) {
+    synchronized (this) {
+      // The buffer was written already if it filled up within the window
+      if (buffers.get(key) != buffer) {
+        return;
+      }
+      buffers.remove(key);
+    }
+    flush(key, buffer);
+  }
+
+  private void flush(BufferKey key, List<PendingWrite> writes) {
+    // All the writes of a buffer have the same token
+    BearerToken userToken = writes.get(0).userToken();
+    Set<String> existingRecordIds = existingRecordIds(key.recordType(), writes, userToken);
+
+    Map<Set<String>, List<PendingWrite>> batches = new LinkedHashMap<>();
+    List<PendingWrite> singleWrites = new ArrayList<>();
+    for (PendingWrite write : writes) {
+      if (existingRecordIds.contains(write.recordId())) {
+        batches
+            .computeIfAbsent(Set.copyOf(write.attributes().keySet()), k -> new ArrayList<>())
+            .add(write);
+      } else {
+        singleWrites.add(write);
+      }
+    }
+    for (List<PendingWrite> batch : batches.values()) {
+      if (!writeBatch(key.recordType(), batch, userToken)) {
+        singleWrites.addAll(batch);
+      }
+    }
+
+    if (!singleWrites.isEmpty()) {
+      micrometerMetrics.increaseEventCounter("wds_output_writer_single_writes", singleWrites.size());
+      singleWrites.forEach(write -> writeOnItsOwn(key.recordType(), write, userToken));
+    }
+  }
+
+  /** The IDs of the records of the writes that WDS found, or none if they could not be fetched. */
+  private Set<String> existingRecordIds(
+      String recordType, List<PendingWrite> writes, BearerToken userToken) {
+    try {
+      return wdsService
+          .getRecords(recordType, writes.stream().map(PendingWrite::recordId).toList(), userToken)
+          .recordResponseList()
+          .stream()
+          .map(RecordResponse::getId)
+          .collect(Collectors.toSet());
+    } catch (RuntimeException e) {
+      logger.warn(
+          "Failed to look up {} records of type {}. Writing their outputs one at a time.",
+          writes.size(),
+          recordType,
+          e);
+      return Set.of();
+    }
+  }
+
+  /**
+   * Writes the attributes of records that all have the same attribute names in one batch.
+   *
+   * @return whether the batch was written
+   */
+  private boolean writeBatch(String recordType, List<PendingWrite> writes, BearerToken userToken) {
+    Timer.Sample flushStartSample = micrometerMetrics.startTimer();
+    boolean batchWritten = false;
+    try {
+      wdsService.batchUpsertRecords(
+          recordType,
+          writes.stream()
+              .map(
+                  write ->
+                      new BatchRecordRequest()
+                          .id(write.recordId())
+                          .type(recordType)
+                          .attributes(write.attributes()))
+              .toList(),
+          userToken);
+      batchWritten = true;
+    } catch (WdsServiceException | RuntimeException e) {
+      logger.warn(
+          "Failed to write the outputs of {} records of type {} in one batch. Writing them one at a time.",
+          writes.size(),
+          recordType,
+          e);
+    }
+    micrometerMetrics.recordEventDistributionMetric("wds_output_writer_flush_size", writes.size());
+    micrometerMetrics.stopTimer(
+        flushStartSample,
+        "wds_output_writer_flush_timer",
+        "batch_written",
+        String.valueOf(batchWritten));
+
+    if (batchWritten) {
+      writes.forEach(write -> write.written().complete(null));
+    }
+    return batchWritten;
+  }
+
+  private void writeOnItsOwn(String recordType, PendingWrite write, BearerToken userToken) {
+    try {
+      updateRecord(recordType, write.recordId(), write.attributes(), userToken);
+      write.written().complete(null);
+    } catch (WdsServiceException | RuntimeException e) {
+      write.written().completeExceptionally(e);
+    }
+  }
+
+  private void updateRecord(
+      String recordType, String recordId, RecordAttributes attributes, BearerToken userToken)
+      throws WdsServiceException {
+    wdsService.updateRecord(
+        new RecordRequest().attributes(attributes), recordType, recordId, userToken);
+  }
+}
@@ -1,14 +1,25 @@
 package bio.terra.cbas.dependencies.wds;
 
 import bio.terra.cbas.common.exceptions.DependencyNotAvailableException;
+import bio.terra.cbas.config.WdsRecordFetchConfiguration;
 import bio.terra.cbas.config.WdsServerConfiguration;
 import bio.terra.common.iam.BearerToken;
+import com.google.common.cache.Cache;
+import com.google.common.cache.CacheBuilder;
 import java.util.ArrayList;
+import java.util.Collections;
 import java.util.HashMap;
 import java.util.List;
 import java.util.Map;
+import java.util.Objects;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.Executor;
+import java.util.concurrent.TimeUnit;
 import java.util.stream.Collectors;
 import org.databiosphere.workspacedata.client.ApiException;
+import org.databiosphere.workspacedata.model.BatchOperation;
+import org.databiosphere.workspacedata.model.BatchRecordRequest;
 import org.databiosphere.workspacedata.model.Capabilities;
 import org.databiosphere.workspacedata.model.RecordQueryResponse;
 import org.databiosphere.workspacedata.model.RecordRequest;
@@ -17,6 +28,7 @@ import org.databiosphere.workspacedata.model.SearchFilter;
 import org.databiosphere.workspacedata.model.SearchRequest;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Qualifier;
 import org.springframework.retry.support.RetryTemplate;
 import org.springframework.stereotype.Component;
 
@@ -26,30 +38,34 @@ public class WdsService {
   private final WdsClient wdsClient;
   private final WdsServerConfiguration wdsServerConfiguration;
   private final RetryTemplate listenerResetRetryTemplate;
+  private final Executor recordFetchExecutor;
+
+  // Whether the WDS instance can search records by IDs, by instance ID
+  private final Cache<String, Boolean> searchByIdsFilterSupport;
 
   private static final Logger logger = LoggerFactory.getLogger(WdsService.class);
   private static final String SEARCH_ID_FILTER = "search.filter.ids";
 
   public record WdsRecordResponseDetails(
-      List<RecordResponse> recordResponseList, Map<String, String> recordIdsWithError) {
-    WdsRecordResponseDetails addAll(WdsRecordResponseDetails moreDetails) {
-      List<RecordResponse> merged = new ArrayList<>(recordResponseList);
-      merged.addAll(moreDetails.recordResponseList());
+      List<RecordResponse> recordResponseList, Map<String, String> recordIdsWithError) {}
 
-      Map<String, String> mergedErrors = new HashMap<>(recordIdsWithError);
-      mergedErrors.putAll(moreDetails.recordIdsWithError());
-
-      return new WdsRecordResponseDetails(merged, mergedErrors);
-    }
-  }
+  public record WdsRecordIdsPage(List<String> recordIds, int totalRecords) {}
 
   public WdsService(
       WdsClient wdsClient,
       WdsServerConfiguration wdsServerConfiguration,
-      RetryTemplate listenerResetRetryTemplate) {
+      RetryTemplate listenerResetRetryTemplate,
+      WdsRecordFetchConfiguration wdsRecordFetchConfiguration,
+      @Qualifier("wdsRecordFetchExecutor") Executor recordFetchExecutor) {
     this.wdsClient = wdsClient;
     this.wdsServerConfiguration = wdsServerConfiguration;
     this.listenerResetRetryTemplate = listenerResetRetryTemplate;
+    this.recordFetchExecutor = recordFetchExecutor;
+    this.searchByIdsFilterSupport =
+        CacheBuilder.newBuilder()
+            .expireAfterWrite(
+                wdsRecordFetchConfiguration.getCapabilitiesCacheSeconds(), TimeUnit.SECONDS)
+            .build();
   }
 
   public RecordResponse getRecord(String recordType, String recordId, BearerToken userToken)
@@ -84,20 +100,62 @@ public class WdsService {
         });
   }
 
+  /**
+   * Creates or updates many records of one type with a single WDS batch write. Records that do not
+   * exist are created. The attributes of an existing record that no request of the batch has are
+   * left as they are, but the ones that other requests of the batch have are set to null, so the
+   * requests of a batch are expected to have the same attribute names.
+   */
+  public void batchUpsertRecords(
+      String recordType, List<BatchRecordRequest> records, BearerToken userToken)
+      throws WdsServiceException {
+    List<BatchOperation> operations =
+        records.stream()
+            .map(
+                recordRequest ->
+                    new BatchOperation()
+                        .operation(BatchOperation.OperationEnum.UPSERT)
+                        .record(recordRequest))
+            .toList();
+    executionWithRetryTemplate(
+        listenerResetRetryTemplate,
+        () ->
+            wdsClient
+                .recordsApi(userToken)
+                .batchWriteRecords(
+                    operations,
+                    wdsServerConfiguration.instanceId(),
+                    wdsServerConfiguration.apiV(),
+                    recordType,
+                    null));
+  }
+
   public Capabilities getCapabilities(BearerToken userToken) throws WdsServiceException {
     return executionWithRetryTemplate(
         listenerResetRetryTemplate, () -> wdsClient.capabilitiesApi(userToken).capabilities());
   }
 
+  /**
+   * Whether WDS can search records by IDs. The answer is reused for {@code
+   * capabilitiesCacheSeconds}, unless the capabilities of WDS could not be fetched.
+   */
   public boolean useSearchByIdsFilter(BearerToken userToken) {
+    Boolean cachedSupport =
+        searchByIdsFilterSupport.getIfPresent(wdsServerConfiguration.instanceId());
+    if (cachedSupport != null) {
+      return cachedSupport;
+    }
     try {
       Capabilities wdsAppInstanceCapabilities = getCapabilities(userToken);
       Map<String, Object> additionalProperties =
           wdsAppInstanceCapabilities.getAdditionalProperties();
 
-      return additionalProperties != null
-          && additionalProperties.containsKey(SEARCH_ID_FILTER)
-          && additionalProperties.get(SEARCH_ID_FILTER).equals(true);
+      boolean supported =
+          additionalProperties != null
+              && additionalProperties.containsKey(SEARCH_ID_FILTER)
+              && additionalProperties.get(SEARCH_ID_FILTER).equals(true);
+      searchByIdsFilterSupport.put(wdsServerConfiguration.instanceId(), supported);
+      return supported;
     } catch (WdsServiceException e) {
       logger.warn(
           "Failed to get capabilities of WDS app instance. Error: %s".formatted(e.getMessage()), e);
@@ -105,49 +163,107 @@ public class WdsService {
     }
   }
 
+  /**
+   * Fetches records by ID, in windows of {@code queryWindowSize} records when WDS can search
+   * records by IDs and one record at a time otherwise. The requests are sent concurrently, up to
+   * {@code maxRequestsInFlight} at the same time across all callers.
+   */
   public WdsRecordResponseDetails getRecords(
       String recordType, List<String> recordIds, BearerToken userToken) {
     if (useSearchByIdsFilter(userToken))
       return getRecordsUsingSearchFilter(recordType, recordIds, userToken);
-    else return getRecordsSerially(recordType, recordIds, userToken);
+    else return getRecordsIndividually(recordType, recordIds, userToken);
   }
 
-  private WdsRecordResponseDetails getRecordsSerially(
+  private WdsRecordResponseDetails getRecordsIndividually(
       String recordType, List<String> recordIds, BearerToken userToken) {
-    ArrayList<RecordResponse> recordResponses = new ArrayList<>();
-    HashMap<String, String> recordIdsWithError = new HashMap<>();
-    for (String recordId : recordIds) {
-      try {
-        recordResponses.add(getRecord(recordType, recordId, userToken));
-      } catch (WdsServiceApiException e) {
-        logger.warn("Record lookup for Record ID {} failed.", recordId, e);
-        recordIdsWithError.put(recordId, WdsClientUtils.extractErrorMessage(e.getMessage()));
-      } catch (WdsServiceException e) {
-        logger.warn("Record lookup for Record ID {} failed.", recordId, e);
-        recordIdsWithError.put(recordId, e.getMessage());
-      }
-    }
+    return collectResponseDetails(
+        recordIds.stream()
+            .map(
+                recordId ->
+                    CompletableFuture.supplyAsync(
+                        () -> getRecordDetails(recordType, recordId, userToken),
+                        recordFetchExecutor))
+            .toList());
+  }
 
-    return new WdsRecordResponseDetails(recordResponses, recordIdsWithError);
+  private WdsRecordResponseDetails getRecordDetails(
+      String recordType, String recordId, BearerToken userToken) {
+    try {
+      return new WdsRecordResponseDetails(
+          List.of(getRecord(recordType, recordId, userToken)), Map.of());
+    } catch (WdsServiceApiException e) {
+      logger.warn("Record lookup for Record ID {} failed.", recordId, e);
+      return new WdsRecordResponseDetails(
+          List.of(),
+          Collections.singletonMap(recordId, WdsClientUtils.extractErrorMessage(e.getMessage())));
+    } catch (WdsServiceException e) {
+      logger.warn("Record lookup for Record ID {} failed.", recordId, e);
+      return new WdsRecordResponseDetails(
+          List.of(), Collections.singletonMap(recordId, e.getMessage()));
+    }
   }
 
   public WdsRecordResponseDetails getRecordsUsingSearchFilter(
       String recordType, List<String> recordIds, BearerToken userToken) {
-    int batches = (recordIds.size() / wdsServerConfiguration.queryWindowSize()) + 1;
-    WdsRecordResponseDetails responseDetails =
-        new WdsRecordResponseDetails(new ArrayList<>(), Map.of());
-
-    for (int i = 0; i < batches; i++) {
-      int startIndex = i * wdsServerConfiguration.queryWindowSize();
-      int endIndex = Math.min((i + 1) * wdsServerConfiguration.queryWindowSize(), recordIds.size());
-
-      List<String> batch = recordIds.subList(startIndex, endIndex);
+    int windowSize = wdsServerConfiguration.queryWindowSize();
+    List<CompletableFuture<WdsRecordResponseDetails>> windowResponses = new ArrayList<>();
+    for (int startIndex = 0; startIndex < recordIds.size(); startIndex += windowSize) {
+      List<String> window =
+          recordIds.subList(startIndex, Math.min(startIndex + windowSize, recordIds.size()));
+      windowResponses.add(
+          CompletableFuture.supplyAsync(
+              () -> getRecordsBatch(recordType, window, userToken), recordFetchExecutor));
+    }
+    return collectResponseDetails(windowResponses);
+  }
 
-      WdsRecordResponseDetails batchResponse = getRecordsBatch(recordType, batch, userToken);
-      responseDetails = responseDetails.addAll(batchResponse);
+  /**
+   * Merges the responses of concurrent requests in the order the requests were made, copying each
+   * response once. Unexpected exceptions thrown by a request are rethrown.
+   */
+  private static WdsRecordResponseDetails collectResponseDetails(
+      List<CompletableFuture<WdsRecordResponseDetails>> responses) {
+    List<RecordResponse> recordResponses = new ArrayList<>();
+    Map<String, String> recordIdsWithError = new HashMap<>();
+    for (CompletableFuture<WdsRecordResponseDetails> response : responses) {
+      WdsRecordResponseDetails responseDetails;
+      try {
+        responseDetails = response.join();
+      } catch (CompletionException e) {
+        if (e.getCause() instanceof RuntimeException cause) {
+          throw cause;
+        }
+        throw e;
+      }
+      recordResponses.addAll(responseDetails.recordResponseList());
+      recordIdsWithError.putAll(responseDetails.recordIdsWithError());
     }
+    return new WdsRecordResponseDetails(recordResponses, recordIdsWithError);
+  }
 
-    return responseDetails;
+  /**
+   * Lists the IDs of up to {@code limit} records of a record type, starting {@code offset} records
+   * into the type in WDS's default order. WDS is queried {@code queryWindowSize} records at a time.
+   */
+  public WdsRecordIdsPage getRecordIds(
+      String recordType, int offset, int limit, BearerToken userToken) throws WdsServiceException {
+    List<String> recordIds = new ArrayList<>();
+    int totalRecords = 0;
+    while (recordIds.size() < limit) {
+      int windowSize = Math.min(wdsServerConfiguration.queryWindowSize(), limit - recordIds.size());
+      RecordQueryResponse queryResponse =
+          queryRecords(
+              new SearchRequest().offset(offset + recordIds.size()).limit(windowSize),
+              recordType,
+              userToken);
+      totalRecords = Objects.requireNonNullElse(queryResponse.getTotalRecords(), 0);
+      queryResponse.getRecords().forEach(recordResponse -> recordIds.add(recordResponse.getId()));
+      if (queryResponse.getRecords().size() < windowSize) {
+        break;
+      }
+    }
+    return new WdsRecordIdsPage(recordIds, totalRecords);
   }
 
   private WdsRecordResponseDetails getRecordsBatch(
@@ -2,7 +2,9 @@ package bio.terra.cbas.dependencies.wes;
 
 import bio.terra.cbas.common.exceptions.DependencyNotAvailableException;
 import bio.terra.cbas.config.CromwellServerConfiguration;
+import bio.terra.cbas.dependencies.common.ApiClientCache;
 import bio.terra.cbas.dependencies.common.DependencyUrlLoader;
+import bio.terra.cbas.dependencies.common.HttpConnectionPools;
 import bio.terra.common.iam.BearerToken;
 import cromwell.client.ApiClient;
 import cromwell.client.api.EngineApi;
@@ -18,15 +20,21 @@ public class CromwellClient {
 
   private final CromwellServerConfiguration cromwellServerConfiguration;
   private final DependencyUrlLoader dependencyUrlLoader;
+  private final HttpConnectionPools httpConnectionPools;
 
   private final OkHttpClient singletonHttpClient;
+  private final ApiClientCache<ApiClient> apiClients;
 
   public CromwellClient(
       CromwellServerConfiguration cromwellServerConfiguration,
-      DependencyUrlLoader dependencyUrlLoader) {
+      DependencyUrlLoader dependencyUrlLoader,
+      HttpConnectionPools httpConnectionPools) {
     this.cromwellServerConfiguration = cromwellServerConfiguration;
     this.dependencyUrlLoader = dependencyUrlLoader;
-    singletonHttpClient = new ApiClient().getHttpClient();
+    this.httpConnectionPools = httpConnectionPools;
+    singletonHttpClient =
+        httpConnectionPools.configure("cromwell", new ApiClient().getHttpClient());
+    apiClients = new ApiClientCache<>(this::newApiClient);
   }
 
   public ApiClient getWriteApiClient(BearerToken userToken) throws DependencyNotAvailableException {
@@ -39,22 +47,23 @@ public class CromwellClient {
           dependencyUrlLoader.loadDependencyUrl(
               DependencyUrlLoader.DependencyUrlType.CROMWELL_URL, userToken);
     }
-    ApiClient apiClient = setupApiClient(new ApiClient());
-    apiClient.setBasePath(uri);
-    apiClient.setAccessToken(userToken.getToken());
-    return apiClient;
+    return apiClients.getApiClient(uri, userToken.getToken());
   }
 
   public ApiClient getReadApiClient() {
-    ApiClient apiClient = setupApiClient(new ApiClient());
-    apiClient.setBasePath(cromwellServerConfiguration.baseUri());
-    return apiClient;
+    return apiClients.getApiClient(cromwellServerConfiguration.baseUri());
   }
 
   public ApiClient getAuthReadApiClient(BearerToken userToken) {
+    return apiClients.getApiClient(cromwellServerConfiguration.baseUri(), userToken.getToken());
+  }
+
+  private ApiClient newApiClient(String baseUri, String accessToken) {
     ApiClient apiClient = setupApiClient(new ApiClient());
-    apiClient.setBasePath(cromwellServerConfiguration.baseUri());
-    apiClient.setAccessToken(userToken.getToken());
+    apiClient.setBasePath(baseUri);
+    if (accessToken != null) {
+      apiClient.setAccessToken(accessToken);
+    }
     return apiClient;
   }
 
@@ -62,7 +71,9 @@ public class CromwellClient {
     apiClient.setHttpClient(singletonHttpClient);
     // By closing the connection after each request, we avoid the problem of the open connection
     // being force-closed ungracefully by the Azure Relay/Listener infrastructure:
-    apiClient.addDefaultHeader("Connection", "close");
+    if (httpConnectionPools.closeConnectionAfterEachRequest()) {
+      apiClient.addDefaultHeader("Connection", "close");
+    }
     apiClient.setDebugging(cromwellServerConfiguration.debugApiLogging());
     return apiClient;
   }
@@ -4,7 +4,7 @@ import static bio.terra.cbas.api.RunsApi.log;
 
 import bio.terra.cbas.config.CbasNetworkConfiguration;
 import bio.terra.cbas.dependencies.common.HealthCheck;
-import bio.terra.cbas.models.Run;
+import bio.terra.cbas.models.PollableRun;
 import bio.terra.cbas.runsets.inputs.InputGenerator;
 import bio.terra.common.iam.BearerToken;
 import com.fasterxml.jackson.core.JsonProcessingException;
@@ -70,7 +70,13 @@ public class CromwellService implements HealthCheck {
                 .collect(Collectors.joining(",", "[", "]")));
   }
 
-  public WorkflowQueryResult runSummary(String runId) throws ApiException {
+  /**
+   * Fetches the summaries of many workflows with a single query.
+   *
+   * @return the summaries found, by workflow ID. Workflows unknown to Cromwell are left out.
+   */
+  public Map<String, WorkflowQueryResult> runSummaries(List<String> engineIds)
+      throws ApiException {
     ApiClient client = cromwellClient.getReadApiClient();
     var queryResults =
         cromwellClient
@@ -82,7 +88,7 @@ public class CromwellService implements HealthCheck {
                 null,
                 null,
                 null,
-                List.of(runId),
+                engineIds,
                 null,
                 null,
                 null,
@@ -91,10 +97,26 @@ public class CromwellService implements HealthCheck {
                 null)
             .getResults();
 
-    if (queryResults.isEmpty()) {
-      return null;
-    } else {
-      return queryResults.get(0);
+    return queryResults.stream()
+        .collect(
+            Collectors.toMap(
+                WorkflowQueryResult::getId, result -> result, (first, second) -> first));
+  }
+
+  /**
+   * Whether Cromwell has received the workflow with the given ID. Unlike {@link #runSummaries},
+   * this also finds workflows submitted moments ago.
+   */
+  public boolean workflowExists(String engineId) throws ApiException {
+    ApiClient client = cromwellClient.getReadApiClient();
+    try {
+      cromwellClient.workflowsApi(client).status(API_VERSION, engineId);
+      return true;
+    } catch (ApiException e) {
+      if (e.getCode() == 404) {
+        return false;
+      }
+      throw e;
     }
   }
 
@@ -112,7 +134,7 @@ public class CromwellService implements HealthCheck {
         .describe(API_VERSION, null, workflowUrl, null, null, null);
   }
 
-  public String getRunErrors(Run run) throws ApiException {
+  public String getRunErrors(PollableRun run) throws ApiException {
 
     ApiClient client = cromwellClient.getReadApiClient();
 
@@ -197,7 +219,7 @@ public class CromwellService implements HealthCheck {
     }
   }
 
-  public void cancelRun(Run run, BearerToken userToken) throws ApiException {
+  public void cancelRun(PollableRun run, BearerToken userToken) throws ApiException {
     ApiClient cromwellWriteClient = cromwellClient.getWriteApiClient(userToken);
     cromwellClient.wesAPI(cromwellWriteClient).cancelRun(run.engineId());
   }
@@ -0,0 +1,12 @@
+package bio.terra.cbas.models;
+
+import bio.terra.cbas.dependencies.wds.WdsService.WdsRecordResponseDetails;
+import java.util.Map;
+import java.util.UUID;
+
+/**
+ * The records of one batch of a run set being submitted, fetched from WDS, along with the QUEUED
+ * runs they are submitted for.
+ */
+public record FetchedRecordBatch(
+    int batchIndex, Map<String, UUID> recordIdToRunIdMapping, WdsRecordResponseDetails records) {}
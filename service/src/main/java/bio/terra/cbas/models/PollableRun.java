@@ -0,0 +1,43 @@
+package bio.terra.cbas.models;
+
+import java.time.OffsetDateTime;
+import java.util.UUID;
+
+/**
+ * The columns of a run read to poll, abort or complete it, along with the columns of its run set
+ * read for the same purpose. The runs of a run set share one {@link PollableRunSet}.
+ */
+public record PollableRun(
+    UUID runId,
+    String engineId,
+    PollableRunSet runSet,
+    String recordId,
+    CbasRunStatus status,
+    OffsetDateTime lastModifiedTimestamp,
+    OffsetDateTime lastPolledTimestamp) {
+
+  public static PollableRun of(Run run) {
+    return new PollableRun(
+        run.runId(),
+        run.engineId(),
+        PollableRunSet.of(run.runSet()),
+        run.recordId(),
+        run.status(),
+        run.lastModifiedTimestamp(),
+        run.lastPolledTimestamp());
+  }
+
+  public UUID getRunSetId() {
+    return runSet.runSetId();
+  }
+
+  public PollableRun withStatus(CbasRunStatus newStatus) {
+    return new PollableRun(
+        runId, engineId, runSet, recordId, newStatus, lastModifiedTimestamp, lastPolledTimestamp);
+  }
+
+  public PollableRun withLastPolled(OffsetDateTime newLastPolledTimestamp) {
+    return new PollableRun(
+        runId, engineId, runSet, recordId, status, lastModifiedTimestamp, newLastPolledTimestamp);
+  }
+}
@@ -0,0 +1,28 @@
+package bio.terra.cbas.models;
+
+import java.time.OffsetDateTime;
+import java.util.UUID;
+
+/**
+ * The columns of a run set read to poll, abort or complete its runs, and to refresh its status.
+ * The method version and the input and output definitions are left out; read the output definition
+ * with {@link bio.terra.cbas.dao.RunSetDao#getOutputDefinition} when a run's outputs are needed.
+ */
+public record PollableRunSet(
+    UUID runSetId,
+    CbasRunSetStatus status,
+    OffsetDateTime lastPolledTimestamp,
+    Integer runCount,
+    Integer errorCount,
+    String recordType) {
+
+  public static PollableRunSet of(RunSet runSet) {
+    return new PollableRunSet(
+        runSet.runSetId(),
+        runSet.status(),
+        runSet.lastPolledTimestamp(),
+        runSet.runCount(),
+        runSet.errorCount(),
+        runSet.recordType());
+  }
+}
@@ -0,0 +1,6 @@
+package bio.terra.cbas.models;
+
+import bio.terra.cbas.model.RunStateResponse;
+import java.util.List;
+
+public record RegisterRunSetResponse(RunSet runSet, List<RunStateResponse> runStateResponseList) {}
@@ -47,6 +47,7 @@ public record Run(
   public static final String RUN_ID_COL = "run_id";
   public static final String RUN_SET_ID_COL = "run_set_id";
   public static final String ENGINE_ID_COL = "engine_id";
+  public static final String REQUESTED_ENGINE_ID_COL = "requested_engine_id";
   public static final String RECORD_ID_COL = "record_id";
   public static final String SUBMISSION_TIMESTAMP_COL = "submission_timestamp";
   public static final String STATUS_COL = "status";
@@ -0,0 +1,40 @@
+package bio.terra.cbas.models;
+
+import java.time.OffsetDateTime;
+
+/**
+ * A Cromwell callback reporting that a workflow reached a terminal status, stored in the database
+ * as it is received and processed later along with other callbacks. {@code outputs} and {@code
+ * failures} hold the JSON of the callback's workflow outputs and failure messages.
+ *
+ * <p>{@code userToken} is null once the user token stored with the callback has expired.
+ */
+public record RunCallback(
+    Long callbackId,
+    String engineId,
+    RunCallbackStatus status,
+    CbasRunStatus runStatus,
+    String outputs,
+    String failures,
+    String userToken,
+    String leaseOwner,
+    OffsetDateTime leaseExpiresTimestamp,
+    Integer attempts,
+    OffsetDateTime receivedTimestamp,
+    String errorMessages) {
+
+  // Corresponding table column names in database
+  public static final String CALLBACK_ID_COL = "callback_id";
+  public static final String ENGINE_ID_COL = "engine_id";
+  public static final String STATUS_COL = "status";
+  public static final String RUN_STATUS_COL = "run_status";
+  public static final String OUTPUTS_COL = "outputs";
+  public static final String FAILURES_COL = "failures";
+  public static final String USER_TOKEN_COL = "user_token";
+  public static final String USER_TOKEN_EXPIRES_TIMESTAMP_COL = "user_token_expires_timestamp";
+  public static final String LEASE_OWNER_COL = "lease_owner";
+  public static final String LEASE_EXPIRES_TIMESTAMP_COL = "lease_expires_timestamp";
+  public static final String ATTEMPTS_COL = "attempts";
+  public static final String RECEIVED_TIMESTAMP_COL = "received_timestamp";
+  public static final String ERROR_MESSAGES_COL = "error_messages";
+}
@@ -0,0 +1,10 @@
+package bio.terra.cbas.models;
+
+public enum RunCallbackStatus {
+  /** Waiting for a worker to claim it. */
+  QUEUED,
+  /** Claimed by the worker holding its lease. Claimable again once the lease expires. */
+  RUNNING,
+  /** Given up on. Processed callbacks are deleted instead. */
+  FAILED
+}
@@ -0,0 +1,30 @@
+package bio.terra.cbas.models;
+
+import java.time.OffsetDateTime;
+import java.util.UUID;
+
+/**
+ * The progress of aborting the runs of a run set. An abort request is sent to Cromwell for each
+ * run that was not yet in a terminal state when the run set was aborted. Runs whose abort request
+ * fails are also set to {@link CbasRunStatus#SYSTEM_ERROR} and listed in {@code failedRunIds}.
+ */
+public record RunSetAbort(
+    UUID runSetId,
+    RunSetAbortStatus status,
+    Integer runsToAbort,
+    Integer abortRequestsSubmitted,
+    Integer abortRequestsFailed,
+    String failedRunIds,
+    OffsetDateTime submissionTimestamp,
+    OffsetDateTime lastModifiedTimestamp) {
+
+  // Corresponding table column names in database
+  public static final String RUN_SET_ID_COL = "run_set_id";
+  public static final String STATUS_COL = "status";
+  public static final String RUNS_TO_ABORT_COL = "runs_to_abort";
+  public static final String ABORT_REQUESTS_SUBMITTED_COL = "abort_requests_submitted";
+  public static final String ABORT_REQUESTS_FAILED_COL = "abort_requests_failed";
+  public static final String FAILED_RUN_IDS_COL = "failed_run_ids";
+  public static final String SUBMISSION_TIMESTAMP_COL = "submission_timestamp";
+  public static final String LAST_MODIFIED_TIMESTAMP_COL = "last_modified_timestamp";
+}
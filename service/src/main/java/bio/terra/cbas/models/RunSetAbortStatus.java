@@ -0,0 +1,8 @@
+package bio.terra.cbas.models;
+
+public enum RunSetAbortStatus {
+  /** Abort requests are still being sent to Cromwell. */
+  RUNNING,
+  /** Every run has had its abort request sent, or recorded as failed. */
+  COMPLETE
+}
@@ -0,0 +1,17 @@
+package bio.terra.cbas.models;
+
+import java.time.OffsetDateTime;
+import java.util.UUID;
+
+/**
+ * The token of the user who submitted a run set, which the background poll engine polls the run
+ * set's runs with. {@code userToken} is null if the stored token could not be decrypted.
+ */
+public record RunSetUserToken(
+    UUID runSetId, String userToken, OffsetDateTime userTokenExpiresTimestamp) {
+
+  // Corresponding table column names in database
+  public static final String RUN_SET_ID_COL = "run_set_id";
+  public static final String USER_TOKEN_COL = "user_token";
+  public static final String USER_TOKEN_EXPIRES_TIMESTAMP_COL = "user_token_expires_timestamp";
+}
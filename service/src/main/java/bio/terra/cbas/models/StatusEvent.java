@@ -0,0 +1,30 @@
+package bio.terra.cbas.models;
+
+import java.time.OffsetDateTime;
+import java.util.UUID;
+
+/**
+ * A change of the status of a run or a run set, recorded by triggers on the run and run_set tables
+ * whenever either records a new status. {@code runId} is null for the events of the run set itself,
+ * which include its creation.
+ */
+public record StatusEvent(
+    long eventId,
+    long transactionId,
+    UUID runSetId,
+    UUID runId,
+    String status,
+    OffsetDateTime eventTimestamp) {
+
+  public boolean isRunEvent() {
+    return runId != null;
+  }
+
+  // Corresponding table column names in database
+  public static final String EVENT_ID_COL = "event_id";
+  public static final String TRANSACTION_ID_COL = "transaction_id";
+  public static final String RUN_SET_ID_COL = "run_set_id";
+  public static final String RUN_ID_COL = "run_id";
+  public static final String STATUS_COL = "status";
+  public static final String EVENT_TIMESTAMP_COL = "event_timestamp";
+}
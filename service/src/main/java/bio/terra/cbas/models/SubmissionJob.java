@@ -0,0 +1,49 @@
+package bio.terra.cbas.models;
+
+import java.time.OffsetDateTime;
+import java.util.UUID;
+
+/**
+ * The submission of the workflows of a run set to Cromwell, queued in the database so that any CBAS
+ * instance can claim it and so that it survives the instance that claimed it. The runs that still
+ * have to be submitted are the runs of the run set that are still {@link CbasRunStatus#QUEUED}.
+ *
+ * <p>The runs of a large run set are not registered up front but chunk by chunk as the job is
+ * worked on. {@code recordsRegistered} counts the records whose runs have been registered so far.
+ *
+ * <p>{@code userToken} is null once the user token stored with the job has expired, in which case
+ * the job can no longer be worked on.
+ */
+public record SubmissionJob(
+    UUID runSetId,
+    SubmissionJobStatus status,
+    String runSetRequest,
+    String rawMethodUrl,
+    String userToken,
+    String leaseOwner,
+    OffsetDateTime leaseExpiresTimestamp,
+    Integer attempts,
+    Integer batchesCompleted,
+    Boolean largeRunSet,
+    Integer recordsRegistered,
+    OffsetDateTime submissionTimestamp,
+    OffsetDateTime lastModifiedTimestamp,
+    String errorMessages) {
+
+  // Corresponding table column names in database
+  public static final String RUN_SET_ID_COL = "run_set_id";
+  public static final String STATUS_COL = "status";
+  public static final String RUN_SET_REQUEST_COL = "run_set_request";
+  public static final String RAW_METHOD_URL_COL = "raw_method_url";
+  public static final String USER_TOKEN_COL = "user_token";
+  public static final String USER_TOKEN_EXPIRES_TIMESTAMP_COL = "user_token_expires_timestamp";
+  public static final String LEASE_OWNER_COL = "lease_owner";
+  public static final String LEASE_EXPIRES_TIMESTAMP_COL = "lease_expires_timestamp";
+  public static final String ATTEMPTS_COL = "attempts";
+  public static final String BATCHES_COMPLETED_COL = "batches_completed";
+  public static final String LARGE_RUN_SET_COL = "large_run_set";
+  public static final String RECORDS_REGISTERED_COL = "records_registered";
+  public static final String SUBMISSION_TIMESTAMP_COL = "submission_timestamp";
+  public static final String LAST_MODIFIED_TIMESTAMP_COL = "last_modified_timestamp";
+  public static final String ERROR_MESSAGES_COL = "error_messages";
+}
@@ -0,0 +1,10 @@
+package bio.terra.cbas.models;
+
+public enum SubmissionJobStatus {
+  /** Waiting for a worker to claim it. */
+  QUEUED,
+  /** Claimed by the worker holding its lease. Claimable again once the lease expires. */
+  RUNNING,
+  /** Given up on. Successfully completed jobs are deleted instead. */
+  FAILED
+}
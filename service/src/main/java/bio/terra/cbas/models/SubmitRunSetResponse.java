@@ -1,7 +1,7 @@
 package bio.terra.cbas.models;
 
-import bio.terra.cbas.model.RunStateResponse;
-import java.util.List;
-
-public record SubmitRunSetResponse(
-    List<RunStateResponse> runStateResponseList, List<String> successfullyInitializedWorkflowIds) {}
+/**
+ * Outcome of submitting the runs of a run set: how many runs were recorded, how many of them in an
+ * error state, and how many of them were left INITIALIZING by submitting their workflow.
+ */
+public record SubmitRunSetResponse(int runCount, int errorCount, int initializedCount) {}
@@ -0,0 +1,11 @@
+package bio.terra.cbas.models;
+
+import cromwell.client.model.WorkflowIdAndStatus;
+import java.util.List;
+
+/**
+ * Outcome of submitting a {@link WorkflowBatch} to Cromwell. {@code submissionError} is null if
+ * Cromwell accepted the batch.
+ */
+public record SubmittedWorkflowBatch(
+    WorkflowBatch batch, List<WorkflowIdAndStatus> submittedWorkflows, String submissionError) {}
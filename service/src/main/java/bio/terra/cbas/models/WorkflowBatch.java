@@ -0,0 +1,14 @@
+package bio.terra.cbas.models;
+
+import java.util.Map;
+import java.util.UUID;
+
+/**
+ * One batch of workflows ready to be submitted to Cromwell together. Runs whose record could not be
+ * fetched or whose inputs could not be generated are listed in {@code runIdToError} instead.
+ */
+public record WorkflowBatch(
+    int batchIndex,
+    Map<UUID, String> engineIdToWorkflowInput,
+    Map<UUID, RunAndRecordDetails> engineIdToRunAndRecordMapping,
+    Map<UUID, String> runIdToError) {}
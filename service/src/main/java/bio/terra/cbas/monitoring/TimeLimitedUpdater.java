@@ -1,11 +1,17 @@
 package bio.terra.cbas.monitoring;
 
+import java.time.Duration;
 import java.time.OffsetDateTime;
+import java.util.ArrayList;
 import java.util.Comparator;
-import java.util.Iterator;
 import java.util.LinkedHashMap;
 import java.util.List;
 import java.util.UUID;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.Executor;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.TimeUnit;
 import java.util.function.Function;
 import java.util.stream.Collectors;
 
@@ -21,40 +27,117 @@ public class TimeLimitedUpdater {
       Comparator<A> updateOrderComparator,
       Function<A, A> updateOperation,
       OffsetDateTime endTime) {
+    return updateInBatches(
+        inputList,
+        idExtractor,
+        readyForUpdate,
+        updateOrderComparator,
+        1,
+        batch -> List.of(updateOperation.apply(batch.get(0))),
+        endTime);
+  }
+
+  /**
+   * Like {@link #update}, but hands the inputs ready for update to the update operation {@code
+   * batchSize} at a time, so that one call can update many inputs. The end time is checked before
+   * each batch. The batch operation returns the updated inputs, which are matched back to the
+   * inputs by ID. Inputs of a batch that it leaves out, for instance because it ran out of time
+   * part way through the batch, are not counted as updated.
+   */
+  public static <A> UpdateResult<A> updateInBatches(
+      List<A> inputList,
+      Function<A, UUID> idExtractor,
+      Function<A, Boolean> readyForUpdate,
+      Comparator<A> updateOrderComparator,
+      int batchSize,
+      Function<List<A>, List<A>> batchUpdateOperation,
+      OffsetDateTime endTime) {
 
-    // Linked hash map allows random access for updates _and_ preserves input order
-    LinkedHashMap<UUID, A> idIndexedInputs =
-        inputList.stream()
-            .collect(
-                Collectors.toMap(
-                    idExtractor,
-                    a -> a,
-                    (u, v) -> {
-                      throw new IllegalStateException(String.format("Duplicate key %s", u));
-                    },
-                    LinkedHashMap::new));
-
-    // This re-sorted list gives us the order in which to update the inputs:
-    Iterator<UUID> updateIterator =
-        inputList.stream().sorted(updateOrderComparator).map(idExtractor).iterator();
+    LinkedHashMap<UUID, A> idIndexedInputs = indexById(inputList, idExtractor);
+    List<A> readyInUpdateOrder =
+        readyInUpdateOrder(inputList, readyForUpdate, updateOrderComparator);
 
     // Tracker numbers:
-    int totalEligible = 0;
+    int totalEligible = readyInUpdateOrder.size();
     int totalUpdated = 0;
 
     // Run the updates for as long as the end time is not reached:
-    while (updateIterator.hasNext()) {
-      UUID idToUpdate = updateIterator.next();
-      A valueToUpdate = idIndexedInputs.get(idToUpdate);
-
-      if (readyForUpdate.apply(valueToUpdate)) {
-        totalEligible++;
-        if (OffsetDateTime.now().isBefore(endTime)) {
-          A updated = updateOperation.apply(idIndexedInputs.get(idToUpdate));
-          idIndexedInputs.put(idToUpdate, updated);
-          totalUpdated++;
-        }
+    for (int from = 0;
+        from < readyInUpdateOrder.size() && OffsetDateTime.now().isBefore(endTime);
+        from += batchSize) {
+      List<A> batch =
+          readyInUpdateOrder.subList(from, Math.min(from + batchSize, readyInUpdateOrder.size()));
+      List<A> updatedBatch = batchUpdateOperation.apply(batch);
+      for (A updated : updatedBatch) {
+        idIndexedInputs.put(idExtractor.apply(updated), updated);
+      }
+      totalUpdated += updatedBatch.size();
+    }
+
+    return new UpdateResult<>(
+        idIndexedInputs.values().stream().toList(),
+        totalEligible,
+        totalUpdated,
+        totalUpdated == totalEligible);
+  }
+
+  /**
+   * Like {@link #updateInBatches}, but runs up to {@code maxConcurrency} batch updates at the same
+   * time on the given executor. Batches are still started in update order, and only while the end
+   * time is not reached. A batch that only gets a thread of the executor after the end time is
+   * skipped. The batches running by then are waited for, like the last batch of {@link
+   * #updateInBatches}, so that every update counted in the result is also reflected in its updated
+   * list and no update is still running once the result is returned.
+   */
+  public static <A> UpdateResult<A> updateConcurrently(
+      List<A> inputList,
+      Function<A, UUID> idExtractor,
+      Function<A, Boolean> readyForUpdate,
+      Comparator<A> updateOrderComparator,
+      int batchSize,
+      Function<List<A>, List<A>> batchUpdateOperation,
+      Executor executor,
+      int maxConcurrency,
+      OffsetDateTime endTime) {
+
+    LinkedHashMap<UUID, A> idIndexedInputs = indexById(inputList, idExtractor);
+    List<A> readyInUpdateOrder =
+        readyInUpdateOrder(inputList, readyForUpdate, updateOrderComparator);
+
+    // Tracker numbers:
+    int totalEligible = readyInUpdateOrder.size();
+    int totalUpdated = 0;
+
+    Semaphore freeSlots = new Semaphore(Math.max(1, maxConcurrency));
+    List<CompletableFuture<List<A>>> startedBatches = new ArrayList<>();
+
+    // Start the updates for as long as the end time is not reached:
+    for (int from = 0;
+        from < readyInUpdateOrder.size() && awaitSlot(freeSlots, endTime);
+        from += batchSize) {
+      List<A> batch =
+          readyInUpdateOrder.subList(from, Math.min(from + batchSize, readyInUpdateOrder.size()));
+      try {
+        startedBatches.add(
+            CompletableFuture.supplyAsync(
+                    () ->
+                        OffsetDateTime.now().isBefore(endTime)
+                            ? batchUpdateOperation.apply(batch)
+                            : List.<A>of(),
+                    executor)
+                .whenComplete((updated, e) -> freeSlots.release()));
+      } catch (RuntimeException e) {
+        freeSlots.release();
+        throw e;
+      }
+    }
+
+    for (CompletableFuture<List<A>> startedBatch : startedBatches) {
+      List<A> updatedBatch = joinUnwrapped(startedBatch);
+      for (A updated : updatedBatch) {
+        idIndexedInputs.put(idExtractor.apply(updated), updated);
       }
+      totalUpdated += updatedBatch.size();
     }
 
     return new UpdateResult<>(
@@ -63,4 +146,55 @@ public class TimeLimitedUpdater {
         totalUpdated,
         totalUpdated == totalEligible);
   }
+
+  // Linked hash map allows random access for updates _and_ preserves input order
+  private static <A> LinkedHashMap<UUID, A> indexById(
+      List<A> inputList, Function<A, UUID> idExtractor) {
+    return inputList.stream()
+        .collect(
+            Collectors.toMap(
+                idExtractor,
+                a -> a,
+                (u, v) -> {
+                  throw new IllegalStateException(String.format("Duplicate key %s", u));
+                },
+                LinkedHashMap::new));
+  }
+
+  // This re-sorted list gives us the order in which to update the inputs
+  private static <A> List<A> readyInUpdateOrder(
+      List<A> inputList,
+      Function<A, Boolean> readyForUpdate,
+      Comparator<A> updateOrderComparator) {
+    return inputList.stream().sorted(updateOrderComparator).filter(readyForUpdate::apply).toList();
+  }
+
+  // Waits for a free slot until the end time. Returns false if none became free in time.
+  private static boolean awaitSlot(Semaphore freeSlots, OffsetDateTime endTime) {
+    long millisLeft = Duration.between(OffsetDateTime.now(), endTime).toMillis();
+    if (millisLeft <= 0) {
+      return false;
+    }
+    try {
+      return freeSlots.tryAcquire(millisLeft, TimeUnit.MILLISECONDS);
+    } catch (InterruptedException e) {
+      Thread.currentThread().interrupt();
+      return false;
+    }
+  }
+
+  // Rethrows failures of the batch update operation as they would be thrown by updateInBatches
+  private static <T> T joinUnwrapped(CompletableFuture<T> future) {
+    try {
+      return future.join();
+    } catch (CompletionException e) {
+      if (e.getCause() instanceof RuntimeException runtimeException) {
+        throw runtimeException;
+      }
+      if (e.getCause() instanceof Error error) {
+        throw error;
+      }
+      throw e;
+    }
+  }
 }
@@ -0,0 +1,396 @@
+package bio.terra.cbas.runsets.inputs;
+
+import bio.terra.cbas.common.exceptions.InputProcessingException;
+import bio.terra.cbas.common.exceptions.InputProcessingException.InappropriateInputSourceException;
+import bio.terra.cbas.common.exceptions.InputProcessingException.StructMissingFieldException;
+import bio.terra.cbas.common.exceptions.InputProcessingException.WorkflowAttributesNotFoundException;
+import bio.terra.cbas.common.exceptions.InputProcessingException.WorkflowInputSourceNotSupportedException;
+import bio.terra.cbas.model.ObjectBuilderField;
+import bio.terra.cbas.model.ParameterDefinition;
+import bio.terra.cbas.model.ParameterDefinitionLiteralValue;
+import bio.terra.cbas.model.ParameterDefinitionNone;
+import bio.terra.cbas.model.ParameterDefinitionObjectBuilder;
+import bio.terra.cbas.model.ParameterDefinitionRecordLookup;
+import bio.terra.cbas.model.ParameterTypeDefinition;
+import bio.terra.cbas.model.ParameterTypeDefinitionOptional;
+import bio.terra.cbas.model.ParameterTypeDefinitionStruct;
+import bio.terra.cbas.model.StructField;
+import bio.terra.cbas.model.WorkflowInputDefinition;
+import bio.terra.cbas.runsets.types.CbasValueParser;
+import bio.terra.cbas.runsets.types.CbasValueWriter;
+import bio.terra.cbas.runsets.types.CoercionException;
+import bio.terra.cbas.runsets.types.ValueCoercionException;
+import com.fasterxml.jackson.core.JsonGenerator;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import org.databiosphere.workspacedata.model.RecordResponse;
+
+/**
+ * The workflow input definitions of a run set, compiled once and then applied to every record of
+ * the run set. Compiling resolves everything that does not depend on the record: the kind of each
+ * input source, the attribute name of record lookups, the source of every object builder field
+ * (indexed by field name) and a {@link CbasValueParser} and {@link CbasValueWriter} for the type of
+ * every input.
+ *
+ * <p>A plan can either build the inputs of a record as a map ({@link #buildInputs}) or write them
+ * straight to JSON ({@link #writeInputs}). Both accept the same records as {@link
+ * InputGenerator#buildInputs} would for the same definitions, and reject the others with the same
+ * kinds of errors. In particular, problems with the definitions themselves (e.g. a struct field
+ * without a source) are reported when the plan is applied to a record rather than when it is
+ * compiled.
+ */
+public class InputPlan {
+
+  private final List<CompiledInput> inputs;
+
+  private InputPlan(List<CompiledInput> inputs) {
+    this.inputs = inputs;
+  }
+
+  public static InputPlan compile(List<WorkflowInputDefinition> inputDefinitions) {
+    return compile(inputDefinitions, false);
+  }
+
+  /**
+   * Compiles a plan for the given input definitions.
+   *
+   * @param orderKeys have {@link #writeInputs} write inputs, struct fields and map entries ordered
+   *     by key, like {@link InputGenerator#inputsToJson} does. Only useful to make the JSON
+   *     predictable in tests.
+   */
+  public static InputPlan compile(
+      List<WorkflowInputDefinition> inputDefinitions, boolean orderKeys) {
+    Compiler compiler = new Compiler(orderKeys);
+    Map<String, List<CompiledInput>> definitionsByName = new LinkedHashMap<>();
+    for (WorkflowInputDefinition definition : inputDefinitions) {
+      definitionsByName
+          .computeIfAbsent(definition.getInputName(), inputName -> new ArrayList<>())
+          .add(
+              compiler.compileInput(
+                  definition.getInputName(), definition.getInputType(), definition.getSource()));
+    }
+    List<CompiledInput> compiledInputs = new ArrayList<>();
+    for (Map.Entry<String, List<CompiledInput>> definitions : definitionsByName.entrySet()) {
+      compiledInputs.add(
+          definitions.getValue().size() == 1
+              ? definitions.getValue().get(0)
+              : new RedefinedInput(definitions.getKey(), List.copyOf(definitions.getValue())));
+    }
+    return new InputPlan(compiler.ordered(compiledInputs));
+  }
+
+  public Map<String, Object> buildInputs(RecordResponse recordResponse)
+      throws CoercionException, InputProcessingException {
+    return buildFields(inputs, recordResponse);
+  }
+
+  /**
+   * Writes the inputs of a record as a JSON object. If this throws, the generator holds a partial
+   * object that must be discarded.
+   */
+  public void writeInputs(RecordResponse recordResponse, JsonGenerator generator)
+      throws CoercionException, InputProcessingException, IOException {
+    generator.writeStartObject();
+    for (CompiledInput input : inputs) {
+      input.write(recordResponse, generator);
+    }
+    generator.writeEndObject();
+  }
+
+  private static Map<String, Object> buildFields(
+      List<CompiledInput> compiledInputs, RecordResponse recordResponse)
+      throws CoercionException, InputProcessingException {
+    Map<String, Object> values = new HashMap<>();
+    for (CompiledInput input : compiledInputs) {
+      Object value = input.evaluate(recordResponse);
+      if (value != null) {
+        values.put(input.name(), value);
+      }
+    }
+    return values;
+  }
+
+  private record Compiler(boolean orderKeys) {
+
+    List<CompiledInput> ordered(List<CompiledInput> compiledInputs) {
+      if (orderKeys) {
+        compiledInputs.sort(Comparator.comparing(CompiledInput::name));
+      }
+      return List.copyOf(compiledInputs);
+    }
+
+    CompiledInput compileInput(
+        String parameterName,
+        ParameterTypeDefinition inputType,
+        ParameterDefinition parameterSource) {
+      if (parameterSource instanceof ParameterDefinitionObjectBuilder objectBuilderSource) {
+        return compileObjectBuilder(parameterName, inputType, inputType, objectBuilderSource);
+      }
+      return new SourcedInput(
+          parameterName,
+          compileSource(parameterName, inputType, parameterSource),
+          CbasValueParser.forType(inputType),
+          CbasValueWriter.forType(inputType, orderKeys));
+    }
+
+    private ValueSource compileSource(
+        String parameterName,
+        ParameterTypeDefinition inputType,
+        ParameterDefinition parameterSource) {
+      if (parameterSource instanceof ParameterDefinitionLiteralValue literalValue) {
+        Object value = literalValue.getParameterValue();
+        return recordResponse -> value;
+      } else if (parameterSource instanceof ParameterDefinitionNone) {
+        return recordResponse -> null;
+      } else if (parameterSource instanceof ParameterDefinitionRecordLookup recordLookup) {
+        return compileRecordLookup(parameterName, inputType, recordLookup);
+      } else {
+        return recordResponse -> {
+          throw new WorkflowInputSourceNotSupportedException(parameterSource);
+        };
+      }
+    }
+
+    @SuppressWarnings("unchecked")
+    private ValueSource compileRecordLookup(
+        String parameterName,
+        ParameterTypeDefinition inputType,
+        ParameterDefinitionRecordLookup recordLookup) {
+      String attributeName = recordLookup.getRecordAttribute();
+      boolean optional =
+          inputType != null
+              && ParameterTypeDefinition.TypeEnum.OPTIONAL.equals(inputType.getType());
+      return recordResponse -> {
+        Map<String, Object> attributes = (Map<String, Object>) recordResponse.getAttributes();
+        if (attributes.containsKey(attributeName)) {
+          return attributes.get(attributeName);
+        } else if (optional) {
+          return null;
+        } else {
+          throw new WorkflowAttributesNotFoundException(
+              attributeName, recordResponse.getId(), parameterName);
+        }
+      };
+    }
+
+    /**
+     * Compiles an object builder input into its struct fields.
+     *
+     * @param inputType the declared type of the input, used to coerce the built struct
+     * @param structType the declared type with any optional wrappers removed so far
+     */
+    private CompiledInput compileObjectBuilder(
+        String parameterName,
+        ParameterTypeDefinition inputType,
+        ParameterTypeDefinition structType,
+        ParameterDefinitionObjectBuilder objectBuilderSource) {
+      if (structType instanceof ParameterTypeDefinitionStruct structInputType) {
+        // When a field is listed more than once, the first source wins
+        Map<String, ParameterDefinition> fieldSources = new HashMap<>();
+        for (ObjectBuilderField field : objectBuilderSource.getFields()) {
+          if (!fieldSources.containsKey(field.getName())) {
+            fieldSources.put(field.getName(), field.getSource());
+          }
+        }
+
+        List<CompiledInput> fields = new ArrayList<>();
+        Set<String> requiredFields = new HashSet<>();
+        for (StructField structField : structInputType.getFields()) {
+          String fieldName = structField.getFieldName();
+          ParameterDefinition fieldSource = fieldSources.get(fieldName);
+          if (fieldSource != null) {
+            fields.add(compileInput(fieldName, structField.getFieldType(), fieldSource));
+          } else {
+            fields.add(
+                new SourcedInput(
+                    fieldName,
+                    recordResponse -> {
+                      throw new StructMissingFieldException(fieldName, structInputType.getName());
+                    },
+                    CbasValueParser.forType(structField.getFieldType()),
+                    CbasValueWriter.forType(structField.getFieldType(), orderKeys)));
+          }
+          if (!(structField.getFieldType() instanceof ParameterTypeDefinitionOptional)) {
+            requiredFields.add(fieldName);
+          }
+        }
+        return new ObjectBuilderInput(
+            parameterName,
+            structInputType.getName(),
+            ordered(fields),
+            Set.copyOf(requiredFields),
+            CbasValueParser.forType(inputType));
+      } else if (structType instanceof ParameterTypeDefinitionOptional optionalType) {
+        return compileObjectBuilder(
+            parameterName, inputType, optionalType.getOptionalType(), objectBuilderSource);
+      } else {
+        return new SourcedInput(
+            parameterName,
+            recordResponse -> {
+              throw new InappropriateInputSourceException(objectBuilderSource, structType);
+            },
+            CbasValueParser.forType(inputType),
+            CbasValueWriter.forType(inputType, orderKeys));
+      }
+    }
+  }
+
+  private interface CompiledInput {
+    String name();
+
+    /** The coerced, serializable value of this input for a record, or null if it has none. */
+    Object evaluate(RecordResponse recordResponse)
+        throws CoercionException, InputProcessingException;
+
+    /** Whether this input has a value for a record, without coercing it. */
+    boolean hasValue(RecordResponse recordResponse)
+        throws CoercionException, InputProcessingException;
+
+    /**
+     * Writes this input as a field of the current JSON object, unless it has no value.
+     *
+     * @return whether the field was written
+     */
+    boolean write(RecordResponse recordResponse, JsonGenerator generator)
+        throws CoercionException, InputProcessingException, IOException;
+  }
+
+  @FunctionalInterface
+  private interface ValueSource {
+    /** The raw (not yet coerced) value of an input for a record, or null if it has none. */
+    Object valueFor(RecordResponse recordResponse)
+        throws CoercionException, InputProcessingException;
+  }
+
+  /** An input whose raw value comes from a literal or a record attribute. */
+  private record SourcedInput(
+      String name, ValueSource source, CbasValueParser parser, CbasValueWriter writer)
+      implements CompiledInput {
+
+    @Override
+    public Object evaluate(RecordResponse recordResponse)
+        throws CoercionException, InputProcessingException {
+      Object value = source.valueFor(recordResponse);
+      return value == null ? null : parser.parse(name, value).asSerializableValue();
+    }
+
+    @Override
+    public boolean hasValue(RecordResponse recordResponse)
+        throws CoercionException, InputProcessingException {
+      return source.valueFor(recordResponse) != null;
+    }
+
+    @Override
+    public boolean write(RecordResponse recordResponse, JsonGenerator generator)
+        throws CoercionException, InputProcessingException, IOException {
+      Object value = source.valueFor(recordResponse);
+      if (value == null) {
+        return false;
+      }
+      generator.writeFieldName(name);
+      writer.write(name, value, generator);
+      return true;
+    }
+  }
+
+  /** A struct input built field by field from other sources. */
+  private record ObjectBuilderInput(
+      String name,
+      String structName,
+      List<CompiledInput> fields,
+      Set<String> requiredFields,
+      CbasValueParser parser)
+      implements CompiledInput {
+
+    @Override
+    public Object evaluate(RecordResponse recordResponse)
+        throws CoercionException, InputProcessingException {
+      return parser.parse(name, buildFields(fields, recordResponse)).asSerializableValue();
+    }
+
+    @Override
+    public boolean hasValue(RecordResponse recordResponse) {
+      return true;
+    }
+
+    @Override
+    public boolean write(RecordResponse recordResponse, JsonGenerator generator)
+        throws CoercionException, InputProcessingException, IOException {
+      generator.writeFieldName(name);
+      generator.writeStartObject();
+      for (int i = 0; i < fields.size(); i++) {
+        CompiledInput field = fields.get(i);
+        if (!field.write(recordResponse, generator) && requiredFields.contains(field.name())) {
+          // Same error as coercing the built struct in evaluate(), with the fields written so far
+          throw new ValueCoercionException(
+              name,
+              buildFields(fields.subList(0, i), recordResponse),
+              "Struct (%s)".formatted(structName),
+              "Field %s not provided in input for Struct (%s)"
+                  .formatted(field.name(), structName));
+        }
+      }
+      generator.writeEndObject();
+      return true;
+    }
+  }
+
+  /**
+   * An input defined more than once. As in {@link InputGenerator#buildInputs}, every definition is
+   * applied to the record, and the value of the input comes from the last one that has a value: a
+   * later definition without a value (e.g. a None source) does not remove an earlier one's.
+   */
+  private record RedefinedInput(String name, List<CompiledInput> definitions)
+      implements CompiledInput {
+
+    @Override
+    public Object evaluate(RecordResponse recordResponse)
+        throws CoercionException, InputProcessingException {
+      Object value = null;
+      for (CompiledInput definition : definitions) {
+        Object definitionValue = definition.evaluate(recordResponse);
+        if (definitionValue != null) {
+          value = definitionValue;
+        }
+      }
+      return value;
+    }
+
+    @Override
+    public boolean hasValue(RecordResponse recordResponse)
+        throws CoercionException, InputProcessingException {
+      for (CompiledInput definition : definitions) {
+        if (definition.hasValue(recordResponse)) {
+          return true;
+        }
+      }
+      return false;
+    }
+
+    @Override
+    public boolean write(RecordResponse recordResponse, JsonGenerator generator)
+        throws CoercionException, InputProcessingException, IOException {
+      int writtenDefinition = definitions.size() - 1;
+      while (writtenDefinition >= 0
+          && !definitions.get(writtenDefinition).hasValue(recordResponse)) {
+        writtenDefinition--;
+      }
+      for (int i = 0; i < definitions.size(); i++) {
+        if (i == writtenDefinition) {
+          definitions.get(i).write(recordResponse, generator);
+        } else {
+          // Not written, but the record is still rejected if this definition fails for it
+          definitions.get(i).evaluate(recordResponse);
+        }
+      }
+      return writtenDefinition >= 0;
+    }
+  }
+}
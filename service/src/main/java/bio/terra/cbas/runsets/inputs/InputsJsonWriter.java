@@ -0,0 +1,40 @@
+package bio.terra.cbas.runsets.inputs;
+
+import bio.terra.cbas.common.exceptions.InputProcessingException;
+import bio.terra.cbas.runsets.types.CoercionException;
+import com.fasterxml.jackson.core.JsonEncoding;
+import com.fasterxml.jackson.core.JsonFactory;
+import com.fasterxml.jackson.core.JsonGenerator;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import org.databiosphere.workspacedata.model.RecordResponse;
+
+/**
+ * Writes the workflow inputs of one record after another as JSON, coercing them straight into a
+ * buffer that is reused for every record (see {@link InputPlan#writeInputs}). Compared to {@link
+ * InputGenerator#inputsToJson}, this skips the intermediate input map, value trees and key sorting.
+ *
+ * <p>Not thread safe: use one writer per thread, e.g. one per workflow batch.
+ */
+public class InputsJsonWriter {
+
+  private static final JsonFactory jsonFactory = new JsonFactory();
+  private static final int INITIAL_BUFFER_SIZE = 4096;
+
+  private final InputPlan inputPlan;
+  private final ByteArrayOutputStream buffer = new ByteArrayOutputStream(INITIAL_BUFFER_SIZE);
+
+  public InputsJsonWriter(InputPlan inputPlan) {
+    this.inputPlan = inputPlan;
+  }
+
+  public String inputsToJson(RecordResponse recordResponse)
+      throws CoercionException, InputProcessingException, IOException {
+    buffer.reset();
+    try (JsonGenerator generator = jsonFactory.createGenerator(buffer, JsonEncoding.UTF8)) {
+      inputPlan.writeInputs(recordResponse, generator);
+    }
+    return buffer.toString(StandardCharsets.UTF_8);
+  }
+}
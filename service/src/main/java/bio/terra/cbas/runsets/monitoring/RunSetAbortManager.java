@@ -3,38 +3,71 @@ package bio.terra.cbas.runsets.monitoring;
 import static bio.terra.cbas.api.RunSetsApi.log;
 import static bio.terra.cbas.models.CbasRunStatus.NON_TERMINAL_STATES;
 
+import bio.terra.cbas.config.RunSetAbortConfiguration;
 import bio.terra.cbas.dao.RunDao;
+import bio.terra.cbas.dao.RunSetAbortDao;
 import bio.terra.cbas.dao.RunSetDao;
 import bio.terra.cbas.dependencies.wes.CromwellService;
 import bio.terra.cbas.models.CbasRunSetStatus;
 import bio.terra.cbas.models.CbasRunStatus;
-import bio.terra.cbas.models.Run;
+import bio.terra.cbas.models.PollableRun;
 import bio.terra.cbas.models.RunSet;
+import bio.terra.cbas.models.RunSetAbort;
 import bio.terra.common.iam.BearerToken;
 import java.time.OffsetDateTime;
 import java.util.ArrayList;
 import java.util.List;
+import java.util.Optional;
 import java.util.UUID;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.Executor;
+import org.springframework.beans.factory.annotation.Qualifier;
 import org.springframework.stereotype.Component;
 
+/**
+ * Aborts the runs of a run set that are not yet in a terminal state. One abort request is sent to
+ * Cromwell per run, up to {@code maxAbortRequestsInFlight} at the same time across all run sets.
+ * The progress of the abort is recorded in the run_set_abort table as the requests complete, and
+ * runs whose abort request fails are set to {@link CbasRunStatus#SYSTEM_ERROR}.
+ *
+ * <p>When enabled in {@link RunSetAbortConfiguration}, the abort requests are sent after {@link
+ * #abortRunSet} returns, so that aborting a large run set does not hold up the API request.
+ */
 @Component
 public class RunSetAbortManager {
 
   private final RunSetDao runSetDao;
   private final RunDao runDao;
+  private final RunSetAbortDao runSetAbortDao;
   private final CromwellService cromwellService;
-
-  public RunSetAbortManager(RunSetDao runSetDao, RunDao runDao, CromwellService cromwellService) {
+  private final RunSetAbortConfiguration runSetAbortConfiguration;
+  private final Executor abortExecutor;
+
+  public RunSetAbortManager(
+      RunSetDao runSetDao,
+      RunDao runDao,
+      RunSetAbortDao runSetAbortDao,
+      CromwellService cromwellService,
+      RunSetAbortConfiguration runSetAbortConfiguration,
+      @Qualifier("runSetAbortExecutor") Executor abortExecutor) {
     this.runSetDao = runSetDao;
     this.runDao = runDao;
+    this.runSetAbortDao = runSetAbortDao;
     this.cromwellService = cromwellService;
+    this.runSetAbortConfiguration = runSetAbortConfiguration;
+    this.abortExecutor = abortExecutor;
   }
 
+  /**
+   * Sets the run set to CANCELING and sends the abort requests of its runs. Nothing is sent while
+   * another abort of the run set is still running.
+   *
+   * @return the runs whose abort request was submitted or failed. When abort requests are sent in
+   *     the background, the runs whose abort request is about to be sent are listed as submitted.
+   */
   public AbortRequestDetails abortRunSet(RunSet runSet, BearerToken userToken) {
     AbortRequestDetails abortDetails = new AbortRequestDetails();
 
-    List<String> failedRunIds = new ArrayList<>();
-
     // Update the run set to have a canceling state if not canceling
     if (runSet.status() != CbasRunSetStatus.CANCELING && runSet.status().nonTerminal()) {
       runSetDao.updateStateAndRunSetDetails(
@@ -46,22 +79,46 @@ public class RunSetAbortManager {
     }
 
     // Get a list of workflows able to be canceled
-    List<Run> runningWorkflows =
-        runDao.getRuns(new RunDao.RunsFilters(runSet.runSetId(), NON_TERMINAL_STATES));
-    List<UUID> submittedAbortWorkflows = new ArrayList<>();
+    List<PollableRun> runningWorkflows =
+        runDao.getPollableRuns(new RunDao.RunsFilters(runSet.runSetId(), NON_TERMINAL_STATES));
+
+    if (runSetAbortDao.startAbort(
+            runSet.runSetId(),
+            runningWorkflows.size(),
+            runSetAbortConfiguration.getStaleAfterSeconds())
+        == 0) {
+      log.info("Abort of run set {} is already in progress.", runSet.runSetId());
+      abortDetails.setFailedIds(List.of());
+      abortDetails.setSubmittedIds(List.of());
+      return abortDetails;
+    }
+
+    List<CompletableFuture<Boolean>> abortRequests =
+        runningWorkflows.stream()
+            .map(
+                run ->
+                    CompletableFuture.supplyAsync(
+                        () -> sendAbortRequest(runSet.runSetId(), run, userToken), abortExecutor))
+            .toList();
+    CompletableFuture<Void> abortCompleted =
+        CompletableFuture.allOf(abortRequests.toArray(CompletableFuture[]::new))
+            .whenComplete((result, e) -> runSetAbortDao.completeAbort(runSet.runSetId()));
+
+    if (runSetAbortConfiguration.isEnabled()) {
+      abortDetails.setFailedIds(List.of());
+      abortDetails.setSubmittedIds(runningWorkflows.stream().map(PollableRun::runId).toList());
+      return abortDetails;
+    }
 
-    for (Run run : runningWorkflows) {
-      // Trying inside the for-loop in case a single run fails to be updated
-      try {
-        cromwellService.cancelRun(run, userToken);
+    abortCompleted.join();
+    List<String> failedRunIds = new ArrayList<>();
+    List<UUID> submittedAbortWorkflows = new ArrayList<>();
+    for (int i = 0; i < runningWorkflows.size(); i++) {
+      PollableRun run = runningWorkflows.get(i);
+      if (Boolean.TRUE.equals(abortRequests.get(i).join())) {
         submittedAbortWorkflows.add(run.runId());
-      } catch (cromwell.client.ApiException e) {
-        String msg = "Unable to abort workflow %s.".formatted(run.runId());
-        log.error(msg, e);
+      } else {
         failedRunIds.add(run.runId().toString());
-        // Record the error message against the run:
-        runDao.updateRunStatusWithError(
-            run.runId(), CbasRunStatus.SYSTEM_ERROR, OffsetDateTime.now(), msg);
       }
     }
 
@@ -71,6 +128,28 @@ public class RunSetAbortManager {
     return abortDetails;
   }
 
+  public Optional<RunSetAbort> getAbort(UUID runSetId) {
+    return runSetAbortDao.getAbort(runSetId);
+  }
+
+  /** @return whether the abort request was submitted to Cromwell */
+  private boolean sendAbortRequest(UUID runSetId, PollableRun run, BearerToken userToken) {
+    // Each run is tried on its own in case a single run fails to be updated
+    try {
+      cromwellService.cancelRun(run, userToken);
+    } catch (cromwell.client.ApiException | RuntimeException e) {
+      String msg = "Unable to abort workflow %s.".formatted(run.runId());
+      log.error(msg, e);
+      // Record the error message against the run:
+      runDao.updateRunStatusWithError(
+          run.runId(), CbasRunStatus.SYSTEM_ERROR, OffsetDateTime.now(), msg);
+      runSetAbortDao.recordAbortRequestFailed(runSetId, run.runId());
+      return false;
+    }
+    runSetAbortDao.recordAbortRequestSubmitted(runSetId);
+    return true;
+  }
+
   public static class AbortRequestDetails {
 
     private List<String> abortRequestFailedIds = null;
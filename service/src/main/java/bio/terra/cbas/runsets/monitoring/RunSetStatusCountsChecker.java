@@ -0,0 +1,70 @@
+package bio.terra.cbas.runsets.monitoring;
+
+import bio.terra.cbas.common.MicrometerMetrics;
+import bio.terra.cbas.config.StatusCountsCheckConfiguration;
+import bio.terra.cbas.dao.RunDao;
+import java.time.Duration;
+import java.time.Instant;
+import java.util.List;
+import java.util.UUID;
+import java.util.concurrent.ScheduledFuture;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.DisposableBean;
+import org.springframework.scheduling.TaskScheduler;
+import org.springframework.stereotype.Component;
+
+/**
+ * Periodically compares the run status counters of the non-terminal run sets with the statuses of
+ * their runs, and recounts the counters of the run sets where they differ. The counters are kept
+ * up to date by triggers on the run table, so this only finds drift, for example from runs edited
+ * by hand.
+ *
+ * <p>The comparison scans the runs of every non-terminal run set. It is scheduled on the shared
+ * {@link TaskScheduler}, which has a thread for each scheduled task, so that it does not hold up
+ * the others.
+ */
+@Component
+public class RunSetStatusCountsChecker implements DisposableBean {
+
+  // Maximum number of run sets recounted by a single check
+  private static final int MAX_RUN_SETS_PER_CHECK = 100;
+
+  private final RunDao runDao;
+  private final MicrometerMetrics micrometerMetrics;
+  private final ScheduledFuture<?> scheduledCheck;
+
+  private static final Logger logger = LoggerFactory.getLogger(RunSetStatusCountsChecker.class);
+
+  public RunSetStatusCountsChecker(
+      RunDao runDao,
+      MicrometerMetrics micrometerMetrics,
+      StatusCountsCheckConfiguration statusCountsCheckConfiguration,
+      TaskScheduler taskScheduler) {
+    this.runDao = runDao;
+    this.micrometerMetrics = micrometerMetrics;
+    Duration interval = Duration.ofSeconds(statusCountsCheckConfiguration.getIntervalSeconds());
+    this.scheduledCheck =
+        taskScheduler.scheduleWithFixedDelay(
+            this::checkStatusCounts, Instant.now().plus(interval), interval);
+  }
+
+  @Override
+  public void destroy() {
+    scheduledCheck.cancel(true);
+  }
+
+  public void checkStatusCounts() {
+    try {
+      List<UUID> staleRunSets = runDao.getRunSetsWithStaleStatusCounts(MAX_RUN_SETS_PER_CHECK);
+      for (UUID runSetId : staleRunSets) {
+        logger.warn("Recounting the run statuses of Run Set {}", runSetId);
+        runDao.rebuildRunSetStatusCounts(runSetId);
+      }
+      micrometerMetrics.increaseEventCounter("run_set_status_counts_rebuilt", staleRunSets.size());
+    } catch (RuntimeException e) {
+      // Keep checking on the next run
+      logger.error("Failed to check the run status counters of run sets", e);
+    }
+  }
+}
@@ -0,0 +1,275 @@
+package bio.terra.cbas.runsets.monitoring;
+
+import bio.terra.cbas.common.MicrometerMetrics;
+import bio.terra.cbas.config.CbasApiConfiguration;
+import bio.terra.cbas.config.PollEngineConfiguration;
+import bio.terra.cbas.dao.RunDao;
+import bio.terra.cbas.dao.RunSetDao;
+import bio.terra.cbas.dao.RunSetUserTokenDao;
+import bio.terra.cbas.dependencies.sam.SamService;
+import bio.terra.cbas.models.PollableRun;
+import bio.terra.cbas.models.PollableRunSet;
+import bio.terra.cbas.models.Run;
+import bio.terra.cbas.models.RunSet;
+import bio.terra.cbas.monitoring.TimeLimitedUpdater.UpdateResult;
+import bio.terra.common.iam.BearerToken;
+import com.google.common.cache.Cache;
+import com.google.common.cache.CacheBuilder;
+import com.google.common.hash.Hashing;
+import java.nio.charset.StandardCharsets;
+import java.time.Duration;
+import java.time.Instant;
+import java.time.OffsetDateTime;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.UUID;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ScheduledFuture;
+import java.util.function.Function;
+import java.util.function.Predicate;
+import java.util.stream.Collectors;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.DisposableBean;
+import org.springframework.scheduling.TaskScheduler;
+import org.springframework.stereotype.Component;
+
+/**
+ * Keeps the statuses of runs and run sets up to date in the background, so that GET /runs and GET
+ * /run_sets can return them straight from the database.
+ *
+ * <p>Every poll, the non-terminal runs that were least recently polled are polled from the engine,
+ * at most {@code maxRunsPerSecond} on average, and then the statuses of the least recently polled
+ * non-terminal run sets are derived from their runs. Runs and run sets are claimed before they are
+ * polled, so that every CBAS instance polls different ones. Polls are scheduled on the shared
+ * {@link TaskScheduler}, which has a thread for each scheduled task.
+ *
+ * <p>Updating a completed run writes its outputs to WDS on behalf of a user, so the runs of a run
+ * set are polled with the token of the user who submitted it, stored along with the run set (see
+ * {@link RunSetUserTokenDao}). The token is stored when the run set is submitted, and is replaced
+ * by the newer tokens of the user's later API requests. The runs of a run set whose token expired
+ * are not polled until the user makes another request.
+ */
+@Component
+public class ScheduledPollEngine implements DisposableBean {
+
+  private final SmartRunsPoller smartRunsPoller;
+  private final SmartRunSetsPoller smartRunSetsPoller;
+  private final RunDao runDao;
+  private final RunSetDao runSetDao;
+  private final RunSetUserTokenDao runSetUserTokenDao;
+  private final SamService samService;
+  private final PollEngineConfiguration pollEngineConfiguration;
+  private final CbasApiConfiguration cbasApiConfiguration;
+  private final MicrometerMetrics micrometerMetrics;
+
+  // The tokens offered by API requests, by their hash, until the poll thread stores them
+  private final Map<String, BearerToken> offeredUserTokens = new ConcurrentHashMap<>();
+  // The hashes of the tokens stored recently, which are not stored again until they expire here
+  private final Cache<String, Boolean> storedUserTokens =
+      CacheBuilder.newBuilder()
+          .maximumSize(MAX_OFFERED_USER_TOKENS)
+          .expireAfterWrite(USER_TOKEN_STORAGE_INTERVAL)
+          .build();
+  private final ScheduledFuture<?> scheduledPoll;
+  private OffsetDateTime lastUserTokenCleanup = OffsetDateTime.MIN;
+
+  private static final int MAX_OFFERED_USER_TOKENS = 1000;
+  private static final Duration USER_TOKEN_STORAGE_INTERVAL = Duration.ofMinutes(5);
+  private static final Duration USER_TOKEN_CLEANUP_INTERVAL = Duration.ofMinutes(1);
+
+  private static final Logger logger = LoggerFactory.getLogger(ScheduledPollEngine.class);
+
+  public ScheduledPollEngine(
+      SmartRunsPoller smartRunsPoller,
+      SmartRunSetsPoller smartRunSetsPoller,
+      RunDao runDao,
+      RunSetDao runSetDao,
+      RunSetUserTokenDao runSetUserTokenDao,
+      SamService samService,
+      PollEngineConfiguration pollEngineConfiguration,
+      CbasApiConfiguration cbasApiConfiguration,
+      MicrometerMetrics micrometerMetrics,
+      TaskScheduler taskScheduler) {
+    this.smartRunsPoller = smartRunsPoller;
+    this.smartRunSetsPoller = smartRunSetsPoller;
+    this.runDao = runDao;
+    this.runSetDao = runSetDao;
+    this.runSetUserTokenDao = runSetUserTokenDao;
+    this.samService = samService;
+    this.pollEngineConfiguration = pollEngineConfiguration;
+    this.cbasApiConfiguration = cbasApiConfiguration;
+    this.micrometerMetrics = micrometerMetrics;
+    if (pollEngineConfiguration.isEnabled()) {
+      Duration pollInterval = Duration.ofMillis(pollEngineConfiguration.getPollIntervalMillis());
+      this.scheduledPoll =
+          taskScheduler.scheduleWithFixedDelay(
+              this::poll, Instant.now().plus(pollInterval), pollInterval);
+    } else {
+      this.scheduledPoll = null;
+    }
+  }
+
+  @Override
+  public void destroy() {
+    if (scheduledPoll != null) {
+      scheduledPoll.cancel(true);
+    }
+  }
+
+  public boolean isEnabled() {
+    return pollEngineConfiguration.isEnabled();
+  }
+
+  /**
+   * Hands the engine the token of an API request. The poll thread looks up the user the token
+   * belongs to, and stores the token for the user's non-terminal run sets.
+   */
+  public void offerUserToken(BearerToken userToken) {
+    if (!isEnabled() || offeredUserTokens.size() >= MAX_OFFERED_USER_TOKENS) {
+      return;
+    }
+    String tokenHash = hash(userToken);
+    if (storedUserTokens.getIfPresent(tokenHash) == null) {
+      offeredUserTokens.putIfAbsent(tokenHash, userToken);
+    }
+  }
+
+  /**
+   * Stores the token of a user who just submitted a run set, for the user's non-terminal run sets
+   * including the new one. A failure to store the token is only logged, as the token is stored
+   * again with the user's next request.
+   *
+   * @param userId the Sam subject ID of the user
+   */
+  public void storeUserToken(String userId, BearerToken userToken) {
+    if (!isEnabled()) {
+      return;
+    }
+    try {
+      runSetUserTokenDao.storeUserToken(userId, userToken.getToken());
+      storedUserTokens.put(hash(userToken), true);
+    } catch (RuntimeException e) {
+      logger.warn("Failed to store the user token of a new run set", e);
+    }
+  }
+
+  public void poll() {
+    if (!isEnabled()) {
+      return;
+    }
+    try {
+      storeOfferedUserTokens();
+      deleteUnusableUserTokens();
+      pollRuns();
+      refreshRunSets();
+    } catch (RuntimeException e) {
+      // Keep polling on the next run
+      logger.error("Background poll of run statuses failed", e);
+    }
+  }
+
+  /**
+   * The runs listed from the database, which count as fully updated if every non-terminal run
+   * submitted to the engine was polled within {@code staleAfterSeconds}.
+   */
+  public UpdateResult<Run> runsAsPolled(List<Run> runs) {
+    return asPolled(
+        runs,
+        run -> run.status().nonTerminal() && run.engineId() != null,
+        Run::lastPolledTimestamp);
+  }
+
+  /**
+   * The run sets listed from the database, which count as fully updated if every non-terminal run
+   * set was refreshed within {@code staleAfterSeconds}.
+   */
+  public UpdateResult<RunSet> runSetsAsPolled(List<RunSet> runSets) {
+    return asPolled(runSets, runSet -> runSet.status().nonTerminal(), RunSet::lastPolledTimestamp);
+  }
+
+  private <T> UpdateResult<T> asPolled(
+      List<T> items, Predicate<T> isPolled, Function<T, OffsetDateTime> lastPolledTimestamp) {
+    OffsetDateTime staleBefore =
+        OffsetDateTime.now().minusSeconds(pollEngineConfiguration.getStaleAfterSeconds());
+    List<T> polledItems = items.stream().filter(isPolled).toList();
+    int upToDate =
+        (int)
+            polledItems.stream()
+                .map(lastPolledTimestamp)
+                .filter(lastPolled -> lastPolled != null && !lastPolled.isBefore(staleBefore))
+                .count();
+    return new UpdateResult<>(items, polledItems.size(), upToDate, upToDate == polledItems.size());
+  }
+
+  private void storeOfferedUserTokens() {
+    for (String tokenHash : Set.copyOf(offeredUserTokens.keySet())) {
+      BearerToken userToken = offeredUserTokens.remove(tokenHash);
+      try {
+        String userId = samService.getSamUser(userToken).getUserSubjectId();
+        runSetUserTokenDao.storeUserToken(userId, userToken.getToken());
+        storedUserTokens.put(tokenHash, true);
+      } catch (RuntimeException e) {
+        logger.warn("Failed to store an offered user token", e);
+      }
+    }
+  }
+
+  private void deleteUnusableUserTokens() {
+    OffsetDateTime now = OffsetDateTime.now();
+    if (lastUserTokenCleanup.isAfter(now.minus(USER_TOKEN_CLEANUP_INTERVAL))) {
+      return;
+    }
+    lastUserTokenCleanup = now;
+    int deleted = runSetUserTokenDao.deleteUnusableUserTokens();
+    micrometerMetrics.increaseEventCounter("poll_engine_user_tokens_deleted", deleted);
+  }
+
+  private void pollRuns() {
+    OffsetDateTime polledBefore =
+        OffsetDateTime.now()
+            .minusSeconds(cbasApiConfiguration.getMinSecondsBetweenRunStatusPolls());
+    List<PollableRun> runsToPoll =
+        runDao.claimRunsToPoll(polledBefore, pollEngineConfiguration.getRunsPerPoll());
+    if (runsToPoll.isEmpty()) {
+      return;
+    }
+
+    Map<UUID, String> userTokens =
+        runSetUserTokenDao.getUserTokens(
+            runsToPoll.stream().map(PollableRun::getRunSetId).collect(Collectors.toSet()));
+    // The runs of the run sets of the same user are polled together. Runs whose token expired since
+    // they were claimed are polled once the user makes another request.
+    Map<String, List<PollableRun>> runsByUserToken =
+        runsToPoll.stream()
+            .filter(run -> userTokens.containsKey(run.getRunSetId()))
+            .collect(
+                Collectors.groupingBy(
+                    run -> userTokens.get(run.getRunSetId()),
+                    LinkedHashMap::new,
+                    Collectors.toList()));
+    micrometerMetrics.increaseEventCounter(
+        "poll_engine_runs_without_user_token",
+        runsToPoll.size() - runsByUserToken.values().stream().mapToInt(List::size).sum());
+    runsByUserToken.forEach(
+        (userToken, runs) -> smartRunsPoller.updateRuns(runs, new BearerToken(userToken)));
+  }
+
+  private void refreshRunSets() {
+    OffsetDateTime refreshedBefore =
+        OffsetDateTime.now()
+            .minus(Duration.ofMillis(pollEngineConfiguration.getPollIntervalMillis()));
+    List<PollableRunSet> runSetsToRefresh =
+        runSetDao.claimRunSetsToRefresh(
+            refreshedBefore, pollEngineConfiguration.getRunSetsPerPoll());
+    if (!runSetsToRefresh.isEmpty()) {
+      smartRunSetsPoller.refreshRunSets(runSetsToRefresh);
+    }
+  }
+
+  private static String hash(BearerToken userToken) {
+    return Hashing.sha256().hashString(userToken.getToken(), StandardCharsets.UTF_8).toString();
+  }
+}
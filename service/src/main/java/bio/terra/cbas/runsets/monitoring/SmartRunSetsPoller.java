@@ -5,21 +5,25 @@ import bio.terra.cbas.common.MicrometerMetrics;
 import bio.terra.cbas.config.CbasApiConfiguration;
 import bio.terra.cbas.dao.RunDao;
 import bio.terra.cbas.dao.RunSetDao;
+import bio.terra.cbas.dao.SubmissionJobDao;
 import bio.terra.cbas.models.CbasRunSetStatus;
 import bio.terra.cbas.models.CbasRunStatus;
-import bio.terra.cbas.models.Run;
+import bio.terra.cbas.models.PollableRun;
+import bio.terra.cbas.models.PollableRunSet;
 import bio.terra.cbas.models.RunSet;
 import bio.terra.cbas.monitoring.TimeLimitedUpdater;
 import bio.terra.cbas.monitoring.TimeLimitedUpdater.UpdateResult;
+import bio.terra.cbas.runsets.outputs.OutputPlanCache;
 import bio.terra.common.iam.BearerToken;
 import io.micrometer.core.instrument.Timer;
 import java.time.OffsetDateTime;
-import java.util.Collections;
 import java.util.Comparator;
 import java.util.List;
 import java.util.Map;
 import java.util.Objects;
 import java.util.Optional;
+import java.util.UUID;
+import java.util.function.Function;
 import java.util.stream.Collectors;
 import org.slf4j.LoggerFactory;
 import org.springframework.stereotype.Component;
@@ -30,6 +34,8 @@ public class SmartRunSetsPoller {
   private final SmartRunsPoller smartRunsPoller;
   private final RunDao runDao;
   private final RunSetDao runSetDao;
+  private final SubmissionJobDao submissionJobDao;
+  private final OutputPlanCache outputPlanCache;
   private final CbasApiConfiguration cbasApiConfiguration;
   private final MicrometerMetrics micrometerMetrics;
 
@@ -39,33 +45,73 @@ public class SmartRunSetsPoller {
       SmartRunsPoller smartRunsPoller,
       RunSetDao runSetDao,
       RunDao runDao,
+      SubmissionJobDao submissionJobDao,
+      OutputPlanCache outputPlanCache,
       CbasApiConfiguration cbasApiConfiguration,
       MicrometerMetrics micrometerMetrics) {
     this.runDao = runDao;
     this.runSetDao = runSetDao;
+    this.submissionJobDao = submissionJobDao;
+    this.outputPlanCache = outputPlanCache;
     this.smartRunsPoller = smartRunsPoller;
     this.cbasApiConfiguration = cbasApiConfiguration;
     this.micrometerMetrics = micrometerMetrics;
   }
 
   public UpdateResult<RunSet> updateRunSets(List<RunSet> runSets, BearerToken userToken) {
+    OffsetDateTime limitedEndTime =
+        OffsetDateTime.now().plusSeconds(cbasApiConfiguration.getMaxSmartPollRunSetUpdateSeconds());
+    return updateRunSets(
+        runSets,
+        RunSet::runSetId,
+        RunSet::status,
+        RunSet::lastPolledTimestamp,
+        rs -> updateRunSet(rs, limitedEndTime, userToken),
+        limitedEndTime);
+  }
+
+  /**
+   * Updates the status and counts of run sets from the runs recorded in the database, without
+   * polling the engine for their runs. Used by the {@link ScheduledPollEngine}, which polls the
+   * runs itself. The run sets are not read again once updated, so the returned run sets are the
+   * ones given.
+   */
+  public UpdateResult<PollableRunSet> refreshRunSets(List<PollableRunSet> runSets) {
+    OffsetDateTime limitedEndTime =
+        OffsetDateTime.now().plusSeconds(cbasApiConfiguration.getMaxSmartPollRunSetUpdateSeconds());
+    return updateRunSets(
+        runSets,
+        PollableRunSet::runSetId,
+        PollableRunSet::status,
+        PollableRunSet::lastPolledTimestamp,
+        rs -> {
+          refreshRunSet(rs);
+          return rs;
+        },
+        limitedEndTime);
+  }
+
+  private <T> UpdateResult<T> updateRunSets(
+      List<T> runSets,
+      Function<T, UUID> runSetId,
+      Function<T, CbasRunSetStatus> status,
+      Function<T, OffsetDateTime> lastPolledTimestamp,
+      Function<T, T> updateOperation,
+      OffsetDateTime limitedEndTime) {
     long startTimeNs = System.nanoTime();
 
     // For metrics:
     Timer.Sample methodStartSample = micrometerMetrics.startTimer();
     boolean successBoolean = false;
 
-    OffsetDateTime limitedEndTime =
-        OffsetDateTime.now().plusSeconds(cbasApiConfiguration.getMaxSmartPollRunSetUpdateSeconds());
-
     try {
-      TimeLimitedUpdater.UpdateResult<RunSet> runSetUpdateResult =
+      TimeLimitedUpdater.UpdateResult<T> runSetUpdateResult =
           TimeLimitedUpdater.update(
               runSets,
-              RunSet::runSetId,
-              rs -> rs.status().nonTerminal(),
-              Comparator.comparing(RunSet::lastPolledTimestamp),
-              rs -> updateRunSet(rs, limitedEndTime, userToken),
+              runSetId,
+              rs -> status.apply(rs).nonTerminal(),
+              Comparator.comparing(lastPolledTimestamp),
+              updateOperation,
               limitedEndTime);
 
       micrometerMetrics.increaseEventCounter(
@@ -93,8 +139,9 @@ public class SmartRunSetsPoller {
     boolean successBoolean = false;
 
     try {
-      List<Run> updateableRuns =
-          runDao.getRuns(new RunDao.RunsFilters(rs.runSetId(), CbasRunStatus.NON_TERMINAL_STATES));
+      List<PollableRun> updateableRuns =
+          runDao.getPollableRuns(
+              new RunDao.RunsFilters(rs.runSetId(), CbasRunStatus.NON_TERMINAL_STATES));
 
       // Make sure neither the run set nor run time limit expire:
       OffsetDateTime runPollerSpecificUpdateLimit =
@@ -106,57 +153,64 @@ public class SmartRunSetsPoller {
 
       smartRunsPoller.updateRuns(updateableRuns, Optional.of(runPollUpdateEndTime), userToken);
 
-      StatusAndCounts newStatusAndCounts = newStatusAndErrorCounts(rs);
-
-      if (rs.status() == CbasRunSetStatus.CANCELING) {
-        // Check how many runs in the run set are canceled
-        Map<CbasRunStatus, RunDao.StatusCountRecord> canceledRunSetRuns =
-            runDao.getRunStatusCounts(
-                new RunDao.RunsFilters(
-                    rs.runSetId(), Collections.singleton(CbasRunStatus.CANCELED)));
-
-        // If the total number of canceled runs is the same as the number of runs in the run set,
-        // then the entire run set is canceled.
-        if (canceledRunSetRuns.values().size() == rs.runCount()) {
-          runSetDao.updateStateAndRunSetDetails(
-              rs.runSetId(),
-              CbasRunSetStatus.CANCELED,
-              rs.runCount(),
-              rs.errorCount(),
-              OffsetDateTime.now());
-        } else {
-          logger.info(
-              "Cancellation of RunSet %s is still in progress. %d of %d runs have been canceled so far."
-                  .formatted(rs.runSetId(), canceledRunSetRuns.values().size(), rs.runCount()));
-        }
-      }
+      refreshRunSet(PollableRunSet.of(rs));
+      RunSet refreshed = runSetDao.getRunSet(rs.runSetId());
+      successBoolean = true;
+      return refreshed;
+    } finally {
+      micrometerMetrics.recordMethodCompletion(methodStartSample, successBoolean);
+    }
+  }
+
+  private void refreshRunSet(PollableRunSet rs) {
+    StatusAndCounts newStatusAndCounts = newStatusAndErrorCounts(rs);
 
-      if (newStatusAndCounts.status != rs.status()
-          || !Objects.equals(newStatusAndCounts.runErrors, rs.errorCount())
-          || !Objects.equals(newStatusAndCounts.totalRuns, rs.runCount())) {
-        // Update and re-fetch:
+    if (rs.status() == CbasRunSetStatus.CANCELING) {
+      // If the total number of canceled runs is the same as the number of runs in the run set,
+      // then the entire run set is canceled.
+      if (newStatusAndCounts.canceledRuns() == rs.runCount()) {
         runSetDao.updateStateAndRunSetDetails(
             rs.runSetId(),
-            newStatusAndCounts.status(),
-            newStatusAndCounts.totalRuns(),
-            newStatusAndCounts.runErrors(),
-            newStatusAndCounts.lastModified);
+            CbasRunSetStatus.CANCELED,
+            rs.runCount(),
+            rs.errorCount(),
+            OffsetDateTime.now());
       } else {
-        runSetDao.updateLastPolled(List.of(rs.runSetId()));
+        logger.info(
+            "Cancellation of RunSet %s is still in progress. %d of %d runs have been canceled so far."
+                .formatted(rs.runSetId(), newStatusAndCounts.canceledRuns(), rs.runCount()));
       }
-      successBoolean = true;
-      return runSetDao.getRunSet(rs.runSetId());
-    } finally {
-      micrometerMetrics.recordMethodCompletion(methodStartSample, successBoolean);
+    }
+
+    if (newStatusAndCounts.status != rs.status()
+        || !Objects.equals(newStatusAndCounts.runErrors, rs.errorCount())
+        || !Objects.equals(newStatusAndCounts.totalRuns, rs.runCount())) {
+      // Update and re-fetch:
+      runSetDao.updateStateAndRunSetDetails(
+          rs.runSetId(),
+          newStatusAndCounts.status(),
+          newStatusAndCounts.totalRuns(),
+          newStatusAndCounts.runErrors(),
+          newStatusAndCounts.lastModified);
+    } else {
+      runSetDao.updateLastPolled(List.of(rs.runSetId()));
+    }
+    if (newStatusAndCounts.status().isTerminal()) {
+      // No more runs of the run set are expected to complete
+      outputPlanCache.evict(rs.runSetId());
     }
   }
 
   private record StatusAndCounts(
-      CbasRunSetStatus status, Integer totalRuns, Integer runErrors, OffsetDateTime lastModified) {}
+      CbasRunSetStatus status,
+      Integer totalRuns,
+      Integer runErrors,
+      int canceledRuns,
+      OffsetDateTime lastModified) {}
 
-  private StatusAndCounts newStatusAndErrorCounts(RunSet rs) {
+  private StatusAndCounts newStatusAndErrorCounts(PollableRunSet rs) {
     Map<CbasRunStatus, RunDao.StatusCountRecord> runStatusRecords =
-        runDao.getRunStatusCounts(new RunDao.RunsFilters(rs.runSetId(), null));
+        runDao.getRunSetStatusCounts(rs.runSetId());
 
     Map<CbasRunStatus, Integer> runStatusCounts =
         runStatusRecords.entrySet().stream()
@@ -167,11 +221,18 @@ public class SmartRunSetsPoller {
             .map(RunDao.StatusCountRecord::lastModified)
             .reduce(null, this::chooseLater);
 
+    CbasRunSetStatus status = CbasRunSetStatus.fromRunStatuses(runStatusCounts);
+    // A large run set being submitted from the queue does not have runs for all of its records yet
+    if (status.isTerminal() && submissionJobDao.hasPendingJob(rs.runSetId())) {
+      status = CbasRunSetStatus.RUNNING;
+    }
+
     return new StatusAndCounts(
-        CbasRunSetStatus.fromRunStatuses(runStatusCounts),
+        status,
         runStatusCounts.values().stream().mapToInt(Integer::intValue).sum(),
         runStatusCounts.getOrDefault(CbasRunStatus.SYSTEM_ERROR, 0)
             + runStatusCounts.getOrDefault(CbasRunStatus.EXECUTOR_ERROR, 0),
+        runStatusCounts.getOrDefault(CbasRunStatus.CANCELED, 0),
         lastModified);
   }
 
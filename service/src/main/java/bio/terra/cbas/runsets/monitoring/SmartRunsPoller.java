@@ -2,14 +2,16 @@ package bio.terra.cbas.runsets.monitoring;
 
 import bio.terra.cbas.common.MetricsUtil;
 import bio.terra.cbas.common.MicrometerMetrics;
+import bio.terra.cbas.config.AsyncRunStatusPollConfiguration;
 import bio.terra.cbas.config.CbasApiConfiguration;
 import bio.terra.cbas.dependencies.wds.WdsClientUtils;
 import bio.terra.cbas.dependencies.wes.CromwellService;
 import bio.terra.cbas.models.CbasRunStatus;
-import bio.terra.cbas.models.Run;
+import bio.terra.cbas.models.PollableRun;
 import bio.terra.cbas.monitoring.TimeLimitedUpdater;
 import bio.terra.cbas.monitoring.TimeLimitedUpdater.UpdateResult;
 import bio.terra.cbas.runsets.results.RunCompletionHandler;
+import bio.terra.cbas.runsets.results.RunCompletionHandler.RunCompletion;
 import bio.terra.cbas.runsets.results.RunCompletionResult;
 import bio.terra.common.iam.BearerToken;
 import cromwell.client.ApiException;
@@ -19,9 +21,14 @@ import java.time.Duration;
 import java.time.OffsetDateTime;
 import java.util.ArrayList;
 import java.util.Comparator;
+import java.util.HashMap;
 import java.util.List;
+import java.util.Map;
 import java.util.Optional;
+import java.util.function.Function;
 import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Qualifier;
+import org.springframework.core.task.TaskExecutor;
 import org.springframework.stereotype.Component;
 
 @Component
@@ -30,6 +37,8 @@ public class SmartRunsPoller {
   private final CromwellService cromwellService;
   private final RunCompletionHandler runCompletionHandler;
   private final CbasApiConfiguration cbasApiConfiguration;
+  private final AsyncRunStatusPollConfiguration asyncRunStatusPollConfiguration;
+  private final TaskExecutor runStatusPollExecutor;
   private final MicrometerMetrics micrometerMetrics;
 
   private static final org.slf4j.Logger logger = LoggerFactory.getLogger(SmartRunsPoller.class);
@@ -38,10 +47,14 @@ public class SmartRunsPoller {
       CromwellService cromwellService,
       RunCompletionHandler runCompletionHandler,
       CbasApiConfiguration cbasApiConfiguration,
+      AsyncRunStatusPollConfiguration asyncRunStatusPollConfiguration,
+      @Qualifier("runStatusPollExecutor") TaskExecutor runStatusPollExecutor,
       MicrometerMetrics micrometerMetrics) {
     this.cromwellService = cromwellService;
     this.runCompletionHandler = runCompletionHandler;
     this.cbasApiConfiguration = cbasApiConfiguration;
+    this.asyncRunStatusPollConfiguration = asyncRunStatusPollConfiguration;
+    this.runStatusPollExecutor = runStatusPollExecutor;
     this.micrometerMetrics = micrometerMetrics;
   }
 
@@ -53,7 +66,7 @@ public class SmartRunsPoller {
    * @param userToken Bearer token
    * @return A new list containing up-to-date run information for all runs in the input
    */
-  public UpdateResult<Run> updateRuns(List<Run> runs, BearerToken userToken) {
+  public UpdateResult<PollableRun> updateRuns(List<PollableRun> runs, BearerToken userToken) {
     return updateRuns(runs, Optional.empty(), userToken);
   }
 
@@ -66,8 +79,8 @@ public class SmartRunsPoller {
    * @param userToken Bearer token
    * @return A new list containing up-to-date run information for all runs in the input
    */
-  public UpdateResult<Run> updateRuns(
-      List<Run> runs, Optional<OffsetDateTime> customEndTime, BearerToken userToken) {
+  public UpdateResult<PollableRun> updateRuns(
+      List<PollableRun> runs, Optional<OffsetDateTime> customEndTime, BearerToken userToken) {
     long startTimeNs = System.nanoTime();
 
     // For metrics:
@@ -80,27 +93,46 @@ public class SmartRunsPoller {
                 .plusSeconds(cbasApiConfiguration.getMaxSmartPollRunUpdateSeconds()));
 
     try {
-      UpdateResult<Run> runUpdateResult =
-          TimeLimitedUpdater.update(
-              runs,
-              Run::runId,
-              r ->
-                  r.status().nonTerminal()
-                      && r.engineId() != null
-                      && r.lastPolledTimestamp()
-                          .isBefore(
-                              OffsetDateTime.now()
-                                  .minus(
-                                      Duration.ofSeconds(
-                                          cbasApiConfiguration
-                                              .getMinSecondsBetweenRunStatusPolls()))),
-              Comparator.comparing(Run::lastPolledTimestamp),
-              r -> tryUpdateRun(r, userToken),
-              actualEndTime);
+      Function<PollableRun, Boolean> readyForUpdate =
+          r ->
+              r.status().nonTerminal()
+                  && r.engineId() != null
+                  && r.lastPolledTimestamp()
+                      .isBefore(
+                          OffsetDateTime.now()
+                              .minus(
+                                  Duration.ofSeconds(
+                                      cbasApiConfiguration.getMinSecondsBetweenRunStatusPolls())));
+      int batchSize = Math.max(1, cbasApiConfiguration.getRunStatusPollBatchSize());
+      int concurrency = asyncRunStatusPollConfiguration.getConcurrency();
+      if (concurrency > 1) {
+        // Spread the runs over the concurrent batches rather than filling the first batch:
+        batchSize = Math.min(batchSize, Math.max(1, (runs.size() + concurrency - 1) / concurrency));
+      }
+
+      UpdateResult<PollableRun> runUpdateResult =
+          concurrency > 1
+              ? TimeLimitedUpdater.updateConcurrently(
+                  runs,
+                  PollableRun::runId,
+                  readyForUpdate,
+                  Comparator.comparing(PollableRun::lastPolledTimestamp),
+                  batchSize,
+                  batch -> tryUpdateRuns(batch, userToken, actualEndTime),
+                  runStatusPollExecutor,
+                  concurrency,
+                  actualEndTime)
+              : TimeLimitedUpdater.updateInBatches(
+                  runs,
+                  PollableRun::runId,
+                  readyForUpdate,
+                  Comparator.comparing(PollableRun::lastPolledTimestamp),
+                  batchSize,
+                  batch -> tryUpdateRuns(batch, userToken, actualEndTime),
+                  actualEndTime);
 
       micrometerMetrics.increaseEventCounter(
           "run_updates_required", runUpdateResult.totalEligible());
-      micrometerMetrics.increaseEventCounter("run_updates_polled", runUpdateResult.totalUpdated());
 
       successBoolean = true;
       logger.info(
@@ -116,25 +148,101 @@ public class SmartRunsPoller {
     }
   }
 
-  private Run tryUpdateRun(Run r, BearerToken userToken) {
+  /**
+   * Fetches the summaries of a batch of runs from the engine with a single query, then updates
+   * the runs from their summaries together, saving the outputs of completed runs at the same time.
+   * If the batch query fails, the summaries are fetched run by run instead, so that one run the
+   * engine cannot look up does not hold back the rest of its batch. Once the end time is reached,
+   * no more runs are looked up, and runs whose outputs or errors would still have to be fetched
+   * are left for the next update.
+   *
+   * @return the runs of the batch that were polled, or that could not be looked up
+   */
+  private List<PollableRun> tryUpdateRuns(
+      List<PollableRun> batch, BearerToken userToken, OffsetDateTime endTime) {
+    logger.info("Fetching updates for %d runs".formatted(batch.size()));
+    List<PollableRun> attempted = new ArrayList<>();
+    List<PollableRun> polled = new ArrayList<>();
+    Map<String, WorkflowQueryResult> newWorkflowSummaries = new HashMap<>();
+    Optional<Map<String, WorkflowQueryResult>> batchSummaries = fetchSummaries(batch);
+    if (batchSummaries.isPresent()) {
+      attempted.addAll(batch);
+      polled.addAll(batch);
+      newWorkflowSummaries.putAll(batchSummaries.get());
+    } else if (batch.size() > 1) {
+      for (PollableRun r : batch) {
+        if (!OffsetDateTime.now().isBefore(endTime)) {
+          break;
+        }
+        attempted.add(r);
+        Optional<Map<String, WorkflowQueryResult>> runSummary = fetchSummaries(List.of(r));
+        if (runSummary.isPresent()) {
+          polled.add(r);
+          newWorkflowSummaries.putAll(runSummary.get());
+        }
+      }
+    } else {
+      attempted.addAll(batch);
+    }
+    if (polled.isEmpty()) {
+      return attempted;
+    }
+    micrometerMetrics.increaseEventCounter("run_updates_polled", polled.size());
+
+    List<RunCompletion> completions = new ArrayList<>();
+    for (PollableRun r : polled) {
+      WorkflowQueryResult newWorkflowSummary = newWorkflowSummaries.get(r.engineId());
+      if (!OffsetDateTime.now().isBefore(endTime) && needsRunDetails(newWorkflowSummary)) {
+        // Left for the next update, as fetching the outputs or errors of a run can be slow
+        attempted.remove(r);
+        continue;
+      }
+      try {
+        completions.add(toRunCompletion(r, newWorkflowSummary, userToken));
+      } catch (Exception e) {
+        logger.warn("Unable to update run details for {} in database.", r.runId(), e);
+      }
+    }
+    if (!completions.isEmpty()) {
+      updateDatabaseRunStatuses(completions);
+    }
+    return attempted;
+  }
+
+  /** Fetches the summaries of the given runs with a single query. Returns empty if it failed. */
+  private Optional<Map<String, WorkflowQueryResult>> fetchSummaries(List<PollableRun> runs) {
     // For metrics:
     Timer.Sample getStatusStartSample = micrometerMetrics.startTimer();
     boolean getStatusSuccess = false;
 
-    logger.info("Fetching update for run %s".formatted(r.runId()));
-    // Get the new workflow summary:
-    WorkflowQueryResult newWorkflowSummary;
     try {
-      newWorkflowSummary = cromwellService.runSummary(r.engineId());
+      Map<String, WorkflowQueryResult> summaries =
+          cromwellService.runSummaries(runs.stream().map(PollableRun::engineId).toList());
       getStatusSuccess = true;
+      return Optional.of(summaries);
     } catch (ApiException | IllegalArgumentException e) {
-      logger.warn("Unable to fetch summary for run {}.", r.runId(), e);
-      return r;
+      logger.warn(
+          "Unable to fetch summaries for runs {}.",
+          runs.stream().map(PollableRun::runId).toList(),
+          e);
+      return Optional.empty();
     } finally {
       micrometerMetrics.recordOutboundApiRequestCompletion(
           getStatusStartSample, "wes_runSummary", getStatusSuccess);
     }
+  }
 
+  // Whether updating a run to this summary needs another request for its outputs or errors
+  private static boolean needsRunDetails(WorkflowQueryResult newWorkflowSummary) {
+    CbasRunStatus newStatus =
+        newWorkflowSummary == null
+            ? CbasRunStatus.UNKNOWN
+            : CbasRunStatus.fromCromwellStatus(newWorkflowSummary.getStatus());
+    return newStatus == CbasRunStatus.COMPLETE || newStatus.inErrorState();
+  }
+
+  private RunCompletion toRunCompletion(
+      PollableRun r, WorkflowQueryResult newWorkflowSummary, BearerToken userToken) {
     CbasRunStatus newStatus = CbasRunStatus.UNKNOWN;
     if (newWorkflowSummary != null) {
       newStatus = CbasRunStatus.fromCromwellStatus(newWorkflowSummary.getStatus());
@@ -149,15 +257,41 @@ public class SmartRunsPoller {
                       .orElse(newWorkflowSummary.getSubmission()));
     }
 
-    try {
-      return updateDatabaseRunStatus(newStatus, engineChangedTimestamp, r, userToken);
-    } catch (Exception e) {
-      logger.warn("Unable to update run details for {} in database.", r.runId(), e);
-      return r;
+    ArrayList<String> errors = new ArrayList<>();
+    Object outputs = null;
+
+    var updatedRunState = newStatus;
+    if (updatedRunState == CbasRunStatus.COMPLETE) {
+      // Retrieve workflow outputs
+      try {
+        outputs = cromwellService.getOutputs(r.engineId());
+      } catch (Exception e) {
+        // log error and mark Run as Failed
+        String errorMessage =
+            "Error while retrieving workflow outputs for record %s from run %s (engine workflow ID %s): %s"
+                .formatted(
+                    r.recordId(),
+                    r.runId(),
+                    r.engineId(),
+                    WdsClientUtils.extractErrorMessage(e.getMessage()));
+        logger.error(errorMessage, e);
+        errors.add(errorMessage);
+        updatedRunState = CbasRunStatus.SYSTEM_ERROR;
+      }
+    } else if (updatedRunState.inErrorState()) {
+      // Retrieve workflow errors
+      var cromwellErrors = getWorkflowErrors(r);
+      if (!cromwellErrors.isEmpty()) {
+        errors.addAll(cromwellErrors);
+      }
     }
+
+    micrometerMetrics.recordRunStatusUpdate(updatedRunState);
+    return new RunCompletion(
+        r, updatedRunState, outputs, errors, engineChangedTimestamp, userToken);
   }
 
-  private List<String> getWorkflowErrors(Run updatableRun) {
+  private List<String> getWorkflowErrors(PollableRun updatableRun) {
     ArrayList<String> errors = new ArrayList<>();
     try {
       // Retrieve error from Cromwell
@@ -173,55 +307,24 @@ public class SmartRunsPoller {
     return errors;
   }
 
-  private Run updateDatabaseRunStatus(
-      CbasRunStatus status,
-      OffsetDateTime engineStatusChanged,
-      Run updatableRun,
-      BearerToken userToken) {
+  private void updateDatabaseRunStatuses(List<RunCompletion> completions) {
     // For metrics:
     Timer.Sample methodStartSample = micrometerMetrics.startTimer();
-    boolean updateDatabaseRunStatusSuccess = false;
-
-    ArrayList<String> errors = new ArrayList<>();
-    Object outputs = null;
+    boolean updateDatabaseRunStatusesSuccess = false;
 
     try {
-      var updatedRunState = status;
-      if (updatedRunState == CbasRunStatus.COMPLETE) {
-        // Retrieve workflow outputs
-        try {
-          outputs = cromwellService.getOutputs(updatableRun.engineId());
-        } catch (Exception e) {
-          // log error and mark Run as Failed
-          String errorMessage =
-              "Error while retrieving workflow outputs for record %s from run %s (engine workflow ID %s): %s"
-                  .formatted(
-                      updatableRun.recordId(),
-                      updatableRun.runId(),
-                      updatableRun.engineId(),
-                      WdsClientUtils.extractErrorMessage(e.getMessage()));
-          logger.error(errorMessage, e);
-          errors.add(errorMessage);
-          updatedRunState = CbasRunStatus.SYSTEM_ERROR;
-        }
-      } else if (updatedRunState.inErrorState()) {
-        // Retrieve workflow errors
-        var cromwellErrors = getWorkflowErrors(updatableRun);
-        if (!cromwellErrors.isEmpty()) {
-          errors.addAll(cromwellErrors);
-        }
-      }
-
-      micrometerMetrics.recordRunStatusUpdate(updatedRunState);
-
-      // Call Run Completion handler to update results
-      var updateResult =
-          runCompletionHandler.updateResults(
-              updatableRun, updatedRunState, outputs, errors, engineStatusChanged, userToken);
-      updateDatabaseRunStatusSuccess = (updateResult == RunCompletionResult.SUCCESS);
+      // Call Run Completion handler to update results, waiting for the outputs of all the runs
+      // to be saved at once
+      List<RunCompletionResult> updateResults = runCompletionHandler.updateResults(completions);
+      updateDatabaseRunStatusesSuccess =
+          updateResults.stream().allMatch(RunCompletionResult.SUCCESS::equals);
+    } catch (Exception e) {
+      logger.warn(
+          "Unable to update run details for {} in database.",
+          completions.stream().map(completion -> completion.run().runId()).toList(),
+          e);
     } finally {
-      micrometerMetrics.recordMethodCompletion(methodStartSample, updateDatabaseRunStatusSuccess);
+      micrometerMetrics.recordMethodCompletion(methodStartSample, updateDatabaseRunStatusesSuccess);
     }
-    return updatableRun;
   }
 }
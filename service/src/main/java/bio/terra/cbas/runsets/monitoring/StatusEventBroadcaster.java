@@ -0,0 +1,286 @@
+package bio.terra.cbas.runsets.monitoring;
+
+import bio.terra.cbas.common.DateUtils;
+import bio.terra.cbas.common.MicrometerMetrics;
+import bio.terra.cbas.config.StatusEventsConfiguration;
+import bio.terra.cbas.dao.StatusEventDao;
+import bio.terra.cbas.dao.util.StatusEventCursor;
+import bio.terra.cbas.models.CbasRunSetStatus;
+import bio.terra.cbas.models.CbasRunStatus;
+import bio.terra.cbas.models.StatusEvent;
+import com.google.common.util.concurrent.ThreadFactoryBuilder;
+import java.io.IOException;
+import java.time.Duration;
+import java.time.Instant;
+import java.time.OffsetDateTime;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Optional;
+import java.util.Set;
+import java.util.UUID;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledFuture;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicReference;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.DisposableBean;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.http.MediaType;
+import org.springframework.scheduling.TaskScheduler;
+import org.springframework.stereotype.Component;
+import org.springframework.web.servlet.mvc.method.annotation.SseEmitter;
+
+/**
+ * Streams the status events of runs and run sets (see {@link StatusEvent}) to clients as
+ * server-sent events, so that they learn about status changes without polling GET /runs and GET
+ * /run_sets.
+ *
+ * <p>Every poll, the events that follow the last event sent on each open stream are read from the
+ * database and sent, whichever CBAS instance recorded them. Each event is sent with its {@link
+ * StatusEventCursor} as ID, so a client that reconnects with the Last-Event-ID header resumes right
+ * after it.
+ *
+ * <p>Polls are scheduled on the shared {@link TaskScheduler}, and only check where the latest
+ * readable event is and hand the streams that are behind it to a pool of send threads. Each stream
+ * is sent at most {@code eventsPerPoll} events a poll, by one send thread at a time, and a stream
+ * whose client does not accept events within {@code sendTimeoutSeconds} is closed, so that slow
+ * clients and busy streams do not hold up the others.
+ */
+@Component
+public class StatusEventBroadcaster implements DisposableBean {
+
+  public static final String RUN_EVENT = "run";
+  public static final String RUN_SET_EVENT = "run_set";
+
+  private final StatusEventDao statusEventDao;
+  private final StatusEventsConfiguration statusEventsConfiguration;
+  private final MicrometerMetrics micrometerMetrics;
+
+  private final Set<EventStream> streams = ConcurrentHashMap.newKeySet();
+  private final ExecutorService sendExecutor;
+  private final List<ScheduledFuture<?>> scheduledTasks;
+  private Instant lastLagCheck = Instant.MIN;
+
+  private static final Duration LAG_CHECK_INTERVAL = Duration.ofMinutes(1);
+  private static final Duration EVENT_CLEANUP_INTERVAL = Duration.ofHours(1);
+
+  private static final Logger logger = LoggerFactory.getLogger(StatusEventBroadcaster.class);
+
+  private static final class EventStream {
+    private final UUID runSetId;
+    private final SseEmitter emitter;
+    // Only written by the send thread the stream is handed to
+    private volatile StatusEventCursor cursor;
+    private volatile Instant lastSent = Instant.now();
+    // When the stream was handed to a send thread, or null once the send thread is done with it
+    private final AtomicReference<Instant> sendStarted = new AtomicReference<>();
+
+    private EventStream(UUID runSetId, SseEmitter emitter, StatusEventCursor cursor) {
+      this.runSetId = runSetId;
+      this.emitter = emitter;
+      this.cursor = cursor;
+    }
+  }
+
+  @Autowired
+  public StatusEventBroadcaster(
+      StatusEventDao statusEventDao,
+      StatusEventsConfiguration statusEventsConfiguration,
+      MicrometerMetrics micrometerMetrics,
+      TaskScheduler taskScheduler) {
+    this(
+        statusEventDao,
+        statusEventsConfiguration,
+        micrometerMetrics,
+        taskScheduler,
+        Executors.newFixedThreadPool(
+            statusEventsConfiguration.getSendThreads(),
+            new ThreadFactoryBuilder()
+                .setNameFormat("StatusEventSender-%d")
+                .setDaemon(true)
+                .build()));
+  }
+
+  StatusEventBroadcaster(
+      StatusEventDao statusEventDao,
+      StatusEventsConfiguration statusEventsConfiguration,
+      MicrometerMetrics micrometerMetrics,
+      TaskScheduler taskScheduler,
+      ExecutorService sendExecutor) {
+    this.statusEventDao = statusEventDao;
+    this.statusEventsConfiguration = statusEventsConfiguration;
+    this.micrometerMetrics = micrometerMetrics;
+    this.sendExecutor = sendExecutor;
+    Duration pollInterval = Duration.ofMillis(statusEventsConfiguration.getPollIntervalMillis());
+    this.scheduledTasks =
+        List.of(
+            taskScheduler.scheduleWithFixedDelay(
+                this::sendNewEvents, Instant.now().plus(pollInterval), pollInterval),
+            taskScheduler.scheduleWithFixedDelay(
+                this::deleteExpiredEvents,
+                Instant.now().plus(EVENT_CLEANUP_INTERVAL),
+                EVENT_CLEANUP_INTERVAL));
+  }
+
+  @Override
+  public void destroy() {
+    scheduledTasks.forEach(task -> task.cancel(true));
+    sendExecutor.shutdownNow();
+  }
+
+  /**
+   * Opens a stream of status events.
+   *
+   * @param runSetId the run set whose events to stream, or null for the events of all run sets
+   * @param lastEventId the ID of the last event the client received, or null to stream the events
+   *     that follow from now on
+   */
+  public SseEmitter subscribe(UUID runSetId, String lastEventId) {
+    StatusEventCursor cursor =
+        lastEventId == null
+            ? statusEventDao.getCurrentCursor()
+            : StatusEventCursor.decode(lastEventId);
+    SseEmitter emitter =
+        new SseEmitter(
+            TimeUnit.SECONDS.toMillis(statusEventsConfiguration.getStreamTimeoutSeconds()));
+    EventStream stream = new EventStream(runSetId, emitter, cursor);
+    emitter.onCompletion(() -> streams.remove(stream));
+    emitter.onTimeout(emitter::complete);
+    emitter.onError(e -> streams.remove(stream));
+    streams.add(stream);
+    micrometerMetrics.increaseEventCounter("status_event_streams_opened", 1);
+    return emitter;
+  }
+
+  int openStreams() {
+    return streams.size();
+  }
+
+  public void sendNewEvents() {
+    try {
+      checkLag();
+      // Streams that already got every event up to here have nothing to read
+      Optional<StatusEventCursor> latestCursor = statusEventDao.getLatestCursor();
+      Instant now = Instant.now();
+      Instant heartbeatDue =
+          now.minusSeconds(statusEventsConfiguration.getHeartbeatIntervalSeconds());
+      for (EventStream stream : streams) {
+        Instant sendStarted = stream.sendStarted.get();
+        if (sendStarted != null) {
+          closeIfSendTimedOut(stream, sendStarted, now);
+        } else if (latestCursor.filter(latest -> stream.cursor.compareTo(latest) < 0).isPresent()
+            || stream.lastSent.isBefore(heartbeatDue)) {
+          stream.sendStarted.set(now);
+          sendExecutor.execute(() -> sendNewEvents(stream, latestCursor));
+        }
+      }
+    } catch (RuntimeException e) {
+      // Keep polling on the next run
+      logger.error("Failed to send status events", e);
+    }
+  }
+
+  private void closeIfSendTimedOut(EventStream stream, Instant sendStarted, Instant now) {
+    if (sendStarted.plusSeconds(statusEventsConfiguration.getSendTimeoutSeconds()).isAfter(now)) {
+      return;
+    }
+    logger.debug("Closing status event stream that took too long to send to");
+    streams.remove(stream);
+    stream.emitter.complete();
+    micrometerMetrics.increaseEventCounter("status_event_streams_timed_out", 1);
+  }
+
+  private void sendNewEvents(EventStream stream, Optional<StatusEventCursor> latestCursor) {
+    try {
+      if (latestCursor.isPresent() && stream.cursor.compareTo(latestCursor.get()) < 0) {
+        sendEvents(stream, latestCursor.get());
+      }
+      if (stream.lastSent.isBefore(
+          Instant.now().minusSeconds(statusEventsConfiguration.getHeartbeatIntervalSeconds()))) {
+        // Keeps proxies from closing an idle stream, and finds streams whose client went away
+        stream.emitter.send(SseEmitter.event().comment("heartbeat"));
+        stream.lastSent = Instant.now();
+      }
+    } catch (IOException | IllegalStateException e) {
+      // The client went away, or the stream timed out while events were being sent
+      logger.debug("Closing status event stream: {}", e.getMessage());
+      streams.remove(stream);
+    } catch (RuntimeException e) {
+      logger.error("Failed to send status events", e);
+    } finally {
+      stream.sendStarted.set(null);
+    }
+  }
+
+  private void sendEvents(EventStream stream, StatusEventCursor latestCursor) throws IOException {
+    int eventsPerPoll = statusEventsConfiguration.getEventsPerPoll();
+    List<StatusEvent> events =
+        statusEventDao.getEventsAfter(stream.runSetId, stream.cursor, eventsPerPoll);
+    for (StatusEvent event : events) {
+      StatusEventCursor cursor = new StatusEventCursor(event.transactionId(), event.eventId());
+      stream.emitter.send(
+          SseEmitter.event()
+              .id(cursor.encode())
+              .name(event.isRunEvent() ? RUN_EVENT : RUN_SET_EVENT)
+              .data(eventData(event), MediaType.APPLICATION_JSON));
+      stream.cursor = cursor;
+      stream.lastSent = Instant.now();
+    }
+    micrometerMetrics.increaseEventCounter("status_events_sent", events.size());
+    if (events.size() < eventsPerPoll && stream.cursor.compareTo(latestCursor) < 0) {
+      // Every event of the stream up to the latest one was read, so the next poll starts there
+      // rather than reading the events of other run sets again
+      stream.cursor = latestCursor;
+    }
+  }
+
+  private void checkLag() {
+    Instant now = Instant.now();
+    if (lastLagCheck.isAfter(now.minus(LAG_CHECK_INTERVAL))) {
+      return;
+    }
+    lastLagCheck = now;
+    Instant lagLimit = now.minusSeconds(statusEventsConfiguration.getMaxLagSeconds());
+    Optional<OffsetDateTime> heldBackSince = statusEventDao.getOldestHeldBackEventTimestamp();
+    if (heldBackSince.isPresent() && heldBackSince.get().toInstant().isBefore(lagLimit)) {
+      logger.warn(
+          "Status events recorded since {} are held back by a long-running database transaction",
+          heldBackSince.get());
+      micrometerMetrics.increaseEventCounter("status_events_held_back", 1);
+    }
+  }
+
+  private static Map<String, Object> eventData(StatusEvent event) {
+    Map<String, Object> data = new LinkedHashMap<>();
+    data.put("run_set_id", event.runSetId());
+    if (event.isRunEvent()) {
+      data.put("run_id", event.runId());
+      data.put(
+          "state",
+          CbasRunStatus.toCbasApiState(CbasRunStatus.fromValue(event.status())).toString());
+    } else {
+      data.put(
+          "state",
+          CbasRunSetStatus.toCbasRunSetApiState(CbasRunSetStatus.fromValue(event.status()))
+              .toString());
+    }
+    data.put("timestamp", event.eventTimestamp().toString());
+    return data;
+  }
+
+  public void deleteExpiredEvents() {
+    try {
+      int deleted =
+          statusEventDao.deleteEventsBefore(
+              DateUtils.currentTimeInUTC()
+                  .minusHours(statusEventsConfiguration.getRetentionHours()));
+      micrometerMetrics.increaseEventCounter("status_events_deleted", deleted);
+    } catch (RuntimeException e) {
+      logger.error("Failed to delete expired status events", e);
+    }
+  }
+}
@@ -0,0 +1,116 @@
+package bio.terra.cbas.runsets.outputs;
+
+import bio.terra.cbas.common.MicrometerMetrics;
+import bio.terra.cbas.common.exceptions.OutputProcessingException;
+import bio.terra.cbas.common.exceptions.OutputProcessingException.WorkflowOutputDestinationNotSupportedException;
+import bio.terra.cbas.common.exceptions.OutputProcessingException.WorkflowOutputNotFoundException;
+import bio.terra.cbas.model.OutputDestination;
+import bio.terra.cbas.model.OutputDestinationNone;
+import bio.terra.cbas.model.OutputDestinationRecordUpdate;
+import bio.terra.cbas.model.ParameterTypeDefinition;
+import bio.terra.cbas.model.WorkflowOutputDefinition;
+import bio.terra.cbas.runsets.types.CbasValue;
+import bio.terra.cbas.runsets.types.CbasValueParser;
+import bio.terra.cbas.runsets.types.CoercionException;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import org.databiosphere.workspacedata.model.RecordAttributes;
+
+/**
+ * The workflow output definitions of a run set, compiled once and then applied to the outputs of
+ * every run of the run set. Compiling resolves everything that does not depend on the run: which
+ * outputs are written, the record attribute each one is written to, whether it may be missing from
+ * the workflow outputs and a {@link CbasValueParser} for its type.
+ *
+ * <p>As for inputs, problems with the definitions themselves (e.g. an unsupported destination) are
+ * reported when the plan is applied to the outputs of a run rather than when it is compiled.
+ */
+public class OutputPlan {
+
+  private final boolean hasOutputDefinitions;
+  private final List<CompiledOutput> outputs;
+
+  private OutputPlan(boolean hasOutputDefinitions, List<CompiledOutput> outputs) {
+    this.hasOutputDefinitions = hasOutputDefinitions;
+    this.outputs = outputs;
+  }
+
+  public static OutputPlan compile(List<WorkflowOutputDefinition> outputDefinitions) {
+    List<CompiledOutput> outputs = new ArrayList<>();
+    for (WorkflowOutputDefinition outputDefinition : outputDefinitions) {
+      if (outputDefinition.getDestination() instanceof OutputDestinationNone) {
+        continue;
+      } else if (outputDefinition.getDestination() instanceof OutputDestinationRecordUpdate odru) {
+        ParameterTypeDefinition outputType = outputDefinition.getOutputType();
+        outputs.add(
+            new RecordUpdateOutput(
+                outputDefinition.getOutputName(),
+                odru.getRecordAttribute(),
+                outputType != null
+                    && ParameterTypeDefinition.TypeEnum.OPTIONAL.equals(outputType.getType()),
+                CbasValueParser.forType(outputType)));
+      } else {
+        OutputDestination destination = outputDefinition.getDestination();
+        outputs.add(
+            (outputValues, outputRecordAttributes, micrometerMetrics) -> {
+              throw new WorkflowOutputDestinationNotSupportedException(destination);
+            });
+      }
+    }
+    return new OutputPlan(!outputDefinitions.isEmpty(), List.copyOf(outputs));
+  }
+
+  /** Whether the run set has any output definitions, including outputs that are not written. */
+  public boolean hasOutputDefinitions() {
+    return hasOutputDefinitions;
+  }
+
+  @SuppressWarnings("unchecked")
+  public RecordAttributes buildOutputs(Object cromwellOutputs, MicrometerMetrics micrometerMetrics)
+      throws OutputProcessingException, CoercionException {
+    RecordAttributes outputRecordAttributes = new RecordAttributes();
+    for (CompiledOutput output : outputs) {
+      output.addTo(
+          (Map<String, Object>) cromwellOutputs, outputRecordAttributes, micrometerMetrics);
+    }
+    return outputRecordAttributes;
+  }
+
+  @FunctionalInterface
+  private interface CompiledOutput {
+    void addTo(
+        Map<String, Object> outputValues,
+        RecordAttributes outputRecordAttributes,
+        MicrometerMetrics micrometerMetrics)
+        throws OutputProcessingException, CoercionException;
+  }
+
+  /** An output written to an attribute of the run's record. */
+  private record RecordUpdateOutput(
+      String outputName, String attributeName, boolean optional, CbasValueParser parser)
+      implements CompiledOutput {
+
+    @Override
+    public void addTo(
+        Map<String, Object> outputValues,
+        RecordAttributes outputRecordAttributes,
+        MicrometerMetrics micrometerMetrics)
+        throws OutputProcessingException, CoercionException {
+      Object outputValue;
+      if (outputValues.containsKey(outputName)) {
+        outputValue = outputValues.get(outputName);
+      } else if (optional) {
+        outputValue = null;
+      } else {
+        throw new WorkflowOutputNotFoundException(
+            String.format("Output %s not found in workflow outputs.", outputName));
+      }
+
+      CbasValue coercedValue = parser.parse(outputName, outputValue);
+      micrometerMetrics.increaseEventCounter("files_updated_in_wds", coercedValue.countFiles());
+
+      outputRecordAttributes.put(attributeName, coercedValue.asSerializableValue());
+    }
+  }
+}
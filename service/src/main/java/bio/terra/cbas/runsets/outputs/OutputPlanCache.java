@@ -0,0 +1,57 @@
+package bio.terra.cbas.runsets.outputs;
+
+import bio.terra.cbas.dao.RunSetDao;
+import bio.terra.cbas.model.WorkflowOutputDefinition;
+import bio.terra.cbas.models.PollableRun;
+import com.fasterxml.jackson.core.JsonProcessingException;
+import com.fasterxml.jackson.core.type.TypeReference;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.google.common.cache.Cache;
+import com.google.common.cache.CacheBuilder;
+import java.util.List;
+import java.util.UUID;
+import org.springframework.stereotype.Component;
+
+/**
+ * The compiled {@link OutputPlan}s of the run sets whose runs are completing, shared by the run
+ * status pollers and the Cromwell callbacks. A run set's output definition never changes, so it is
+ * read (see {@link RunSetDao#getOutputDefinition}) and compiled once. A plan is evicted when its
+ * run set reaches a terminal state, or when the cache is full.
+ */
+@Component
+public class OutputPlanCache {
+
+  private final RunSetDao runSetDao;
+  private final ObjectMapper objectMapper;
+
+  private static final int OUTPUT_PLANS_CACHE_SIZE = 1000;
+
+  private final Cache<UUID, OutputPlan> outputPlans =
+      CacheBuilder.newBuilder().maximumSize(OUTPUT_PLANS_CACHE_SIZE).build();
+
+  public OutputPlanCache(RunSetDao runSetDao, ObjectMapper objectMapper) {
+    this.runSetDao = runSetDao;
+    this.objectMapper = objectMapper;
+  }
+
+  public OutputPlan getOutputPlan(PollableRun run) throws JsonProcessingException {
+    OutputPlan outputPlan = outputPlans.getIfPresent(run.getRunSetId());
+    if (outputPlan == null) {
+      // Runs of a run set completing at the same time may compile its plan more than once
+      outputPlan = compile(run);
+      outputPlans.put(run.getRunSetId(), outputPlan);
+    }
+    return outputPlan;
+  }
+
+  private OutputPlan compile(PollableRun run) throws JsonProcessingException {
+    String outputDefinition = runSetDao.getOutputDefinition(run.getRunSetId());
+    List<WorkflowOutputDefinition> outputDefinitionList =
+        objectMapper.readValue(outputDefinition, new TypeReference<>() {});
+    return OutputPlan.compile(outputDefinitionList);
+  }
+
+  public void evict(UUID runSetId) {
+    outputPlans.invalidate(runSetId);
+  }
+}
@@ -0,0 +1,280 @@
+package bio.terra.cbas.runsets.results;
+
+import bio.terra.cbas.common.MicrometerMetrics;
+import bio.terra.cbas.config.RunCallbackInboxConfiguration;
+import bio.terra.cbas.dao.RunCallbackDao;
+import bio.terra.cbas.dao.RunDao;
+import bio.terra.cbas.models.CbasRunStatus;
+import bio.terra.cbas.models.PollableRun;
+import bio.terra.cbas.models.RunCallback;
+import bio.terra.cbas.runsets.results.RunCompletionHandler.RunCompletion;
+import bio.terra.cbas.util.UuidSource;
+import bio.terra.common.iam.BearerToken;
+import com.fasterxml.jackson.core.JsonProcessingException;
+import com.fasterxml.jackson.core.type.TypeReference;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import java.time.Duration;
+import java.time.Instant;
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.UUID;
+import java.util.concurrent.ScheduledFuture;
+import java.util.concurrent.Semaphore;
+import java.util.function.Function;
+import java.util.stream.Collectors;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.DisposableBean;
+import org.springframework.beans.factory.annotation.Qualifier;
+import org.springframework.core.task.TaskExecutor;
+import org.springframework.scheduling.TaskScheduler;
+import org.springframework.stereotype.Component;
+
+/**
+ * Stores Cromwell callbacks in the run_callback table (see {@link RunCallbackDao}) as they are
+ * received, and processes them in batches. Every CBAS instance runs {@code workers} workers, which
+ * claim a batch whenever they are idle. The runs of a batch are looked up in one query and updated
+ * together (see {@link RunCompletionHandler#updateResults(List)}). Batches are claimed by a task
+ * scheduled on the shared {@link TaskScheduler}, which has a thread for each scheduled task.
+ *
+ * <p>Callbacks received before their run was last modified are out of date, and are dropped.
+ *
+ * <p>Callbacks whose processing fails are claimed again after a delay, as are the callbacks of a
+ * worker whose instance went away once its lease expires, until they are given up on.
+ */
+@Component
+public class RunCallbackInbox implements DisposableBean {
+
+  private final RunCallbackDao runCallbackDao;
+  private final RunDao runDao;
+  private final RunCompletionHandler runCompletionHandler;
+  private final RunCallbackInboxConfiguration runCallbackInboxConfiguration;
+  private final TaskExecutor runCallbackInboxExecutor;
+  private final ObjectMapper objectMapper;
+  private final MicrometerMetrics micrometerMetrics;
+
+  // Identifies the callbacks claimed by this instance in the run_callback table
+  private final String workerId;
+  private final Semaphore idleWorkers;
+  private final ScheduledFuture<?> scheduledPoll;
+
+  private final Logger logger = LoggerFactory.getLogger(RunCallbackInbox.class);
+
+  public RunCallbackInbox(
+      RunCallbackDao runCallbackDao,
+      RunDao runDao,
+      RunCompletionHandler runCompletionHandler,
+      RunCallbackInboxConfiguration runCallbackInboxConfiguration,
+      @Qualifier("runCallbackInboxExecutor") TaskExecutor runCallbackInboxExecutor,
+      ObjectMapper objectMapper,
+      MicrometerMetrics micrometerMetrics,
+      UuidSource uuidSource,
+      TaskScheduler taskScheduler) {
+    this.runCallbackDao = runCallbackDao;
+    this.runDao = runDao;
+    this.runCompletionHandler = runCompletionHandler;
+    this.runCallbackInboxConfiguration = runCallbackInboxConfiguration;
+    this.runCallbackInboxExecutor = runCallbackInboxExecutor;
+    this.objectMapper = objectMapper;
+    this.micrometerMetrics = micrometerMetrics;
+    this.workerId = "callback-worker-" + uuidSource.generateUUID();
+    this.idleWorkers = new Semaphore(runCallbackInboxConfiguration.getWorkers());
+    if (runCallbackInboxConfiguration.isEnabled()) {
+      Duration pollInterval =
+          Duration.ofMillis(runCallbackInboxConfiguration.getPollIntervalMillis());
+      this.scheduledPoll =
+          taskScheduler.scheduleWithFixedDelay(
+              this::pollForCallbacks, Instant.now().plus(pollInterval), pollInterval);
+    } else {
+      this.scheduledPoll = null;
+    }
+  }
+
+  @Override
+  public void destroy() {
+    if (scheduledPoll != null) {
+      scheduledPoll.cancel(true);
+    }
+  }
+
+  /** Whether callbacks are stored and processed later, rather than while Cromwell waits. */
+  public boolean isEnabled() {
+    return runCallbackInboxConfiguration.isEnabled();
+  }
+
+  /** Stores a callback for the workers to process. Returns once the callback is committed. */
+  public void receive(
+      UUID engineId,
+      CbasRunStatus status,
+      Object outputs,
+      List<String> failures,
+      BearerToken userToken)
+      throws JsonProcessingException {
+    runCallbackDao.createCallback(
+        engineId.toString(),
+        status,
+        outputs == null ? null : objectMapper.writeValueAsString(outputs),
+        failures == null ? null : objectMapper.writeValueAsString(failures),
+        userToken.getToken());
+  }
+
+  public void pollForCallbacks() {
+    if (!runCallbackInboxConfiguration.isEnabled()) {
+      return;
+    }
+    try {
+      claimBatches();
+    } catch (RuntimeException e) {
+      // Keep polling on the next run
+      logger.warn("Failed to claim workflow callbacks", e);
+    }
+  }
+
+  /** Claims a batch of stored callbacks for each idle worker. */
+  void claimBatches() {
+    while (idleWorkers.tryAcquire()) {
+      boolean handedOver = false;
+      try {
+        List<RunCallback> batch =
+            runCallbackDao.claimCallbacks(
+                workerId,
+                runCallbackInboxConfiguration.getBatchSize(),
+                runCallbackInboxConfiguration.getLeaseSeconds());
+        if (batch.isEmpty()) {
+          return;
+        }
+        micrometerMetrics.increaseEventCounter("run_callback_inbox_batches_claimed", 1);
+        runCallbackInboxExecutor.execute(() -> workOn(batch));
+        handedOver = true;
+      } finally {
+        if (!handedOver) {
+          idleWorkers.release();
+        }
+      }
+    }
+  }
+
+  private void workOn(List<RunCallback> batch) {
+    try {
+      process(batch);
+    } catch (RuntimeException e) {
+      // The callbacks are claimed again once their lease expires
+      logger.error("Failed to process a batch of {} callbacks", batch.size(), e);
+    } finally {
+      idleWorkers.release();
+    }
+  }
+
+  void process(List<RunCallback> batch) {
+    List<Long> processedCallbackIds = new ArrayList<>();
+    List<Long> retriedCallbackIds = new ArrayList<>();
+
+    // Cromwell retries callbacks that time out, so a workflow can have more than one callback. Only
+    // the most recently received one of a batch is processed.
+    Map<String, RunCallback> latestCallbacks = new LinkedHashMap<>();
+    for (RunCallback callback : batch) {
+      if (callback.attempts() > runCallbackInboxConfiguration.getMaxAttempts()) {
+        giveUp(
+            callback,
+            "Gave up processing the workflow callback after %d attempts."
+                .formatted(runCallbackInboxConfiguration.getMaxAttempts()));
+        continue;
+      }
+      RunCallback otherCallback = latestCallbacks.get(callback.engineId());
+      if (otherCallback == null
+          || !callback.receivedTimestamp().isBefore(otherCallback.receivedTimestamp())) {
+        latestCallbacks.put(callback.engineId(), callback);
+        if (otherCallback != null) {
+          processedCallbackIds.add(otherCallback.callbackId());
+        }
+      } else {
+        processedCallbackIds.add(callback.callbackId());
+      }
+    }
+
+    Map<String, PollableRun> runs =
+        runDao.getPollableRunsByEngineIds(latestCallbacks.keySet()).stream()
+            .collect(
+                Collectors.toMap(
+                    PollableRun::engineId, Function.identity(), (run, other) -> run));
+
+    List<RunCallback> completedCallbacks = new ArrayList<>();
+    List<RunCompletion> completions = new ArrayList<>();
+    for (RunCallback callback : latestCallbacks.values()) {
+      PollableRun run = runs.get(callback.engineId());
+      if (run == null) {
+        giveUp(
+            callback, "Workflow ID with engine ID %s is not found.".formatted(callback.engineId()));
+        continue;
+      }
+      if (callback.receivedTimestamp().isBefore(run.lastModifiedTimestamp())) {
+        // The run was updated after the callback was received, by a later callback or by polling
+        processedCallbackIds.add(callback.callbackId());
+        continue;
+      }
+      if (callback.userToken() == null && callback.runStatus() == CbasRunStatus.COMPLETE) {
+        giveUp(
+            callback,
+            "The user's credentials expired before the outputs of workflow %s could be saved."
+                .formatted(callback.engineId()));
+        continue;
+      }
+      try {
+        completions.add(toCompletion(callback, run));
+        completedCallbacks.add(callback);
+      } catch (JsonProcessingException e) {
+        giveUp(callback, "Could not read the workflow callback. Error: " + e.getMessage());
+      }
+    }
+
+    List<RunCompletionResult> results = runCompletionHandler.updateResults(completions);
+    for (int i = 0; i < completedCallbacks.size(); i++) {
+      RunCallback callback = completedCallbacks.get(i);
+      RunCompletionResult result = results.get(i);
+      if (result == RunCompletionResult.SUCCESS) {
+        processedCallbackIds.add(callback.callbackId());
+      } else if (result == RunCompletionResult.VALIDATION_ERROR) {
+        giveUp(
+            callback,
+            "The outputs of workflow %s could not be processed.".formatted(callback.engineId()));
+      } else {
+        retriedCallbackIds.add(callback.callbackId());
+      }
+    }
+
+    runCallbackDao.completeCallbacks(processedCallbackIds, workerId);
+    runCallbackDao.retryCallbacks(
+        retriedCallbackIds, workerId, runCallbackInboxConfiguration.getRetryDelaySeconds());
+    micrometerMetrics.increaseEventCounter(
+        "run_callback_inbox_callbacks_processed", processedCallbackIds.size());
+    micrometerMetrics.increaseEventCounter(
+        "run_callback_inbox_callbacks_retried", retriedCallbackIds.size());
+  }
+
+  private RunCompletion toCompletion(RunCallback callback, PollableRun run)
+      throws JsonProcessingException {
+    Object outputs =
+        callback.outputs() == null
+            ? null
+            : objectMapper.readValue(callback.outputs(), Object.class);
+    List<String> failures =
+        callback.failures() == null
+            ? null
+            : objectMapper.readValue(callback.failures(), new TypeReference<List<String>>() {});
+    return new RunCompletion(
+        run,
+        callback.runStatus(),
+        outputs,
+        failures,
+        callback.receivedTimestamp(),
+        new BearerToken(callback.userToken()));
+  }
+
+  private void giveUp(RunCallback callback, String errorMessage) {
+    logger.error("Giving up on callback {}: {}", callback.callbackId(), errorMessage);
+    runCallbackDao.failCallback(callback.callbackId(), workerId, errorMessage);
+    micrometerMetrics.increaseEventCounter("run_callback_inbox_callbacks_failed", 1);
+  }
+}
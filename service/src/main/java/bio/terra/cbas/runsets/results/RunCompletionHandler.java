@@ -4,61 +4,74 @@ import bio.terra.cbas.common.DateUtils;
 import bio.terra.cbas.common.MicrometerMetrics;
 import bio.terra.cbas.common.exceptions.OutputProcessingException;
 import bio.terra.cbas.dao.RunDao;
-import bio.terra.cbas.dependencies.wds.WdsService;
-import bio.terra.cbas.dependencies.wds.WdsServiceException;
-import bio.terra.cbas.model.WorkflowOutputDefinition;
+import bio.terra.cbas.dao.RunDao.RunStatusUpdate;
+import bio.terra.cbas.dependencies.wds.WdsOutputWriter;
 import bio.terra.cbas.models.CbasRunStatus;
+import bio.terra.cbas.models.PollableRun;
 import bio.terra.cbas.models.Run;
-import bio.terra.cbas.runsets.outputs.OutputGenerator;
+import bio.terra.cbas.runsets.outputs.OutputPlan;
+import bio.terra.cbas.runsets.outputs.OutputPlanCache;
 import bio.terra.cbas.runsets.types.CoercionException;
 import bio.terra.common.iam.BearerToken;
 import com.fasterxml.jackson.core.JsonProcessingException;
-import com.fasterxml.jackson.core.type.TypeReference;
-import com.fasterxml.jackson.databind.ObjectMapper;
 import io.micrometer.core.instrument.Timer;
 import java.time.OffsetDateTime;
 import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashSet;
 import java.util.List;
+import java.util.Set;
+import java.util.UUID;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
 import org.databiosphere.workspacedata.model.RecordAttributes;
-import org.databiosphere.workspacedata.model.RecordRequest;
 import org.slf4j.LoggerFactory;
 import org.springframework.stereotype.Component;
 
 @Component
 public class RunCompletionHandler {
   private final RunDao runDao;
-  private final WdsService wdsService;
-  private final ObjectMapper objectMapper;
+  private final OutputPlanCache outputPlanCache;
+  private final WdsOutputWriter wdsOutputWriter;
   private final MicrometerMetrics micrometerMetrics;
+
   private static final org.slf4j.Logger logger =
       LoggerFactory.getLogger(RunCompletionHandler.class);
 
   public RunCompletionHandler(
       RunDao runDao,
-      WdsService wdsService,
-      ObjectMapper objectMapper,
+      OutputPlanCache outputPlanCache,
+      WdsOutputWriter wdsOutputWriter,
       MicrometerMetrics micrometerMetrics) {
     this.runDao = runDao;
-    this.wdsService = wdsService;
-    this.objectMapper = objectMapper;
+    this.outputPlanCache = outputPlanCache;
+    this.wdsOutputWriter = wdsOutputWriter;
     this.micrometerMetrics = micrometerMetrics;
   }
 
-  public boolean hasOutputDefinition(Run run) throws JsonProcessingException {
-    List<WorkflowOutputDefinition> outputDefinitionList =
-        objectMapper.readValue(run.runSet().outputDefinition(), new TypeReference<>() {});
-    return !outputDefinitionList.isEmpty();
+  /**
+   * A run's completion as reported by the engine, handled along with others by {@link
+   * #updateResults(List)}.
+   */
+  public record RunCompletion(
+      PollableRun run,
+      CbasRunStatus status,
+      Object workflowOutputs,
+      List<String> workflowErrors,
+      OffsetDateTime engineStatusChange,
+      BearerToken userToken) {}
+
+  public boolean hasOutputDefinition(PollableRun run) throws JsonProcessingException {
+    return outputPlanCache.getOutputPlan(run).hasOutputDefinitions();
   }
 
-  public RecordAttributes buildOutputAttributes(Run run, Object outputs)
+  public RecordAttributes buildOutputAttributes(PollableRun run, Object outputs)
       throws JsonProcessingException, CoercionException, OutputProcessingException {
-    List<WorkflowOutputDefinition> outputDefinitionList =
-        objectMapper.readValue(run.runSet().outputDefinition(), new TypeReference<>() {});
-    return OutputGenerator.buildOutputs(outputDefinitionList, outputs, micrometerMetrics);
+    return outputPlanCache.getOutputPlan(run).buildOutputs(outputs, micrometerMetrics);
   }
 
   public RunCompletionResult updateResults(
-      Run updatableRun,
+      PollableRun updatableRun,
       CbasRunStatus status,
       Object workflowOutputs,
       List<String> workflowErrors,
@@ -73,7 +86,7 @@ public class RunCompletionHandler {
   }
 
   public RunCompletionResult updateResults(
-      Run updatableRun,
+      PollableRun updatableRun,
       CbasRunStatus status,
       Object workflowOutputs,
       List<String> workflowErrors,
@@ -84,49 +97,20 @@ public class RunCompletionHandler {
     RunCompletionResult updateResult = RunCompletionResult.ERROR;
 
     try {
-      if (updatableRun.status() == status
-          && status != CbasRunStatus.COMPLETE
-          && (workflowErrors == null || workflowErrors.isEmpty())) {
-        // Status is already up-to-date, not complete (no outputs to process), no errors to save.
+      if (isUpToDate(updatableRun, status, workflowErrors)) {
         return updateDatabaseRunStatusOnly(updatableRun);
       }
 
-      // Pull workflow completion information and save run outputs
-      ArrayList<String> errors = new ArrayList<>();
+      RunCompletionResult outputsResult =
+          startSavingOutputs(updatableRun, status, workflowOutputs, userToken).join();
+      if (outputsResult != null) {
+        return outputsResult;
+      }
 
-      // Saving run outputs for a Successful terminal status only.
-      if (status == CbasRunStatus.COMPLETE) {
-        RecordAttributes recordAttributes;
-        try {
-          recordAttributes =
-              buildRecordAttributesFromWorkflowOutputs(updatableRun, workflowOutputs);
-        } catch (OutputProcessingException | JsonProcessingException | CoercionException e) {
-          // log error and return validation exception in case
-          // the json schema of output is not as expected.
-          String errorMessage =
-              "Error while processing workflow output attributes for record %s from run %s (engine workflow ID %s): %s"
-                  .formatted(
-                      updatableRun.recordId(),
-                      updatableRun.runId(),
-                      updatableRun.engineId(),
-                      e.getMessage());
-          logger.error(errorMessage, e);
-          // This error is not retryable, therefore returns false to indicate a validation error
-          // result.
-          return RunCompletionResult.VALIDATION_ERROR;
-        }
-        if (recordAttributes != null && !recordAttributes.isEmpty()) {
-          String errorMessage = saveOutputsToWDS(updatableRun, recordAttributes, userToken);
-          if (errorMessage != null && !errorMessage.isEmpty()) {
-            // Failure to update WDS. Let this be retried by Cromwell
-            logger.error(errorMessage);
-            return RunCompletionResult.ERROR;
-          }
-        }
-      } else if (status.inErrorState()) {
-        if (workflowErrors != null && !workflowErrors.isEmpty()) {
-          errors.addAll(workflowErrors);
-        }
+      // Pull workflow completion information
+      ArrayList<String> errors = new ArrayList<>();
+      if (status.inErrorState() && workflowErrors != null) {
+        errors.addAll(workflowErrors);
       }
       // Save the updated run record in database.
       updateResult = updateDatabaseRunStatus(updatableRun, status, errors, engineStatusChange);
@@ -138,53 +122,186 @@ public class RunCompletionHandler {
     return updateResult;
   }
 
-  public RecordAttributes buildRecordAttributesFromWorkflowOutputs(
-      Run updatableRun, Object workflowOutputs)
-      throws OutputProcessingException, CoercionException, JsonProcessingException {
-    // we only write back output attributes to WDS when output definition is not empty
-    // and the workflow outputs contain items.
-    if (hasOutputDefinition(updatableRun)) {
-      return buildOutputAttributes(updatableRun, workflowOutputs);
+  /**
+   * Handles the completions of many runs as {@link #updateResults(PollableRun, CbasRunStatus,
+   * Object, List, OffsetDateTime, BearerToken)} handles each one, but saves the outputs of the runs
+   * at the same time (see {@link WdsOutputWriter}) and updates the runs in the database together.
+   * The completions are expected to be of distinct runs.
+   *
+   * @return the result of each completion, in the order of the completions
+   */
+  public List<RunCompletionResult> updateResults(List<RunCompletion> completions) {
+    Timer.Sample methodStartSample = micrometerMetrics.startTimer();
+    RunCompletionResult[] results = new RunCompletionResult[completions.size()];
+
+    try {
+      List<UUID> upToDateRunIds = new ArrayList<>();
+      List<CompletableFuture<RunCompletionResult>> outputsResults = new ArrayList<>();
+      for (RunCompletion completion : completions) {
+        PollableRun run = completion.run();
+        if (isUpToDate(run, completion.status(), completion.workflowErrors())) {
+          upToDateRunIds.add(run.runId());
+          outputsResults.add(null);
+        } else {
+          outputsResults.add(
+              startSavingOutputs(
+                  run, completion.status(), completion.workflowOutputs(), completion.userToken()));
+        }
+      }
+
+      List<RunStatusUpdate> statusUpdates = new ArrayList<>();
+      for (int i = 0; i < completions.size(); i++) {
+        RunCompletion completion = completions.get(i);
+        if (outputsResults.get(i) == null) {
+          continue;
+        }
+        results[i] = outputsResults.get(i).join();
+        if (results[i] == null) {
+          String errorMessages =
+              completion.status().inErrorState()
+                      && completion.workflowErrors() != null
+                      && !completion.workflowErrors().isEmpty()
+                  ? String.join(", ", completion.workflowErrors())
+                  : null;
+          statusUpdates.add(
+              new RunStatusUpdate(
+                  completion.run().runId(),
+                  completion.status(),
+                  completion.engineStatusChange(),
+                  errorMessages));
+        }
+      }
+
+      logger.info(
+          "Updating status of {} runs and last polled timestamp of {} runs.",
+          statusUpdates.size(),
+          upToDateRunIds.size());
+      Set<UUID> updatedRunIds = new HashSet<>(runDao.updateLastPolledTimestamps(upToDateRunIds));
+      updatedRunIds.addAll(runDao.updateRunStatuses(statusUpdates));
+
+      for (int i = 0; i < completions.size(); i++) {
+        if (results[i] == null) {
+          PollableRun run = completions.get(i).run();
+          if (updatedRunIds.contains(run.runId())) {
+            results[i] = RunCompletionResult.SUCCESS;
+          } else {
+            logger.warn(
+                "Run {} was attempted to update to {} but no DB rows were changed by the query.",
+                run.runId(),
+                completions.get(i).status());
+            results[i] = RunCompletionResult.ERROR;
+          }
+        }
+      }
+    } finally {
+      micrometerMetrics.recordMethodCompletion(
+          methodStartSample, Arrays.stream(results).allMatch(RunCompletionResult.SUCCESS::equals));
     }
-    return new RecordAttributes();
+    return Arrays.asList(results);
   }
 
-  /// Saving workflow outputs parsed to record attributes. */
+  // Whether the status is already up-to-date, not complete (no outputs to process), with no errors
+  // to save.
+  private static boolean isUpToDate(
+      PollableRun updatableRun, CbasRunStatus status, List<String> workflowErrors) {
+    return updatableRun.status() == status
+        && status != CbasRunStatus.COMPLETE
+        && (workflowErrors == null || workflowErrors.isEmpty());
+  }
 
   /**
-   * Saving workflow outputs to WDS.
+   * Starts saving run outputs, for a successful terminal status only.
    *
-   * @param updatableRun Run record to supply correct reference to WDS API call.
-   * @param recordAttributes Workflow outputs parsed into the record attributes.
-   * @return A string containing error message if any occurred during WDS API call.
+   * @return completes with the result of the completion if it ends here, or with null if the run's
+   *     status is to be updated
    */
-  private String saveOutputsToWDS(
-      Run updatableRun, RecordAttributes recordAttributes, BearerToken userToken) {
+  private CompletableFuture<RunCompletionResult> startSavingOutputs(
+      PollableRun updatableRun,
+      CbasRunStatus status,
+      Object workflowOutputs,
+      BearerToken userToken) {
+    if (status != CbasRunStatus.COMPLETE) {
+      return CompletableFuture.completedFuture(null);
+    }
+    RecordAttributes recordAttributes;
     try {
-      RecordRequest request = new RecordRequest().attributes(recordAttributes);
-      logger.info(
-          "Updating output attributes for Record ID {} from Run {}.",
-          updatableRun.recordId(),
-          updatableRun.engineId());
-
-      wdsService.updateRecord(
-          request, updatableRun.runSet().recordType(), updatableRun.recordId(), userToken);
-    } catch (WdsServiceException e) {
-      // log WDS or other Runtime error and mark Run as Failed.
+      recordAttributes = buildRecordAttributesFromWorkflowOutputs(updatableRun, workflowOutputs);
+    } catch (OutputProcessingException | JsonProcessingException | CoercionException e) {
+      // log error and return validation exception in case
+      // the json schema of output is not as expected.
       String errorMessage =
-          "Error while updating data table attributes for record %s from run %s (engine workflow ID %s): %s"
+          "Error while processing workflow output attributes for record %s from run %s (engine workflow ID %s): %s"
               .formatted(
                   updatableRun.recordId(),
                   updatableRun.runId(),
                   updatableRun.engineId(),
                   e.getMessage());
       logger.error(errorMessage, e);
-      return errorMessage;
+      // This error is not retryable, therefore returns false to indicate a validation error
+      // result.
+      return CompletableFuture.completedFuture(RunCompletionResult.VALIDATION_ERROR);
     }
-    return null; // no error to report
+    if (recordAttributes == null || recordAttributes.isEmpty()) {
+      return CompletableFuture.completedFuture(null);
+    }
+    return saveOutputsToWDS(updatableRun, recordAttributes, userToken);
+  }
+
+  public RecordAttributes buildRecordAttributesFromWorkflowOutputs(
+      PollableRun updatableRun, Object workflowOutputs)
+      throws OutputProcessingException, CoercionException, JsonProcessingException {
+    // we only write back output attributes to WDS when output definition is not empty
+    // and the workflow outputs contain items.
+    OutputPlan outputPlan = outputPlanCache.getOutputPlan(updatableRun);
+    if (outputPlan.hasOutputDefinitions()) {
+      return outputPlan.buildOutputs(workflowOutputs, micrometerMetrics);
+    }
+    return new RecordAttributes();
+  }
+
+  /// Saving workflow outputs parsed to record attributes. */
+
+  /**
+   * Saving workflow outputs to WDS.
+   *
+   * @param updatableRun Run record to supply correct reference to WDS API call.
+   * @param recordAttributes Workflow outputs parsed into the record attributes.
+   * @return Completes with null once the outputs are saved, or with an error result if they could
+   *     not be.
+   */
+  private CompletableFuture<RunCompletionResult> saveOutputsToWDS(
+      PollableRun updatableRun, RecordAttributes recordAttributes, BearerToken userToken) {
+    logger.info(
+        "Updating output attributes for Record ID {} from Run {}.",
+        updatableRun.recordId(),
+        updatableRun.engineId());
+
+    return wdsOutputWriter
+        .write(
+            updatableRun.runSet().recordType(),
+            updatableRun.recordId(),
+            recordAttributes,
+            userToken)
+        .handle(
+            (written, e) -> {
+              if (e == null) {
+                return null;
+              }
+              Throwable cause = e instanceof CompletionException ? e.getCause() : e;
+              // log WDS or other Runtime error. Failure to update WDS is retried by Cromwell.
+              String errorMessage =
+                  "Error while updating data table attributes for record %s from run %s (engine workflow ID %s): %s"
+                      .formatted(
+                          updatableRun.recordId(),
+                          updatableRun.runId(),
+                          updatableRun.engineId(),
+                          cause.getMessage());
+              logger.error(errorMessage, cause);
+              return RunCompletionResult.ERROR;
+            });
   }
 
-  private RunCompletionResult updateDatabaseRunStatusOnly(Run updatableRun) {
+  private RunCompletionResult updateDatabaseRunStatusOnly(PollableRun updatableRun) {
     // Only update last polled timestamp.
     logger.info(
         "Update last modified timestamp for Run {} (engine ID {}) in status {}.",
@@ -205,7 +322,7 @@ public class RunCompletionHandler {
   }
 
   private RunCompletionResult updateDatabaseRunStatus(
-      Run updatableRun,
+      PollableRun updatableRun,
       CbasRunStatus updatedRunState,
       ArrayList<String> errors,
       OffsetDateTime engineChangedTimestamp) {
@@ -228,13 +345,12 @@ public class RunCompletionHandler {
           updatableRun.status(),
           updatedRunState,
           errors.size());
-      updatableRun = updatableRun.withErrorMessages(String.join(", ", errors));
       changes =
           runDao.updateRunStatusWithError(
               updatableRun.runId(),
               updatedRunState,
               engineChangedTimestamp,
-              updatableRun.errorMessages());
+              Run.truncatedErrorMessage(String.join(", ", errors)));
     }
     if (changes == 1) {
       return RunCompletionResult.SUCCESS;
@@ -0,0 +1,13 @@
+package bio.terra.cbas.runsets.submission;
+
+import java.util.UUID;
+
+/**
+ * Stops a worker that can no longer record progress on a submission job, before it submits any
+ * more. The worker that claimed the job after the lease expired carries on with it.
+ */
+public class SubmissionLeaseLostException extends RuntimeException {
+  public SubmissionLeaseLostException(UUID runSetId) {
+    super("Lost the lease on the submission job for Run Set %s".formatted(runSetId));
+  }
+}
@@ -0,0 +1,240 @@
+package bio.terra.cbas.runsets.submission;
+
+import bio.terra.cbas.common.MicrometerMetrics;
+import io.micrometer.core.instrument.Timer;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Optional;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.Executor;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicReference;
+import java.util.function.Consumer;
+import java.util.function.Function;
+
+/**
+ * A linear chain of stages connected by bounded queues. Every intermediate stage runs on its own
+ * thread and hands each item to the next stage as soon as it is ready, so the stages overlap. When
+ * a downstream stage falls behind, the queue in front of it fills up and the upstream stage blocks
+ * (backpressure), which keeps the number of in-memory items per stage bounded by the queue capacity
+ * regardless of how many items flow through the pipeline.
+ *
+ * <p>The terminal {@link #forEach} step starts the stages, runs on the calling thread and returns
+ * once every item has passed through the pipeline. If a stage throws, the stages before it stop,
+ * while the stages after it finish the items it had already handed over, so that work with side
+ * effects elsewhere (such as submitted workflows) is not dropped between two stages. {@link
+ * #forEach} then throws a {@link SubmissionPipelineException}.
+ *
+ * <p>Every stage needs a thread of its own for as long as the pipeline runs, as the stages wait on
+ * each other's queues. The executor must therefore either start the stage right away or reject it
+ * (e.g. a thread pool without a task queue), never queue it. Stages are started from the last one
+ * to the first, so if the executor rejects a stage, no item has been processed yet when {@link
+ * #forEach} throws.
+ *
+ * <p>For each stage the pipeline reports {@code submission_pipeline_stage_timer} (its count gives
+ * the stage throughput) and {@code submission_pipeline_queue_depth} (results of the stage that the
+ * next stage has not picked up yet).
+ */
+public class SubmissionPipeline<T> {
+
+  private static final long POLL_INTERVAL_MILLIS = 100;
+
+  private final PipelineContext context;
+  private final ItemSource<T> source;
+
+  private SubmissionPipeline(PipelineContext context, ItemSource<T> source) {
+    this.context = context;
+    this.source = source;
+  }
+
+  public static <T> SubmissionPipeline<T> from(
+      List<T> items, Executor executor, MicrometerMetrics micrometerMetrics, int queueCapacity) {
+    Iterator<T> iterator = List.copyOf(items).iterator();
+    return new SubmissionPipeline<>(
+        new PipelineContext(executor, micrometerMetrics, queueCapacity),
+        () -> iterator.hasNext() ? Optional.of(iterator.next()) : Optional.empty());
+  }
+
+  /**
+   * Adds a stage that applies {@code operation} to every item on its own thread. At most {@code
+   * queueCapacity} results wait for the next stage before this stage blocks.
+   */
+  public <R> SubmissionPipeline<R> thenStage(String stageName, Function<T, R> operation) {
+    StageQueue<R> output = new StageQueue<>(context, stageName);
+    context.stages.add(new Stage(() -> runStage(stageName, operation, output), output));
+    return new SubmissionPipeline<>(context, output);
+  }
+
+  /** Applies {@code action} to every item on the calling thread and waits for all stages. */
+  public void forEach(String stageName, Consumer<T> action) {
+    try {
+      context.startStages();
+      Optional<T> item;
+      while ((item = source.next()).isPresent()) {
+        Timer.Sample stageSample = context.micrometerMetrics.startTimer();
+        action.accept(item.get());
+        context.recordStageCompletion(stageSample, stageName);
+      }
+    } catch (InterruptedException e) {
+      Thread.currentThread().interrupt();
+      context.fail(e);
+    } catch (RuntimeException e) {
+      context.fail(e);
+    } finally {
+      source.stop();
+      context.close();
+    }
+    context.throwIfFailed();
+  }
+
+  private <R> void runStage(String stageName, Function<T, R> operation, StageQueue<R> output) {
+    try {
+      Optional<T> item;
+      while ((item = source.next()).isPresent()) {
+        Timer.Sample stageSample = context.micrometerMetrics.startTimer();
+        R result = operation.apply(item.get());
+        context.recordStageCompletion(stageSample, stageName);
+        if (!output.put(result)) {
+          // the next stage has stopped, so nothing would pick up further results
+          return;
+        }
+      }
+    } catch (InterruptedException e) {
+      Thread.currentThread().interrupt();
+      context.fail(e);
+    } catch (RuntimeException e) {
+      context.fail(e);
+    } finally {
+      source.stop();
+      // lets the next stage finish the results already handed to it, then stop
+      output.finish();
+    }
+  }
+
+  public static class SubmissionPipelineException extends RuntimeException {
+    public SubmissionPipelineException(Throwable cause) {
+      super("Submission pipeline stage failed: " + cause.getMessage(), cause);
+    }
+  }
+
+  private interface ItemSource<T> {
+    /** Returns the next item, or empty once the upstream stage has finished. */
+    Optional<T> next() throws InterruptedException;
+
+    /** Tells the upstream stage that no more items will be taken. */
+    default void stop() {}
+  }
+
+  private record Stage(Runnable task, StageQueue<?> output) {}
+
+  private static class PipelineContext {
+    private final Executor executor;
+    private final MicrometerMetrics micrometerMetrics;
+    private final int queueCapacity;
+    private final AtomicReference<Throwable> failure = new AtomicReference<>();
+    private final List<Stage> stages = new ArrayList<>();
+    private final List<StageQueue<?>> queues = Collections.synchronizedList(new ArrayList<>());
+
+    PipelineContext(Executor executor, MicrometerMetrics micrometerMetrics, int queueCapacity) {
+      this.executor = executor;
+      this.micrometerMetrics = micrometerMetrics;
+      this.queueCapacity = queueCapacity;
+    }
+
+    void startStages() {
+      for (int i = stages.size() - 1; i >= 0; i--) {
+        Stage stage = stages.get(i);
+        try {
+          executor.execute(stage.task());
+        } catch (RejectedExecutionException e) {
+          fail(e);
+          // None of the stages before it has started, so the stages after it have nothing to do
+          stage.output().finish();
+          return;
+        }
+      }
+    }
+
+    void recordStageCompletion(Timer.Sample stageSample, String stageName) {
+      micrometerMetrics.stopTimer(
+          stageSample, "submission_pipeline_stage_timer", "stage", stageName);
+    }
+
+    void fail(Throwable cause) {
+      // only the first failure is reported, later ones are usually a consequence of it
+      failure.compareAndSet(null, cause);
+    }
+
+    void throwIfFailed() {
+      Throwable cause = failure.get();
+      if (cause instanceof SubmissionPipelineException pipelineException) {
+        throw pipelineException;
+      } else if (cause != null) {
+        throw new SubmissionPipelineException(cause);
+      }
+    }
+
+    void close() {
+      synchronized (queues) {
+        queues.forEach(StageQueue::unregister);
+      }
+    }
+  }
+
+  private static class StageQueue<R> implements ItemSource<R> {
+    private final PipelineContext context;
+    private final String stageName;
+    private final BlockingQueue<R> queue;
+    // set once the stage producing the items has stopped, successfully or not
+    private volatile boolean finished = false;
+    // set once the stage taking the items has stopped, successfully or not
+    private volatile boolean stopped = false;
+
+    StageQueue(PipelineContext context, String stageName) {
+      this.context = context;
+      this.stageName = stageName;
+      this.queue = new ArrayBlockingQueue<>(context.queueCapacity);
+      context.queues.add(this);
+      context.micrometerMetrics.registerSubmissionPipelineQueue(stageName, queue);
+    }
+
+    /** Returns false without queueing the item if the next stage has stopped. */
+    boolean put(R item) throws InterruptedException {
+      while (!queue.offer(item, POLL_INTERVAL_MILLIS, TimeUnit.MILLISECONDS)) {
+        if (stopped) {
+          return false;
+        }
+      }
+      return true;
+    }
+
+    void finish() {
+      finished = true;
+    }
+
+    @Override
+    public Optional<R> next() throws InterruptedException {
+      R item;
+      while ((item = queue.poll(POLL_INTERVAL_MILLIS, TimeUnit.MILLISECONDS)) == null) {
+        // every item is queued before the producer finishes, so check the flag first
+        if (finished && queue.isEmpty()) {
+          return Optional.empty();
+        }
+      }
+      return Optional.of(item);
+    }
+
+    @Override
+    public void stop() {
+      stopped = true;
+    }
+
+    void unregister() {
+      context.micrometerMetrics.unregisterSubmissionPipelineQueue(stageName, queue);
+    }
+  }
+}
@@ -0,0 +1,237 @@
+package bio.terra.cbas.runsets.submission;
+
+import bio.terra.cbas.common.MicrometerMetrics;
+import bio.terra.cbas.config.SubmissionQueueConfiguration;
+import bio.terra.cbas.dao.SubmissionJobDao;
+import bio.terra.cbas.models.SubmissionJob;
+import bio.terra.cbas.service.LargeRunSetsService;
+import bio.terra.cbas.service.RunSetsService;
+import bio.terra.cbas.util.UuidSource;
+import com.google.common.base.Throwables;
+import java.time.Duration;
+import java.time.Instant;
+import java.util.Optional;
+import java.util.Set;
+import java.util.UUID;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ScheduledFuture;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.atomic.AtomicBoolean;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.DisposableBean;
+import org.springframework.beans.factory.annotation.Qualifier;
+import org.springframework.core.task.TaskExecutor;
+import org.springframework.scheduling.TaskScheduler;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.stereotype.Component;
+
+/**
+ * Works on the run set submissions queued in the submission_job table (see {@link
+ * SubmissionJobDao}). Every CBAS instance runs {@code workers} workers, which claim jobs whenever
+ * they are idle, so submission throughput grows with the number of instances.
+ *
+ * <p>While a worker holds a job it renews the job's lease after every batch it records, and every
+ * third of the lease in a task scheduled on the shared {@link TaskScheduler}, which has a thread
+ * for each scheduled task so that renewals are not held up by the others. If the instance goes
+ * away, the lease runs out and a worker in any instance claims the job again and submits the runs
+ * that are still QUEUED. The engine IDs of a batch are recorded before it is sent to Cromwell, so
+ * runs whose workflows reached Cromwell without being recorded as submitted are recorded then
+ * rather than submitted again.
+ */
+@Component
+public class SubmissionQueueWorker implements DisposableBean {
+
+  private final SubmissionJobDao submissionJobDao;
+  private final RunSetsService runSetsService;
+  private final LargeRunSetsService largeRunSetsService;
+  private final SubmissionQueueConfiguration submissionQueueConfiguration;
+  private final TaskExecutor submissionQueueExecutor;
+  private final MicrometerMetrics micrometerMetrics;
+  private final TaskScheduler taskScheduler;
+
+  // Identifies the jobs claimed by this instance in the submission_job table
+  private final String workerId;
+  private final Semaphore idleWorkers;
+  private final Set<UUID> activeJobs = ConcurrentHashMap.newKeySet();
+  private final AtomicBoolean wakeUpScheduled = new AtomicBoolean();
+  private final ScheduledFuture<?> scheduledLeaseRenewal;
+
+  private final Logger logger = LoggerFactory.getLogger(SubmissionQueueWorker.class);
+
+  public SubmissionQueueWorker(
+      SubmissionJobDao submissionJobDao,
+      RunSetsService runSetsService,
+      LargeRunSetsService largeRunSetsService,
+      SubmissionQueueConfiguration submissionQueueConfiguration,
+      @Qualifier("submissionQueueExecutor") TaskExecutor submissionQueueExecutor,
+      MicrometerMetrics micrometerMetrics,
+      UuidSource uuidSource,
+      TaskScheduler taskScheduler) {
+    this.submissionJobDao = submissionJobDao;
+    this.runSetsService = runSetsService;
+    this.largeRunSetsService = largeRunSetsService;
+    this.submissionQueueConfiguration = submissionQueueConfiguration;
+    this.submissionQueueExecutor = submissionQueueExecutor;
+    this.micrometerMetrics = micrometerMetrics;
+    this.taskScheduler = taskScheduler;
+    this.workerId = "submission-worker-" + uuidSource.generateUUID();
+    this.idleWorkers = new Semaphore(submissionQueueConfiguration.getWorkers());
+    if (submissionQueueConfiguration.isEnabled()) {
+      Duration renewalInterval =
+          Duration.ofMillis(submissionQueueConfiguration.getLeaseRenewalIntervalMillis());
+      this.scheduledLeaseRenewal =
+          taskScheduler.scheduleWithFixedDelay(
+              this::renewLeases, Instant.now().plus(renewalInterval), renewalInterval);
+    } else {
+      this.scheduledLeaseRenewal = null;
+    }
+  }
+
+  @Override
+  public void destroy() {
+    if (scheduledLeaseRenewal != null) {
+      scheduledLeaseRenewal.cancel(true);
+    }
+  }
+
+  @Scheduled(fixedDelayString = "${cbas.async.submissionQueue.pollIntervalMillis}")
+  public void pollForJobs() {
+    if (!submissionQueueConfiguration.isEnabled()) {
+      return;
+    }
+    claimJobs();
+  }
+
+  /**
+   * Has the idle workers of this instance claim queued jobs now rather than on the next poll, for
+   * instance right after a run set is queued. The jobs are claimed in a task on the shared {@link
+   * TaskScheduler}, so the caller does not wait for the database. Wake-ups that come in before that
+   * task runs are handled by it together.
+   */
+  public void wakeUp() {
+    if (!submissionQueueConfiguration.isEnabled() || !wakeUpScheduled.compareAndSet(false, true)) {
+      return;
+    }
+    try {
+      taskScheduler.schedule(this::claimJobsOnWakeUp, Instant.now());
+    } catch (RuntimeException e) {
+      wakeUpScheduled.set(false);
+      throw e;
+    }
+  }
+
+  private void claimJobsOnWakeUp() {
+    wakeUpScheduled.set(false);
+    try {
+      claimJobs();
+    } catch (RuntimeException e) {
+      logger.warn("Failed to claim queued submissions, leaving them for the next poll", e);
+    }
+  }
+
+  /** Extends the leases of the jobs this instance is working on. */
+  void renewLeases() {
+    try {
+      submissionJobDao.renewLeases(
+          workerId, Set.copyOf(activeJobs), submissionQueueConfiguration.getLeaseSeconds());
+    } catch (RuntimeException e) {
+      // Keep renewing on the next run
+      logger.warn("Failed to renew the leases of submission jobs", e);
+    }
+  }
+
+  /** Claims queued jobs for as many workers as are idle. Called on every poll and wake-up. */
+  void claimJobs() {
+    while (idleWorkers.tryAcquire()) {
+      boolean handedOver = false;
+      try {
+        Optional<SubmissionJob> claimed =
+            submissionJobDao.claimNextJob(workerId, submissionQueueConfiguration.getLeaseSeconds());
+        if (claimed.isEmpty()) {
+          return;
+        }
+        SubmissionJob job = claimed.get();
+        micrometerMetrics.increaseEventCounter("submission_queue_jobs_claimed", 1);
+        activeJobs.add(job.runSetId());
+        try {
+          submissionQueueExecutor.execute(() -> workOn(job));
+        } catch (RuntimeException e) {
+          // Stop renewing the lease so that the job is claimed again once it expires
+          activeJobs.remove(job.runSetId());
+          throw e;
+        }
+        handedOver = true;
+      } finally {
+        if (!handedOver) {
+          idleWorkers.release();
+        }
+      }
+    }
+  }
+
+  void workOn(SubmissionJob job) {
+    UUID runSetId = job.runSetId();
+    try {
+      if (job.attempts() > submissionQueueConfiguration.getMaxAttempts()) {
+        giveUp(
+            job,
+            "Gave up submitting workflows after %d attempts."
+                .formatted(submissionQueueConfiguration.getMaxAttempts()));
+        return;
+      }
+      if (job.userToken() == null) {
+        giveUp(
+            job,
+            "The user's credentials expired before the workflows could be submitted. Please submit the run set again.");
+        return;
+      }
+      if (job.attempts() > 1) {
+        logger.info(
+            "Resuming submission of Run Set {} (attempt {}, {} batches completed)",
+            runSetId,
+            job.attempts(),
+            job.batchesCompleted());
+      }
+      if (Boolean.TRUE.equals(job.largeRunSet())) {
+        largeRunSetsService.submitLargeRunSet(
+            job,
+            workerId,
+            submissionQueueConfiguration.getLeaseSeconds(),
+            () -> recordBatchCompleted(runSetId));
+      } else {
+        runSetsService.submitQueuedRunSet(job, () -> recordBatchCompleted(runSetId));
+      }
+      if (submissionJobDao.completeJob(runSetId, workerId) == 1) {
+        micrometerMetrics.increaseEventCounter("submission_queue_jobs_completed", 1);
+      }
+    } catch (Exception e) {
+      if (Throwables.getCausalChain(e).stream()
+          .anyMatch(SubmissionLeaseLostException.class::isInstance)) {
+        // Another worker has claimed the job and carries on with it
+        logger.warn("Lost the lease on the submission of Run Set {}", runSetId);
+        micrometerMetrics.increaseEventCounter("submission_queue_leases_lost", 1);
+      } else {
+        logger.error("Failed to submit workflows for Run Set {}", runSetId, e);
+        giveUp(job, "Something went wrong while submitting workflows. Error: " + e.getMessage());
+      }
+    } finally {
+      activeJobs.remove(runSetId);
+      idleWorkers.release();
+    }
+  }
+
+  private void giveUp(SubmissionJob job, String errorMsg) {
+    runSetsService.failQueuedRunSet(job.runSetId(), errorMsg);
+    submissionJobDao.failJob(job.runSetId(), workerId, errorMsg);
+    micrometerMetrics.increaseEventCounter("submission_queue_jobs_failed", 1);
+  }
+
+  private void recordBatchCompleted(UUID runSetId) {
+    if (submissionJobDao.recordBatchCompleted(
+            runSetId, workerId, submissionQueueConfiguration.getLeaseSeconds())
+        == 0) {
+      throw new SubmissionLeaseLostException(runSetId);
+    }
+  }
+}
@@ -25,25 +25,44 @@ public class CbasArray implements CbasValue {
   public static CbasArray parseValue(
       String parameterName, ParameterTypeDefinition innerType, Object values, boolean nonEmpty)
       throws CoercionException {
+    return parseValue(
+        parameterName,
+        CbasValueParser.forType(innerType),
+        "Array[%s]".formatted(innerType),
+        values,
+        nonEmpty);
+  }
+
+  static CbasValueParser parser(ParameterTypeDefinition innerType, boolean nonEmpty) {
+    CbasValueParser innerParser = CbasValueParser.forType(innerType);
+    String typeName = "Array[%s]".formatted(innerType);
+    return (parameterName, values) ->
+        parseValue(parameterName, innerParser, typeName, values, nonEmpty);
+  }
+
+  private static CbasArray parseValue(
+      String parameterName,
+      CbasValueParser innerParser,
+      String typeName,
+      Object values,
+      boolean nonEmpty)
+      throws CoercionException {
     if (values instanceof List<?> valueList) {
-      List<CbasValue> coercedValues = new ArrayList<>();
+      List<CbasValue> coercedValues = new ArrayList<>(valueList.size());
       for (Object value : valueList) {
-        coercedValues.add(CbasValue.parseValue(parameterName, innerType, value));
+        coercedValues.add(innerParser.parse(parameterName, value));
       }
       if (nonEmpty && coercedValues.isEmpty()) {
         throw new ValueCoercionException(
-            parameterName,
-            values,
-            "Array[%s]".formatted(innerType),
-            "Non-empty array must have at least one value.");
+            parameterName, values, typeName, "Non-empty array must have at least one value.");
       }
 
       return new CbasArray(coercedValues);
     } else {
       try {
-        return new CbasArray(List.of(CbasValue.parseValue(parameterName, innerType, values)));
+        return new CbasArray(List.of(innerParser.parse(parameterName, values)));
       } catch (CoercionException e) {
-        throw new TypeCoercionException(parameterName, values, "Array[%s]".formatted(innerType));
+        throw new TypeCoercionException(parameterName, values, typeName);
       }
     }
   }
@@ -3,7 +3,9 @@ package bio.terra.cbas.runsets.types;
 import bio.terra.cbas.model.ParameterTypeDefinition;
 import bio.terra.cbas.model.PrimitiveParameterValueType;
 import java.util.HashMap;
+import java.util.HashSet;
 import java.util.Map;
+import java.util.Set;
 import java.util.stream.Collectors;
 
 public class CbasMap implements CbasValue {
@@ -43,17 +45,41 @@ public class CbasMap implements CbasValue {
       ParameterTypeDefinition valueType,
       Object values)
       throws CoercionException {
-    if (values instanceof Map<?, ?> valueMap) {
-      HashMap<CbasValue, CbasValue> coercedValues = new HashMap<>();
-      for (Map.Entry<?, ?> entry : valueMap.entrySet()) {
-        coercedValues.put(
-            CbasValue.parsePrimitive(parameterName, keyType, entry.getKey()),
-            CbasValue.parseValue(parameterName, valueType, entry.getValue()));
+    return parser(keyType, valueType).parse(parameterName, values);
+  }
+
+  static CbasValueParser parser(
+      PrimitiveParameterValueType keyType, ParameterTypeDefinition valueType) {
+    CbasValueParser keyParser = CbasValueParser.forPrimitive(keyType);
+    CbasValueParser valueParser = CbasValueParser.forType(valueType);
+    String typeName = "Map[%s, %s]".formatted(keyType, valueType);
+    return (parameterName, values) -> {
+      if (values instanceof Map<?, ?> valueMap) {
+        HashMap<CbasValue, CbasValue> coercedValues = new HashMap<>();
+        Set<Object> coercedKeys = new HashSet<>();
+        for (Map.Entry<?, ?> entry : valueMap.entrySet()) {
+          CbasValue key = keyParser.parse(parameterName, entry.getKey());
+          checkKeyNotRepeated(
+              coercedKeys, key.asSerializableValue(), parameterName, values, typeName);
+          coercedValues.put(key, valueParser.parse(parameterName, entry.getValue()));
+        }
+        return new CbasMap(keyType, valueType, coercedValues);
+      } else {
+        throw new TypeCoercionException(parameterName, values, typeName);
       }
-      return new CbasMap(keyType, valueType, coercedValues);
-    } else {
-      throw new TypeCoercionException(
-          parameterName, values, "Map[%s, %s]".formatted(keyType, valueType));
+    };
+  }
+
+  /**
+   * Rejects a map with two keys that coerce to the same key (e.g. the numbers 1 and 1.0 as Int
+   * keys), since only one of their values could be passed on.
+   */
+  static void checkKeyNotRepeated(
+      Set<Object> coercedKeys, Object key, String parameterName, Object values, String typeName)
+      throws ValueCoercionException {
+    if (!coercedKeys.add(key)) {
+      throw new ValueCoercionException(
+          parameterName, values, typeName, "More than one key coerces to %s".formatted(key));
     }
   }
 }
@@ -2,8 +2,8 @@ package bio.terra.cbas.runsets.types;
 
 import bio.terra.cbas.model.ParameterTypeDefinitionOptional;
 import bio.terra.cbas.model.ParameterTypeDefinitionStruct;
-import bio.terra.cbas.model.StructField;
 import java.util.HashMap;
+import java.util.List;
 import java.util.Map;
 import java.util.stream.Collectors;
 
@@ -39,30 +39,44 @@ public class CbasStruct implements CbasValue {
   public static CbasStruct parseValue(
       String parameterName, ParameterTypeDefinitionStruct structDefinition, Object values)
       throws CoercionException {
-    if (values instanceof Map<?, ?> valueMap) {
-      HashMap<String, CbasValue> coercedValues = new HashMap<>();
+    return (CbasStruct) parser(structDefinition).parse(parameterName, values);
+  }
+
+  static CbasValueParser parser(ParameterTypeDefinitionStruct structDefinition) {
+    String structName = structDefinition.getName();
+    String typeName = "Struct (%s)".formatted(structName);
+    List<FieldParser> fieldParsers =
+        structDefinition.getFields().stream()
+            .map(
+                field ->
+                    new FieldParser(
+                        field.getFieldName(),
+                        CbasValueParser.forType(field.getFieldType()),
+                        field.getFieldType() instanceof ParameterTypeDefinitionOptional))
+            .toList();
+    return (parameterName, values) -> {
+      if (values instanceof Map<?, ?> valueMap) {
+        HashMap<String, CbasValue> coercedValues = new HashMap<>();
 
-      for (StructField field : structDefinition.getFields()) {
-        if (valueMap.containsKey(field.getFieldName())) {
-          coercedValues.put(
-              field.getFieldName(),
-              CbasValue.parseValue(
-                  field.getFieldName(), field.getFieldType(), valueMap.get(field.getFieldName())));
-        } else if (field.getFieldType() instanceof ParameterTypeDefinitionOptional) {
-          // "do nothing"
-        } else {
-          throw new ValueCoercionException(
-              parameterName,
-              values,
-              "Struct (%s)".formatted(structDefinition.getName()),
-              "Field %s not provided in input for Struct (%s)"
-                  .formatted(field.getFieldName(), structDefinition.getName()));
+        for (FieldParser field : fieldParsers) {
+          if (valueMap.containsKey(field.name())) {
+            coercedValues.put(
+                field.name(), field.parser().parse(field.name(), valueMap.get(field.name())));
+          } else if (!field.optional()) {
+            throw new ValueCoercionException(
+                parameterName,
+                values,
+                typeName,
+                "Field %s not provided in input for Struct (%s)"
+                    .formatted(field.name(), structName));
+          }
         }
+        return new CbasStruct(structName, coercedValues);
+      } else {
+        throw new TypeCoercionException(parameterName, values, typeName);
       }
-      return new CbasStruct(structDefinition.getName(), coercedValues);
-    } else {
-      throw new TypeCoercionException(
-          parameterName, values, "Struct (%s)".formatted(structDefinition.getName()));
-    }
+    };
   }
+
+  private record FieldParser(String name, CbasValueParser parser, boolean optional) {}
 }
@@ -0,0 +1,53 @@
+package bio.terra.cbas.runsets.types;
+
+import bio.terra.cbas.model.ParameterTypeDefinition;
+import bio.terra.cbas.model.ParameterTypeDefinitionArray;
+import bio.terra.cbas.model.ParameterTypeDefinitionMap;
+import bio.terra.cbas.model.ParameterTypeDefinitionOptional;
+import bio.terra.cbas.model.ParameterTypeDefinitionPrimitive;
+import bio.terra.cbas.model.ParameterTypeDefinitionStruct;
+import bio.terra.cbas.model.PrimitiveParameterValueType;
+
+/**
+ * Coerces values into a single {@link ParameterTypeDefinition}. The type definition is inspected
+ * once when the parser is created, so a parser can be applied to many values (e.g. the same input
+ * of every record in a run set) without repeating the type dispatch of {@link
+ * CbasValue#parseValue}.
+ */
+@FunctionalInterface
+public interface CbasValueParser {
+  CbasValue parse(String parameterName, Object value) throws CoercionException;
+
+  static CbasValueParser forPrimitive(PrimitiveParameterValueType primitiveParameterValueType) {
+    return switch (primitiveParameterValueType) {
+      case STRING -> CbasString::parse;
+      case INT -> CbasInt::parse;
+      case BOOLEAN -> CbasBoolean::parse;
+      case FLOAT -> CbasFloat::parse;
+      case FILE -> CbasFile::parse;
+    };
+  }
+
+  static CbasValueParser forType(ParameterTypeDefinition parameterType) {
+    if (parameterType instanceof ParameterTypeDefinitionPrimitive primitiveDefinition) {
+      return forPrimitive(primitiveDefinition.getPrimitiveType());
+    } else if (parameterType instanceof ParameterTypeDefinitionOptional optionalDefinition) {
+      CbasValueParser innerParser = forType(optionalDefinition.getOptionalType());
+      return (parameterName, value) ->
+          value == null
+              ? new CbasOptionalNone()
+              : new CbasOptionalSome(innerParser.parse(parameterName, value));
+    } else if (parameterType instanceof ParameterTypeDefinitionArray arrayDefinition) {
+      return CbasArray.parser(arrayDefinition.getArrayType(), arrayDefinition.isNonEmpty());
+    } else if (parameterType instanceof ParameterTypeDefinitionMap mapDefinition) {
+      return CbasMap.parser(mapDefinition.getKeyType(), mapDefinition.getValueType());
+    } else if (parameterType instanceof ParameterTypeDefinitionStruct structDefinition) {
+      return CbasStruct.parser(structDefinition);
+    } else {
+      String typeName = String.valueOf(parameterType);
+      return (parameterName, value) -> {
+        throw new TypeCoercionException(parameterName, value, typeName);
+      };
+    }
+  }
+}
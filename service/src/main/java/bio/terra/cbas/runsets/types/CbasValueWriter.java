@@ -0,0 +1,63 @@
+package bio.terra.cbas.runsets.types;
+
+import bio.terra.cbas.model.ParameterTypeDefinition;
+import bio.terra.cbas.model.ParameterTypeDefinitionArray;
+import bio.terra.cbas.model.ParameterTypeDefinitionMap;
+import bio.terra.cbas.model.ParameterTypeDefinitionOptional;
+import bio.terra.cbas.model.ParameterTypeDefinitionPrimitive;
+import bio.terra.cbas.model.ParameterTypeDefinitionStruct;
+import bio.terra.cbas.model.PrimitiveParameterValueType;
+import com.fasterxml.jackson.core.JsonGenerator;
+import java.io.IOException;
+
+/**
+ * Coerces values into a single {@link ParameterTypeDefinition} and writes them straight to a {@link
+ * JsonGenerator}, without building a {@link CbasValue} tree or its serializable copy. A writer
+ * accepts and rejects the same values, with the same errors, as the {@link CbasValueParser} for the
+ * same type. When coercion fails part way through a value, whatever was already written must be
+ * discarded.
+ */
+@FunctionalInterface
+public interface CbasValueWriter {
+  void write(String parameterName, Object value, JsonGenerator generator)
+      throws CoercionException, IOException;
+
+  static CbasValueWriter forPrimitive(PrimitiveParameterValueType primitiveParameterValueType) {
+    CbasValueParser parser = CbasValueParser.forPrimitive(primitiveParameterValueType);
+    return (parameterName, value, generator) ->
+        generator.writeObject(parser.parse(parameterName, value).asSerializableValue());
+  }
+
+  /**
+   * Builds the writer for a type once, so that it can be applied to the same input of every record.
+   *
+   * @param orderKeys write the fields of structs and the entries of maps ordered by key (as {@link
+   *     bio.terra.cbas.runsets.inputs.InputGenerator#inputsToJson} does), instead of in definition
+   *     and input order. Only useful to make the JSON predictable in tests.
+   */
+  static CbasValueWriter forType(ParameterTypeDefinition parameterType, boolean orderKeys) {
+    if (parameterType instanceof ParameterTypeDefinitionPrimitive primitiveDefinition) {
+      return forPrimitive(primitiveDefinition.getPrimitiveType());
+    } else if (parameterType instanceof ParameterTypeDefinitionOptional optionalDefinition) {
+      CbasValueWriter innerWriter = forType(optionalDefinition.getOptionalType(), orderKeys);
+      return (parameterName, value, generator) -> {
+        if (value == null) {
+          generator.writeNull();
+        } else {
+          innerWriter.write(parameterName, value, generator);
+        }
+      };
+    } else if (parameterType instanceof ParameterTypeDefinitionArray arrayDefinition) {
+      return CbasValueWriters.arrayWriter(arrayDefinition, orderKeys);
+    } else if (parameterType instanceof ParameterTypeDefinitionMap mapDefinition) {
+      return CbasValueWriters.mapWriter(mapDefinition, orderKeys);
+    } else if (parameterType instanceof ParameterTypeDefinitionStruct structDefinition) {
+      return CbasValueWriters.structWriter(structDefinition, orderKeys);
+    } else {
+      String typeName = String.valueOf(parameterType);
+      return (parameterName, value, generator) -> {
+        throw new TypeCoercionException(parameterName, value, typeName);
+      };
+    }
+  }
+}
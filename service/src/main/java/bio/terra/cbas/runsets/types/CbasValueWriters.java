@@ -0,0 +1,133 @@
+package bio.terra.cbas.runsets.types;
+
+import bio.terra.cbas.model.ParameterTypeDefinitionArray;
+import bio.terra.cbas.model.ParameterTypeDefinitionMap;
+import bio.terra.cbas.model.ParameterTypeDefinitionOptional;
+import bio.terra.cbas.model.ParameterTypeDefinitionStruct;
+import java.util.AbstractMap;
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.stream.Collectors;
+
+/** The {@link CbasValueWriter}s of the compound types. */
+final class CbasValueWriters {
+
+  static CbasValueWriter arrayWriter(
+      ParameterTypeDefinitionArray arrayDefinition, boolean orderKeys) {
+    CbasValueWriter innerWriter =
+        CbasValueWriter.forType(arrayDefinition.getArrayType(), orderKeys);
+    boolean nonEmpty = arrayDefinition.isNonEmpty();
+    String typeName = "Array[%s]".formatted(arrayDefinition.getArrayType());
+    return (parameterName, values, generator) -> {
+      if (values instanceof List<?> valueList) {
+        if (nonEmpty && valueList.isEmpty()) {
+          throw new ValueCoercionException(
+              parameterName, values, typeName, "Non-empty array must have at least one value.");
+        }
+        generator.writeStartArray();
+        for (Object value : valueList) {
+          innerWriter.write(parameterName, value, generator);
+        }
+        generator.writeEndArray();
+      } else {
+        // A single value is accepted as a one element array
+        generator.writeStartArray();
+        try {
+          innerWriter.write(parameterName, values, generator);
+        } catch (CoercionException e) {
+          throw new TypeCoercionException(parameterName, values, typeName);
+        }
+        generator.writeEndArray();
+      }
+    };
+  }
+
+  @SuppressWarnings("unchecked")
+  static CbasValueWriter mapWriter(
+      ParameterTypeDefinitionMap mapDefinition, boolean orderKeys) {
+    CbasValueParser keyParser = CbasValueParser.forPrimitive(mapDefinition.getKeyType());
+    CbasValueWriter valueWriter = CbasValueWriter.forType(mapDefinition.getValueType(), orderKeys);
+    String typeName =
+        "Map[%s, %s]".formatted(mapDefinition.getKeyType(), mapDefinition.getValueType());
+    return (parameterName, values, generator) -> {
+      if (!(values instanceof Map<?, ?> valueMap)) {
+        throw new TypeCoercionException(parameterName, values, typeName);
+      }
+      generator.writeStartObject();
+      Set<Object> coercedKeys = new HashSet<>();
+      if (orderKeys) {
+        List<Map.Entry<Object, Object>> entries = new ArrayList<>(valueMap.size());
+        for (Map.Entry<?, ?> entry : valueMap.entrySet()) {
+          Object key = keyParser.parse(parameterName, entry.getKey()).asSerializableValue();
+          CbasMap.checkKeyNotRepeated(coercedKeys, key, parameterName, values, typeName);
+          entries.add(new AbstractMap.SimpleImmutableEntry<>(key, entry.getValue()));
+        }
+        entries.sort((a, b) -> ((Comparable<Object>) a.getKey()).compareTo(b.getKey()));
+        for (Map.Entry<Object, Object> entry : entries) {
+          generator.writeFieldName(String.valueOf(entry.getKey()));
+          valueWriter.write(parameterName, entry.getValue(), generator);
+        }
+      } else {
+        for (Map.Entry<?, ?> entry : valueMap.entrySet()) {
+          Object key = keyParser.parse(parameterName, entry.getKey()).asSerializableValue();
+          CbasMap.checkKeyNotRepeated(coercedKeys, key, parameterName, values, typeName);
+          generator.writeFieldName(String.valueOf(key));
+          valueWriter.write(parameterName, entry.getValue(), generator);
+        }
+      }
+      generator.writeEndObject();
+    };
+  }
+
+  static CbasValueWriter structWriter(
+      ParameterTypeDefinitionStruct structDefinition, boolean orderKeys) {
+    String structName = structDefinition.getName();
+    String typeName = "Struct (%s)".formatted(structName);
+    List<FieldWriter> fieldWriters =
+        structDefinition.getFields().stream()
+            .map(
+                field ->
+                    new FieldWriter(
+                        field.getFieldName(),
+                        CbasValueWriter.forType(field.getFieldType(), orderKeys),
+                        field.getFieldType() instanceof ParameterTypeDefinitionOptional))
+            .collect(Collectors.toCollection(ArrayList::new));
+    if (orderKeys) {
+      fieldWriters.sort(Comparator.comparing(FieldWriter::name));
+    }
+    return (parameterName, values, generator) -> {
+      if (!(values instanceof Map<?, ?> valueMap)) {
+        throw new TypeCoercionException(parameterName, values, typeName);
+      }
+      generator.writeStartObject();
+      for (FieldWriter field : fieldWriters) {
+        if (valueMap.containsKey(field.name())) {
+          Object fieldValue = valueMap.get(field.name());
+          // An optional field without a value is left out rather than written as null
+          if (fieldValue != null || !field.optional()) {
+            generator.writeFieldName(field.name());
+            field.writer().write(field.name(), fieldValue, generator);
+          }
+        } else if (!field.optional()) {
+          throw new ValueCoercionException(
+              parameterName,
+              values,
+              typeName,
+              "Field %s not provided in input for Struct (%s)"
+                  .formatted(field.name(), structName));
+        }
+      }
+      generator.writeEndObject();
+    };
+  }
+
+  private record FieldWriter(String name, CbasValueWriter writer, boolean optional) {}
+
+  private CbasValueWriters() {
+    // Do not use. No construction necessary for static utility class.
+  }
+}
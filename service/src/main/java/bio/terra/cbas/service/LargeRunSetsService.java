@@ -0,0 +1,179 @@
+package bio.terra.cbas.service;
+
+import bio.terra.cbas.common.MicrometerMetrics;
+import bio.terra.cbas.common.exceptions.DatabaseConnectivityException.RunCreationException;
+import bio.terra.cbas.config.CbasApiConfiguration;
+import bio.terra.cbas.dao.RunSetDao;
+import bio.terra.cbas.dao.SubmissionJobDao;
+import bio.terra.cbas.dependencies.wds.WdsService;
+import bio.terra.cbas.dependencies.wds.WdsService.WdsRecordIdsPage;
+import bio.terra.cbas.dependencies.wds.WdsServiceException;
+import bio.terra.cbas.model.RunSetRequest;
+import bio.terra.cbas.models.CbasRunSetStatus;
+import bio.terra.cbas.models.RunSet;
+import bio.terra.cbas.models.SubmissionJob;
+import bio.terra.cbas.models.SubmitRunSetResponse;
+import bio.terra.cbas.runsets.submission.SubmissionLeaseLostException;
+import bio.terra.common.iam.BearerToken;
+import com.fasterxml.jackson.core.JsonProcessingException;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import java.util.List;
+import java.util.UUID;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.stereotype.Component;
+
+/**
+ * Submits large run sets from the submission queue. Rather than registering all of its runs when
+ * the run set is posted, a large run set registers and submits them {@code largeRunSetsChunkSize}
+ * records at a time, so that only one chunk of runs, records and workflow inputs is held in memory
+ * however many records the run set has.
+ */
+@Component
+public class LargeRunSetsService {
+
+  private final RunSetsService runSetsService;
+  private final RunSetDao runSetDao;
+  private final SubmissionJobDao submissionJobDao;
+  private final WdsService wdsService;
+  private final CbasApiConfiguration cbasApiConfiguration;
+  private final ObjectMapper objectMapper;
+  private final MicrometerMetrics micrometerMetrics;
+
+  private final Logger logger = LoggerFactory.getLogger(LargeRunSetsService.class);
+
+  public LargeRunSetsService(
+      RunSetsService runSetsService,
+      RunSetDao runSetDao,
+      SubmissionJobDao submissionJobDao,
+      WdsService wdsService,
+      CbasApiConfiguration cbasApiConfiguration,
+      ObjectMapper objectMapper,
+      MicrometerMetrics micrometerMetrics) {
+    this.runSetsService = runSetsService;
+    this.runSetDao = runSetDao;
+    this.submissionJobDao = submissionJobDao;
+    this.wdsService = wdsService;
+    this.cbasApiConfiguration = cbasApiConfiguration;
+    this.objectMapper = objectMapper;
+    this.micrometerMetrics = micrometerMetrics;
+  }
+
+  /**
+   * Registers and submits the runs of a large run set claimed from the submission queue, chunk by
+   * chunk. The runs of a chunk are registered in the same transaction that advances the job past
+   * its records, and stay QUEUED until they are submitted. A job therefore first submits the runs
+   * already registered, those of the first chunk registered along with the run set or what is left
+   * of the last chunk registered by a previous worker that went away, then carries on with the
+   * records that follow.
+   *
+   * <p>A run set that selects all the records of a type first lists the IDs of those records and
+   * records them in its job, so that it is submitted for the records of the type at that time and
+   * a job claimed again carries on with the same records.
+   *
+   * <p>The run set reports its progress as it goes: its run count grows with every chunk, and it
+   * stays RUNNING until every record has a run. No more runs are registered once the run set is
+   * being canceled.
+   *
+   * @param onBatchRecorded called after the runs of each batch have been recorded in the database
+   */
+  public void submitLargeRunSet(
+      SubmissionJob job, String leaseOwner, int leaseSeconds, Runnable onBatchRecorded)
+      throws JsonProcessingException,
+          RunCreationException,
+          WdsServiceException,
+          TooManyRecordsException {
+    RunSet runSet = runSetDao.getRunSet(job.runSetId());
+    RunSetRequest request = objectMapper.readValue(job.runSetRequest(), RunSetRequest.class);
+    BearerToken userToken = new BearerToken(job.userToken());
+    if (Boolean.TRUE.equals(request.getWdsRecords().isAllRecords())) {
+      listAllRecordIds(runSet.runSetId(), request, leaseOwner, leaseSeconds, userToken);
+    }
+    int chunkSize = cbasApiConfiguration.getLargeRunSetsChunkSize();
+
+    int recordsRegistered = job.recordsRegistered();
+    long workflowsSubmitted = 0;
+    while (true) {
+      if (isBeingCanceled(runSet.runSetId())) {
+        logger.info("Stopped submitting Run Set {} as it is being canceled", runSet.runSetId());
+        runSetsService.cancelQueuedRuns(runSet.runSetId());
+        return;
+      }
+
+      workflowsSubmitted +=
+          runSetsService
+              .submitQueuedRuns(runSet, request, job.rawMethodUrl(), userToken, onBatchRecorded)
+              .map(SubmitRunSetResponse::initializedCount)
+              .orElse(0);
+
+      List<String> chunk = recordChunk(request, recordsRegistered, chunkSize);
+      if (chunk.isEmpty()) {
+        break;
+      }
+      runSetsService.registerRunChunk(runSet, chunk, leaseOwner, leaseSeconds);
+      recordsRegistered += chunk.size();
+      runSetsService.updateRunSetStateFromRuns(runSet.runSetId(), true);
+      micrometerMetrics.increaseEventCounter("large_run_set_chunks_registered", 1);
+    }
+
+    runSetsService.updateRunSetStateFromRuns(runSet.runSetId(), false);
+    runSetsService.logLargeRunSetEvent(
+        request, runSet.methodVersion(), recordsRegistered, userToken);
+    micrometerMetrics.recordRunsSubmittedPerRunSet(runSet.runSetId(), workflowsSubmitted);
+  }
+
+  /**
+   * Replaces the selection of all the records of a type by the request with the IDs of those
+   * records, and records the request in the job of the run set. The records are paged through by
+   * offset in WDS's order, so this is done once, rather than chunk by chunk while the run set is
+   * submitted, when records added to or deleted from the type would shift the pages.
+   */
+  private void listAllRecordIds(
+      UUID runSetId,
+      RunSetRequest request,
+      String leaseOwner,
+      int leaseSeconds,
+      BearerToken userToken)
+      throws WdsServiceException, TooManyRecordsException, JsonProcessingException {
+    String recordType = request.getWdsRecords().getRecordType();
+    int maxRecords = cbasApiConfiguration.getLargeRunSetsMaximumRecordIds();
+    WdsRecordIdsPage page = wdsService.getRecordIds(recordType, 0, maxRecords, userToken);
+    if (page.totalRecords() > maxRecords) {
+      throw new TooManyRecordsException(recordType, page.totalRecords(), maxRecords);
+    }
+
+    request.getWdsRecords().allRecords(false).recordIds(page.recordIds());
+    if (submissionJobDao.recordRunSetRequest(
+            runSetId, leaseOwner, objectMapper.writeValueAsString(request), leaseSeconds)
+        == 0) {
+      throw new SubmissionLeaseLostException(runSetId);
+    }
+  }
+
+  /**
+   * The record IDs listed by the request that follow the first {@code recordsRegistered} of them,
+   * up to {@code chunkSize} of them. Empty for a request that selects all the records of a type.
+   */
+  static List<String> recordChunk(RunSetRequest request, int recordsRegistered, int chunkSize) {
+    if (Boolean.TRUE.equals(request.getWdsRecords().isAllRecords())) {
+      return List.of();
+    }
+    List<String> recordIds = request.getWdsRecords().getRecordIds();
+    return recordIds.subList(
+        Math.min(recordsRegistered, recordIds.size()),
+        Math.min(recordsRegistered + chunkSize, recordIds.size()));
+  }
+
+  private boolean isBeingCanceled(UUID runSetId) {
+    CbasRunSetStatus status = runSetDao.getRunSet(runSetId).status();
+    return status == CbasRunSetStatus.CANCELING || status == CbasRunSetStatus.CANCELED;
+  }
+
+  public static class TooManyRecordsException extends Exception {
+    public TooManyRecordsException(String recordType, int totalRecords, int maxRecords) {
+      super(
+          "Record type %s has %d records, more than the maximum of %d for a run set."
+              .formatted(recordType, totalRecords, maxRecords));
+    }
+  }
+}
@@ -2,6 +2,7 @@ package bio.terra.cbas.service;
 
 import static bio.terra.cbas.model.RunSetState.ERROR;
 import static bio.terra.cbas.model.RunSetState.RUNNING;
+import static bio.terra.cbas.models.CbasRunStatus.CANCELED;
 import static bio.terra.cbas.models.CbasRunStatus.INITIALIZING;
 import static bio.terra.cbas.models.CbasRunStatus.QUEUED;
 import static bio.terra.cbas.models.CbasRunStatus.SYSTEM_ERROR;
@@ -11,51 +12,76 @@ import bio.terra.cbas.common.MicrometerMetrics;
 import bio.terra.cbas.common.exceptions.DatabaseConnectivityException.RunCreationException;
 import bio.terra.cbas.common.exceptions.DatabaseConnectivityException.RunSetCreationException;
 import bio.terra.cbas.common.exceptions.InputProcessingException;
+import bio.terra.cbas.config.AsyncCromwellSubmissionConfiguration;
 import bio.terra.cbas.config.CbasApiConfiguration;
 import bio.terra.cbas.config.CbasContextConfiguration;
+import bio.terra.cbas.config.SubmissionPipelineConfiguration;
 import bio.terra.cbas.dao.MethodDao;
 import bio.terra.cbas.dao.MethodVersionDao;
 import bio.terra.cbas.dao.RunDao;
+import bio.terra.cbas.dao.RunDao.StatusCountRecord;
 import bio.terra.cbas.dao.RunSetDao;
+import bio.terra.cbas.dao.SubmissionJobDao;
 import bio.terra.cbas.dependencies.bard.BardService;
 import bio.terra.cbas.dependencies.wds.WdsService;
 import bio.terra.cbas.dependencies.wds.WdsService.WdsRecordResponseDetails;
 import bio.terra.cbas.dependencies.wes.CromwellService;
 import bio.terra.cbas.model.RunSetRequest;
 import bio.terra.cbas.model.RunSetState;
-import bio.terra.cbas.model.RunState;
 import bio.terra.cbas.model.RunStateResponse;
 import bio.terra.cbas.models.CbasRunSetStatus;
 import bio.terra.cbas.models.CbasRunStatus;
+import bio.terra.cbas.models.FetchedRecordBatch;
 import bio.terra.cbas.models.GithubMethodDetails;
 import bio.terra.cbas.models.MethodVersion;
+import bio.terra.cbas.models.RegisterRunSetResponse;
 import bio.terra.cbas.models.Run;
 import bio.terra.cbas.models.RunAndRecordDetails;
 import bio.terra.cbas.models.RunSet;
 import bio.terra.cbas.models.RunSetSubmissionParameters;
+import bio.terra.cbas.models.SubmissionJob;
 import bio.terra.cbas.models.SubmitRunSetResponse;
+import bio.terra.cbas.models.SubmittedWorkflowBatch;
+import bio.terra.cbas.models.WorkflowBatch;
 import bio.terra.cbas.runsets.inputs.InputGenerator;
+import bio.terra.cbas.runsets.inputs.InputPlan;
+import bio.terra.cbas.runsets.inputs.InputsJsonWriter;
+import bio.terra.cbas.runsets.submission.SubmissionLeaseLostException;
+import bio.terra.cbas.runsets.submission.SubmissionPipeline;
 import bio.terra.cbas.runsets.types.CoercionException;
 import bio.terra.cbas.util.UuidSource;
+import bio.terra.common.db.WriteTransaction;
 import bio.terra.common.iam.BearerToken;
 import com.fasterxml.jackson.core.JsonProcessingException;
 import com.fasterxml.jackson.databind.ObjectMapper;
 import com.google.common.collect.Lists;
+import com.google.common.util.concurrent.Uninterruptibles;
 import cromwell.client.model.WorkflowIdAndStatus;
 import io.micrometer.core.instrument.Timer;
+import java.io.IOException;
 import java.time.OffsetDateTime;
 import java.util.ArrayList;
+import java.util.Collection;
 import java.util.HashMap;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
 import java.util.List;
 import java.util.Map;
 import java.util.Objects;
 import java.util.Optional;
 import java.util.UUID;
+import java.util.concurrent.CompletionService;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorCompletionService;
+import java.util.concurrent.Future;
 import java.util.stream.Collectors;
+import java.util.stream.IntStream;
 import org.broadinstitute.dsde.workbench.client.sam.model.UserStatusInfo;
 import org.databiosphere.workspacedata.model.RecordResponse;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Qualifier;
+import org.springframework.core.task.TaskExecutor;
 import org.springframework.scheduling.annotation.Async;
 import org.springframework.stereotype.Component;
 
@@ -74,6 +100,11 @@ public class RunSetsService {
   private final CbasContextConfiguration cbasContextConfiguration;
   private final MicrometerMetrics micrometerMetrics;
   private final BardService bardService;
+  private final SubmissionPipelineConfiguration submissionPipelineConfiguration;
+  private final TaskExecutor submissionPipelineExecutor;
+  private final AsyncCromwellSubmissionConfiguration asyncCromwellSubmissionConfiguration;
+  private final TaskExecutor cromwellSubmissionExecutor;
+  private final SubmissionJobDao submissionJobDao;
 
   private final Logger logger = LoggerFactory.getLogger(RunSetsService.class);
 
@@ -89,7 +120,12 @@ public class RunSetsService {
       ObjectMapper objectMapper,
       CbasContextConfiguration cbasContextConfiguration,
       MicrometerMetrics micrometerMetrics,
-      BardService bardService) {
+      BardService bardService,
+      SubmissionPipelineConfiguration submissionPipelineConfiguration,
+      @Qualifier("submissionPipelineExecutor") TaskExecutor submissionPipelineExecutor,
+      AsyncCromwellSubmissionConfiguration asyncCromwellSubmissionConfiguration,
+      @Qualifier("cromwellSubmissionExecutor") TaskExecutor cromwellSubmissionExecutor,
+      SubmissionJobDao submissionJobDao) {
     this.runDao = runDao;
     this.runSetDao = runSetDao;
     this.methodDao = methodDao;
@@ -102,6 +138,11 @@ public class RunSetsService {
     this.cbasContextConfiguration = cbasContextConfiguration;
     this.micrometerMetrics = micrometerMetrics;
     this.bardService = bardService;
+    this.submissionPipelineConfiguration = submissionPipelineConfiguration;
+    this.submissionPipelineExecutor = submissionPipelineExecutor;
+    this.asyncCromwellSubmissionConfiguration = asyncCromwellSubmissionConfiguration;
+    this.cromwellSubmissionExecutor = cromwellSubmissionExecutor;
+    this.submissionJobDao = submissionJobDao;
   }
 
   public RunSet registerRunSet(
@@ -141,38 +182,168 @@ public class RunSetsService {
     return newRunSet;
   }
 
+  /**
+   * Registers the run set, its runs and the method "last run" pointers in a single transaction, so
+   * that a POST /run_sets request costs a handful of database round trips regardless of how many
+   * records it contains. If any of them fails to be registered, none of them is.
+   */
+  @WriteTransaction
+  public RegisterRunSetResponse registerRunSetAndRuns(
+      RunSetRequest runSetRequest,
+      UserStatusInfo user,
+      MethodVersion methodVersion,
+      Map<String, UUID> recordIdToRunIdMapping)
+      throws JsonProcessingException, RunSetCreationException, RunCreationException {
+    RunSet runSet = registerRunSet(runSetRequest, user, methodVersion);
+    List<RunStateResponse> runStateResponseList =
+        registerRunsInRunSet(runSet, recordIdToRunIdMapping);
+    return new RegisterRunSetResponse(runSet, runStateResponseList);
+  }
+
+  /**
+   * Registers the run set and its runs like {@link #registerRunSetAndRuns}, and queues the
+   * submission of their workflows in the submission_job table within the same transaction, so that
+   * a run set is never registered without something on the way to submit it.
+   */
+  @WriteTransaction
+  public RegisterRunSetResponse registerRunSetAndQueueSubmission(
+      RunSetRequest runSetRequest,
+      UserStatusInfo user,
+      MethodVersion methodVersion,
+      Map<String, UUID> recordIdToRunIdMapping,
+      String rawMethodUrl,
+      BearerToken userToken)
+      throws JsonProcessingException, RunSetCreationException, RunCreationException {
+    RegisterRunSetResponse registered =
+        registerRunSetAndRuns(runSetRequest, user, methodVersion, recordIdToRunIdMapping);
+    queueSubmission(registered.runSet(), runSetRequest, rawMethodUrl, userToken, false, 0);
+    return registered;
+  }
+
+  /**
+   * Registers a large run set and queues its submission like {@link
+   * #registerRunSetAndQueueSubmission}, but only with the runs of its first chunk of records. Its
+   * other runs are registered chunk by chunk by the submission queue worker that claims it (see
+   * {@link LargeRunSetsService}). A run set that selects all the records of a type is registered
+   * without any runs, as its records are only read by that worker.
+   */
+  @WriteTransaction
+  public RegisterRunSetResponse registerLargeRunSetAndQueueSubmission(
+      RunSetRequest runSetRequest,
+      UserStatusInfo user,
+      MethodVersion methodVersion,
+      String rawMethodUrl,
+      BearerToken userToken)
+      throws JsonProcessingException, RunSetCreationException, RunCreationException {
+    RunSet runSet = registerRunSet(runSetRequest, user, methodVersion);
+    Map<String, UUID> recordIdToRunIdMapping = new LinkedHashMap<>();
+    LargeRunSetsService.recordChunk(
+            runSetRequest, 0, cbasApiConfiguration.getLargeRunSetsChunkSize())
+        .forEach(recordId -> recordIdToRunIdMapping.put(recordId, uuidSource.generateUUID()));
+    List<RunStateResponse> runStateResponseList =
+        registerRunsInRunSet(runSet, recordIdToRunIdMapping);
+    queueSubmission(
+        runSet, runSetRequest, rawMethodUrl, userToken, true, recordIdToRunIdMapping.size());
+    return new RegisterRunSetResponse(runSet, runStateResponseList);
+  }
+
+  private void queueSubmission(
+      RunSet runSet,
+      RunSetRequest runSetRequest,
+      String rawMethodUrl,
+      BearerToken userToken,
+      boolean largeRunSet,
+      int recordsRegistered)
+      throws JsonProcessingException, RunSetCreationException {
+    int queued =
+        submissionJobDao.createJob(
+            runSet.runSetId(),
+            objectMapper.writeValueAsString(runSetRequest),
+            rawMethodUrl,
+            userToken.getToken(),
+            largeRunSet,
+            recordsRegistered);
+    if (queued != 1) {
+      throw new RunSetCreationException(runSetRequest.getRunSetName());
+    }
+  }
+
+  /**
+   * Registers QUEUED runs for the next chunk of records of a large run set, and advances the
+   * progress of its submission job past them in the same transaction.
+   *
+   * @throws SubmissionLeaseLostException if the worker no longer holds the lease on the job, in
+   *     which case no runs are registered
+   */
+  @WriteTransaction
+  public void registerRunChunk(
+      RunSet runSet, List<String> recordIds, String leaseOwner, int leaseSeconds)
+      throws RunCreationException {
+    OffsetDateTime currentTimestamp = DateUtils.currentTimeInUTC();
+    List<Run> runs =
+        recordIds.stream()
+            .map(
+                recordId ->
+                    new Run(
+                        uuidSource.generateUUID(),
+                        null,
+                        runSet,
+                        recordId,
+                        currentTimestamp,
+                        QUEUED,
+                        currentTimestamp,
+                        currentTimestamp,
+                        null))
+            .toList();
+
+    // The lease is checked and the progress advanced before any run is inserted. The job's row
+    // stays locked until the transaction ends, so no other worker can take the job over meanwhile.
+    if (submissionJobDao.recordRunsRegistered(
+            runSet.runSetId(), leaseOwner, recordIds.size(), leaseSeconds)
+        == 0) {
+      throw new SubmissionLeaseLostException(runSet.runSetId());
+    }
+    int created = runDao.createRuns(runs);
+    if (created != runs.size()) {
+      throw new RunCreationException(runSet.runSetId(), runs.size(), created);
+    }
+  }
+
   public List<RunStateResponse> registerRunsInRunSet(
       RunSet runSet, Map<String, UUID> recordIdToRunIdMapping) throws RunCreationException {
-    List<RunStateResponse> runStateResponseList = new ArrayList<>();
-
-    for (Map.Entry<String, UUID> entry : recordIdToRunIdMapping.entrySet()) {
-      int created =
-          runDao.createRun(
-              new Run(
-                  entry.getValue(),
-                  null,
-                  runSet,
-                  entry.getKey(),
-                  DateUtils.currentTimeInUTC(),
-                  QUEUED,
-                  DateUtils.currentTimeInUTC(),
-                  DateUtils.currentTimeInUTC(),
-                  null));
-      if (created != 1) {
-        String errorMsg =
-            "Failed to record runs to database for RunSet %s".formatted(runSet.runSetId());
-        recordRunsAndRunSetInErrorState(runSet.runSetId(), errorMsg);
-
-        throw new RunCreationException(runSet.runSetId(), entry.getValue(), entry.getKey());
-      }
+    OffsetDateTime currentTimestamp = DateUtils.currentTimeInUTC();
+    List<Run> runs =
+        recordIdToRunIdMapping.entrySet().stream()
+            .map(
+                entry ->
+                    new Run(
+                        entry.getValue(),
+                        null,
+                        runSet,
+                        entry.getKey(),
+                        currentTimestamp,
+                        QUEUED,
+                        currentTimestamp,
+                        currentTimestamp,
+                        null))
+            .toList();
 
-      runStateResponseList.add(
-          new RunStateResponse()
-              .runId(entry.getValue())
-              .state(CbasRunStatus.toCbasApiState(QUEUED))
-              .errors(""));
+    // Called within the transaction that registers the run set, which a failure rolls back
+    int created = runDao.createRuns(runs);
+    if (created != runs.size()) {
+      throw new RunCreationException(runSet.runSetId(), runs.size(), created);
     }
 
+    List<RunStateResponse> runStateResponseList =
+        runs.stream()
+            .map(
+                run ->
+                    new RunStateResponse()
+                        .runId(run.runId())
+                        .state(CbasRunStatus.toCbasApiState(QUEUED))
+                        .errors(""))
+            .toList();
+
     // update number of Runs in Run Set
     runSetDao.updateStateAndRunSetDetails(
         runSet.runSetId(), runSet.status(), runStateResponseList.size(), 0, OffsetDateTime.now());
@@ -191,9 +362,254 @@ public class RunSetsService {
       String rawMethodUrl,
       MethodVersion methodVersion,
       Timer.Sample requestTimerSample) {
+    Optional<SubmitRunSetResponse> maybeRunSetStateResponse =
+        submitWorkflows(
+            request,
+            request.getWdsRecords().getRecordIds(),
+            runSet,
+            rawMethodUrl,
+            recordIdToRunIdMapping,
+            userToken,
+            requestTimerSample,
+            () -> {});
+
+    if (maybeRunSetStateResponse.isEmpty()) {
+      return;
+    }
+
+    SubmitRunSetResponse runSetStateResponse = maybeRunSetStateResponse.get();
+
+    // If all Runs are in an Error state then mark the Run Set as Failed
+    RunSetState runSetState;
+    if (runSetStateResponse.errorCount() == request.getWdsRecords().getRecordIds().size()) {
+      runSetState = ERROR;
+    } else runSetState = RUNNING;
+
+    runSetDao.updateStateAndRunSetDetails(
+        runSet.runSetId(),
+        CbasRunSetStatus.fromValue(runSetState),
+        runSetStateResponse.runCount(),
+        runSetStateResponse.errorCount(),
+        OffsetDateTime.now());
+    logRunSetEvent(request, methodVersion, userToken);
+
+    capturePostSubmitMetrics(runSet.runSetId(), runSetStateResponse);
+  }
+
+  /**
+   * Submits the workflows of a run set claimed from the submission queue. Only the runs that are
+   * still QUEUED are submitted, so a job claimed again after its previous worker went away carries
+   * on from the last batch that worker recorded. The status and counts of the run set are then
+   * derived from all of its runs, including the ones recorded by earlier attempts.
+   *
+   * @param onBatchRecorded called after the runs of each batch have been recorded in the database
+   */
+  public void submitQueuedRunSet(SubmissionJob job, Runnable onBatchRecorded)
+      throws JsonProcessingException {
+    RunSet runSet = runSetDao.getRunSet(job.runSetId());
+    RunSetRequest request = objectMapper.readValue(job.runSetRequest(), RunSetRequest.class);
+    BearerToken userToken = new BearerToken(job.userToken());
+    adoptSubmittedRuns(runSet.runSetId());
+
+    Map<String, UUID> recordIdToRunIdMapping = Map.of();
+    List<String> remainingRecordIds = request.getWdsRecords().getRecordIds();
+    if (!submissionPipelineConfiguration.isEnabled()) {
+      // The submission pipeline looks up the QUEUED runs batch by batch instead
+      recordIdToRunIdMapping = runDao.getQueuedRunIds(runSet.runSetId());
+      remainingRecordIds =
+          remainingRecordIds.stream().filter(recordIdToRunIdMapping::containsKey).toList();
+    }
+
+    Optional<SubmitRunSetResponse> maybeRunSetStateResponse = Optional.empty();
+    if (!remainingRecordIds.isEmpty()) {
+      maybeRunSetStateResponse =
+          submitWorkflows(
+              request,
+              remainingRecordIds,
+              runSet,
+              job.rawMethodUrl(),
+              recordIdToRunIdMapping,
+              userToken,
+              micrometerMetrics.startTimer(),
+              onBatchRecorded);
+    }
+
+    updateRunSetStateFromRuns(runSet.runSetId(), false);
+
+    // No runs are recorded if an earlier attempt had already recorded all of them
+    if (maybeRunSetStateResponse.isPresent() && maybeRunSetStateResponse.get().runCount() > 0) {
+      SubmitRunSetResponse runSetStateResponse = maybeRunSetStateResponse.get();
+      logRunSetEvent(request, runSet.methodVersion(), userToken);
+      capturePostSubmitMetrics(runSet.runSetId(), runSetStateResponse);
+    }
+  }
+
+  /**
+   * Submits the workflows of the runs of a large run set that are still QUEUED, which are at most
+   * the runs of the chunk registered last.
+   *
+   * @return empty if there were no runs to submit, or if the whole chunk failed while fetching
+   *     records
+   */
+  public Optional<SubmitRunSetResponse> submitQueuedRuns(
+      RunSet runSet,
+      RunSetRequest request,
+      String rawMethodUrl,
+      BearerToken userToken,
+      Runnable onBatchRecorded) {
+    adoptSubmittedRuns(runSet.runSetId());
+    Map<String, UUID> recordIdToRunIdMapping = runDao.getQueuedRunIds(runSet.runSetId());
+    if (recordIdToRunIdMapping.isEmpty()) {
+      return Optional.empty();
+    }
+    return submitWorkflows(
+        request,
+        List.copyOf(recordIdToRunIdMapping.keySet()),
+        runSet,
+        rawMethodUrl,
+        recordIdToRunIdMapping,
+        userToken,
+        micrometerMetrics.startTimer(),
+        onBatchRecorded);
+  }
+
+  /**
+   * Records as submitted the QUEUED runs whose workflows reached Cromwell under the engine ID
+   * requested for them, but which were never recorded as submitted because the worker submitting
+   * them went away. Their workflows are then not submitted a second time.
+   */
+  private void adoptSubmittedRuns(UUID runSetId) {
+    Map<UUID, UUID> runIdToRequestedEngineId = runDao.getRequestedEngineIds(runSetId);
+    Map<UUID, UUID> runIdToEngineId = new LinkedHashMap<>();
+    for (Map.Entry<UUID, UUID> entry : runIdToRequestedEngineId.entrySet()) {
+      try {
+        if (cromwellService.workflowExists(entry.getValue().toString())) {
+          runIdToEngineId.put(entry.getKey(), entry.getValue());
+        }
+      } catch (cromwell.client.ApiException e) {
+        // Submitting the run again could start its workflow twice
+        throw new IllegalStateException(
+            "Failed to check whether the workflow of run %s was submitted already"
+                .formatted(entry.getKey()),
+            e);
+      }
+    }
+    if (!runIdToEngineId.isEmpty()) {
+      logger.info(
+          "{} runs of Run Set {} had been submitted by a previous attempt",
+          runIdToEngineId.size(),
+          runSetId);
+      recordSuccessInitializingRuns(runIdToEngineId);
+    }
+  }
+
+  /** Gives up on the runs of a queued run set that have not been submitted yet. */
+  public void failQueuedRunSet(UUID runSetId, String errorMsg) {
+    Map<UUID, String> runIdToError = new LinkedHashMap<>();
+    runDao
+        .getRuns(new RunDao.RunsFilters(runSetId, List.of(QUEUED)))
+        .forEach(run -> runIdToError.put(run.runId(), errorMsg));
+    recordFailureToStartRuns(runIdToError);
+    updateRunSetStateFromRuns(runSetId, false);
+  }
+
+  /**
+   * Cancels the runs of a large run set being canceled that have not been submitted yet, as there
+   * is no workflow to abort for them.
+   */
+  public void cancelQueuedRuns(UUID runSetId) {
+    String errorMsg = "Run Set was canceled before the run was submitted.";
+    Map<UUID, String> runIdToError = new LinkedHashMap<>();
+    runDao
+        .getRuns(new RunDao.RunsFilters(runSetId, List.of(QUEUED)))
+        .forEach(run -> runIdToError.put(run.runId(), errorMsg));
+    if (!runIdToError.isEmpty()) {
+      runDao.updateRunStatusesWithErrors(runIdToError, CANCELED, DateUtils.currentTimeInUTC());
+    }
+  }
+
+  /**
+   * Derives the status and counts of a run set being submitted from the queue from all of its runs.
+   *
+   * @param moreRunsToRegister whether a large run set still has records without runs, in which case
+   *     it stays RUNNING even if all of its runs so far failed
+   */
+  public void updateRunSetStateFromRuns(UUID runSetId, boolean moreRunsToRegister) {
+    Collection<StatusCountRecord> statusCounts = runDao.getRunSetStatusCounts(runSetId).values();
+    int runCount = statusCounts.stream().mapToInt(StatusCountRecord::count).sum();
+    int errorCount =
+        statusCounts.stream()
+            .filter(statusCount -> statusCount.status().inErrorState())
+            .mapToInt(StatusCountRecord::count)
+            .sum();
+
+    // As for run sets submitted in memory, the run set is only in error if all of its runs are
+    runSetDao.updateStateAndRunSetDetails(
+        runSetId,
+        errorCount == runCount && !moreRunsToRegister
+            ? CbasRunSetStatus.ERROR
+            : CbasRunSetStatus.RUNNING,
+        runCount,
+        errorCount,
+        OffsetDateTime.now());
+  }
+
+  /**
+   * Submits the workflows for the given records, either in phases or through the submission
+   * pipeline. Returns empty if the whole run set failed while fetching records.
+   *
+   * @param recordIdToRunIdMapping the runs to submit for the records when submitting in phases. The
+   *     submission pipeline looks up the QUEUED runs of the records batch by batch instead.
+   */
+  private Optional<SubmitRunSetResponse> submitWorkflows(
+      RunSetRequest request,
+      List<String> recordIds,
+      RunSet runSet,
+      String rawMethodUrl,
+      Map<String, UUID> recordIdToRunIdMapping,
+      BearerToken userToken,
+      Timer.Sample requestTimerSample,
+      Runnable onBatchRecorded) {
+    if (submissionPipelineConfiguration.isEnabled()) {
+      return Optional.of(
+          submitRunSetPipelined(
+              request,
+              recordIds,
+              runSet,
+              rawMethodUrl,
+              userToken,
+              requestTimerSample,
+              onBatchRecorded));
+    }
+    return submitRunSetInPhases(
+        request,
+        recordIds,
+        runSet,
+        rawMethodUrl,
+        recordIdToRunIdMapping,
+        userToken,
+        requestTimerSample,
+        onBatchRecorded);
+  }
+
+  /**
+   * Fetches all the records, then builds the inputs for all the batches, then submits the batches
+   * to Cromwell. Returns empty if any record could not be fetched, in which case the whole run set
+   * has been marked as failed.
+   */
+  private Optional<SubmitRunSetResponse> submitRunSetInPhases(
+      RunSetRequest request,
+      List<String> recordIds,
+      RunSet runSet,
+      String rawMethodUrl,
+      Map<String, UUID> recordIdToRunIdMapping,
+      BearerToken userToken,
+      Timer.Sample requestTimerSample,
+      Runnable onBatchRecorded) {
     // Fetch WDS Records and keep track of errors while retrieving records
     WdsRecordResponseDetails wdsRecordResponses =
-        fetchWdsRecords(wdsService, request, runSet, userToken);
+        fetchWdsRecords(
+            wdsService, request.getWdsRecords().getRecordType(), recordIds, runSet, userToken);
 
     if (!wdsRecordResponses.recordIdsWithError().isEmpty()) {
       String errorMsg =
@@ -203,7 +619,7 @@ public class RunSetsService {
 
       recordRunsAndRunSetInErrorState(runSet.runSetId(), errorMsg);
 
-      return;
+      return Optional.empty();
     }
 
     // For each Record ID, build workflow inputs and submit the workflow to Cromwell
@@ -216,47 +632,118 @@ public class RunSetsService {
             recordIdToRunIdMapping,
             cromwellService);
 
-    SubmitRunSetResponse runSetStateResponse =
-        submitRunSet(params, userToken, cromwellService, requestTimerSample);
+    return Optional.of(submitRunSet(params, userToken, requestTimerSample, onBatchRecorded));
+  }
 
-    List<RunStateResponse> runStateResponseList = runSetStateResponse.runStateResponseList();
+  /**
+   * Streams the run set through a {@link SubmissionPipeline}: each batch of {@code
+   * maxWorkflowsInBatch} records is fetched from WDS, turned into workflow inputs, submitted to
+   * Cromwell and recorded in the database as soon as the previous stage hands it over, so the first
+   * workflows start before the last records have been fetched. Unlike {@link
+   * #submitRunSetInPhases}, a record that cannot be fetched only fails its own run.
+   *
+   * <p>Only one batch per stage is held in memory at a time: the QUEUED runs of each batch are
+   * looked up along with its records, records without such a run are skipped, and the outcome of
+   * the runs is tallied rather than kept.
+   */
+  private SubmitRunSetResponse submitRunSetPipelined(
+      RunSetRequest request,
+      List<String> recordIds,
+      RunSet runSet,
+      String rawMethodUrl,
+      BearerToken userToken,
+      Timer.Sample requestTimerSample,
+      Runnable onBatchRecorded) {
+    String recordType = request.getWdsRecords().getRecordType();
+    List<List<String>> recordIdBatches =
+        Lists.partition(recordIds, cbasApiConfiguration.getMaxWorkflowsInBatch());
+    String workflowOptionsJson =
+        cromwellService.buildWorkflowOptionsJson(
+            Objects.requireNonNullElse(runSet.callCachingEnabled(), true));
 
-    // Figure out how many runs are in Failed state. If all Runs are in an Error state then mark
-    // the Run Set as Failed
-    RunSetState runSetState;
-    List<RunStateResponse> runsInErrorState =
-        runStateResponseList.stream()
-            .filter(run -> CbasRunStatus.fromValue(run.getState()).inErrorState())
-            .toList();
+    InputPlan inputPlan = InputPlan.compile(request.getWorkflowInputDefinitions());
 
-    if (runsInErrorState.size() == request.getWdsRecords().getRecordIds().size()) {
-      runSetState = ERROR;
-    } else runSetState = RUNNING;
+    SubmissionTally tally = new SubmissionTally();
 
-    runSetDao.updateStateAndRunSetDetails(
-        runSet.runSetId(),
-        CbasRunSetStatus.fromValue(runSetState),
-        runStateResponseList.size(),
-        runsInErrorState.size(),
-        OffsetDateTime.now());
-    logRunSetEvent(
-        request,
-        methodVersion,
-        runSetStateResponse.successfullyInitializedWorkflowIds(),
-        userToken);
+    Timer.Sample cromwellSubmitRunsSample = micrometerMetrics.startTimer();
+
+    SubmissionPipeline.from(
+            IntStream.range(0, recordIdBatches.size()).boxed().toList(),
+            submissionPipelineExecutor,
+            micrometerMetrics,
+            submissionPipelineConfiguration.getQueueCapacity())
+        .thenStage(
+            "wds_fetch",
+            batchIndex ->
+                fetchRecordBatch(
+                    batchIndex, recordIdBatches.get(batchIndex), recordType, runSet, userToken))
+        .thenStage(
+            "input_generation",
+            fetched ->
+                buildWorkflowBatch(
+                    inputPlan,
+                    runSet,
+                    fetched.batchIndex(),
+                    fetched.records().recordResponseList(),
+                    fetched.records().recordIdsWithError(),
+                    fetched.recordIdToRunIdMapping()))
+        .thenStage(
+            "cromwell_submission",
+            batch ->
+                submitWorkflowBatch(batch, runSet, rawMethodUrl, workflowOptionsJson, userToken))
+        .forEach(
+            "database_write",
+            submitted -> {
+              tally.add(recordWorkflowBatchErrors(submitted.batch()));
+              tally.add(recordSubmittedWorkflowBatch(submitted, runSet.runSetId()));
+              int batchIndex = submitted.batch().batchIndex();
+              recordSubmissionTimers(
+                  submitted,
+                  batchIndex == 0,
+                  batchIndex == recordIdBatches.size() - 1,
+                  runSet,
+                  requestTimerSample,
+                  cromwellSubmitRunsSample);
+              onBatchRecorded.run();
+            });
 
-    capturePostSubmitMetrics(runSet.runSetId(), runStateResponseList);
+    micrometerMetrics.stopTimer(
+        cromwellSubmitRunsSample,
+        "cromwell_submit_runs_timer",
+        RunSet.RUN_SET_ID_COL,
+        runSet.runSetId().toString());
+    return tally.toResponse();
+  }
+
+  private FetchedRecordBatch fetchRecordBatch(
+      int batchIndex,
+      List<String> recordIdBatch,
+      String recordType,
+      RunSet runSet,
+      BearerToken userToken) {
+    Map<String, UUID> recordIdToRunIdMapping =
+        runDao.getQueuedRunIds(runSet.runSetId(), recordIdBatch);
+    List<String> recordIds =
+        recordIdBatch.stream().filter(recordIdToRunIdMapping::containsKey).toList();
+    WdsRecordResponseDetails records =
+        recordIds.isEmpty()
+            ? new WdsRecordResponseDetails(List.of(), Map.of())
+            : wdsService.getRecords(recordType, recordIds, userToken);
+    return new FetchedRecordBatch(batchIndex, recordIdToRunIdMapping, records);
   }
 
   private WdsRecordResponseDetails fetchWdsRecords(
-      WdsService wdsService, RunSetRequest request, RunSet runSet, BearerToken userToken) {
+      WdsService wdsService,
+      String recordType,
+      List<String> recordIds,
+      RunSet runSet,
+      BearerToken userToken) {
     Timer.Sample wdsFetchRecordsSample = micrometerMetrics.startTimer();
 
-    String recordType = request.getWdsRecords().getRecordType();
-    int totalRecords = request.getWdsRecords().getRecordIds().size();
+    int totalRecords = recordIds.size();
 
     WdsRecordResponseDetails responseDetails =
-        wdsService.getRecords(recordType, request.getWdsRecords().getRecordIds(), userToken);
+        wdsService.getRecords(recordType, recordIds, userToken);
     Map<String, String> recordIdsWithError = responseDetails.recordIdsWithError();
 
     micrometerMetrics.stopTimer(
@@ -274,30 +761,42 @@ public class RunSetsService {
     return responseDetails;
   }
 
-  private RunStateResponse recordFailureToStartRun(UUID runId, String error) {
-    runDao.updateRunStatusWithError(runId, SYSTEM_ERROR, DateUtils.currentTimeInUTC(), error);
-    return new RunStateResponse()
-        .runId(runId)
-        .state(CbasRunStatus.toCbasApiState(SYSTEM_ERROR))
-        .errors(error);
+  private List<RunStateResponse> recordFailureToStartRuns(Map<UUID, String> runIdToError) {
+    if (!runIdToError.isEmpty()) {
+      runDao.updateRunStatusesWithErrors(runIdToError, SYSTEM_ERROR, DateUtils.currentTimeInUTC());
+    }
+    return runIdToError.entrySet().stream()
+        .map(
+            entry ->
+                new RunStateResponse()
+                    .runId(entry.getKey())
+                    .state(CbasRunStatus.toCbasApiState(SYSTEM_ERROR))
+                    .errors(entry.getValue()))
+        .toList();
   }
 
-  private RunStateResponse recordSuccessInitializingRun(UUID runId, UUID engineId) {
-    runDao.updateEngineIdAndRunStatus(runId, engineId, INITIALIZING, DateUtils.currentTimeInUTC());
-    return new RunStateResponse()
-        .runId(runId)
-        .state(CbasRunStatus.toCbasApiState(INITIALIZING))
-        .errors(null);
+  private List<RunStateResponse> recordSuccessInitializingRuns(Map<UUID, UUID> runIdToEngineId) {
+    if (!runIdToEngineId.isEmpty()) {
+      runDao.updateEngineIdsAndRunStatus(
+          runIdToEngineId, INITIALIZING, DateUtils.currentTimeInUTC());
+    }
+    return runIdToEngineId.keySet().stream()
+        .map(
+            runId ->
+                new RunStateResponse()
+                    .runId(runId)
+                    .state(CbasRunStatus.toCbasApiState(INITIALIZING))
+                    .errors(null))
+        .toList();
   }
 
   private void recordRunsAndRunSetInErrorState(UUID runSetId, String errorMsg) {
     // before marking RunSet in Error state, ensure that any Runs that were created in
     // database also get marked as in Error state
     List<Run> runsInRunSet = runDao.getRuns(new RunDao.RunsFilters(runSetId, List.of(QUEUED)));
-    runsInRunSet.forEach(
-        run ->
-            runDao.updateRunStatusWithError(
-                run.runId(), CbasRunStatus.SYSTEM_ERROR, DateUtils.currentTimeInUTC(), errorMsg));
+    Map<UUID, String> runIdToError = new LinkedHashMap<>();
+    runsInRunSet.forEach(run -> runIdToError.put(run.runId(), errorMsg));
+    recordFailureToStartRuns(runIdToError);
 
     // mark RunSet in Error state
     int runsCount = runsInRunSet.size();
@@ -324,161 +823,341 @@ public class RunSetsService {
     List<List<RecordResponse>> batches =
         Lists.partition(recordResponses, cbasApiConfiguration.getMaxWorkflowsInBatch());
 
-    List<Map<UUID, String>> batchedWorkflowInputMaps = new ArrayList<>();
-    List<Map<UUID, RunAndRecordDetails>> batchedRunAndRecordMaps = new ArrayList<>();
-
-    for (List<RecordResponse> batch : batches) {
-      // create a mapping from Engine ID -> class RunAndRecordDetails[Run ID, Record Response]
-      Map<UUID, RunAndRecordDetails> engineIdToRunAndRecordMapping =
-          batch.stream()
-              .map(
-                  singleRecord ->
-                      Map.entry(
-                          uuidSource.generateUUID(),
-                          new RunAndRecordDetails(
-                              recordIdToRunIdMapping.get(singleRecord.getId()), singleRecord)))
-              .collect(Collectors.toMap(Map.Entry::getKey, Map.Entry::getValue));
-
-      batchedRunAndRecordMaps.add(engineIdToRunAndRecordMapping);
-
-      // Build the inputs set from workflow parameter definitions and the fetched record
-      Map<UUID, String> engineIdToWorkflowInput =
-          engineIdToRunAndRecordMapping.entrySet().stream()
-              .map(
-                  entry -> {
-                    try {
-                      return Map.entry(
-                          entry.getKey(),
-                          InputGenerator.inputsToJson(
-                              InputGenerator.buildInputs(
-                                  request.getWorkflowInputDefinitions(),
-                                  entry.getValue().recordResponse())));
-                    } catch (CoercionException e) {
-                      String errorMsg =
-                          String.format(
-                              "Input generation failed for record %s. Coercion error: %s",
-                              entry.getValue().recordResponse().getId(), e.getMessage());
-                      logger.warn(errorMsg, e);
-                      runStateResponseErrors.add(
-                          recordFailureToStartRun(entry.getValue().runId(), errorMsg));
-                    } catch (InputProcessingException e) {
-                      logger.warn(e.getMessage());
-                      runStateResponseErrors.add(
-                          recordFailureToStartRun(entry.getValue().runId(), e.getMessage()));
-                    } catch (JsonProcessingException e) {
-                      // Should be super rare that jackson cannot convert an object to Json...
-                      String errorMsg =
-                          String.format(
-                              "Failed to convert inputs object to JSON for batch in RunSet %s.",
-                              runSet.runSetId());
-                      logger.warn(errorMsg, e);
-                      runStateResponseErrors.add(
-                          recordFailureToStartRun(entry.getValue().runId(), errorMsg));
-                    }
-                    return null;
-                  })
-              .filter(inputs -> !Objects.isNull(inputs))
-              .collect(Collectors.toMap(Map.Entry::getKey, Map.Entry::getValue));
-
-      batchedWorkflowInputMaps.add(engineIdToWorkflowInput);
+    List<WorkflowBatch> workflowBatches = new ArrayList<>();
+    InputPlan inputPlan = InputPlan.compile(request.getWorkflowInputDefinitions());
+
+    for (int batchIdx = 0; batchIdx < batches.size(); batchIdx += 1) {
+      WorkflowBatch workflowBatch =
+          buildWorkflowBatch(
+              inputPlan,
+              runSet,
+              batchIdx,
+              batches.get(batchIdx),
+              Map.of(),
+              recordIdToRunIdMapping);
+      runStateResponseErrors.addAll(recordWorkflowBatchErrors(workflowBatch));
+      workflowBatches.add(workflowBatch);
     }
 
     return new RunSetSubmissionParameters(
-        runSet,
-        methodUrl,
-        workflowOptionsJson,
-        batchedWorkflowInputMaps,
-        batchedRunAndRecordMaps,
-        batches,
-        runStateResponseErrors);
+        runSet, methodUrl, workflowOptionsJson, workflowBatches, runStateResponseErrors);
+  }
+
+  private WorkflowBatch buildWorkflowBatch(
+      InputPlan inputPlan,
+      RunSet runSet,
+      int batchIndex,
+      List<RecordResponse> batch,
+      Map<String, String> recordIdsWithError,
+      Map<String, UUID> recordIdToRunIdMapping) {
+    Map<UUID, String> runIdToError = new HashMap<>();
+    recordIdsWithError.forEach(
+        (recordId, error) -> {
+          String errorMsg =
+              "Error while fetching WDS Record for Record ID %s: %s".formatted(recordId, error);
+          logger.warn(errorMsg);
+          runIdToError.put(recordIdToRunIdMapping.get(recordId), errorMsg);
+        });
+
+    // create a mapping from Engine ID -> class RunAndRecordDetails[Run ID, Record Response]
+    Map<UUID, RunAndRecordDetails> engineIdToRunAndRecordMapping =
+        batch.stream()
+            .map(
+                singleRecord ->
+                    Map.entry(
+                        uuidSource.generateUUID(),
+                        new RunAndRecordDetails(
+                            recordIdToRunIdMapping.get(singleRecord.getId()), singleRecord)))
+            .collect(Collectors.toMap(Map.Entry::getKey, Map.Entry::getValue));
+
+    // Build the inputs set from workflow parameter definitions and the fetched record
+    Map<UUID, String> engineIdToWorkflowInput = new HashMap<>();
+    InputsJsonWriter inputsJsonWriter =
+        cbasApiConfiguration.isStreamInputsJson() ? new InputsJsonWriter(inputPlan) : null;
+    for (Map.Entry<UUID, RunAndRecordDetails> entry : engineIdToRunAndRecordMapping.entrySet()) {
+      RunAndRecordDetails runAndRecord = entry.getValue();
+      try {
+        RecordResponse recordResponse = runAndRecord.recordResponse();
+        engineIdToWorkflowInput.put(
+            entry.getKey(),
+            inputsJsonWriter != null
+                ? inputsJsonWriter.inputsToJson(recordResponse)
+                : InputGenerator.inputsToJson(inputPlan.buildInputs(recordResponse)));
+      } catch (CoercionException e) {
+        String errorMsg =
+            String.format(
+                "Input generation failed for record %s. Coercion error: %s",
+                runAndRecord.recordResponse().getId(), e.getMessage());
+        logger.warn(errorMsg, e);
+        runIdToError.put(runAndRecord.runId(), errorMsg);
+      } catch (InputProcessingException e) {
+        logger.warn(e.getMessage());
+        runIdToError.put(runAndRecord.runId(), e.getMessage());
+      } catch (IOException e) {
+        // Should be super rare that jackson cannot convert an object to Json...
+        String errorMsg =
+            String.format(
+                "Failed to convert inputs object to JSON for batch in RunSet %s.",
+                runSet.runSetId());
+        logger.warn(errorMsg, e);
+        runIdToError.put(runAndRecord.runId(), errorMsg);
+      }
+    }
+
+    return new WorkflowBatch(
+        batchIndex, engineIdToWorkflowInput, engineIdToRunAndRecordMapping, runIdToError);
+  }
+
+  private List<RunStateResponse> recordWorkflowBatchErrors(WorkflowBatch batch) {
+    return recordFailureToStartRuns(batch.runIdToError());
+  }
+
+  private SubmittedWorkflowBatch submitWorkflowBatch(
+      WorkflowBatch batch,
+      RunSet runSet,
+      String rawMethodUrl,
+      String workflowOptionsJson,
+      BearerToken userToken) {
+    if (batch.engineIdToWorkflowInput().isEmpty()) {
+      return new SubmittedWorkflowBatch(batch, List.of(), null);
+    }
+
+    // Recorded before submitting, so that a worker taking over the run set after this instance went
+    // away can tell which of these workflows reached Cromwell (see adoptSubmittedRuns)
+    Map<UUID, UUID> runIdToRequestedEngineId = new HashMap<>();
+    batch
+        .engineIdToWorkflowInput()
+        .keySet()
+        .forEach(
+            engineId ->
+                runIdToRequestedEngineId.put(
+                    batch.engineIdToRunAndRecordMapping().get(engineId).runId(), engineId));
+    runDao.recordRequestedEngineIds(runIdToRequestedEngineId);
+
+    try {
+      List<WorkflowIdAndStatus> submitWorkflowBatchResponse =
+          cromwellService.submitWorkflowBatch(
+              rawMethodUrl, batch.engineIdToWorkflowInput(), workflowOptionsJson, userToken);
+      return new SubmittedWorkflowBatch(batch, submitWorkflowBatchResponse, null);
+    } catch (cromwell.client.ApiException e) {
+      String errorMsg =
+          String.format(
+              "Cromwell submission failed for batch in RunSet %s. ApiException: ",
+              runSet.runSetId());
+      logger.warn(errorMsg, e);
+      return new SubmittedWorkflowBatch(batch, List.of(), errorMsg + e.getMessage());
+    }
+  }
+
+  private List<RunStateResponse> recordSubmittedWorkflowBatch(
+      SubmittedWorkflowBatch submitted, UUID runSetId) {
+    Map<UUID, RunAndRecordDetails> engineIdToRunAndRecordMapping =
+        submitted.batch().engineIdToRunAndRecordMapping();
+
+    if (submitted.submissionError() != null) {
+      Map<UUID, String> runIdToError = new LinkedHashMap<>();
+      submitted
+          .batch()
+          .engineIdToWorkflowInput()
+          .keySet()
+          .forEach(
+              engineId ->
+                  runIdToError.put(
+                      engineIdToRunAndRecordMapping.get(engineId).runId(),
+                      submitted.submissionError()));
+      return recordFailureToStartRuns(runIdToError);
+    }
+
+    Map<UUID, UUID> runIdToEngineId = new LinkedHashMap<>();
+    for (WorkflowIdAndStatus idAndStatus : submitted.submittedWorkflows()) {
+      UUID engineId = UUID.fromString(idAndStatus.getId());
+      runIdToEngineId.put(engineIdToRunAndRecordMapping.get(engineId).runId(), engineId);
+    }
+    if (!runIdToEngineId.isEmpty()) {
+      logger.info("Submitted workflows {} of Run Set {}", runIdToEngineId.values(), runSetId);
+    }
+    return recordSuccessInitializingRuns(runIdToEngineId);
   }
 
+  private void recordSubmissionTimers(
+      SubmittedWorkflowBatch submitted,
+      boolean isFirstBatch,
+      boolean isLastBatch,
+      RunSet runSet,
+      Timer.Sample cromwellRequestTimerSample,
+      Timer.Sample cromwellSubmitRunsSample) {
+    String maxBatchesInFlight =
+        String.valueOf(asyncCromwellSubmissionConfiguration.getMaxBatchesInFlight());
+    if (isFirstBatch) {
+      // record the time between the start of the submission and the completion of the *first*
+      // batch, successful or not, so that the effect of maxBatchesInFlight can be compared.
+      micrometerMetrics.stopTimer(
+          cromwellSubmitRunsSample,
+          "cromwell_submit_first_batch_timer",
+          RunSet.RUN_SET_ID_COL,
+          runSet.runSetId().toString(),
+          "max_batches_in_flight",
+          maxBatchesInFlight);
+    }
+    if (isLastBatch) {
+      micrometerMetrics.stopTimer(
+          cromwellSubmitRunsSample,
+          "cromwell_submit_last_batch_timer",
+          RunSet.RUN_SET_ID_COL,
+          runSet.runSetId().toString(),
+          "max_batches_in_flight",
+          maxBatchesInFlight);
+    }
+
+    if (submitted.submissionError() != null || submitted.submittedWorkflows().isEmpty()) {
+      return;
+    }
+
+    if (isFirstBatch) {
+      // record the time between the initial POST run set request
+      // and the successful submission of the *first* batch of workflows in the run set.
+      micrometerMetrics.stopTimer(
+          cromwellRequestTimerSample,
+          "cromwell_request_to_initial_submission_timer",
+          RunSet.RUN_SET_ID_COL,
+          runSet.runSetId().toString());
+    }
+    if (isLastBatch) {
+      // record the time between the initial POST run set request
+      // and the successful submission of the *last* batch of workflows in the run set.
+      micrometerMetrics.stopTimer(
+          cromwellRequestTimerSample,
+          "cromwell_request_to_final_submission_timer",
+          RunSet.RUN_SET_ID_COL,
+          runSet.runSetId().toString());
+    }
+  }
+
+  /**
+   * Submits the batches to Cromwell on the cromwell submission executor, keeping up to {@code
+   * maxBatchesInFlight} batches in flight at once. Results are recorded in the database on the
+   * calling thread as soon as each batch completes, so "first" and "last" batch refer to
+   * completion order.
+   *
+   * <p>Once a batch fails unexpectedly or the thread is interrupted, no more batches are started,
+   * but the batches already started are waited for and recorded before the failure is rethrown, so
+   * that workflows that reached Cromwell are not left with QUEUED runs.
+   */
   private SubmitRunSetResponse submitRunSet(
       RunSetSubmissionParameters params,
       BearerToken userToken,
-      CromwellService cromwellService,
-      Timer.Sample cromwellRequestTimerSample) {
+      Timer.Sample cromwellRequestTimerSample,
+      Runnable onBatchRecorded) {
     RunSet runSet = params.runSet();
-    String rawMethodUrl = params.rawMethodUrl();
-    String workflowOptionsJson = params.workflowOptionsJson();
-    List<Map<UUID, String>> batchedWorkflowInputMaps = params.batchedWorkflowInputMaps();
-    List<Map<UUID, RunAndRecordDetails>> batchedRunAndRecordMaps = params.batchedRunAndRecordMaps();
-    List<List<RecordResponse>> batches = params.batches();
-    ArrayList<RunStateResponse> runStateResponseList = new ArrayList<>(params.runStateErrors());
-    ArrayList<String> successfullyInitializedWorkflowIds = new ArrayList<>();
+    List<WorkflowBatch> batches = params.batches();
+    SubmissionTally tally = new SubmissionTally();
+    tally.add(params.runStateErrors());
+    int maxBatchesInFlight = asyncCromwellSubmissionConfiguration.getMaxBatchesInFlight();
 
     Timer.Sample cromwellSubmitRunsSample = micrometerMetrics.startTimer();
 
-    for (int batchIdx = 0; batchIdx < batches.size(); batchIdx += 1) {
-      Map<UUID, String> engineIdToWorkflowInput = batchedWorkflowInputMaps.get(batchIdx);
-      Map<UUID, RunAndRecordDetails> engineIdToRunAndRecordMapping =
-          batchedRunAndRecordMaps.get(batchIdx);
-      if (engineIdToWorkflowInput.isEmpty()) {
-        return new SubmitRunSetResponse(runStateResponseList, List.of());
+    CompletionService<SubmittedWorkflowBatch> submissions =
+        new ExecutorCompletionService<>(cromwellSubmissionExecutor);
+    Iterator<WorkflowBatch> pendingBatches = batches.iterator();
+    int batchesInFlight = 0;
+    int batchesCompleted = 0;
+    RuntimeException failure = null;
+
+    while (batchesInFlight > 0 || (failure == null && pendingBatches.hasNext())) {
+      while (failure == null && batchesInFlight < maxBatchesInFlight && pendingBatches.hasNext()) {
+        WorkflowBatch batch = pendingBatches.next();
+        submissions.submit(
+            () ->
+                submitWorkflowBatch(
+                    batch, runSet, params.rawMethodUrl(), params.workflowOptionsJson(), userToken));
+        batchesInFlight += 1;
       }
 
-      try {
-        // Submit the workflows and store the Runs to database
-        List<WorkflowIdAndStatus> submitWorkflowBatchResponse =
-            cromwellService.submitWorkflowBatch(
-                rawMethodUrl, engineIdToWorkflowInput, workflowOptionsJson, userToken);
-
-        if (batchIdx == 0) {
-          // record the time between the initial POST run set request
-          // and the successful submission of the *first* batch of workflows in the run set.
-          micrometerMetrics.stopTimer(
-              cromwellRequestTimerSample,
-              "cromwell_request_to_initial_submission_timer",
-              RunSet.RUN_SET_ID_COL,
-              runSet.runSetId().toString());
-        }
-        if (batchIdx == batches.size() - 1) {
-          // record the time between the initial POST run set request
-          // and the successful submission of the *last* batch of workflows in the run set.
-          micrometerMetrics.stopTimer(
-              cromwellRequestTimerSample,
-              "cromwell_request_to_final_submission_timer",
-              RunSet.RUN_SET_ID_COL,
-              runSet.runSetId().toString());
+      Future<SubmittedWorkflowBatch> completed;
+      if (failure == null) {
+        try {
+          completed = submissions.take();
+        } catch (InterruptedException e) {
+          Thread.currentThread().interrupt();
+          failure = new IllegalStateException("Interrupted while submitting workflow batches", e);
+          continue;
         }
+      } else {
+        completed = takeUninterruptibly(submissions);
+      }
+      batchesInFlight -= 1;
 
-        runStateResponseList.addAll(
-            submitWorkflowBatchResponse.stream()
-                .map(
-                    idAndStatus -> {
-                      UUID engineId = UUID.fromString(idAndStatus.getId());
-                      successfullyInitializedWorkflowIds.add(engineId.toString());
-                      return recordSuccessInitializingRun(
-                          engineIdToRunAndRecordMapping.get(engineId).runId(), engineId);
-                    })
-                .toList());
-      } catch (cromwell.client.ApiException e) {
-        String errorMsg =
-            String.format(
-                "Cromwell submission failed for batch in RunSet %s. ApiException: ",
-                runSet.runSetId());
-        logger.warn(errorMsg, e);
-        runStateResponseList.addAll(
-            engineIdToWorkflowInput.keySet().stream()
-                .map(
-                    engineId ->
-                        recordFailureToStartRun(
-                            engineIdToRunAndRecordMapping.get(engineId).runId(),
-                            errorMsg + e.getMessage()))
-                .toList());
+      SubmittedWorkflowBatch submitted;
+      try {
+        submitted = getSubmittedWorkflowBatch(completed);
+      } catch (RuntimeException e) {
+        if (failure == null) {
+          failure = e;
+        } else {
+          failure.addSuppressed(e);
+        }
+        continue;
       }
+
+      // Store the Runs of the completed batch to database
+      batchesCompleted += 1;
+      recordSubmissionTimers(
+          submitted,
+          batchesCompleted == 1,
+          batchesCompleted == batches.size(),
+          runSet,
+          cromwellRequestTimerSample,
+          cromwellSubmitRunsSample);
+      tally.add(recordSubmittedWorkflowBatch(submitted, runSet.runSetId()));
+      onBatchRecorded.run();
     }
 
+    if (failure != null) {
+      throw failure;
+    }
     micrometerMetrics.stopTimer(
         cromwellSubmitRunsSample,
         "cromwell_submit_runs_timer",
         RunSet.RUN_SET_ID_COL,
         runSet.runSetId().toString());
-    return new SubmitRunSetResponse(runStateResponseList, successfullyInitializedWorkflowIds);
+    return tally.toResponse();
+  }
+
+  // Waits for the next batch even if interrupted, keeping the thread's interrupt status
+  private static Future<SubmittedWorkflowBatch> takeUninterruptibly(
+      CompletionService<SubmittedWorkflowBatch> submissions) {
+    boolean interrupted = false;
+    try {
+      while (true) {
+        try {
+          return submissions.take();
+        } catch (InterruptedException e) {
+          interrupted = true;
+        }
+      }
+    } finally {
+      if (interrupted) {
+        Thread.currentThread().interrupt();
+      }
+    }
+  }
+
+  private static SubmittedWorkflowBatch getSubmittedWorkflowBatch(
+      Future<SubmittedWorkflowBatch> completed) {
+    try {
+      return Uninterruptibles.getUninterruptibly(completed);
+    } catch (ExecutionException e) {
+      // submitWorkflowBatch handles Cromwell API errors itself, anything else is unexpected and is
+      // left to the async exception handler like it would be if the batch was submitted inline.
+      if (e.getCause() instanceof RuntimeException runtimeException) {
+        throw runtimeException;
+      }
+      throw new IllegalStateException(e.getCause());
+    }
   }
 
   public HashMap<String, String> getRunSetEventProperties(
-      RunSetRequest request, MethodVersion methodVersion, List<String> workflowIds) {
+      RunSetRequest request, MethodVersion methodVersion) {
     HashMap<String, String> properties = new HashMap<>();
     properties.put("runSetName", request.getRunSetName());
     properties.put("methodName", methodVersion.method().name());
@@ -486,7 +1165,6 @@ public class RunSetsService {
     properties.put("methodVersionName", methodVersion.name());
     properties.put("methodVersionUrl", methodVersion.url());
     properties.put("recordCount", String.valueOf(request.getWdsRecords().getRecordIds().size()));
-    properties.put("workflowIds", workflowIds.toString());
 
     Optional<GithubMethodDetails> maybeGitHubMethodDetails =
         methodVersion.method().githubMethodDetails();
@@ -500,22 +1178,49 @@ public class RunSetsService {
   }
 
   public void logRunSetEvent(
-      RunSetRequest request,
-      MethodVersion methodVersion,
-      List<String> workflowIds,
-      BearerToken userToken) {
+      RunSetRequest request, MethodVersion methodVersion, BearerToken userToken) {
     String eventName = "workflow-submission";
-    HashMap<String, String> properties =
-        getRunSetEventProperties(request, methodVersion, workflowIds);
+    HashMap<String, String> properties = getRunSetEventProperties(request, methodVersion);
     bardService.logEvent(eventName, properties, userToken);
   }
 
-  private void capturePostSubmitMetrics(
-      UUID runSetId, List<RunStateResponse> runStateResponseList) {
-    long successfulRunsCount =
-        runStateResponseList.stream()
-            .filter(run -> run.getState() == RunState.INITIALIZING)
-            .count();
-    micrometerMetrics.recordRunsSubmittedPerRunSet(runSetId, successfulRunsCount);
+  /**
+   * Logs the submission of a large run set once all of its chunks have been submitted, with the
+   * number of records of all of its chunks.
+   */
+  public void logLargeRunSetEvent(
+      RunSetRequest request, MethodVersion methodVersion, int recordCount, BearerToken userToken) {
+    HashMap<String, String> properties = getRunSetEventProperties(request, methodVersion);
+    properties.put("recordCount", String.valueOf(recordCount));
+    bardService.logEvent("workflow-submission", properties, userToken);
+  }
+
+  private void capturePostSubmitMetrics(UUID runSetId, SubmitRunSetResponse runSetStateResponse) {
+    // Every workflow submitted successfully leaves its run INITIALIZING
+    micrometerMetrics.recordRunsSubmittedPerRunSet(
+        runSetId, runSetStateResponse.initializedCount());
+  }
+
+  /** Counts the runs recorded while submitting a run set, without keeping the state of each. */
+  private static class SubmissionTally {
+    private int runCount = 0;
+    private int errorCount = 0;
+    private int initializedCount = 0;
+
+    void add(List<RunStateResponse> runStates) {
+      for (RunStateResponse runState : runStates) {
+        runCount += 1;
+        CbasRunStatus status = CbasRunStatus.fromValue(runState.getState());
+        if (status.inErrorState()) {
+          errorCount += 1;
+        } else if (status == INITIALIZING) {
+          initializedCount += 1;
+        }
+      }
+    }
+
+    SubmitRunSetResponse toResponse() {
+      return new SubmitRunSetResponse(runCount, errorCount, initializedCount);
+    }
   }
 }
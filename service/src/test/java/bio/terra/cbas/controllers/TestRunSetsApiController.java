@@ -17,6 +17,7 @@ import static org.mockito.Mockito.doReturn;
 import static org.mockito.Mockito.doThrow;
 import static org.mockito.Mockito.eq;
 import static org.mockito.Mockito.never;
+import static org.mockito.Mockito.times;
 import static org.mockito.Mockito.verify;
 import static org.mockito.Mockito.verifyNoInteractions;
 import static org.mockito.Mockito.when;
@@ -27,14 +28,19 @@ import static org.springframework.test.web.servlet.result.MockMvcResultMatchers.
 import bio.terra.cbas.common.MicrometerMetrics;
 import bio.terra.cbas.common.exceptions.DatabaseConnectivityException;
 import bio.terra.cbas.common.exceptions.ForbiddenException;
+import bio.terra.cbas.common.exceptions.RunSetAbortNotFoundException;
 import bio.terra.cbas.config.CbasApiConfiguration;
 import bio.terra.cbas.config.CbasNetworkConfiguration;
+import bio.terra.cbas.config.ConnectionPoolConfiguration;
 import bio.terra.cbas.config.CromwellServerConfiguration;
 import bio.terra.cbas.config.LeonardoServerConfiguration;
+import bio.terra.cbas.config.SubmissionQueueConfiguration;
 import bio.terra.cbas.dao.MethodDao;
 import bio.terra.cbas.dao.MethodVersionDao;
 import bio.terra.cbas.dao.RunSetDao;
+import bio.terra.cbas.dao.util.ListingVersion;
 import bio.terra.cbas.dependencies.common.DependencyUrlLoader;
+import bio.terra.cbas.dependencies.common.HttpConnectionPools;
 import bio.terra.cbas.dependencies.dockstore.DockstoreService;
 import bio.terra.cbas.dependencies.github.GitHubService;
 import bio.terra.cbas.dependencies.leonardo.AppUtils;
@@ -44,6 +50,7 @@ import bio.terra.cbas.dependencies.sam.SamService;
 import bio.terra.cbas.dependencies.wds.WdsService;
 import bio.terra.cbas.dependencies.wes.CromwellClient;
 import bio.terra.cbas.dependencies.wes.CromwellService;
+import bio.terra.cbas.model.AbortRunSetProgressResponse;
 import bio.terra.cbas.model.AbortRunSetResponse;
 import bio.terra.cbas.model.ErrorReport;
 import bio.terra.cbas.model.OutputDestination;
@@ -63,12 +70,18 @@ import bio.terra.cbas.models.CbasRunStatus;
 import bio.terra.cbas.models.GithubMethodDetails;
 import bio.terra.cbas.models.Method;
 import bio.terra.cbas.models.MethodVersion;
+import bio.terra.cbas.models.PollableRun;
+import bio.terra.cbas.models.RegisterRunSetResponse;
 import bio.terra.cbas.models.Run;
 import bio.terra.cbas.models.RunSet;
+import bio.terra.cbas.models.RunSetAbort;
+import bio.terra.cbas.models.RunSetAbortStatus;
 import bio.terra.cbas.monitoring.TimeLimitedUpdater;
 import bio.terra.cbas.runsets.monitoring.RunSetAbortManager;
 import bio.terra.cbas.runsets.monitoring.RunSetAbortManager.AbortRequestDetails;
+import bio.terra.cbas.runsets.monitoring.ScheduledPollEngine;
 import bio.terra.cbas.runsets.monitoring.SmartRunSetsPoller;
+import bio.terra.cbas.runsets.submission.SubmissionQueueWorker;
 import bio.terra.cbas.service.RunSetsService;
 import bio.terra.cbas.util.UuidSource;
 import bio.terra.common.exception.UnauthorizedException;
@@ -101,6 +114,7 @@ import org.springframework.beans.factory.annotation.Autowired;
 import org.springframework.boot.test.autoconfigure.web.servlet.WebMvcTest;
 import org.springframework.boot.test.mock.mockito.MockBean;
 import org.springframework.boot.test.mock.mockito.SpyBean;
+import org.springframework.http.HttpHeaders;
 import org.springframework.http.MediaType;
 import org.springframework.test.context.ContextConfiguration;
 import org.springframework.test.context.TestPropertySource;
@@ -334,12 +348,15 @@ class TestRunSetsApiController {
   @MockBean private MethodVersionDao methodVersionDao;
   @MockBean private RunSetDao runSetDao;
   @MockBean private SmartRunSetsPoller smartRunSetsPoller;
+  @MockBean private ScheduledPollEngine scheduledPollEngine;
   @MockBean private UuidSource uuidSource;
   @MockBean private RunSetAbortManager abortManager;
   @Mock private LeonardoService leonardoService;
   @Mock private AppUtils appUtils;
   @MockBean private RunSetsService runSetsService;
   @MockBean private MicrometerMetrics micrometerMetrics;
+  @MockBean private SubmissionQueueConfiguration submissionQueueConfiguration;
+  @MockBean private SubmissionQueueWorker submissionQueueWorker;
 
   // This mockMVC is what we use to test API requests and responses:
   @Autowired private MockMvc mockMvc;
@@ -477,9 +494,11 @@ class TestRunSetsApiController {
             recordType,
             "[ \"%s\", \"%s\", \"%s\" ]".formatted(recordId1, recordId2, recordId3));
 
-    when(runSetsService.registerRunSet(any(), any(), any())).thenReturn(mockRunSet);
-    when(runSetsService.registerRunsInRunSet(any(), any()))
-        .thenReturn(List.of(mockRunStateResponse1, mockRunStateResponse2, mockRunStateResponse3));
+    when(runSetsService.registerRunSetAndRuns(any(), any(), any(), any()))
+        .thenReturn(
+            new RegisterRunSetResponse(
+                mockRunSet,
+                List.of(mockRunStateResponse1, mockRunStateResponse2, mockRunStateResponse3)));
 
     MvcResult result =
         mockMvc
@@ -538,7 +557,7 @@ class TestRunSetsApiController {
             recordType,
             "[ \"%s\", \"%s\", \"%s\" ]".formatted(recordId1, recordId2, recordId3));
 
-    when(runSetsService.registerRunSet(any(), any(), any()))
+    when(runSetsService.registerRunSetAndRuns(any(), any(), any(), any()))
         .thenThrow(new DatabaseConnectivityException.RunSetCreationException("mock-run-set"));
 
     MvcResult result =
@@ -574,8 +593,7 @@ class TestRunSetsApiController {
             recordType,
             "[ \"%s\", \"%s\", \"%s\" ]".formatted(recordId1, recordId2, recordId3));
 
-    when(runSetsService.registerRunSet(any(), any(), any())).thenReturn(mockRunSet);
-    when(runSetsService.registerRunsInRunSet(any(), any()))
+    when(runSetsService.registerRunSetAndRuns(any(), any(), any(), any()))
         .thenThrow(
             new DatabaseConnectivityException.RunCreationException(
                 mockRunSet.runSetId(), UUID.randomUUID(), recordId1));
@@ -619,9 +637,8 @@ class TestRunSetsApiController {
     when(uuidSource.generateUUID())
         .thenReturn(UUID.randomUUID(), UUID.fromString(cromwellWorkflowId1), UUID.randomUUID());
 
-    when(runSetsService.registerRunSet(any(), any(), any())).thenReturn(mockRunSet);
-    when(runSetsService.registerRunsInRunSet(any(), any()))
-        .thenReturn(List.of(mockRunStateResponse1));
+    when(runSetsService.registerRunSetAndRuns(any(), any(), any(), any()))
+        .thenReturn(new RegisterRunSetResponse(mockRunSet, List.of(mockRunStateResponse1)));
 
     when(bearerTokenFactory.from(any())).thenReturn(mockUserToken);
     MvcResult result =
@@ -740,9 +757,11 @@ class TestRunSetsApiController {
             recordType,
             "[ \"%s\", \"%s\", \"%s\" ]".formatted(recordId1, recordId2, recordId3));
 
-    when(runSetsService.registerRunSet(any(), any(), any())).thenReturn(mockRunSet);
-    when(runSetsService.registerRunsInRunSet(any(), any()))
-        .thenReturn(List.of(mockRunStateResponse1, mockRunStateResponse2, mockRunStateResponse3));
+    when(runSetsService.registerRunSetAndRuns(any(), any(), any(), any()))
+        .thenReturn(
+            new RegisterRunSetResponse(
+                mockRunSet,
+                List.of(mockRunStateResponse1, mockRunStateResponse2, mockRunStateResponse3)));
 
     MvcResult resultOptionalNone =
         mockMvc
@@ -776,9 +795,11 @@ class TestRunSetsApiController {
             recordType,
             "[ \"%s\", \"%s\", \"%s\" ]".formatted(recordId1, recordId2, recordId3));
 
-    when(runSetsService.registerRunSet(any(), any(), any())).thenReturn(mockRunSet);
-    when(runSetsService.registerRunsInRunSet(any(), any()))
-        .thenReturn(List.of(mockRunStateResponse1, mockRunStateResponse2, mockRunStateResponse3));
+    when(runSetsService.registerRunSetAndRuns(any(), any(), any(), any()))
+        .thenReturn(
+            new RegisterRunSetResponse(
+                mockRunSet,
+                List.of(mockRunStateResponse1, mockRunStateResponse2, mockRunStateResponse3)));
 
     MvcResult resultOptionalRecordLookup =
         mockMvc
@@ -816,9 +837,11 @@ class TestRunSetsApiController {
             recordType,
             "[ \"%s\", \"%s\", \"%s\" ]".formatted(recordId1, recordId2, recordId3));
 
-    when(runSetsService.registerRunSet(any(), any(), any())).thenReturn(mockRunSet);
-    when(runSetsService.registerRunsInRunSet(any(), any()))
-        .thenReturn(List.of(mockRunStateResponse1, mockRunStateResponse2, mockRunStateResponse3));
+    when(runSetsService.registerRunSetAndRuns(any(), any(), any(), any()))
+        .thenReturn(
+            new RegisterRunSetResponse(
+                mockRunSet,
+                List.of(mockRunStateResponse1, mockRunStateResponse2, mockRunStateResponse3)));
 
     MvcResult resultOptionalLiteral =
         mockMvc
@@ -870,7 +893,11 @@ class TestRunSetsApiController {
         new LeonardoServerConfiguration("", List.of(), List.of(), Duration.ofMinutes(10), false);
     DependencyUrlLoader dependencyUrlLoader =
         new DependencyUrlLoader(leonardoService, appUtils, leonardoServerConfiguration);
-    CromwellClient localTestClient = new CromwellClient(localTestConfig, dependencyUrlLoader);
+    HttpConnectionPools httpConnectionPools =
+        new HttpConnectionPools(
+            new ConnectionPoolConfiguration(false, 5, 30, 1), micrometerMetrics);
+    CromwellClient localTestClient =
+        new CromwellClient(localTestConfig, dependencyUrlLoader, httpConnectionPools);
     CbasNetworkConfiguration cbasNetworkConfiguration = new CbasNetworkConfiguration();
     cbasNetworkConfiguration.setExternalUri("http://localhost:8080/");
     CromwellService localtestService =
@@ -974,7 +1001,7 @@ class TestRunSetsApiController {
             workspaceId);
 
     List<RunSet> response = List.of(returnedRunSet1, returnedRunSet2);
-    when(runSetDao.getRunSets(any(), eq(false))).thenReturn(response);
+    when(runSetDao.getRunSets(any(), any(), eq(false))).thenReturn(response);
     when(smartRunSetsPoller.updateRunSets(eq(response), any()))
         .thenReturn(new TimeLimitedUpdater.UpdateResult<>(response, 2, 2, true));
 
@@ -1011,6 +1038,27 @@ class TestRunSetsApiController {
         CbasRunSetStatus.toCbasRunSetApiState(CbasRunSetStatus.RUNNING), runSetDetails2.getState());
   }
 
+  @Test
+  void getRunSetsNotModifiedWhenPolledInBackground() throws Exception {
+    ListingVersion version = new ListingVersion(2, OffsetDateTime.now(), OffsetDateTime.now());
+    when(scheduledPollEngine.isEnabled()).thenReturn(true);
+    when(scheduledPollEngine.runSetsAsPolled(any()))
+        .thenAnswer(i -> new TimeLimitedUpdater.UpdateResult<>(i.getArgument(0), 0, 0, true));
+    when(runSetDao.getRunSetsVersion(false)).thenReturn(version);
+    when(runSetDao.getRunSets(any(), any(), eq(false))).thenReturn(List.of());
+
+    MvcResult result = mockMvc.perform(get(API)).andExpect(status().isOk()).andReturn();
+    assertEquals(version.eTag(), result.getResponse().getHeader(HttpHeaders.ETAG));
+
+    mockMvc
+        .perform(get(API).header(HttpHeaders.IF_NONE_MATCH, version.eTag()))
+        .andExpect(status().isNotModified());
+
+    verify(runSetDao, times(1)).getRunSets(any(), any(), eq(false));
+    verify(scheduledPollEngine, times(2)).offerUserToken(any());
+    verifyNoInteractions(smartRunSetsPoller);
+  }
+
   @Test
   void testRunSetAbort() throws Exception {
     RunSet returnedRunSet1Running =
@@ -1116,6 +1164,54 @@ class TestRunSetsApiController {
     assertEquals("Run Set can't be aborted when it is in Queued state.", response.getErrors());
   }
 
+  @Test
+  void getAbortProgress() throws Exception {
+    UUID runSetId = UUID.randomUUID();
+    UUID failedRunId = UUID.randomUUID();
+    when(abortManager.getAbort(runSetId))
+        .thenReturn(
+            Optional.of(
+                new RunSetAbort(
+                    runSetId,
+                    RunSetAbortStatus.RUNNING,
+                    10,
+                    6,
+                    1,
+                    failedRunId.toString(),
+                    OffsetDateTime.now(),
+                    OffsetDateTime.now())));
+
+    MvcResult result =
+        mockMvc
+            .perform(get(API_ABORT).param("run_set_id", runSetId.toString()))
+            .andExpect(status().isOk())
+            .andReturn();
+
+    AbortRunSetProgressResponse parsedResponse =
+        objectMapper.readValue(
+            result.getResponse().getContentAsString(), AbortRunSetProgressResponse.class);
+
+    assertEquals(runSetId, parsedResponse.getRunSetId());
+    assertFalse(parsedResponse.isComplete());
+    assertEquals(10, parsedResponse.getRunsToAbort());
+    assertEquals(6, parsedResponse.getAbortRequestsSubmitted());
+    assertEquals(1, parsedResponse.getAbortRequestsFailed());
+    assertEquals(List.of(failedRunId), parsedResponse.getFailedRuns());
+  }
+
+  @Test
+  void getAbortProgressOfRunSetNeverAborted() throws Exception {
+    UUID runSetId = UUID.randomUUID();
+    when(abortManager.getAbort(runSetId)).thenReturn(Optional.empty());
+
+    mockMvc
+        .perform(get(API_ABORT).param("run_set_id", runSetId.toString()))
+        .andExpect(status().isNotFound())
+        .andExpect(
+            result ->
+                assertTrue(result.getResolvedException() instanceof RunSetAbortNotFoundException));
+  }
+
   @Test
   void oneFailedOneSucceededRun() throws Exception {
     RunSet returnedRunSet1Running =
@@ -1191,7 +1287,7 @@ class TestRunSetsApiController {
             new cromwell.client.ApiException(
                 "Unable to abort workflow %s.".formatted(run2.runId())))
         .when(cromwellService)
-        .cancelRun(eq(run2), any());
+        .cancelRun(eq(PollableRun.of(run2)), any());
 
     MvcResult result =
         mockMvc
@@ -1440,6 +1536,40 @@ class TestRunSetsApiControllerUnits {
     assertEquals(expected, actual);
   }
 
+  @Test
+  void testRequestValidityLargeRunSet() {
+    final CbasApiConfiguration config = new CbasApiConfiguration();
+    final RunSetRequest request = new RunSetRequest();
+    config.setRunSetsMaximumRecordIds(2);
+    config.setLargeRunSetsMaximumRecordIds(3);
+    request.setWdsRecords(new WdsRecordSet().recordIds(Arrays.asList("r1", "r2", "r3")));
+    assertTrue(RunSetsApiController.validateRequestRecordIds(request, config, true).isEmpty());
+    assertTrue(RunSetsApiController.isLargeRunSet(request, config));
+
+    request.getWdsRecords().addRecordIdsItem("r4");
+    assertEquals(
+        List.of("4 record IDs submitted exceeds the maximum value of 3."),
+        RunSetsApiController.validateRequestRecordIds(request, config, true));
+  }
+
+  @Test
+  void testRequestValidityAllRecords() {
+    final CbasApiConfiguration config = new CbasApiConfiguration();
+    final RunSetRequest request = new RunSetRequest();
+    config.setRunSetsMaximumRecordIds(2);
+    request.setWdsRecords(new WdsRecordSet().recordType("FOO").allRecords(true));
+    assertTrue(RunSetsApiController.validateRequestRecordIds(request, config, true).isEmpty());
+    assertTrue(RunSetsApiController.isLargeRunSet(request, config));
+    assertEquals(
+        List.of("Selecting all the records of a record type is not enabled."),
+        RunSetsApiController.validateRequestRecordIds(request, config, false));
+
+    request.getWdsRecords().addRecordIdsItem("r1");
+    assertEquals(
+        List.of("Record IDs can't be submitted along with all the records of their type."),
+        RunSetsApiController.validateRequestRecordIds(request, config, true));
+  }
+
   private final WorkflowOutputDefinition recordUpdatingOutputDefinition =
       new WorkflowOutputDefinition()
           .destination(new OutputDestination().type(OutputDestination.TypeEnum.RECORD_UPDATE));
@@ -3,21 +3,31 @@ package bio.terra.cbas.controllers;
 import static bio.terra.cbas.models.CbasRunStatus.COMPLETE;
 import static bio.terra.cbas.models.CbasRunStatus.RUNNING;
 import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertNull;
 import static org.junit.jupiter.api.Assertions.assertTrue;
 import static org.mockito.ArgumentMatchers.any;
 import static org.mockito.ArgumentMatchers.isNotNull;
+import static org.mockito.ArgumentMatchers.isNull;
 import static org.mockito.Mockito.eq;
+import static org.mockito.Mockito.never;
+import static org.mockito.Mockito.times;
 import static org.mockito.Mockito.verify;
+import static org.mockito.Mockito.verifyNoInteractions;
+import static org.mockito.Mockito.verifyNoMoreInteractions;
 import static org.mockito.Mockito.when;
 import static org.springframework.test.web.servlet.request.MockMvcRequestBuilders.get;
 import static org.springframework.test.web.servlet.request.MockMvcRequestBuilders.post;
+import static org.springframework.test.web.servlet.result.MockMvcResultMatchers.header;
 import static org.springframework.test.web.servlet.result.MockMvcResultMatchers.status;
 
 import bio.terra.cbas.common.MicrometerMetrics;
 import bio.terra.cbas.common.exceptions.ForbiddenException;
+import bio.terra.cbas.common.exceptions.InvalidPageCursorException;
 import bio.terra.cbas.common.exceptions.MissingRunOutputsException;
 import bio.terra.cbas.common.exceptions.RunNotFoundException;
 import bio.terra.cbas.dao.RunDao;
+import bio.terra.cbas.dao.util.ListingVersion;
+import bio.terra.cbas.dao.util.PageCursor;
 import bio.terra.cbas.dependencies.sam.SamService;
 import bio.terra.cbas.model.ErrorReport;
 import bio.terra.cbas.model.RunLog;
@@ -29,10 +39,13 @@ import bio.terra.cbas.models.CbasRunSetStatus;
 import bio.terra.cbas.models.CbasRunStatus;
 import bio.terra.cbas.models.Method;
 import bio.terra.cbas.models.MethodVersion;
+import bio.terra.cbas.models.PollableRun;
 import bio.terra.cbas.models.Run;
 import bio.terra.cbas.models.RunSet;
 import bio.terra.cbas.monitoring.TimeLimitedUpdater.UpdateResult;
+import bio.terra.cbas.runsets.monitoring.ScheduledPollEngine;
 import bio.terra.cbas.runsets.monitoring.SmartRunsPoller;
+import bio.terra.cbas.runsets.results.RunCallbackInbox;
 import bio.terra.cbas.runsets.results.RunCompletionHandler;
 import bio.terra.cbas.runsets.results.RunCompletionResult;
 import bio.terra.common.exception.UnauthorizedException;
@@ -53,6 +66,7 @@ import org.mockito.ArgumentMatchers;
 import org.springframework.beans.factory.annotation.Autowired;
 import org.springframework.boot.test.autoconfigure.web.servlet.WebMvcTest;
 import org.springframework.boot.test.mock.mockito.MockBean;
+import org.springframework.http.HttpHeaders;
 import org.springframework.http.MediaType;
 import org.springframework.test.context.ContextConfiguration;
 import org.springframework.test.web.servlet.MockMvc;
@@ -71,7 +85,9 @@ class TestRunsApiController {
   // The smart poller does most of the clever update logic, so we can test that separately. This
   // test just needs to make sure we call it properly and respect its updates
   @MockBean private SmartRunsPoller smartRunsPoller;
+  @MockBean private ScheduledPollEngine scheduledPollEngine;
   @MockBean private RunCompletionHandler runsResultsManager;
+  @MockBean private RunCallbackInbox runCallbackInbox;
 
   // This mockMVC is what we use to test API requests and responses:
   @Autowired private MockMvc mockMvc;
@@ -94,6 +110,9 @@ class TestRunsApiController {
   private static final String errorMessages = null;
   private static final UUID workspaceId = UUID.randomUUID();
 
+  private static final ListingVersion runsVersion =
+      new ListingVersion(1, completeStatusUpdateTime, completeStatusUpdateTime);
+
   private static final UUID runSetId = UUID.randomUUID();
   private static final RunSet returnedRunSet =
       new RunSet(
@@ -158,18 +177,21 @@ class TestRunsApiController {
           completeStatusUpdateTime,
           errorMessages);
 
+  // The run as read to poll or complete it
+  private static final PollableRun returnedPollableRun = PollableRun.of(returnedRun);
+
   @Test
   void smartPollAndUpdateStatus() throws Exception {
     when(samService.hasReadPermission(any())).thenReturn(true);
 
     when(runDao.getRuns(any())).thenReturn(List.of(returnedRun));
 
-    when(smartRunsPoller.updateRuns(eq(List.of(returnedRun)), any()))
-        .thenReturn(new UpdateResult<>(List.of(updatedRun), 1, 1, true));
+    when(smartRunsPoller.updateRuns(eq(List.of(returnedPollableRun)), any()))
+        .thenReturn(new UpdateResult<>(List.of(PollableRun.of(updatedRun)), 1, 1, true));
 
     MvcResult result = mockMvc.perform(get(API)).andExpect(status().isOk()).andReturn();
 
-    verify(smartRunsPoller).updateRuns(eq(List.of(returnedRun)), any());
+    verify(smartRunsPoller).updateRuns(eq(List.of(returnedPollableRun)), any());
 
     var parsedResponse =
         objectMapper.readValue(result.getResponse().getContentAsString(), RunLogResponse.class);
@@ -185,6 +207,128 @@ class TestRunsApiController {
         CbasRunStatus.toCbasApiState(COMPLETE), parsedResponse.getRuns().get(0).getState());
   }
 
+  @Test
+  void returnRunsFromDatabaseWhenPolledInBackground() throws Exception {
+    when(samService.hasReadPermission(any())).thenReturn(true);
+    when(scheduledPollEngine.isEnabled()).thenReturn(true);
+    when(scheduledPollEngine.runsAsPolled(any()))
+        .thenAnswer(i -> new UpdateResult<>(i.getArgument(0), 1, 1, true));
+    when(runDao.getRunsVersion(any(), any(), any())).thenReturn(runsVersion);
+    when(runDao.getRuns(any())).thenReturn(List.of(returnedRun));
+
+    MvcResult result = mockMvc.perform(get(API)).andExpect(status().isOk()).andReturn();
+
+    verifyNoInteractions(smartRunsPoller);
+    verify(scheduledPollEngine).offerUserToken(any());
+
+    var parsedResponse =
+        objectMapper.readValue(result.getResponse().getContentAsString(), RunLogResponse.class);
+    assertEquals(1, parsedResponse.getRuns().size());
+    assertEquals(
+        CbasRunStatus.toCbasApiState(RUNNING), parsedResponse.getRuns().get(0).getState());
+    assertEquals(true, parsedResponse.isFullyUpdated());
+  }
+
+  @Test
+  void returnNotModifiedWhenRunsVersionIsUnchanged() throws Exception {
+    when(samService.hasReadPermission(any())).thenReturn(true);
+    when(scheduledPollEngine.isEnabled()).thenReturn(true);
+    when(scheduledPollEngine.runsAsPolled(any()))
+        .thenAnswer(i -> new UpdateResult<>(i.getArgument(0), 1, 1, true));
+    when(runDao.getRunsVersion(any(), any(), any())).thenReturn(runsVersion);
+    when(runDao.getRuns(any())).thenReturn(List.of(returnedRun));
+
+    MvcResult result = mockMvc.perform(get(API)).andExpect(status().isOk()).andReturn();
+    String eTag = result.getResponse().getHeader(HttpHeaders.ETAG);
+    assertEquals(runsVersion.eTag(), eTag);
+
+    mockMvc
+        .perform(get(API).header(HttpHeaders.IF_NONE_MATCH, eTag))
+        .andExpect(status().isNotModified())
+        .andExpect(header().string(HttpHeaders.ETAG, eTag));
+    verify(runDao, times(1)).getRuns(any());
+    verify(scheduledPollEngine, times(2)).offerUserToken(any());
+
+    // Once a run changes, the runs are returned again
+    when(runDao.getRunsVersion(any(), any(), any()))
+        .thenReturn(
+            new ListingVersion(
+                runsVersion.rowCount(),
+                runsVersion.lastModifiedTimestamp().plusSeconds(1),
+                runsVersion.lastPolledTimestamp()));
+    mockMvc.perform(get(API).header(HttpHeaders.IF_NONE_MATCH, eTag)).andExpect(status().isOk());
+    verify(runDao, times(2)).getRuns(any());
+  }
+
+  @Test
+  void ignoreIfNoneMatchWhenRunsArePolledInline() throws Exception {
+    when(samService.hasReadPermission(any())).thenReturn(true);
+    when(runDao.getRuns(any())).thenReturn(List.of(returnedRun));
+    when(smartRunsPoller.updateRuns(any(), any()))
+        .thenReturn(new UpdateResult<>(List.of(returnedPollableRun), 1, 1, true));
+
+    MvcResult result =
+        mockMvc
+            .perform(get(API).header(HttpHeaders.IF_NONE_MATCH, "*"))
+            .andExpect(status().isOk())
+            .andReturn();
+
+    assertNull(result.getResponse().getHeader(HttpHeaders.ETAG));
+    verify(runDao, never()).getRunsVersion(any(), any(), any());
+  }
+
+  @Test
+  void returnPagesOfRuns() throws Exception {
+    when(samService.hasReadPermission(any())).thenReturn(true);
+    when(scheduledPollEngine.isEnabled()).thenReturn(true);
+    when(scheduledPollEngine.runsAsPolled(any()))
+        .thenAnswer(i -> new UpdateResult<>(i.getArgument(0), 1, 1, true));
+    when(runDao.getRunsVersion(any(), any(), any())).thenReturn(runsVersion);
+    PageCursor afterFirstPage = new PageCursor(returnedSubmittedTime, returnedRunId);
+    when(runDao.getRuns(any(), isNull(), eq(2))).thenReturn(List.of(returnedRun, updatedRun));
+    when(runDao.getRuns(any(), eq(afterFirstPage), eq(2))).thenReturn(List.of(updatedRun));
+
+    MvcResult firstPage =
+        mockMvc
+            .perform(get(API).param("run_set_id", runSetId.toString()).param("limit", "1"))
+            .andExpect(status().isOk())
+            .andReturn();
+    var parsedFirstPage =
+        objectMapper.readValue(firstPage.getResponse().getContentAsString(), RunLogResponse.class);
+    assertEquals(1, parsedFirstPage.getRuns().size());
+    assertEquals(afterFirstPage.encode(), parsedFirstPage.getNextPage());
+
+    MvcResult lastPage =
+        mockMvc
+            .perform(
+                get(API)
+                    .param("run_set_id", runSetId.toString())
+                    .param("limit", "1")
+                    .param("after", parsedFirstPage.getNextPage()))
+            .andExpect(status().isOk())
+            .andReturn();
+    var parsedLastPage =
+        objectMapper.readValue(lastPage.getResponse().getContentAsString(), RunLogResponse.class);
+    assertEquals(1, parsedLastPage.getRuns().size());
+    assertNull(parsedLastPage.getNextPage());
+    verify(runDao, never()).getRuns(any());
+    // The version covers the runs of the page only
+    verify(runDao).getRunsVersion(any(), isNull(), eq(2));
+    verify(runDao).getRunsVersion(any(), eq(afterFirstPage), eq(2));
+  }
+
+  @Test
+  void returnUserErrorForInvalidPageCursor() throws Exception {
+    when(samService.hasReadPermission(any())).thenReturn(true);
+
+    mockMvc
+        .perform(get(API).param("after", "not-a-cursor"))
+        .andExpect(status().isBadRequest())
+        .andExpect(
+            result ->
+                assertTrue(result.getResolvedException() instanceof InvalidPageCursorException));
+  }
+
   @Test
   // the purpose of this test is to call the real method to extract the bearer token from request
   // and verify that hasReadPermission received the same bearer token set in request
@@ -280,7 +424,7 @@ class TestRunsApiController {
   @Test
   void runResultsUpdateReturnsSuccessOnTerminalStatus() throws Exception {
     when(samService.hasWritePermission(any())).thenReturn(true);
-    when(runDao.getRuns(any())).thenReturn(List.of(returnedRun));
+    when(runDao.getPollableRuns(any())).thenReturn(List.of(returnedPollableRun));
     when(runsResultsManager.updateResults(any(), eq(COMPLETE), any(), any(), any()))
         .thenReturn(RunCompletionResult.SUCCESS);
 
@@ -306,9 +450,13 @@ class TestRunsApiController {
   void runResultsUpdateReturnsSuccessOnFailedWithErrors() throws Exception {
     var errorList = List.of("error workflow engine", "system error");
     when(samService.hasWritePermission(any())).thenReturn(true);
-    when(runDao.getRuns(any())).thenReturn(List.of(returnedRun));
+    when(runDao.getPollableRuns(any())).thenReturn(List.of(returnedPollableRun));
     when(runsResultsManager.updateResults(
-            eq(returnedRun), eq(CbasRunStatus.EXECUTOR_ERROR), eq(null), eq(errorList), any()))
+            eq(returnedPollableRun),
+            eq(CbasRunStatus.EXECUTOR_ERROR),
+            eq(null),
+            eq(errorList),
+            any()))
         .thenReturn(RunCompletionResult.SUCCESS);
 
     var requestBody =
@@ -332,9 +480,9 @@ class TestRunsApiController {
   @Test
   void runResultsUpdateReturnsSystemErrorWhenUpdateThrows() throws Exception {
     when(samService.hasWritePermission(any())).thenReturn(true);
-    when(runDao.getRuns(any())).thenReturn(List.of(returnedRun));
+    when(runDao.getPollableRuns(any())).thenReturn(List.of(returnedPollableRun));
     when(runsResultsManager.updateResults(
-            eq(returnedRun), eq(CbasRunStatus.SYSTEM_ERROR), eq(null), any(), any()))
+            eq(returnedPollableRun), eq(CbasRunStatus.SYSTEM_ERROR), eq(null), any(), any()))
         .thenThrow(new RuntimeException("Failed to connect to database"));
 
     var requestBody =
@@ -355,9 +503,9 @@ class TestRunsApiController {
   @Test
   void runResultsUpdateReturnsSystemErrorWhenUpdateErrors() throws Exception {
     when(samService.hasWritePermission(any())).thenReturn(true);
-    when(runDao.getRuns(any())).thenReturn(List.of(returnedRun));
+    when(runDao.getPollableRuns(any())).thenReturn(List.of(returnedPollableRun));
     when(runsResultsManager.updateResults(
-            eq(returnedRun), eq(CbasRunStatus.SYSTEM_ERROR), eq(null), any(), any()))
+            eq(returnedPollableRun), eq(CbasRunStatus.SYSTEM_ERROR), eq(null), any(), any()))
         .thenReturn(RunCompletionResult.ERROR);
 
     var requestBody =
@@ -380,9 +528,9 @@ class TestRunsApiController {
   @Test
   void runResultsUpdateReturnsUserErrorWhenValidationErrors() throws Exception {
     when(samService.hasWritePermission(any())).thenReturn(true);
-    when(runDao.getRuns(any())).thenReturn(List.of(returnedRun));
+    when(runDao.getPollableRuns(any())).thenReturn(List.of(returnedPollableRun));
     when(runsResultsManager.updateResults(
-            eq(returnedRun), eq(CbasRunStatus.COMPLETE), any(), any(), any()))
+            eq(returnedPollableRun), eq(CbasRunStatus.COMPLETE), any(), any(), any()))
         .thenReturn(RunCompletionResult.VALIDATION_ERROR);
 
     var requestBody =
@@ -406,9 +554,9 @@ class TestRunsApiController {
   @Test
   void runResultsUpdateReturnsSuccessWhenUserHasNoPermission() throws Exception {
     when(samService.hasWritePermission(any())).thenReturn(false);
-    when(runDao.getRuns(any())).thenReturn(List.of(returnedRun));
+    when(runDao.getPollableRuns(any())).thenReturn(List.of(returnedPollableRun));
     when(runsResultsManager.updateResults(
-            eq(returnedRun), eq(CbasRunStatus.SYSTEM_ERROR), any(), any(), any()))
+            eq(returnedPollableRun), eq(CbasRunStatus.SYSTEM_ERROR), any(), any(), any()))
         .thenReturn(RunCompletionResult.SUCCESS);
 
     var requestBody =
@@ -427,7 +575,7 @@ class TestRunsApiController {
 
     verify(runsResultsManager)
         .updateResults(
-            eq(returnedRun),
+            eq(returnedPollableRun),
             eq(CbasRunStatus.SYSTEM_ERROR),
             ArgumentMatchers.isNull(),
             isNotNull(),
@@ -438,7 +586,7 @@ class TestRunsApiController {
   @Test
   void runResultsUpdateReturnsUserErrorWhenRunIdNotFound() throws Exception {
     when(samService.hasWritePermission(any())).thenReturn(true);
-    when(runDao.getRuns(any())).thenReturn(Collections.emptyList());
+    when(runDao.getPollableRuns(any())).thenReturn(Collections.emptyList());
     var requestBody =
         new RunResultsRequest()
             .workflowId(updatedRun.runId())
@@ -461,8 +609,9 @@ class TestRunsApiController {
   @Test
   void runResultsUpdateReturnsUserErrorWhenMissingOutputs() throws Exception {
     when(samService.hasWritePermission(any())).thenReturn(true);
-    when(runDao.getRuns(any())).thenReturn(List.of(returnedRun));
-    when(runsResultsManager.updateResults(eq(returnedRun), eq(COMPLETE), eq(null), any(), any()))
+    when(runDao.getPollableRuns(any())).thenReturn(List.of(returnedPollableRun));
+    when(runsResultsManager.updateResults(
+            eq(returnedPollableRun), eq(COMPLETE), eq(null), any(), any()))
         .thenReturn(RunCompletionResult.VALIDATION_ERROR);
 
     var requestBody =
@@ -483,4 +632,79 @@ class TestRunsApiController {
 
     assertEquals(0, result.getResponse().getContentLength());
   }
+
+  @Test
+  void runResultsStoredInInboxWithoutProcessing() throws Exception {
+    when(runCallbackInbox.isEnabled()).thenReturn(true);
+    when(runDao.engineIdExists(returnedRunEngineId.toString())).thenReturn(true);
+    when(samService.hasWritePermission(any())).thenReturn(true);
+
+    var requestBody =
+        new RunResultsRequest()
+            .workflowId(returnedRunEngineId)
+            .state(WorkflowTerminalState.SUCCEEDED)
+            .outputs("{}");
+
+    mockMvc
+        .perform(
+            post(API_RESULTS)
+                .content(objectMapper.writeValueAsString(requestBody))
+                .contentType(MediaType.APPLICATION_JSON))
+        .andExpect(status().isOk());
+
+    verify(runCallbackInbox).receive(eq(returnedRunEngineId), eq(COMPLETE), eq("{}"), any(), any());
+    // The run is only checked for here. It is read and updated when the callback is processed.
+    verify(runDao).engineIdExists(returnedRunEngineId.toString());
+    verifyNoMoreInteractions(runDao);
+    verifyNoInteractions(runsResultsManager);
+  }
+
+  @Test
+  void runResultsForUnknownWorkflowNotStoredInInbox() throws Exception {
+    when(runCallbackInbox.isEnabled()).thenReturn(true);
+    when(runDao.engineIdExists(returnedRunEngineId.toString())).thenReturn(false);
+
+    var requestBody =
+        new RunResultsRequest()
+            .workflowId(returnedRunEngineId)
+            .state(WorkflowTerminalState.SUCCEEDED)
+            .outputs("{}");
+
+    mockMvc
+        .perform(
+            post(API_RESULTS)
+                .content(objectMapper.writeValueAsString(requestBody))
+                .contentType(MediaType.APPLICATION_JSON))
+        .andExpect(status().isNotFound())
+        .andExpect(r -> assertTrue(r.getResolvedException() instanceof RunNotFoundException));
+
+    verify(runCallbackInbox, never()).receive(any(), any(), any(), any(), any());
+  }
+
+  @Test
+  void runResultsStoredInInboxAsSystemErrorWhenUserHasNoPermission() throws Exception {
+    when(runCallbackInbox.isEnabled()).thenReturn(true);
+    when(runDao.engineIdExists(returnedRunEngineId.toString())).thenReturn(true);
+    when(samService.hasWritePermission(any())).thenReturn(false);
+
+    var requestBody =
+        new RunResultsRequest()
+            .workflowId(returnedRunEngineId)
+            .state(WorkflowTerminalState.ABORTED);
+
+    mockMvc
+        .perform(
+            post(API_RESULTS)
+                .content(objectMapper.writeValueAsString(requestBody))
+                .contentType(MediaType.APPLICATION_JSON))
+        .andExpect(status().isOk());
+
+    verify(runCallbackInbox)
+        .receive(
+            eq(returnedRunEngineId),
+            eq(CbasRunStatus.SYSTEM_ERROR),
+            ArgumentMatchers.isNull(),
+            isNotNull(),
+            any());
+  }
 }
@@ -0,0 +1,70 @@
+package bio.terra.cbas.controllers;
+
+import static org.junit.jupiter.api.Assertions.assertTrue;
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.Mockito.verify;
+import static org.mockito.Mockito.verifyNoInteractions;
+import static org.mockito.Mockito.when;
+import static org.springframework.test.web.servlet.request.MockMvcRequestBuilders.get;
+import static org.springframework.test.web.servlet.result.MockMvcResultMatchers.request;
+import static org.springframework.test.web.servlet.result.MockMvcResultMatchers.status;
+
+import bio.terra.cbas.common.exceptions.ForbiddenException;
+import bio.terra.cbas.dependencies.sam.SamService;
+import bio.terra.cbas.runsets.monitoring.ScheduledPollEngine;
+import bio.terra.cbas.runsets.monitoring.StatusEventBroadcaster;
+import bio.terra.common.iam.BearerTokenFactory;
+import java.util.UUID;
+import org.junit.jupiter.api.Test;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.test.autoconfigure.web.servlet.WebMvcTest;
+import org.springframework.boot.test.mock.mockito.MockBean;
+import org.springframework.http.MediaType;
+import org.springframework.test.context.ContextConfiguration;
+import org.springframework.test.web.servlet.MockMvc;
+import org.springframework.web.servlet.mvc.method.annotation.SseEmitter;
+
+@WebMvcTest
+@ContextConfiguration(classes = {StatusEventsController.class, GlobalExceptionHandler.class})
+class TestStatusEventsController {
+
+  private static final String API = "/api/batch/v1/events";
+
+  @MockBean private StatusEventBroadcaster statusEventBroadcaster;
+  @MockBean private ScheduledPollEngine scheduledPollEngine;
+  @MockBean private SamService samService;
+  @MockBean private BearerTokenFactory bearerTokenFactory;
+
+  @Autowired private MockMvc mockMvc;
+
+  @Test
+  void streamsEventsOfRunSet() throws Exception {
+    UUID runSetId = UUID.randomUUID();
+    when(samService.hasReadPermission(any())).thenReturn(true);
+    when(statusEventBroadcaster.subscribe(runSetId, "100-7")).thenReturn(new SseEmitter());
+
+    mockMvc
+        .perform(
+            get(API)
+                .param("run_set_id", runSetId.toString())
+                .header("Last-Event-ID", "100-7")
+                .accept(MediaType.TEXT_EVENT_STREAM))
+        .andExpect(request().asyncStarted());
+
+    verify(statusEventBroadcaster).subscribe(runSetId, "100-7");
+    verify(scheduledPollEngine).offerUserToken(any());
+  }
+
+  @Test
+  void returnErrorForUserWithNoReadAccess() throws Exception {
+    when(samService.hasReadPermission(any())).thenReturn(false);
+
+    mockMvc
+        .perform(get(API))
+        .andExpect(status().isForbidden())
+        .andExpect(
+            result -> assertTrue(result.getResolvedException() instanceof ForbiddenException));
+
+    verifyNoInteractions(statusEventBroadcaster);
+  }
+}
@@ -18,6 +18,7 @@ import bio.terra.cbas.models.Run;
 import bio.terra.cbas.models.RunSet;
 import java.time.OffsetDateTime;
 import java.util.List;
+import java.util.Map;
 import java.util.UUID;
 import org.junit.jupiter.api.BeforeEach;
 import org.junit.jupiter.api.Test;
@@ -87,13 +88,14 @@ class TestAsyncExceptionHandler {
     mockAsyncExceptionHandler.handleExceptionFromAsyncSubmission(
         throwable, "triggerWorkflowSubmission", params);
 
-    // verify all 3 Runs were marked in Error state
+    // verify all 3 Runs were marked in Error state in a single update
     verify(runDao)
-        .updateRunStatusWithError(eq(runId1), eq(SYSTEM_ERROR), any(), eq(expectedErrorMsg));
-    verify(runDao)
-        .updateRunStatusWithError(eq(runId2), eq(SYSTEM_ERROR), any(), eq(expectedErrorMsg));
-    verify(runDao)
-        .updateRunStatusWithError(eq(runId3), eq(SYSTEM_ERROR), any(), eq(expectedErrorMsg));
+        .updateRunStatusesWithErrors(
+            eq(
+                Map.of(
+                    runId1, expectedErrorMsg, runId2, expectedErrorMsg, runId3, expectedErrorMsg)),
+            eq(SYSTEM_ERROR),
+            any());
 
     // verify that RunSet was also marked in Error state
     verify(runSetDao)
@@ -109,7 +111,7 @@ class TestAsyncExceptionHandler {
         throwable, "triggerWorkflowSubmission", params);
 
     // verify that Runs weren't marked in Error state as they were already submitted
-    verify(runDao, never()).updateRunStatusWithError(any(), any(), any(), any());
+    verify(runDao, never()).updateRunStatusesWithErrors(any(), any(), any());
 
     // verify that Run Set wasn't marked in Error state
     verify(runSetDao, never()).updateStateAndRunSetDetails(any(), any(), any(), any(), any());
@@ -124,15 +126,9 @@ class TestAsyncExceptionHandler {
     mockAsyncExceptionHandler.handleExceptionFromAsyncSubmission(
         throwable, "triggerWorkflowSubmission", params);
 
-    // verify Run 1 and 2 weren't marked in Error state
-    verify(runDao, never())
-        .updateRunStatusWithError(eq(runId1), eq(SYSTEM_ERROR), any(), eq(expectedErrorMsg));
-    verify(runDao, never())
-        .updateRunStatusWithError(eq(runId2), eq(SYSTEM_ERROR), any(), eq(expectedErrorMsg));
-
-    // verify Run 3 was marked in Error state
+    // verify only Run 3 was marked in Error state
     verify(runDao)
-        .updateRunStatusWithError(eq(runId3), eq(SYSTEM_ERROR), any(), eq(expectedErrorMsg));
+        .updateRunStatusesWithErrors(eq(Map.of(runId3, expectedErrorMsg)), eq(SYSTEM_ERROR), any());
 
     // verify that RunSet wasn't in Error state
     verify(runSetDao, never()).updateStateAndRunSetDetails(any(), any(), any(), any(), any());
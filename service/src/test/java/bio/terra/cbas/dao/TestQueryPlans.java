@@ -0,0 +1,214 @@
+package bio.terra.cbas.dao;
+
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import bio.terra.cbas.dao.util.ContainerizedDatabaseTest;
+import bio.terra.cbas.dao.util.PageCursor;
+import bio.terra.cbas.models.CbasMethodStatus;
+import bio.terra.cbas.models.CbasRunSetStatus;
+import bio.terra.cbas.models.CbasRunStatus;
+import bio.terra.cbas.models.Method;
+import bio.terra.cbas.models.MethodVersion;
+import bio.terra.cbas.models.Run;
+import bio.terra.cbas.models.RunSet;
+import java.time.OffsetDateTime;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Optional;
+import java.util.UUID;
+import java.util.stream.IntStream;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.jdbc.core.RowMapper;
+import org.springframework.jdbc.core.namedparam.NamedParameterJdbcTemplate;
+import org.springframework.jdbc.core.namedparam.SqlParameterSource;
+import org.springframework.jdbc.support.JdbcTransactionManager;
+import org.springframework.transaction.support.TransactionTemplate;
+
+/**
+ * Checks that the queries behind the main access paths of the run and run_set tables can use their
+ * indexes. The DAOs run against a template that EXPLAINs every query before running it, with
+ * sequential scans disabled, so the plans show whether an index matches the query rather than
+ * whether the small seeded tables happen to be cheaper to scan.
+ */
+class TestQueryPlans extends ContainerizedDatabaseTest {
+
+  @Autowired NamedParameterJdbcTemplate jdbcTemplate;
+  @Autowired RunDao runDao;
+  @Autowired RunSetDao runSetDao;
+  @Autowired MethodDao methodDao;
+  @Autowired MethodVersionDao methodVersionDao;
+
+  private final UUID workspaceId = UUID.randomUUID();
+  private final List<RunSet> runSets = new ArrayList<>();
+  private final List<Run> runs = new ArrayList<>();
+
+  private ExplainingJdbcTemplate explainingTemplate;
+
+  @BeforeEach
+  void seed() {
+    Method method =
+        new Method(
+            UUID.randomUUID(),
+            "query_plans",
+            "query_plans",
+            OffsetDateTime.now(),
+            null,
+            "Github",
+            workspaceId,
+            Optional.empty(),
+            CbasMethodStatus.ACTIVE);
+    MethodVersion methodVersion =
+        new MethodVersion(
+            UUID.randomUUID(),
+            method,
+            "1.0",
+            "query_plans",
+            OffsetDateTime.now(),
+            null,
+            "https://raw.githubusercontent.com/broadinstitute/cromwell/develop/wom/src/test/resources/hello.wdl",
+            workspaceId,
+            "develop",
+            Optional.empty());
+    methodDao.createMethod(method);
+    methodVersionDao.createMethodVersion(methodVersion);
+
+    OffsetDateTime now = OffsetDateTime.now();
+    for (int i = 0; i < 20; i++) {
+      RunSet runSet =
+          new RunSet(
+              UUID.randomUUID(),
+              methodVersion,
+              "run set " + i,
+              "",
+              false,
+              false,
+              CbasRunSetStatus.COMPLETE,
+              now.minusMinutes(i),
+              now.minusMinutes(i),
+              now.minusMinutes(i),
+              50,
+              0,
+              "[]",
+              "[]",
+              "sample",
+              "user-foo",
+              workspaceId);
+      runSetDao.createRunSet(runSet);
+      runSets.add(runSet);
+      IntStream.range(0, 50)
+          .mapToObj(
+              j ->
+                  new Run(
+                      UUID.randomUUID(),
+                      UUID.randomUUID().toString(),
+                      runSet,
+                      "record-" + j,
+                      now,
+                      j == 0 ? CbasRunStatus.RUNNING : CbasRunStatus.COMPLETE,
+                      now,
+                      now.minusMinutes(j),
+                      null))
+          .forEach(runs::add);
+    }
+    runDao.createRuns(runs);
+    jdbcTemplate.getJdbcOperations().execute("ANALYZE run; ANALYZE run_set;");
+
+    explainingTemplate = new ExplainingJdbcTemplate(jdbcTemplate);
+  }
+
+  @Test
+  void runsOfRunSetUseRunSetIndex() {
+    new RunDao(explainingTemplate)
+        .getRuns(
+            new RunDao.RunsFilters(runSets.get(3).runSetId(), CbasRunStatus.NON_TERMINAL_STATES));
+
+    assertUsesIndex("idx_run_run_set_id_status");
+  }
+
+  @Test
+  void pollableRunsOfRunSetUseRunSetIndex() {
+    new RunDao(explainingTemplate)
+        .getPollableRuns(
+            new RunDao.RunsFilters(runSets.get(3).runSetId(), CbasRunStatus.NON_TERMINAL_STATES));
+
+    assertUsesIndex("idx_run_run_set_id_status");
+  }
+
+  @Test
+  void runByEngineIdUsesEngineIdIndex() {
+    new RunDao(explainingTemplate)
+        .getRuns(new RunDao.RunsFilters(null, null, runs.get(42).engineId()));
+
+    assertUsesIndex("idx_run_engine_id");
+  }
+
+  @Test
+  void runsToPollUseNonTerminalIndex() {
+    new RunDao(explainingTemplate).claimRunsToPoll(OffsetDateTime.now(), 10);
+
+    assertUsesIndex("idx_run_non_terminal_last_polled_timestamp");
+  }
+
+  @Test
+  void pagesOfRunsUseSubmissionTimestampIndex() {
+    Run run = runs.get(142);
+    new RunDao(explainingTemplate)
+        .getRuns(
+            new RunDao.RunsFilters(run.getRunSetId(), null),
+            new PageCursor(run.submissionTimestamp(), run.runId()),
+            10);
+
+    assertUsesIndex("idx_run_run_set_id_submission_timestamp_run_id");
+  }
+
+  @Test
+  void runSetsUseSubmissionTimestampIndex() {
+    new RunSetDao(explainingTemplate).getRunSets(10, false);
+
+    assertUsesIndex("idx_run_set_is_template_submission_timestamp_id");
+  }
+
+  @Test
+  void pagesOfRunSetsUseSubmissionTimestampIndex() {
+    RunSet runSet = runSets.get(7);
+    new RunSetDao(explainingTemplate)
+        .getRunSets(10, new PageCursor(runSet.submissionTimestamp(), runSet.runSetId()), false);
+
+    assertUsesIndex("idx_run_set_is_template_submission_timestamp_id");
+  }
+
+  private void assertUsesIndex(String indexName) {
+    String plan = String.join("\n", explainingTemplate.plans);
+    assertTrue(
+        plan.contains(indexName), "Expected a plan using %s:\n%s".formatted(indexName, plan));
+  }
+
+  /** Records the plan of every query it runs. */
+  private static class ExplainingJdbcTemplate extends NamedParameterJdbcTemplate {
+    private final NamedParameterJdbcTemplate explainer;
+    private final TransactionTemplate transactionTemplate;
+    private final List<String> plans = new ArrayList<>();
+
+    ExplainingJdbcTemplate(NamedParameterJdbcTemplate jdbcTemplate) {
+      super(jdbcTemplate.getJdbcOperations());
+      this.explainer = jdbcTemplate;
+      this.transactionTemplate =
+          new TransactionTemplate(
+              new JdbcTransactionManager(jdbcTemplate.getJdbcTemplate().getDataSource()));
+    }
+
+    @Override
+    public <T> List<T> query(String sql, SqlParameterSource paramSource, RowMapper<T> rowMapper) {
+      // SET LOCAL only lasts until the end of the transaction, and so only affects the EXPLAIN
+      plans.addAll(
+          transactionTemplate.execute(
+              status -> {
+                explainer.getJdbcOperations().execute("SET LOCAL enable_seqscan = off");
+                return explainer.queryForList("EXPLAIN " + sql, paramSource, String.class);
+              }));
+      return super.query(sql, paramSource, rowMapper);
+    }
+  }
+}
@@ -0,0 +1,153 @@
+package bio.terra.cbas.dao;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertNull;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import bio.terra.cbas.dao.util.ContainerizedDatabaseTest;
+import bio.terra.cbas.models.CbasRunStatus;
+import bio.terra.cbas.models.RunCallback;
+import bio.terra.cbas.models.RunCallbackStatus;
+import java.util.List;
+import java.util.Set;
+import java.util.UUID;
+import org.junit.jupiter.api.Test;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.jdbc.core.namedparam.MapSqlParameterSource;
+import org.springframework.jdbc.core.namedparam.NamedParameterJdbcTemplate;
+
+class TestRunCallbackDao extends ContainerizedDatabaseTest {
+
+  @Autowired RunCallbackDao runCallbackDao;
+  @Autowired NamedParameterJdbcTemplate jdbcTemplate;
+
+  private static final int LEASE_SECONDS = 120;
+  // Leases taken with this duration have already expired
+  private static final int EXPIRED_LEASE_SECONDS = -1;
+
+  private String storeCallback() {
+    String engineId = UUID.randomUUID().toString();
+    runCallbackDao.createCallback(
+        engineId, CbasRunStatus.COMPLETE, "{\"out\": 1}", null, "some-token");
+    return engineId;
+  }
+
+  @Test
+  void claimsOldestCallbacksInBatches() {
+    String oldest = storeCallback();
+    String older = storeCallback();
+    String newest = storeCallback();
+
+    List<RunCallback> claimed = runCallbackDao.claimCallbacks("worker-1", 2, LEASE_SECONDS);
+
+    assertEquals(List.of(oldest, older), claimed.stream().map(RunCallback::engineId).toList());
+    RunCallback first = claimed.get(0);
+    assertEquals(RunCallbackStatus.RUNNING, first.status());
+    assertEquals(CbasRunStatus.COMPLETE, first.runStatus());
+    assertEquals("{\"out\": 1}", first.outputs());
+    assertNull(first.failures());
+    assertEquals("some-token", first.userToken());
+    assertEquals("worker-1", first.leaseOwner());
+    assertEquals(1, first.attempts());
+
+    List<RunCallback> remaining = runCallbackDao.claimCallbacks("worker-2", 2, LEASE_SECONDS);
+    assertEquals(List.of(newest), remaining.stream().map(RunCallback::engineId).toList());
+  }
+
+  @Test
+  void expiredLeaseIsClaimedAgain() {
+    storeCallback();
+    runCallbackDao.claimCallbacks("worker-1", 10, EXPIRED_LEASE_SECONDS);
+
+    List<RunCallback> reclaimed = runCallbackDao.claimCallbacks("worker-2", 10, LEASE_SECONDS);
+
+    assertEquals(1, reclaimed.size());
+    assertEquals("worker-2", reclaimed.get(0).leaseOwner());
+    assertEquals(2, reclaimed.get(0).attempts());
+  }
+
+  @Test
+  void processedCallbacksAreRemoved() {
+    storeCallback();
+    storeCallback();
+    List<Long> claimed =
+        runCallbackDao.claimCallbacks("worker-1", 10, LEASE_SECONDS).stream()
+            .map(RunCallback::callbackId)
+            .toList();
+
+    // Only the worker holding the lease removes the callbacks
+    assertEquals(0, runCallbackDao.completeCallbacks(claimed, "worker-2"));
+    assertEquals(2, runCallbackDao.completeCallbacks(claimed, "worker-1"));
+
+    assertTrue(runCallbackDao.getCallbacks().isEmpty());
+  }
+
+  @Test
+  void retriedCallbacksAreClaimedAgainAfterTheDelay() {
+    storeCallback();
+    storeCallback();
+    List<RunCallback> claimed = runCallbackDao.claimCallbacks("worker-1", 10, LEASE_SECONDS);
+
+    assertEquals(
+        1, runCallbackDao.retryCallbacks(Set.of(claimed.get(0).callbackId()), "worker-1", 60));
+    assertTrue(runCallbackDao.claimCallbacks("worker-2", 10, LEASE_SECONDS).isEmpty());
+
+    assertEquals(
+        1,
+        runCallbackDao.retryCallbacks(
+            Set.of(claimed.get(1).callbackId()), "worker-1", EXPIRED_LEASE_SECONDS));
+    List<RunCallback> reclaimed = runCallbackDao.claimCallbacks("worker-2", 10, LEASE_SECONDS);
+    assertEquals(
+        List.of(claimed.get(1).callbackId()),
+        reclaimed.stream().map(RunCallback::callbackId).toList());
+  }
+
+  @Test
+  void failedCallbackIsNeverClaimedAgain() {
+    storeCallback();
+    RunCallback claimed = runCallbackDao.claimCallbacks("worker-1", 10, LEASE_SECONDS).get(0);
+
+    assertEquals(
+        1, runCallbackDao.failCallback(claimed.callbackId(), "worker-1", "Something went wrong"));
+
+    RunCallback failed = runCallbackDao.getCallbacks().get(0);
+    assertEquals(RunCallbackStatus.FAILED, failed.status());
+    assertEquals("Something went wrong", failed.errorMessages());
+    assertNull(failed.userToken());
+    assertNull(failed.leaseOwner());
+    assertTrue(runCallbackDao.claimCallbacks("worker-2", 10, LEASE_SECONDS).isEmpty());
+  }
+
+  @Test
+  void userTokenIsNotStoredAsItIs() {
+    String engineId = storeCallback();
+
+    String storedUserToken =
+        jdbcTemplate.queryForObject(
+            "SELECT user_token FROM run_callback WHERE engine_id = :engine_id",
+            new MapSqlParameterSource(RunCallback.ENGINE_ID_COL, engineId),
+            String.class);
+
+    assertFalse(storedUserToken.contains("some-token"));
+    assertEquals("some-token", runCallbackDao.getCallbacks().get(0).userToken());
+  }
+
+  @Test
+  void expiredUserTokenIsDroppedWhenClaimed() {
+    storeCallback();
+    jdbcTemplate.update(
+        "UPDATE run_callback SET user_token_expires_timestamp = now() - interval '1 minute'",
+        new MapSqlParameterSource());
+
+    RunCallback claimed = runCallbackDao.claimCallbacks("worker-1", 10, LEASE_SECONDS).get(0);
+
+    assertNull(claimed.userToken());
+    String storedUserToken =
+        jdbcTemplate.queryForObject(
+            "SELECT user_token FROM run_callback WHERE callback_id = :callback_id",
+            new MapSqlParameterSource(RunCallback.CALLBACK_ID_COL, claimed.callbackId()),
+            String.class);
+    assertNull(storedUserToken);
+  }
+}
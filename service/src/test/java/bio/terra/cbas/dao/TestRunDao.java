@@ -1,35 +1,57 @@
 package bio.terra.cbas.dao;
 
 import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertNotEquals;
 import static org.junit.jupiter.api.Assertions.assertNotNull;
+import static org.junit.jupiter.api.Assertions.assertNull;
+import static org.junit.jupiter.api.Assertions.assertSame;
 import static org.junit.jupiter.api.Assertions.assertTrue;
 import static org.junit.jupiter.api.Assertions.fail;
 
+import bio.terra.cbas.dao.RunDao.RunStatusUpdate;
 import bio.terra.cbas.dao.util.ContainerizedDatabaseTest;
+import bio.terra.cbas.dao.util.ListingVersion;
+import bio.terra.cbas.dao.util.PageCursor;
 import bio.terra.cbas.models.CbasMethodStatus;
 import bio.terra.cbas.models.CbasRunSetStatus;
 import bio.terra.cbas.models.CbasRunStatus;
 import bio.terra.cbas.models.GithubMethodVersionDetails;
 import bio.terra.cbas.models.Method;
 import bio.terra.cbas.models.MethodVersion;
+import bio.terra.cbas.models.PollableRun;
+import bio.terra.cbas.models.PollableRunSet;
 import bio.terra.cbas.models.Run;
 import bio.terra.cbas.models.RunSet;
 import java.time.OffsetDateTime;
+import java.util.ArrayList;
 import java.util.Collections;
+import java.util.IdentityHashMap;
 import java.util.List;
+import java.util.Map;
 import java.util.Optional;
+import java.util.Set;
 import java.util.UUID;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.stream.Collectors;
+import java.util.stream.IntStream;
+import java.util.stream.Stream;
 import org.junit.jupiter.api.BeforeEach;
 import org.junit.jupiter.api.Test;
 import org.junit.jupiter.params.ParameterizedTest;
 import org.junit.jupiter.params.provider.ValueSource;
 import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.jdbc.core.namedparam.MapSqlParameterSource;
+import org.springframework.jdbc.core.namedparam.NamedParameterJdbcTemplate;
 
 class TestRunDao extends ContainerizedDatabaseTest {
   @Autowired RunDao runDao;
   @Autowired RunSetDao runSetDao;
   @Autowired MethodDao methodDao;
   @Autowired MethodVersionDao methodVersionDao;
+  @Autowired NamedParameterJdbcTemplate jdbcTemplate;
 
   UUID workspaceId = UUID.randomUUID();
 
@@ -268,4 +290,646 @@ class TestRunDao extends ContainerizedDatabaseTest {
       }
     }
   }
+
+  @Test
+  void createRunsInsertsAllRunsAcrossBatches() {
+    runSetDao.createRunSet(runSet);
+
+    OffsetDateTime timestamp = OffsetDateTime.parse("2023-01-27T19:21:24.563932Z");
+    List<Run> runs =
+        IntStream.range(0, 2500)
+            .mapToObj(
+                i ->
+                    new Run(
+                        UUID.randomUUID(),
+                        null,
+                        runSet,
+                        "record-%s".formatted(i),
+                        timestamp,
+                        CbasRunStatus.QUEUED,
+                        timestamp,
+                        timestamp,
+                        null))
+            .toList();
+
+    int created = runDao.createRuns(runs);
+    assertEquals(runs.size(), created);
+
+    List<Run> result = runDao.getRuns(new RunDao.RunsFilters(runSet.runSetId(), null));
+    assertEquals(runs.size(), result.size());
+    assertEquals(
+        runs.stream().map(Run::recordId).collect(Collectors.toSet()),
+        result.stream().map(Run::recordId).collect(Collectors.toSet()));
+  }
+
+  @Test
+  void createRunsWithNoRuns() {
+    assertEquals(0, runDao.createRuns(List.of()));
+  }
+
+  @Test
+  void bulkUpdatesRecordEngineIdsAndErrorsAcrossBatches() {
+    runSetDao.createRunSet(runSet);
+
+    OffsetDateTime timestamp = OffsetDateTime.parse("2023-01-27T19:21:24.563932Z");
+    List<Run> runs =
+        IntStream.range(0, 1500)
+            .mapToObj(
+                i ->
+                    new Run(
+                        UUID.randomUUID(),
+                        null,
+                        runSet,
+                        "record-%s".formatted(i),
+                        timestamp,
+                        CbasRunStatus.QUEUED,
+                        timestamp,
+                        timestamp,
+                        null))
+            .toList();
+    runDao.createRuns(runs);
+
+    // first 1200 runs (more than one bulk statement) get an engine ID, the rest an error
+    Map<UUID, UUID> runIdToEngineId =
+        runs.subList(0, 1200).stream()
+            .collect(Collectors.toMap(Run::runId, run -> UUID.randomUUID()));
+    Map<UUID, String> runIdToError =
+        runs.subList(1200, runs.size()).stream()
+            .collect(Collectors.toMap(Run::runId, run -> "error for " + run.recordId()));
+
+    OffsetDateTime updateTime = OffsetDateTime.parse("2023-01-28T10:00:00.000000Z");
+    assertEquals(
+        1200,
+        runDao.updateEngineIdsAndRunStatus(
+            runIdToEngineId, CbasRunStatus.INITIALIZING, updateTime));
+    assertEquals(
+        300,
+        runDao.updateRunStatusesWithErrors(runIdToError, CbasRunStatus.SYSTEM_ERROR, updateTime));
+
+    List<Run> result = runDao.getRuns(new RunDao.RunsFilters(runSet.runSetId(), null));
+    assertEquals(runs.size(), result.size());
+    for (Run run : result) {
+      if (runIdToEngineId.containsKey(run.runId())) {
+        assertEquals(runIdToEngineId.get(run.runId()).toString(), run.engineId());
+        assertEquals(CbasRunStatus.INITIALIZING, run.status());
+      } else {
+        assertEquals(runIdToError.get(run.runId()), run.errorMessages());
+        assertEquals(CbasRunStatus.SYSTEM_ERROR, run.status());
+      }
+      assertEquals(updateTime.toInstant(), run.lastModifiedTimestamp().toInstant());
+    }
+  }
+
+  @Test
+  void bulkUpdatesWithNoRuns() {
+    OffsetDateTime now = OffsetDateTime.now();
+    assertEquals(0, runDao.updateEngineIdsAndRunStatus(Map.of(), CbasRunStatus.INITIALIZING, now));
+    assertEquals(0, runDao.updateRunStatusesWithErrors(Map.of(), CbasRunStatus.SYSTEM_ERROR, now));
+  }
+
+  @Test
+  void requestedEngineIdsAreOnlyReadForRunsStillQueued() {
+    runSetDao.createRunSet(runSet);
+    OffsetDateTime timestamp = OffsetDateTime.parse("2023-01-27T19:21:24.563932Z");
+    List<Run> runs =
+        IntStream.range(0, 3)
+            .mapToObj(
+                i ->
+                    new Run(
+                        UUID.randomUUID(),
+                        null,
+                        runSet,
+                        "record-%s".formatted(i),
+                        timestamp,
+                        CbasRunStatus.QUEUED,
+                        timestamp,
+                        timestamp,
+                        null))
+            .toList();
+    runDao.createRuns(runs);
+    Map<UUID, UUID> runIdToEngineId =
+        runs.subList(0, 2).stream().collect(Collectors.toMap(Run::runId, run -> UUID.randomUUID()));
+
+    assertEquals(2, runDao.recordRequestedEngineIds(runIdToEngineId));
+    assertEquals(runIdToEngineId, runDao.getRequestedEngineIds(runSet.runSetId()));
+
+    // once recorded as submitted, a run is no longer QUEUED
+    UUID submittedRunId = runs.get(0).runId();
+    runDao.updateEngineIdsAndRunStatus(
+        Map.of(submittedRunId, runIdToEngineId.get(submittedRunId)),
+        CbasRunStatus.INITIALIZING,
+        timestamp);
+    assertEquals(
+        Map.of(runs.get(1).runId(), runIdToEngineId.get(runs.get(1).runId())),
+        runDao.getRequestedEngineIds(runSet.runSetId()));
+  }
+
+  @Test
+  void queuedRunIdsAreOnlyReadForTheGivenRecords() {
+    runSetDao.createRunSet(runSet);
+    OffsetDateTime timestamp = OffsetDateTime.parse("2023-01-27T19:21:24.563932Z");
+    List<Run> runs =
+        IntStream.range(0, 3)
+            .mapToObj(
+                i ->
+                    new Run(
+                        UUID.randomUUID(),
+                        null,
+                        runSet,
+                        "record-%s".formatted(i),
+                        timestamp,
+                        CbasRunStatus.QUEUED,
+                        timestamp,
+                        timestamp,
+                        null))
+            .toList();
+    runDao.createRuns(runs);
+    runDao.updateEngineIdsAndRunStatus(
+        Map.of(runs.get(0).runId(), UUID.randomUUID()), CbasRunStatus.INITIALIZING, timestamp);
+
+    assertEquals(
+        Map.of("record-1", runs.get(1).runId()),
+        runDao.getQueuedRunIds(
+            runSet.runSetId(), List.of("record-0", "record-1", "unknown-record")));
+    assertTrue(runDao.getQueuedRunIds(runSet.runSetId(), List.of()).isEmpty());
+  }
+
+  @Test
+  void allQueuedRunIdsOfRunSetAreRead() {
+    runSetDao.createRunSet(runSet);
+    OffsetDateTime timestamp = OffsetDateTime.parse("2023-01-27T19:21:24.563932Z");
+    List<Run> runs =
+        IntStream.range(0, 3)
+            .mapToObj(
+                i ->
+                    new Run(
+                        UUID.randomUUID(),
+                        null,
+                        runSet,
+                        "record-%s".formatted(i),
+                        timestamp,
+                        CbasRunStatus.QUEUED,
+                        timestamp,
+                        timestamp,
+                        null))
+            .toList();
+    runDao.createRuns(runs);
+    runDao.updateEngineIdsAndRunStatus(
+        Map.of(runs.get(0).runId(), UUID.randomUUID()), CbasRunStatus.INITIALIZING, timestamp);
+
+    assertEquals(
+        Map.of("record-1", runs.get(1).runId(), "record-2", runs.get(2).runId()),
+        runDao.getQueuedRunIds(runSet.runSetId()));
+  }
+
+  @Test
+  void getPollableRunsByEngineIdsReadsAllRunsAtOnce() {
+    runSetDao.createRunSet(runSet);
+    OffsetDateTime now = OffsetDateTime.now();
+    Run first = runToPoll(CbasRunStatus.RUNNING, "engine-1", now);
+    Run second = runToPoll(CbasRunStatus.COMPLETE, "engine-2", now);
+    Run other = runToPoll(CbasRunStatus.RUNNING, "engine-3", now);
+    runDao.createRuns(List.of(first, second, other));
+
+    List<PollableRun> found =
+        runDao.getPollableRunsByEngineIds(Set.of("engine-1", "engine-2", "unknown-engine"));
+
+    assertEquals(
+        Set.of(first.runId(), second.runId()),
+        found.stream().map(PollableRun::runId).collect(Collectors.toSet()));
+    assertTrue(runDao.getPollableRunsByEngineIds(Set.of()).isEmpty());
+  }
+
+  @Test
+  void updateRunStatusesWritesEachRunsOwnStatus() {
+    runSetDao.createRunSet(runSet);
+    OffsetDateTime now = OffsetDateTime.now();
+    Run completed = runToPoll(CbasRunStatus.RUNNING, "engine-1", now);
+    Run failed = runToPoll(CbasRunStatus.RUNNING, "engine-2", now);
+    Run withEarlierError =
+        new Run(
+            UUID.randomUUID(),
+            "engine-3",
+            runSet,
+            null,
+            now,
+            CbasRunStatus.RUNNING,
+            now,
+            now,
+            "earlier error");
+    runDao.createRuns(List.of(completed, failed, withEarlierError));
+
+    OffsetDateTime updateTime = OffsetDateTime.parse("2023-01-28T10:00:00.000000Z");
+    Set<UUID> updated =
+        runDao.updateRunStatuses(
+            List.of(
+                new RunStatusUpdate(completed.runId(), CbasRunStatus.COMPLETE, updateTime, null),
+                new RunStatusUpdate(
+                    failed.runId(), CbasRunStatus.EXECUTOR_ERROR, updateTime, "workflow failed"),
+                new RunStatusUpdate(
+                    withEarlierError.runId(), CbasRunStatus.SYSTEM_ERROR, updateTime, null),
+                new RunStatusUpdate(UUID.randomUUID(), CbasRunStatus.COMPLETE, updateTime, null)));
+
+    assertEquals(Set.of(completed.runId(), failed.runId(), withEarlierError.runId()), updated);
+    Map<UUID, Run> runs =
+        runDao.getRuns(new RunDao.RunsFilters(runSet.runSetId(), null)).stream()
+            .collect(Collectors.toMap(Run::runId, run -> run));
+    assertEquals(CbasRunStatus.COMPLETE, runs.get(completed.runId()).status());
+    assertEquals(
+        updateTime.toInstant(), runs.get(completed.runId()).lastModifiedTimestamp().toInstant());
+    assertNull(runs.get(completed.runId()).errorMessages());
+    assertEquals(CbasRunStatus.EXECUTOR_ERROR, runs.get(failed.runId()).status());
+    assertEquals("workflow failed", runs.get(failed.runId()).errorMessages());
+    // An update without error messages leaves the run's error messages as they are
+    assertEquals(CbasRunStatus.SYSTEM_ERROR, runs.get(withEarlierError.runId()).status());
+    assertEquals("earlier error", runs.get(withEarlierError.runId()).errorMessages());
+
+    assertTrue(runDao.updateRunStatuses(List.of()).isEmpty());
+  }
+
+  @Test
+  void updateLastPolledTimestampsReturnsUpdatedRuns() {
+    runSetDao.createRunSet(runSet);
+    OffsetDateTime longAgo = OffsetDateTime.now().minusDays(1);
+    Run run = runToPoll(CbasRunStatus.RUNNING, "engine-1", longAgo);
+    runDao.createRuns(List.of(run));
+
+    assertEquals(
+        Set.of(run.runId()),
+        runDao.updateLastPolledTimestamps(List.of(run.runId(), UUID.randomUUID())));
+
+    PollableRun polled =
+        runDao.getPollableRuns(new RunDao.RunsFilters(null, null, "engine-1")).get(0);
+    assertTrue(polled.lastPolledTimestamp().isAfter(longAgo));
+  }
+
+  @Test
+  void claimRunsToPollClaimsLeastRecentlyPolledRunsFirst() {
+    runSetDao.createRunSet(runSet);
+    OffsetDateTime now = OffsetDateTime.now();
+    Run pollDueLongAgo = runToPoll(CbasRunStatus.RUNNING, "engine-1", now.minusHours(2));
+    Run pollDue = runToPoll(CbasRunStatus.INITIALIZING, "engine-2", now.minusHours(1));
+    Run polledRecently = runToPoll(CbasRunStatus.RUNNING, "engine-3", now);
+    Run notSubmitted = runToPoll(CbasRunStatus.QUEUED, null, now.minusHours(3));
+    Run complete = runToPoll(CbasRunStatus.COMPLETE, "engine-4", now.minusHours(3));
+    runDao.createRuns(List.of(pollDue, polledRecently, notSubmitted, complete, pollDueLongAgo));
+
+    // The runs of a run set without a user token are not polled
+    assertTrue(runDao.claimRunsToPoll(now.minusMinutes(1), 10).isEmpty());
+
+    jdbcTemplate.update(
+        "INSERT INTO run_set_user_token (run_set_id, user_token, user_token_expires_timestamp)"
+            + " VALUES (:run_set_id, 'encrypted-token', now() + interval '1 hour')",
+        new MapSqlParameterSource(RunSet.RUN_SET_ID_COL, runSet.runSetId()));
+
+    List<PollableRun> limited = runDao.claimRunsToPoll(now.minusMinutes(1), 1);
+    assertEquals(
+        List.of(pollDueLongAgo.runId()), limited.stream().map(PollableRun::runId).toList());
+
+    // Claimed runs count as polled, so they are not claimed again
+    List<PollableRun> toPoll = runDao.claimRunsToPoll(now.minusMinutes(1), 10);
+    assertEquals(List.of(pollDue.runId()), toPoll.stream().map(PollableRun::runId).toList());
+    assertTrue(runDao.claimRunsToPoll(now.minusMinutes(1), 10).isEmpty());
+  }
+
+  @Test
+  void getRunsSharesOneRunSetPerRunSet() {
+    RunSet otherRunSet =
+        new RunSet(
+            UUID.randomUUID(),
+            methodVersion,
+            "fetch_sra_to_bam_run_test workflow",
+            "fetch_sra_to_bam_run_test sample submission",
+            false,
+            false,
+            CbasRunSetStatus.RUNNING,
+            OffsetDateTime.now(),
+            OffsetDateTime.now(),
+            OffsetDateTime.now(),
+            1,
+            0,
+            "[]",
+            "[]",
+            "sample",
+            "user-foo",
+            workspaceId);
+    runSetDao.createRunSet(runSet);
+    runSetDao.createRunSet(otherRunSet);
+    OffsetDateTime now = OffsetDateTime.now();
+    List<Run> runs =
+        IntStream.range(0, 10000)
+            .mapToObj(i -> runToPoll(CbasRunStatus.RUNNING, "engine-" + i, now))
+            .collect(Collectors.toCollection(ArrayList::new));
+    runs.add(runToPoll(otherRunSet, CbasRunStatus.RUNNING, "engine-other", now));
+    runDao.createRuns(runs);
+
+    List<Run> allRuns = runDao.getRuns(RunDao.RunsFilters.empty());
+
+    // 10001 runs hold only two run sets between them, rather than one copy of its run set each
+    assertEquals(10001, allRuns.size());
+    Set<RunSet> distinctRunSets = Collections.newSetFromMap(new IdentityHashMap<>());
+    allRuns.forEach(r -> distinctRunSets.add(r.runSet()));
+    assertEquals(2, distinctRunSets.size());
+    assertEquals(
+        Set.of(runSet.runSetId(), otherRunSet.runSetId()),
+        distinctRunSets.stream().map(RunSet::runSetId).collect(Collectors.toSet()));
+  }
+
+  @Test
+  void getRunsPageAfterCursor() {
+    runSetDao.createRunSet(runSet);
+    OffsetDateTime now = OffsetDateTime.now();
+    Run oldest = runToPoll(CbasRunStatus.RUNNING, "engine-1", now.minusMinutes(1));
+    // Two runs submitted at the same time are ordered by ID
+    Run newest1 = runToPoll(CbasRunStatus.RUNNING, "engine-2", now);
+    Run newest2 = runToPoll(CbasRunStatus.RUNNING, "engine-3", now);
+    runDao.createRuns(List.of(newest1, oldest, newest2));
+    // Postgres orders UUIDs as their hexadecimal strings
+    List<UUID> oldestFirst = new ArrayList<>(List.of(oldest.runId()));
+    Stream.of(newest1.runId(), newest2.runId())
+        .map(UUID::toString)
+        .sorted()
+        .map(UUID::fromString)
+        .forEach(oldestFirst::add);
+    RunDao.RunsFilters filters = new RunDao.RunsFilters(runSet.runSetId(), null);
+
+    List<Run> firstPage = runDao.getRuns(filters, null, 2);
+    assertEquals(oldestFirst.subList(0, 2), firstPage.stream().map(Run::runId).toList());
+
+    Run lastOfFirstPage = firstPage.get(1);
+    PageCursor after =
+        new PageCursor(lastOfFirstPage.submissionTimestamp(), lastOfFirstPage.runId());
+    assertEquals(
+        oldestFirst.subList(2, 3),
+        runDao.getRuns(filters, after, 2).stream().map(Run::runId).toList());
+    assertEquals(
+        oldestFirst, runDao.getRuns(filters, null, null).stream().map(Run::runId).toList());
+  }
+
+  @Test
+  void getRunsVersionChangesWithRuns() {
+    runSetDao.createRunSet(runSet);
+    RunDao.RunsFilters filters = new RunDao.RunsFilters(runSet.runSetId(), null);
+    assertEquals(new ListingVersion(0, null, null), runDao.getRunsVersion(filters, null, null));
+
+    OffsetDateTime aMinuteAgo = OffsetDateTime.now().minusMinutes(1);
+    Run polled = runToPoll(CbasRunStatus.RUNNING, "engine-1", aMinuteAgo);
+    Run deleted = runToPoll(CbasRunStatus.RUNNING, "engine-2", aMinuteAgo);
+    runDao.createRuns(List.of(polled, deleted));
+    ListingVersion created = runDao.getRunsVersion(filters, null, null);
+    assertEquals(2, created.rowCount());
+    assertEquals(created, runDao.getRunsVersion(filters, null, null));
+
+    runDao.updateLastPolledTimestamp(polled.runId());
+    ListingVersion afterPoll = runDao.getRunsVersion(filters, null, null);
+    assertNotEquals(created.eTag(), afterPoll.eTag());
+
+    runDao.deleteRun(deleted.runId());
+    assertNotEquals(afterPoll.eTag(), runDao.getRunsVersion(filters, null, null).eTag());
+  }
+
+  @Test
+  void getRunsVersionCoversListedRunsAndTheirMethod() {
+    runSetDao.createRunSet(runSet);
+    OffsetDateTime submitted = OffsetDateTime.parse("2023-01-27T19:21:24.563932Z");
+    Run first = runToPoll(CbasRunStatus.RUNNING, "engine-1", submitted);
+    Run second = runToPoll(CbasRunStatus.RUNNING, "engine-2", submitted.plusMinutes(1));
+    runDao.createRuns(List.of(first, second));
+    RunDao.RunsFilters filters = RunDao.RunsFilters.empty();
+    PageCursor afterFirst = new PageCursor(first.submissionTimestamp(), first.runId());
+
+    ListingVersion firstPage = runDao.getRunsVersion(filters, null, 1);
+    ListingVersion secondPage = runDao.getRunsVersion(filters, afterFirst, 1);
+    assertEquals(1, firstPage.rowCount());
+    assertEquals(1, secondPage.rowCount());
+    assertEquals(2, runDao.getRunsVersion(filters, null, null).rowCount());
+
+    // Polling a run outside of a page leaves the page's version unchanged
+    runDao.updateLastPolledTimestamp(second.runId());
+    assertEquals(firstPage, runDao.getRunsVersion(filters, null, 1));
+    assertNotEquals(secondPage, runDao.getRunsVersion(filters, afterFirst, 1));
+
+    // The runs are listed with their method, so changing it changes their version
+    methodDao.archiveMethod(method.methodId());
+    assertNotEquals(firstPage.eTag(), runDao.getRunsVersion(filters, null, 1).eTag());
+  }
+
+  @Test
+  void getPollableRunsSharesOneRunSetPerRunSet() {
+    runSetDao.createRunSet(runSet);
+    OffsetDateTime now = OffsetDateTime.now();
+    Run running = runToPoll(CbasRunStatus.RUNNING, "engine-1", now);
+    Run queued = runToPoll(CbasRunStatus.QUEUED, null, now);
+    Run complete = runToPoll(CbasRunStatus.COMPLETE, "engine-2", now);
+    runDao.createRuns(List.of(running, queued, complete));
+
+    List<PollableRun> pollable =
+        runDao.getPollableRuns(
+            new RunDao.RunsFilters(runSet.runSetId(), CbasRunStatus.NON_TERMINAL_STATES));
+
+    assertEquals(
+        Set.of(running.runId(), queued.runId()),
+        pollable.stream().map(PollableRun::runId).collect(Collectors.toSet()));
+    assertSame(pollable.get(0).runSet(), pollable.get(1).runSet());
+    PollableRunSet pollableRunSet = pollable.get(0).runSet();
+    assertEquals(runSet.runSetId(), pollableRunSet.runSetId());
+    assertEquals(runSet.recordType(), pollableRunSet.recordType());
+    assertEquals(runSet.status(), pollableRunSet.status());
+    assertEquals(runSet.outputDefinition(), runSetDao.getOutputDefinition(runSet.runSetId()));
+
+    PollableRun byEngineId =
+        runDao.getPollableRuns(new RunDao.RunsFilters(null, null, "engine-2")).get(0);
+    assertEquals(complete.runId(), byEngineId.runId());
+    assertEquals(CbasRunStatus.COMPLETE, byEngineId.status());
+    assertTrue(runDao.getPollableRuns(new RunDao.RunsFilters(null, null, "engine-3")).isEmpty());
+  }
+
+  @Test
+  void statusCountersFollowRunChanges() {
+    runSetDao.createRunSet(runSet);
+    OffsetDateTime timestamp = OffsetDateTime.parse("2023-01-27T19:21:24.563932Z");
+    Run running1 = runToPoll(CbasRunStatus.RUNNING, "engine-1", timestamp);
+    Run running2 = runToPoll(CbasRunStatus.RUNNING, "engine-2", timestamp);
+    Run running3 = runToPoll(CbasRunStatus.RUNNING, "engine-3", timestamp);
+    Run queued = runToPoll(CbasRunStatus.QUEUED, null, timestamp);
+    runDao.createRuns(List.of(running1, running2, running3, queued));
+    assertEquals(
+        Map.of(CbasRunStatus.RUNNING, 3, CbasRunStatus.QUEUED, 1),
+        statusCounts(runDao.getRunSetStatusCounts(runSet.runSetId())));
+
+    OffsetDateTime completedTime = OffsetDateTime.parse("2023-01-28T10:00:00.000000Z");
+    runDao.updateRunStatus(running1.runId(), CbasRunStatus.COMPLETE, completedTime);
+    runDao.updateRunStatusesWithErrors(
+        Map.of(queued.runId(), "failed"), CbasRunStatus.SYSTEM_ERROR, completedTime);
+    runDao.updateLastPolledTimestamp(running2.runId());
+    runDao.deleteRun(running3.runId());
+
+    Map<CbasRunStatus, RunDao.StatusCountRecord> counters =
+        runDao.getRunSetStatusCounts(runSet.runSetId());
+    assertEquals(
+        Map.of(CbasRunStatus.RUNNING, 1, CbasRunStatus.COMPLETE, 1, CbasRunStatus.SYSTEM_ERROR, 1),
+        statusCounts(counters));
+    assertEquals(
+        statusCounts(runDao.getRunStatusCounts(new RunDao.RunsFilters(runSet.runSetId(), null))),
+        statusCounts(counters));
+    assertEquals(
+        completedTime.toInstant(),
+        counters.get(CbasRunStatus.COMPLETE).lastModified().toInstant());
+  }
+
+  @Test
+  void concurrentRunChangesKeepStatusCountersInStep() throws Exception {
+    RunSet otherRunSet =
+        new RunSet(
+            UUID.randomUUID(),
+            methodVersion,
+            "fetch_sra_to_bam_run_test workflow",
+            "fetch_sra_to_bam_run_test sample submission",
+            false,
+            false,
+            CbasRunSetStatus.RUNNING,
+            OffsetDateTime.now(),
+            OffsetDateTime.now(),
+            OffsetDateTime.now(),
+            0,
+            0,
+            "[]",
+            "[]",
+            "sample",
+            "user-foo",
+            workspaceId);
+    runSetDao.createRunSet(runSet);
+    runSetDao.createRunSet(otherRunSet);
+    int threads = 8;
+    int runsPerThread = 20;
+    OffsetDateTime timestamp = OffsetDateTime.now();
+    List<List<Run>> runsOfThreads = new ArrayList<>();
+    for (int t = 0; t < threads; t++) {
+      List<Run> runs = new ArrayList<>();
+      for (int i = 0; i < runsPerThread; i++) {
+        RunSet inRunSet = i % 2 == 0 ? runSet : otherRunSet;
+        String engineId = "engine-%d-%d".formatted(t, i);
+        runs.add(runToPoll(inRunSet, CbasRunStatus.RUNNING, engineId, timestamp));
+      }
+      runDao.createRuns(runs);
+      runsOfThreads.add(runs);
+    }
+
+    // Every statement changes the counters of both run sets, listing the runs in its own order
+    ExecutorService executor = Executors.newFixedThreadPool(threads);
+    try {
+      List<Callable<Void>> changes = new ArrayList<>();
+      for (int t = 0; t < threads; t++) {
+        List<Run> runs = new ArrayList<>(runsOfThreads.get(t));
+        Collections.shuffle(runs);
+        CbasRunStatus newStatus =
+            t % 2 == 0 ? CbasRunStatus.COMPLETE : CbasRunStatus.EXECUTOR_ERROR;
+        changes.add(
+            () -> {
+              runDao.updateRunStatuses(
+                  runs.stream()
+                      .map(r -> new RunStatusUpdate(r.runId(), newStatus, timestamp, null))
+                      .toList());
+              runDao.createRuns(
+                  List.of(
+                      runToPoll(otherRunSet, CbasRunStatus.QUEUED, null, timestamp),
+                      runToPoll(runSet, CbasRunStatus.QUEUED, null, timestamp)));
+              return null;
+            });
+      }
+      for (Future<Void> change : executor.invokeAll(changes)) {
+        // rethrows the failure of a statement, such as a deadlock
+        change.get();
+      }
+    } finally {
+      executor.shutdownNow();
+    }
+
+    for (RunSet changedRunSet : List.of(runSet, otherRunSet)) {
+      Map<CbasRunStatus, Integer> counted =
+          statusCounts(
+              runDao.getRunStatusCounts(new RunDao.RunsFilters(changedRunSet.runSetId(), null)));
+      assertEquals(
+          Map.of(
+              CbasRunStatus.COMPLETE,
+              threads * runsPerThread / 4,
+              CbasRunStatus.EXECUTOR_ERROR,
+              threads * runsPerThread / 4,
+              CbasRunStatus.QUEUED,
+              threads),
+          counted);
+      assertEquals(counted, statusCounts(runDao.getRunSetStatusCounts(changedRunSet.runSetId())));
+    }
+  }
+
+  @Test
+  void rebuildsStaleStatusCounters() {
+    RunSet nonTemplateRunSet =
+        new RunSet(
+            UUID.randomUUID(),
+            methodVersion,
+            "fetch_sra_to_bam_run_test workflow",
+            "fetch_sra_to_bam_run_test sample submission",
+            false,
+            false,
+            CbasRunSetStatus.RUNNING,
+            OffsetDateTime.now(),
+            OffsetDateTime.now(),
+            OffsetDateTime.now(),
+            2,
+            0,
+            "[]",
+            "[]",
+            "sample",
+            "user-foo",
+            workspaceId);
+    runSetDao.createRunSet(nonTemplateRunSet);
+    OffsetDateTime timestamp = OffsetDateTime.now();
+    runDao.createRuns(
+        List.of(
+            runToPoll(nonTemplateRunSet, CbasRunStatus.RUNNING, "engine-1", timestamp),
+            runToPoll(nonTemplateRunSet, CbasRunStatus.COMPLETE, "engine-2", timestamp)));
+    assertTrue(runDao.getRunSetsWithStaleStatusCounts(10).isEmpty());
+
+    // The counters drift, for example because a run was edited by hand
+    jdbcTemplate.update(
+        "UPDATE run_set_status_count SET run_count = 5 WHERE status = 'RUNNING'",
+        new MapSqlParameterSource());
+    jdbcTemplate.update(
+        "INSERT INTO run_set_status_count (run_set_id, status, run_count) VALUES (:runSetId, 'CANCELED', 1)",
+        new MapSqlParameterSource("runSetId", nonTemplateRunSet.runSetId()));
+    assertEquals(
+        List.of(nonTemplateRunSet.runSetId()), runDao.getRunSetsWithStaleStatusCounts(10));
+
+    runDao.rebuildRunSetStatusCounts(nonTemplateRunSet.runSetId());
+
+    assertTrue(runDao.getRunSetsWithStaleStatusCounts(10).isEmpty());
+    assertEquals(
+        Map.of(CbasRunStatus.RUNNING, 1, CbasRunStatus.COMPLETE, 1),
+        statusCounts(runDao.getRunSetStatusCounts(nonTemplateRunSet.runSetId())));
+  }
+
+  private static Map<CbasRunStatus, Integer> statusCounts(
+      Map<CbasRunStatus, RunDao.StatusCountRecord> records) {
+    return records.entrySet().stream()
+        .collect(Collectors.toMap(Map.Entry::getKey, e -> e.getValue().count()));
+  }
+
+  private Run runToPoll(CbasRunStatus status, String engineId, OffsetDateTime lastPolled) {
+    return runToPoll(runSet, status, engineId, lastPolled);
+  }
+
+  private Run runToPoll(
+      RunSet inRunSet, CbasRunStatus status, String engineId, OffsetDateTime lastPolled) {
+    return new Run(
+        UUID.randomUUID(),
+        engineId,
+        inRunSet,
+        null,
+        lastPolled,
+        status,
+        lastPolled,
+        lastPolled,
+        null);
+  }
 }
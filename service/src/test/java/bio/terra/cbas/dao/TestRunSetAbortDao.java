@@ -0,0 +1,142 @@
+package bio.terra.cbas.dao;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertNull;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import bio.terra.cbas.dao.util.ContainerizedDatabaseTest;
+import bio.terra.cbas.models.CbasMethodStatus;
+import bio.terra.cbas.models.CbasRunSetStatus;
+import bio.terra.cbas.models.Method;
+import bio.terra.cbas.models.MethodVersion;
+import bio.terra.cbas.models.RunSet;
+import bio.terra.cbas.models.RunSetAbort;
+import bio.terra.cbas.models.RunSetAbortStatus;
+import java.time.OffsetDateTime;
+import java.util.Optional;
+import java.util.UUID;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.springframework.beans.factory.annotation.Autowired;
+
+class TestRunSetAbortDao extends ContainerizedDatabaseTest {
+
+  @Autowired RunSetAbortDao runSetAbortDao;
+  @Autowired RunSetDao runSetDao;
+  @Autowired MethodDao methodDao;
+  @Autowired MethodVersionDao methodVersionDao;
+
+  private static final int STALE_SECONDS = 600;
+  // Running aborts are stale right away with this duration
+  private static final int ALREADY_STALE_SECONDS = -1;
+
+  private final UUID workspaceId = UUID.randomUUID();
+
+  Method method =
+      new Method(
+          UUID.randomUUID(),
+          "fetch_sra_to_bam",
+          "fetch_sra_to_bam",
+          OffsetDateTime.parse("2023-01-27T19:21:24.563932Z"),
+          null,
+          "Github",
+          workspaceId,
+          Optional.empty(),
+          CbasMethodStatus.ACTIVE);
+
+  MethodVersion methodVersion =
+      new MethodVersion(
+          UUID.randomUUID(),
+          method,
+          "1.0",
+          "fetch_sra_to_bam sample submission",
+          OffsetDateTime.parse("2023-01-27T19:21:24.563932Z"),
+          null,
+          "https://raw.githubusercontent.com/broadinstitute/viral-pipelines/master/pipes/WDL/workflows/fetch_sra_to_bam.wdl",
+          workspaceId,
+          "develop",
+          Optional.empty());
+
+  UUID runSetId = UUID.randomUUID();
+
+  @BeforeEach
+  void init() {
+    methodDao.createMethod(method);
+    methodVersionDao.createMethodVersion(methodVersion);
+    OffsetDateTime submissionTimestamp = OffsetDateTime.now();
+    runSetDao.createRunSet(
+        new RunSet(
+            runSetId,
+            methodVersion,
+            "fetch_sra_to_bam workflow",
+            "fetch_sra_to_bam sample submission",
+            false,
+            false,
+            CbasRunSetStatus.CANCELING,
+            submissionTimestamp,
+            submissionTimestamp,
+            submissionTimestamp,
+            3,
+            0,
+            "[]",
+            "[]",
+            "sample",
+            "user-foo",
+            workspaceId));
+  }
+
+  @Test
+  void recordsProgressOfAbort() {
+    UUID failedRunId1 = UUID.randomUUID();
+    UUID failedRunId2 = UUID.randomUUID();
+
+    assertEquals(1, runSetAbortDao.startAbort(runSetId, 3, STALE_SECONDS));
+    runSetAbortDao.recordAbortRequestSubmitted(runSetId);
+    runSetAbortDao.recordAbortRequestFailed(runSetId, failedRunId1);
+    runSetAbortDao.recordAbortRequestFailed(runSetId, failedRunId2);
+
+    RunSetAbort abort = runSetAbortDao.getAbort(runSetId).orElseThrow();
+    assertEquals(RunSetAbortStatus.RUNNING, abort.status());
+    assertEquals(3, abort.runsToAbort());
+    assertEquals(1, abort.abortRequestsSubmitted());
+    assertEquals(2, abort.abortRequestsFailed());
+    assertEquals("%s,%s".formatted(failedRunId1, failedRunId2), abort.failedRunIds());
+
+    runSetAbortDao.completeAbort(runSetId);
+
+    assertEquals(
+        RunSetAbortStatus.COMPLETE, runSetAbortDao.getAbort(runSetId).orElseThrow().status());
+  }
+
+  @Test
+  void runningAbortIsNotStartedAgain() {
+    runSetAbortDao.startAbort(runSetId, 3, STALE_SECONDS);
+    runSetAbortDao.recordAbortRequestSubmitted(runSetId);
+
+    assertEquals(0, runSetAbortDao.startAbort(runSetId, 2, STALE_SECONDS));
+    assertEquals(3, runSetAbortDao.getAbort(runSetId).orElseThrow().runsToAbort());
+  }
+
+  @Test
+  void completeOrStaleAbortIsStartedAgain() {
+    runSetAbortDao.startAbort(runSetId, 3, STALE_SECONDS);
+    runSetAbortDao.recordAbortRequestFailed(runSetId, UUID.randomUUID());
+
+    // Left behind by an instance that went away
+    assertEquals(1, runSetAbortDao.startAbort(runSetId, 2, ALREADY_STALE_SECONDS));
+    RunSetAbort restarted = runSetAbortDao.getAbort(runSetId).orElseThrow();
+    assertEquals(2, restarted.runsToAbort());
+    assertEquals(0, restarted.abortRequestsFailed());
+    assertNull(restarted.failedRunIds());
+
+    runSetAbortDao.completeAbort(runSetId);
+    assertEquals(1, runSetAbortDao.startAbort(runSetId, 1, STALE_SECONDS));
+    assertEquals(
+        RunSetAbortStatus.RUNNING, runSetAbortDao.getAbort(runSetId).orElseThrow().status());
+  }
+
+  @Test
+  void runSetNeverAbortedHasNoProgress() {
+    assertTrue(runSetAbortDao.getAbort(runSetId).isEmpty());
+  }
+}
@@ -6,17 +6,21 @@ import static org.junit.jupiter.api.Assertions.assertThrows;
 import static org.junit.jupiter.api.Assertions.assertTrue;
 
 import bio.terra.cbas.dao.util.ContainerizedDatabaseTest;
+import bio.terra.cbas.dao.util.PageCursor;
 import bio.terra.cbas.models.CbasMethodStatus;
 import bio.terra.cbas.models.CbasRunSetStatus;
 import bio.terra.cbas.models.GithubMethodVersionDetails;
 import bio.terra.cbas.models.Method;
 import bio.terra.cbas.models.MethodVersion;
+import bio.terra.cbas.models.PollableRunSet;
 import bio.terra.cbas.models.RunSet;
 import java.time.OffsetDateTime;
 import java.util.ArrayList;
+import java.util.Comparator;
 import java.util.List;
 import java.util.Optional;
 import java.util.UUID;
+import java.util.stream.Stream;
 import org.junit.jupiter.api.BeforeEach;
 import org.junit.jupiter.api.Test;
 import org.springframework.beans.factory.annotation.Autowired;
@@ -201,4 +205,83 @@ class TestRunSetDao extends ContainerizedDatabaseTest {
     assertEquals(1, response);
     assertThrows(IndexOutOfBoundsException.class, () -> runSetDao.getRunSet(runSet.runSetId()));
   }
+
+  @Test
+  void claimRunSetsToRefresh() {
+    OffsetDateTime now = OffsetDateTime.now();
+    RunSet running = runSetWithStatus(CbasRunSetStatus.RUNNING, now.minusMinutes(1));
+    RunSet canceling = runSetWithStatus(CbasRunSetStatus.CANCELING, now.minusMinutes(5));
+    RunSet complete = runSetWithStatus(CbasRunSetStatus.COMPLETE, now.minusMinutes(10));
+    RunSet refreshedRecently = runSetWithStatus(CbasRunSetStatus.RUNNING, now);
+    runSetDao.createRunSet(running);
+    runSetDao.createRunSet(canceling);
+    runSetDao.createRunSet(complete);
+    runSetDao.createRunSet(refreshedRecently);
+
+    // Only the run sets still in progress are claimed, least recently polled first
+    List<PollableRunSet> claimed = runSetDao.claimRunSetsToRefresh(now.minusSeconds(30), 1);
+    assertEquals(
+        List.of(canceling.runSetId()), claimed.stream().map(PollableRunSet::runSetId).toList());
+    assertEquals(CbasRunSetStatus.CANCELING, claimed.get(0).status());
+
+    // Claimed run sets count as polled, so they are not claimed again
+    assertEquals(
+        List.of(running.runSetId()),
+        runSetDao.claimRunSetsToRefresh(now.minusSeconds(30), 10).stream()
+            .map(PollableRunSet::runSetId)
+            .toList());
+    assertTrue(runSetDao.claimRunSetsToRefresh(now.minusSeconds(30), 10).isEmpty());
+  }
+
+  @Test
+  void getRunSetsPageAfterCursor() {
+    OffsetDateTime now = OffsetDateTime.now();
+    // Two run sets submitted at the same time are ordered by ID
+    RunSet newest1 = runSetWithStatus(CbasRunSetStatus.COMPLETE, now);
+    RunSet newest2 = runSetWithStatus(CbasRunSetStatus.COMPLETE, now);
+    RunSet oldest = runSetWithStatus(CbasRunSetStatus.COMPLETE, now.minusMinutes(1));
+    runSetDao.createRunSet(oldest);
+    runSetDao.createRunSet(newest1);
+    runSetDao.createRunSet(newest2);
+    // Postgres orders UUIDs as their hexadecimal strings
+    List<UUID> newestFirst =
+        new ArrayList<>(
+            Stream.of(newest1.runSetId(), newest2.runSetId())
+                .map(UUID::toString)
+                .sorted(Comparator.reverseOrder())
+                .map(UUID::fromString)
+                .toList());
+    newestFirst.add(oldest.runSetId());
+
+    List<RunSet> firstPage = runSetDao.getRunSets(2, null, false);
+    assertEquals(newestFirst.subList(0, 2), firstPage.stream().map(RunSet::runSetId).toList());
+
+    RunSet lastOfFirstPage = firstPage.get(1);
+    PageCursor after =
+        new PageCursor(lastOfFirstPage.submissionTimestamp(), lastOfFirstPage.runSetId());
+    assertEquals(
+        newestFirst.subList(2, 3),
+        runSetDao.getRunSets(2, after, false).stream().map(RunSet::runSetId).toList());
+  }
+
+  private RunSet runSetWithStatus(CbasRunSetStatus status, OffsetDateTime lastPolled) {
+    return new RunSet(
+        UUID.randomUUID(),
+        methodVersion,
+        "fetch_sra_to_bam workflow",
+        "fetch_sra_to_bam sample submission",
+        false,
+        false,
+        status,
+        lastPolled,
+        lastPolled,
+        lastPolled,
+        0,
+        0,
+        "[]",
+        "[]",
+        "sample",
+        "user-foo",
+        workspaceId);
+  }
 }
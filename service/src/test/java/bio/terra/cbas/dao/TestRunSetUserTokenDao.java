@@ -0,0 +1,152 @@
+package bio.terra.cbas.dao;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import bio.terra.cbas.dao.util.ContainerizedDatabaseTest;
+import bio.terra.cbas.models.CbasMethodStatus;
+import bio.terra.cbas.models.CbasRunSetStatus;
+import bio.terra.cbas.models.Method;
+import bio.terra.cbas.models.MethodVersion;
+import bio.terra.cbas.models.RunSet;
+import bio.terra.cbas.models.RunSetUserToken;
+import java.time.OffsetDateTime;
+import java.util.List;
+import java.util.Map;
+import java.util.Optional;
+import java.util.UUID;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.jdbc.core.namedparam.MapSqlParameterSource;
+import org.springframework.jdbc.core.namedparam.NamedParameterJdbcTemplate;
+
+class TestRunSetUserTokenDao extends ContainerizedDatabaseTest {
+
+  @Autowired RunSetUserTokenDao runSetUserTokenDao;
+  @Autowired RunSetDao runSetDao;
+  @Autowired MethodDao methodDao;
+  @Autowired MethodVersionDao methodVersionDao;
+  @Autowired NamedParameterJdbcTemplate jdbcTemplate;
+
+  private final UUID workspaceId = UUID.randomUUID();
+
+  Method method =
+      new Method(
+          UUID.randomUUID(),
+          "fetch_sra_to_bam",
+          "fetch_sra_to_bam",
+          OffsetDateTime.parse("2023-01-27T19:21:24.563932Z"),
+          null,
+          "Github",
+          workspaceId,
+          Optional.empty(),
+          CbasMethodStatus.ACTIVE);
+
+  MethodVersion methodVersion =
+      new MethodVersion(
+          UUID.randomUUID(),
+          method,
+          "1.0",
+          "fetch_sra_to_bam sample submission",
+          OffsetDateTime.parse("2023-01-27T19:21:24.563932Z"),
+          null,
+          "https://raw.githubusercontent.com/broadinstitute/viral-pipelines/master/pipes/WDL/workflows/fetch_sra_to_bam.wdl",
+          workspaceId,
+          "develop",
+          Optional.empty());
+
+  @BeforeEach
+  void init() {
+    methodDao.createMethod(method);
+    methodVersionDao.createMethodVersion(methodVersion);
+  }
+
+  @Test
+  void storesTokenForNonTerminalRunSetsOfUser() {
+    RunSet running = createRunSet("user-foo", CbasRunSetStatus.RUNNING);
+    RunSet complete = createRunSet("user-foo", CbasRunSetStatus.COMPLETE);
+    RunSet otherUser = createRunSet("user-bar", CbasRunSetStatus.RUNNING);
+
+    assertEquals(1, runSetUserTokenDao.storeUserToken("user-foo", "foo-token"));
+
+    assertEquals(
+        Map.of(running.runSetId(), "foo-token"),
+        runSetUserTokenDao.getUserTokens(
+            List.of(running.runSetId(), complete.runSetId(), otherUser.runSetId())));
+    String storedUserToken =
+        jdbcTemplate.queryForObject(
+            "SELECT user_token FROM run_set_user_token WHERE run_set_id = :run_set_id",
+            new MapSqlParameterSource(RunSetUserToken.RUN_SET_ID_COL, running.runSetId()),
+            String.class);
+    assertFalse(storedUserToken.contains("foo-token"));
+  }
+
+  @Test
+  void newerTokenReplacesOlderToken() {
+    RunSet running = createRunSet("user-foo", CbasRunSetStatus.RUNNING);
+    runSetUserTokenDao.storeUserToken("user-foo", "old-token");
+    jdbcTemplate.update(
+        "UPDATE run_set_user_token SET user_token_expires_timestamp = now() + interval '1 minute'",
+        new MapSqlParameterSource());
+
+    runSetUserTokenDao.storeUserToken("user-foo", "new-token");
+
+    assertEquals(
+        Map.of(running.runSetId(), "new-token"),
+        runSetUserTokenDao.getUserTokens(List.of(running.runSetId())));
+  }
+
+  @Test
+  void expiredTokensAreNotReadAndAreDeleted() {
+    RunSet expired = createRunSet("user-foo", CbasRunSetStatus.RUNNING);
+    RunSet terminal = createRunSet("user-bar", CbasRunSetStatus.RUNNING);
+    RunSet usable = createRunSet("user-baz", CbasRunSetStatus.RUNNING);
+    runSetUserTokenDao.storeUserToken("user-foo", "foo-token");
+    runSetUserTokenDao.storeUserToken("user-bar", "bar-token");
+    runSetUserTokenDao.storeUserToken("user-baz", "baz-token");
+    jdbcTemplate.update(
+        "UPDATE run_set_user_token SET user_token_expires_timestamp = now() - interval '1 minute'"
+            + " WHERE run_set_id = :run_set_id",
+        new MapSqlParameterSource(RunSetUserToken.RUN_SET_ID_COL, expired.runSetId()));
+    runSetDao.updateStateAndRunSetDetails(
+        terminal.runSetId(), CbasRunSetStatus.COMPLETE, 0, 0, OffsetDateTime.now());
+
+    List<UUID> runSetIds = List.of(expired.runSetId(), terminal.runSetId(), usable.runSetId());
+    assertFalse(runSetUserTokenDao.getUserTokens(runSetIds).containsKey(expired.runSetId()));
+
+    assertEquals(2, runSetUserTokenDao.deleteUnusableUserTokens());
+    assertEquals(
+        Map.of(usable.runSetId(), "baz-token"), runSetUserTokenDao.getUserTokens(runSetIds));
+  }
+
+  @Test
+  void noTokensAreReadForNoRunSets() {
+    assertTrue(runSetUserTokenDao.getUserTokens(List.of()).isEmpty());
+  }
+
+  private RunSet createRunSet(String userId, CbasRunSetStatus status) {
+    RunSet runSet =
+        new RunSet(
+            UUID.randomUUID(),
+            methodVersion,
+            "fetch_sra_to_bam workflow",
+            "fetch_sra_to_bam sample submission",
+            false,
+            false,
+            status,
+            OffsetDateTime.now(),
+            OffsetDateTime.now(),
+            OffsetDateTime.now(),
+            0,
+            0,
+            "[]",
+            "[]",
+            "sample",
+            userId,
+            workspaceId);
+    runSetDao.createRunSet(runSet);
+    return runSet;
+  }
+}
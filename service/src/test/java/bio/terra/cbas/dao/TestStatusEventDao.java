@@ -0,0 +1,228 @@
+package bio.terra.cbas.dao;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertNull;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import bio.terra.cbas.dao.util.ContainerizedDatabaseTest;
+import bio.terra.cbas.dao.util.StatusEventCursor;
+import bio.terra.cbas.models.CbasMethodStatus;
+import bio.terra.cbas.models.CbasRunSetStatus;
+import bio.terra.cbas.models.CbasRunStatus;
+import bio.terra.cbas.models.Method;
+import bio.terra.cbas.models.MethodVersion;
+import bio.terra.cbas.models.Run;
+import bio.terra.cbas.models.RunSet;
+import bio.terra.cbas.models.StatusEvent;
+import java.sql.Connection;
+import java.sql.DriverManager;
+import java.time.OffsetDateTime;
+import java.util.List;
+import java.util.Optional;
+import java.util.UUID;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.springframework.beans.factory.annotation.Autowired;
+
+class TestStatusEventDao extends ContainerizedDatabaseTest {
+
+  @Autowired StatusEventDao statusEventDao;
+  @Autowired RunDao runDao;
+  @Autowired RunSetDao runSetDao;
+  @Autowired MethodDao methodDao;
+  @Autowired MethodVersionDao methodVersionDao;
+
+  private final UUID workspaceId = UUID.randomUUID();
+
+  Method method =
+      new Method(
+          UUID.randomUUID(),
+          "fetch_sra_to_bam",
+          "fetch_sra_to_bam",
+          OffsetDateTime.parse("2023-01-27T19:21:24.563932Z"),
+          null,
+          "Github",
+          workspaceId,
+          Optional.empty(),
+          CbasMethodStatus.ACTIVE);
+
+  MethodVersion methodVersion =
+      new MethodVersion(
+          UUID.randomUUID(),
+          method,
+          "1.0",
+          "fetch_sra_to_bam sample submission",
+          OffsetDateTime.parse("2023-01-27T19:21:24.563932Z"),
+          null,
+          "https://raw.githubusercontent.com/broadinstitute/viral-pipelines/master/pipes/WDL/workflows/fetch_sra_to_bam.wdl",
+          workspaceId,
+          "develop",
+          Optional.empty());
+
+  @BeforeEach
+  void init() {
+    methodDao.createMethod(method);
+    methodVersionDao.createMethodVersion(methodVersion);
+  }
+
+  private RunSet createRunSet() {
+    OffsetDateTime submissionTimestamp = OffsetDateTime.now();
+    RunSet runSet =
+        new RunSet(
+            UUID.randomUUID(),
+            methodVersion,
+            "fetch_sra_to_bam workflow",
+            "fetch_sra_to_bam sample submission",
+            false,
+            false,
+            CbasRunSetStatus.QUEUED,
+            submissionTimestamp,
+            submissionTimestamp,
+            submissionTimestamp,
+            0,
+            0,
+            "[]",
+            "[]",
+            "sample",
+            "user-foo",
+            workspaceId);
+    runSetDao.createRunSet(runSet);
+    return runSet;
+  }
+
+  private Run createRun(RunSet runSet) {
+    OffsetDateTime submissionTimestamp = OffsetDateTime.now();
+    Run run =
+        new Run(
+            UUID.randomUUID(),
+            null,
+            runSet,
+            UUID.randomUUID().toString(),
+            submissionTimestamp,
+            CbasRunStatus.QUEUED,
+            submissionTimestamp,
+            submissionTimestamp,
+            null);
+    runDao.createRun(run);
+    return run;
+  }
+
+  @Test
+  void recordsStatusChangesOfRunsAndRunSets() {
+    StatusEventCursor start = statusEventDao.getCurrentCursor();
+    RunSet runSet = createRunSet();
+    Run run = createRun(runSet);
+
+    // Only updates that change a status are recorded
+    runDao.updateRunStatus(run.runId(), CbasRunStatus.QUEUED, OffsetDateTime.now());
+    runDao.updateRunStatus(run.runId(), CbasRunStatus.RUNNING, OffsetDateTime.now());
+    runSetDao.updateStateAndRunSetDetails(
+        runSet.runSetId(), CbasRunSetStatus.QUEUED, 1, 0, OffsetDateTime.now());
+    runSetDao.updateStateAndRunSetDetails(
+        runSet.runSetId(), CbasRunSetStatus.RUNNING, 1, 0, OffsetDateTime.now());
+
+    List<StatusEvent> events = statusEventDao.getEventsAfter(null, start, 10);
+
+    assertEquals(3, events.size());
+    assertNull(events.get(0).runId());
+    assertEquals(CbasRunSetStatus.QUEUED.toString(), events.get(0).status());
+    assertEquals(run.runId(), events.get(1).runId());
+    assertEquals(CbasRunStatus.RUNNING.toString(), events.get(1).status());
+    assertNull(events.get(2).runId());
+    assertEquals(CbasRunSetStatus.RUNNING.toString(), events.get(2).status());
+    events.forEach(event -> assertEquals(runSet.runSetId(), event.runSetId()));
+  }
+
+  @Test
+  void readsEventsAfterCursor() {
+    StatusEventCursor start = statusEventDao.getCurrentCursor();
+    RunSet earlierRunSet = createRunSet();
+    StatusEventCursor afterEarlierRunSet = statusEventDao.getCurrentCursor();
+    RunSet laterRunSet = createRunSet();
+    createRunSet();
+
+    List<StatusEvent> laterEvents = statusEventDao.getEventsAfter(null, afterEarlierRunSet, 10);
+    assertEquals(2, laterEvents.size());
+    assertEquals(laterRunSet.runSetId(), laterEvents.get(0).runSetId());
+
+    List<StatusEvent> firstEvent = statusEventDao.getEventsAfter(null, start, 1);
+    assertEquals(earlierRunSet.runSetId(), firstEvent.get(0).runSetId());
+
+    StatusEvent lastEvent = laterEvents.get(1);
+    assertTrue(
+        statusEventDao
+            .getEventsAfter(
+                null, new StatusEventCursor(lastEvent.transactionId(), lastEvent.eventId()), 10)
+            .isEmpty());
+  }
+
+  @Test
+  void readsEventsOfOneRunSet() {
+    StatusEventCursor start = statusEventDao.getCurrentCursor();
+    RunSet runSet = createRunSet();
+    Run run = createRun(runSet);
+    createRunSet();
+    runDao.updateRunStatus(run.runId(), CbasRunStatus.RUNNING, OffsetDateTime.now());
+
+    List<StatusEvent> events = statusEventDao.getEventsAfter(runSet.runSetId(), start, 10);
+
+    assertEquals(2, events.size());
+    events.forEach(event -> assertEquals(runSet.runSetId(), event.runSetId()));
+  }
+
+  @Test
+  void holdsBackEventsUntilEarlierTransactionsFinish() throws Exception {
+    // In separate run sets, so that the updates do not wait on the same run status counters
+    Run slowRun = createRun(createRunSet());
+    Run fastRun = createRun(createRunSet());
+    StatusEventCursor afterRunSetsCreated = statusEventDao.getCurrentCursor();
+
+    try (Connection connection =
+        DriverManager.getConnection(
+            postgres.getJdbcUrl(), postgres.getUsername(), postgres.getPassword())) {
+      connection.setAutoCommit(false);
+      connection
+          .createStatement()
+          .executeUpdate(
+              "UPDATE run SET status = 'RUNNING' WHERE run_id = '%s'".formatted(slowRun.runId()));
+
+      // The event of a later transaction that commits first is not read before the event of the
+      // earlier one, or a reader would move past the earlier event before it is committed
+      runDao.updateRunStatus(fastRun.runId(), CbasRunStatus.RUNNING, OffsetDateTime.now());
+      assertTrue(statusEventDao.getEventsAfter(null, afterRunSetsCreated, 10).isEmpty());
+      assertTrue(statusEventDao.getOldestHeldBackEventTimestamp().isPresent());
+
+      connection.commit();
+    }
+
+    List<StatusEvent> events = statusEventDao.getEventsAfter(null, afterRunSetsCreated, 10);
+    assertEquals(
+        List.of(slowRun.runId(), fastRun.runId()),
+        events.stream().map(StatusEvent::runId).toList());
+    assertTrue(statusEventDao.getOldestHeldBackEventTimestamp().isEmpty());
+  }
+
+  @Test
+  void latestCursorIsAtLastReadableEvent() {
+    StatusEventCursor start = statusEventDao.getCurrentCursor();
+    createRunSet();
+    createRunSet();
+
+    List<StatusEvent> events = statusEventDao.getEventsAfter(null, start, 10);
+    StatusEvent lastEvent = events.get(events.size() - 1);
+    assertEquals(
+        Optional.of(new StatusEventCursor(lastEvent.transactionId(), lastEvent.eventId())),
+        statusEventDao.getLatestCursor());
+  }
+
+  @Test
+  void deletesEventsRecordedBefore() {
+    StatusEventCursor start = statusEventDao.getCurrentCursor();
+    createRunSet();
+    createRunSet();
+
+    assertEquals(0, statusEventDao.deleteEventsBefore(OffsetDateTime.now().minusMinutes(1)));
+    assertEquals(2, statusEventDao.deleteEventsBefore(OffsetDateTime.now().plusMinutes(1)));
+    assertTrue(statusEventDao.getEventsAfter(null, start, 10).isEmpty());
+  }
+}
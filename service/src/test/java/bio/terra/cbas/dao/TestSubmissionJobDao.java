@@ -0,0 +1,305 @@
+package bio.terra.cbas.dao;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertNotEquals;
+import static org.junit.jupiter.api.Assertions.assertNull;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import bio.terra.cbas.dao.util.ContainerizedDatabaseTest;
+import bio.terra.cbas.models.CbasMethodStatus;
+import bio.terra.cbas.models.CbasRunSetStatus;
+import bio.terra.cbas.models.Method;
+import bio.terra.cbas.models.MethodVersion;
+import bio.terra.cbas.models.RunSet;
+import bio.terra.cbas.models.SubmissionJob;
+import bio.terra.cbas.models.SubmissionJobStatus;
+import java.time.OffsetDateTime;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Optional;
+import java.util.Set;
+import java.util.UUID;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.stream.IntStream;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.jdbc.core.namedparam.MapSqlParameterSource;
+import org.springframework.jdbc.core.namedparam.NamedParameterJdbcTemplate;
+
+class TestSubmissionJobDao extends ContainerizedDatabaseTest {
+
+  @Autowired SubmissionJobDao submissionJobDao;
+  @Autowired RunSetDao runSetDao;
+  @Autowired MethodDao methodDao;
+  @Autowired MethodVersionDao methodVersionDao;
+  @Autowired NamedParameterJdbcTemplate jdbcTemplate;
+
+  private static final int LEASE_SECONDS = 120;
+  // Leases taken with this duration have already expired
+  private static final int EXPIRED_LEASE_SECONDS = -1;
+
+  private final UUID workspaceId = UUID.randomUUID();
+
+  Method method =
+      new Method(
+          UUID.randomUUID(),
+          "fetch_sra_to_bam",
+          "fetch_sra_to_bam",
+          OffsetDateTime.parse("2023-01-27T19:21:24.563932Z"),
+          null,
+          "Github",
+          workspaceId,
+          Optional.empty(),
+          CbasMethodStatus.ACTIVE);
+
+  MethodVersion methodVersion =
+      new MethodVersion(
+          UUID.randomUUID(),
+          method,
+          "1.0",
+          "fetch_sra_to_bam sample submission",
+          OffsetDateTime.parse("2023-01-27T19:21:24.563932Z"),
+          null,
+          "https://raw.githubusercontent.com/broadinstitute/viral-pipelines/master/pipes/WDL/workflows/fetch_sra_to_bam.wdl",
+          workspaceId,
+          "develop",
+          Optional.empty());
+
+  @BeforeEach
+  void init() {
+    methodDao.createMethod(method);
+    methodVersionDao.createMethodVersion(methodVersion);
+  }
+
+  private UUID queueRunSet() {
+    return queueRunSet(false);
+  }
+
+  private UUID queueRunSet(boolean largeRunSet) {
+    UUID runSetId = UUID.randomUUID();
+    OffsetDateTime submissionTimestamp = OffsetDateTime.now();
+    runSetDao.createRunSet(
+        new RunSet(
+            runSetId,
+            methodVersion,
+            "fetch_sra_to_bam workflow",
+            "fetch_sra_to_bam sample submission",
+            false,
+            false,
+            CbasRunSetStatus.QUEUED,
+            submissionTimestamp,
+            submissionTimestamp,
+            submissionTimestamp,
+            0,
+            0,
+            "[]",
+            "[]",
+            "sample",
+            "user-foo",
+            workspaceId));
+    submissionJobDao.createJob(runSetId, "{}", methodVersion.url(), "user-token", largeRunSet, 0);
+    return runSetId;
+  }
+
+  @Test
+  void claimsOldestQueuedJob() {
+    UUID olderRunSetId = queueRunSet();
+    UUID newerRunSetId = queueRunSet();
+
+    SubmissionJob claimed = submissionJobDao.claimNextJob("worker-1", LEASE_SECONDS).orElseThrow();
+
+    assertEquals(olderRunSetId, claimed.runSetId());
+    assertEquals(SubmissionJobStatus.RUNNING, claimed.status());
+    assertEquals("worker-1", claimed.leaseOwner());
+    assertEquals(1, claimed.attempts());
+    assertEquals("user-token", claimed.userToken());
+    assertTrue(claimed.leaseExpiresTimestamp().isAfter(OffsetDateTime.now()));
+
+    assertEquals(
+        newerRunSetId,
+        submissionJobDao.claimNextJob("worker-2", LEASE_SECONDS).orElseThrow().runSetId());
+    assertTrue(submissionJobDao.claimNextJob("worker-3", LEASE_SECONDS).isEmpty());
+  }
+
+  @Test
+  void concurrentClaimsNeverShareAJob() throws Exception {
+    int jobCount = 20;
+    Set<UUID> queued =
+        Set.copyOf(IntStream.range(0, jobCount).mapToObj(i -> queueRunSet()).toList());
+
+    ExecutorService executor = Executors.newFixedThreadPool(4);
+    List<Callable<List<UUID>>> workers = new ArrayList<>();
+    for (int i = 0; i < 4; i++) {
+      String workerId = "worker-" + i;
+      workers.add(
+          () -> {
+            List<UUID> claimed = new ArrayList<>();
+            Optional<SubmissionJob> job;
+            while ((job = submissionJobDao.claimNextJob(workerId, LEASE_SECONDS)).isPresent()) {
+              claimed.add(job.get().runSetId());
+            }
+            return claimed;
+          });
+    }
+    List<UUID> allClaimed = new ArrayList<>();
+    for (Future<List<UUID>> claimed : executor.invokeAll(workers)) {
+      allClaimed.addAll(claimed.get());
+    }
+    executor.shutdown();
+
+    assertEquals(jobCount, allClaimed.size());
+    assertEquals(queued, Set.copyOf(allClaimed));
+  }
+
+  @Test
+  void expiredLeaseIsClaimedAgain() {
+    UUID runSetId = queueRunSet();
+    submissionJobDao.claimNextJob("worker-1", EXPIRED_LEASE_SECONDS);
+
+    SubmissionJob reclaimed =
+        submissionJobDao.claimNextJob("worker-2", LEASE_SECONDS).orElseThrow();
+
+    assertEquals(runSetId, reclaimed.runSetId());
+    assertEquals("worker-2", reclaimed.leaseOwner());
+    assertEquals(2, reclaimed.attempts());
+
+    // The previous owner can no longer record progress or finish the job
+    assertEquals(0, submissionJobDao.recordBatchCompleted(runSetId, "worker-1", LEASE_SECONDS));
+    assertEquals(0, submissionJobDao.completeJob(runSetId, "worker-1"));
+    assertEquals(0, submissionJobDao.failJob(runSetId, "worker-1", "too late"));
+  }
+
+  @Test
+  void renewedLeaseIsNotClaimedAgain() {
+    UUID runSetId = queueRunSet();
+    submissionJobDao.claimNextJob("worker-1", EXPIRED_LEASE_SECONDS);
+
+    assertEquals(1, submissionJobDao.renewLeases("worker-1", Set.of(runSetId), LEASE_SECONDS));
+    assertEquals(0, submissionJobDao.renewLeases("worker-2", Set.of(runSetId), LEASE_SECONDS));
+    assertEquals(0, submissionJobDao.renewLeases("worker-1", Set.of(), LEASE_SECONDS));
+
+    assertTrue(submissionJobDao.claimNextJob("worker-2", LEASE_SECONDS).isEmpty());
+  }
+
+  @Test
+  void recordsBatchProgress() {
+    UUID runSetId = queueRunSet();
+    submissionJobDao.claimNextJob("worker-1", LEASE_SECONDS);
+
+    assertEquals(1, submissionJobDao.recordBatchCompleted(runSetId, "worker-1", LEASE_SECONDS));
+    assertEquals(1, submissionJobDao.recordBatchCompleted(runSetId, "worker-1", LEASE_SECONDS));
+
+    assertEquals(2, submissionJobDao.getJob(runSetId).orElseThrow().batchesCompleted());
+  }
+
+  @Test
+  void recordsRunsRegisteredForLargeRunSet() {
+    UUID runSetId = queueRunSet(true);
+    SubmissionJob claimed = submissionJobDao.claimNextJob("worker-1", LEASE_SECONDS).orElseThrow();
+    assertTrue(claimed.largeRunSet());
+    assertEquals(0, claimed.recordsRegistered());
+
+    assertEquals(
+        1, submissionJobDao.recordRunsRegistered(runSetId, "worker-1", 1000, LEASE_SECONDS));
+    assertEquals(
+        1, submissionJobDao.recordRunsRegistered(runSetId, "worker-1", 500, LEASE_SECONDS));
+    assertEquals(
+        0, submissionJobDao.recordRunsRegistered(runSetId, "worker-2", 500, LEASE_SECONDS));
+
+    assertEquals(1500, submissionJobDao.getJob(runSetId).orElseThrow().recordsRegistered());
+  }
+
+  @Test
+  void recordsRunSetRequestWhileHoldingTheLease() {
+    UUID runSetId = queueRunSet(true);
+    submissionJobDao.claimNextJob("worker-1", LEASE_SECONDS);
+
+    assertEquals(
+        0, submissionJobDao.recordRunSetRequest(runSetId, "worker-2", "{\"b\":2}", LEASE_SECONDS));
+    assertEquals(
+        1, submissionJobDao.recordRunSetRequest(runSetId, "worker-1", "{\"a\":1}", LEASE_SECONDS));
+
+    assertEquals("{\"a\":1}", submissionJobDao.getJob(runSetId).orElseThrow().runSetRequest());
+  }
+
+  @Test
+  void onlyQueuedAndRunningJobsArePending() {
+    UUID runSetId = queueRunSet();
+    assertTrue(submissionJobDao.hasPendingJob(runSetId));
+
+    submissionJobDao.claimNextJob("worker-1", LEASE_SECONDS);
+    assertTrue(submissionJobDao.hasPendingJob(runSetId));
+
+    submissionJobDao.failJob(runSetId, "worker-1", "Something went wrong");
+    assertFalse(submissionJobDao.hasPendingJob(runSetId));
+    assertFalse(submissionJobDao.hasPendingJob(UUID.randomUUID()));
+  }
+
+  @Test
+  void completedJobIsRemoved() {
+    UUID runSetId = queueRunSet();
+    submissionJobDao.claimNextJob("worker-1", LEASE_SECONDS);
+
+    assertEquals(1, submissionJobDao.completeJob(runSetId, "worker-1"));
+
+    assertTrue(submissionJobDao.getJob(runSetId).isEmpty());
+  }
+
+  @Test
+  void failedJobIsNeverClaimedAgain() {
+    UUID runSetId = queueRunSet();
+    submissionJobDao.claimNextJob("worker-1", LEASE_SECONDS);
+
+    assertEquals(1, submissionJobDao.failJob(runSetId, "worker-1", "Something went wrong"));
+
+    SubmissionJob failed = submissionJobDao.getJob(runSetId).orElseThrow();
+    assertEquals(SubmissionJobStatus.FAILED, failed.status());
+    assertEquals("Something went wrong", failed.errorMessages());
+    assertNull(failed.userToken());
+    assertNull(failed.leaseOwner());
+    assertTrue(submissionJobDao.claimNextJob("worker-2", LEASE_SECONDS).isEmpty());
+  }
+
+  @Test
+  void jobIsDeletedWithItsRunSet() {
+    UUID runSetId = queueRunSet();
+
+    runSetDao.deleteRunSet(runSetId);
+
+    assertTrue(submissionJobDao.getJob(runSetId).isEmpty());
+  }
+
+  @Test
+  void userTokenIsNotStoredAsItIs() {
+    UUID runSetId = queueRunSet();
+
+    String storedUserToken =
+        jdbcTemplate.queryForObject(
+            "SELECT user_token FROM submission_job WHERE run_set_id = :run_set_id",
+            new MapSqlParameterSource(SubmissionJob.RUN_SET_ID_COL, runSetId),
+            String.class);
+
+    assertNotEquals("user-token", storedUserToken);
+    assertFalse(storedUserToken.contains("user-token"));
+    assertEquals("user-token", submissionJobDao.getJob(runSetId).orElseThrow().userToken());
+  }
+
+  @Test
+  void expiredUserTokenIsNotRead() {
+    UUID runSetId = queueRunSet();
+    jdbcTemplate.update(
+        "UPDATE submission_job SET user_token_expires_timestamp = now() - interval '1 minute'"
+            + " WHERE run_set_id = :run_set_id",
+        new MapSqlParameterSource(SubmissionJob.RUN_SET_ID_COL, runSetId));
+
+    SubmissionJob claimed = submissionJobDao.claimNextJob("worker-1", LEASE_SECONDS).orElseThrow();
+
+    assertEquals(runSetId, claimed.runSetId());
+    assertNull(claimed.userToken());
+  }
+}
@@ -68,6 +68,7 @@ public abstract class ContainerizedDatabaseTest {
                 + "TRUNCATE TABLE run_set CASCADE; "
                 + "TRUNCATE TABLE method CASCADE; "
                 + "TRUNCATE TABLE github_method_details CASCADE; "
-                + "TRUNCATE TABLE github_method_version_details CASCADE; ");
+                + "TRUNCATE TABLE github_method_version_details CASCADE; "
+                + "TRUNCATE TABLE run_callback; ");
   }
 }
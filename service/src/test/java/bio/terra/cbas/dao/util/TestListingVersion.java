@@ -0,0 +1,38 @@
+package bio.terra.cbas.dao.util;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertNotEquals;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import java.time.OffsetDateTime;
+import org.junit.jupiter.api.Test;
+
+class TestListingVersion {
+
+  private final OffsetDateTime modified = OffsetDateTime.parse("2023-01-27T19:21:24.563932Z");
+  private final OffsetDateTime polled = OffsetDateTime.parse("2023-01-27T19:22:00Z");
+  private final ListingVersion version = new ListingVersion(3, modified, polled);
+
+  @Test
+  void eTagIsWeakAndChangesWithTheVersion() {
+    assertTrue(version.eTag().startsWith("W/\""));
+    assertEquals(version.eTag(), new ListingVersion(3, modified, polled).eTag());
+    assertNotEquals(version.eTag(), new ListingVersion(2, modified, polled).eTag());
+    assertNotEquals(version.eTag(), new ListingVersion(3, modified.plusNanos(1000), polled).eTag());
+    assertNotEquals(version.eTag(), new ListingVersion(3, modified, polled.plusSeconds(1)).eTag());
+  }
+
+  @Test
+  void matchesIfNoneMatchWeakly() {
+    String opaqueTag = version.eTag().substring(2);
+
+    assertTrue(version.isMatchedBy(version.eTag()));
+    assertTrue(version.isMatchedBy(opaqueTag));
+    assertTrue(version.isMatchedBy("\"other\", " + version.eTag()));
+    assertTrue(version.isMatchedBy("*"));
+    assertFalse(version.isMatchedBy(null));
+    assertFalse(version.isMatchedBy("\"other\""));
+    assertFalse(version.isMatchedBy(new ListingVersion(0, null, null).eTag()));
+  }
+}
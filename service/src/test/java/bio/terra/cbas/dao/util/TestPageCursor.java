@@ -0,0 +1,43 @@
+package bio.terra.cbas.dao.util;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertNull;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+
+import bio.terra.cbas.common.exceptions.InvalidPageCursorException;
+import java.nio.charset.StandardCharsets;
+import java.time.OffsetDateTime;
+import java.util.Base64;
+import java.util.UUID;
+import org.junit.jupiter.api.Test;
+
+class TestPageCursor {
+
+  @Test
+  void decodesEncodedCursor() {
+    PageCursor cursor =
+        new PageCursor(OffsetDateTime.parse("2023-01-27T19:21:24.563932Z"), UUID.randomUUID());
+
+    assertEquals(cursor, PageCursor.decode(cursor.encode()));
+  }
+
+  @Test
+  void decodesNullAsFirstPage() {
+    assertNull(PageCursor.decode(null));
+  }
+
+  @Test
+  void rejectsInvalidCursors() {
+    String notBase64 = "not a cursor!";
+    String noSeparator =
+        Base64.getUrlEncoder()
+            .encodeToString("2023-01-27T19:21:24Z".getBytes(StandardCharsets.UTF_8));
+    String notATimestamp =
+        Base64.getUrlEncoder()
+            .encodeToString(("yesterday|" + UUID.randomUUID()).getBytes(StandardCharsets.UTF_8));
+
+    assertThrows(InvalidPageCursorException.class, () -> PageCursor.decode(notBase64));
+    assertThrows(InvalidPageCursorException.class, () -> PageCursor.decode(noSeparator));
+    assertThrows(InvalidPageCursorException.class, () -> PageCursor.decode(notATimestamp));
+  }
+}
@@ -0,0 +1,35 @@
+package bio.terra.cbas.dao.util;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import bio.terra.cbas.common.exceptions.InvalidStatusEventIdException;
+import org.junit.jupiter.api.Test;
+
+class TestStatusEventCursor {
+
+  @Test
+  void decodesEncodedCursor() {
+    StatusEventCursor cursor = new StatusEventCursor(4294967296L, 12);
+
+    assertEquals(cursor, StatusEventCursor.decode(cursor.encode()));
+  }
+
+  @Test
+  void rejectsInvalidEventIds() {
+    assertThrows(InvalidStatusEventIdException.class, () -> StatusEventCursor.decode("12"));
+    assertThrows(InvalidStatusEventIdException.class, () -> StatusEventCursor.decode("a-12"));
+    assertThrows(InvalidStatusEventIdException.class, () -> StatusEventCursor.decode("12-"));
+  }
+
+  @Test
+  void ordersByTransactionThenEvent() {
+    StatusEventCursor cursor = new StatusEventCursor(100, 7);
+
+    assertTrue(cursor.compareTo(new StatusEventCursor(100, 8)) < 0);
+    assertTrue(cursor.compareTo(new StatusEventCursor(101, 1)) < 0);
+    assertTrue(cursor.compareTo(new StatusEventCursor(99, 9)) > 0);
+    assertEquals(0, cursor.compareTo(new StatusEventCursor(100, 7)));
+  }
+}
@@ -0,0 +1,94 @@
+package bio.terra.cbas.dao.util;
+
+import static java.nio.charset.StandardCharsets.UTF_8;
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertNotEquals;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import bio.terra.cbas.config.UserTokenStorageConfiguration;
+import java.time.Instant;
+import java.time.OffsetDateTime;
+import java.time.ZoneOffset;
+import java.util.Base64;
+import java.util.Optional;
+import org.junit.jupiter.api.Test;
+
+class TestUserTokenEncryption {
+
+  private static final String KEY = Base64.getEncoder().encodeToString(new byte[32]);
+
+  private final UserTokenEncryption userTokenEncryption =
+      new UserTokenEncryption(new UserTokenStorageConfiguration(KEY, 3600), true);
+
+  @Test
+  void decryptsEncryptedToken() {
+    String encrypted = userTokenEncryption.encrypt("user-token");
+
+    assertNotEquals("user-token", encrypted);
+    assertNotEquals(encrypted, userTokenEncryption.encrypt("user-token"));
+    assertEquals(Optional.of("user-token"), userTokenEncryption.decrypt(encrypted));
+  }
+
+  @Test
+  void cannotDecryptWithAnotherKey() {
+    String otherKey = Base64.getEncoder().encodeToString(new byte[16]);
+    UserTokenEncryption otherInstance =
+        new UserTokenEncryption(new UserTokenStorageConfiguration(otherKey, 3600), true);
+
+    assertEquals(Optional.empty(), otherInstance.decrypt(userTokenEncryption.encrypt("token")));
+    assertEquals(Optional.empty(), userTokenEncryption.decrypt("user-token"));
+  }
+
+  @Test
+  void requiresKeyWhenTokensAreStored() {
+    UserTokenStorageConfiguration configuration = new UserTokenStorageConfiguration("", 3600);
+
+    assertThrows(IllegalStateException.class, () -> new UserTokenEncryption(configuration, true));
+  }
+
+  @Test
+  void cannotEncryptWithoutKey() {
+    UserTokenEncryption withoutKey =
+        new UserTokenEncryption(new UserTokenStorageConfiguration("", 3600), false);
+
+    assertThrows(IllegalStateException.class, () -> withoutKey.encrypt("user-token"));
+    assertEquals(Optional.empty(), withoutKey.decrypt(userTokenEncryption.encrypt("user-token")));
+  }
+
+  @Test
+  void rejectsKeyOfInvalidLength() {
+    UserTokenStorageConfiguration configuration =
+        new UserTokenStorageConfiguration(Base64.getEncoder().encodeToString(new byte[7]), 3600);
+
+    assertThrows(
+        IllegalArgumentException.class, () -> new UserTokenEncryption(configuration, true));
+  }
+
+  @Test
+  void expiryIsReadFromJwt() {
+    long exp = Instant.now().plusSeconds(600).getEpochSecond();
+
+    assertEquals(
+        OffsetDateTime.ofInstant(Instant.ofEpochSecond(exp), ZoneOffset.UTC),
+        userTokenEncryption.expiry(jwt("{\"exp\":%d}".formatted(exp))));
+  }
+
+  @Test
+  void expiryIsCappedByMaxAge() {
+    long exp = Instant.now().plusSeconds(86400).getEpochSecond();
+    OffsetDateTime latestExpiry = OffsetDateTime.now().plusSeconds(3601);
+    String longLivedToken = jwt("{\"exp\":%d}".formatted(exp));
+
+    assertTrue(userTokenEncryption.expiry(longLivedToken).isBefore(latestExpiry));
+    assertTrue(userTokenEncryption.expiry("opaque-token").isBefore(latestExpiry));
+  }
+
+  private static String jwt(String payload) {
+    Base64.Encoder encoder = Base64.getUrlEncoder().withoutPadding();
+    return encoder.encodeToString("{\"alg\":\"none\"}".getBytes(UTF_8))
+        + "."
+        + encoder.encodeToString(payload.getBytes(UTF_8))
+        + ".signature";
+  }
+}
@@ -0,0 +1,156 @@
+package bio.terra.cbas.dependencies.common;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertNotSame;
+import static org.junit.jupiter.api.Assertions.assertSame;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import bio.terra.cbas.common.MicrometerMetrics;
+import bio.terra.cbas.config.ConnectionPoolConfiguration;
+import bio.terra.cbas.config.CromwellServerConfiguration;
+import bio.terra.cbas.config.LeonardoServerConfiguration;
+import bio.terra.cbas.dependencies.leonardo.LeonardoClient;
+import bio.terra.cbas.dependencies.wes.CromwellClient;
+import bio.terra.common.iam.BearerToken;
+import cromwell.client.ApiClient;
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import java.lang.management.ManagementFactory;
+import java.time.Duration;
+import java.util.List;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.function.Supplier;
+import okhttp3.OkHttpClient;
+import org.junit.jupiter.api.Test;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+class TestApiClientCache {
+
+  private static final Logger logger = LoggerFactory.getLogger(TestApiClientCache.class);
+
+  private static final String BASE_URI = "http://localhost:8000/cromwell";
+
+  private record TestApiClient(String baseUri, String accessToken) {}
+
+  private final AtomicInteger clientsBuilt = new AtomicInteger();
+  private final ApiClientCache<TestApiClient> apiClients =
+      new ApiClientCache<>(
+          (baseUri, accessToken) -> {
+            clientsBuilt.incrementAndGet();
+            return new TestApiClient(baseUri, accessToken);
+          });
+
+  @Test
+  void reusesClientOfBaseUriAndAccessToken() {
+    TestApiClient apiClient = apiClients.getApiClient(BASE_URI, "token");
+
+    assertSame(apiClient, apiClients.getApiClient(BASE_URI, "token"));
+    assertEquals(new TestApiClient(BASE_URI, "token"), apiClient);
+    assertEquals(1, clientsBuilt.get());
+  }
+
+  @Test
+  void buildsClientPerAccessToken() {
+    TestApiClient unauthenticatedClient = apiClients.getApiClient(BASE_URI);
+    TestApiClient userClient = apiClients.getApiClient(BASE_URI, "token");
+    TestApiClient otherUserClient = apiClients.getApiClient(BASE_URI, "other-token");
+
+    assertNotSame(unauthenticatedClient, userClient);
+    assertNotSame(userClient, otherUserClient);
+    assertSame(unauthenticatedClient, apiClients.getApiClient(BASE_URI));
+    assertEquals(3, clientsBuilt.get());
+  }
+
+  @Test
+  void buildsClientPerBaseUri() {
+    TestApiClient apiClient = apiClients.getApiClient(BASE_URI, "token");
+
+    assertNotSame(apiClient, apiClients.getApiClient("http://localhost:8001/cromwell", "token"));
+    assertEquals(2, clientsBuilt.get());
+  }
+
+  @Test
+  void leonardoClientsShareHttpClient() {
+    LeonardoClient leonardoClient =
+        new LeonardoClient(
+            new LeonardoServerConfiguration(
+                BASE_URI, List.of(), List.of(), Duration.ofMinutes(10), false));
+
+    OkHttpClient httpClient = leonardoClient.getUnauthorizedApiClient().getHttpClient();
+
+    assertNotSame(leonardoClient.getApiClient("token"), leonardoClient.getApiClient("other-token"));
+    assertSame(httpClient, leonardoClient.getApiClient("token").getHttpClient());
+    assertSame(httpClient, leonardoClient.getApiClient("other-token").getHttpClient());
+  }
+
+  @Test
+  void rethrowsFailureToBuildClient() {
+    ApiClientCache<TestApiClient> failingApiClients =
+        new ApiClientCache<>(
+            (baseUri, accessToken) -> {
+              throw new IllegalArgumentException("Invalid base URI");
+            });
+
+    assertThrows(IllegalArgumentException.class, () -> failingApiClients.getApiClient(BASE_URI));
+  }
+
+  /**
+   * Compares building a Cromwell client for every request, as {@link CromwellClient} used to, with
+   * getting it from the cache. The numbers are logged; only the allocations are asserted on, since
+   * timings depend on the machine running the tests.
+   */
+  @Test
+  void cachedCromwellClientIsCheaperThanNewClient() {
+    CromwellClient cromwellClient =
+        new CromwellClient(
+            new CromwellServerConfiguration(BASE_URI, false, null, false),
+            null,
+            new HttpConnectionPools(
+                new ConnectionPoolConfiguration(false, 5, 30, 1),
+                new MicrometerMetrics(new SimpleMeterRegistry())));
+    BearerToken userToken = new BearerToken("token");
+
+    Measurement newClient =
+        measure(
+            () -> {
+              ApiClient apiClient = cromwellClient.setupApiClient(new ApiClient());
+              apiClient.setBasePath(BASE_URI);
+              apiClient.setAccessToken(userToken.getToken());
+              return apiClient;
+            });
+    Measurement cachedClient = measure(() -> cromwellClient.getAuthReadApiClient(userToken));
+
+    logger.info(
+        "Cromwell API client per request: new {} ns and {} bytes, cached {} ns and {} bytes",
+        newClient.nanosPerCall(),
+        newClient.bytesPerCall(),
+        cachedClient.nanosPerCall(),
+        cachedClient.bytesPerCall());
+    assertSame(
+        cromwellClient.getAuthReadApiClient(userToken),
+        cromwellClient.getAuthReadApiClient(userToken));
+    assertTrue(cachedClient.bytesPerCall() < newClient.bytesPerCall());
+  }
+
+  private record Measurement(long nanosPerCall, long bytesPerCall) {}
+
+  private static Measurement measure(Supplier<ApiClient> newApiClient) {
+    int warmupCalls = 500;
+    int measuredCalls = 2000;
+    com.sun.management.ThreadMXBean threadMXBean =
+        (com.sun.management.ThreadMXBean) ManagementFactory.getThreadMXBean();
+
+    for (int i = 0; i < warmupCalls; i++) {
+      newApiClient.get();
+    }
+    long startBytes = threadMXBean.getCurrentThreadAllocatedBytes();
+    long startNanos = System.nanoTime();
+    for (int i = 0; i < measuredCalls; i++) {
+      newApiClient.get();
+    }
+    long elapsedNanos = System.nanoTime() - startNanos;
+    long allocatedBytes = threadMXBean.getCurrentThreadAllocatedBytes() - startBytes;
+    return new Measurement(elapsedNanos / measuredCalls, allocatedBytes / measuredCalls);
+  }
+}
@@ -0,0 +1,158 @@
+package bio.terra.cbas.dependencies.common;
+
+import static java.nio.charset.StandardCharsets.UTF_8;
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertSame;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import bio.terra.cbas.common.MicrometerMetrics;
+import bio.terra.cbas.config.ConnectionPoolConfiguration;
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import java.io.BufferedReader;
+import java.io.IOException;
+import java.io.InputStreamReader;
+import java.io.OutputStream;
+import java.net.InetAddress;
+import java.net.ServerSocket;
+import java.net.Socket;
+import java.util.concurrent.atomic.AtomicInteger;
+import okhttp3.MediaType;
+import okhttp3.OkHttpClient;
+import okhttp3.Request;
+import okhttp3.RequestBody;
+import okhttp3.Response;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+
+class TestHttpConnectionPools {
+
+  private SimpleMeterRegistry meterRegistry;
+  private HttpConnectionPools httpConnectionPools;
+
+  private ServerSocket serverSocket;
+  private final AtomicInteger connectionsAccepted = new AtomicInteger();
+
+  @BeforeEach
+  void init() throws IOException {
+    meterRegistry = new SimpleMeterRegistry();
+    httpConnectionPools =
+        new HttpConnectionPools(
+            new ConnectionPoolConfiguration(true, 5, 30, 1), new MicrometerMetrics(meterRegistry));
+    serverSocket = new ServerSocket(0, 50, InetAddress.getLoopbackAddress());
+  }
+
+  @AfterEach
+  void cleanup() throws IOException {
+    serverSocket.close();
+  }
+
+  @Test
+  void clientsAreUnchangedWhenDisabled() {
+    HttpConnectionPools disabledConnectionPools =
+        new HttpConnectionPools(
+            new ConnectionPoolConfiguration(false, 5, 30, 1), new MicrometerMetrics(meterRegistry));
+    OkHttpClient httpClient = new OkHttpClient();
+
+    assertSame(httpClient, disabledConnectionPools.configure("wds", httpClient));
+    assertTrue(disabledConnectionPools.closeConnectionAfterEachRequest());
+  }
+
+  @Test
+  void retriesGetOnConnectionClosedWhileIdle() throws IOException {
+    startStubServer(true);
+    OkHttpClient httpClient = httpConnectionPools.configure("wds", new OkHttpClient());
+
+    // The second request is sent on the pooled connection, which the server has closed since
+    assertEquals("ok", send(httpClient, get()));
+    assertEquals("ok", send(httpClient, get()));
+
+    assertEquals(2, connectionsAccepted.get());
+    double staleConnectionRetries =
+        meterRegistry.get("http_stale_connection_retry").tags("client", "wds").counter().count();
+    assertEquals(1, staleConnectionRetries);
+    double idleConnections =
+        meterRegistry
+            .get("http_connection_pool_connections")
+            .tags("client", "wds", "state", "idle")
+            .gauge()
+            .value();
+    assertEquals(1, idleConnections);
+  }
+
+  @Test
+  void retriesGetUpToTheLimit() {
+    startStubServer(false);
+    OkHttpClient httpClient = httpConnectionPools.configure("cromwell", new OkHttpClient());
+
+    assertThrows(IOException.class, () -> send(httpClient, get()));
+    assertEquals(2, connectionsAccepted.get());
+  }
+
+  @Test
+  void neverRetriesPost() {
+    startStubServer(false);
+    OkHttpClient httpClient = httpConnectionPools.configure("cromwell", new OkHttpClient());
+    Request post =
+        new Request.Builder()
+            .url(serverUrl())
+            .post(RequestBody.create("{}", MediaType.get("application/json")))
+            .build();
+
+    assertThrows(IOException.class, () -> send(httpClient, post));
+    assertEquals(1, connectionsAccepted.get());
+  }
+
+  private String send(OkHttpClient httpClient, Request request) throws IOException {
+    try (Response response = httpClient.newCall(request).execute()) {
+      return response.body().string();
+    }
+  }
+
+  private Request get() {
+    return new Request.Builder().url(serverUrl()).build();
+  }
+
+  private String serverUrl() {
+    return "http://127.0.0.1:%d/api/test".formatted(serverSocket.getLocalPort());
+  }
+
+  // Reads a single request per connection, and closes the connection without telling the client,
+  // the way the Azure Relay closes idle connections.
+  private void startStubServer(boolean respond) {
+    Thread server =
+        new Thread(
+            () -> {
+              while (!serverSocket.isClosed()) {
+                try (Socket socket = serverSocket.accept()) {
+                  connectionsAccepted.incrementAndGet();
+                  readRequest(socket);
+                  if (respond) {
+                    OutputStream response = socket.getOutputStream();
+                    response.write(
+                        "HTTP/1.1 200 OK\r\nContent-Length: 2\r\n\r\nok".getBytes(UTF_8));
+                    response.flush();
+                  }
+                } catch (IOException e) {
+                  // The server socket was closed at the end of the test
+                }
+              }
+            });
+    server.setDaemon(true);
+    server.start();
+  }
+
+  private static void readRequest(Socket socket) throws IOException {
+    BufferedReader request =
+        new BufferedReader(new InputStreamReader(socket.getInputStream(), UTF_8));
+    int contentLength = 0;
+    String line;
+    while ((line = request.readLine()) != null && !line.isEmpty()) {
+      if (line.toLowerCase().startsWith("content-length:")) {
+        contentLength = Integer.parseInt(line.substring("content-length:".length()).trim());
+      }
+    }
+    request.skip(contentLength);
+  }
+}
@@ -5,9 +5,13 @@ import static org.mockito.ArgumentMatchers.any;
 import static org.mockito.ArgumentMatchers.eq;
 import static org.mockito.Mockito.when;
 
+import bio.terra.cbas.common.MicrometerMetrics;
+import bio.terra.cbas.config.ConnectionPoolConfiguration;
 import bio.terra.cbas.config.WdsServerConfiguration;
 import bio.terra.cbas.dependencies.common.DependencyUrlLoader;
+import bio.terra.cbas.dependencies.common.HttpConnectionPools;
 import bio.terra.common.iam.BearerToken;
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
 import org.databiosphere.workspacedata.api.CapabilitiesApi;
 import org.databiosphere.workspacedata.api.RecordsApi;
 import org.junit.jupiter.api.Test;
@@ -21,6 +25,10 @@ class TestWdsClient {
   @Mock DependencyUrlLoader dependencyUrlLoader;
 
   private final BearerToken userToken = new BearerToken("TOKEN");
+  private final HttpConnectionPools httpConnectionPools =
+      new HttpConnectionPools(
+          new ConnectionPoolConfiguration(false, 5, 30, 1),
+          new MicrometerMetrics(new SimpleMeterRegistry()));
 
   @Test
   void useConfiguredUrlIfAvailable() throws Exception {
@@ -28,10 +36,12 @@ class TestWdsClient {
         new WdsServerConfiguration("http://localhost:8001/wds", "instanceId", "apiV", 1000, false);
 
     RecordsApi recordsApi =
-        new WdsClient(wdsServerConfiguration, dependencyUrlLoader).recordsApi(userToken);
+        new WdsClient(wdsServerConfiguration, dependencyUrlLoader, httpConnectionPools)
+            .recordsApi(userToken);
 
     CapabilitiesApi capabilitiesApi =
-        new WdsClient(wdsServerConfiguration, dependencyUrlLoader).capabilitiesApi(userToken);
+        new WdsClient(wdsServerConfiguration, dependencyUrlLoader, httpConnectionPools)
+            .capabilitiesApi(userToken);
 
     assertEquals("http://localhost:8001/wds", recordsApi.getApiClient().getBasePath());
     assertEquals("http://localhost:8001/wds", capabilitiesApi.getApiClient().getBasePath());
@@ -46,10 +56,12 @@ class TestWdsClient {
         .thenReturn("https://my-wds-service:10101/wds");
 
     RecordsApi recordsApi =
-        new WdsClient(wdsServerConfiguration, dependencyUrlLoader).recordsApi(userToken);
+        new WdsClient(wdsServerConfiguration, dependencyUrlLoader, httpConnectionPools)
+            .recordsApi(userToken);
 
     CapabilitiesApi capabilitiesApi =
-        new WdsClient(wdsServerConfiguration, dependencyUrlLoader).capabilitiesApi(userToken);
+        new WdsClient(wdsServerConfiguration, dependencyUrlLoader, httpConnectionPools)
+            .capabilitiesApi(userToken);
 
     assertEquals("https://my-wds-service:10101/wds", recordsApi.getApiClient().getBasePath());
     assertEquals("https://my-wds-service:10101/wds", capabilitiesApi.getApiClient().getBasePath());
@@ -0,0 +1,189 @@
+package bio.terra.cbas.dependencies.wds;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertInstanceOf;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.ArgumentMatchers.anyList;
+import static org.mockito.ArgumentMatchers.eq;
+import static org.mockito.Mockito.atLeastOnce;
+import static org.mockito.Mockito.doThrow;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.never;
+import static org.mockito.Mockito.verify;
+import static org.mockito.Mockito.when;
+
+import bio.terra.cbas.common.MicrometerMetrics;
+import bio.terra.cbas.config.WdsOutputWriterConfiguration;
+import bio.terra.cbas.dependencies.wds.WdsService.WdsRecordResponseDetails;
+import bio.terra.common.iam.BearerToken;
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import org.databiosphere.workspacedata.client.ApiException;
+import org.databiosphere.workspacedata.model.BatchRecordRequest;
+import org.databiosphere.workspacedata.model.RecordAttributes;
+import org.databiosphere.workspacedata.model.RecordRequest;
+import org.databiosphere.workspacedata.model.RecordResponse;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.mockito.ArgumentCaptor;
+
+class TestWdsOutputWriter {
+
+  private final BearerToken userToken = new BearerToken("mock-token");
+  private final RecordAttributes attributes = new RecordAttributes();
+
+  private WdsService wdsService;
+  private SimpleMeterRegistry meterRegistry;
+
+  @BeforeEach
+  void init() {
+    wdsService = mock(WdsService.class);
+    meterRegistry = new SimpleMeterRegistry();
+    attributes.put("foo_name", "Hello batch!");
+    // Every record exists
+    when(wdsService.getRecords(any(), anyList(), any()))
+        .thenAnswer(
+            i ->
+                new WdsRecordResponseDetails(
+                    i.<List<String>>getArgument(1).stream()
+                        .map(id -> new RecordResponse().id(id))
+                        .toList(),
+                    Map.of()));
+  }
+
+  private WdsOutputWriter writer(boolean enabled, long flushWindowMillis, int maxBatchSize) {
+    return new WdsOutputWriter(
+        wdsService,
+        new WdsOutputWriterConfiguration(enabled, flushWindowMillis, maxBatchSize, 1),
+        Runnable::run,
+        new MicrometerMetrics(meterRegistry));
+  }
+
+  @SuppressWarnings("unchecked")
+  private List<List<String>> batchesWritten(String recordType) throws Exception {
+    ArgumentCaptor<List<BatchRecordRequest>> batches = ArgumentCaptor.forClass(List.class);
+    verify(wdsService, atLeastOnce())
+        .batchUpsertRecords(eq(recordType), batches.capture(), eq(userToken));
+    return batches.getAllValues().stream()
+        .map(batch -> batch.stream().map(BatchRecordRequest::getId).toList())
+        .toList();
+  }
+
+  @Test
+  void writesRecordsOneAtATimeWhenDisabled() throws Exception {
+    WdsOutputWriter writer = writer(false, 1000, 100);
+
+    CompletableFuture<Void> written = writer.write("FOO", "foo1", attributes, userToken);
+
+    assertTrue(written.isDone());
+    written.join();
+    verify(wdsService).updateRecord(any(RecordRequest.class), eq("FOO"), eq("foo1"), eq(userToken));
+    verify(wdsService, never()).batchUpsertRecords(any(), anyList(), any());
+  }
+
+  @Test
+  void failsWriteWhenDisabledAndRecordCannotBeWritten() throws Exception {
+    doThrow(new WdsServiceApiException(new ApiException("Some API error")))
+        .when(wdsService)
+        .updateRecord(any(), eq("FOO"), eq("foo1"), eq(userToken));
+    WdsOutputWriter writer = writer(false, 1000, 100);
+
+    CompletableFuture<Void> written = writer.write("FOO", "foo1", attributes, userToken);
+
+    CompletionException e = assertThrows(CompletionException.class, written::join);
+    assertInstanceOf(WdsServiceApiException.class, e.getCause());
+  }
+
+  @Test
+  void writesRecordsOfATypeInOneBatch() throws Exception {
+    WdsOutputWriter writer = writer(true, 50, 100);
+
+    CompletableFuture<Void> foo1 = writer.write("FOO", "foo1", attributes, userToken);
+    CompletableFuture<Void> foo2 = writer.write("FOO", "foo2", attributes, userToken);
+    CompletableFuture<Void> bar1 = writer.write("BAR", "bar1", attributes, userToken);
+    CompletableFuture.allOf(foo1, foo2, bar1).join();
+
+    assertEquals(List.of(List.of("foo1", "foo2")), batchesWritten("FOO"));
+    assertEquals(List.of(List.of("bar1")), batchesWritten("BAR"));
+    verify(wdsService, never()).updateRecord(any(), any(), any(), any());
+    assertEquals(2, meterRegistry.summary("wds_output_writer_flush_size").count());
+    assertEquals(3, meterRegistry.summary("wds_output_writer_flush_size").totalAmount());
+  }
+
+  @Test
+  void writesFullBatchRightAway() throws Exception {
+    WdsOutputWriter writer = writer(true, 3_600_000, 2);
+
+    CompletableFuture<Void> foo1 = writer.write("FOO", "foo1", attributes, userToken);
+    assertFalse(foo1.isDone());
+    CompletableFuture<Void> foo2 = writer.write("FOO", "foo2", attributes, userToken);
+
+    assertTrue(foo1.isDone());
+    assertTrue(foo2.isDone());
+    assertEquals(List.of(List.of("foo1", "foo2")), batchesWritten("FOO"));
+  }
+
+  @Test
+  void writesRecordsOneAtATimeWhenBatchFails() throws Exception {
+    doThrow(new WdsServiceApiException(new ApiException("Batch error")))
+        .when(wdsService)
+        .batchUpsertRecords(eq("FOO"), anyList(), eq(userToken));
+    doThrow(new WdsServiceApiException(new ApiException("Record error")))
+        .when(wdsService)
+        .updateRecord(any(), eq("FOO"), eq("foo2"), eq(userToken));
+    WdsOutputWriter writer = writer(true, 3_600_000, 2);
+
+    CompletableFuture<Void> foo1 = writer.write("FOO", "foo1", attributes, userToken);
+    CompletableFuture<Void> foo2 = writer.write("FOO", "foo2", attributes, userToken);
+
+    // Only the write of the record that cannot be written on its own fails
+    foo1.join();
+    CompletionException e = assertThrows(CompletionException.class, foo2::join);
+    assertInstanceOf(WdsServiceApiException.class, e.getCause());
+    verify(wdsService).updateRecord(any(), eq("FOO"), eq("foo1"), eq(userToken));
+    assertEquals(2, meterRegistry.counter("wds_output_writer_single_writes").count());
+  }
+
+  @Test
+  void writesRecordsWithDifferentAttributesInSeparateBatches() throws Exception {
+    RecordAttributes otherAttributes = new RecordAttributes();
+    otherAttributes.put("foo_name", "Hello again!");
+    otherAttributes.put("foo_count", 2);
+    WdsOutputWriter writer = writer(true, 3_600_000, 3);
+
+    CompletableFuture<Void> foo1 = writer.write("FOO", "foo1", attributes, userToken);
+    CompletableFuture<Void> foo2 = writer.write("FOO", "foo2", otherAttributes, userToken);
+    CompletableFuture<Void> foo3 = writer.write("FOO", "foo3", attributes, userToken);
+    CompletableFuture.allOf(foo1, foo2, foo3).join();
+
+    // Otherwise WDS would set foo_count of foo1 and foo3 to null
+    assertEquals(List.of(List.of("foo1", "foo3"), List.of("foo2")), batchesWritten("FOO"));
+    verify(wdsService, never()).updateRecord(any(), any(), any(), any());
+  }
+
+  @Test
+  void doesNotRecreateDeletedRecords() throws Exception {
+    when(wdsService.getRecords(eq("FOO"), anyList(), eq(userToken)))
+        .thenReturn(
+            new WdsRecordResponseDetails(
+                List.of(new RecordResponse().id("foo1")), Map.of("foo2", "Record not found")));
+    doThrow(new WdsServiceApiException(new ApiException(404, "Record not found")))
+        .when(wdsService)
+        .updateRecord(any(), eq("FOO"), eq("foo2"), eq(userToken));
+    WdsOutputWriter writer = writer(true, 3_600_000, 2);
+
+    CompletableFuture<Void> foo1 = writer.write("FOO", "foo1", attributes, userToken);
+    CompletableFuture<Void> foo2 = writer.write("FOO", "foo2", attributes, userToken);
+
+    foo1.join();
+    CompletionException e = assertThrows(CompletionException.class, foo2::join);
+    assertInstanceOf(WdsServiceApiException.class, e.getCause());
+    assertEquals(List.of(List.of("foo1")), batchesWritten("FOO"));
+  }
+}
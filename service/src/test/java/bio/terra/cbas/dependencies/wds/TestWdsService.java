@@ -7,10 +7,14 @@ import static org.junit.jupiter.api.Assertions.assertTrue;
 import static org.mockito.ArgumentMatchers.any;
 import static org.mockito.ArgumentMatchers.eq;
 import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.times;
+import static org.mockito.Mockito.verify;
 import static org.mockito.Mockito.when;
 
 import bio.terra.cbas.config.RetryConfig;
+import bio.terra.cbas.config.WdsRecordFetchConfiguration;
 import bio.terra.cbas.config.WdsServerConfiguration;
+import bio.terra.cbas.dependencies.wds.WdsService.WdsRecordIdsPage;
 import bio.terra.cbas.dependencies.wds.WdsService.WdsRecordResponseDetails;
 import bio.terra.common.iam.BearerToken;
 import jakarta.ws.rs.ProcessingException;
@@ -20,15 +24,19 @@ import java.util.stream.Stream;
 import org.databiosphere.workspacedata.api.CapabilitiesApi;
 import org.databiosphere.workspacedata.api.RecordsApi;
 import org.databiosphere.workspacedata.client.ApiException;
+import org.databiosphere.workspacedata.model.BatchOperation;
+import org.databiosphere.workspacedata.model.BatchRecordRequest;
 import org.databiosphere.workspacedata.model.Capabilities;
 import org.databiosphere.workspacedata.model.RecordAttributes;
 import org.databiosphere.workspacedata.model.RecordQueryResponse;
 import org.databiosphere.workspacedata.model.RecordResponse;
+import org.databiosphere.workspacedata.model.SearchRequest;
 import org.junit.jupiter.api.BeforeEach;
 import org.junit.jupiter.api.Test;
 import org.junit.jupiter.api.extension.ExtendWith;
 import org.junit.jupiter.params.ParameterizedTest;
 import org.junit.jupiter.params.provider.MethodSource;
+import org.mockito.ArgumentCaptor;
 import org.mockito.junit.jupiter.MockitoExtension;
 import org.springframework.retry.backoff.FixedBackOffPolicy;
 import org.springframework.retry.support.RetryTemplate;
@@ -53,6 +61,12 @@ class TestWdsService {
     template.setBackOffPolicy(smallerBackoff);
   }
 
+  // Records are fetched one request after the other, in the order they are sent
+  private WdsService wdsService(WdsClient wdsClient, WdsServerConfiguration config) {
+    return new WdsService(
+        wdsClient, config, template, new WdsRecordFetchConfiguration(1, 300), Runnable::run);
+  }
+
   @Test
   void processingExceptionRetriesEventuallySucceed() throws Exception {
 
@@ -65,7 +79,7 @@ class TestWdsService {
         .thenThrow(new ProcessingException("Processing exception"))
         .thenReturn(expectedResponse);
 
-    WdsService wdsService = new WdsService(wdsClient, wdsServerConfiguration, template);
+    WdsService wdsService = wdsService(wdsClient, wdsServerConfiguration);
 
     assertEquals(expectedResponse, wdsService.getRecord("FOO", "foo1", bearerToken));
   }
@@ -83,7 +97,7 @@ class TestWdsService {
         .thenThrow(new ProcessingException("Processing exception"))
         .thenThrow(new ProcessingException("Processing exception"));
 
-    WdsService wdsService = new WdsService(wdsClient, wdsServerConfiguration, template);
+    WdsService wdsService = wdsService(wdsClient, wdsServerConfiguration);
 
     assertThrows(ProcessingException.class, () -> wdsService.getRecord("FOO", "foo1", bearerToken));
   }
@@ -97,7 +111,7 @@ class TestWdsService {
     when(recordsApi.getRecord(instanceId, apiV, "FOO", "foo1"))
         .thenThrow(new RuntimeException("Other exception"));
 
-    WdsService wdsService = new WdsService(wdsClient, wdsServerConfiguration, template);
+    WdsService wdsService = wdsService(wdsClient, wdsServerConfiguration);
 
     assertThrows(RuntimeException.class, () -> wdsService.getRecord("FOO", "foo1", bearerToken));
   }
@@ -115,7 +129,7 @@ class TestWdsService {
     when(wdsClient.capabilitiesApi(any())).thenReturn(capabilitiesApi);
     when(capabilitiesApi.capabilities()).thenReturn(capabilities);
 
-    WdsService wdsService = new WdsService(wdsClient, wdsServerConfiguration, template);
+    WdsService wdsService = wdsService(wdsClient, wdsServerConfiguration);
 
     assertTrue(wdsService.useSearchByIdsFilter(new BearerToken("token")));
   }
@@ -130,7 +144,7 @@ class TestWdsService {
     when(wdsClient.capabilitiesApi(any())).thenReturn(capabilitiesApi);
     when(capabilitiesApi.capabilities()).thenReturn(capabilities);
 
-    WdsService wdsService = new WdsService(wdsClient, wdsServerConfiguration, template);
+    WdsService wdsService = wdsService(wdsClient, wdsServerConfiguration);
 
     assertFalse(wdsService.useSearchByIdsFilter(new BearerToken("token")));
   }
@@ -148,11 +162,73 @@ class TestWdsService {
     when(wdsClient.capabilitiesApi(any())).thenReturn(capabilitiesApi);
     when(capabilitiesApi.capabilities()).thenReturn(capabilities);
 
-    WdsService wdsService = new WdsService(wdsClient, wdsServerConfiguration, template);
+    WdsService wdsService = wdsService(wdsClient, wdsServerConfiguration);
 
     assertFalse(wdsService.useSearchByIdsFilter(new BearerToken("token")));
   }
 
+  @Test
+  void reusesCapabilitiesOfWdsInstance() throws Exception {
+    Capabilities capabilities =
+        new Capabilities().capabilities(true).putAdditionalProperty("search.filter.ids", true);
+    WdsClient wdsClient = mock(WdsClient.class);
+    CapabilitiesApi capabilitiesApi = mock(CapabilitiesApi.class);
+
+    when(wdsClient.capabilitiesApi(any())).thenReturn(capabilitiesApi);
+    when(capabilitiesApi.capabilities()).thenReturn(capabilities);
+
+    WdsService wdsService = wdsService(wdsClient, wdsServerConfiguration);
+
+    assertTrue(wdsService.useSearchByIdsFilter(new BearerToken("token")));
+    assertTrue(wdsService.useSearchByIdsFilter(new BearerToken("other-token")));
+    verify(capabilitiesApi, times(1)).capabilities();
+  }
+
+  @Test
+  void fetchesCapabilitiesAgainAfterFailure() throws Exception {
+    Capabilities capabilities =
+        new Capabilities().capabilities(true).putAdditionalProperty("search.filter.ids", true);
+    WdsClient wdsClient = mock(WdsClient.class);
+    CapabilitiesApi capabilitiesApi = mock(CapabilitiesApi.class);
+
+    when(wdsClient.capabilitiesApi(any())).thenReturn(capabilitiesApi);
+    when(capabilitiesApi.capabilities())
+        .thenThrow(new ApiException(503, "WDS is starting"))
+        .thenReturn(capabilities);
+
+    WdsService wdsService = wdsService(wdsClient, wdsServerConfiguration);
+
+    assertFalse(wdsService.useSearchByIdsFilter(new BearerToken("token")));
+    assertTrue(wdsService.useSearchByIdsFilter(new BearerToken("token")));
+  }
+
+  @Test
+  void fetchesRecordsOneAtATimeWithoutSearchFilter() throws Exception {
+    WdsClient wdsClient = mock(WdsClient.class);
+    CapabilitiesApi capabilitiesApi = mock(CapabilitiesApi.class);
+    RecordsApi recordsApi = mock(RecordsApi.class);
+
+    when(wdsClient.capabilitiesApi(any())).thenReturn(capabilitiesApi);
+    when(capabilitiesApi.capabilities()).thenReturn(new Capabilities().capabilities(true));
+    when(wdsClient.recordsApi(any())).thenReturn(recordsApi);
+    when(recordsApi.getRecord(instanceId, apiV, "FOO", "foo1"))
+        .thenReturn(new RecordResponse().id("foo1").type("FOO"));
+    when(recordsApi.getRecord(instanceId, apiV, "FOO", "foo2"))
+        .thenThrow(new ApiException(404, "Record not found"));
+    when(recordsApi.getRecord(instanceId, apiV, "FOO", "foo3"))
+        .thenReturn(new RecordResponse().id("foo3").type("FOO"));
+
+    WdsService wdsService = wdsService(wdsClient, wdsServerConfiguration);
+
+    WdsRecordResponseDetails responseDetails =
+        wdsService.getRecords("FOO", List.of("foo1", "foo2", "foo3"), bearerToken);
+
+    assertEquals(
+        List.of("foo1", "foo3"),
+        responseDetails.recordResponseList().stream().map(RecordResponse::getId).toList());
+    assertEquals(Set.of("foo2"), responseDetails.recordIdsWithError().keySet());
+  }
+
   record BatchTestCase(
       List<String> requestedIds,
       Integer wdsBatchSize,
@@ -218,7 +294,7 @@ class TestWdsService {
           queryRecordsStub.thenReturn(new RecordQueryResponse().records(returnedRecords));
     }
 
-    WdsService wdsService = new WdsService(wdsClient, wdsServerConfiguration, template);
+    WdsService wdsService = wdsService(wdsClient, wdsServerConfiguration);
 
     WdsRecordResponseDetails responseDetails =
         wdsService.getRecordsUsingSearchFilter("FOO", requestedIds, bearerToken);
@@ -244,7 +320,7 @@ class TestWdsService {
     when(recordsApi.queryRecords(any(), eq(instanceId), eq(apiV), eq("FOO")))
         .thenReturn(new RecordQueryResponse().records(returnedRecords));
 
-    WdsService wdsService = new WdsService(wdsClient, wdsServerConfiguration, template);
+    WdsService wdsService = wdsService(wdsClient, wdsServerConfiguration);
 
     WdsRecordResponseDetails responseDetails =
         wdsService.getRecordsUsingSearchFilter("FOO", requestedIds, bearerToken);
@@ -275,7 +351,7 @@ class TestWdsService {
                         new RecordResponse().id("foo2").type("FOO"))))
         .thenThrow(new ApiException(500, "Error fetching records"));
 
-    WdsService wdsService = new WdsService(wdsClient, lowBatchConfig, template);
+    WdsService wdsService = wdsService(wdsClient, lowBatchConfig);
 
     WdsRecordResponseDetails responseDetails =
         wdsService.getRecordsUsingSearchFilter("FOO", requestedIds, bearerToken);
@@ -310,7 +386,7 @@ class TestWdsService {
                         new RecordResponse().id("foo2").type("FOO"),
                         new RecordResponse().id("foo3").type("FOO"))));
 
-    WdsService wdsService = new WdsService(wdsClient, wdsServerConfiguration, template);
+    WdsService wdsService = wdsService(wdsClient, wdsServerConfiguration);
 
     WdsRecordResponseDetails responseDetails =
         wdsService.getRecordsUsingSearchFilter("FOO", requestedIds, bearerToken);
@@ -318,4 +394,87 @@ class TestWdsService {
     assertEquals(3, responseDetails.recordResponseList().size());
     assertEquals(0, responseDetails.recordIdsWithError().size());
   }
+
+  @Test
+  void pagesThroughRecordIdsInQueryWindows() throws Exception {
+    WdsClient wdsClient = mock(WdsClient.class);
+    RecordsApi recordsApi = mock(RecordsApi.class);
+
+    when(wdsClient.recordsApi(any())).thenReturn(recordsApi);
+
+    WdsServerConfiguration lowBatchConfig =
+        new WdsServerConfiguration(baseUri, instanceId, apiV, 2, false);
+    when(recordsApi.queryRecords(any(), eq(instanceId), eq(apiV), eq("FOO")))
+        .thenReturn(queryResponse(20, "foo10", "foo11"))
+        .thenReturn(queryResponse(20, "foo12", "foo13"))
+        .thenReturn(queryResponse(20, "foo14"));
+
+    WdsService wdsService = wdsService(wdsClient, lowBatchConfig);
+
+    WdsRecordIdsPage page = wdsService.getRecordIds("FOO", 10, 5, bearerToken);
+
+    assertEquals(List.of("foo10", "foo11", "foo12", "foo13", "foo14"), page.recordIds());
+    assertEquals(20, page.totalRecords());
+    ArgumentCaptor<SearchRequest> searchRequests = ArgumentCaptor.forClass(SearchRequest.class);
+    verify(recordsApi, times(3))
+        .queryRecords(searchRequests.capture(), eq(instanceId), eq(apiV), eq("FOO"));
+    assertEquals(
+        List.of(10, 12, 14),
+        searchRequests.getAllValues().stream().map(SearchRequest::getOffset).toList());
+    assertEquals(
+        List.of(2, 2, 1),
+        searchRequests.getAllValues().stream().map(SearchRequest::getLimit).toList());
+  }
+
+  @Test
+  void stopsPagingAtTheLastRecordId() throws Exception {
+    WdsClient wdsClient = mock(WdsClient.class);
+    RecordsApi recordsApi = mock(RecordsApi.class);
+
+    when(wdsClient.recordsApi(any())).thenReturn(recordsApi);
+
+    when(recordsApi.queryRecords(any(), eq(instanceId), eq(apiV), eq("FOO")))
+        .thenReturn(queryResponse(3, "foo2"));
+
+    WdsService wdsService = wdsService(wdsClient, wdsServerConfiguration);
+
+    WdsRecordIdsPage page = wdsService.getRecordIds("FOO", 2, 5000, bearerToken);
+
+    assertEquals(List.of("foo2"), page.recordIds());
+    assertEquals(3, page.totalRecords());
+    verify(recordsApi, times(1)).queryRecords(any(), eq(instanceId), eq(apiV), eq("FOO"));
+  }
+
+  @Test
+  @SuppressWarnings("unchecked")
+  void upsertsRecordsInOneBatchWrite() throws Exception {
+    WdsClient wdsClient = mock(WdsClient.class);
+    RecordsApi recordsApi = mock(RecordsApi.class);
+    when(wdsClient.recordsApi(any())).thenReturn(recordsApi);
+
+    WdsService wdsService = wdsService(wdsClient, wdsServerConfiguration);
+    wdsService.batchUpsertRecords(
+        "FOO",
+        List.of(
+            new BatchRecordRequest().id("foo1").type("FOO").attributes(new RecordAttributes()),
+            new BatchRecordRequest().id("foo2").type("FOO").attributes(new RecordAttributes())),
+        bearerToken);
+
+    ArgumentCaptor<List<BatchOperation>> operations = ArgumentCaptor.forClass(List.class);
+    verify(recordsApi)
+        .batchWriteRecords(operations.capture(), eq(instanceId), eq(apiV), eq("FOO"), any());
+    assertEquals(
+        List.of("foo1", "foo2"),
+        operations.getValue().stream().map(operation -> operation.getRecord().getId()).toList());
+    assertTrue(
+        operations.getValue().stream()
+            .allMatch(op -> op.getOperation() == BatchOperation.OperationEnum.UPSERT));
+  }
+
+  private static RecordQueryResponse queryResponse(int totalRecords, String... recordIds) {
+    return new RecordQueryResponse()
+        .totalRecords(totalRecords)
+        .records(
+            Arrays.stream(recordIds).map(id -> new RecordResponse().id(id).type("FOO")).toList());
+  }
 }
@@ -0,0 +1,219 @@
+package bio.terra.cbas.dependencies.wds;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+import static org.mockito.Mockito.mock;
+
+import bio.terra.cbas.common.MicrometerMetrics;
+import bio.terra.cbas.config.ConnectionPoolConfiguration;
+import bio.terra.cbas.config.RetryConfig;
+import bio.terra.cbas.config.WdsRecordFetchConfiguration;
+import bio.terra.cbas.config.WdsServerConfiguration;
+import bio.terra.cbas.dependencies.common.DependencyUrlLoader;
+import bio.terra.cbas.dependencies.common.HttpConnectionPools;
+import bio.terra.cbas.dependencies.wds.WdsService.WdsRecordResponseDetails;
+import bio.terra.common.iam.BearerToken;
+import com.fasterxml.jackson.databind.JsonNode;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.sun.net.httpserver.HttpExchange;
+import com.sun.net.httpserver.HttpServer;
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.net.InetSocketAddress;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.UUID;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.stream.IntStream;
+import org.databiosphere.workspacedata.model.RecordResponse;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.scheduling.concurrent.ThreadPoolTaskExecutor;
+
+/**
+ * Fetches records from a stub WDS that answers every request after a fixed delay, to check how many
+ * requests are sent at the same time and compare the time taken with fetching one at a time.
+ */
+class TestWdsServiceStubServer {
+
+  private static final Logger logger = LoggerFactory.getLogger(TestWdsServiceStubServer.class);
+
+  private static final long RESPONSE_DELAY_MILLIS = 50;
+  private static final int MAX_REQUESTS_IN_FLIGHT = 4;
+
+  private final ObjectMapper objectMapper = new ObjectMapper();
+  private final BearerToken bearerToken = new BearerToken("token");
+
+  private final AtomicInteger capabilitiesRequests = new AtomicInteger();
+  private final AtomicInteger requestsInFlight = new AtomicInteger();
+  private final AtomicInteger maxRequestsInFlight = new AtomicInteger();
+
+  private final List<ThreadPoolTaskExecutor> recordFetchExecutors = new ArrayList<>();
+
+  private HttpServer stubWds;
+  private ExecutorService stubWdsExecutor;
+  private boolean searchByIdsFilterSupported;
+
+  @BeforeEach
+  void startStubWds() throws IOException {
+    stubWds = HttpServer.create(new InetSocketAddress("localhost", 0), 0);
+    stubWds.createContext("/", this::respond);
+    stubWdsExecutor = Executors.newCachedThreadPool();
+    stubWds.setExecutor(stubWdsExecutor);
+    stubWds.start();
+  }
+
+  @AfterEach
+  void stopStubWds() {
+    stubWds.stop(0);
+    stubWdsExecutor.shutdownNow();
+    recordFetchExecutors.forEach(ThreadPoolTaskExecutor::shutdown);
+  }
+
+  @Test
+  void fetchesRecordsIndividuallyUpToTheLimitAtATime() {
+    searchByIdsFilterSupported = false;
+    List<String> recordIds = recordIds(40);
+
+    long serialMillis = timeGetRecords(1, 10, recordIds);
+    maxRequestsInFlight.set(0);
+    long concurrentMillis = timeGetRecords(MAX_REQUESTS_IN_FLIGHT, 10, recordIds);
+
+    logger.info(
+        "Fetched {} records individually in {} ms one at a time, {} ms {} at a time",
+        recordIds.size(),
+        serialMillis,
+        concurrentMillis,
+        MAX_REQUESTS_IN_FLIGHT);
+    assertEquals(MAX_REQUESTS_IN_FLIGHT, maxRequestsInFlight.get());
+    assertTrue(concurrentMillis < serialMillis);
+  }
+
+  @Test
+  void fetchesWindowsOfRecordsUpToTheLimitAtATime() {
+    searchByIdsFilterSupported = true;
+    List<String> recordIds = recordIds(95);
+
+    long serialMillis = timeGetRecords(1, 5, recordIds);
+    maxRequestsInFlight.set(0);
+    long concurrentMillis = timeGetRecords(MAX_REQUESTS_IN_FLIGHT, 5, recordIds);
+
+    logger.info(
+        "Fetched {} records in windows of 5 in {} ms one at a time, {} ms {} at a time",
+        recordIds.size(),
+        serialMillis,
+        concurrentMillis,
+        MAX_REQUESTS_IN_FLIGHT);
+    assertEquals(MAX_REQUESTS_IN_FLIGHT, maxRequestsInFlight.get());
+    assertTrue(concurrentMillis < serialMillis);
+  }
+
+  @Test
+  void requestsCapabilitiesOnceForManyFetches() {
+    searchByIdsFilterSupported = true;
+    WdsService wdsService = wdsService(MAX_REQUESTS_IN_FLIGHT, 5);
+
+    for (int i = 0; i < 3; i++) {
+      wdsService.getRecords("FOO", recordIds(10), bearerToken);
+    }
+
+    assertEquals(1, capabilitiesRequests.get());
+  }
+
+  private long timeGetRecords(int maxRequests, int queryWindowSize, List<String> recordIds) {
+    WdsService wdsService = wdsService(maxRequests, queryWindowSize);
+    // Capabilities are requested before timing, so that only record requests are timed
+    wdsService.useSearchByIdsFilter(bearerToken);
+
+    long start = System.nanoTime();
+    WdsRecordResponseDetails responseDetails = wdsService.getRecords("FOO", recordIds, bearerToken);
+    long elapsedMillis = (System.nanoTime() - start) / 1_000_000;
+
+    assertEquals(
+        recordIds,
+        responseDetails.recordResponseList().stream().map(RecordResponse::getId).toList());
+    assertTrue(responseDetails.recordIdsWithError().isEmpty());
+    return elapsedMillis;
+  }
+
+  private WdsService wdsService(int maxRequests, int queryWindowSize) {
+    WdsServerConfiguration wdsServerConfiguration =
+        new WdsServerConfiguration(
+            "http://localhost:%d".formatted(stubWds.getAddress().getPort()),
+            UUID.randomUUID().toString(),
+            "v0.2",
+            queryWindowSize,
+            false);
+    WdsRecordFetchConfiguration recordFetchConfiguration =
+        new WdsRecordFetchConfiguration(maxRequests, 300);
+    ThreadPoolTaskExecutor recordFetchExecutor =
+        recordFetchConfiguration.getWdsRecordFetchExecutor();
+    recordFetchExecutors.add(recordFetchExecutor);
+    return new WdsService(
+        new WdsClient(
+            wdsServerConfiguration,
+            mock(DependencyUrlLoader.class),
+            new HttpConnectionPools(
+                new ConnectionPoolConfiguration(false, 5, 30, 1),
+                new MicrometerMetrics(new SimpleMeterRegistry()))),
+        wdsServerConfiguration,
+        new RetryConfig().listenerResetRetryTemplate(),
+        recordFetchConfiguration,
+        recordFetchExecutor);
+  }
+
+  private static List<String> recordIds(int count) {
+    return IntStream.range(0, count).mapToObj("record%d"::formatted).toList();
+  }
+
+  private void respond(HttpExchange exchange) throws IOException {
+    maxRequestsInFlight.accumulateAndGet(requestsInFlight.incrementAndGet(), Math::max);
+    try {
+      Thread.sleep(RESPONSE_DELAY_MILLIS);
+      String path = exchange.getRequestURI().getPath();
+      String body;
+      if (path.contains("capabilities")) {
+        capabilitiesRequests.incrementAndGet();
+        body =
+            "{\"capabilities\":true,\"search.filter.ids\":%s}"
+                .formatted(searchByIdsFilterSupported);
+      } else if (exchange.getRequestMethod().equals("POST")) {
+        JsonNode searchRequest = objectMapper.readTree(exchange.getRequestBody());
+        List<String> records = new ArrayList<>();
+        searchRequest
+            .path("filter")
+            .path("ids")
+            .forEach(id -> records.add(recordJson(id.asText())));
+        body =
+            "{\"searchRequest\":{\"offset\":0,\"limit\":%d},\"totalRecords\":%d,\"records\":[%s]}"
+                .formatted(records.size(), records.size(), String.join(",", records));
+      } else {
+        body = recordJson(path.substring(path.lastIndexOf('/') + 1));
+      }
+
+      byte[] response = body.getBytes(StandardCharsets.UTF_8);
+      exchange.getResponseHeaders().add("Content-Type", "application/json");
+      exchange.sendResponseHeaders(200, response.length);
+      try (OutputStream responseBody = exchange.getResponseBody()) {
+        responseBody.write(response);
+      }
+    } catch (InterruptedException e) {
+      Thread.currentThread().interrupt();
+      exchange.sendResponseHeaders(503, -1);
+    } finally {
+      requestsInFlight.decrementAndGet();
+      exchange.close();
+    }
+  }
+
+  private static String recordJson(String recordId) {
+    return "{\"id\":\"%s\",\"type\":\"FOO\",\"attributes\":{}}".formatted(recordId);
+  }
+}
@@ -3,12 +3,16 @@ package bio.terra.cbas.dependencies.wes;
 import static org.junit.jupiter.api.Assertions.assertEquals;
 import static org.mockito.Mockito.when;
 
+import bio.terra.cbas.common.MicrometerMetrics;
+import bio.terra.cbas.config.ConnectionPoolConfiguration;
 import bio.terra.cbas.config.CromwellServerConfiguration;
 import bio.terra.cbas.dependencies.common.DependencyUrlLoader;
+import bio.terra.cbas.dependencies.common.HttpConnectionPools;
 import cromwell.client.ApiClient;
 import cromwell.client.api.EngineApi;
 import cromwell.client.api.Ga4GhWorkflowExecutionServiceWesAlphaPreviewApi;
 import cromwell.client.api.WomtoolApi;
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
 import org.junit.jupiter.api.Test;
 import org.junit.jupiter.api.extension.ExtendWith;
 import org.mockito.Mock;
@@ -20,6 +24,11 @@ class TestCromwellClient {
   @Mock cromwell.client.ApiClient cromwellAuthReadClient;
   @Mock cromwell.client.ApiClient cromwellWriteClient;
 
+  private final HttpConnectionPools httpConnectionPools =
+      new HttpConnectionPools(
+          new ConnectionPoolConfiguration(false, 5, 30, 1),
+          new MicrometerMetrics(new SimpleMeterRegistry()));
+
   @Test
   void useConfiguredUrlIfAvailable() {
     CromwellServerConfiguration cromwellServerConfiguration =
@@ -27,11 +36,11 @@ class TestCromwellClient {
             "http://localhost:8000/cromwell", null, "workflow/log/dir", false);
 
     CromwellClient cromwellClient =
-        new CromwellClient(cromwellServerConfiguration, dependencyUrlLoader);
+        new CromwellClient(cromwellServerConfiguration, dependencyUrlLoader, httpConnectionPools);
     ApiClient mockApiClient = cromwellClient.getReadApiClient();
 
     EngineApi engineApi =
-        new CromwellClient(cromwellServerConfiguration, dependencyUrlLoader)
+        new CromwellClient(cromwellServerConfiguration, dependencyUrlLoader, httpConnectionPools)
             .engineApi(mockApiClient);
 
     assertEquals("http://localhost:8000/cromwell", engineApi.getApiClient().getBasePath());
@@ -47,7 +56,7 @@ class TestCromwellClient {
     when(mockApiClient.getBasePath()).thenReturn(cromwellServerConfiguration.baseUri());
 
     WomtoolApi womtoolApi =
-        new CromwellClient(cromwellServerConfiguration, dependencyUrlLoader)
+        new CromwellClient(cromwellServerConfiguration, dependencyUrlLoader, httpConnectionPools)
             .womtoolApi(mockApiClient);
 
     assertEquals("http://localhost:8000/cromwell", womtoolApi.getApiClient().getBasePath());
@@ -64,7 +73,8 @@ class TestCromwellClient {
     when(mockApiClient.getBasePath()).thenReturn(cromwellUri);
 
     Ga4GhWorkflowExecutionServiceWesAlphaPreviewApi wesApi =
-        new CromwellClient(cromwellServerConfiguration, dependencyUrlLoader).wesAPI(mockApiClient);
+        new CromwellClient(cromwellServerConfiguration, dependencyUrlLoader, httpConnectionPools)
+            .wesAPI(mockApiClient);
 
     assertEquals("https://my-cromwell-service:10101/cromwell", wesApi.getApiClient().getBasePath());
   }
@@ -0,0 +1,246 @@
+package bio.terra.cbas.monitoring;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import bio.terra.cbas.monitoring.TimeLimitedUpdater.UpdateResult;
+import java.time.Duration;
+import java.time.OffsetDateTime;
+import java.util.Comparator;
+import java.util.List;
+import java.util.UUID;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.function.Function;
+import java.util.stream.IntStream;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+
+class TestTimeLimitedUpdater {
+
+  private record Item(UUID id, int age, boolean ready, boolean updated) {
+    Item update() {
+      return new Item(id, age, ready, true);
+    }
+  }
+
+  // Oldest first, like runs ordered by their last poll
+  private static final Comparator<Item> oldestFirst = Comparator.comparing(Item::age).reversed();
+
+  private ExecutorService executor;
+
+  @BeforeEach
+  void init() {
+    executor = Executors.newFixedThreadPool(10);
+  }
+
+  @AfterEach
+  void cleanup() {
+    executor.shutdownNow();
+  }
+
+  @Test
+  void concurrentUpdatesManyMoreWithinTheSameDeadline() {
+    List<Item> items = items(40);
+
+    UpdateResult<Item> sequential =
+        TimeLimitedUpdater.updateInBatches(
+            items,
+            Item::id,
+            Item::ready,
+            oldestFirst,
+            1,
+            slowUpdate(100),
+            OffsetDateTime.now().plusSeconds(1));
+
+    UpdateResult<Item> concurrent =
+        TimeLimitedUpdater.updateConcurrently(
+            items,
+            Item::id,
+            Item::ready,
+            oldestFirst,
+            1,
+            slowUpdate(100),
+            executor,
+            10,
+            OffsetDateTime.now().plusSeconds(1));
+
+    assertFalse(sequential.fullyUpdated());
+    assertTrue(sequential.totalUpdated() <= 11);
+    assertTrue(concurrent.fullyUpdated());
+    assertEquals(40, concurrent.totalUpdated());
+    assertTrue(concurrent.updatedList().stream().allMatch(Item::updated));
+  }
+
+  @Test
+  void updatesTheOldestInputsFirst() {
+    List<Item> items = items(10);
+
+    // Two rounds of two updates fit before the end time
+    UpdateResult<Item> result =
+        TimeLimitedUpdater.updateConcurrently(
+            items,
+            Item::id,
+            Item::ready,
+            oldestFirst,
+            1,
+            slowUpdate(250),
+            executor,
+            2,
+            OffsetDateTime.now().plus(Duration.ofMillis(400)));
+
+    assertEquals(10, result.totalEligible());
+    assertEquals(4, result.totalUpdated());
+    assertFalse(result.fullyUpdated());
+    assertEquals(
+        items.stream().sorted(oldestFirst).limit(4).map(Item::id).toList(),
+        result.updatedList().stream()
+            .filter(Item::updated)
+            .sorted(oldestFirst)
+            .map(Item::id)
+            .toList());
+  }
+
+  @Test
+  void skipsBatchesThatOnlyGetAThreadPastTheEndTime() throws Exception {
+    List<Item> items = items(4);
+    AtomicInteger batchesRun = new AtomicInteger();
+    Function<List<Item>, List<Item>> countedUpdate =
+        batch -> {
+          batchesRun.incrementAndGet();
+          return slowUpdate(300).apply(batch);
+        };
+    // A single thread shared with other updates, so the second batch waits for the first one
+    ExecutorService sharedExecutor = Executors.newSingleThreadExecutor();
+
+    try {
+      UpdateResult<Item> result =
+          TimeLimitedUpdater.updateConcurrently(
+              items,
+              Item::id,
+              Item::ready,
+              oldestFirst,
+              1,
+              countedUpdate,
+              sharedExecutor,
+              2,
+              OffsetDateTime.now().plus(Duration.ofMillis(150)));
+
+      // The first batch, running at the end time, is waited for and counted
+      assertEquals(1, result.totalUpdated());
+      assertFalse(result.fullyUpdated());
+      assertEquals(1, result.updatedList().stream().filter(Item::updated).count());
+      // and no batch is run once the result is returned
+      Thread.sleep(400);
+      assertEquals(1, batchesRun.get());
+    } finally {
+      sharedExecutor.shutdownNow();
+    }
+  }
+
+  @Test
+  void keepsInputOrderAndSkipsInputsNotReady() {
+    Item ready1 = new Item(UUID.randomUUID(), 1, true, false);
+    Item notReady = new Item(UUID.randomUUID(), 5, false, false);
+    Item ready2 = new Item(UUID.randomUUID(), 3, true, false);
+
+    UpdateResult<Item> result =
+        TimeLimitedUpdater.updateConcurrently(
+            List.of(ready1, notReady, ready2),
+            Item::id,
+            Item::ready,
+            oldestFirst,
+            1,
+            slowUpdate(0),
+            executor,
+            4,
+            OffsetDateTime.now().plusSeconds(5));
+
+    assertEquals(List.of(ready1.update(), notReady, ready2.update()), result.updatedList());
+    assertEquals(2, result.totalEligible());
+    assertEquals(2, result.totalUpdated());
+    assertTrue(result.fullyUpdated());
+  }
+
+  @Test
+  void inputsLeftOutByTheBatchUpdateAreNotCountedAsUpdated() {
+    List<Item> items = items(6);
+    // Updates only the first input of each batch, as if it ran out of time after it
+    Function<List<Item>, List<Item>> partialUpdate = batch -> List.of(batch.get(0).update());
+
+    UpdateResult<Item> sequential =
+        TimeLimitedUpdater.updateInBatches(
+            items,
+            Item::id,
+            Item::ready,
+            oldestFirst,
+            3,
+            partialUpdate,
+            OffsetDateTime.now().plusSeconds(5));
+    UpdateResult<Item> concurrent =
+        TimeLimitedUpdater.updateConcurrently(
+            items,
+            Item::id,
+            Item::ready,
+            oldestFirst,
+            3,
+            partialUpdate,
+            executor,
+            2,
+            OffsetDateTime.now().plusSeconds(5));
+
+    for (UpdateResult<Item> result : List.of(sequential, concurrent)) {
+      assertEquals(6, result.totalEligible());
+      assertEquals(2, result.totalUpdated());
+      assertFalse(result.fullyUpdated());
+      assertEquals(2, result.updatedList().stream().filter(Item::updated).count());
+    }
+  }
+
+  @Test
+  void failedUpdateIsRethrown() {
+    List<Item> items = items(4);
+    Function<List<Item>, List<Item>> failingUpdate =
+        batch -> {
+          throw new IllegalStateException("update failed");
+        };
+    OffsetDateTime endTime = OffsetDateTime.now().plusSeconds(5);
+
+    IllegalStateException thrown =
+        assertThrows(
+            IllegalStateException.class,
+            () ->
+                TimeLimitedUpdater.updateConcurrently(
+                    items,
+                    Item::id,
+                    Item::ready,
+                    oldestFirst,
+                    2,
+                    failingUpdate,
+                    executor,
+                    2,
+                    endTime));
+    assertEquals("update failed", thrown.getMessage());
+  }
+
+  private static List<Item> items(int count) {
+    return IntStream.range(0, count)
+        .mapToObj(i -> new Item(UUID.randomUUID(), (i * 7) % count, true, false))
+        .toList();
+  }
+
+  private static Function<List<Item>, List<Item>> slowUpdate(long millisPerBatch) {
+    return batch -> {
+      try {
+        Thread.sleep(millisPerBatch);
+      } catch (InterruptedException e) {
+        Thread.currentThread().interrupt();
+      }
+      return batch.stream().map(Item::update).toList();
+    };
+  }
+}
@@ -18,6 +18,7 @@ import bio.terra.cbas.common.MicrometerMetrics;
 import bio.terra.cbas.config.BardServerConfiguration;
 import bio.terra.cbas.config.CbasApiConfiguration;
 import bio.terra.cbas.config.CbasContextConfiguration;
+import bio.terra.cbas.config.SubmissionQueueConfiguration;
 import bio.terra.cbas.controllers.GlobalExceptionHandler;
 import bio.terra.cbas.controllers.MethodsApiController;
 import bio.terra.cbas.controllers.RunSetsApiController;
@@ -43,15 +44,19 @@ import bio.terra.cbas.models.CbasRunStatus;
 import bio.terra.cbas.models.GithubMethodDetails;
 import bio.terra.cbas.models.Method;
 import bio.terra.cbas.models.MethodVersion;
+import bio.terra.cbas.models.PollableRun;
 import bio.terra.cbas.models.Run;
 import bio.terra.cbas.models.RunSet;
 import bio.terra.cbas.monitoring.TimeLimitedUpdater;
 import bio.terra.cbas.runsets.monitoring.RunSetAbortManager;
 import bio.terra.cbas.runsets.monitoring.RunSetAbortManager.AbortRequestDetails;
+import bio.terra.cbas.runsets.monitoring.ScheduledPollEngine;
 import bio.terra.cbas.runsets.monitoring.SmartRunSetsPoller;
 import bio.terra.cbas.runsets.monitoring.SmartRunsPoller;
+import bio.terra.cbas.runsets.results.RunCallbackInbox;
 import bio.terra.cbas.runsets.results.RunCompletionHandler;
 import bio.terra.cbas.runsets.results.RunCompletionResult;
+import bio.terra.cbas.runsets.submission.SubmissionQueueWorker;
 import bio.terra.cbas.service.MethodService;
 import bio.terra.cbas.service.MethodVersionService;
 import bio.terra.cbas.service.RunSetsService;
@@ -111,9 +116,11 @@ class VerifyPactsAllControllers {
   @MockBean private RunDao runDao;
   @MockBean private SmartRunSetsPoller smartRunSetsPoller;
   @MockBean private SmartRunsPoller smartRunsPoller;
+  @MockBean private ScheduledPollEngine scheduledPollEngine;
   @MockBean private UuidSource uuidSource;
   @MockBean private RunSetAbortManager abortManager;
   @MockBean private RunCompletionHandler runCompletionHandler;
+  @MockBean private RunCallbackInbox runCallbackInbox;
   @Autowired private ObjectMapper objectMapper;
   @MockBean private MicrometerMetrics micrometerMetrics;
   @MockBean private CbasContextConfiguration cbasContextConfiguration;
@@ -126,6 +133,8 @@ class VerifyPactsAllControllers {
   @MockBean private BardService bardService;
   @MockBean private BardClient bardClient;
   @MockBean private BardServerConfiguration bardServerConfiguration;
+  @MockBean private SubmissionQueueConfiguration submissionQueueConfiguration;
+  @MockBean private SubmissionQueueWorker submissionQueueWorker;
 
   // This mockMVC is what we use to test API requests and responses:
   @Autowired private MockMvc mockMvc;
@@ -372,8 +381,8 @@ class VerifyPactsAllControllers {
     abortDetails.setSubmittedIds(List.of(runToBeCancelled.runId()));
 
     when(runSetDao.getRunSet(runSetId)).thenReturn(runToBeCancelled.runSet());
-    when(runDao.getRuns(new RunDao.RunsFilters(runSetId, any())))
-        .thenReturn(Collections.singletonList(runToBeCancelled));
+    when(runDao.getPollableRuns(new RunDao.RunsFilters(runSetId, any())))
+        .thenReturn(Collections.singletonList(PollableRun.of(runToBeCancelled)));
 
     when(abortManager.abortRunSet(eq(runToBeCancelled.runSet()), any())).thenReturn(abortDetails);
   }
@@ -396,10 +405,10 @@ class VerifyPactsAllControllers {
     when(samClient.checkAuthAccessWithSam()).thenReturn(true);
     when(samService.hasWritePermission(any())).thenReturn(true);
 
-    when(runDao.getRuns(new RunDao.RunsFilters(null, null, fixedCromwellRunUUID)))
-        .thenReturn(Collections.singletonList(runToBeUpdated));
+    when(runDao.getPollableRuns(new RunDao.RunsFilters(null, null, fixedCromwellRunUUID)))
+        .thenReturn(Collections.singletonList(PollableRun.of(runToBeUpdated)));
     when(runCompletionHandler.updateResults(
-            eq(runToBeUpdated),
+            eq(PollableRun.of(runToBeUpdated)),
             eq(CbasRunStatus.COMPLETE),
             any(),
             eq(Collections.EMPTY_LIST),
@@ -1,9 +1,24 @@
 package bio.terra.cbas.runsets.inputs;
 
+import bio.terra.cbas.model.ObjectBuilderField;
+import bio.terra.cbas.model.ParameterDefinition;
+import bio.terra.cbas.model.ParameterDefinitionLiteralValue;
+import bio.terra.cbas.model.ParameterDefinitionObjectBuilder;
+import bio.terra.cbas.model.ParameterDefinitionRecordLookup;
+import bio.terra.cbas.model.ParameterTypeDefinition;
+import bio.terra.cbas.model.ParameterTypeDefinitionArray;
+import bio.terra.cbas.model.ParameterTypeDefinitionOptional;
+import bio.terra.cbas.model.ParameterTypeDefinitionPrimitive;
+import bio.terra.cbas.model.ParameterTypeDefinitionStruct;
+import bio.terra.cbas.model.PrimitiveParameterValueType;
+import bio.terra.cbas.model.StructField;
 import bio.terra.cbas.model.WorkflowInputDefinition;
 import com.fasterxml.jackson.core.JsonProcessingException;
 import com.fasterxml.jackson.databind.DeserializationFeature;
 import com.fasterxml.jackson.databind.ObjectMapper;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.stream.IntStream;
 
 public final class StockInputDefinitions {
 
@@ -462,4 +477,77 @@ public final class StockInputDefinitions {
 
     return objectMapper.readValue(paramDefinitionJson, WorkflowInputDefinition.class);
   }
+
+  /**
+   * Inputs that are each a struct with {@code fieldsPerStruct} fields, built with an object builder
+   * from a mix of record lookups (plain, optional and array values) and literals.
+   */
+  public static List<WorkflowInputDefinition> wideStructDefinitions(
+      int inputCount, int fieldsPerStruct) {
+    return IntStream.range(0, inputCount)
+        .mapToObj(
+            inputIdx -> {
+              List<StructField> structFields = new ArrayList<>();
+              List<ObjectBuilderField> sourceFields = new ArrayList<>();
+              for (int fieldIdx = 0; fieldIdx < fieldsPerStruct; fieldIdx++) {
+                String fieldName = "field_%d".formatted(fieldIdx);
+                ParameterTypeDefinition fieldType;
+                ParameterDefinition fieldSource;
+                switch (fieldIdx % 4) {
+                  case 0 -> {
+                    fieldType = primitive(PrimitiveParameterValueType.INT);
+                    fieldSource = lookup("int_attr_%d".formatted(fieldIdx));
+                  }
+                  case 1 -> {
+                    fieldType =
+                        new ParameterTypeDefinitionOptional()
+                            .optionalType(primitive(PrimitiveParameterValueType.STRING))
+                            .type(ParameterTypeDefinition.TypeEnum.OPTIONAL);
+                    fieldSource = lookup("missing_attr_%d".formatted(fieldIdx));
+                  }
+                  case 2 -> {
+                    fieldType =
+                        new ParameterTypeDefinitionArray()
+                            .nonEmpty(true)
+                            .arrayType(primitive(PrimitiveParameterValueType.FILE))
+                            .type(ParameterTypeDefinition.TypeEnum.ARRAY);
+                    fieldSource = lookup("files_attr_%d".formatted(fieldIdx));
+                  }
+                  default -> {
+                    fieldType = primitive(PrimitiveParameterValueType.BOOLEAN);
+                    fieldSource =
+                        new ParameterDefinitionLiteralValue()
+                            .parameterValue(true)
+                            .type(ParameterDefinition.TypeEnum.LITERAL);
+                  }
+                }
+                structFields.add(new StructField().fieldName(fieldName).fieldType(fieldType));
+                sourceFields.add(new ObjectBuilderField().name(fieldName).source(fieldSource));
+              }
+              return new WorkflowInputDefinition()
+                  .inputName("wide_input_%d".formatted(inputIdx))
+                  .inputType(
+                      new ParameterTypeDefinitionStruct()
+                          .name("WideStruct_%d".formatted(inputIdx))
+                          .fields(structFields)
+                          .type(ParameterTypeDefinition.TypeEnum.STRUCT))
+                  .source(
+                      new ParameterDefinitionObjectBuilder()
+                          .fields(sourceFields)
+                          .type(ParameterDefinition.TypeEnum.OBJECT_BUILDER));
+            })
+        .toList();
+  }
+
+  private static ParameterTypeDefinition primitive(PrimitiveParameterValueType primitiveType) {
+    return new ParameterTypeDefinitionPrimitive()
+        .primitiveType(primitiveType)
+        .type(ParameterTypeDefinition.TypeEnum.PRIMITIVE);
+  }
+
+  private static ParameterDefinition lookup(String attribute) {
+    return new ParameterDefinitionRecordLookup()
+        .recordAttribute(attribute)
+        .type(ParameterDefinition.TypeEnum.RECORD_LOOKUP);
+  }
 }
@@ -3,6 +3,8 @@ package bio.terra.cbas.runsets.inputs;
 import com.fasterxml.jackson.core.JsonProcessingException;
 import com.fasterxml.jackson.databind.DeserializationFeature;
 import com.fasterxml.jackson.databind.ObjectMapper;
+import java.util.List;
+import org.databiosphere.workspacedata.model.RecordAttributes;
 import org.databiosphere.workspacedata.model.RecordResponse;
 
 public final class StockWdsRecordResponses {
@@ -41,4 +43,16 @@ public final class StockWdsRecordResponses {
             .trim(),
         RecordResponse.class);
   }
+
+  /** Attributes for every lookup in {@link StockInputDefinitions#wideStructDefinitions}. */
+  public static RecordResponse wideRecord(String recordId, int fieldsPerStruct, int seed) {
+    RecordAttributes recordAttributes = new RecordAttributes();
+    for (int fieldIdx = 0; fieldIdx < fieldsPerStruct; fieldIdx++) {
+      recordAttributes.put("int_attr_%d".formatted(fieldIdx), seed * 100 + fieldIdx);
+      recordAttributes.put(
+          "files_attr_%d".formatted(fieldIdx),
+          List.of("gs://bucket/%s/%d.bam".formatted(recordId, fieldIdx)));
+    }
+    return new RecordResponse().id(recordId).type("FOO").attributes(recordAttributes);
+  }
 }
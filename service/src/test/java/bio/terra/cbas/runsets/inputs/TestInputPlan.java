@@ -0,0 +1,169 @@
+package bio.terra.cbas.runsets.inputs;
+
+import static bio.terra.cbas.runsets.inputs.StockInputDefinitions.fooRatingRecordLookupParameter;
+import static bio.terra.cbas.runsets.inputs.StockInputDefinitions.inputDefinitionStructBuilderForOptionalInt;
+import static bio.terra.cbas.runsets.inputs.StockInputDefinitions.inputDefinitionWithArrayFooRatingParameter;
+import static bio.terra.cbas.runsets.inputs.StockInputDefinitions.inputDefinitionWithNestedOptionalStructInputsLiteral;
+import static bio.terra.cbas.runsets.inputs.StockInputDefinitions.inputDefinitionWithNestedOptionalStructInputsLookup;
+import static bio.terra.cbas.runsets.inputs.StockInputDefinitions.inputDefinitionWithOneNestedFieldStructFooRatingParameterObjectBuilder;
+import static bio.terra.cbas.runsets.inputs.StockInputDefinitions.inputDefinitionWithOptionalFooRatingParameter;
+import static bio.terra.cbas.runsets.inputs.StockInputDefinitions.inputDefinitionWithOptionalNoneParameter;
+import static bio.terra.cbas.runsets.inputs.StockInputDefinitions.nestedStructInputDefinitionWithBadFieldNamesInSource;
+import static bio.terra.cbas.runsets.inputs.StockInputDefinitions.objectBuilderSourceUsedForStringInput;
+import static bio.terra.cbas.runsets.inputs.StockInputDefinitions.wideStructDefinitions;
+import static bio.terra.cbas.runsets.inputs.StockWdsRecordResponses.emptyRecord;
+import static bio.terra.cbas.runsets.inputs.StockWdsRecordResponses.wdsRecordWithFooRating;
+import static bio.terra.cbas.runsets.inputs.StockWdsRecordResponses.wideRecord;
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+
+import bio.terra.cbas.common.exceptions.InputProcessingException.InappropriateInputSourceException;
+import bio.terra.cbas.common.exceptions.InputProcessingException.StructMissingFieldException;
+import bio.terra.cbas.common.exceptions.InputProcessingException.WorkflowAttributesNotFoundException;
+import bio.terra.cbas.model.WorkflowInputDefinition;
+import bio.terra.cbas.runsets.types.TypeCoercionException;
+import java.util.List;
+import java.util.Map;
+import org.databiosphere.workspacedata.model.RecordResponse;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.function.Executable;
+
+class TestInputPlan {
+
+  @Test
+  void matchesInputGeneratorForStockDefinitions() throws Exception {
+    List<WorkflowInputDefinition> definitions =
+        List.of(
+            inputDefinitionWithOptionalFooRatingParameter("Int"),
+            inputDefinitionWithNestedOptionalStructInputsLiteral());
+    RecordResponse record = wdsRecordWithFooRating("1000");
+
+    assertEquals(
+        InputGenerator.buildInputs(definitions, record),
+        InputPlan.compile(definitions).buildInputs(record));
+    assertEquals(
+        InputGenerator.buildInputs(definitions, emptyRecord()),
+        InputPlan.compile(definitions).buildInputs(emptyRecord()));
+  }
+
+  @Test
+  void matchesInputGeneratorForNestedStructs() throws Exception {
+    List<WorkflowInputDefinition> lookup =
+        List.of(inputDefinitionWithNestedOptionalStructInputsLookup());
+    List<WorkflowInputDefinition> objectBuilder =
+        List.of(
+            inputDefinitionWithOneNestedFieldStructFooRatingParameterObjectBuilder(
+                "struct_field", "inner_struct_field", "Int"));
+    RecordResponse record = wdsRecordWithFooRating("17");
+
+    assertEquals(
+        Map.of("lookup_foo", Map.of("foo", Map.of("x", 17L))),
+        InputPlan.compile(lookup).buildInputs(record));
+    assertEquals(
+        InputGenerator.buildInputs(objectBuilder, record),
+        InputPlan.compile(objectBuilder).buildInputs(record));
+  }
+
+  @Test
+  void onePlanAppliesToManyRecords() throws Exception {
+    InputPlan plan =
+        InputPlan.compile(List.of(inputDefinitionWithArrayFooRatingParameter(true, "Int")));
+
+    for (int i = 0; i < 10; i++) {
+      assertEquals(
+          Map.of("lookup_foo", List.of((long) i, (long) i + 1)),
+          plan.buildInputs(wdsRecordWithFooRating("[%d, %d]".formatted(i, i + 1))));
+    }
+  }
+
+  @Test
+  void matchesInputGeneratorForWideStructHeavyDefinitions() throws Exception {
+    List<WorkflowInputDefinition> definitions = wideStructDefinitions(50, 20);
+    InputPlan plan = InputPlan.compile(definitions);
+
+    for (int i = 0; i < 20; i++) {
+      RecordResponse record = wideRecord("RECORD_%d".formatted(i), 20, i);
+      assertEquals(InputGenerator.buildInputs(definitions, record), plan.buildInputs(record));
+    }
+  }
+
+  @Test
+  void laterDefinitionWithoutValueKeepsEarlierValue() throws Exception {
+    List<WorkflowInputDefinition> lookupThenNone =
+        List.of(
+            inputDefinitionWithOptionalFooRatingParameter("Int"),
+            inputDefinitionWithOptionalNoneParameter("Int"));
+    List<WorkflowInputDefinition> noneThenLookup =
+        List.of(
+            inputDefinitionWithOptionalNoneParameter("Int"),
+            inputDefinitionWithOptionalFooRatingParameter("Int"));
+
+    for (List<WorkflowInputDefinition> definitions : List.of(lookupThenNone, noneThenLookup)) {
+      InputPlan plan = InputPlan.compile(definitions);
+      for (RecordResponse record : List.of(wdsRecordWithFooRating("5"), emptyRecord())) {
+        Map<String, Object> expected = InputGenerator.buildInputs(definitions, record);
+
+        assertEquals(expected, plan.buildInputs(record));
+        assertEquals(
+            InputGenerator.inputsToJson(expected), new InputsJsonWriter(plan).inputsToJson(record));
+      }
+    }
+    assertEquals(
+        Map.of("lookup_foo", 5L),
+        InputPlan.compile(lookupThenNone).buildInputs(wdsRecordWithFooRating("5")));
+  }
+
+  @Test
+  void invalidDefinitionsFailWhenAppliedWithInputGeneratorErrors() throws Exception {
+    // Compiling never fails, the errors surface for each record like they do in InputGenerator
+    InputPlan missingField =
+        InputPlan.compile(
+            List.of(nestedStructInputDefinitionWithBadFieldNamesInSource("struct_field", "Int")));
+    InputPlan wrongSource = InputPlan.compile(List.of(objectBuilderSourceUsedForStringInput()));
+    InputPlan optionalNotStruct =
+        InputPlan.compile(List.of(inputDefinitionStructBuilderForOptionalInt()));
+    InputPlan missingAttribute = InputPlan.compile(List.of(fooRatingRecordLookupParameter("Int")));
+    InputPlan badValue = InputPlan.compile(List.of(fooRatingRecordLookupParameter("Int")));
+
+    assertSameError(
+        StructMissingFieldException.class,
+        () -> missingField.buildInputs(wdsRecordWithFooRating("5")),
+        () ->
+            InputGenerator.buildInputs(
+                List.of(
+                    nestedStructInputDefinitionWithBadFieldNamesInSource("struct_field", "Int")),
+                wdsRecordWithFooRating("5")));
+    assertSameError(
+        InappropriateInputSourceException.class,
+        () -> wrongSource.buildInputs(wdsRecordWithFooRating("5")),
+        () ->
+            InputGenerator.buildInputs(
+                List.of(objectBuilderSourceUsedForStringInput()), wdsRecordWithFooRating("5")));
+    assertSameError(
+        InappropriateInputSourceException.class,
+        () -> optionalNotStruct.buildInputs(emptyRecord()),
+        () ->
+            InputGenerator.buildInputs(
+                List.of(inputDefinitionStructBuilderForOptionalInt()), emptyRecord()));
+    assertSameError(
+        WorkflowAttributesNotFoundException.class,
+        () -> missingAttribute.buildInputs(emptyRecord()),
+        () ->
+            InputGenerator.buildInputs(
+                List.of(fooRatingRecordLookupParameter("Int")), emptyRecord()));
+    assertSameError(
+        TypeCoercionException.class,
+        () -> badValue.buildInputs(wdsRecordWithFooRating("\"not a number\"")),
+        () ->
+            InputGenerator.buildInputs(
+                List.of(fooRatingRecordLookupParameter("Int")),
+                wdsRecordWithFooRating("\"not a number\"")));
+  }
+
+  private static void assertSameError(
+      Class<? extends Exception> expectedType, Executable planned, Executable interpreted) {
+    Exception plannedError = assertThrows(expectedType, planned);
+    Exception interpretedError = assertThrows(expectedType, interpreted);
+    assertEquals(interpretedError.getMessage(), plannedError.getMessage());
+  }
+}
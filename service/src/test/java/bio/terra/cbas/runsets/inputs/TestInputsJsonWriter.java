@@ -0,0 +1,119 @@
+package bio.terra.cbas.runsets.inputs;
+
+import static bio.terra.cbas.runsets.inputs.StockInputDefinitions.fooRatingRecordLookupParameter;
+import static bio.terra.cbas.runsets.inputs.StockInputDefinitions.inputDefinitionWithMapFooRatingParameter;
+import static bio.terra.cbas.runsets.inputs.StockInputDefinitions.inputDefinitionWithNestedOptionalStructInputsLiteral;
+import static bio.terra.cbas.runsets.inputs.StockInputDefinitions.inputDefinitionWithOneFieldStructFooRatingParameterRecordLookup;
+import static bio.terra.cbas.runsets.inputs.StockInputDefinitions.nestedStructInputDefinitionWithBadFieldNamesInSource;
+import static bio.terra.cbas.runsets.inputs.StockInputDefinitions.wideStructDefinitions;
+import static bio.terra.cbas.runsets.inputs.StockWdsRecordResponses.wdsRecordWithFooRating;
+import static bio.terra.cbas.runsets.inputs.StockWdsRecordResponses.wideRecord;
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+
+import bio.terra.cbas.common.exceptions.InputProcessingException.StructMissingFieldException;
+import bio.terra.cbas.model.WorkflowInputDefinition;
+import bio.terra.cbas.runsets.types.TypeCoercionException;
+import bio.terra.cbas.runsets.types.ValueCoercionException;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import java.util.List;
+import org.databiosphere.workspacedata.model.RecordResponse;
+import org.junit.jupiter.api.Test;
+
+class TestInputsJsonWriter {
+
+  private final ObjectMapper objectMapper = new ObjectMapper();
+
+  @Test
+  void orderedKeysMatchInputGeneratorJson() throws Exception {
+    List<WorkflowInputDefinition> definitions =
+        List.of(
+            inputDefinitionWithMapFooRatingParameter("String", "Int"),
+            inputDefinitionWithNestedOptionalStructInputsLiteral());
+    RecordResponse record = wdsRecordWithFooRating("{ \"b\": 2, \"c\": 3, \"a\": 1 }");
+
+    InputsJsonWriter writer = new InputsJsonWriter(InputPlan.compile(definitions, true));
+
+    assertEquals(
+        InputGenerator.inputsToJson(InputGenerator.buildInputs(definitions, record)),
+        writer.inputsToJson(record));
+  }
+
+  @Test
+  void wideStructHeavyDefinitionsMatchInputGeneratorJson() throws Exception {
+    List<WorkflowInputDefinition> definitions = wideStructDefinitions(50, 20);
+    InputsJsonWriter orderedWriter = new InputsJsonWriter(InputPlan.compile(definitions, true));
+    InputsJsonWriter writer = new InputsJsonWriter(InputPlan.compile(definitions));
+
+    for (int i = 0; i < 20; i++) {
+      RecordResponse record = wideRecord("RECORD_%d".formatted(i), 20, i);
+      String expected =
+          InputGenerator.inputsToJson(InputGenerator.buildInputs(definitions, record));
+
+      assertEquals(expected, orderedWriter.inputsToJson(record));
+      // Without ordering only the order of the keys can differ
+      assertEquals(
+          objectMapper.readTree(expected), objectMapper.readTree(writer.inputsToJson(record)));
+    }
+  }
+
+  @Test
+  void writesDefinitionOrderByDefault() throws Exception {
+    InputsJsonWriter writer =
+        new InputsJsonWriter(
+            InputPlan.compile(
+                List.of(
+                    inputDefinitionWithOneFieldStructFooRatingParameterRecordLookup(
+                        "struct_field", "Int"),
+                    inputDefinitionWithNestedOptionalStructInputsLiteral())));
+
+    assertEquals(
+        "{\"lookup_foo\":{\"struct_field\":5},\"literal_foo\":{\"foo\":{\"x\":17}}}",
+        writer.inputsToJson(wdsRecordWithFooRating("{ \"struct_field\": 5 }")));
+  }
+
+  @Test
+  void failedRecordDoesNotLeakIntoNextRecord() throws Exception {
+    InputsJsonWriter writer =
+        new InputsJsonWriter(InputPlan.compile(List.of(fooRatingRecordLookupParameter("Int"))));
+
+    assertEquals("{\"lookup_foo\":1}", writer.inputsToJson(wdsRecordWithFooRating("1")));
+    assertThrows(
+        TypeCoercionException.class,
+        () -> writer.inputsToJson(wdsRecordWithFooRating("\"not a number\"")));
+    assertEquals("{\"lookup_foo\":2}", writer.inputsToJson(wdsRecordWithFooRating("2")));
+  }
+
+  @Test
+  void invalidInputsFailLikeInputGenerator() throws Exception {
+    InputsJsonWriter missingField =
+        new InputsJsonWriter(
+            InputPlan.compile(
+                List.of(
+                    nestedStructInputDefinitionWithBadFieldNamesInSource("struct_field", "Int"))));
+    InputsJsonWriter missingStructField =
+        new InputsJsonWriter(
+            InputPlan.compile(
+                List.of(
+                    inputDefinitionWithOneFieldStructFooRatingParameterRecordLookup(
+                        "struct_field", "Int"))));
+
+    assertThrows(
+        StructMissingFieldException.class,
+        () -> missingField.inputsToJson(wdsRecordWithFooRating("5")));
+    ValueCoercionException error =
+        assertThrows(
+            ValueCoercionException.class,
+            () -> missingStructField.inputsToJson(wdsRecordWithFooRating("{ \"oops\": 5 }")));
+    ValueCoercionException expected =
+        assertThrows(
+            ValueCoercionException.class,
+            () ->
+                InputGenerator.buildInputs(
+                    List.of(
+                        inputDefinitionWithOneFieldStructFooRatingParameterRecordLookup(
+                            "struct_field", "Int")),
+                    wdsRecordWithFooRating("{ \"oops\": 5 }")));
+    assertEquals(expected.getMessage(), error.getMessage());
+  }
+}
@@ -0,0 +1,134 @@
+package bio.terra.cbas.runsets.monitoring;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+import static org.mockito.Mockito.verify;
+import static org.mockito.Mockito.when;
+
+import bio.terra.cbas.dao.MethodDao;
+import bio.terra.cbas.dao.MethodVersionDao;
+import bio.terra.cbas.dao.RunDao;
+import bio.terra.cbas.dao.RunSetDao;
+import bio.terra.cbas.dao.util.ContainerizedDatabaseTest;
+import bio.terra.cbas.dependencies.wes.CromwellService;
+import bio.terra.cbas.models.CbasMethodStatus;
+import bio.terra.cbas.models.CbasRunSetStatus;
+import bio.terra.cbas.models.CbasRunStatus;
+import bio.terra.cbas.models.Method;
+import bio.terra.cbas.models.MethodVersion;
+import bio.terra.cbas.models.PollableRun;
+import bio.terra.cbas.models.Run;
+import bio.terra.cbas.models.RunSet;
+import bio.terra.common.iam.BearerToken;
+import cromwell.client.model.WorkflowQueryResult;
+import java.time.OffsetDateTime;
+import java.util.List;
+import java.util.Map;
+import java.util.Optional;
+import java.util.UUID;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.test.mock.mockito.MockBean;
+import org.springframework.jdbc.core.namedparam.MapSqlParameterSource;
+import org.springframework.jdbc.core.namedparam.NamedParameterJdbcTemplate;
+
+/** Checks that the runs claimed by the poll engine are polled, against a real database. */
+class TestClaimedRunsPolling extends ContainerizedDatabaseTest {
+
+  @Autowired RunDao runDao;
+  @Autowired RunSetDao runSetDao;
+  @Autowired MethodDao methodDao;
+  @Autowired MethodVersionDao methodVersionDao;
+  @Autowired SmartRunsPoller smartRunsPoller;
+  @Autowired NamedParameterJdbcTemplate jdbcTemplate;
+  @MockBean CromwellService cromwellService;
+
+  private final UUID workspaceId = UUID.randomUUID();
+
+  Method method =
+      new Method(
+          UUID.randomUUID(),
+          "fetch_sra_to_bam",
+          "fetch_sra_to_bam",
+          OffsetDateTime.parse("2023-01-27T19:21:24.563932Z"),
+          null,
+          "Github",
+          workspaceId,
+          Optional.empty(),
+          CbasMethodStatus.ACTIVE);
+
+  MethodVersion methodVersion =
+      new MethodVersion(
+          UUID.randomUUID(),
+          method,
+          "1.0",
+          "fetch_sra_to_bam sample submission",
+          OffsetDateTime.parse("2023-01-27T19:21:24.563932Z"),
+          null,
+          "https://raw.githubusercontent.com/broadinstitute/viral-pipelines/master/pipes/WDL/workflows/fetch_sra_to_bam.wdl",
+          workspaceId,
+          "develop",
+          Optional.empty());
+
+  RunSet runSet =
+      new RunSet(
+          UUID.randomUUID(),
+          methodVersion,
+          "fetch_sra_to_bam workflow",
+          "fetch_sra_to_bam sample submission",
+          false,
+          false,
+          CbasRunSetStatus.RUNNING,
+          OffsetDateTime.parse("2023-01-27T19:21:24.563932Z"),
+          OffsetDateTime.parse("2023-01-27T19:21:24.563932Z"),
+          OffsetDateTime.parse("2023-01-27T19:21:24.563932Z"),
+          1,
+          0,
+          "[]",
+          "[]",
+          "sample",
+          "user-foo",
+          workspaceId);
+
+  @BeforeEach
+  void init() {
+    methodDao.createMethod(method);
+    methodVersionDao.createMethodVersion(methodVersion);
+    runSetDao.createRunSet(runSet);
+    jdbcTemplate.update(
+        "INSERT INTO run_set_user_token (run_set_id, user_token, user_token_expires_timestamp)"
+            + " VALUES (:run_set_id, 'encrypted-token', now() + interval '1 hour')",
+        new MapSqlParameterSource(RunSet.RUN_SET_ID_COL, runSet.runSetId()));
+  }
+
+  @Test
+  void claimedRunningRunIsCompleted() throws Exception {
+    OffsetDateTime lastPolled = OffsetDateTime.now().minusHours(1);
+    Run run =
+        new Run(
+            UUID.randomUUID(),
+            "engine-1",
+            runSet,
+            "record-1",
+            lastPolled,
+            CbasRunStatus.RUNNING,
+            lastPolled,
+            lastPolled,
+            null);
+    runDao.createRun(run);
+    when(cromwellService.runSummaries(List.of("engine-1")))
+        .thenReturn(
+            Map.of("engine-1", new WorkflowQueryResult().id("engine-1").status("Succeeded")));
+    when(cromwellService.getOutputs("engine-1")).thenReturn(Map.of());
+
+    List<PollableRun> claimed = runDao.claimRunsToPoll(OffsetDateTime.now().minusMinutes(1), 10);
+    var result = smartRunsPoller.updateRuns(claimed, new BearerToken("user-token"));
+
+    verify(cromwellService).runSummaries(List.of("engine-1"));
+    assertEquals(1, result.totalUpdated());
+    assertTrue(result.fullyUpdated());
+    List<Run> runs = runDao.getRuns(new RunDao.RunsFilters(runSet.runSetId(), null));
+    assertEquals(CbasRunStatus.COMPLETE, runs.get(0).status());
+  }
+}
@@ -3,26 +3,34 @@ package bio.terra.cbas.runsets.monitoring;
 import static bio.terra.cbas.models.CbasRunStatus.CANCELING;
 import static bio.terra.cbas.models.CbasRunStatus.NON_TERMINAL_STATES;
 import static bio.terra.cbas.models.CbasRunStatus.RUNNING;
+import static bio.terra.cbas.models.CbasRunStatus.SYSTEM_ERROR;
 import static org.junit.jupiter.api.Assertions.assertEquals;
 import static org.junit.jupiter.api.Assertions.assertNotSame;
 import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.ArgumentMatchers.anyInt;
 import static org.mockito.ArgumentMatchers.eq;
 import static org.mockito.Mockito.doThrow;
+import static org.mockito.Mockito.never;
 import static org.mockito.Mockito.times;
 import static org.mockito.Mockito.verify;
 import static org.mockito.Mockito.when;
 
+import bio.terra.cbas.config.RunSetAbortConfiguration;
 import bio.terra.cbas.dao.RunDao;
+import bio.terra.cbas.dao.RunSetAbortDao;
 import bio.terra.cbas.dao.RunSetDao;
 import bio.terra.cbas.dependencies.wes.CromwellService;
 import bio.terra.cbas.models.CbasRunSetStatus;
-import bio.terra.cbas.models.Run;
+import bio.terra.cbas.models.PollableRun;
+import bio.terra.cbas.models.PollableRunSet;
 import bio.terra.cbas.models.RunSet;
 import bio.terra.common.iam.BearerToken;
 import cromwell.client.ApiException;
 import java.util.ArrayList;
 import java.util.List;
 import java.util.UUID;
+import java.util.concurrent.Executor;
+import org.junit.jupiter.api.BeforeEach;
 import org.junit.jupiter.api.Test;
 import org.mockito.ArgumentCaptor;
 import org.springframework.boot.test.autoconfigure.web.servlet.WebMvcTest;
@@ -35,14 +43,34 @@ class TestRunSetAbortManager {
 
   @MockBean private RunSetDao runSetDao;
   @MockBean private RunDao runDao;
+  @MockBean private RunSetAbortDao runSetAbortDao;
   @MockBean private CromwellService cromwellService;
+  @MockBean private RunSetAbortConfiguration runSetAbortConfiguration;
+
+  @MockBean(name = "runSetAbortExecutor")
+  private Executor abortExecutor;
+
   private final UUID workspaceId = UUID.randomUUID();
   private final BearerToken mockToken = new BearerToken("mock-token");
 
+  @BeforeEach
+  void init() {
+    when(runSetAbortDao.startAbort(any(), anyInt(), anyInt())).thenReturn(1);
+  }
+
+  private RunSetAbortManager abortManager(boolean enabled, Executor executor) {
+    return new RunSetAbortManager(
+        runSetDao,
+        runDao,
+        runSetAbortDao,
+        cromwellService,
+        new RunSetAbortConfiguration(enabled, 10, 600),
+        executor);
+  }
+
   @Test
   void testRunSetAbort() throws ApiException {
-    RunSetAbortManager runSetAbortManager =
-        new RunSetAbortManager(runSetDao, runDao, cromwellService);
+    RunSetAbortManager runSetAbortManager = abortManager(false, Runnable::run);
 
     UUID runSetId = UUID.randomUUID();
     UUID runId1 = UUID.randomUUID();
@@ -68,34 +96,27 @@ class TestRunSetAbortManager {
             null,
             workspaceId);
 
-    Run run1Running =
-        new Run(
+    PollableRun run1Running =
+        new PollableRun(
             runId1,
             UUID.randomUUID().toString(),
-            runSetToBeCancelled,
-            null,
+            PollableRunSet.of(runSetToBeCancelled),
             null,
             RUNNING,
             null,
-            null,
             null);
 
-    Run run2Running =
-        new Run(
+    PollableRun run2Running =
+        new PollableRun(
             runId2,
             UUID.randomUUID().toString(),
-            runSetToBeCancelled,
-            null,
+            PollableRunSet.of(runSetToBeCancelled),
             null,
             RUNNING,
             null,
-            null,
             null);
 
-    when(runDao.createRun(run1Running)).thenReturn(1);
-    when(runDao.createRun(run2Running)).thenReturn(1);
-
-    List<Run> runs = new ArrayList<>();
+    List<PollableRun> runs = new ArrayList<>();
     runs.add(run1Running);
     runs.add(run2Running);
 
@@ -105,15 +126,16 @@ class TestRunSetAbortManager {
             eq(runSetId), eq(CbasRunSetStatus.CANCELING), eq(2), eq(0), any()))
         .thenReturn(1);
 
-    when(runDao.getRuns(new RunDao.RunsFilters(runSetId, NON_TERMINAL_STATES))).thenReturn(runs);
+    when(runDao.getPollableRuns(new RunDao.RunsFilters(runSetId, NON_TERMINAL_STATES)))
+        .thenReturn(runs);
 
-    when(runDao.getRuns(any())).thenReturn(runs);
+    when(runDao.getPollableRuns(any())).thenReturn(runs);
 
     var result = runSetAbortManager.abortRunSet(runSetToBeCancelled, mockToken);
 
-    ArgumentCaptor<Run> newRunCaptor = ArgumentCaptor.forClass(Run.class);
+    ArgumentCaptor<PollableRun> newRunCaptor = ArgumentCaptor.forClass(PollableRun.class);
     verify(cromwellService, times(2)).cancelRun(newRunCaptor.capture(), any());
-    List<Run> capturedRuns = newRunCaptor.getAllValues();
+    List<PollableRun> capturedRuns = newRunCaptor.getAllValues();
     assertEquals(2, capturedRuns.size());
     assertEquals(run1Running.runId(), capturedRuns.get(0).runId());
     assertEquals(run1Running.status(), capturedRuns.get(0).status());
@@ -131,8 +153,7 @@ class TestRunSetAbortManager {
 
   @Test
   void oneFailedOneSucceededRun() throws Exception {
-    RunSetAbortManager runSetAbortManager =
-        new RunSetAbortManager(runSetDao, runDao, cromwellService);
+    RunSetAbortManager runSetAbortManager = abortManager(false, Runnable::run);
 
     UUID runSetId = UUID.randomUUID();
     UUID runId1 = UUID.randomUUID();
@@ -158,39 +179,33 @@ class TestRunSetAbortManager {
             null,
             workspaceId);
 
-    Run run1Running =
-        new Run(
+    PollableRun run1Running =
+        new PollableRun(
             runId1,
             UUID.randomUUID().toString(),
-            runSetToBeCancelled,
-            null,
+            PollableRunSet.of(runSetToBeCancelled),
             null,
             RUNNING,
             null,
-            null,
             null);
 
-    Run run2Running =
-        new Run(
+    PollableRun run2Running =
+        new PollableRun(
             runId2,
             UUID.randomUUID().toString(),
-            runSetToBeCancelled,
-            null,
+            PollableRunSet.of(runSetToBeCancelled),
             null,
             RUNNING,
             null,
-            null,
             null);
 
-    when(runDao.createRun(run1Running)).thenReturn(1);
-    when(runDao.createRun(run2Running)).thenReturn(1);
-
-    List<Run> runs = new ArrayList<>();
+    List<PollableRun> runs = new ArrayList<>();
     runs.add(run1Running);
     runs.add(run2Running);
 
     when(runSetDao.getRunSet(runSetId)).thenReturn(runSetToBeCancelled);
-    when(runDao.getRuns(new RunDao.RunsFilters(runSetId, NON_TERMINAL_STATES))).thenReturn(runs);
+    when(runDao.getPollableRuns(new RunDao.RunsFilters(runSetId, NON_TERMINAL_STATES)))
+        .thenReturn(runs);
     when(runSetDao.updateStateAndRunSetDetails(
             eq(runSetId), eq(CbasRunSetStatus.CANCELING), eq(2), eq(0), any()))
         .thenReturn(1);
@@ -207,4 +222,106 @@ class TestRunSetAbortManager {
     assertEquals(runId2.toString(), result.getAbortRequestFailedIds().get(0));
     assertNotSame(CANCELING, run2Running.status());
   }
+
+  private RunSet runningRunSet() {
+    return new RunSet(
+        UUID.randomUUID(),
+        null,
+        "",
+        "",
+        false,
+        false,
+        CbasRunSetStatus.RUNNING,
+        null,
+        null,
+        null,
+        2,
+        0,
+        null,
+        null,
+        null,
+        null,
+        workspaceId);
+  }
+
+  private PollableRun runningRun(RunSet runSet) {
+    return new PollableRun(
+        UUID.randomUUID(),
+        UUID.randomUUID().toString(),
+        PollableRunSet.of(runSet),
+        null,
+        RUNNING,
+        null,
+        null);
+  }
+
+  @Test
+  void sendsAbortRequestsAfterReturningWhenEnabled() throws Exception {
+    List<Runnable> pendingAbortRequests = new ArrayList<>();
+    RunSetAbortManager runSetAbortManager = abortManager(true, pendingAbortRequests::add);
+
+    RunSet runSet = runningRunSet();
+    PollableRun run1 = runningRun(runSet);
+    PollableRun run2 = runningRun(runSet);
+    when(runDao.getPollableRuns(any())).thenReturn(List.of(run1, run2));
+
+    var result = runSetAbortManager.abortRunSet(runSet, mockToken);
+
+    // The run set is CANCELING before any abort request is sent
+    verify(runSetDao)
+        .updateStateAndRunSetDetails(
+            eq(runSet.runSetId()), eq(CbasRunSetStatus.CANCELING), eq(2), eq(0), any());
+    verify(runSetAbortDao).startAbort(runSet.runSetId(), 2, 600);
+    verify(cromwellService, never()).cancelRun(any(), any());
+    assertEquals(List.of(run1.runId(), run2.runId()), result.getAbortRequestSubmittedIds());
+    assertEquals(List.of(), result.getAbortRequestFailedIds());
+
+    pendingAbortRequests.forEach(Runnable::run);
+
+    verify(cromwellService).cancelRun(run1, mockToken);
+    verify(cromwellService).cancelRun(run2, mockToken);
+    verify(runSetAbortDao, times(2)).recordAbortRequestSubmitted(runSet.runSetId());
+    verify(runSetAbortDao).completeAbort(runSet.runSetId());
+  }
+
+  @Test
+  void recordsOutcomeOfEachAbortRequest() throws Exception {
+    RunSetAbortManager runSetAbortManager = abortManager(false, Runnable::run);
+
+    RunSet runSet = runningRunSet();
+    PollableRun run1 = runningRun(runSet);
+    PollableRun run2 = runningRun(runSet);
+    when(runDao.getPollableRuns(any())).thenReturn(List.of(run1, run2));
+    doThrow(new ApiException("Cromwell is unavailable"))
+        .when(cromwellService)
+        .cancelRun(run2, mockToken);
+
+    runSetAbortManager.abortRunSet(runSet, mockToken);
+
+    verify(runSetAbortDao).recordAbortRequestSubmitted(runSet.runSetId());
+    verify(runSetAbortDao).recordAbortRequestFailed(runSet.runSetId(), run2.runId());
+    verify(runDao)
+        .updateRunStatusWithError(
+            eq(run2.runId()),
+            eq(SYSTEM_ERROR),
+            any(),
+            eq("Unable to abort workflow %s.".formatted(run2.runId())));
+    verify(runSetAbortDao).completeAbort(runSet.runSetId());
+  }
+
+  @Test
+  void sendsNothingWhileAnotherAbortIsInProgress() throws Exception {
+    RunSetAbortManager runSetAbortManager = abortManager(false, Runnable::run);
+
+    RunSet runSet = runningRunSet();
+    when(runDao.getPollableRuns(any())).thenReturn(List.of(runningRun(runSet)));
+    when(runSetAbortDao.startAbort(any(), anyInt(), anyInt())).thenReturn(0);
+
+    var result = runSetAbortManager.abortRunSet(runSet, mockToken);
+
+    verify(cromwellService, never()).cancelRun(any(), any());
+    verify(runSetAbortDao, never()).completeAbort(any());
+    assertEquals(List.of(), result.getAbortRequestSubmittedIds());
+    assertEquals(List.of(), result.getAbortRequestFailedIds());
+  }
 }
@@ -0,0 +1,71 @@
+package bio.terra.cbas.runsets.monitoring;
+
+import static org.junit.jupiter.api.Assertions.assertDoesNotThrow;
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.ArgumentMatchers.anyInt;
+import static org.mockito.Mockito.RETURNS_MOCKS;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.never;
+import static org.mockito.Mockito.verify;
+import static org.mockito.Mockito.when;
+
+import bio.terra.cbas.common.MicrometerMetrics;
+import bio.terra.cbas.config.StatusCountsCheckConfiguration;
+import bio.terra.cbas.dao.RunDao;
+import java.util.List;
+import java.util.UUID;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.springframework.scheduling.TaskScheduler;
+
+class TestRunSetStatusCountsChecker {
+
+  // Long enough that the check thread does not check during a test
+  private static final long CHECK_INTERVAL_SECONDS = 600;
+
+  private RunDao runDao;
+  private MicrometerMetrics micrometerMetrics;
+  private final TaskScheduler taskScheduler = mock(TaskScheduler.class, RETURNS_MOCKS);
+  private RunSetStatusCountsChecker checker;
+
+  @BeforeEach
+  void init() {
+    runDao = mock(RunDao.class);
+    micrometerMetrics = mock(MicrometerMetrics.class);
+    checker =
+        new RunSetStatusCountsChecker(
+            runDao,
+            micrometerMetrics,
+            new StatusCountsCheckConfiguration(CHECK_INTERVAL_SECONDS),
+            taskScheduler);
+  }
+
+  @AfterEach
+  void shutdown() {
+    checker.destroy();
+  }
+
+  @Test
+  void rebuildsOnlyStaleRunSets() {
+    UUID staleRunSetId1 = UUID.randomUUID();
+    UUID staleRunSetId2 = UUID.randomUUID();
+    when(runDao.getRunSetsWithStaleStatusCounts(anyInt()))
+        .thenReturn(List.of(staleRunSetId1, staleRunSetId2));
+
+    checker.checkStatusCounts();
+
+    verify(runDao).rebuildRunSetStatusCounts(staleRunSetId1);
+    verify(runDao).rebuildRunSetStatusCounts(staleRunSetId2);
+    verify(micrometerMetrics).increaseEventCounter("run_set_status_counts_rebuilt", 2);
+  }
+
+  @Test
+  void failedCheckDoesNotStopTheSchedule() {
+    when(runDao.getRunSetsWithStaleStatusCounts(anyInt()))
+        .thenThrow(new RuntimeException("database unavailable"));
+
+    assertDoesNotThrow(() -> checker.checkStatusCounts());
+    verify(runDao, never()).rebuildRunSetStatusCounts(any());
+  }
+}
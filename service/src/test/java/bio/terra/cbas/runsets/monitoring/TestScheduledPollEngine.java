@@ -0,0 +1,272 @@
+package bio.terra.cbas.runsets.monitoring;
+
+import static org.junit.jupiter.api.Assertions.assertDoesNotThrow;
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.ArgumentMatchers.anyInt;
+import static org.mockito.ArgumentMatchers.argThat;
+import static org.mockito.ArgumentMatchers.eq;
+import static org.mockito.Mockito.RETURNS_MOCKS;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.never;
+import static org.mockito.Mockito.times;
+import static org.mockito.Mockito.verify;
+import static org.mockito.Mockito.verifyNoInteractions;
+import static org.mockito.Mockito.when;
+
+import bio.terra.cbas.common.MicrometerMetrics;
+import bio.terra.cbas.config.CbasApiConfiguration;
+import bio.terra.cbas.config.PollEngineConfiguration;
+import bio.terra.cbas.dao.RunDao;
+import bio.terra.cbas.dao.RunSetDao;
+import bio.terra.cbas.dao.RunSetUserTokenDao;
+import bio.terra.cbas.dependencies.sam.SamService;
+import bio.terra.cbas.models.CbasRunSetStatus;
+import bio.terra.cbas.models.CbasRunStatus;
+import bio.terra.cbas.models.PollableRun;
+import bio.terra.cbas.models.Run;
+import bio.terra.cbas.models.RunSet;
+import bio.terra.cbas.monitoring.TimeLimitedUpdater.UpdateResult;
+import bio.terra.common.iam.BearerToken;
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import java.time.Duration;
+import java.time.Instant;
+import java.time.OffsetDateTime;
+import java.util.List;
+import java.util.Map;
+import java.util.UUID;
+import org.broadinstitute.dsde.workbench.client.sam.model.UserStatusInfo;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.springframework.scheduling.TaskScheduler;
+
+class TestScheduledPollEngine {
+
+  // Long enough that the poll thread does not poll during a test
+  private static final long POLL_INTERVAL_MILLIS = 60_000;
+  // 20 runs per second, polled every minute
+  private static final int RUNS_PER_POLL = 1200;
+  private static final int RUN_SETS_PER_POLL = 5;
+  private static final int STALE_AFTER_SECONDS = 120;
+
+  private final BearerToken userToken = new BearerToken("mock-token");
+  private final TaskScheduler taskScheduler = mock(TaskScheduler.class, RETURNS_MOCKS);
+
+  private SmartRunsPoller smartRunsPoller;
+  private SmartRunSetsPoller smartRunSetsPoller;
+  private RunDao runDao;
+  private RunSetDao runSetDao;
+  private RunSetUserTokenDao runSetUserTokenDao;
+  private SamService samService;
+  private CbasApiConfiguration cbasApiConfiguration;
+  private ScheduledPollEngine engine;
+
+  @BeforeEach
+  void init() {
+    smartRunsPoller = mock(SmartRunsPoller.class);
+    smartRunSetsPoller = mock(SmartRunSetsPoller.class);
+    runDao = mock(RunDao.class);
+    runSetDao = mock(RunSetDao.class);
+    runSetUserTokenDao = mock(RunSetUserTokenDao.class);
+    samService = mock(SamService.class);
+    cbasApiConfiguration = new CbasApiConfiguration();
+    cbasApiConfiguration.setMinSecondsBetweenRunStatusPolls(30);
+  }
+
+  @AfterEach
+  void stopEngine() {
+    if (engine != null) {
+      engine.destroy();
+    }
+  }
+
+  private ScheduledPollEngine engine(boolean enabled) {
+    engine =
+        new ScheduledPollEngine(
+            smartRunsPoller,
+            smartRunSetsPoller,
+            runDao,
+            runSetDao,
+            runSetUserTokenDao,
+            samService,
+            new PollEngineConfiguration(
+                enabled, POLL_INTERVAL_MILLIS, 20, RUN_SETS_PER_POLL, STALE_AFTER_SECONDS),
+            cbasApiConfiguration,
+            new MicrometerMetrics(new SimpleMeterRegistry()),
+            taskScheduler);
+    return engine;
+  }
+
+  @Test
+  void pollsClaimedRunsWithTheTokensOfTheirRunSets() {
+    UUID fooRunSetId = UUID.randomUUID();
+    UUID barRunSetId = UUID.randomUUID();
+    PollableRun fooRun1 = pollableRun(fooRunSetId);
+    PollableRun fooRun2 = pollableRun(fooRunSetId);
+    PollableRun barRun = pollableRun(barRunSetId);
+    when(runDao.claimRunsToPoll(any(), eq(RUNS_PER_POLL)))
+        .thenReturn(List.of(fooRun1, barRun, fooRun2));
+    when(runSetUserTokenDao.getUserTokens(any()))
+        .thenReturn(Map.of(fooRunSetId, "foo-token", barRunSetId, "bar-token"));
+
+    engine(true);
+    engine.poll();
+
+    verify(runDao)
+        .claimRunsToPoll(
+            argThat(polledBefore -> polledBefore.isBefore(OffsetDateTime.now().minusSeconds(29))),
+            eq(RUNS_PER_POLL));
+    verify(smartRunsPoller)
+        .updateRuns(
+            eq(List.of(fooRun1, fooRun2)), argThat(token -> token.getToken().equals("foo-token")));
+    verify(smartRunsPoller)
+        .updateRuns(eq(List.of(barRun)), argThat(token -> token.getToken().equals("bar-token")));
+  }
+
+  @Test
+  void skipsRunsWithoutUserToken() {
+    UUID runSetId = UUID.randomUUID();
+    when(runDao.claimRunsToPoll(any(), anyInt())).thenReturn(List.of(pollableRun(runSetId)));
+    when(runSetUserTokenDao.getUserTokens(any())).thenReturn(Map.of());
+
+    engine(true);
+    engine.poll();
+
+    verifyNoInteractions(smartRunsPoller);
+  }
+
+  @Test
+  void refreshesClaimedRunSets() {
+    RunSet runSet = mock(RunSet.class);
+    when(runSetDao.claimRunSetsToRefresh(any(), eq(RUN_SETS_PER_POLL)))
+        .thenReturn(List.of(runSet));
+
+    engine(true);
+    engine.poll();
+
+    verify(smartRunSetsPoller).refreshRunSets(List.of(runSet));
+  }
+
+  @Test
+  void storesOfferedUserTokenOnce() {
+    when(samService.getSamUser(userToken))
+        .thenReturn(new UserStatusInfo().userSubjectId("user-foo"));
+
+    engine(true);
+    engine.offerUserToken(userToken);
+    engine.poll();
+    // Stored recently, so not stored again
+    engine.offerUserToken(userToken);
+    engine.poll();
+
+    verify(runSetUserTokenDao, times(1)).storeUserToken("user-foo", "mock-token");
+  }
+
+  @Test
+  void doesNotStoreOfferedUserTokenAgainOnceStoredWithNewRunSet() {
+    engine(true);
+    engine.storeUserToken("user-foo", userToken);
+    engine.offerUserToken(userToken);
+    engine.poll();
+
+    verify(runSetUserTokenDao, times(1)).storeUserToken("user-foo", "mock-token");
+    verifyNoInteractions(samService);
+  }
+
+  @Test
+  void doesNotPollWhenDisabled() {
+    engine(false);
+    engine.offerUserToken(userToken);
+    engine.storeUserToken("user-foo", userToken);
+    engine.poll();
+
+    verifyNoInteractions(
+        runDao,
+        runSetDao,
+        runSetUserTokenDao,
+        samService,
+        smartRunsPoller,
+        smartRunSetsPoller,
+        taskScheduler);
+  }
+
+  @Test
+  void schedulesPollsOnTheTaskScheduler() {
+    engine(true);
+
+    verify(taskScheduler)
+        .scheduleWithFixedDelay(
+            any(Runnable.class), any(Instant.class), eq(Duration.ofMillis(POLL_INTERVAL_MILLIS)));
+  }
+
+  @Test
+  void failedPollDoesNotStopTheSchedule() {
+    when(runDao.claimRunsToPoll(any(), anyInt()))
+        .thenThrow(new RuntimeException("Database is down"));
+
+    engine(true);
+    assertDoesNotThrow(engine::poll);
+
+    verify(smartRunsPoller, never()).updateRuns(any(), any());
+  }
+
+  @Test
+  void runsAreFullyUpdatedOnlyIfAllPolledRecently() {
+    Run recentlyPolled = run(UUID.randomUUID(), OffsetDateTime.now().minusSeconds(10));
+    Run stale = run(UUID.randomUUID(), OffsetDateTime.now().minusMinutes(10));
+    Run complete = mock(Run.class);
+    when(complete.status()).thenReturn(CbasRunStatus.COMPLETE);
+
+    engine(false);
+
+    UpdateResult<Run> upToDate = engine.runsAsPolled(List.of(recentlyPolled, complete));
+    assertTrue(upToDate.fullyUpdated());
+    assertEquals(1, upToDate.totalEligible());
+
+    UpdateResult<Run> outOfDate = engine.runsAsPolled(List.of(recentlyPolled, stale, complete));
+    assertFalse(outOfDate.fullyUpdated());
+    assertEquals(List.of(recentlyPolled, stale, complete), outOfDate.updatedList());
+    assertEquals(2, outOfDate.totalEligible());
+    assertEquals(1, outOfDate.totalUpdated());
+  }
+
+  @Test
+  void runSetsAreFullyUpdatedOnlyIfAllRefreshedRecently() {
+    RunSet recentlyRefreshed = runSet(CbasRunSetStatus.RUNNING, OffsetDateTime.now());
+    RunSet neverRefreshed = runSet(CbasRunSetStatus.RUNNING, null);
+    RunSet complete = runSet(CbasRunSetStatus.COMPLETE, null);
+
+    engine(false);
+
+    assertTrue(engine.runSetsAsPolled(List.of(recentlyRefreshed, complete)).fullyUpdated());
+    assertFalse(engine.runSetsAsPolled(List.of(recentlyRefreshed, neverRefreshed)).fullyUpdated());
+  }
+
+  private PollableRun pollableRun(UUID runSetId) {
+    PollableRun run = mock(PollableRun.class);
+    when(run.getRunSetId()).thenReturn(runSetId);
+    when(run.status()).thenReturn(CbasRunStatus.RUNNING);
+    when(run.engineId()).thenReturn(UUID.randomUUID().toString());
+    when(run.lastPolledTimestamp()).thenReturn(OffsetDateTime.now().minusMinutes(1));
+    return run;
+  }
+
+  private Run run(UUID runSetId, OffsetDateTime lastPolledTimestamp) {
+    Run run = mock(Run.class);
+    when(run.getRunSetId()).thenReturn(runSetId);
+    when(run.status()).thenReturn(CbasRunStatus.RUNNING);
+    when(run.engineId()).thenReturn(UUID.randomUUID().toString());
+    when(run.lastPolledTimestamp()).thenReturn(lastPolledTimestamp);
+    return run;
+  }
+
+  private RunSet runSet(CbasRunSetStatus status, OffsetDateTime lastPolledTimestamp) {
+    RunSet runSet = mock(RunSet.class);
+    when(runSet.status()).thenReturn(status);
+    when(runSet.lastPolledTimestamp()).thenReturn(lastPolledTimestamp);
+    return runSet;
+  }
+}
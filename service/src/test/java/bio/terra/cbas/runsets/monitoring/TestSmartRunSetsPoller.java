@@ -8,11 +8,14 @@ import bio.terra.cbas.common.MicrometerMetrics;
 import bio.terra.cbas.config.CbasApiConfiguration;
 import bio.terra.cbas.dao.RunDao;
 import bio.terra.cbas.dao.RunSetDao;
+import bio.terra.cbas.dao.SubmissionJobDao;
 import bio.terra.cbas.models.CbasRunSetStatus;
 import bio.terra.cbas.models.CbasRunStatus;
-import bio.terra.cbas.models.Run;
+import bio.terra.cbas.models.PollableRun;
+import bio.terra.cbas.models.PollableRunSet;
 import bio.terra.cbas.models.RunSet;
 import bio.terra.cbas.monitoring.TimeLimitedUpdater;
+import bio.terra.cbas.runsets.outputs.OutputPlanCache;
 import bio.terra.common.iam.BearerToken;
 import java.time.OffsetDateTime;
 import java.util.List;
@@ -29,6 +32,8 @@ public class TestSmartRunSetsPoller {
   private SmartRunsPoller smartRunsPoller;
   private RunDao runDao;
   private RunSetDao runSetDao;
+  private SubmissionJobDao submissionJobDao;
+  private OutputPlanCache outputPlanCache;
   private CbasApiConfiguration cbasApiConfiguration;
   private MicrometerMetrics micrometerMetrics;
 
@@ -40,6 +45,8 @@ public class TestSmartRunSetsPoller {
     smartRunsPoller = mock(SmartRunsPoller.class);
     runDao = mock(RunDao.class);
     runSetDao = mock(RunSetDao.class);
+    submissionJobDao = mock(SubmissionJobDao.class);
+    outputPlanCache = mock(OutputPlanCache.class);
     cbasApiConfiguration = mock(CbasApiConfiguration.class);
     micrometerMetrics = mock(MicrometerMetrics.class);
     when(cbasApiConfiguration.getMaxSmartPollRunSetUpdateSeconds()).thenReturn(1);
@@ -50,7 +57,13 @@ public class TestSmartRunSetsPoller {
   void respectPollTimeLimit() {
     SmartRunSetsPoller smartRunSetsPoller =
         new SmartRunSetsPoller(
-            smartRunsPoller, runSetDao, runDao, cbasApiConfiguration, micrometerMetrics);
+            smartRunsPoller,
+            runSetDao,
+            runDao,
+            submissionJobDao,
+            outputPlanCache,
+            cbasApiConfiguration,
+            micrometerMetrics);
 
     UUID runSetId1 = UUID.randomUUID();
     RunSet runSetToUpdate1 =
@@ -95,17 +108,26 @@ public class TestSmartRunSetsPoller {
             workspaceId);
 
     UUID runId1 = UUID.randomUUID();
-    Run run1Incomplete =
-        new Run(runId1, null, runSetToUpdate1, null, null, RUNNING, null, null, null);
+    PollableRun run1Incomplete =
+        new PollableRun(
+            runId1,
+            null,
+            PollableRunSet.of(runSetToUpdate1),
+            null,
+            RUNNING,
+            null,
+            null);
 
-    when(runDao.getRuns(new RunDao.RunsFilters(runSetId1, CbasRunStatus.NON_TERMINAL_STATES)))
+    when(runDao.getPollableRuns(
+            new RunDao.RunsFilters(runSetId1, CbasRunStatus.NON_TERMINAL_STATES)))
         .thenReturn(List.of(run1Incomplete));
 
     when(smartRunsPoller.updateRuns(eq(List.of(run1Incomplete)), any(), any()))
         .thenAnswer(
             i -> {
               Thread.sleep(1000);
-              return new TimeLimitedUpdater.UpdateResult<Run>(List.of(run1Incomplete), 1, 1, true);
+              return new TimeLimitedUpdater.UpdateResult<PollableRun>(
+                  List.of(run1Incomplete), 1, 1, true);
             });
 
     when(runSetDao.updateLastPolled(List.of(runSetId1))).thenReturn(1);
@@ -123,7 +145,7 @@ public class TestSmartRunSetsPoller {
     assertFalse(updateResult.fullyUpdated());
 
     // Verify that the second run set never gets touched:
-    verify(runDao, never()).getRuns(new RunDao.RunsFilters(runSetId2, NON_TERMINAL_STATES));
+    verify(runDao, never()).getPollableRuns(new RunDao.RunsFilters(runSetId2, NON_TERMINAL_STATES));
     verify(runSetDao, never()).updateLastPolled(List.of(runSetId2));
   }
 
@@ -131,7 +153,13 @@ public class TestSmartRunSetsPoller {
   void updateRunSetToComplete() {
     SmartRunSetsPoller smartRunSetsPoller =
         new SmartRunSetsPoller(
-            smartRunsPoller, runSetDao, runDao, cbasApiConfiguration, micrometerMetrics);
+            smartRunsPoller,
+            runSetDao,
+            runDao,
+            submissionJobDao,
+            outputPlanCache,
+            cbasApiConfiguration,
+            micrometerMetrics);
 
     UUID runSetId = UUID.randomUUID();
     RunSet runSetToUpdate =
@@ -175,25 +203,39 @@ public class TestSmartRunSetsPoller {
             workspaceId);
 
     UUID runId1 = UUID.randomUUID();
-    Run run1Incomplete =
-        new Run(runId1, null, runSetToUpdate, null, null, RUNNING, null, null, null);
+    PollableRun run1Incomplete =
+        new PollableRun(runId1, null, PollableRunSet.of(runSetToUpdate), null, RUNNING, null, null);
 
-    Run run1Complete =
-        new Run(runId1, null, runSetToUpdate, null, null, COMPLETE, null, null, null);
+    PollableRun run1Complete =
+        new PollableRun(
+            runId1,
+            null,
+            PollableRunSet.of(runSetToUpdate),
+            null,
+            COMPLETE,
+            null,
+            null);
 
     UUID runId2 = UUID.randomUUID();
-    Run run2Incomplete =
-        new Run(runId2, null, runSetToUpdate, null, null, RUNNING, null, null, null);
+    PollableRun run2Incomplete =
+        new PollableRun(runId2, null, PollableRunSet.of(runSetToUpdate), null, RUNNING, null, null);
 
-    Run run2Complete =
-        new Run(runId2, null, runSetToUpdate, null, null, COMPLETE, null, null, null);
+    PollableRun run2Complete =
+        new PollableRun(
+            runId2,
+            null,
+            PollableRunSet.of(runSetToUpdate),
+            null,
+            COMPLETE,
+            null,
+            null);
 
     // Set up mocks:
 
     // Initial query of runs in the run set:
     ArgumentCaptor<RunDao.RunsFilters> runsFiltersForGetRuns =
         ArgumentCaptor.forClass(RunDao.RunsFilters.class);
-    when(runDao.getRuns(runsFiltersForGetRuns.capture()))
+    when(runDao.getPollableRuns(runsFiltersForGetRuns.capture()))
         .thenReturn(List.of(run1Incomplete, run2Incomplete));
 
     // When the smart runs poller is checked:
@@ -204,9 +246,7 @@ public class TestSmartRunSetsPoller {
     OffsetDateTime lastModified = OffsetDateTime.now();
 
     // When we re-query for up-to-the-minute run status counts:
-    ArgumentCaptor<RunDao.RunsFilters> runsFiltersForGetRunStatusCounts =
-        ArgumentCaptor.forClass(RunDao.RunsFilters.class);
-    when(runDao.getRunStatusCounts(runsFiltersForGetRunStatusCounts.capture()))
+    when(runDao.getRunSetStatusCounts(runSetId))
         .thenReturn(Map.of(COMPLETE, new RunDao.StatusCountRecord(COMPLETE, 2, lastModified)));
 
     // Updating the run set with the new information:
@@ -221,28 +261,128 @@ public class TestSmartRunSetsPoller {
     var result = smartRunSetsPoller.updateRunSets(List.of(runSetToUpdate), mockToken);
 
     // Validate the results:
-    verify(runDao).getRuns(any());
+    verify(runDao).getPollableRuns(any());
     assertEquals(runSetId, runsFiltersForGetRuns.getValue().runSetId());
     assertEquals(NON_TERMINAL_STATES, runsFiltersForGetRuns.getValue().statuses());
 
     verify(smartRunsPoller).updateRuns(eq(List.of(run1Incomplete, run2Incomplete)), any(), any());
 
-    verify(runDao).getRunStatusCounts(any());
-    assertEquals(runSetId, runsFiltersForGetRunStatusCounts.getValue().runSetId());
-    assertNull(runsFiltersForGetRunStatusCounts.getValue().statuses());
+    verify(runDao).getRunSetStatusCounts(runSetId);
+    verify(runDao, never()).getRunStatusCounts(any());
 
     verify(runSetDao)
         .updateStateAndRunSetDetails(runSetId, CbasRunSetStatus.COMPLETE, 2, 0, lastModified);
     verify(runSetDao).getRunSet(runSetId);
+    verify(outputPlanCache).evict(runSetId);
 
     assertEquals(List.of(runSetUpdated), result.updatedList());
   }
 
+  @Test
+  void refreshRunSetFromRecordedRuns() {
+    SmartRunSetsPoller smartRunSetsPoller =
+        new SmartRunSetsPoller(
+            smartRunsPoller,
+            runSetDao,
+            runDao,
+            submissionJobDao,
+            outputPlanCache,
+            cbasApiConfiguration,
+            micrometerMetrics);
+
+    UUID runSetId = UUID.randomUUID();
+    RunSet runSetToUpdate =
+        new RunSet(
+            runSetId,
+            null,
+            null,
+            null,
+            false,
+            false,
+            CbasRunSetStatus.RUNNING,
+            null,
+            null,
+            null,
+            2,
+            0,
+            null,
+            null,
+            null,
+            null,
+            workspaceId);
+
+    OffsetDateTime lastModified = OffsetDateTime.now();
+    when(runDao.getRunSetStatusCounts(runSetId))
+        .thenReturn(Map.of(COMPLETE, new RunDao.StatusCountRecord(COMPLETE, 2, lastModified)));
+
+    smartRunSetsPoller.refreshRunSets(List.of(PollableRunSet.of(runSetToUpdate)));
+
+    // The runs were already polled by the poll engine, and the run set is not read again
+    verifyNoInteractions(smartRunsPoller);
+    verify(runDao, never()).getPollableRuns(any());
+    verify(runSetDao, never()).getRunSet(any());
+    verify(runSetDao)
+        .updateStateAndRunSetDetails(runSetId, CbasRunSetStatus.COMPLETE, 2, 0, lastModified);
+  }
+
+  @Test
+  void cancelRunSetOnceAllRunsAreCanceled() {
+    SmartRunSetsPoller smartRunSetsPoller =
+        new SmartRunSetsPoller(
+            smartRunsPoller,
+            runSetDao,
+            runDao,
+            submissionJobDao,
+            outputPlanCache,
+            cbasApiConfiguration,
+            micrometerMetrics);
+
+    UUID runSetId = UUID.randomUUID();
+    RunSet cancelingRunSet =
+        new RunSet(
+            runSetId,
+            null,
+            null,
+            null,
+            false,
+            false,
+            CbasRunSetStatus.CANCELING,
+            null,
+            null,
+            null,
+            2,
+            0,
+            null,
+            null,
+            null,
+            null,
+            workspaceId);
+
+    OffsetDateTime lastModified = OffsetDateTime.now();
+    when(runDao.getRunSetStatusCounts(runSetId))
+        .thenReturn(Map.of(CANCELED, new RunDao.StatusCountRecord(CANCELED, 2, lastModified)));
+
+    smartRunSetsPoller.refreshRunSets(List.of(PollableRunSet.of(cancelingRunSet)));
+
+    // The canceled runs are counted from the same counters as the run set status
+    verify(runDao).getRunSetStatusCounts(runSetId);
+    verify(runDao, never()).getRunStatusCounts(any());
+    verify(runSetDao, atLeastOnce())
+        .updateStateAndRunSetDetails(
+            eq(runSetId), eq(CbasRunSetStatus.CANCELED), eq(2), eq(0), any());
+  }
+
   @Test
   void updateLastPolledTimestampAnyway() {
     SmartRunSetsPoller smartRunSetsPoller =
         new SmartRunSetsPoller(
-            smartRunsPoller, runSetDao, runDao, cbasApiConfiguration, micrometerMetrics);
+            smartRunsPoller,
+            runSetDao,
+            runDao,
+            submissionJobDao,
+            outputPlanCache,
+            cbasApiConfiguration,
+            micrometerMetrics);
 
     UUID runSetId = UUID.randomUUID();
     RunSet runSetToUpdate =
@@ -286,23 +426,22 @@ public class TestSmartRunSetsPoller {
             workspaceId);
 
     UUID runId1 = UUID.randomUUID();
-    Run run1 = new Run(runId1, null, runSetToUpdate, null, null, RUNNING, null, null, null);
+    PollableRun run1 =
+        new PollableRun(runId1, null, PollableRunSet.of(runSetToUpdate), null, RUNNING, null, null);
 
     // Set up mocks:
 
     // Initial query of runs in the run set:
     ArgumentCaptor<RunDao.RunsFilters> runsFiltersForGetRuns =
         ArgumentCaptor.forClass(RunDao.RunsFilters.class);
-    when(runDao.getRuns(runsFiltersForGetRuns.capture())).thenReturn(List.of(run1));
+    when(runDao.getPollableRuns(runsFiltersForGetRuns.capture())).thenReturn(List.of(run1));
 
     // When the smart runs poller is checked:
     when(smartRunsPoller.updateRuns(List.of(run1), mockToken))
         .thenReturn(new TimeLimitedUpdater.UpdateResult<>(List.of(run1), 1, 1, true));
 
     // When we re-query for up-to-the-minute run status counts:
-    ArgumentCaptor<RunDao.RunsFilters> runsFiltersForGetRunStatusCounts =
-        ArgumentCaptor.forClass(RunDao.RunsFilters.class);
-    when(runDao.getRunStatusCounts(runsFiltersForGetRunStatusCounts.capture()))
+    when(runDao.getRunSetStatusCounts(runSetId))
         .thenReturn(
             Map.of(RUNNING, new RunDao.StatusCountRecord(RUNNING, 1, OffsetDateTime.now())));
 
@@ -316,19 +455,78 @@ public class TestSmartRunSetsPoller {
     var result = smartRunSetsPoller.updateRunSets(List.of(runSetToUpdate), mockToken);
 
     // Validate the results:
-    verify(runDao).getRuns(any());
+    verify(runDao).getPollableRuns(any());
     assertEquals(runSetId, runsFiltersForGetRuns.getValue().runSetId());
     assertEquals(NON_TERMINAL_STATES, runsFiltersForGetRuns.getValue().statuses());
 
     verify(smartRunsPoller).updateRuns(eq(List.of(run1)), any(), any());
 
-    verify(runDao).getRunStatusCounts(any());
-    assertEquals(runSetId, runsFiltersForGetRunStatusCounts.getValue().runSetId());
-    assertNull(runsFiltersForGetRunStatusCounts.getValue().statuses());
+    verify(runDao).getRunSetStatusCounts(runSetId);
+    verify(runDao, never()).getRunStatusCounts(any());
 
     verify(runSetDao).updateLastPolled(List.of(runSetId));
     verify(runSetDao).getRunSet(runSetId);
+    verify(outputPlanCache, never()).evict(any());
 
     assertEquals(List.of(runSetTimestampUpdated), result.updatedList());
   }
+
+  @Test
+  void largeRunSetStaysRunningWhileItsRunsAreRegistered() {
+    SmartRunSetsPoller smartRunSetsPoller =
+        new SmartRunSetsPoller(
+            smartRunsPoller,
+            runSetDao,
+            runDao,
+            submissionJobDao,
+            outputPlanCache,
+            cbasApiConfiguration,
+            micrometerMetrics);
+
+    UUID runSetId = UUID.randomUUID();
+    RunSet runSetToUpdate =
+        new RunSet(
+            runSetId,
+            null,
+            null,
+            null,
+            false,
+            false,
+            CbasRunSetStatus.RUNNING,
+            null,
+            null,
+            null,
+            1,
+            0,
+            null,
+            null,
+            null,
+            null,
+            workspaceId);
+
+    PollableRun run =
+        new PollableRun(
+            UUID.randomUUID(),
+            null,
+            PollableRunSet.of(runSetToUpdate),
+            null,
+            RUNNING,
+            null,
+            null);
+    when(runDao.getPollableRuns(any())).thenReturn(List.of(run));
+    when(smartRunsPoller.updateRuns(any(), any(), any()))
+        .thenReturn(new TimeLimitedUpdater.UpdateResult<>(List.of(run), 1, 1, true));
+
+    // All the runs registered so far are complete, but more are still to be registered:
+    OffsetDateTime lastModified = OffsetDateTime.now();
+    when(runDao.getRunSetStatusCounts(any()))
+        .thenReturn(Map.of(COMPLETE, new RunDao.StatusCountRecord(COMPLETE, 2, lastModified)));
+    when(submissionJobDao.hasPendingJob(runSetId)).thenReturn(true);
+    when(runSetDao.getRunSet(runSetId)).thenReturn(runSetToUpdate);
+
+    smartRunSetsPoller.updateRunSets(List.of(runSetToUpdate), mockToken);
+
+    verify(runSetDao)
+        .updateStateAndRunSetDetails(runSetId, CbasRunSetStatus.RUNNING, 2, 0, lastModified);
+  }
 }
@@ -8,7 +8,11 @@ import static bio.terra.cbas.models.CbasRunStatus.RUNNING;
 import static bio.terra.cbas.models.CbasRunStatus.SYSTEM_ERROR;
 import static bio.terra.cbas.models.CbasRunStatus.UNKNOWN;
 import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertNull;
+import static org.junit.jupiter.api.Assertions.assertTrue;
 import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.ArgumentMatchers.anyList;
+import static org.mockito.ArgumentMatchers.anyLong;
 import static org.mockito.ArgumentMatchers.eq;
 import static org.mockito.Mockito.mock;
 import static org.mockito.Mockito.never;
@@ -18,15 +22,14 @@ import static org.mockito.Mockito.verifyNoInteractions;
 import static org.mockito.Mockito.when;
 
 import bio.terra.cbas.common.MicrometerMetrics;
+import bio.terra.cbas.config.AsyncRunStatusPollConfiguration;
 import bio.terra.cbas.config.CbasApiConfiguration;
 import bio.terra.cbas.dependencies.wes.CromwellService;
-import bio.terra.cbas.models.CbasMethodStatus;
 import bio.terra.cbas.models.CbasRunSetStatus;
-import bio.terra.cbas.models.Method;
-import bio.terra.cbas.models.MethodVersion;
-import bio.terra.cbas.models.Run;
-import bio.terra.cbas.models.RunSet;
+import bio.terra.cbas.models.PollableRun;
+import bio.terra.cbas.models.PollableRunSet;
 import bio.terra.cbas.runsets.results.RunCompletionHandler;
+import bio.terra.cbas.runsets.results.RunCompletionHandler.RunCompletion;
 import bio.terra.cbas.runsets.results.RunCompletionResult;
 import bio.terra.common.iam.BearerToken;
 import com.fasterxml.jackson.annotation.JsonInclude;
@@ -41,21 +44,23 @@ import cromwell.client.model.FailureMessage;
 import cromwell.client.model.RunLog;
 import cromwell.client.model.WorkflowMetadataResponse;
 import cromwell.client.model.WorkflowQueryResult;
+import java.time.Duration;
 import java.time.OffsetDateTime;
 import java.util.ArrayList;
 import java.util.Collections;
 import java.util.List;
+import java.util.Map;
 import java.util.Optional;
 import java.util.UUID;
 import org.junit.jupiter.api.BeforeEach;
 import org.junit.jupiter.api.Test;
-import org.mockito.ArgumentCaptor;
+import org.springframework.core.task.SimpleAsyncTaskExecutor;
+import org.springframework.core.task.SyncTaskExecutor;
 import org.springframework.test.context.ContextConfiguration;
 
 @ContextConfiguration(classes = SmartRunsPoller.class)
 public class TestSmartRunsPollerFunctional {
 
-  private static final OffsetDateTime methodCreatedTime = OffsetDateTime.now();
   private static final OffsetDateTime runSubmittedTime = OffsetDateTime.now();
   private static final UUID runningRunId1 = UUID.randomUUID();
   private static final String runningRunEngineId1 = UUID.randomUUID().toString();
@@ -83,8 +88,6 @@ public class TestSmartRunsPollerFunctional {
   private static final String completedRunEngineId = UUID.randomUUID().toString();
   private static final String completedRunEntityId = UUID.randomUUID().toString();
   private static final OffsetDateTime completedRunStatusUpdateTime = OffsetDateTime.now();
-  private static final String errorMessages = null;
-  private static final UUID workspaceId = UUID.randomUUID();
   private static final BearerToken mockToken = new BearerToken("mock-token");
 
   public ObjectMapper objectMapper =
@@ -101,124 +104,69 @@ public class TestSmartRunsPollerFunctional {
   private CbasApiConfiguration cbasApiConfiguration;
   private MicrometerMetrics micrometerMetrics;
 
-  static String outputDefinition =
-      """
-        [
-          {
-            "output_name": "wf_hello.hello.salutation",
-            "output_type": { "type": "primitive", "primitive_type": "String" },
-            "destination": { "type": "record_update", "record_attribute": "foo_name" }
-          }
-        ]
-      """;
   private static final UUID runSetId = UUID.randomUUID();
-  private static final RunSet runSet =
-      new RunSet(
-          runSetId,
-          new MethodVersion(
-              UUID.randomUUID(),
-              new Method(
-                  UUID.randomUUID(),
-                  "methodName",
-                  "methodDescription",
-                  methodCreatedTime,
-                  runSetId,
-                  "method source",
-                  workspaceId,
-                  Optional.empty(),
-                  CbasMethodStatus.ACTIVE),
-              "version name",
-              "version description",
-              methodCreatedTime,
-              runSetId,
-              "file:///method/source/url",
-              workspaceId,
-              "develop",
-              Optional.empty()),
-          "runSetName",
-          "runSetDescription",
-          true,
-          false,
-          CbasRunSetStatus.UNKNOWN,
-          runSubmittedTime,
-          runSubmittedTime,
-          runSubmittedTime,
-          0,
-          0,
-          "inputDefinition",
-          outputDefinition,
-          "entityType",
-          "user-foo",
-          workspaceId);
-
-  final Run runToUpdate1 =
-      new Run(
+  private static final PollableRunSet runSet =
+      new PollableRunSet(runSetId, CbasRunSetStatus.UNKNOWN, runSubmittedTime, 0, 0, "entityType");
+
+  final PollableRun runToUpdate1 =
+      new PollableRun(
           runningRunId1,
           runningRunEngineId1,
           runSet,
           runningRunEntityId1,
-          runSubmittedTime,
           RUNNING,
           runningRunStatusUpdateTime,
-          runningRunStatusUpdateTime,
-          errorMessages);
+          runningRunStatusUpdateTime);
 
-  final Run runToUpdate2 =
-      new Run(
+  final PollableRun runToUpdate2 =
+      new PollableRun(
           runningRunId2,
           runningRunEngineId2,
           runSet,
           runningRunEntityId2,
-          runSubmittedTime,
           RUNNING,
           runningRunStatusUpdateTime,
-          runningRunStatusUpdateTime,
-          errorMessages);
+          runningRunStatusUpdateTime);
 
-  final Run runAlreadyCompleted =
-      new Run(
+  final PollableRun runAlreadyCompleted =
+      new PollableRun(
           completedRunId,
           completedRunEngineId,
           runSet,
           completedRunEntityId,
-          runSubmittedTime,
           COMPLETE,
           completedRunStatusUpdateTime,
-          completedRunStatusUpdateTime,
-          errorMessages);
-  final Run runToUpdate3 =
-      new Run(
+          completedRunStatusUpdateTime);
+  final PollableRun runToUpdate3 =
+      new PollableRun(
           runningRunId3,
           runningRunEngineId3,
           runSet,
           runningRunEntityId3,
-          runSubmittedTime,
           UNKNOWN,
           runningRunStatusUpdateTime,
-          runningRunStatusUpdateTime,
-          errorMessages);
-  final Run queuedRun =
-      new Run(
+          runningRunStatusUpdateTime);
+  final PollableRun queuedRun =
+      new PollableRun(
           queuedRunId,
           null,
           runSet,
           queuedRunEntityId,
-          runSubmittedTime,
           QUEUED,
           runningRunStatusUpdateTime,
-          runningRunStatusUpdateTime,
-          errorMessages);
-  final Run submittedToCromwellRun =
-      new Run(
+          runningRunStatusUpdateTime);
+  final PollableRun submittedToCromwellRun =
+      new PollableRun(
           submittedRunId,
           submittedRunEngineId,
           runSet,
           submittedRunEntityId,
-          runSubmittedTime,
           QUEUED,
           runningRunStatusUpdateTime,
-          runningRunStatusUpdateTime,
-          errorMessages);
+          runningRunStatusUpdateTime);
+
+  // The completions handed to the completion handler, in the order they were handed to it
+  private final List<RunCompletion> completions = Collections.synchronizedList(new ArrayList<>());
 
   @BeforeEach
   public void init() {
@@ -229,29 +177,50 @@ public class TestSmartRunsPollerFunctional {
     micrometerMetrics = mock(MicrometerMetrics.class);
     smartRunsPoller =
         new SmartRunsPoller(
-            cromwellService, runCompletionHandler, cbasApiConfiguration, micrometerMetrics);
+            cromwellService,
+            runCompletionHandler,
+            cbasApiConfiguration,
+            new AsyncRunStatusPollConfiguration(1, 10),
+            new SyncTaskExecutor(),
+            micrometerMetrics);
+    completions.clear();
+    when(runCompletionHandler.updateResults(anyList()))
+        .thenAnswer(
+            i -> {
+              List<RunCompletion> batch = i.getArgument(0);
+              completions.addAll(batch);
+              return batch.stream().map(completion -> RunCompletionResult.SUCCESS).toList();
+            });
+  }
+
+  private RunCompletion completionOf(PollableRun run) {
+    List<RunCompletion> completionsOfRun =
+        completions.stream().filter(completion -> completion.run().equals(run)).toList();
+    assertEquals(1, completionsOfRun.size());
+    return completionsOfRun.get(0);
+  }
+
+  private void assertNotCompleted(PollableRun run) {
+    assertTrue(completions.stream().noneMatch(completion -> completion.run().equals(run)));
   }
 
   @Test
   void pollRunningRuns() throws Exception {
-    when(cromwellService.runSummary(runningRunEngineId1))
-        .thenReturn(new WorkflowQueryResult().id(runningRunEngineId1).status("Running"));
-    when(runCompletionHandler.updateResults(eq(runToUpdate1), any(), any(), any(), any(), any()))
-        .thenReturn(RunCompletionResult.SUCCESS);
+    when(cromwellService.runSummaries(List.of(runningRunEngineId1)))
+        .thenReturn(summaries(runningRunEngineId1, "Running"));
 
     var actual = smartRunsPoller.updateRuns(List.of(runToUpdate1, runAlreadyCompleted), mockToken);
 
-    verify(cromwellService).runSummary(runningRunEngineId1);
-    verify(cromwellService, never()).runSummary(completedRunEngineId);
+    verify(cromwellService).runSummaries(List.of(runningRunEngineId1));
+    verify(cromwellService, never()).runSummaries(List.of(completedRunEngineId));
     verify(cromwellService, never()).getOutputs(runToUpdate1.engineId());
     verify(cromwellService, never()).getOutputs(runAlreadyCompleted.engineId());
     verify(cromwellService, never()).getRunErrors(runToUpdate1);
     verify(cromwellService, never()).getRunErrors(runAlreadyCompleted);
 
-    verify(runCompletionHandler, never())
-        .updateResults(eq(runAlreadyCompleted), any(), any(), any(), any(), any());
-    verify(runCompletionHandler, times(1))
-        .updateResults(eq(runToUpdate1), any(), any(), any(), any(), any());
+    assertNotCompleted(runAlreadyCompleted);
+    assertEquals(RUNNING, completionOf(runToUpdate1).status());
+    assertEquals(mockToken, completionOf(runToUpdate1).userToken());
     assertEquals(2, actual.updatedList().size());
   }
 
@@ -261,25 +230,20 @@ public class TestSmartRunsPollerFunctional {
 
     verifyNoInteractions(cromwellService);
 
-    verify(runCompletionHandler, never())
-        .updateResults(eq(queuedRun), any(), any(), any(), any(), any());
+    assertNotCompleted(queuedRun);
     assertEquals(1, actual.updatedList().size());
   }
 
   @Test
   void submittedRunsShouldBeInInitializingStatus() throws Exception {
-    when(cromwellService.runSummary(submittedRunEngineId))
-        .thenReturn(new WorkflowQueryResult().id(submittedRunEngineId).status("Submitted"));
-    when(runCompletionHandler.updateResults(
-            eq(submittedToCromwellRun), any(), any(), any(), any(), any()))
-        .thenReturn(RunCompletionResult.SUCCESS);
+    when(cromwellService.runSummaries(List.of(submittedRunEngineId)))
+        .thenReturn(summaries(submittedRunEngineId, "Submitted"));
 
     var actual = smartRunsPoller.updateRuns(List.of(submittedToCromwellRun), mockToken);
 
-    verify(cromwellService).runSummary(submittedRunEngineId);
+    verify(cromwellService).runSummaries(List.of(submittedRunEngineId));
     // verify that Run that is in Submitted status in Cromwell is marked as Initializing in CBAS
-    verify(runCompletionHandler, times(1))
-        .updateResults(eq(submittedToCromwellRun), eq(INITIALIZING), any(), any(), any(), any());
+    assertEquals(INITIALIZING, completionOf(submittedToCromwellRun).status());
     assertEquals(1, actual.updatedList().size());
   }
 
@@ -320,33 +284,25 @@ public class TestSmartRunsPollerFunctional {
           }
         """;
 
-    when(cromwellService.runSummary(runningRunEngineId1))
-        .thenReturn(new WorkflowQueryResult().id(runningRunEngineId1).status("Succeeded"));
+    when(cromwellService.runSummaries(List.of(runningRunEngineId1)))
+        .thenReturn(summaries(runningRunEngineId1, "Succeeded"));
     // Using Gson here since Cromwell client uses it to interpret runLogValue into Java objects.
     Gson object = new Gson();
     RunLog parseRunLog = object.fromJson(runLogValue, RunLog.class);
     Object workflowOutputs = parseRunLog.getOutputs();
     when(cromwellService.getOutputs(runningRunEngineId1)).thenReturn(workflowOutputs);
 
-    when(runCompletionHandler.updateResults(
-            eq(runToUpdate1),
-            eq(COMPLETE),
-            eq(workflowOutputs),
-            eq(Collections.emptyList()),
-            any(),
-            any()))
-        .thenReturn(RunCompletionResult.SUCCESS);
-
     var actual = smartRunsPoller.updateRuns(List.of(runToUpdate1, runAlreadyCompleted), mockToken);
 
-    verify(cromwellService).runSummary(runningRunEngineId1);
+    verify(cromwellService).runSummaries(List.of(runningRunEngineId1));
     verify(cromwellService).getOutputs(runningRunEngineId1);
-    verify(runCompletionHandler, times(1))
-        .updateResults(eq(runToUpdate1), eq(COMPLETE), any(), any(), any(), any());
+    RunCompletion completion = completionOf(runToUpdate1);
+    assertEquals(COMPLETE, completion.status());
+    assertEquals(workflowOutputs, completion.workflowOutputs());
+    assertEquals(Collections.emptyList(), completion.workflowErrors());
 
     // Make sure the already-completed workflow isn't re-updated:
-    verify(runCompletionHandler, never())
-        .updateResults(eq(runAlreadyCompleted), eq(COMPLETE), any(), any(), any(), any());
+    assertNotCompleted(runAlreadyCompleted);
     verify(cromwellService, never()).getOutputs(runAlreadyCompleted.engineId());
 
     assertEquals(2, actual.updatedList().size());
@@ -354,118 +310,74 @@ public class TestSmartRunsPollerFunctional {
 
   @Test
   void pollRunsInLeastRecentlyPolledOrder() throws Exception {
-    when(cromwellService.runSummary(runningRunEngineId1))
-        .thenReturn(new WorkflowQueryResult().id(runningRunEngineId1).status("Running"));
-    when(cromwellService.runSummary(runningRunEngineId2))
-        .thenReturn(new WorkflowQueryResult().id(runningRunEngineId2).status("Running"));
-    when(cromwellService.runSummary(runningRunEngineId3))
-        .thenReturn(new WorkflowQueryResult().id(runningRunEngineId3).status("Running"));
+    when(cromwellService.runSummaries(List.of(runningRunEngineId1)))
+        .thenReturn(summaries(runningRunEngineId1, "Running"));
+    when(cromwellService.runSummaries(List.of(runningRunEngineId2)))
+        .thenReturn(summaries(runningRunEngineId2, "Running"));
+    when(cromwellService.runSummaries(List.of(runningRunEngineId3)))
+        .thenReturn(summaries(runningRunEngineId3, "Running"));
 
     var run1 = runToUpdate1.withLastPolled(OffsetDateTime.now().minusSeconds(1000));
     var run2 = runToUpdate2.withLastPolled(OffsetDateTime.now().minusSeconds(500));
     var run3 =
         runToUpdate3.withLastPolled(OffsetDateTime.now().minusSeconds(100)).withStatus(RUNNING);
 
-    ArrayList<UUID> pollOrder = new ArrayList<>();
-    when(runCompletionHandler.updateResults(eq(run1), any(), any(), any(), any(), any()))
-        .thenAnswer(
-            i -> {
-              pollOrder.add(run1.runId());
-              return RunCompletionResult.SUCCESS;
-            });
-    when(runCompletionHandler.updateResults(eq(run2), any(), any(), any(), any(), any()))
-        .thenAnswer(
-            i -> {
-              pollOrder.add(run2.runId());
-              return RunCompletionResult.SUCCESS;
-            });
-    when(runCompletionHandler.updateResults(eq(run3), any(), any(), any(), any(), any()))
-        .thenAnswer(
-            i -> {
-              pollOrder.add(run3.runId());
-              return RunCompletionResult.SUCCESS;
-            });
-
     // Note: the runs are out of last-polled-order here:
     var actual = smartRunsPoller.updateRuns(List.of(run3, run1, run2), mockToken);
-    verify(cromwellService).runSummary(runningRunEngineId1);
-    verify(cromwellService).runSummary(runningRunEngineId2);
-    verify(cromwellService).runSummary(runningRunEngineId3);
-
-    verify(cromwellService, never()).runSummary(completedRunEngineId);
-    verify(runCompletionHandler, never())
-        .updateResults(eq(runAlreadyCompleted), any(), any(), any(), any(), any());
-    verify(runCompletionHandler, times(1))
-        .updateResults(eq(run1), any(), any(), any(), any(), any());
-    verify(runCompletionHandler, times(1))
-        .updateResults(eq(run2), any(), any(), any(), any(), any());
-    verify(runCompletionHandler, times(1))
-        .updateResults(eq(run3), any(), any(), any(), any(), any());
+    verify(cromwellService).runSummaries(List.of(runningRunEngineId1));
+    verify(cromwellService).runSummaries(List.of(runningRunEngineId2));
+    verify(cromwellService).runSummaries(List.of(runningRunEngineId3));
+
+    verify(cromwellService, never()).runSummaries(List.of(completedRunEngineId));
+    assertNotCompleted(runAlreadyCompleted);
     assertEquals(
         List.of(RUNNING, RUNNING, RUNNING),
-        actual.updatedList().stream().map(Run::status).toList());
+        actual.updatedList().stream().map(PollableRun::status).toList());
 
-    assertEquals(pollOrder, List.of(run1.runId(), run2.runId(), run3.runId()));
+    assertEquals(
+        List.of(run1.runId(), run2.runId(), run3.runId()),
+        completions.stream().map(completion -> completion.run().runId()).toList());
   }
 
   @Test
   void haltPollingAfterTimeLimit() throws Exception {
 
-    when(cromwellService.runSummary(runningRunEngineId1))
-        .thenReturn(new WorkflowQueryResult().id(runningRunEngineId1).status("Running"));
-    when(cromwellService.runSummary(runningRunEngineId2))
+    when(cromwellService.runSummaries(List.of(runningRunEngineId1)))
+        .thenReturn(summaries(runningRunEngineId1, "Running"));
+    when(cromwellService.runSummaries(List.of(runningRunEngineId2)))
         .thenAnswer(
             i -> {
               Thread.sleep(1000); // The timeout is configured (via mock) to be 1 second
-              return new WorkflowQueryResult().id(runningRunEngineId2).status("Running");
+              return summaries(runningRunEngineId2, "Running");
             });
-    when(cromwellService.runSummary(runningRunEngineId3))
-        .thenReturn(new WorkflowQueryResult().id(runningRunEngineId3).status("Running"));
+    when(cromwellService.runSummaries(List.of(runningRunEngineId3)))
+        .thenReturn(summaries(runningRunEngineId3, "Running"));
 
     var run1 = runToUpdate1.withLastPolled(OffsetDateTime.now().minusSeconds(1000));
     var run2 = runToUpdate2.withLastPolled(OffsetDateTime.now().minusSeconds(500));
     var run3 =
         runToUpdate3.withLastPolled(OffsetDateTime.now().minusSeconds(100)).withStatus(RUNNING);
 
-    ArrayList<UUID> pollOrder = new ArrayList<>();
-
-    when(runCompletionHandler.updateResults(eq(run1), any(), any(), any(), any(), any()))
-        .thenAnswer(
-            i -> {
-              pollOrder.add(run1.runId());
-              return 1;
-            });
-    when(runCompletionHandler.updateResults(eq(run2), any(), any(), any(), any(), any()))
-        .thenAnswer(
-            i -> {
-              pollOrder.add(run2.runId());
-              return 1;
-            });
-
     // Note: the runs are out of last-polled-order here:
     var actual = smartRunsPoller.updateRuns(List.of(run3, run1, run2), mockToken);
 
     // We poll for the first two summaries, but not the third:
-    verify(cromwellService).runSummary(runningRunEngineId1);
-    verify(cromwellService).runSummary(runningRunEngineId2);
-    verify(cromwellService, never()).runSummary(runningRunEngineId3);
-    // We update the first two polled timestamps, but not the third:
-    verify(runCompletionHandler).updateResults(eq(run1), any(), any(), any(), any(), any());
-    verify(runCompletionHandler).updateResults(eq(run2), any(), any(), any(), any(), any());
-    verify(runCompletionHandler, never())
-        .updateResults(eq(run3), any(), any(), any(), any(), any());
+    verify(cromwellService).runSummaries(List.of(runningRunEngineId1));
+    verify(cromwellService).runSummaries(List.of(runningRunEngineId2));
+    verify(cromwellService, never()).runSummaries(List.of(runningRunEngineId3));
 
     // Run 3 is in the result set, and keeps its previous status:
     assertEquals(
         List.of(RUNNING, RUNNING, RUNNING),
-        actual.updatedList().stream().map(Run::status).toList());
+        actual.updatedList().stream().map(PollableRun::status).toList());
 
-    // Run 3 was never polled for:
-    assertEquals(pollOrder, List.of(run1.runId(), run2.runId()));
+    // We update the first two runs, but not the third, which was never polled for:
+    assertEquals(
+        List.of(run1.runId(), run2.runId()),
+        completions.stream().map(completion -> completion.run().runId()).toList());
   }
 
   @Test
-  @SuppressWarnings("unchecked") // for List<String> captor
   void databaseUpdatedWithCromwellError() throws Exception {
 
     String cromwellError =
@@ -484,87 +396,66 @@ public class TestSmartRunsPollerFunctional {
           ]
           }
           """;
-    ArgumentCaptor<List<String>> captor = ArgumentCaptor.forClass(List.class);
 
     List<FailureMessage> listOfFails =
         objectMapper.readValue(cromwellError, WorkflowMetadataResponse.class).getFailures();
     String cromwellErrorMessage = CromwellService.getErrorMessage(listOfFails);
 
-    when(cromwellService.runSummary(runningRunEngineId3))
-        .thenReturn(new WorkflowQueryResult().id(runningRunEngineId3).status("Failed"));
+    when(cromwellService.runSummaries(List.of(runningRunEngineId3)))
+        .thenReturn(summaries(runningRunEngineId3, "Failed"));
     when(cromwellService.getRunErrors(runToUpdate3)).thenReturn(cromwellErrorMessage);
-    when(runCompletionHandler.updateResults(
-            eq(runToUpdate3), eq(EXECUTOR_ERROR), any(), any(), any(), any()))
-        .thenReturn(RunCompletionResult.SUCCESS);
 
     var actual = smartRunsPoller.updateRuns(List.of(runToUpdate3), mockToken);
 
-    verify(cromwellService).runSummary(runningRunEngineId3);
+    verify(cromwellService).runSummaries(List.of(runningRunEngineId3));
     verify(cromwellService).getRunErrors(runToUpdate3);
     verify(cromwellService, never()).getOutputs(any());
-    verify(runCompletionHandler)
-        .updateResults(eq(runToUpdate3), eq(EXECUTOR_ERROR), any(), captor.capture(), any(), any());
+    RunCompletion completion = completionOf(runToUpdate3);
+    assertEquals(EXECUTOR_ERROR, completion.status());
 
     assertEquals(
         "Workflow input processing failed (Required workflow input 'wf_hello.hello.addressee' not specified)",
-        captor.getValue().get(0));
+        completion.workflowErrors().get(0));
 
     assertEquals(1, actual.updatedList().size());
   }
 
   @Test
-  @SuppressWarnings("unchecked") // for List<String> captor
   void databaseUpdatedWhenGetCromwellErrorsThrows() throws Exception {
-    ArgumentCaptor<List<String>> captor = ArgumentCaptor.forClass(List.class);
-
-    when(cromwellService.runSummary(runningRunEngineId3))
-        .thenReturn(new WorkflowQueryResult().id(runningRunEngineId3).status("Failed"));
+    when(cromwellService.runSummaries(List.of(runningRunEngineId3)))
+        .thenReturn(summaries(runningRunEngineId3, "Failed"));
     when(cromwellService.getRunErrors(runToUpdate3))
         .thenThrow(new ApiException("Cromwell client exception"));
-    when(runCompletionHandler.updateResults(
-            eq(runToUpdate3), eq(EXECUTOR_ERROR), any(), any(), any(), any()))
-        .thenReturn(RunCompletionResult.SUCCESS);
 
     var actual = smartRunsPoller.updateRuns(List.of(runToUpdate3), mockToken);
 
-    verify(cromwellService).runSummary(runningRunEngineId3);
+    verify(cromwellService).runSummaries(List.of(runningRunEngineId3));
     verify(cromwellService).getRunErrors(runToUpdate3);
     verify(cromwellService, never()).getOutputs(any());
-    verify(runCompletionHandler)
-        .updateResults(eq(runToUpdate3), eq(EXECUTOR_ERROR), any(), captor.capture(), any(), any());
+    RunCompletion completion = completionOf(runToUpdate3);
+    assertEquals(EXECUTOR_ERROR, completion.status());
 
     assertEquals(
         "Error fetching Cromwell-level error. Details: %s"
             .formatted(new ApiException("Cromwell client exception").getMessage()),
-        captor.getValue().get(0));
+        completion.workflowErrors().get(0));
 
     assertEquals(1, actual.updatedList().size());
   }
 
   @Test
-  @SuppressWarnings("unchecked") // for List<String> captor
   void databaseUpdatedWhenGetCromwellOutputsThrows() throws Exception {
-    ArgumentCaptor<List<String>> captor = ArgumentCaptor.forClass(List.class);
-    when(cromwellService.runSummary(runningRunEngineId1))
-        .thenReturn(new WorkflowQueryResult().id(runningRunEngineId1).status("Succeeded"));
+    when(cromwellService.runSummaries(List.of(runningRunEngineId1)))
+        .thenReturn(summaries(runningRunEngineId1, "Succeeded"));
     when(cromwellService.getOutputs(runningRunEngineId1))
         .thenThrow(new ApiException("Cannot connect to Cromwell"));
 
-    when(runCompletionHandler.updateResults(
-            eq(runToUpdate1),
-            eq(SYSTEM_ERROR),
-            eq(null),
-            eq(Collections.emptyList()),
-            any(),
-            any()))
-        .thenReturn(RunCompletionResult.SUCCESS);
-
     var actual = smartRunsPoller.updateRuns(List.of(runToUpdate1, runAlreadyCompleted), mockToken);
 
-    verify(cromwellService).runSummary(runningRunEngineId1);
-    verify(runCompletionHandler, times(1))
-        .updateResults(
-            eq(runToUpdate1), eq(SYSTEM_ERROR), eq(null), captor.capture(), any(), any());
+    verify(cromwellService).runSummaries(List.of(runningRunEngineId1));
+    RunCompletion completion = completionOf(runToUpdate1);
+    assertEquals(SYSTEM_ERROR, completion.status());
+    assertNull(completion.workflowOutputs());
 
     assertEquals(
         "Error while retrieving workflow outputs for record %s from run %s (engine workflow ID %s): %s"
@@ -573,8 +464,167 @@ public class TestSmartRunsPollerFunctional {
                 runToUpdate1.runId(),
                 runToUpdate1.engineId(),
                 "Cannot connect to Cromwell"),
-        captor.getValue().get(0));
+        completion.workflowErrors().get(0));
 
     assertEquals(2, actual.updatedList().size());
   }
+
+  @Test
+  void pollBatchOfRunsWithOneQuery() throws Exception {
+    when(cbasApiConfiguration.getRunStatusPollBatchSize()).thenReturn(3);
+    var run1 = runToUpdate1.withLastPolled(OffsetDateTime.now().minusSeconds(1000));
+    var run2 = runToUpdate2.withLastPolled(OffsetDateTime.now().minusSeconds(500));
+    var run3 =
+        runToUpdate3.withLastPolled(OffsetDateTime.now().minusSeconds(100)).withStatus(RUNNING);
+    when(cromwellService.runSummaries(
+            List.of(runningRunEngineId1, runningRunEngineId2, runningRunEngineId3)))
+        .thenReturn(
+            Map.of(
+                runningRunEngineId1,
+                new WorkflowQueryResult().id(runningRunEngineId1).status("Running"),
+                runningRunEngineId2,
+                new WorkflowQueryResult().id(runningRunEngineId2).status("Succeeded"),
+                runningRunEngineId3,
+                new WorkflowQueryResult().id(runningRunEngineId3).status("Running")));
+
+    var actual = smartRunsPoller.updateRuns(List.of(run3, run1, run2), mockToken);
+
+    // The runs are queried for in least-recently-polled order
+    verify(cromwellService)
+        .runSummaries(List.of(runningRunEngineId1, runningRunEngineId2, runningRunEngineId3));
+    // and completed together, so that the outputs of the batch are saved at the same time
+    verify(runCompletionHandler, times(1)).updateResults(anyList());
+    verify(runCompletionHandler, never()).updateResults(any(), any(), any(), any(), any(), any());
+    assertEquals(RUNNING, completionOf(run1).status());
+    assertEquals(COMPLETE, completionOf(run2).status());
+    assertEquals(RUNNING, completionOf(run3).status());
+    verify(micrometerMetrics).increaseEventCounter("run_updates_polled", 3);
+    assertEquals(3, actual.totalUpdated());
+  }
+
+  @Test
+  void failedCompletionLeavesBatchUnchanged() throws Exception {
+    when(cromwellService.runSummaries(List.of(runningRunEngineId1)))
+        .thenReturn(summaries(runningRunEngineId1, "Running"));
+    when(runCompletionHandler.updateResults(anyList()))
+        .thenThrow(new RuntimeException("Database is down"));
+
+    var actual = smartRunsPoller.updateRuns(List.of(runToUpdate1), mockToken);
+
+    assertEquals(List.of(runToUpdate1), actual.updatedList());
+  }
+
+  @Test
+  void failedQueryFallsBackToQueryingEachRun() throws Exception {
+    when(cbasApiConfiguration.getRunStatusPollBatchSize()).thenReturn(3);
+    var run1 = runToUpdate1.withLastPolled(OffsetDateTime.now().minusSeconds(1000));
+    var run2 = runToUpdate2.withLastPolled(OffsetDateTime.now().minusSeconds(500));
+    when(cromwellService.runSummaries(List.of(runningRunEngineId1, runningRunEngineId2)))
+        .thenThrow(new ApiException("Invalid workflow ID"));
+    when(cromwellService.runSummaries(List.of(runningRunEngineId1)))
+        .thenThrow(new ApiException("Invalid workflow ID"));
+    when(cromwellService.runSummaries(List.of(runningRunEngineId2)))
+        .thenReturn(summaries(runningRunEngineId2, "Running"));
+
+    var actual = smartRunsPoller.updateRuns(List.of(run1, run2), mockToken);
+
+    // the run that could be looked up is updated despite the other run of its batch
+    assertNotCompleted(run1);
+    assertEquals(RUNNING, completionOf(run2).status());
+    verify(micrometerMetrics).increaseEventCounter("run_updates_polled", 1);
+    assertEquals(2, actual.totalUpdated());
+  }
+
+  @Test
+  void leavesRunsNeedingOutputsPastTheEndTimeForTheNextUpdate() throws Exception {
+    when(cbasApiConfiguration.getRunStatusPollBatchSize()).thenReturn(3);
+    var run1 = runToUpdate1.withLastPolled(OffsetDateTime.now().minusSeconds(1000));
+    var run2 = runToUpdate2.withLastPolled(OffsetDateTime.now().minusSeconds(500));
+    var run3 =
+        runToUpdate3.withLastPolled(OffsetDateTime.now().minusSeconds(100)).withStatus(RUNNING);
+    when(cromwellService.runSummaries(
+            List.of(runningRunEngineId1, runningRunEngineId2, runningRunEngineId3)))
+        .thenReturn(
+            Map.of(
+                runningRunEngineId1,
+                new WorkflowQueryResult().id(runningRunEngineId1).status("Succeeded"),
+                runningRunEngineId2,
+                new WorkflowQueryResult().id(runningRunEngineId2).status("Succeeded"),
+                runningRunEngineId3,
+                new WorkflowQueryResult().id(runningRunEngineId3).status("Running")));
+    when(cromwellService.getOutputs(runningRunEngineId1))
+        .thenAnswer(
+            i -> {
+              Thread.sleep(600);
+              return Map.of();
+            });
+
+    var actual =
+        smartRunsPoller.updateRuns(
+            List.of(run1, run2, run3),
+            Optional.of(OffsetDateTime.now().plus(Duration.ofMillis(500))),
+            mockToken);
+
+    // the outputs of run 2 are not fetched once the end time is reached, run 3 needs none
+    assertEquals(COMPLETE, completionOf(run1).status());
+    assertNotCompleted(run2);
+    verify(cromwellService, never()).getOutputs(runningRunEngineId2);
+    assertEquals(RUNNING, completionOf(run3).status());
+    assertEquals(2, actual.totalUpdated());
+    assertEquals(false, actual.fullyUpdated());
+  }
+
+  @Test
+  void pollBatchesConcurrently() throws Exception {
+    SmartRunsPoller concurrentPoller =
+        new SmartRunsPoller(
+            cromwellService,
+            runCompletionHandler,
+            cbasApiConfiguration,
+            new AsyncRunStatusPollConfiguration(3, 10),
+            new SimpleAsyncTaskExecutor(),
+            micrometerMetrics);
+    when(cbasApiConfiguration.getRunStatusPollBatchSize()).thenReturn(100);
+    var run1 = runToUpdate1.withLastPolled(OffsetDateTime.now().minusSeconds(1000));
+    var run2 = runToUpdate2.withLastPolled(OffsetDateTime.now().minusSeconds(500));
+    var run3 =
+        runToUpdate3.withLastPolled(OffsetDateTime.now().minusSeconds(100)).withStatus(RUNNING);
+    when(cromwellService.runSummaries(List.of(runningRunEngineId1)))
+        .thenReturn(summaries(runningRunEngineId1, "Running"));
+    when(cromwellService.runSummaries(List.of(runningRunEngineId2)))
+        .thenReturn(summaries(runningRunEngineId2, "Succeeded"));
+    when(cromwellService.runSummaries(List.of(runningRunEngineId3)))
+        .thenReturn(summaries(runningRunEngineId3, "Running"));
+
+    var actual = concurrentPoller.updateRuns(List.of(run3, run1, run2), mockToken);
+
+    // The runs are spread over one batch per concurrent poll
+    verify(cromwellService, times(3)).runSummaries(any());
+    assertEquals(RUNNING, completionOf(run1).status());
+    assertEquals(COMPLETE, completionOf(run2).status());
+    assertEquals(RUNNING, completionOf(run3).status());
+    verify(micrometerMetrics, times(3)).increaseEventCounter("run_updates_polled", 1);
+    assertEquals(3, actual.totalUpdated());
+    assertEquals(3, actual.updatedList().size());
+    assertEquals(true, actual.fullyUpdated());
+  }
+
+  @Test
+  void failedQueryLeavesBatchUnchanged() throws Exception {
+    when(cbasApiConfiguration.getRunStatusPollBatchSize()).thenReturn(3);
+    when(cromwellService.runSummaries(any()))
+        .thenThrow(new ApiException("Cannot connect to Cromwell"));
+
+    var actual = smartRunsPoller.updateRuns(List.of(runToUpdate1, runToUpdate2), mockToken);
+
+    // the batch query, then one query per run
+    verify(cromwellService, times(3)).runSummaries(any());
+    verify(runCompletionHandler, never()).updateResults(anyList());
+    verify(micrometerMetrics, never()).increaseEventCounter(eq("run_updates_polled"), anyLong());
+    assertEquals(List.of(runToUpdate1, runToUpdate2), actual.updatedList());
+  }
+
+  private static Map<String, WorkflowQueryResult> summaries(String engineId, String status) {
+    return Map.of(engineId, new WorkflowQueryResult().id(engineId).status(status));
+  }
 }
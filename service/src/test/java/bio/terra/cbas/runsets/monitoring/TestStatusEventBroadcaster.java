@@ -0,0 +1,244 @@
+package bio.terra.cbas.runsets.monitoring;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.ArgumentMatchers.anyInt;
+import static org.mockito.ArgumentMatchers.eq;
+import static org.mockito.Mockito.RETURNS_MOCKS;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.never;
+import static org.mockito.Mockito.times;
+import static org.mockito.Mockito.verify;
+import static org.mockito.Mockito.when;
+
+import bio.terra.cbas.common.MicrometerMetrics;
+import bio.terra.cbas.common.exceptions.InvalidStatusEventIdException;
+import bio.terra.cbas.config.StatusEventsConfiguration;
+import bio.terra.cbas.dao.StatusEventDao;
+import bio.terra.cbas.dao.util.StatusEventCursor;
+import bio.terra.cbas.models.CbasRunSetStatus;
+import bio.terra.cbas.models.CbasRunStatus;
+import bio.terra.cbas.models.StatusEvent;
+import com.google.common.util.concurrent.MoreExecutors;
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import java.time.OffsetDateTime;
+import java.util.List;
+import java.util.Optional;
+import java.util.UUID;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.springframework.scheduling.TaskScheduler;
+import org.springframework.web.servlet.mvc.method.annotation.SseEmitter;
+
+class TestStatusEventBroadcaster {
+
+  private static final int EVENTS_PER_POLL = 2;
+  // Long enough that the poll thread does not poll during a test
+  private static final long POLL_INTERVAL_MILLIS = 60_000;
+
+  private final UUID runSetId = UUID.randomUUID();
+  private final TaskScheduler taskScheduler = mock(TaskScheduler.class, RETURNS_MOCKS);
+
+  private StatusEventDao statusEventDao;
+  private SimpleMeterRegistry meterRegistry;
+  private StatusEventBroadcaster broadcaster;
+
+  @BeforeEach
+  void init() {
+    statusEventDao = mock(StatusEventDao.class);
+    meterRegistry = new SimpleMeterRegistry();
+    // Sends on the poll thread, so that every poll is done sending when it returns
+    broadcaster = broadcaster(30, MoreExecutors.newDirectExecutorService());
+  }
+
+  @AfterEach
+  void stopBroadcaster() {
+    broadcaster.destroy();
+  }
+
+  private StatusEventBroadcaster broadcaster(int sendTimeoutSeconds, ExecutorService executor) {
+    return new StatusEventBroadcaster(
+        statusEventDao,
+        new StatusEventsConfiguration(
+            POLL_INTERVAL_MILLIS, EVENTS_PER_POLL, 15, 600, 24, 1, sendTimeoutSeconds, 60),
+        new MicrometerMetrics(meterRegistry),
+        taskScheduler,
+        executor);
+  }
+
+  private StatusEvent runEvent(long transactionId, long eventId) {
+    return new StatusEvent(
+        eventId,
+        transactionId,
+        runSetId,
+        UUID.randomUUID(),
+        CbasRunStatus.RUNNING.toString(),
+        OffsetDateTime.now());
+  }
+
+  private StatusEvent runSetEvent(long transactionId, long eventId) {
+    return new StatusEvent(
+        eventId,
+        transactionId,
+        runSetId,
+        null,
+        CbasRunSetStatus.COMPLETE.toString(),
+        OffsetDateTime.now());
+  }
+
+  @Test
+  void streamsEventsFromNowOn() {
+    StatusEventCursor now = new StatusEventCursor(100, 0);
+    when(statusEventDao.getCurrentCursor()).thenReturn(now);
+    when(statusEventDao.getLatestCursor()).thenReturn(Optional.of(new StatusEventCursor(101, 3)));
+
+    broadcaster.subscribe(null, null);
+    broadcaster.sendNewEvents();
+
+    verify(statusEventDao).getEventsAfter(null, now, EVENTS_PER_POLL);
+  }
+
+  @Test
+  void resumesAfterLastEventId() {
+    StatusEventCursor lastReceived = new StatusEventCursor(100, 7);
+    when(statusEventDao.getLatestCursor()).thenReturn(Optional.of(new StatusEventCursor(101, 9)));
+    when(statusEventDao.getEventsAfter(runSetId, lastReceived, EVENTS_PER_POLL))
+        .thenReturn(List.of(runEvent(101, 9)));
+
+    broadcaster.subscribe(runSetId, lastReceived.encode());
+    broadcaster.sendNewEvents();
+    // Every event up to the latest one was sent
+    broadcaster.sendNewEvents();
+    when(statusEventDao.getLatestCursor()).thenReturn(Optional.of(new StatusEventCursor(102, 1)));
+    broadcaster.sendNewEvents();
+
+    verify(statusEventDao, never()).getCurrentCursor();
+    verify(statusEventDao, times(2)).getEventsAfter(any(), any(), eq(EVENTS_PER_POLL));
+    // The next poll reads the events after the last event sent
+    verify(statusEventDao)
+        .getEventsAfter(runSetId, new StatusEventCursor(101, 9), EVENTS_PER_POLL);
+  }
+
+  @Test
+  void sendsAtMostEventsPerPollToStream() {
+    StatusEventCursor lastReceived = new StatusEventCursor(100, 7);
+    when(statusEventDao.getLatestCursor()).thenReturn(Optional.of(new StatusEventCursor(200, 0)));
+    when(statusEventDao.getEventsAfter(runSetId, lastReceived, EVENTS_PER_POLL))
+        .thenReturn(List.of(runEvent(101, 8), runSetEvent(102, 10)));
+
+    broadcaster.subscribe(runSetId, lastReceived.encode());
+    broadcaster.sendNewEvents();
+
+    verify(statusEventDao).getEventsAfter(runSetId, lastReceived, EVENTS_PER_POLL);
+    verify(statusEventDao, never())
+        .getEventsAfter(runSetId, new StatusEventCursor(102, 10), EVENTS_PER_POLL);
+
+    // The rest is read on the next poll
+    broadcaster.sendNewEvents();
+    verify(statusEventDao)
+        .getEventsAfter(runSetId, new StatusEventCursor(102, 10), EVENTS_PER_POLL);
+  }
+
+  @Test
+  void readsNothingWithoutNewEvents() {
+    when(statusEventDao.getCurrentCursor()).thenReturn(new StatusEventCursor(100, 0));
+    when(statusEventDao.getLatestCursor()).thenReturn(Optional.of(new StatusEventCursor(99, 3)));
+
+    broadcaster.subscribe(null, null);
+    broadcaster.sendNewEvents();
+
+    verify(statusEventDao, never()).getEventsAfter(any(), any(), anyInt());
+  }
+
+  @Test
+  void movesPastEventsOfOtherRunSets() {
+    StatusEventCursor lastReceived = new StatusEventCursor(100, 7);
+    StatusEventCursor latest = new StatusEventCursor(150, 3);
+    when(statusEventDao.getLatestCursor()).thenReturn(Optional.of(latest));
+
+    broadcaster.subscribe(runSetId, lastReceived.encode());
+    broadcaster.sendNewEvents();
+    broadcaster.sendNewEvents();
+    when(statusEventDao.getLatestCursor()).thenReturn(Optional.of(new StatusEventCursor(151, 0)));
+    broadcaster.sendNewEvents();
+
+    verify(statusEventDao).getEventsAfter(runSetId, lastReceived, EVENTS_PER_POLL);
+    verify(statusEventDao).getEventsAfter(runSetId, latest, EVENTS_PER_POLL);
+    verify(statusEventDao, times(2)).getEventsAfter(any(), any(), eq(EVENTS_PER_POLL));
+  }
+
+  @Test
+  void closesStreamsThatCanNoLongerBeSentTo() {
+    when(statusEventDao.getCurrentCursor()).thenReturn(new StatusEventCursor(100, 0));
+    when(statusEventDao.getLatestCursor()).thenReturn(Optional.of(new StatusEventCursor(101, 8)));
+    when(statusEventDao.getEventsAfter(any(), any(), eq(EVENTS_PER_POLL)))
+        .thenReturn(List.of(runEvent(101, 8)));
+
+    SseEmitter openStream = broadcaster.subscribe(null, null);
+    SseEmitter completedStream = broadcaster.subscribe(null, null);
+    completedStream.complete();
+    assertEquals(2, broadcaster.openStreams());
+
+    broadcaster.sendNewEvents();
+
+    assertEquals(1, broadcaster.openStreams());
+    verify(statusEventDao, times(2)).getEventsAfter(any(), any(), eq(EVENTS_PER_POLL));
+    openStream.complete();
+  }
+
+  @Test
+  void closesStreamsThatTakeTooLongToSendTo() throws Exception {
+    CountDownLatch sendBlocked = new CountDownLatch(1);
+    ExecutorService executor = Executors.newSingleThreadExecutor();
+    broadcaster.destroy();
+    broadcaster = broadcaster(0, executor);
+    when(statusEventDao.getCurrentCursor()).thenReturn(new StatusEventCursor(100, 0));
+    when(statusEventDao.getLatestCursor()).thenReturn(Optional.of(new StatusEventCursor(101, 8)));
+    when(statusEventDao.getEventsAfter(any(), any(), eq(EVENTS_PER_POLL)))
+        .thenAnswer(
+            invocation -> {
+              sendBlocked.await();
+              return List.of();
+            });
+
+    broadcaster.subscribe(null, null);
+    broadcaster.sendNewEvents();
+    assertEquals(1, broadcaster.openStreams());
+
+    // Still sending on the next poll
+    broadcaster.sendNewEvents();
+    assertEquals(0, broadcaster.openStreams());
+    assertEquals(1, meterRegistry.counter("status_event_streams_timed_out").count());
+
+    sendBlocked.countDown();
+    executor.shutdown();
+    assertTrue(executor.awaitTermination(10, TimeUnit.SECONDS));
+    verify(statusEventDao, times(1)).getEventsAfter(any(), any(), eq(EVENTS_PER_POLL));
+  }
+
+  @Test
+  void warnsOnceAMinuteWhileEventsAreHeldBack() {
+    when(statusEventDao.getOldestHeldBackEventTimestamp())
+        .thenReturn(Optional.of(OffsetDateTime.now().minusMinutes(5)));
+
+    broadcaster.sendNewEvents();
+    broadcaster.sendNewEvents();
+
+    verify(statusEventDao, times(1)).getOldestHeldBackEventTimestamp();
+    assertEquals(1, meterRegistry.counter("status_events_held_back").count());
+  }
+
+  @Test
+  void rejectsInvalidLastEventId() {
+    assertThrows(
+        InvalidStatusEventIdException.class, () -> broadcaster.subscribe(runSetId, "not-an-id"));
+    assertEquals(0, broadcaster.openStreams());
+  }
+}
@@ -0,0 +1,139 @@
+package bio.terra.cbas.runsets.outputs;
+
+import static bio.terra.cbas.runsets.outputs.EngineOutputValueGenerator.singleCromwellOutput;
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertNotSame;
+import static org.junit.jupiter.api.Assertions.assertSame;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.times;
+import static org.mockito.Mockito.verify;
+import static org.mockito.Mockito.when;
+
+import bio.terra.cbas.common.MicrometerMetrics;
+import bio.terra.cbas.dao.RunSetDao;
+import bio.terra.cbas.models.CbasRunSetStatus;
+import bio.terra.cbas.models.CbasRunStatus;
+import bio.terra.cbas.models.PollableRun;
+import bio.terra.cbas.models.PollableRunSet;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.google.gson.Gson;
+import cromwell.client.JSON;
+import java.util.UUID;
+import org.databiosphere.workspacedata.model.RecordAttributes;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+
+class TestOutputPlanCache {
+
+  private static final String OUTPUT_DEFINITION =
+      """
+        [
+          {
+            "output_name": "myWorkflow.out",
+            "output_type": { "type": "primitive", "primitive_type": "String" },
+            "destination": { "type": "record_update", "record_attribute": "foo_name" }
+          }
+        ]
+      """;
+
+  private static final String OUTPUT_DEFINITION_TO_NONE =
+      """
+        [
+          {
+            "output_name": "myWorkflow.out",
+            "output_type": { "type": "primitive", "primitive_type": "String" },
+            "destination": { "type": "none" }
+          }
+        ]
+      """;
+
+  private final MicrometerMetrics micrometerMetrics = mock(MicrometerMetrics.class);
+
+  private RunSetDao runSetDao;
+  private OutputPlanCache outputPlanCache;
+
+  public TestOutputPlanCache() {
+    JSON.setGson(new Gson());
+  }
+
+  @BeforeEach
+  void init() {
+    runSetDao = mock(RunSetDao.class);
+    outputPlanCache = new OutputPlanCache(runSetDao, new ObjectMapper());
+  }
+
+  // A run set whose output definition is read from the database
+  private PollableRunSet runSet(String outputDefinition) {
+    PollableRunSet runSet =
+        new PollableRunSet(UUID.randomUUID(), CbasRunSetStatus.RUNNING, null, 1, 0, "FOO");
+    when(runSetDao.getOutputDefinition(runSet.runSetId())).thenReturn(outputDefinition);
+    return runSet;
+  }
+
+  private static PollableRun run(PollableRunSet runSet) {
+    return new PollableRun(
+        UUID.randomUUID(),
+        UUID.randomUUID().toString(),
+        runSet,
+        "foo1",
+        CbasRunStatus.RUNNING,
+        null,
+        null);
+  }
+
+  @Test
+  void compilesOutputDefinitionOncePerRunSet() throws Exception {
+    PollableRunSet runSet = runSet(OUTPUT_DEFINITION);
+
+    OutputPlan outputPlan = outputPlanCache.getOutputPlan(run(runSet));
+
+    assertSame(outputPlan, outputPlanCache.getOutputPlan(run(runSet)));
+    verify(runSetDao, times(1)).getOutputDefinition(runSet.runSetId());
+  }
+
+  @Test
+  void appliesPlanToTheOutputsOfEveryRun() throws Exception {
+    PollableRunSet runSet = runSet(OUTPUT_DEFINITION);
+    OutputPlan outputPlan = outputPlanCache.getOutputPlan(run(runSet));
+
+    RecordAttributes expected1 = new RecordAttributes();
+    expected1.put("foo_name", "Harry Potter");
+    RecordAttributes expected2 = new RecordAttributes();
+    expected2.put("foo_name", "Hermione Granger");
+
+    assertTrue(outputPlan.hasOutputDefinitions());
+    assertEquals(
+        expected1,
+        outputPlan.buildOutputs(
+            singleCromwellOutput("myWorkflow.out", "\"Harry Potter\""), micrometerMetrics));
+    assertEquals(
+        expected2,
+        outputPlan.buildOutputs(
+            singleCromwellOutput("myWorkflow.out", "\"Hermione Granger\""), micrometerMetrics));
+  }
+
+  @Test
+  void outputsNotWrittenAnywhereStillCountAsDefinitions() throws Exception {
+    OutputPlan outputPlan = outputPlanCache.getOutputPlan(run(runSet(OUTPUT_DEFINITION_TO_NONE)));
+    OutputPlan emptyOutputPlan = outputPlanCache.getOutputPlan(run(runSet("[]")));
+
+    Object cromwellOutputs = singleCromwellOutput("myWorkflow.out", "\"Harry Potter\"");
+
+    assertTrue(outputPlan.hasOutputDefinitions());
+    assertTrue(outputPlan.buildOutputs(cromwellOutputs, micrometerMetrics).isEmpty());
+    assertFalse(emptyOutputPlan.hasOutputDefinitions());
+  }
+
+  @Test
+  void compilesAgainOnceEvicted() throws Exception {
+    PollableRunSet runSet = runSet(OUTPUT_DEFINITION);
+
+    OutputPlan outputPlan = outputPlanCache.getOutputPlan(run(runSet));
+    outputPlanCache.evict(runSet.runSetId());
+
+    assertNotSame(outputPlan, outputPlanCache.getOutputPlan(run(runSet)));
+    verify(runSetDao, times(2)).getOutputDefinition(runSet.runSetId());
+  }
+}
@@ -0,0 +1,276 @@
+package bio.terra.cbas.runsets.results;
+
+import static org.hamcrest.MatcherAssert.assertThat;
+import static org.hamcrest.Matchers.containsString;
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.ArgumentMatchers.anyList;
+import static org.mockito.ArgumentMatchers.eq;
+import static org.mockito.Mockito.RETURNS_MOCKS;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.never;
+import static org.mockito.Mockito.verify;
+import static org.mockito.Mockito.verifyNoInteractions;
+import static org.mockito.Mockito.when;
+
+import bio.terra.cbas.common.MicrometerMetrics;
+import bio.terra.cbas.config.RunCallbackInboxConfiguration;
+import bio.terra.cbas.dao.RunCallbackDao;
+import bio.terra.cbas.dao.RunDao;
+import bio.terra.cbas.models.CbasRunStatus;
+import bio.terra.cbas.models.PollableRun;
+import bio.terra.cbas.models.RunCallback;
+import bio.terra.cbas.models.RunCallbackStatus;
+import bio.terra.cbas.runsets.results.RunCompletionHandler.RunCompletion;
+import bio.terra.cbas.util.UuidSource;
+import bio.terra.common.iam.BearerToken;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import java.time.OffsetDateTime;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.UUID;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.mockito.ArgumentCaptor;
+import org.springframework.core.task.SyncTaskExecutor;
+import org.springframework.scheduling.TaskScheduler;
+
+class TestRunCallbackInbox {
+
+  private static final int BATCH_SIZE = 10;
+  private static final int LEASE_SECONDS = 300;
+  private static final int RETRY_DELAY_SECONDS = 30;
+  private static final int MAX_ATTEMPTS = 3;
+  // Long enough for the inbox not to poll on its own during a test
+  private static final long POLL_INTERVAL_MILLIS = 60_000;
+
+  private final UUID workerUuid = UUID.randomUUID();
+  private final String workerId = "callback-worker-" + workerUuid;
+  private final TaskScheduler taskScheduler = mock(TaskScheduler.class, RETURNS_MOCKS);
+
+  private RunCallbackDao runCallbackDao;
+  private RunDao runDao;
+  private RunCompletionHandler runCompletionHandler;
+  private UuidSource uuidSource;
+
+  @BeforeEach
+  void init() {
+    runCallbackDao = mock(RunCallbackDao.class);
+    runDao = mock(RunDao.class);
+    runCompletionHandler = mock(RunCompletionHandler.class);
+    uuidSource = mock(UuidSource.class);
+    when(uuidSource.generateUUID()).thenReturn(workerUuid);
+  }
+
+  private RunCallbackInbox inbox(boolean enabled) {
+    return new RunCallbackInbox(
+        runCallbackDao,
+        runDao,
+        runCompletionHandler,
+        new RunCallbackInboxConfiguration(
+            enabled,
+            1,
+            POLL_INTERVAL_MILLIS,
+            BATCH_SIZE,
+            LEASE_SECONDS,
+            RETRY_DELAY_SECONDS,
+            MAX_ATTEMPTS),
+        new SyncTaskExecutor(),
+        new ObjectMapper(),
+        new MicrometerMetrics(new SimpleMeterRegistry()),
+        uuidSource,
+        taskScheduler);
+  }
+
+  private RunCallback callback(long callbackId, String engineId, int attempts) {
+    return callback(callbackId, engineId, attempts, OffsetDateTime.now(), "user-token");
+  }
+
+  private RunCallback callback(
+      long callbackId,
+      String engineId,
+      int attempts,
+      OffsetDateTime receivedTimestamp,
+      String userToken) {
+    return new RunCallback(
+        callbackId,
+        engineId,
+        RunCallbackStatus.RUNNING,
+        CbasRunStatus.COMPLETE,
+        "{\"wf.out\": \"hello\"}",
+        null,
+        userToken,
+        workerId,
+        OffsetDateTime.now(),
+        attempts,
+        receivedTimestamp,
+        null);
+  }
+
+  // A run last modified before the callbacks of the tests were received
+  private PollableRun run(String engineId) {
+    return run(engineId, OffsetDateTime.now().minusMinutes(5));
+  }
+
+  private PollableRun run(String engineId, OffsetDateTime lastModifiedTimestamp) {
+    return new PollableRun(
+        UUID.randomUUID(),
+        engineId,
+        null,
+        "record",
+        CbasRunStatus.RUNNING,
+        lastModifiedTimestamp,
+        lastModifiedTimestamp);
+  }
+
+  @Test
+  void storesReceivedCallbacks() throws Exception {
+    UUID engineId = UUID.randomUUID();
+
+    inbox(true)
+        .receive(
+            engineId,
+            CbasRunStatus.EXECUTOR_ERROR,
+            null,
+            List.of("workflow failed"),
+            new BearerToken("user-token"));
+
+    verify(runCallbackDao)
+        .createCallback(
+            engineId.toString(),
+            CbasRunStatus.EXECUTOR_ERROR,
+            null,
+            "[\"workflow failed\"]",
+            "user-token");
+  }
+
+  @Test
+  void processesClaimedBatchTogether() {
+    RunCallback succeeds = callback(1, "engine-1", 1);
+    RunCallback fails = callback(2, "engine-2", 1);
+    PollableRun run1 = run("engine-1");
+    PollableRun run2 = run("engine-2");
+    when(runCallbackDao.claimCallbacks(workerId, BATCH_SIZE, LEASE_SECONDS))
+        .thenReturn(List.of(succeeds, fails), List.of());
+    when(runDao.getPollableRunsByEngineIds(Set.of("engine-1", "engine-2")))
+        .thenReturn(List.of(run2, run1));
+    when(runCompletionHandler.updateResults(anyList()))
+        .thenReturn(List.of(RunCompletionResult.SUCCESS, RunCompletionResult.ERROR));
+
+    inbox(true).pollForCallbacks();
+
+    ArgumentCaptor<List<RunCompletion>> completions = ArgumentCaptor.forClass(List.class);
+    verify(runCompletionHandler).updateResults(completions.capture());
+    assertEquals(
+        List.of(run1, run2), completions.getValue().stream().map(RunCompletion::run).toList());
+    RunCompletion completion = completions.getValue().get(0);
+    assertEquals(CbasRunStatus.COMPLETE, completion.status());
+    assertEquals(Map.of("wf.out", "hello"), completion.workflowOutputs());
+    assertEquals("user-token", completion.userToken().getToken());
+    assertEquals(succeeds.receivedTimestamp(), completion.engineStatusChange());
+
+    verify(runCallbackDao).completeCallbacks(List.of(1L), workerId);
+    // Callbacks that could not be processed are claimed again later
+    verify(runCallbackDao).retryCallbacks(List.of(2L), workerId, RETRY_DELAY_SECONDS);
+    verify(runCallbackDao, never()).failCallback(any(), any(), any());
+  }
+
+  @Test
+  void processesOnlyLatestCallbackOfWorkflow() {
+    PollableRun run = run("engine-1");
+    when(runDao.getPollableRunsByEngineIds(Set.of("engine-1"))).thenReturn(List.of(run));
+    when(runCompletionHandler.updateResults(anyList()))
+        .thenReturn(List.of(RunCompletionResult.SUCCESS));
+
+    inbox(true).process(List.of(callback(1, "engine-1", 1), callback(2, "engine-1", 1)));
+
+    ArgumentCaptor<List<RunCompletion>> completions = ArgumentCaptor.forClass(List.class);
+    verify(runCompletionHandler).updateResults(completions.capture());
+    assertEquals(1, completions.getValue().size());
+    verify(runCallbackDao).completeCallbacks(List.of(1L, 2L), workerId);
+  }
+
+  @Test
+  void processesMostRecentlyReceivedCallbackOfWorkflow() {
+    OffsetDateTime now = OffsetDateTime.now();
+    PollableRun run = run("engine-1");
+    when(runDao.getPollableRunsByEngineIds(Set.of("engine-1"))).thenReturn(List.of(run));
+    when(runCompletionHandler.updateResults(anyList()))
+        .thenReturn(List.of(RunCompletionResult.SUCCESS));
+
+    inbox(true)
+        .process(
+            List.of(
+                callback(1, "engine-1", 1, now, "user-token"),
+                callback(2, "engine-1", 1, now.minusMinutes(1), "user-token")));
+
+    ArgumentCaptor<List<RunCompletion>> completions = ArgumentCaptor.forClass(List.class);
+    verify(runCompletionHandler).updateResults(completions.capture());
+    assertEquals(
+        List.of(now),
+        completions.getValue().stream().map(RunCompletion::engineStatusChange).toList());
+    verify(runCallbackDao).completeCallbacks(List.of(2L, 1L), workerId);
+  }
+
+  @Test
+  void dropsCallbackReceivedBeforeRunWasLastModified() {
+    OffsetDateTime now = OffsetDateTime.now();
+    when(runDao.getPollableRunsByEngineIds(Set.of("engine-1")))
+        .thenReturn(List.of(run("engine-1", now)));
+    when(runCompletionHandler.updateResults(anyList())).thenReturn(List.of());
+
+    inbox(true).process(List.of(callback(1, "engine-1", 1, now.minusMinutes(1), "user-token")));
+
+    verify(runCompletionHandler).updateResults(List.of());
+    verify(runCallbackDao).completeCallbacks(List.of(1L), workerId);
+    verify(runCallbackDao, never()).failCallback(any(), any(), any());
+  }
+
+  @Test
+  void givesUpOnOutputsOnceUserTokenExpired() {
+    when(runDao.getPollableRunsByEngineIds(Set.of("engine-1")))
+        .thenReturn(List.of(run("engine-1")));
+    when(runCompletionHandler.updateResults(anyList())).thenReturn(List.of());
+
+    inbox(true).process(List.of(callback(1, "engine-1", 1, OffsetDateTime.now(), null)));
+
+    ArgumentCaptor<String> error = ArgumentCaptor.forClass(String.class);
+    verify(runCallbackDao).failCallback(eq(1L), eq(workerId), error.capture());
+    assertThat(error.getValue(), containsString("credentials expired"));
+    verify(runCompletionHandler).updateResults(List.of());
+  }
+
+  @Test
+  void givesUpOnCallbacksThatCannotBeProcessed() {
+    when(runDao.getPollableRunsByEngineIds(any())).thenReturn(List.of(run("engine-invalid")));
+    when(runCompletionHandler.updateResults(anyList()))
+        .thenReturn(List.of(RunCompletionResult.VALIDATION_ERROR));
+
+    inbox(true)
+        .process(
+            List.of(
+                callback(1, "engine-unknown", 1),
+                callback(2, "engine-invalid", 1),
+                callback(3, "engine-exhausted", MAX_ATTEMPTS + 1)));
+
+    ArgumentCaptor<String> unknownError = ArgumentCaptor.forClass(String.class);
+    verify(runCallbackDao).failCallback(eq(1L), eq(workerId), unknownError.capture());
+    assertThat(unknownError.getValue(), containsString("engine-unknown is not found"));
+    ArgumentCaptor<String> invalidError = ArgumentCaptor.forClass(String.class);
+    verify(runCallbackDao).failCallback(eq(2L), eq(workerId), invalidError.capture());
+    assertThat(invalidError.getValue(), containsString("could not be processed"));
+    ArgumentCaptor<String> exhaustedError = ArgumentCaptor.forClass(String.class);
+    verify(runCallbackDao).failCallback(eq(3L), eq(workerId), exhaustedError.capture());
+    assertThat(exhaustedError.getValue(), containsString("after 3 attempts"));
+    verify(runCallbackDao).completeCallbacks(List.of(), workerId);
+  }
+
+  @Test
+  void disabledInboxClaimsNothing() {
+    inbox(false).pollForCallbacks();
+
+    verifyNoInteractions(runCallbackDao, runDao, runCompletionHandler);
+  }
+}
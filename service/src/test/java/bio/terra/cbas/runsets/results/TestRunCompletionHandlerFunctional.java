@@ -18,14 +18,19 @@ import static org.mockito.Mockito.when;
 import bio.terra.cbas.common.DateUtils;
 import bio.terra.cbas.common.MicrometerMetrics;
 import bio.terra.cbas.dao.RunDao;
+import bio.terra.cbas.dao.RunDao.RunStatusUpdate;
+import bio.terra.cbas.config.WdsOutputWriterConfiguration;
+import bio.terra.cbas.dao.RunSetDao;
+import bio.terra.cbas.dependencies.wds.WdsOutputWriter;
 import bio.terra.cbas.dependencies.wds.WdsService;
 import bio.terra.cbas.dependencies.wds.WdsServiceApiException;
 import bio.terra.cbas.dependencies.wds.WdsServiceException;
 import bio.terra.cbas.models.CbasRunSetStatus;
 import bio.terra.cbas.models.CbasRunStatus;
-import bio.terra.cbas.models.MethodVersion;
-import bio.terra.cbas.models.Run;
-import bio.terra.cbas.models.RunSet;
+import bio.terra.cbas.models.PollableRun;
+import bio.terra.cbas.models.PollableRunSet;
+import bio.terra.cbas.runsets.outputs.OutputPlanCache;
+import bio.terra.cbas.runsets.results.RunCompletionHandler.RunCompletion;
 import bio.terra.common.iam.BearerToken;
 import com.fasterxml.jackson.annotation.JsonInclude;
 import com.fasterxml.jackson.databind.ObjectMapper;
@@ -38,8 +43,9 @@ import cromwell.client.model.RunLog;
 import java.time.OffsetDateTime;
 import java.util.Collections;
 import java.util.List;
-import java.util.Optional;
+import java.util.Set;
 import java.util.UUID;
+import java.util.concurrent.Executor;
 import org.databiosphere.workspacedata.client.ApiException;
 import org.junit.jupiter.api.BeforeEach;
 import org.junit.jupiter.api.Test;
@@ -63,7 +69,10 @@ class TestRunCompletionHandlerFunctional {
           .setDefaultPropertyInclusion(JsonInclude.Include.NON_ABSENT);
 
   private RunDao runDao;
+  private RunSetDao runSetDao;
   private WdsService wdsService;
+  private WdsOutputWriter wdsOutputWriter;
+  private OutputPlanCache outputPlanCache;
   static String outputDefinition =
       """
         [
@@ -101,17 +110,25 @@ class TestRunCompletionHandlerFunctional {
   @BeforeEach
   void init() {
     runDao = mock(RunDao.class);
+    runSetDao = mock(RunSetDao.class);
     wdsService = mock(WdsService.class);
+    outputPlanCache = new OutputPlanCache(runSetDao, objectMapper);
+    wdsOutputWriter =
+        new WdsOutputWriter(
+            wdsService,
+            new WdsOutputWriterConfiguration(false, 200, 100, 1),
+            mock(Executor.class),
+            micrometerMetrics);
   }
 
   @Test
   void updateRunCompletionSucceededNoOutputsComplete() {
     RunCompletionHandler runCompletionHandler =
-        new RunCompletionHandler(runDao, wdsService, objectMapper, micrometerMetrics);
+        new RunCompletionHandler(runDao, outputPlanCache, wdsOutputWriter, micrometerMetrics);
 
     UUID runId1 = UUID.randomUUID();
-    RunSet runSet1 = createRunSet(UUID.randomUUID(), "[]");
-    Run run1Incomplete = createTestRun(runId1, runSet1, RUNNING);
+    PollableRunSet runSet1 = createRunSet(UUID.randomUUID(), "[]");
+    PollableRun run1Incomplete = createTestRun(runId1, runSet1, RUNNING);
 
     // Set up mocks:
     when(runDao.getRuns(any())).thenReturn(List.of(run1Incomplete));
@@ -132,10 +149,10 @@ class TestRunCompletionHandlerFunctional {
   @Test
   void updateRunCompletionWorkflowErrorsRecordedDateTime() {
     RunCompletionHandler runCompletionHandler =
-        new RunCompletionHandler(runDao, wdsService, objectMapper, micrometerMetrics);
+        new RunCompletionHandler(runDao, outputPlanCache, wdsOutputWriter, micrometerMetrics);
     var errorList = List.of("error1", "error 2");
     UUID runId1 = UUID.randomUUID();
-    Run run1Incomplete = createTestRun(runId1, null, SYSTEM_ERROR);
+    PollableRun run1Incomplete = createTestRun(runId1, null, SYSTEM_ERROR);
 
     // Set up mocks:
     when(runDao.updateRunStatusWithError(eq(runId1), eq(SYSTEM_ERROR), any(), any())).thenReturn(1);
@@ -156,10 +173,10 @@ class TestRunCompletionHandlerFunctional {
   @Test
   void updateRunCompletionNoStatusChangeNoOutputsUpdateDateTimeNoRecord() {
     RunCompletionHandler runCompletionHandler =
-        new RunCompletionHandler(runDao, wdsService, objectMapper, micrometerMetrics);
+        new RunCompletionHandler(runDao, outputPlanCache, wdsOutputWriter, micrometerMetrics);
 
     UUID runId1 = UUID.randomUUID();
-    Run run1Incomplete = createTestRun(runId1, null, SYSTEM_ERROR);
+    PollableRun run1Incomplete = createTestRun(runId1, null, SYSTEM_ERROR);
 
     // Set up mocks:
     when(runDao.updateLastPolledTimestamp(runId1)).thenReturn(0);
@@ -178,10 +195,10 @@ class TestRunCompletionHandlerFunctional {
   @Test
   void updateRunCompletionSucceededNoOutputsNoErrorsToUpdate() throws WdsServiceException {
     RunCompletionHandler runCompletionHandler =
-        new RunCompletionHandler(runDao, wdsService, objectMapper, micrometerMetrics);
+        new RunCompletionHandler(runDao, outputPlanCache, wdsOutputWriter, micrometerMetrics);
     UUID runId1 = UUID.randomUUID();
-    RunSet runSet1 = createRunSet(UUID.randomUUID(), "[]");
-    Run run1Incomplete = createTestRun(runId1, runSet1, RUNNING);
+    PollableRunSet runSet1 = createRunSet(UUID.randomUUID(), "[]");
+    PollableRun run1Incomplete = createTestRun(runId1, runSet1, RUNNING);
 
     // Set up mocks:
     when(runDao.updateRunStatus(eq(runId1), eq(CbasRunStatus.CANCELED), isA(OffsetDateTime.class)))
@@ -201,10 +218,10 @@ class TestRunCompletionHandlerFunctional {
   @Test
   void updateRunCompletionSucceededNoStatusUpdate() throws WdsServiceException {
     RunCompletionHandler runCompletionHandler =
-        new RunCompletionHandler(runDao, wdsService, objectMapper, micrometerMetrics);
+        new RunCompletionHandler(runDao, outputPlanCache, wdsOutputWriter, micrometerMetrics);
     UUID runId1 = UUID.randomUUID();
-    RunSet runSet1 = createRunSet(UUID.randomUUID(), outputDefinition);
-    Run run1Incomplete = createTestRun(runId1, runSet1, CANCELED);
+    PollableRunSet runSet1 = createRunSet(UUID.randomUUID(), outputDefinition);
+    PollableRun run1Incomplete = createTestRun(runId1, runSet1, CANCELED);
 
     // Set up mocks:
     when(runDao.updateLastPolledTimestamp(runId1)).thenReturn(1);
@@ -224,10 +241,10 @@ class TestRunCompletionHandlerFunctional {
   @Test
   void updateRunCompletionFailedNoRecordsUpdated() {
     RunCompletionHandler runCompletionHandler =
-        new RunCompletionHandler(runDao, wdsService, objectMapper, micrometerMetrics);
+        new RunCompletionHandler(runDao, outputPlanCache, wdsOutputWriter, micrometerMetrics);
     UUID runId1 = UUID.randomUUID();
-    RunSet runSet1 = createRunSet(UUID.randomUUID(), "[]");
-    Run run1Incomplete = createTestRun(runId1, runSet1, RUNNING);
+    PollableRunSet runSet1 = createRunSet(UUID.randomUUID(), "[]");
+    PollableRun run1Incomplete = createTestRun(runId1, runSet1, RUNNING);
 
     // Set up mocks:
     when(runDao.updateRunStatus(eq(runId1), eq(CbasRunStatus.CANCELED), isA(OffsetDateTime.class)))
@@ -247,11 +264,11 @@ class TestRunCompletionHandlerFunctional {
   @Test
   void updateRunCompletionSucceededWithOutputsSaved() throws WdsServiceException {
     RunCompletionHandler runCompletionHandler =
-        new RunCompletionHandler(runDao, wdsService, objectMapper, micrometerMetrics);
+        new RunCompletionHandler(runDao, outputPlanCache, wdsOutputWriter, micrometerMetrics);
     // Set up run to expect non-empty outputs
-    RunSet runSet1 = createRunSet(UUID.randomUUID(), outputDefinition);
+    PollableRunSet runSet1 = createRunSet(UUID.randomUUID(), outputDefinition);
     UUID runId1 = UUID.randomUUID();
-    Run run1Incomplete = createTestRun(runId1, runSet1, RUNNING);
+    PollableRun run1Incomplete = createTestRun(runId1, runSet1, RUNNING);
     // Using Gson here since Cromwell client uses it to interpret runLogValue into Java objects.
     Gson object = new Gson();
     Object cromwellOutputs = object.fromJson(outputs, RunLog.class).getOutputs();
@@ -271,14 +288,41 @@ class TestRunCompletionHandlerFunctional {
     assertEquals(RunCompletionResult.SUCCESS, result);
   }
 
+  @Test
+  void readsOutputDefinitionOncePerRunSet() throws WdsServiceException {
+    RunCompletionHandler runCompletionHandler =
+        new RunCompletionHandler(runDao, outputPlanCache, wdsOutputWriter, micrometerMetrics);
+    PollableRunSet runSet = createRunSet(UUID.randomUUID(), outputDefinition);
+    PollableRun run1Incomplete = createTestRun(UUID.randomUUID(), runSet, RUNNING);
+    PollableRun run2Incomplete = createTestRun(UUID.randomUUID(), runSet, RUNNING);
+    Gson object = new Gson();
+    Object cromwellOutputs = object.fromJson(outputs, RunLog.class).getOutputs();
+
+    // Set up mocks:
+    when(runDao.updateRunStatus(any(), eq(COMPLETE), any())).thenReturn(1);
+    // Run the results updates:
+    var result1 =
+        runCompletionHandler.updateResults(
+            run1Incomplete, COMPLETE, cromwellOutputs, null, mockToken);
+    var result2 =
+        runCompletionHandler.updateResults(
+            run2Incomplete, COMPLETE, cromwellOutputs, null, mockToken);
+
+    // Validate the results:
+    verify(runSetDao, times(1)).getOutputDefinition(runSet.runSetId());
+    verify(wdsService, times(2)).updateRecord(any(), eq("entityType"), any(), any());
+    assertEquals(RunCompletionResult.SUCCESS, result1);
+    assertEquals(RunCompletionResult.SUCCESS, result2);
+  }
+
   @Test
   void updateRunCompletionSucceededWithEmptyOutputs() throws WdsServiceException {
     RunCompletionHandler runCompletionHandler =
-        new RunCompletionHandler(runDao, wdsService, objectMapper, micrometerMetrics);
+        new RunCompletionHandler(runDao, outputPlanCache, wdsOutputWriter, micrometerMetrics);
     // Set up run to expect non-empty outputs
-    RunSet runSet = createRunSet(UUID.randomUUID(), "[]");
+    PollableRunSet runSet = createRunSet(UUID.randomUUID(), "[]");
     UUID runId1 = UUID.randomUUID();
-    Run run1Incomplete = createTestRun(runId1, runSet, RUNNING);
+    PollableRun run1Incomplete = createTestRun(runId1, runSet, RUNNING);
 
     // Using Gson here since Cromwell client uses it to interpret runLogValue into Java objects.
     Gson object = new Gson();
@@ -303,11 +347,11 @@ class TestRunCompletionHandlerFunctional {
   @Test
   void dontPermanentlyFailWhenWdsApiFlakes() throws WdsServiceException {
     RunCompletionHandler runCompletionHandler =
-        new RunCompletionHandler(runDao, wdsService, objectMapper, micrometerMetrics);
+        new RunCompletionHandler(runDao, outputPlanCache, wdsOutputWriter, micrometerMetrics);
     // Set up run to expect non-empty outputs
-    RunSet runSet = createRunSet(UUID.randomUUID(), outputDefinition);
+    PollableRunSet runSet = createRunSet(UUID.randomUUID(), outputDefinition);
     UUID runId1 = UUID.randomUUID();
-    Run run1Incomplete = createTestRun(runId1, runSet, RUNNING);
+    PollableRun run1Incomplete = createTestRun(runId1, runSet, RUNNING);
     // Using Gson here since Cromwell client uses it to interpret runLogValue into Java objects.
     Gson object = new Gson();
     Object cromwellOutputs = object.fromJson(outputs, RunLog.class).getOutputs();
@@ -335,11 +379,11 @@ class TestRunCompletionHandlerFunctional {
   @Test
   void updateRunCompletionReturnsValidationWithOutputsErrorProcessing() throws WdsServiceException {
     RunCompletionHandler runCompletionHandler =
-        new RunCompletionHandler(runDao, wdsService, objectMapper, micrometerMetrics);
+        new RunCompletionHandler(runDao, outputPlanCache, wdsOutputWriter, micrometerMetrics);
     // Set up run to expect non-empty outputs
-    RunSet runSet = createRunSet(UUID.randomUUID(), outputDefinition);
+    PollableRunSet runSet = createRunSet(UUID.randomUUID(), outputDefinition);
     UUID runId1 = UUID.randomUUID();
-    Run run1Incomplete = createTestRun(runId1, runSet, RUNNING);
+    PollableRun run1Incomplete = createTestRun(runId1, runSet, RUNNING);
     // Using Gson here since Cromwell client uses it to interpret runLogValue into Java objects.
     Gson object = new Gson();
     Object cromwellOutputs = object.fromJson(outputsToThrow, RunLog.class).getOutputs();
@@ -366,14 +410,14 @@ class TestRunCompletionHandlerFunctional {
   @Test
   void updateRunCompletionSucceededWithEmptyOutputsNoFailures() {
     RunCompletionHandler runCompletionHandler =
-        new RunCompletionHandler(runDao, wdsService, objectMapper, micrometerMetrics);
+        new RunCompletionHandler(runDao, outputPlanCache, wdsOutputWriter, micrometerMetrics);
 
     // Using Gson here since Cromwell client uses it to interpret runLogValue into Java objects.
     Gson object = new Gson();
     Object cromwellOutputs = object.fromJson(emptyOutputs, RunLog.class).getOutputs();
 
     UUID runId1 = UUID.randomUUID();
-    Run run1Incomplete = createTestRun(runId1, null, RUNNING);
+    PollableRun run1Incomplete = createTestRun(runId1, null, RUNNING);
 
     // Set up mocks:
     when(runDao.updateRunStatus(eq(runId1), eq(SYSTEM_ERROR), any())).thenReturn(1);
@@ -393,14 +437,14 @@ class TestRunCompletionHandlerFunctional {
   @Test
   void updateRunCompletionSuccessSavingFailures() {
     RunCompletionHandler runCompletionHandler =
-        new RunCompletionHandler(runDao, wdsService, objectMapper, micrometerMetrics);
+        new RunCompletionHandler(runDao, outputPlanCache, wdsOutputWriter, micrometerMetrics);
 
     // Using Gson here since Cromwell client uses it to interpret runLogValue into Java objects.
     Gson object = new Gson();
     Object cromwellOutputs = object.fromJson(emptyOutputs, RunLog.class).getOutputs();
 
     UUID runId1 = UUID.randomUUID();
-    Run run1Incomplete = createTestRun(runId1, null, RUNNING);
+    PollableRun run1Incomplete = createTestRun(runId1, null, RUNNING);
 
     // Set up mocks:
     when(runDao.updateRunStatusWithError(eq(runId1), eq(SYSTEM_ERROR), any(), anyString()))
@@ -422,14 +466,14 @@ class TestRunCompletionHandlerFunctional {
   @Test
   void updateRunCompletionFailedErrorsPulledNoRecordUpdated() {
     RunCompletionHandler runCompletionHandler =
-        new RunCompletionHandler(runDao, wdsService, objectMapper, micrometerMetrics);
+        new RunCompletionHandler(runDao, outputPlanCache, wdsOutputWriter, micrometerMetrics);
 
     // Using Gson here since Cromwell client uses it to interpret runLogValue into Java objects.
     Gson object = new Gson();
     Object cromwellOutputs = object.fromJson(emptyOutputs, RunLog.class).getOutputs();
 
     UUID runId1 = UUID.randomUUID();
-    Run run1Incomplete = createTestRun(runId1, null, RUNNING);
+    PollableRun run1Incomplete = createTestRun(runId1, null, RUNNING);
 
     // Set up mocks:
     when(runDao.updateRunStatusWithError(eq(runId1), eq(SYSTEM_ERROR), any(), anyString()))
@@ -451,14 +495,14 @@ class TestRunCompletionHandlerFunctional {
   @Test
   void updateRunCompletionSuccessWithEmptyFailures() {
     RunCompletionHandler runCompletionHandler =
-        new RunCompletionHandler(runDao, wdsService, objectMapper, micrometerMetrics);
+        new RunCompletionHandler(runDao, outputPlanCache, wdsOutputWriter, micrometerMetrics);
 
     // Using Gson here since Cromwell client uses it to interpret runLogValue into Java objects.
     Gson object = new Gson();
     Object cromwellOutputs = object.fromJson(emptyOutputs, RunLog.class).getOutputs();
 
     UUID runId1 = UUID.randomUUID();
-    Run run1Incomplete = createTestRun(runId1, null, RUNNING);
+    PollableRun run1Incomplete = createTestRun(runId1, null, RUNNING);
 
     // Set up mocks:
     when(runDao.updateRunStatus(eq(runId1), eq(SYSTEM_ERROR), any())).thenReturn(1);
@@ -477,44 +521,129 @@ class TestRunCompletionHandlerFunctional {
     assertEquals(RunCompletionResult.SUCCESS, result);
   }
 
-  private Run createTestRun(UUID runId, RunSet runSet, CbasRunStatus status) {
+  @Test
+  void updateResultsOfManyRunsTogether() throws WdsServiceException {
+    RunCompletionHandler runCompletionHandler =
+        new RunCompletionHandler(runDao, outputPlanCache, wdsOutputWriter, micrometerMetrics);
+    PollableRunSet runSet = createRunSet(UUID.randomUUID(), outputDefinition);
+    PollableRun completed = createTestRun(UUID.randomUUID(), runSet, RUNNING);
+    PollableRun failed = createTestRun(UUID.randomUUID(), runSet, RUNNING);
+    PollableRun alreadyCanceled = createTestRun(UUID.randomUUID(), runSet, CANCELED);
+    PollableRun invalidOutputs = createTestRun(UUID.randomUUID(), runSet, RUNNING);
+    PollableRun notUpdated = createTestRun(UUID.randomUUID(), runSet, RUNNING);
+    // Using Gson here since Cromwell client uses it to interpret runLogValue into Java objects.
+    Gson object = new Gson();
+    Object cromwellOutputs = object.fromJson(outputs, RunLog.class).getOutputs();
+    Object invalidCromwellOutputs = object.fromJson(outputsToThrow, RunLog.class).getOutputs();
+    OffsetDateTime statusChange = DateUtils.currentTimeInUTC();
+
+    // Set up mocks:
+    when(runDao.updateLastPolledTimestamps(List.of(alreadyCanceled.runId())))
+        .thenReturn(Set.of(alreadyCanceled.runId()));
+    when(runDao.updateRunStatuses(any())).thenReturn(Set.of(completed.runId(), failed.runId()));
+
+    // Run the results update:
+    List<RunCompletionResult> results =
+        runCompletionHandler.updateResults(
+            List.of(
+                new RunCompletion(
+                    completed, COMPLETE, cromwellOutputs, null, statusChange, mockToken),
+                new RunCompletion(
+                    failed,
+                    SYSTEM_ERROR,
+                    null,
+                    createWorkflowErrorsList(),
+                    statusChange,
+                    mockToken),
+                new RunCompletion(alreadyCanceled, CANCELED, null, null, statusChange, mockToken),
+                new RunCompletion(
+                    invalidOutputs,
+                    COMPLETE,
+                    invalidCromwellOutputs,
+                    null,
+                    statusChange,
+                    mockToken),
+                new RunCompletion(notUpdated, CANCELED, null, null, statusChange, mockToken)));
+
+    // Validate the results:
+    assertEquals(
+        List.of(
+            RunCompletionResult.SUCCESS,
+            RunCompletionResult.SUCCESS,
+            RunCompletionResult.SUCCESS,
+            RunCompletionResult.VALIDATION_ERROR,
+            RunCompletionResult.ERROR),
+        results);
+    // The runs whose status changes are updated with one call
+    verify(runDao, times(1))
+        .updateRunStatuses(
+            List.of(
+                new RunStatusUpdate(completed.runId(), COMPLETE, statusChange, null),
+                new RunStatusUpdate(
+                    failed.runId(), SYSTEM_ERROR, statusChange, "Workflow error1, Workflow error2"),
+                new RunStatusUpdate(notUpdated.runId(), CANCELED, statusChange, null)));
+    verify(runDao, times(0)).updateRunStatus(any(), any(), any());
+    verify(wdsService, times(1)).updateRecord(any(), eq("entityType"), any(), any());
+  }
+
+  @Test
+  void saveOutputsOfManyRunsInOneBatch() throws WdsServiceException {
+    WdsOutputWriter batchingOutputWriter =
+        new WdsOutputWriter(
+            wdsService,
+            new WdsOutputWriterConfiguration(true, 3_600_000, 2, 1),
+            Runnable::run,
+            micrometerMetrics);
+    RunCompletionHandler runCompletionHandler =
+        new RunCompletionHandler(runDao, outputPlanCache, batchingOutputWriter, micrometerMetrics);
+    PollableRunSet runSet = createRunSet(UUID.randomUUID(), outputDefinition);
+    OffsetDateTime statusChange = DateUtils.currentTimeInUTC();
+    PollableRun written =
+        new PollableRun(UUID.randomUUID(), "engine1", runSet, "record1", RUNNING, null, null);
+    PollableRun notWritten =
+        new PollableRun(UUID.randomUUID(), "engine2", runSet, "record2", RUNNING, null, null);
+    Object cromwellOutputs = new Gson().fromJson(outputs, RunLog.class).getOutputs();
+
+    // Set up mocks:
+    doThrow(new WdsServiceApiException(new ApiException("Some batch error")) {})
+        .when(wdsService)
+        .batchUpsertRecords(eq("entityType"), any(), eq(mockToken));
+    doThrow(new WdsServiceApiException(new ApiException("Some API error")) {})
+        .when(wdsService)
+        .updateRecord(any(), eq("entityType"), eq("record2"), eq(mockToken));
+    when(runDao.updateRunStatuses(any())).thenReturn(Set.of(written.runId()));
+
+    // Run the results update:
+    List<RunCompletionResult> results =
+        runCompletionHandler.updateResults(
+            List.of(
+                new RunCompletion(
+                    written, COMPLETE, cromwellOutputs, null, statusChange, mockToken),
+                new RunCompletion(
+                    notWritten, COMPLETE, cromwellOutputs, null, statusChange, mockToken)));
+
+    // Validate the results:
+    assertEquals(List.of(RunCompletionResult.SUCCESS, RunCompletionResult.ERROR), results);
+    // The outputs are written in one batch, then one record at a time once the batch fails
+    verify(wdsService, times(1)).batchUpsertRecords(eq("entityType"), any(), eq(mockToken));
+    verify(wdsService, times(2)).updateRecord(any(), eq("entityType"), any(), eq(mockToken));
+    verify(runDao, times(1))
+        .updateRunStatuses(
+            List.of(new RunStatusUpdate(written.runId(), COMPLETE, statusChange, null)));
+  }
+
+  private PollableRun createTestRun(UUID runId, PollableRunSet runSet, CbasRunStatus status) {
 
     String engineId1 = "mockEngine1";
     String recordId1 = "mockRecordId1";
-    OffsetDateTime submissionTimestamp1 = DateUtils.currentTimeInUTC();
-    return new Run(
-        runId, engineId1, runSet, recordId1, submissionTimestamp1, status, null, null, null);
+    return new PollableRun(runId, engineId1, runSet, recordId1, status, null, null);
   }
 
-  private RunSet createRunSet(UUID runSetId, String outputDefinition) {
-    return new RunSet(
-        runSetId,
-        new MethodVersion(
-            UUID.randomUUID(),
-            null,
-            "version name",
-            "version description",
-            OffsetDateTime.now(),
-            runSetId,
-            "file:///method/source/url",
-            workspaceId,
-            "develop",
-            Optional.empty()),
-        "runSetName",
-        "runSetDescription",
-        true,
-        false,
-        CbasRunSetStatus.UNKNOWN,
-        OffsetDateTime.now(),
-        OffsetDateTime.now(),
-        OffsetDateTime.now(),
-        0,
-        0,
-        "inputDefinition",
-        outputDefinition,
-        "entityType",
-        "user-foo",
-        workspaceId);
+  // A run set whose output definition is read from the database
+  private PollableRunSet createRunSet(UUID runSetId, String outputDefinition) {
+    when(runSetDao.getOutputDefinition(runSetId)).thenReturn(outputDefinition);
+    return new PollableRunSet(
+        runSetId, CbasRunSetStatus.UNKNOWN, OffsetDateTime.now(), 0, 0, "entityType");
   }
 
   private List<String> createWorkflowErrorsList() {
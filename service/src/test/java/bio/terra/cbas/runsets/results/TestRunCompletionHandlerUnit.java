@@ -6,17 +6,19 @@ import static org.junit.jupiter.api.Assertions.assertEquals;
 import static org.junit.jupiter.api.Assertions.assertFalse;
 import static org.junit.jupiter.api.Assertions.assertTrue;
 import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.when;
 
 import bio.terra.cbas.common.MicrometerMetrics;
 import bio.terra.cbas.common.exceptions.OutputProcessingException;
+import bio.terra.cbas.config.WdsOutputWriterConfiguration;
 import bio.terra.cbas.dao.RunDao;
+import bio.terra.cbas.dao.RunSetDao;
+import bio.terra.cbas.dependencies.wds.WdsOutputWriter;
 import bio.terra.cbas.dependencies.wds.WdsService;
-import bio.terra.cbas.models.CbasMethodStatus;
 import bio.terra.cbas.models.CbasRunSetStatus;
-import bio.terra.cbas.models.Method;
-import bio.terra.cbas.models.MethodVersion;
-import bio.terra.cbas.models.Run;
-import bio.terra.cbas.models.RunSet;
+import bio.terra.cbas.models.PollableRun;
+import bio.terra.cbas.models.PollableRunSet;
+import bio.terra.cbas.runsets.outputs.OutputPlanCache;
 import bio.terra.cbas.runsets.types.CoercionException;
 import com.fasterxml.jackson.annotation.JsonInclude;
 import com.fasterxml.jackson.core.JsonProcessingException;
@@ -28,8 +30,8 @@ import com.fasterxml.jackson.module.paramnames.ParameterNamesModule;
 import com.google.gson.Gson;
 import cromwell.client.model.RunLog;
 import java.time.OffsetDateTime;
-import java.util.Optional;
 import java.util.UUID;
+import java.util.concurrent.Executor;
 import org.databiosphere.workspacedata.model.RecordAttributes;
 import org.junit.jupiter.api.Assertions;
 import org.junit.jupiter.api.BeforeEach;
@@ -39,7 +41,6 @@ import org.springframework.test.context.ContextConfiguration;
 @ContextConfiguration(classes = RunCompletionHandler.class)
 class TestRunCompletionHandlerUnit {
 
-  private static final OffsetDateTime methodCreatedTime = OffsetDateTime.now();
   private static final OffsetDateTime runSubmittedTime = OffsetDateTime.now();
   private static final UUID runningRunId1 = UUID.randomUUID();
   private static final String runningRunEngineId1 = UUID.randomUUID().toString();
@@ -51,9 +52,6 @@ class TestRunCompletionHandlerUnit {
   private static final UUID runningRunId2 = UUID.randomUUID();
   private static final String runningRunEngineId2 = UUID.randomUUID().toString();
   private static final String runningRunEntityId2 = UUID.randomUUID().toString();
-  private static final String errorMessages = null;
-
-  private static final UUID workspaceId = UUID.randomUUID();
 
   public ObjectMapper objectMapper =
       new ObjectMapper()
@@ -73,116 +71,54 @@ class TestRunCompletionHandlerUnit {
           }
         ]
       """;
-  private static final UUID runSetId = UUID.randomUUID();
-  private static final RunSet runSet =
-      new RunSet(
-          runSetId,
-          new MethodVersion(
-              UUID.randomUUID(),
-              new Method(
-                  UUID.randomUUID(),
-                  "methodName",
-                  "methodDescription",
-                  methodCreatedTime,
-                  runSetId,
-                  "method source",
-                  workspaceId,
-                  Optional.empty(),
-                  CbasMethodStatus.ACTIVE),
-              "version name",
-              "version description",
-              methodCreatedTime,
-              runSetId,
-              "file:///method/source/url",
-              workspaceId,
-              "develop",
-              Optional.empty()),
-          "runSetName",
-          "runSetDescription",
-          true,
-          false,
-          CbasRunSetStatus.UNKNOWN,
-          runSubmittedTime,
-          runSubmittedTime,
-          runSubmittedTime,
-          0,
-          0,
-          "inputDefinition",
-          outputDefinition,
-          "entityType",
-          "user-foo",
-          workspaceId);
+  private static final PollableRunSet runSet =
+      new PollableRunSet(
+          UUID.randomUUID(), CbasRunSetStatus.UNKNOWN, runSubmittedTime, 0, 0, "entityType");
 
-  private static final RunSet runSetNoOutputs =
-      new RunSet(
-          runSetId,
-          new MethodVersion(
-              UUID.randomUUID(),
-              new Method(
-                  UUID.randomUUID(),
-                  "methodName",
-                  "methodDescription",
-                  methodCreatedTime,
-                  runSetId,
-                  "method source",
-                  workspaceId,
-                  Optional.empty(),
-                  CbasMethodStatus.ACTIVE),
-              "version name",
-              "version description",
-              methodCreatedTime,
-              runSetId,
-              "file:///method/source/url",
-              workspaceId,
-              "develop",
-              Optional.empty()),
-          "runSetName",
-          "runSetDescription",
-          true,
-          false,
-          CbasRunSetStatus.UNKNOWN,
-          runSubmittedTime,
-          runSubmittedTime,
-          runSubmittedTime,
-          0,
-          0,
-          "inputDefinition",
-          "[]",
-          "entityType",
-          "user-foo",
-          workspaceId);
+  private static final PollableRunSet runSetNoOutputs =
+      new PollableRunSet(
+          UUID.randomUUID(), CbasRunSetStatus.UNKNOWN, runSubmittedTime, 0, 0, "entityType");
 
-  final Run runToUpdate1 =
-      new Run(
+  final PollableRun runToUpdate1 =
+      new PollableRun(
           runningRunId1,
           runningRunEngineId1,
           runSet,
           runningRunEntityId1,
-          runSubmittedTime,
           RUNNING,
           runningRunStatusUpdateTime,
-          runningRunStatusUpdateTime,
-          errorMessages);
+          runningRunStatusUpdateTime);
 
-  final Run runToUpdate2 =
-      new Run(
+  final PollableRun runToUpdate2 =
+      new PollableRun(
           runningRunId2,
           runningRunEngineId2,
           runSetNoOutputs,
           runningRunEntityId2,
-          runSubmittedTime,
           UNKNOWN,
           runningRunStatusUpdateTime,
-          runningRunStatusUpdateTime,
-          errorMessages);
+          runningRunStatusUpdateTime);
 
   @BeforeEach
   public void init() {
     RunDao runsDao = mock(RunDao.class);
+    RunSetDao runSetDao = mock(RunSetDao.class);
+    when(runSetDao.getOutputDefinition(runSet.runSetId())).thenReturn(outputDefinition);
+    when(runSetDao.getOutputDefinition(runSetNoOutputs.runSetId())).thenReturn("[]");
     WdsService wdsService = mock(WdsService.class);
     MicrometerMetrics micrometerMetrics = mock(MicrometerMetrics.class);
+    WdsOutputWriter wdsOutputWriter =
+        new WdsOutputWriter(
+            wdsService,
+            new WdsOutputWriterConfiguration(false, 200, 100, 1),
+            mock(Executor.class),
+            micrometerMetrics);
     runCompletionHandler =
-        new RunCompletionHandler(runsDao, wdsService, objectMapper, micrometerMetrics);
+        new RunCompletionHandler(
+            runsDao,
+            new OutputPlanCache(runSetDao, objectMapper),
+            wdsOutputWriter,
+            micrometerMetrics);
   }
 
   @Test
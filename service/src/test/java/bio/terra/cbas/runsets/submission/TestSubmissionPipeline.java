@@ -0,0 +1,202 @@
+package bio.terra.cbas.runsets.submission;
+
+import static org.hamcrest.MatcherAssert.assertThat;
+import static org.hamcrest.Matchers.containsString;
+import static org.hamcrest.Matchers.lessThanOrEqualTo;
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertNotNull;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+
+import bio.terra.cbas.common.MicrometerMetrics;
+import bio.terra.cbas.runsets.submission.SubmissionPipeline.SubmissionPipelineException;
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.stream.IntStream;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.springframework.core.task.SimpleAsyncTaskExecutor;
+import org.springframework.scheduling.concurrent.ThreadPoolTaskExecutor;
+
+class TestSubmissionPipeline {
+
+  private final SimpleAsyncTaskExecutor executor = new SimpleAsyncTaskExecutor("TestPipeline-");
+  private SimpleMeterRegistry meterRegistry;
+  private MicrometerMetrics micrometerMetrics;
+
+  @BeforeEach
+  void init() {
+    meterRegistry = new SimpleMeterRegistry();
+    micrometerMetrics = new MicrometerMetrics(meterRegistry);
+  }
+
+  @Test
+  void itemsFlowThroughAllStagesInOrder() {
+    List<Integer> items = IntStream.range(0, 50).boxed().toList();
+    List<String> results = new ArrayList<>();
+
+    SubmissionPipeline.from(items, executor, micrometerMetrics, 2)
+        .thenStage("double", i -> i * 2)
+        .thenStage("format", i -> "item-" + i)
+        .forEach("collect", results::add);
+
+    assertEquals(items.stream().map(i -> "item-" + (i * 2)).toList(), results);
+    assertEquals(
+        50,
+        meterRegistry
+            .get("submission_pipeline_stage_timer")
+            .tag("stage", "double")
+            .timer()
+            .count());
+    assertEquals(
+        50,
+        meterRegistry
+            .get("submission_pipeline_stage_timer")
+            .tag("stage", "collect")
+            .timer()
+            .count());
+    assertNotNull(
+        meterRegistry.get("submission_pipeline_queue_depth").tag("stage", "format").gauge());
+  }
+
+  @Test
+  void slowConsumerAppliesBackpressureToProducer() {
+    int queueCapacity = 1;
+    AtomicInteger produced = new AtomicInteger();
+    AtomicInteger consumed = new AtomicInteger();
+    AtomicInteger maxInFlight = new AtomicInteger();
+
+    SubmissionPipeline.from(
+            IntStream.range(0, 20).boxed().toList(), executor, micrometerMetrics, queueCapacity)
+        .thenStage("produce", i -> produced.incrementAndGet())
+        .forEach(
+            "consume",
+            i -> {
+              maxInFlight.accumulateAndGet(produced.get() - consumed.get(), Math::max);
+              sleep(10);
+              consumed.incrementAndGet();
+            });
+
+    assertEquals(20, consumed.get());
+    // one item being consumed, up to queueCapacity items queued and one waiting to be queued
+    assertThat(maxInFlight.get(), lessThanOrEqualTo(queueCapacity + 2));
+  }
+
+  @Test
+  void stageFailureStopsPipeline() {
+    AtomicInteger consumed = new AtomicInteger();
+    SubmissionPipeline<Integer> pipeline =
+        SubmissionPipeline.from(
+                IntStream.range(0, 100).boxed().toList(), executor, micrometerMetrics, 2)
+            .thenStage(
+                "explode",
+                i -> {
+                  if (i == 10) {
+                    throw new IllegalStateException("Stage failed on purpose");
+                  }
+                  return i;
+                });
+
+    SubmissionPipelineException exception =
+        assertThrows(
+            SubmissionPipelineException.class,
+            () -> pipeline.forEach("consume", i -> consumed.incrementAndGet()));
+
+    assertThat(exception.getMessage(), containsString("Stage failed on purpose"));
+    assertThat(consumed.get(), lessThanOrEqualTo(10));
+  }
+
+  @Test
+  void stageFailureLetsLaterStagesFinishItemsHandedOver() {
+    List<Integer> submitted = Collections.synchronizedList(new ArrayList<>());
+    List<Integer> recorded = new ArrayList<>();
+    SubmissionPipeline<Integer> pipeline =
+        SubmissionPipeline.from(
+                IntStream.range(0, 100).boxed().toList(), executor, micrometerMetrics, 2)
+            .thenStage(
+                "explode",
+                i -> {
+                  if (i == 5) {
+                    throw new IllegalStateException("Stage failed on purpose");
+                  }
+                  return i;
+                })
+            .thenStage(
+                "submit",
+                i -> {
+                  sleep(10);
+                  submitted.add(i);
+                  return i;
+                });
+
+    assertThrows(
+        SubmissionPipelineException.class, () -> pipeline.forEach("record", recorded::add));
+
+    // every item handed over before the failure is submitted, and every submitted item recorded
+    assertEquals(List.of(0, 1, 2, 3, 4), submitted);
+    assertEquals(submitted, recorded);
+  }
+
+  @Test
+  void rejectedStageFailsPipelineBeforeAnyItemIsProcessed() {
+    ThreadPoolTaskExecutor singleThreadExecutor = new ThreadPoolTaskExecutor();
+    singleThreadExecutor.setCorePoolSize(1);
+    singleThreadExecutor.setMaxPoolSize(1);
+    singleThreadExecutor.setQueueCapacity(0);
+    singleThreadExecutor.initialize();
+    AtomicInteger processed = new AtomicInteger();
+    AtomicInteger consumed = new AtomicInteger();
+    try {
+      SubmissionPipeline<Integer> pipeline =
+          SubmissionPipeline.from(
+                  IntStream.range(0, 10).boxed().toList(),
+                  singleThreadExecutor,
+                  micrometerMetrics,
+                  2)
+              .thenStage("first", i -> processed.incrementAndGet())
+              .thenStage("second", i -> processed.incrementAndGet());
+
+      // the second stage takes the only thread, so the first stage is rejected
+      assertThrows(
+          SubmissionPipelineException.class,
+          () -> pipeline.forEach("consume", i -> consumed.incrementAndGet()));
+
+      assertEquals(0, processed.get());
+      assertEquals(0, consumed.get());
+    } finally {
+      singleThreadExecutor.shutdown();
+    }
+  }
+
+  @Test
+  void terminalFailureStopsUpstreamStages() {
+    AtomicInteger produced = new AtomicInteger();
+    SubmissionPipeline<Integer> pipeline =
+        SubmissionPipeline.from(
+                IntStream.range(0, 100).boxed().toList(), executor, micrometerMetrics, 1)
+            .thenStage("produce", i -> produced.incrementAndGet());
+
+    assertThrows(
+        SubmissionPipelineException.class,
+        () ->
+            pipeline.forEach(
+                "consume",
+                i -> {
+                  throw new IllegalStateException("Consumer failed on purpose");
+                }));
+
+    // give the producer a chance to notice the failure, it must not run through every item
+    sleep(500);
+    assertThat(produced.get(), lessThanOrEqualTo(3));
+  }
+
+  private static void sleep(long millis) {
+    try {
+      Thread.sleep(millis);
+    } catch (InterruptedException e) {
+      Thread.currentThread().interrupt();
+    }
+  }
+}
@@ -0,0 +1,297 @@
+package bio.terra.cbas.runsets.submission;
+
+import static org.hamcrest.MatcherAssert.assertThat;
+import static org.hamcrest.Matchers.containsString;
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.ArgumentMatchers.anyInt;
+import static org.mockito.ArgumentMatchers.anyString;
+import static org.mockito.ArgumentMatchers.eq;
+import static org.mockito.Mockito.RETURNS_MOCKS;
+import static org.mockito.Mockito.doAnswer;
+import static org.mockito.Mockito.doThrow;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.never;
+import static org.mockito.Mockito.times;
+import static org.mockito.Mockito.verify;
+import static org.mockito.Mockito.verifyNoInteractions;
+import static org.mockito.Mockito.when;
+
+import bio.terra.cbas.common.MicrometerMetrics;
+import bio.terra.cbas.config.SubmissionQueueConfiguration;
+import bio.terra.cbas.dao.SubmissionJobDao;
+import bio.terra.cbas.models.SubmissionJob;
+import bio.terra.cbas.models.SubmissionJobStatus;
+import bio.terra.cbas.service.LargeRunSetsService;
+import bio.terra.cbas.service.RunSetsService;
+import bio.terra.cbas.util.UuidSource;
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import java.time.Instant;
+import java.time.OffsetDateTime;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Optional;
+import java.util.Set;
+import java.util.UUID;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.mockito.ArgumentCaptor;
+import org.springframework.core.task.SyncTaskExecutor;
+import org.springframework.core.task.TaskExecutor;
+import org.springframework.scheduling.TaskScheduler;
+
+class TestSubmissionQueueWorker {
+
+  private final UUID workerUuid = UUID.randomUUID();
+  private final String workerId = "submission-worker-" + workerUuid;
+  private final SubmissionJob job1 = job(UUID.randomUUID(), 1);
+  private final SubmissionJob job2 = job(UUID.randomUUID(), 1);
+  private final TaskScheduler taskScheduler = mock(TaskScheduler.class, RETURNS_MOCKS);
+
+  private SubmissionJobDao submissionJobDao;
+  private RunSetsService runSetsService;
+  private LargeRunSetsService largeRunSetsService;
+  private UuidSource uuidSource;
+
+  @BeforeEach
+  void init() {
+    submissionJobDao = mock(SubmissionJobDao.class);
+    runSetsService = mock(RunSetsService.class);
+    largeRunSetsService = mock(LargeRunSetsService.class);
+    uuidSource = mock(UuidSource.class);
+    when(uuidSource.generateUUID()).thenReturn(workerUuid);
+    when(submissionJobDao.completeJob(any(), any())).thenReturn(1);
+    when(submissionJobDao.recordBatchCompleted(any(), any(), anyInt())).thenReturn(1);
+  }
+
+  private SubmissionQueueWorker worker(boolean enabled, int workers, TaskExecutor executor) {
+    return new SubmissionQueueWorker(
+        submissionJobDao,
+        runSetsService,
+        largeRunSetsService,
+        new SubmissionQueueConfiguration(enabled, workers, 120, 3),
+        executor,
+        new MicrometerMetrics(new SimpleMeterRegistry()),
+        uuidSource,
+        taskScheduler);
+  }
+
+  @Test
+  void claimsAndCompletesQueuedJobs() throws Exception {
+    when(submissionJobDao.claimNextJob(workerId, 120))
+        .thenReturn(Optional.of(job1), Optional.of(job2), Optional.empty());
+
+    worker(true, 2, new SyncTaskExecutor()).pollForJobs();
+
+    verify(runSetsService).submitQueuedRunSet(eq(job1), any());
+    verify(runSetsService).submitQueuedRunSet(eq(job2), any());
+    verify(submissionJobDao).completeJob(job1.runSetId(), workerId);
+    verify(submissionJobDao).completeJob(job2.runSetId(), workerId);
+    verify(submissionJobDao, never()).failJob(any(), any(), any());
+  }
+
+  @Test
+  void claimsNoMoreJobsThanIdleWorkers() {
+    // Jobs handed to this executor stay in progress until they are run
+    List<Runnable> inProgress = new ArrayList<>();
+    when(submissionJobDao.claimNextJob(workerId, 120))
+        .thenReturn(Optional.of(job1), Optional.of(job2), Optional.of(job(UUID.randomUUID(), 1)));
+
+    SubmissionQueueWorker worker = worker(true, 2, inProgress::add);
+    worker.claimJobs();
+    worker.claimJobs();
+
+    assertEquals(2, inProgress.size());
+    verify(submissionJobDao, times(2)).claimNextJob(workerId, 120);
+
+    // The jobs in progress keep their leases
+    worker.renewLeases();
+    verify(submissionJobDao).renewLeases(workerId, Set.of(job1.runSetId(), job2.runSetId()), 120);
+  }
+
+  @Test
+  void failureToRenewLeasesIsNotThrown() {
+    when(submissionJobDao.renewLeases(any(), any(), anyInt()))
+        .thenThrow(new RuntimeException("Database is down"));
+
+    worker(true, 1, new SyncTaskExecutor()).renewLeases();
+
+    verify(submissionJobDao).renewLeases(eq(workerId), any(), eq(120));
+  }
+
+  @Test
+  void recordsProgressAfterEachBatch() throws Exception {
+    when(submissionJobDao.claimNextJob(workerId, 120))
+        .thenReturn(Optional.of(job1), Optional.empty());
+    doAnswer(
+            invocation -> {
+              Runnable onBatchRecorded = invocation.getArgument(1);
+              onBatchRecorded.run();
+              onBatchRecorded.run();
+              return null;
+            })
+        .when(runSetsService)
+        .submitQueuedRunSet(eq(job1), any());
+
+    worker(true, 1, new SyncTaskExecutor()).claimJobs();
+
+    verify(submissionJobDao, times(2)).recordBatchCompleted(job1.runSetId(), workerId, 120);
+    verify(submissionJobDao).completeJob(job1.runSetId(), workerId);
+  }
+
+  @Test
+  void failedSubmissionFailsJobAndRunsStillQueued() throws Exception {
+    when(submissionJobDao.claimNextJob(workerId, 120))
+        .thenReturn(Optional.of(job1), Optional.empty());
+    doThrow(new RuntimeException("Database is down"))
+        .when(runSetsService)
+        .submitQueuedRunSet(eq(job1), any());
+
+    worker(true, 1, new SyncTaskExecutor()).claimJobs();
+
+    ArgumentCaptor<String> errorCaptor = ArgumentCaptor.forClass(String.class);
+    verify(runSetsService).failQueuedRunSet(eq(job1.runSetId()), errorCaptor.capture());
+    assertThat(errorCaptor.getValue(), containsString("Database is down"));
+    verify(submissionJobDao).failJob(job1.runSetId(), workerId, errorCaptor.getValue());
+    verify(submissionJobDao, never()).completeJob(any(), any());
+  }
+
+  @Test
+  void givesUpAfterMaxAttempts() throws Exception {
+    SubmissionJob retriedJob = job(UUID.randomUUID(), 4);
+    when(submissionJobDao.claimNextJob(workerId, 120))
+        .thenReturn(Optional.of(retriedJob), Optional.empty());
+
+    worker(true, 1, new SyncTaskExecutor()).claimJobs();
+
+    verify(runSetsService, never()).submitQueuedRunSet(any(), any());
+    verify(runSetsService)
+        .failQueuedRunSet(retriedJob.runSetId(), "Gave up submitting workflows after 3 attempts.");
+    verify(submissionJobDao)
+        .failJob(
+            retriedJob.runSetId(), workerId, "Gave up submitting workflows after 3 attempts.");
+  }
+
+  @Test
+  void failsJobWhoseUserTokenExpired() throws Exception {
+    SubmissionJob expiredJob = job(UUID.randomUUID(), 1, false, null);
+    when(submissionJobDao.claimNextJob(workerId, 120))
+        .thenReturn(Optional.of(expiredJob), Optional.empty());
+
+    worker(true, 1, new SyncTaskExecutor()).claimJobs();
+
+    verify(runSetsService, never()).submitQueuedRunSet(any(), any());
+    ArgumentCaptor<String> errorCaptor = ArgumentCaptor.forClass(String.class);
+    verify(runSetsService).failQueuedRunSet(eq(expiredJob.runSetId()), errorCaptor.capture());
+    assertThat(errorCaptor.getValue(), containsString("credentials expired"));
+    verify(submissionJobDao).failJob(expiredJob.runSetId(), workerId, errorCaptor.getValue());
+  }
+
+  @Test
+  void lostLeaseStopsWithoutFailingRuns() throws Exception {
+    when(submissionJobDao.claimNextJob(workerId, 120))
+        .thenReturn(Optional.of(job1), Optional.empty());
+    when(submissionJobDao.recordBatchCompleted(job1.runSetId(), workerId, 120)).thenReturn(0);
+    doAnswer(
+            invocation -> {
+              Runnable onBatchRecorded = invocation.getArgument(1);
+              onBatchRecorded.run();
+              return null;
+            })
+        .when(runSetsService)
+        .submitQueuedRunSet(eq(job1), any());
+
+    worker(true, 1, new SyncTaskExecutor()).claimJobs();
+
+    // The worker that claimed the job after the lease expired carries on with it
+    verify(runSetsService, never()).failQueuedRunSet(any(), anyString());
+    verify(submissionJobDao, never()).failJob(any(), any(), any());
+    verify(submissionJobDao, never()).completeJob(any(), any());
+  }
+
+  @Test
+  void doesNotPollWhenDisabled() {
+    SubmissionQueueWorker worker = worker(false, 1, new SyncTaskExecutor());
+    worker.pollForJobs();
+    worker.wakeUp();
+
+    verifyNoInteractions(submissionJobDao, runSetsService, taskScheduler);
+  }
+
+  @Test
+  void wakeUpClaimsJobsOnTheTaskScheduler() throws Exception {
+    when(submissionJobDao.claimNextJob(workerId, 120))
+        .thenReturn(Optional.of(job1), Optional.empty());
+    SubmissionQueueWorker worker = worker(true, 1, new SyncTaskExecutor());
+
+    worker.wakeUp();
+    worker.wakeUp();
+
+    // Nothing is claimed on the caller's thread, and both wake-ups are handled by one task
+    verify(submissionJobDao, never()).claimNextJob(any(), anyInt());
+    ArgumentCaptor<Runnable> claimJobs = ArgumentCaptor.forClass(Runnable.class);
+    verify(taskScheduler).schedule(claimJobs.capture(), any(Instant.class));
+    claimJobs.getValue().run();
+    verify(runSetsService).submitQueuedRunSet(eq(job1), any());
+
+    // Later wake-ups are handled by another task
+    worker.wakeUp();
+    verify(taskScheduler, times(2)).schedule(any(Runnable.class), any(Instant.class));
+  }
+
+  @Test
+  void largeRunSetIsSubmittedInChunks() throws Exception {
+    SubmissionJob largeJob = job(UUID.randomUUID(), 1, true);
+    when(submissionJobDao.claimNextJob(workerId, 120))
+        .thenReturn(Optional.of(largeJob), Optional.empty());
+
+    worker(true, 1, new SyncTaskExecutor()).claimJobs();
+
+    verify(largeRunSetsService).submitLargeRunSet(eq(largeJob), eq(workerId), eq(120), any());
+    verify(runSetsService, never()).submitQueuedRunSet(any(), any());
+    verify(submissionJobDao).completeJob(largeJob.runSetId(), workerId);
+  }
+
+  @Test
+  void lostLeaseWhileRegisteringChunkStopsWithoutFailingRuns() throws Exception {
+    SubmissionJob largeJob = job(UUID.randomUUID(), 1, true);
+    when(submissionJobDao.claimNextJob(workerId, 120))
+        .thenReturn(Optional.of(largeJob), Optional.empty());
+    doThrow(new SubmissionLeaseLostException(largeJob.runSetId()))
+        .when(largeRunSetsService)
+        .submitLargeRunSet(eq(largeJob), eq(workerId), eq(120), any());
+
+    worker(true, 1, new SyncTaskExecutor()).claimJobs();
+
+    verify(runSetsService, never()).failQueuedRunSet(any(), anyString());
+    verify(submissionJobDao, never()).failJob(any(), any(), any());
+    verify(submissionJobDao, never()).completeJob(any(), any());
+  }
+
+  private static SubmissionJob job(UUID runSetId, int attempts) {
+    return job(runSetId, attempts, false);
+  }
+
+  private static SubmissionJob job(UUID runSetId, int attempts, boolean largeRunSet) {
+    return job(runSetId, attempts, largeRunSet, "mock-token");
+  }
+
+  private static SubmissionJob job(
+      UUID runSetId, int attempts, boolean largeRunSet, String userToken) {
+    return new SubmissionJob(
+        runSetId,
+        SubmissionJobStatus.RUNNING,
+        "{}",
+        "https://path-to-wdl.com",
+        userToken,
+        "worker",
+        OffsetDateTime.now().plusMinutes(2),
+        attempts,
+        0,
+        largeRunSet,
+        0,
+        OffsetDateTime.now(),
+        OffsetDateTime.now(),
+        null);
+  }
+}
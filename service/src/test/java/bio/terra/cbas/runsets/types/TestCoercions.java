@@ -6,11 +6,15 @@ import static org.junit.jupiter.api.Assertions.assertEquals;
 
 import bio.terra.cbas.model.ParameterTypeDefinition;
 import bio.terra.cbas.model.ParameterTypeDefinitionArray;
+import bio.terra.cbas.model.ParameterTypeDefinitionMap;
 import bio.terra.cbas.model.ParameterTypeDefinitionOptional;
 import bio.terra.cbas.model.ParameterTypeDefinitionPrimitive;
 import bio.terra.cbas.model.ParameterTypeDefinitionStruct;
 import bio.terra.cbas.model.PrimitiveParameterValueType;
 import bio.terra.cbas.model.StructField;
+import com.fasterxml.jackson.core.JsonGenerator;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import java.io.StringWriter;
 import java.util.HashMap;
 import java.util.List;
 import org.junit.jupiter.api.Assertions;
@@ -105,6 +109,31 @@ class TestCoercions {
                 input));
   }
 
+  @Test
+  void mapKeysCoercingToTheSameKeyFail() throws Exception {
+    ParameterTypeDefinitionMap mapType =
+        new ParameterTypeDefinitionMap()
+            .keyType(PrimitiveParameterValueType.INT)
+            .valueType(
+                new ParameterTypeDefinitionPrimitive()
+                    .primitiveType(PrimitiveParameterValueType.STRING)
+                    .type(ParameterTypeDefinition.TypeEnum.PRIMITIVE))
+            .type(ParameterTypeDefinition.TypeEnum.MAP);
+    // Both keys coerce to the Int 1
+    HashMap<Object, String> input = new HashMap<>();
+    input.put(1, "one");
+    input.put(1.0, "also one");
+
+    Assertions.assertThrows(
+        ValueCoercionException.class, () -> CbasValue.parseValue("mapInput", mapType, input));
+    for (boolean orderKeys : List.of(false, true)) {
+      JsonGenerator generator = new ObjectMapper().createGenerator(new StringWriter());
+      Assertions.assertThrows(
+          ValueCoercionException.class,
+          () -> CbasValueWriter.forType(mapType, orderKeys).write("mapInput", input, generator));
+    }
+  }
+
   @Test
   void testValidOptionalInStruct() throws Exception {
     HashMap<String, String> input = new HashMap<>();
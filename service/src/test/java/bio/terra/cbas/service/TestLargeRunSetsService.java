@@ -0,0 +1,255 @@
+package bio.terra.cbas.service;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.ArgumentMatchers.anyInt;
+import static org.mockito.ArgumentMatchers.eq;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.never;
+import static org.mockito.Mockito.times;
+import static org.mockito.Mockito.verify;
+import static org.mockito.Mockito.when;
+
+import bio.terra.cbas.common.MicrometerMetrics;
+import bio.terra.cbas.config.CbasApiConfiguration;
+import bio.terra.cbas.dao.RunSetDao;
+import bio.terra.cbas.dao.SubmissionJobDao;
+import bio.terra.cbas.dependencies.wds.WdsService;
+import bio.terra.cbas.dependencies.wds.WdsService.WdsRecordIdsPage;
+import bio.terra.cbas.model.RunSetRequest;
+import bio.terra.cbas.model.WdsRecordSet;
+import bio.terra.cbas.models.CbasMethodStatus;
+import bio.terra.cbas.models.CbasRunSetStatus;
+import bio.terra.cbas.models.Method;
+import bio.terra.cbas.models.MethodVersion;
+import bio.terra.cbas.models.RunSet;
+import bio.terra.cbas.models.SubmissionJob;
+import bio.terra.cbas.models.SubmissionJobStatus;
+import bio.terra.cbas.models.SubmitRunSetResponse;
+import bio.terra.cbas.runsets.submission.SubmissionLeaseLostException;
+import bio.terra.cbas.service.LargeRunSetsService.TooManyRecordsException;
+import bio.terra.common.iam.BearerToken;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import java.time.OffsetDateTime;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Optional;
+import java.util.UUID;
+import java.util.stream.IntStream;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.mockito.ArgumentCaptor;
+
+class TestLargeRunSetsService {
+
+  private final UUID runSetId = UUID.randomUUID();
+  private final UUID workspaceId = UUID.randomUUID();
+  private final String recordType = "FOO";
+  private final String mockWorkflowUrl = "https://path-to-wdl.com";
+  private final BearerToken mockToken = new BearerToken("mock-token");
+
+  private RunSetsService runSetsService;
+  private RunSetDao runSetDao;
+  private SubmissionJobDao submissionJobDao;
+  private WdsService wdsService;
+  private ObjectMapper objectMapper;
+  private CbasApiConfiguration cbasApiConfiguration;
+  private LargeRunSetsService largeRunSetsService;
+
+  @BeforeEach
+  void init() {
+    runSetsService = mock(RunSetsService.class);
+    runSetDao = mock(RunSetDao.class);
+    submissionJobDao = mock(SubmissionJobDao.class);
+    wdsService = mock(WdsService.class);
+    objectMapper = mock(ObjectMapper.class);
+    cbasApiConfiguration = new CbasApiConfiguration();
+    cbasApiConfiguration.setLargeRunSetsChunkSize(1000);
+    cbasApiConfiguration.setLargeRunSetsMaximumRecordIds(100000);
+    largeRunSetsService =
+        new LargeRunSetsService(
+            runSetsService,
+            runSetDao,
+            submissionJobDao,
+            wdsService,
+            cbasApiConfiguration,
+            objectMapper,
+            new MicrometerMetrics(new SimpleMeterRegistry()));
+    when(runSetDao.getRunSet(runSetId)).thenReturn(runSet(CbasRunSetStatus.RUNNING));
+  }
+
+  @Test
+  void submitsRecordsInChunks() throws Exception {
+    List<String> recordIds = IntStream.range(0, 50000).mapToObj(i -> "RECORD_" + i).toList();
+    RunSetRequest request = request(new WdsRecordSet().recordType(recordType).recordIds(recordIds));
+    when(objectMapper.readValue("{}", RunSetRequest.class)).thenReturn(request);
+    when(runSetsService.submitQueuedRuns(any(), eq(request), eq(mockWorkflowUrl), any(), any()))
+        .thenReturn(Optional.of(new SubmitRunSetResponse(1, 0, 1)));
+
+    largeRunSetsService.submitLargeRunSet(job(0), "worker", 120, () -> {});
+
+    List<String> registered = new ArrayList<>();
+    ArgumentCaptor<List<String>> chunkCaptor = ArgumentCaptor.forClass(List.class);
+    verify(runSetsService, times(50))
+        .registerRunChunk(any(), chunkCaptor.capture(), eq("worker"), eq(120));
+    chunkCaptor.getAllValues().forEach(chunk -> assertEquals(1000, chunk.size()));
+    chunkCaptor.getAllValues().forEach(registered::addAll);
+    assertEquals(recordIds, registered);
+
+    // the runs of every chunk are submitted before the next chunk is registered
+    verify(runSetsService, times(51)).submitQueuedRuns(any(), any(), any(), any(), any());
+    verify(runSetsService, times(50)).updateRunSetStateFromRuns(runSetId, true);
+    verify(runSetsService).updateRunSetStateFromRuns(runSetId, false);
+    verify(runSetsService).logLargeRunSetEvent(eq(request), any(), eq(50000), any());
+  }
+
+  @Test
+  void resumesAfterTheRecordsAlreadyRegistered() throws Exception {
+    List<String> recordIds = IntStream.range(0, 2500).mapToObj(i -> "RECORD_" + i).toList();
+    RunSetRequest request = request(new WdsRecordSet().recordType(recordType).recordIds(recordIds));
+    when(objectMapper.readValue("{}", RunSetRequest.class)).thenReturn(request);
+
+    largeRunSetsService.submitLargeRunSet(job(2000), "worker", 120, () -> {});
+
+    verify(runSetsService)
+        .registerRunChunk(any(), eq(recordIds.subList(2000, 2500)), any(), anyInt());
+    verify(runSetsService).logLargeRunSetEvent(eq(request), any(), eq(2500), any());
+  }
+
+  @Test
+  void submitsTheRecordsOfTheTypeListedWhenClaimed() throws Exception {
+    cbasApiConfiguration.setLargeRunSetsChunkSize(2);
+    RunSetRequest request = request(new WdsRecordSet().recordType(recordType).allRecords(true));
+    when(objectMapper.readValue("{}", RunSetRequest.class)).thenReturn(request);
+    when(objectMapper.writeValueAsString(request)).thenReturn("listed-request-json");
+    when(wdsService.getRecordIds(recordType, 0, 100000, mockToken))
+        .thenReturn(new WdsRecordIdsPage(List.of("A", "B", "C"), 3));
+    when(submissionJobDao.recordRunSetRequest(runSetId, "worker", "listed-request-json", 120))
+        .thenReturn(1);
+
+    largeRunSetsService.submitLargeRunSet(job(0), "worker", 120, () -> {});
+
+    assertFalse(request.getWdsRecords().isAllRecords());
+    assertEquals(List.of("A", "B", "C"), request.getWdsRecords().getRecordIds());
+    verify(submissionJobDao).recordRunSetRequest(runSetId, "worker", "listed-request-json", 120);
+    verify(runSetsService).registerRunChunk(any(), eq(List.of("A", "B")), any(), anyInt());
+    verify(runSetsService).registerRunChunk(any(), eq(List.of("C")), any(), anyInt());
+    // the records are listed once, not paged through chunk by chunk
+    verify(wdsService).getRecordIds(any(), anyInt(), anyInt(), any());
+  }
+
+  @Test
+  void rejectsRecordTypeWithTooManyRecords() throws Exception {
+    cbasApiConfiguration.setLargeRunSetsMaximumRecordIds(10);
+    RunSetRequest request = request(new WdsRecordSet().recordType(recordType).allRecords(true));
+    when(objectMapper.readValue("{}", RunSetRequest.class)).thenReturn(request);
+    when(wdsService.getRecordIds(recordType, 0, 10, mockToken))
+        .thenReturn(new WdsRecordIdsPage(List.of("A"), 11));
+
+    SubmissionJob job = job(0);
+    assertThrows(
+        TooManyRecordsException.class,
+        () -> largeRunSetsService.submitLargeRunSet(job, "worker", 120, () -> {}));
+    verify(runSetsService, never()).registerRunChunk(any(), any(), any(), anyInt());
+  }
+
+  @Test
+  void registersNoRunsWhenLeaseIsLostWhileListingRecords() throws Exception {
+    RunSetRequest request = request(new WdsRecordSet().recordType(recordType).allRecords(true));
+    when(objectMapper.readValue("{}", RunSetRequest.class)).thenReturn(request);
+    when(wdsService.getRecordIds(recordType, 0, 100000, mockToken))
+        .thenReturn(new WdsRecordIdsPage(List.of("A"), 1));
+    when(submissionJobDao.recordRunSetRequest(any(), any(), any(), anyInt())).thenReturn(0);
+
+    SubmissionJob job = job(0);
+    assertThrows(
+        SubmissionLeaseLostException.class,
+        () -> largeRunSetsService.submitLargeRunSet(job, "worker", 120, () -> {}));
+    verify(runSetsService, never()).registerRunChunk(any(), any(), any(), anyInt());
+  }
+
+  @Test
+  void stopsRegisteringRunsOnceCanceled() throws Exception {
+    List<String> recordIds = IntStream.range(0, 5000).mapToObj(i -> "RECORD_" + i).toList();
+    RunSetRequest request = request(new WdsRecordSet().recordType(recordType).recordIds(recordIds));
+    when(objectMapper.readValue("{}", RunSetRequest.class)).thenReturn(request);
+    // the run set is canceled while its second chunk is being registered
+    when(runSetDao.getRunSet(runSetId))
+        .thenReturn(
+            runSet(CbasRunSetStatus.RUNNING),
+            runSet(CbasRunSetStatus.RUNNING),
+            runSet(CbasRunSetStatus.RUNNING),
+            runSet(CbasRunSetStatus.CANCELING));
+
+    largeRunSetsService.submitLargeRunSet(job(0), "worker", 120, () -> {});
+
+    verify(runSetsService, times(2)).registerRunChunk(any(), any(), any(), anyInt());
+    verify(runSetsService).cancelQueuedRuns(runSetId);
+    verify(runSetsService, never()).updateRunSetStateFromRuns(runSetId, false);
+  }
+
+  private RunSetRequest request(WdsRecordSet wdsRecordSet) {
+    return new RunSetRequest().methodVersionId(UUID.randomUUID()).wdsRecords(wdsRecordSet);
+  }
+
+  private SubmissionJob job(int recordsRegistered) {
+    return new SubmissionJob(
+        runSetId,
+        SubmissionJobStatus.RUNNING,
+        "{}",
+        mockWorkflowUrl,
+        mockToken.getToken(),
+        "worker",
+        OffsetDateTime.now().plusMinutes(2),
+        1,
+        0,
+        true,
+        recordsRegistered,
+        OffsetDateTime.now(),
+        OffsetDateTime.now(),
+        null);
+  }
+
+  private RunSet runSet(CbasRunSetStatus status) {
+    return new RunSet(
+        runSetId,
+        new MethodVersion(
+            UUID.randomUUID(),
+            new Method(
+                UUID.randomUUID(),
+                "methodName",
+                "methodDescription",
+                OffsetDateTime.now(),
+                UUID.randomUUID(),
+                "method source",
+                workspaceId,
+                Optional.empty(),
+                CbasMethodStatus.ACTIVE),
+            "version name",
+            "version description",
+            OffsetDateTime.now(),
+            UUID.randomUUID(),
+            mockWorkflowUrl,
+            workspaceId,
+            "0.0.15",
+            Optional.empty()),
+        "",
+        "",
+        false,
+        false,
+        status,
+        OffsetDateTime.now(),
+        OffsetDateTime.now(),
+        OffsetDateTime.now(),
+        0,
+        0,
+        "inputDefinition",
+        "outputDefinition",
+        recordType,
+        "user-id-foo",
+        workspaceId);
+  }
+}
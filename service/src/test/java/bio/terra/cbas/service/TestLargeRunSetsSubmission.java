@@ -0,0 +1,171 @@
+package bio.terra.cbas.service;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.ArgumentMatchers.anyList;
+import static org.mockito.ArgumentMatchers.anyString;
+import static org.mockito.ArgumentMatchers.eq;
+import static org.mockito.Mockito.when;
+
+import bio.terra.cbas.dao.MethodDao;
+import bio.terra.cbas.dao.MethodVersionDao;
+import bio.terra.cbas.dao.RunSetDao;
+import bio.terra.cbas.dao.SubmissionJobDao;
+import bio.terra.cbas.dao.util.ContainerizedDatabaseTest;
+import bio.terra.cbas.dependencies.bard.BardService;
+import bio.terra.cbas.dependencies.wds.WdsService;
+import bio.terra.cbas.dependencies.wds.WdsService.WdsRecordResponseDetails;
+import bio.terra.cbas.dependencies.wes.CromwellService;
+import bio.terra.cbas.model.RunSetRequest;
+import bio.terra.cbas.model.WdsRecordSet;
+import bio.terra.cbas.models.CbasMethodStatus;
+import bio.terra.cbas.models.CbasRunSetStatus;
+import bio.terra.cbas.models.CbasRunStatus;
+import bio.terra.cbas.models.Method;
+import bio.terra.cbas.models.MethodVersion;
+import bio.terra.cbas.models.RunSet;
+import bio.terra.cbas.models.SubmissionJob;
+import bio.terra.common.iam.BearerToken;
+import cromwell.client.model.WorkflowIdAndStatus;
+import java.time.OffsetDateTime;
+import java.util.List;
+import java.util.Map;
+import java.util.Optional;
+import java.util.UUID;
+import java.util.stream.IntStream;
+import org.broadinstitute.dsde.workbench.client.sam.model.UserStatusInfo;
+import org.databiosphere.workspacedata.model.RecordAttributes;
+import org.databiosphere.workspacedata.model.RecordResponse;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.test.mock.mockito.MockBean;
+import org.springframework.jdbc.core.namedparam.MapSqlParameterSource;
+import org.springframework.jdbc.core.namedparam.NamedParameterJdbcTemplate;
+
+/**
+ * Submits a large run set of 50,000 records from the submission queue against a real database,
+ * with WDS and Cromwell mocked.
+ */
+class TestLargeRunSetsSubmission extends ContainerizedDatabaseTest {
+
+  @Autowired RunSetsService runSetsService;
+  @Autowired LargeRunSetsService largeRunSetsService;
+  @Autowired SubmissionJobDao submissionJobDao;
+  @Autowired RunSetDao runSetDao;
+  @Autowired MethodDao methodDao;
+  @Autowired MethodVersionDao methodVersionDao;
+  @Autowired NamedParameterJdbcTemplate jdbcTemplate;
+  @MockBean WdsService wdsService;
+  @MockBean CromwellService cromwellService;
+  @MockBean BardService bardService;
+
+  private static final int RECORD_COUNT = 50000;
+  private static final int LEASE_SECONDS = 120;
+
+  private final UUID workspaceId = UUID.randomUUID();
+  private final BearerToken userToken = new BearerToken("user-token");
+
+  Method method =
+      new Method(
+          UUID.randomUUID(),
+          "fetch_sra_to_bam",
+          "fetch_sra_to_bam",
+          OffsetDateTime.parse("2023-01-27T19:21:24.563932Z"),
+          null,
+          "Github",
+          workspaceId,
+          Optional.empty(),
+          CbasMethodStatus.ACTIVE);
+
+  MethodVersion methodVersion =
+      new MethodVersion(
+          UUID.randomUUID(),
+          method,
+          "1.0",
+          "fetch_sra_to_bam sample submission",
+          OffsetDateTime.parse("2023-01-27T19:21:24.563932Z"),
+          null,
+          "https://raw.githubusercontent.com/broadinstitute/viral-pipelines/master/pipes/WDL/workflows/fetch_sra_to_bam.wdl",
+          workspaceId,
+          "develop",
+          Optional.empty());
+
+  private final UserStatusInfo user =
+      new UserStatusInfo()
+          .userEmail("realuser@gmail.com")
+          .userSubjectId("user-id-foo")
+          .enabled(true);
+
+  @BeforeEach
+  void init() throws Exception {
+    methodDao.createMethod(method);
+    methodVersionDao.createMethodVersion(methodVersion);
+
+    when(wdsService.getRecords(eq("sample"), anyList(), any()))
+        .thenAnswer(
+            invocation -> {
+              List<String> recordIds = invocation.getArgument(1);
+              return new WdsRecordResponseDetails(
+                  recordIds.stream()
+                      .map(
+                          recordId ->
+                              new RecordResponse()
+                                  .type("sample")
+                                  .id(recordId)
+                                  .attributes(new RecordAttributes()))
+                      .toList(),
+                  Map.of());
+            });
+    when(cromwellService.submitWorkflowBatch(eq(methodVersion.url()), any(), any(), any()))
+        .thenAnswer(
+            invocation -> {
+              Map<UUID, String> engineIdToWorkflowInput = invocation.getArgument(1);
+              return engineIdToWorkflowInput.keySet().stream()
+                  .map(
+                      engineId ->
+                          new WorkflowIdAndStatus().id(engineId.toString()).status("Submitted"))
+                  .toList();
+            });
+    when(cromwellService.workflowExists(anyString())).thenReturn(false);
+  }
+
+  @Test
+  void submitsFiftyThousandRecords() throws Exception {
+    List<String> recordIds =
+        IntStream.range(0, RECORD_COUNT).mapToObj(i -> "RECORD_" + i).toList();
+    RunSetRequest request =
+        new RunSetRequest()
+            .runSetName("fetch_sra_to_bam workflow")
+            .methodVersionId(methodVersion.methodVersionId())
+            .workflowInputDefinitions(List.of())
+            .workflowOutputDefinitions(List.of())
+            .wdsRecords(new WdsRecordSet().recordType("sample").recordIds(recordIds));
+    RunSet runSet =
+        runSetsService
+            .registerLargeRunSetAndQueueSubmission(
+                request, user, methodVersion, methodVersion.url(), userToken)
+            .runSet();
+
+    SubmissionJob job = submissionJobDao.claimNextJob("worker", LEASE_SECONDS).orElseThrow();
+    largeRunSetsService.submitLargeRunSet(job, "worker", LEASE_SECONDS, () -> {});
+
+    assertEquals(RECORD_COUNT, countRuns(runSet.runSetId(), CbasRunStatus.INITIALIZING));
+    assertEquals(RECORD_COUNT, countRuns(runSet.runSetId(), null));
+    assertEquals(
+        RECORD_COUNT, submissionJobDao.getJob(runSet.runSetId()).orElseThrow().recordsRegistered());
+    RunSet submitted = runSetDao.getRunSet(runSet.runSetId());
+    assertEquals(CbasRunSetStatus.RUNNING, submitted.status());
+    assertEquals(RECORD_COUNT, submitted.runCount());
+  }
+
+  private int countRuns(UUID runSetId, CbasRunStatus status) {
+    MapSqlParameterSource params = new MapSqlParameterSource(RunSet.RUN_SET_ID_COL, runSetId);
+    String sql = "SELECT count(1) FROM run WHERE run_set_id = :run_set_id";
+    if (status != null) {
+      sql += " AND status = :status";
+      params.addValue("status", status.toString());
+    }
+    return jdbcTemplate.queryForObject(sql, params, Integer.class);
+  }
+}
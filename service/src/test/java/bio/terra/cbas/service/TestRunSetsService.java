@@ -4,14 +4,20 @@ import static bio.terra.cbas.models.CbasRunStatus.QUEUED;
 import static bio.terra.cbas.models.CbasRunStatus.SYSTEM_ERROR;
 import static org.hamcrest.MatcherAssert.assertThat;
 import static org.hamcrest.Matchers.containsString;
+import static org.hamcrest.Matchers.startsWith;
 import static org.junit.jupiter.api.Assertions.assertEquals;
 import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
 import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.ArgumentMatchers.anyBoolean;
+import static org.mockito.ArgumentMatchers.anyInt;
+import static org.mockito.ArgumentMatchers.argThat;
 import static org.mockito.ArgumentMatchers.eq;
-import static org.mockito.ArgumentMatchers.startsWith;
+import static org.mockito.Mockito.atLeast;
 import static org.mockito.Mockito.atMostOnce;
 import static org.mockito.Mockito.mock;
 import static org.mockito.Mockito.never;
+import static org.mockito.Mockito.times;
 import static org.mockito.Mockito.verify;
 import static org.mockito.Mockito.verifyNoInteractions;
 import static org.mockito.Mockito.when;
@@ -19,12 +25,15 @@ import static org.mockito.Mockito.when;
 import bio.terra.cbas.common.MicrometerMetrics;
 import bio.terra.cbas.common.exceptions.DatabaseConnectivityException.RunCreationException;
 import bio.terra.cbas.common.exceptions.DatabaseConnectivityException.RunSetCreationException;
+import bio.terra.cbas.config.AsyncCromwellSubmissionConfiguration;
 import bio.terra.cbas.config.CbasApiConfiguration;
 import bio.terra.cbas.config.CbasContextConfiguration;
+import bio.terra.cbas.config.SubmissionPipelineConfiguration;
 import bio.terra.cbas.dao.MethodDao;
 import bio.terra.cbas.dao.MethodVersionDao;
 import bio.terra.cbas.dao.RunDao;
 import bio.terra.cbas.dao.RunSetDao;
+import bio.terra.cbas.dao.SubmissionJobDao;
 import bio.terra.cbas.dependencies.bard.BardService;
 import bio.terra.cbas.dependencies.wds.WdsService;
 import bio.terra.cbas.dependencies.wes.CromwellService;
@@ -46,23 +55,34 @@ import bio.terra.cbas.models.CbasRunStatus;
 import bio.terra.cbas.models.GithubMethodDetails;
 import bio.terra.cbas.models.Method;
 import bio.terra.cbas.models.MethodVersion;
+import bio.terra.cbas.models.RegisterRunSetResponse;
 import bio.terra.cbas.models.Run;
 import bio.terra.cbas.models.RunSet;
+import bio.terra.cbas.models.SubmissionJob;
+import bio.terra.cbas.models.SubmissionJobStatus;
+import bio.terra.cbas.runsets.submission.SubmissionLeaseLostException;
 import bio.terra.cbas.util.UuidSource;
 import bio.terra.common.iam.BearerToken;
 import com.fasterxml.jackson.databind.ObjectMapper;
 import cromwell.client.model.WorkflowIdAndStatus;
 import java.time.OffsetDateTime;
+import java.util.Collection;
 import java.util.HashMap;
 import java.util.List;
 import java.util.Map;
 import java.util.Optional;
+import java.util.Set;
 import java.util.UUID;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.function.Function;
+import java.util.stream.Collectors;
 import org.broadinstitute.dsde.workbench.client.sam.model.UserStatusInfo;
 import org.databiosphere.workspacedata.model.RecordAttributes;
 import org.databiosphere.workspacedata.model.RecordResponse;
 import org.junit.jupiter.api.BeforeEach;
 import org.junit.jupiter.api.Test;
+import org.mockito.ArgumentCaptor;
+import org.springframework.core.task.SimpleAsyncTaskExecutor;
 
 class TestRunSetsService {
 
@@ -237,6 +257,9 @@ class TestRunSetsService {
   private CbasContextConfiguration cbasContextConfiguration;
   private MicrometerMetrics micrometerMetrics;
   private BardService bardService;
+  private SubmissionPipelineConfiguration submissionPipelineConfiguration;
+  private AsyncCromwellSubmissionConfiguration asyncCromwellSubmissionConfiguration;
+  private SubmissionJobDao submissionJobDao;
 
   private RunSetsService mockRunSetsService;
 
@@ -254,6 +277,10 @@ class TestRunSetsService {
     cbasContextConfiguration = mock(CbasContextConfiguration.class);
     micrometerMetrics = mock(MicrometerMetrics.class);
     bardService = mock(BardService.class);
+    submissionPipelineConfiguration = mock(SubmissionPipelineConfiguration.class);
+    asyncCromwellSubmissionConfiguration = mock(AsyncCromwellSubmissionConfiguration.class);
+    when(asyncCromwellSubmissionConfiguration.getMaxBatchesInFlight()).thenReturn(1);
+    submissionJobDao = mock(SubmissionJobDao.class);
 
     mockRunSetsService =
         new RunSetsService(
@@ -268,7 +295,45 @@ class TestRunSetsService {
             objectMapper,
             cbasContextConfiguration,
             micrometerMetrics,
-            bardService);
+            bardService,
+            submissionPipelineConfiguration,
+            new SimpleAsyncTaskExecutor("TestSubmissionPipeline-"),
+            asyncCromwellSubmissionConfiguration,
+            new SimpleAsyncTaskExecutor("TestCromwellSubmission-"),
+            submissionJobDao);
+  }
+
+  // The runs of all the records are QUEUED, as looked up batch by batch by the submission pipeline
+  private void stubQueuedRunIds() {
+    when(runDao.getQueuedRunIds(eq(runSetId), any()))
+        .thenAnswer(
+            i -> {
+              Collection<String> recordIds = i.getArgument(1);
+              return recordIds.stream()
+                  .collect(Collectors.toMap(Function.identity(), recordIdToRunIdMapping::get));
+            });
+  }
+
+  // Runs moved to Initializing state, across all the bulk updates made during the test
+  @SuppressWarnings("unchecked")
+  private Map<UUID, UUID> initializedRuns() {
+    ArgumentCaptor<Map<UUID, UUID>> captor = ArgumentCaptor.forClass(Map.class);
+    verify(runDao, atLeast(0))
+        .updateEngineIdsAndRunStatus(captor.capture(), eq(CbasRunStatus.INITIALIZING), any());
+    Map<UUID, UUID> runIdToEngineId = new HashMap<>();
+    captor.getAllValues().forEach(runIdToEngineId::putAll);
+    return runIdToEngineId;
+  }
+
+  // Runs moved to System Error state, across all the bulk updates made during the test
+  @SuppressWarnings("unchecked")
+  private Map<UUID, String> failedRuns() {
+    ArgumentCaptor<Map<UUID, String>> captor = ArgumentCaptor.forClass(Map.class);
+    verify(runDao, atLeast(0))
+        .updateRunStatusesWithErrors(captor.capture(), eq(SYSTEM_ERROR), any());
+    Map<UUID, String> runIdToError = new HashMap<>();
+    captor.getAllValues().forEach(runIdToError::putAll);
+    return runIdToError;
   }
 
   @Test
@@ -307,12 +372,8 @@ class TestRunSetsService {
         null);
 
     // verify that Runs were set to Initializing state
-    verify(runDao)
-        .updateEngineIdAndRunStatus(
-            eq(runId1), eq(engineId1), eq(CbasRunStatus.INITIALIZING), any());
-    verify(runDao)
-        .updateEngineIdAndRunStatus(
-            eq(runId2), eq(engineId2), eq(CbasRunStatus.INITIALIZING), any());
+    assertEquals(engineId1, initializedRuns().get(runId1));
+    assertEquals(engineId2, initializedRuns().get(runId2));
 
     // verify that RunSet was set to Running state
     verify(runSetDao)
@@ -321,11 +382,64 @@ class TestRunSetsService {
 
     String eventName = "workflow-submission";
     HashMap<String, String> properties =
-        mockRunSetsService.getRunSetEventProperties(
-            runSetRequest, methodVersion, List.of(engineId1.toString(), engineId2.toString()));
+        mockRunSetsService.getRunSetEventProperties(runSetRequest, methodVersion);
     verify(bardService).logEvent(eventName, properties, mockToken);
   }
 
+  @Test
+  void streamedInputsJsonSubmittedToCromwell() throws Exception {
+    when(wdsService.getRecords(eq(recordType), eq(List.of(recordId1, recordId2)), any()))
+        .thenReturn(
+            new WdsService.WdsRecordResponseDetails(
+                List.of(
+                    new RecordResponse()
+                        .type(recordType)
+                        .id(recordId1)
+                        .attributes(recordAttributes1),
+                    new RecordResponse()
+                        .type(recordType)
+                        .id(recordId2)
+                        .attributes(recordAttributes2)),
+                Map.of()));
+
+    Map<UUID, String> submittedInputs = new HashMap<>();
+    when(cromwellService.submitWorkflowBatch(eq(mockWorkflowUrl), any(), any(), any()))
+        .thenAnswer(
+            invocation -> {
+              Map<UUID, String> engineIdToWorkflowInput = invocation.getArgument(1);
+              submittedInputs.putAll(engineIdToWorkflowInput);
+              return engineIdToWorkflowInput.keySet().stream()
+                  .map(
+                      engineId ->
+                          new WorkflowIdAndStatus().id(engineId.toString()).status("Running"))
+                  .toList();
+            });
+
+    when(cbasApiConfiguration.getMaxWorkflowsInBatch()).thenReturn(10);
+    when(cbasApiConfiguration.isStreamInputsJson()).thenReturn(true);
+    when(uuidSource.generateUUID()).thenReturn(engineId1).thenReturn(engineId2);
+
+    mockRunSetsService.triggerWorkflowSubmission(
+        runSetRequest,
+        runSet,
+        recordIdToRunIdMapping,
+        mockToken,
+        mockWorkflowUrl,
+        methodVersion,
+        null);
+
+    // inputs are written in definition order, straight from the records
+    assertEquals(
+        Map.of(
+            engineId1,
+            "{\"myworkflow.mycall.inputname1\":\"literal value\",\"myworkflow.mycall.inputname2\":\"hello\"}",
+            engineId2,
+            "{\"myworkflow.mycall.inputname1\":\"literal value\",\"myworkflow.mycall.inputname2\":\"world\"}"),
+        submittedInputs);
+    assertEquals(engineId1, initializedRuns().get(runId1));
+    assertEquals(engineId2, initializedRuns().get(runId2));
+  }
+
   @Test
   void wdsErrorDuringSubmission() {
     // Set up WDS API responses
@@ -352,20 +466,12 @@ class TestRunSetsService {
         null);
 
     // verify that both Runs were set to Error state with correct error message
-    verify(runDao)
-        .updateRunStatusWithError(
-            eq(runId1),
-            eq(SYSTEM_ERROR),
-            any(),
-            eq(
-                "Error while fetching WDS Records for Record ID(s): {MY_RECORD_ID_2=ApiException thrown for testing purposes.}"));
-    verify(runDao)
-        .updateRunStatusWithError(
-            eq(runId2),
-            eq(SYSTEM_ERROR),
-            any(),
-            eq(
-                "Error while fetching WDS Records for Record ID(s): {MY_RECORD_ID_2=ApiException thrown for testing purposes.}"));
+    assertEquals(
+        "Error while fetching WDS Records for Record ID(s): {MY_RECORD_ID_2=ApiException thrown for testing purposes.}",
+        failedRuns().get(runId1));
+    assertEquals(
+        "Error while fetching WDS Records for Record ID(s): {MY_RECORD_ID_2=ApiException thrown for testing purposes.}",
+        failedRuns().get(runId2));
 
     // verify that RunSet was set to Error state
     verify(runSetDao)
@@ -416,20 +522,12 @@ class TestRunSetsService {
         null);
 
     // verify Runs were set to Error state
-    verify(runDao)
-        .updateRunStatusWithError(
-            eq(runId1),
-            eq(SYSTEM_ERROR),
-            any(),
-            eq(
-                "Input generation failed for record MY_RECORD_ID_1. Coercion error: Coercion from Integer to String failed for parameter myworkflow.mycall.inputname2. Coercion not supported between these types."));
-    verify(runDao)
-        .updateRunStatusWithError(
-            eq(runId2),
-            eq(SYSTEM_ERROR),
-            any(),
-            eq(
-                "Input generation failed for record MY_RECORD_ID_2. Coercion error: Coercion from Integer to String failed for parameter myworkflow.mycall.inputname2. Coercion not supported between these types."));
+    assertEquals(
+        "Input generation failed for record MY_RECORD_ID_1. Coercion error: Coercion from Integer to String failed for parameter myworkflow.mycall.inputname2. Coercion not supported between these types.",
+        failedRuns().get(runId1));
+    assertEquals(
+        "Input generation failed for record MY_RECORD_ID_2. Coercion error: Coercion from Integer to String failed for parameter myworkflow.mycall.inputname2. Coercion not supported between these types.",
+        failedRuns().get(runId2));
 
     // verify that RunSet was set to Error state
     verify(runSetDao)
@@ -473,18 +571,227 @@ class TestRunSetsService {
         null);
 
     // verify that Run 1 was set to Error state
-    verify(runDao)
-        .updateRunStatusWithError(
-            eq(runId1),
-            eq(SYSTEM_ERROR),
-            any(),
-            startsWith(
-                "Cromwell submission failed for batch in RunSet %s. ApiException: Message: ApiException thrown on purpose for testing purposes."
-                    .formatted(runSetId)));
+    assertThat(
+        failedRuns().get(runId1),
+        startsWith(
+            "Cromwell submission failed for batch in RunSet %s. ApiException: Message: ApiException thrown on purpose for testing purposes."
+                .formatted(runSetId)));
     // verify that Run 2 was set to Initializing state
-    verify(runDao)
-        .updateEngineIdAndRunStatus(
-            eq(runId2), eq(engineId2), eq(CbasRunStatus.INITIALIZING), any());
+    assertEquals(engineId2, initializedRuns().get(runId2));
+
+    // verify that RunSet was set to Running state with appropriate error count
+    verify(runSetDao)
+        .updateStateAndRunSetDetails(
+            eq(runSetId), eq(CbasRunSetStatus.RUNNING), eq(2), eq(1), any());
+  }
+
+  @Test
+  void concurrentBatchSubmissionLaunchesSuccessfully() throws Exception {
+    when(asyncCromwellSubmissionConfiguration.getMaxBatchesInFlight()).thenReturn(2);
+    when(cbasApiConfiguration.getMaxWorkflowsInBatch()).thenReturn(1);
+
+    when(wdsService.getRecords(eq(recordType), eq(List.of(recordId1, recordId2)), any()))
+        .thenReturn(
+            new WdsService.WdsRecordResponseDetails(
+                List.of(
+                    new RecordResponse()
+                        .type(recordType)
+                        .id(recordId1)
+                        .attributes(recordAttributes1),
+                    new RecordResponse()
+                        .type(recordType)
+                        .id(recordId2)
+                        .attributes(recordAttributes2)),
+                Map.of()));
+
+    // each batch gets back the engine ID it was submitted with, whichever order they complete in
+    when(cromwellService.submitWorkflowBatch(eq(mockWorkflowUrl), any(), any(), any()))
+        .thenAnswer(
+            invocation -> {
+              Map<UUID, String> engineIdToWorkflowInput = invocation.getArgument(1);
+              return engineIdToWorkflowInput.keySet().stream()
+                  .map(
+                      engineId ->
+                          new WorkflowIdAndStatus().id(engineId.toString()).status("Running"))
+                  .toList();
+            });
+    when(uuidSource.generateUUID()).thenReturn(engineId1).thenReturn(engineId2);
+
+    mockRunSetsService.triggerWorkflowSubmission(
+        runSetRequest,
+        runSet,
+        recordIdToRunIdMapping,
+        mockToken,
+        mockWorkflowUrl,
+        methodVersion,
+        null);
+
+    // verify that Runs were set to Initializing state
+    assertEquals(engineId1, initializedRuns().get(runId1));
+    assertEquals(engineId2, initializedRuns().get(runId2));
+
+    // verify that first and last batch timers were recorded
+    verify(micrometerMetrics)
+        .stopTimer(
+            any(),
+            eq("cromwell_submit_first_batch_timer"),
+            eq(RunSet.RUN_SET_ID_COL),
+            eq(runSetId.toString()),
+            eq("max_batches_in_flight"),
+            eq("2"));
+    verify(micrometerMetrics)
+        .stopTimer(
+            any(),
+            eq("cromwell_submit_last_batch_timer"),
+            eq(RunSet.RUN_SET_ID_COL),
+            eq(runSetId.toString()),
+            eq("max_batches_in_flight"),
+            eq("2"));
+
+    // verify that RunSet was set to Running state
+    verify(runSetDao)
+        .updateStateAndRunSetDetails(
+            eq(runSetId), eq(CbasRunSetStatus.RUNNING), eq(2), eq(0), any());
+  }
+
+  @Test
+  void concurrentBatchSubmissionRecordsStartedBatchesWhenOneFails() throws Exception {
+    when(asyncCromwellSubmissionConfiguration.getMaxBatchesInFlight()).thenReturn(2);
+    when(cbasApiConfiguration.getMaxWorkflowsInBatch()).thenReturn(1);
+
+    when(wdsService.getRecords(eq(recordType), eq(List.of(recordId1, recordId2)), any()))
+        .thenReturn(
+            new WdsService.WdsRecordResponseDetails(
+                List.of(
+                    new RecordResponse()
+                        .type(recordType)
+                        .id(recordId1)
+                        .attributes(recordAttributes1),
+                    new RecordResponse()
+                        .type(recordType)
+                        .id(recordId2)
+                        .attributes(recordAttributes2)),
+                Map.of()));
+
+    // the first batch fails unexpectedly, the second one is submitted
+    when(cromwellService.submitWorkflowBatch(eq(mockWorkflowUrl), any(), any(), any()))
+        .thenAnswer(
+            invocation -> {
+              Map<UUID, String> engineIdToWorkflowInput = invocation.getArgument(1);
+              if (engineIdToWorkflowInput.containsKey(engineId1)) {
+                throw new IllegalStateException("Unexpected failure");
+              }
+              return List.of(new WorkflowIdAndStatus().id(engineId2.toString()).status("Running"));
+            });
+    when(uuidSource.generateUUID()).thenReturn(engineId1).thenReturn(engineId2);
+
+    assertThrows(
+        IllegalStateException.class,
+        () ->
+            mockRunSetsService.triggerWorkflowSubmission(
+                runSetRequest,
+                runSet,
+                recordIdToRunIdMapping,
+                mockToken,
+                mockWorkflowUrl,
+                methodVersion,
+                null));
+
+    // the batch that was submitted is recorded, whichever batch completed first
+    assertEquals(Map.of(runId2, engineId2), initializedRuns());
+    verify(cromwellService, times(2)).submitWorkflowBatch(eq(mockWorkflowUrl), any(), any(), any());
+  }
+
+  @Test
+  void pipelinedSubmissionLaunchesSuccessfully() throws Exception {
+    when(submissionPipelineConfiguration.isEnabled()).thenReturn(true);
+    when(submissionPipelineConfiguration.getQueueCapacity()).thenReturn(1);
+    when(cbasApiConfiguration.getMaxWorkflowsInBatch()).thenReturn(1);
+    stubQueuedRunIds();
+
+    // each batch of 1 record is fetched from WDS separately
+    when(wdsService.getRecords(eq(recordType), eq(List.of(recordId1)), any()))
+        .thenReturn(
+            new WdsService.WdsRecordResponseDetails(
+                List.of(
+                    new RecordResponse()
+                        .type(recordType)
+                        .id(recordId1)
+                        .attributes(recordAttributes1)),
+                Map.of()));
+    when(wdsService.getRecords(eq(recordType), eq(List.of(recordId2)), any()))
+        .thenReturn(
+            new WdsService.WdsRecordResponseDetails(
+                List.of(
+                    new RecordResponse()
+                        .type(recordType)
+                        .id(recordId2)
+                        .attributes(recordAttributes2)),
+                Map.of()));
+
+    when(cromwellService.submitWorkflowBatch(eq(mockWorkflowUrl), any(), any(), any()))
+        .thenReturn(List.of(new WorkflowIdAndStatus().id(engineId1.toString()).status("Running")))
+        .thenReturn(List.of(new WorkflowIdAndStatus().id(engineId2.toString()).status("Running")));
+    when(uuidSource.generateUUID()).thenReturn(engineId1).thenReturn(engineId2);
+
+    mockRunSetsService.triggerWorkflowSubmission(
+        runSetRequest,
+        runSet,
+        recordIdToRunIdMapping,
+        mockToken,
+        mockWorkflowUrl,
+        methodVersion,
+        null);
+
+    // verify that Runs were set to Initializing state
+    assertEquals(engineId1, initializedRuns().get(runId1));
+    assertEquals(engineId2, initializedRuns().get(runId2));
+
+    // verify that RunSet was set to Running state
+    verify(runSetDao)
+        .updateStateAndRunSetDetails(
+            eq(runSetId), eq(CbasRunSetStatus.RUNNING), eq(2), eq(0), any());
+  }
+
+  @Test
+  void pipelinedSubmissionWdsErrorOnlyFailsAffectedRuns() throws Exception {
+    when(submissionPipelineConfiguration.isEnabled()).thenReturn(true);
+    when(submissionPipelineConfiguration.getQueueCapacity()).thenReturn(1);
+    when(cbasApiConfiguration.getMaxWorkflowsInBatch()).thenReturn(1);
+    stubQueuedRunIds();
+
+    when(wdsService.getRecords(eq(recordType), eq(List.of(recordId1)), any()))
+        .thenReturn(
+            new WdsService.WdsRecordResponseDetails(
+                List.of(
+                    new RecordResponse()
+                        .type(recordType)
+                        .id(recordId1)
+                        .attributes(recordAttributes1)),
+                Map.of()));
+    when(wdsService.getRecords(eq(recordType), eq(List.of(recordId2)), any()))
+        .thenReturn(
+            new WdsService.WdsRecordResponseDetails(
+                List.of(), Map.of(recordId2, "ApiException thrown for testing purposes.")));
+
+    when(cromwellService.submitWorkflowBatch(eq(mockWorkflowUrl), any(), any(), any()))
+        .thenReturn(List.of(new WorkflowIdAndStatus().id(engineId1.toString()).status("Running")));
+    when(uuidSource.generateUUID()).thenReturn(engineId1);
+
+    mockRunSetsService.triggerWorkflowSubmission(
+        runSetRequest,
+        runSet,
+        recordIdToRunIdMapping,
+        mockToken,
+        mockWorkflowUrl,
+        methodVersion,
+        null);
+
+    // verify that Run 1 was submitted and Run 2 was set to Error state
+    assertEquals(engineId1, initializedRuns().get(runId1));
+    assertEquals(
+        "Error while fetching WDS Record for Record ID MY_RECORD_ID_2: ApiException thrown for testing purposes.",
+        failedRuns().get(runId2));
 
     // verify that RunSet was set to Running state with appropriate error count
     verify(runSetDao)
@@ -526,9 +833,283 @@ class TestRunSetsService {
     verify(methodVersionDao, never()).updateLastRunWithRunSet(any());
   }
 
+  @Test
+  void registerRunSetAndRunsSuccess() throws Exception {
+    when(uuidSource.generateUUID()).thenReturn(runSetId);
+    when(runSetDao.createRunSet(any())).thenReturn(1);
+    when(runDao.createRuns(any())).thenReturn(2);
+
+    RegisterRunSetResponse actualResponse =
+        mockRunSetsService.registerRunSetAndRuns(
+            runSetRequest, mockUser, methodVersion, recordIdToRunIdMapping);
+
+    assertEquals(runSetId, actualResponse.runSet().runSetId());
+    assertEquals(2, actualResponse.runStateResponseList().size());
+    verify(runDao).createRuns(argThat(runs -> runs.size() == 2));
+  }
+
+  @Test
+  void registerRunSetAndQueueSubmissionQueuesJob() throws Exception {
+    when(uuidSource.generateUUID()).thenReturn(runSetId);
+    when(runSetDao.createRunSet(any())).thenReturn(1);
+    when(runDao.createRuns(any())).thenReturn(2);
+    when(objectMapper.writeValueAsString(runSetRequest)).thenReturn("run-set-request-json");
+    when(submissionJobDao.createJob(any(), any(), any(), any(), anyBoolean(), anyInt()))
+        .thenReturn(1);
+
+    RegisterRunSetResponse actualResponse =
+        mockRunSetsService.registerRunSetAndQueueSubmission(
+            runSetRequest,
+            mockUser,
+            methodVersion,
+            recordIdToRunIdMapping,
+            mockWorkflowUrl,
+            mockToken);
+
+    assertEquals(runSetId, actualResponse.runSet().runSetId());
+    assertEquals(2, actualResponse.runStateResponseList().size());
+    verify(submissionJobDao)
+        .createJob(
+            runSetId, "run-set-request-json", mockWorkflowUrl, mockToken.getToken(), false, 0);
+    // nothing is submitted until a worker claims the job
+    verifyNoInteractions(wdsService, cromwellService);
+  }
+
+  @Test
+  void registerLargeRunSetAndQueueSubmissionRegistersFirstChunk() throws Exception {
+    when(uuidSource.generateUUID()).thenReturn(runSetId, runId1);
+    when(runSetDao.createRunSet(any())).thenReturn(1);
+    when(runDao.createRuns(any())).thenReturn(1);
+    when(cbasApiConfiguration.getLargeRunSetsChunkSize()).thenReturn(1);
+    when(objectMapper.writeValueAsString(runSetRequest)).thenReturn("run-set-request-json");
+    when(submissionJobDao.createJob(any(), any(), any(), any(), anyBoolean(), anyInt()))
+        .thenReturn(1);
+
+    RegisterRunSetResponse actualResponse =
+        mockRunSetsService.registerLargeRunSetAndQueueSubmission(
+            runSetRequest, mockUser, methodVersion, mockWorkflowUrl, mockToken);
+
+    assertEquals(runSetId, actualResponse.runSet().runSetId());
+    assertEquals(
+        List.of(runId1),
+        actualResponse.runStateResponseList().stream().map(RunStateResponse::getRunId).toList());
+    verify(runDao)
+        .createRuns(
+            argThat(
+                runs ->
+                    runs.stream().map(Run::recordId).toList().equals(List.of(recordId1))
+                        && runs.stream().allMatch(run -> run.status() == QUEUED)));
+    // the other runs are registered chunk by chunk once a worker claims the job
+    verify(submissionJobDao)
+        .createJob(
+            runSetId, "run-set-request-json", mockWorkflowUrl, mockToken.getToken(), true, 1);
+  }
+
+  @Test
+  void registerLargeRunSetOfAllRecordsRegistersNoRuns() throws Exception {
+    RunSetRequest allRecordsRequest =
+        new RunSetRequest()
+            .runSetName("mock-run-set")
+            .methodVersionId(methodVersionId)
+            .workflowInputDefinitions(List.of(input1, input2))
+            .wdsRecords(new WdsRecordSet().recordType(recordType).allRecords(true));
+    when(uuidSource.generateUUID()).thenReturn(runSetId);
+    when(runSetDao.createRunSet(any())).thenReturn(1);
+    when(cbasApiConfiguration.getLargeRunSetsChunkSize()).thenReturn(1);
+    when(objectMapper.writeValueAsString(allRecordsRequest)).thenReturn("run-set-request-json");
+    when(submissionJobDao.createJob(any(), any(), any(), any(), anyBoolean(), anyInt()))
+        .thenReturn(1);
+
+    RegisterRunSetResponse actualResponse =
+        mockRunSetsService.registerLargeRunSetAndQueueSubmission(
+            allRecordsRequest, mockUser, methodVersion, mockWorkflowUrl, mockToken);
+
+    assertEquals(List.of(), actualResponse.runStateResponseList());
+    verify(submissionJobDao)
+        .createJob(
+            runSetId, "run-set-request-json", mockWorkflowUrl, mockToken.getToken(), true, 0);
+    // the records are only read once a worker claims the job
+    verifyNoInteractions(wdsService);
+  }
+
+  @Test
+  void registerRunChunkRegistersQueuedRunsAndRecordsProgress() throws Exception {
+    when(uuidSource.generateUUID()).thenReturn(runId1, runId2);
+    when(runDao.createRuns(any())).thenReturn(2);
+    when(submissionJobDao.recordRunsRegistered(runSetId, "worker", 2, 120)).thenReturn(1);
+
+    mockRunSetsService.registerRunChunk(runSet, List.of(recordId1, recordId2), "worker", 120);
+
+    verify(runDao)
+        .createRuns(
+            argThat(
+                runs ->
+                    runs.stream().map(Run::recordId).toList().equals(List.of(recordId1, recordId2))
+                        && runs.stream().allMatch(run -> run.status() == QUEUED)));
+    verify(submissionJobDao).recordRunsRegistered(runSetId, "worker", 2, 120);
+  }
+
+  @Test
+  void registerRunChunkFailsWhenLeaseIsLost() {
+    when(uuidSource.generateUUID()).thenReturn(runId1, runId2);
+    when(submissionJobDao.recordRunsRegistered(runSetId, "worker", 2, 120)).thenReturn(0);
+
+    List<String> chunk = List.of(recordId1, recordId2);
+    assertThrows(
+        SubmissionLeaseLostException.class,
+        () -> mockRunSetsService.registerRunChunk(runSet, chunk, "worker", 120));
+    // the lease is checked before any run is registered
+    verify(runDao, never()).createRuns(any());
+  }
+
+  @Test
+  void submitQueuedRunsDoesNothingWithoutQueuedRuns() {
+    when(runDao.getQueuedRunIds(runSetId)).thenReturn(Map.of());
+
+    assertEquals(
+        Optional.empty(),
+        mockRunSetsService.submitQueuedRuns(
+            runSet, runSetRequest, mockWorkflowUrl, mockToken, () -> {}));
+    verifyNoInteractions(wdsService, cromwellService);
+  }
+
+  @Test
+  void cancelQueuedRunsCancelsRunsNotSubmittedYet() {
+    when(runDao.getRuns(new RunDao.RunsFilters(runSetId, List.of(QUEUED))))
+        .thenReturn(List.of(run2));
+
+    mockRunSetsService.cancelQueuedRuns(runSetId);
+
+    verify(runDao)
+        .updateRunStatusesWithErrors(
+            eq(Map.of(runId2, "Run Set was canceled before the run was submitted.")),
+            eq(CbasRunStatus.CANCELED),
+            any());
+    verify(runSetDao, never()).updateStateAndRunSetDetails(any(), any(), any(), any(), any());
+  }
+
+  @Test
+  void queuedRunSetResumesWithRunsStillQueued() throws Exception {
+    // run 1 was submitted by an earlier attempt, only run 2 is left
+    SubmissionJob job = queuedJob(2);
+    when(runSetDao.getRunSet(runSetId)).thenReturn(runSet);
+    when(objectMapper.readValue("run-set-request-json", RunSetRequest.class))
+        .thenReturn(runSetRequest);
+    when(runDao.getQueuedRunIds(runSetId)).thenReturn(Map.of(recordId2, runId2));
+    when(wdsService.getRecords(eq(recordType), eq(List.of(recordId2)), any()))
+        .thenReturn(
+            new WdsService.WdsRecordResponseDetails(
+                List.of(
+                    new RecordResponse()
+                        .type(recordType)
+                        .id(recordId2)
+                        .attributes(recordAttributes2)),
+                Map.of()));
+    when(cromwellService.submitWorkflowBatch(eq(mockWorkflowUrl), any(), any(), any()))
+        .thenReturn(List.of(new WorkflowIdAndStatus().id(engineId2.toString()).status("Running")));
+    when(cbasApiConfiguration.getMaxWorkflowsInBatch()).thenReturn(10);
+    when(uuidSource.generateUUID()).thenReturn(engineId2);
+    when(runDao.getRunSetStatusCounts(runSetId))
+        .thenReturn(
+            Map.of(
+                CbasRunStatus.INITIALIZING,
+                new RunDao.StatusCountRecord(CbasRunStatus.INITIALIZING, 2, OffsetDateTime.now())));
+
+    AtomicInteger batchesRecorded = new AtomicInteger();
+    mockRunSetsService.submitQueuedRunSet(job, batchesRecorded::incrementAndGet);
+
+    assertEquals(Map.of(runId2, engineId2), initializedRuns());
+    assertEquals(1, batchesRecorded.get());
+    verify(wdsService, never()).getRecords(any(), eq(List.of(recordId1, recordId2)), any());
+
+    // the Run Set counts include the Run submitted by the earlier attempt
+    verify(runSetDao)
+        .updateStateAndRunSetDetails(
+            eq(runSetId), eq(CbasRunSetStatus.RUNNING), eq(2), eq(0), any());
+    verify(bardService).logEvent(eq("workflow-submission"), any(), eq(mockToken));
+  }
+
+  @Test
+  void queuedRunSetRecordsRunsThatReachedCromwellInsteadOfSubmittingThemAgain() throws Exception {
+    // the previous worker went away after sending both runs to Cromwell, only run 1 got there
+    SubmissionJob job = queuedJob(2);
+    UUID previouslyRequestedEngineId2 = UUID.randomUUID();
+    when(runDao.getRequestedEngineIds(runSetId))
+        .thenReturn(Map.of(runId1, engineId1, runId2, previouslyRequestedEngineId2));
+    when(cromwellService.workflowExists(engineId1.toString())).thenReturn(true);
+    when(cromwellService.workflowExists(previouslyRequestedEngineId2.toString())).thenReturn(false);
+    when(runSetDao.getRunSet(runSetId)).thenReturn(runSet);
+    when(objectMapper.readValue("run-set-request-json", RunSetRequest.class))
+        .thenReturn(runSetRequest);
+    when(runDao.getQueuedRunIds(runSetId)).thenReturn(Map.of(recordId2, runId2));
+    when(wdsService.getRecords(eq(recordType), eq(List.of(recordId2)), any()))
+        .thenReturn(
+            new WdsService.WdsRecordResponseDetails(
+                List.of(
+                    new RecordResponse()
+                        .type(recordType)
+                        .id(recordId2)
+                        .attributes(recordAttributes2)),
+                Map.of()));
+    when(cromwellService.submitWorkflowBatch(eq(mockWorkflowUrl), any(), any(), any()))
+        .thenReturn(List.of(new WorkflowIdAndStatus().id(engineId2.toString()).status("Running")));
+    when(cbasApiConfiguration.getMaxWorkflowsInBatch()).thenReturn(10);
+    when(uuidSource.generateUUID()).thenReturn(engineId2);
+
+    mockRunSetsService.submitQueuedRunSet(job, () -> {});
+
+    assertEquals(Map.of(runId1, engineId1, runId2, engineId2), initializedRuns());
+    // the engine ID of run 2 is recorded before it is submitted again
+    verify(runDao).recordRequestedEngineIds(Map.of(runId2, engineId2));
+    verify(cromwellService)
+        .submitWorkflowBatch(
+            eq(mockWorkflowUrl),
+            argThat(inputs -> inputs.keySet().equals(Set.of(engineId2))),
+            any(),
+            any());
+  }
+
+  @Test
+  void failQueuedRunSetFailsRunsStillQueued() {
+    when(runDao.getRuns(new RunDao.RunsFilters(runSetId, List.of(QUEUED))))
+        .thenReturn(List.of(run2));
+    when(runDao.getRunSetStatusCounts(runSetId))
+        .thenReturn(
+            Map.of(
+                CbasRunStatus.INITIALIZING,
+                new RunDao.StatusCountRecord(CbasRunStatus.INITIALIZING, 1, OffsetDateTime.now()),
+                SYSTEM_ERROR,
+                new RunDao.StatusCountRecord(SYSTEM_ERROR, 1, OffsetDateTime.now())));
+
+    mockRunSetsService.failQueuedRunSet(runSetId, "Gave up");
+
+    assertEquals(Map.of(runId2, "Gave up"), failedRuns());
+    verify(runSetDao)
+        .updateStateAndRunSetDetails(
+            eq(runSetId), eq(CbasRunSetStatus.RUNNING), eq(2), eq(1), any());
+  }
+
+  private SubmissionJob queuedJob(int attempts) {
+    return new SubmissionJob(
+        runSetId,
+        SubmissionJobStatus.RUNNING,
+        "run-set-request-json",
+        mockWorkflowUrl,
+        mockToken.getToken(),
+        "worker",
+        OffsetDateTime.now().plusMinutes(2),
+        attempts,
+        1,
+        false,
+        0,
+        OffsetDateTime.now(),
+        OffsetDateTime.now(),
+        null);
+  }
+
   @Test
   void registerRunsInRunSetSuccess() throws Exception {
-    when(runDao.createRun(any())).thenReturn(1).thenReturn(1);
+    when(runDao.createRuns(any())).thenReturn(2);
 
     List<RunStateResponse> actualResponse =
         mockRunSetsService.registerRunsInRunSet(runSet, recordIdToRunIdMapping);
@@ -538,6 +1119,10 @@ class TestRunSetsService {
         .updateStateAndRunSetDetails(
             eq(runSetId), eq(CbasRunSetStatus.QUEUED), eq(2), eq(0), any());
 
+    // verify that all Runs were inserted in a single batch
+    verify(runDao, never()).createRun(any());
+    verify(runDao).createRuns(argThat(runs -> runs.size() == 2));
+
     assertEquals(2, actualResponse.size());
     assertEquals(RunState.QUEUED, actualResponse.get(0).getState());
     assertEquals(RunState.QUEUED, actualResponse.get(1).getState());
@@ -545,9 +1130,7 @@ class TestRunSetsService {
 
   @Test
   void registerRunsInRunSetFailure() {
-    when(runDao.createRun(any())).thenReturn(1).thenReturn(0);
-
-    when(runDao.getRuns(any())).thenReturn(List.of(run1));
+    when(runDao.createRuns(any())).thenReturn(1);
 
     RunCreationException exception =
         assertThrows(
@@ -555,13 +1138,12 @@ class TestRunSetsService {
             () -> mockRunSetsService.registerRunsInRunSet(runSet, recordIdToRunIdMapping));
 
     assertThat(exception.getMessage(), containsString("Failed to create new Run"));
+    assertThat(exception.getMessage(), containsString("Expected 2 Runs but created 1"));
 
-    // verify that 1 Run that were registered in DB are set to Error state
-    verify(runDao).updateRunStatusWithError(eq(run1.runId()), eq(SYSTEM_ERROR), any(), any());
-
-    // verify that RunSet is marked in Error state
-    verify(runSetDao)
-        .updateStateAndRunSetDetails(any(), eq(CbasRunSetStatus.ERROR), eq(1), eq(1), any());
+    // the exception rolls back the registration of the run set, so nothing is marked in Error
+    // state or counted in it
+    assertTrue(failedRuns().isEmpty());
+    verify(runSetDao, never()).updateStateAndRunSetDetails(any(), any(), anyInt(), anyInt(), any());
   }
 
   @Test
@@ -583,12 +1165,9 @@ class TestRunSetsService {
             .runSetName("testRun")
             .methodVersionId(dockstoreMethodVersion.methodVersionId())
             .wdsRecords(new WdsRecordSet().recordIds(List.of("1", "2", "3")));
-    List<String> cromwellWorkflowIds = List.of(UUID.randomUUID().toString());
-    Map<String, String> expectedProperties =
-        getDefaultProperties(request, dockstoreMethodVersion, cromwellWorkflowIds);
+    Map<String, String> expectedProperties = getDefaultProperties(request, dockstoreMethodVersion);
     Map<String, String> properties =
-        mockRunSetsService.getRunSetEventProperties(
-            request, dockstoreMethodVersion, cromwellWorkflowIds);
+        mockRunSetsService.getRunSetEventProperties(request, dockstoreMethodVersion);
     assertEquals(expectedProperties, properties);
   }
 
@@ -599,20 +1178,18 @@ class TestRunSetsService {
             .runSetName("testRun")
             .methodVersionId(methodVersion.methodVersionId())
             .wdsRecords(new WdsRecordSet().recordIds(List.of("1", "2", "3")));
-    List<String> cromwellWorkflowIds = List.of(UUID.randomUUID().toString());
-    Map<String, String> expectedProperties =
-        getDefaultProperties(request, methodVersion, cromwellWorkflowIds);
+    Map<String, String> expectedProperties = getDefaultProperties(request, methodVersion);
     GithubMethodDetails githubMethodDetails = methodVersion.method().githubMethodDetails().get();
     expectedProperties.put("githubOrganization", githubMethodDetails.organization());
     expectedProperties.put("githubRepository", githubMethodDetails.repository());
     expectedProperties.put("githubIsPrivate", githubMethodDetails.isPrivate().toString());
     Map<String, String> properties =
-        mockRunSetsService.getRunSetEventProperties(request, methodVersion, cromwellWorkflowIds);
+        mockRunSetsService.getRunSetEventProperties(request, methodVersion);
     assertEquals(expectedProperties, properties);
   }
 
   private HashMap<String, String> getDefaultProperties(
-      RunSetRequest request, MethodVersion methodVersion, List<String> cromwellWorkflowIds) {
+      RunSetRequest request, MethodVersion methodVersion) {
     HashMap<String, String> properties = new HashMap<>();
     properties.put("runSetName", request.getRunSetName());
     properties.put("methodName", methodVersion.method().name());
@@ -620,7 +1197,6 @@ class TestRunSetsService {
     properties.put("methodVersionName", methodVersion.name());
     properties.put("methodVersionUrl", methodVersion.url());
     properties.put("recordCount", String.valueOf(request.getWdsRecords().getRecordIds().size()));
-    properties.put("workflowIds", cromwellWorkflowIds.toString());
     return properties;
   }
 }
@@ -0,0 +1,187 @@
+package bio.terra.cbas.service;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+
+import bio.terra.cbas.dao.MethodDao;
+import bio.terra.cbas.dao.MethodVersionDao;
+import bio.terra.cbas.dao.SubmissionJobDao;
+import bio.terra.cbas.dao.util.ContainerizedDatabaseTest;
+import bio.terra.cbas.model.RunSetRequest;
+import bio.terra.cbas.model.WdsRecordSet;
+import bio.terra.cbas.models.CbasMethodStatus;
+import bio.terra.cbas.models.Method;
+import bio.terra.cbas.models.MethodVersion;
+import bio.terra.cbas.models.RegisterRunSetResponse;
+import bio.terra.cbas.models.RunSet;
+import bio.terra.cbas.runsets.submission.SubmissionLeaseLostException;
+import bio.terra.common.iam.BearerToken;
+import java.time.OffsetDateTime;
+import java.util.List;
+import java.util.Map;
+import java.util.Optional;
+import java.util.UUID;
+import org.broadinstitute.dsde.workbench.client.sam.model.UserStatusInfo;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.dao.DataIntegrityViolationException;
+import org.springframework.jdbc.core.namedparam.MapSqlParameterSource;
+import org.springframework.jdbc.core.namedparam.NamedParameterJdbcTemplate;
+
+/** Checks that run sets are registered all at once or not at all, against a real database. */
+class TestRunSetsServiceTransactions extends ContainerizedDatabaseTest {
+
+  @Autowired RunSetsService runSetsService;
+  @Autowired SubmissionJobDao submissionJobDao;
+  @Autowired MethodDao methodDao;
+  @Autowired MethodVersionDao methodVersionDao;
+  @Autowired NamedParameterJdbcTemplate jdbcTemplate;
+
+  private static final int LEASE_SECONDS = 120;
+
+  private final UUID workspaceId = UUID.randomUUID();
+
+  Method method =
+      new Method(
+          UUID.randomUUID(),
+          "fetch_sra_to_bam",
+          "fetch_sra_to_bam",
+          OffsetDateTime.parse("2023-01-27T19:21:24.563932Z"),
+          null,
+          "Github",
+          workspaceId,
+          Optional.empty(),
+          CbasMethodStatus.ACTIVE);
+
+  MethodVersion methodVersion =
+      new MethodVersion(
+          UUID.randomUUID(),
+          method,
+          "1.0",
+          "fetch_sra_to_bam sample submission",
+          OffsetDateTime.parse("2023-01-27T19:21:24.563932Z"),
+          null,
+          "https://raw.githubusercontent.com/broadinstitute/viral-pipelines/master/pipes/WDL/workflows/fetch_sra_to_bam.wdl",
+          workspaceId,
+          "develop",
+          Optional.empty());
+
+  private final UserStatusInfo user =
+      new UserStatusInfo()
+          .userEmail("realuser@gmail.com")
+          .userSubjectId("user-id-foo")
+          .enabled(true);
+
+  private final RunSetRequest runSetRequest =
+      new RunSetRequest()
+          .runSetName("fetch_sra_to_bam workflow")
+          .methodVersionId(methodVersion.methodVersionId())
+          .workflowInputDefinitions(List.of())
+          .workflowOutputDefinitions(List.of())
+          .wdsRecords(new WdsRecordSet().recordType("sample").recordIds(List.of("r1", "r2")));
+
+  @BeforeEach
+  void init() {
+    methodDao.createMethod(method);
+    methodVersionDao.createMethodVersion(methodVersion);
+  }
+
+  @Test
+  void failedRunInsertionLeavesNoRunSet() {
+    // Both records get the same run ID, so inserting the second run fails
+    UUID runId = UUID.randomUUID();
+    Map<String, UUID> recordIdToRunIdMapping = Map.of("r1", runId, "r2", runId);
+
+    assertThrows(
+        DataIntegrityViolationException.class,
+        () ->
+            runSetsService.registerRunSetAndRuns(
+                runSetRequest, user, methodVersion, recordIdToRunIdMapping));
+
+    assertEquals(0, countRows("run_set"));
+    assertEquals(0, countRows("run"));
+  }
+
+  @Test
+  void failedRunInsertionLeavesNoSubmissionJob() {
+    UUID runId = UUID.randomUUID();
+    Map<String, UUID> recordIdToRunIdMapping = Map.of("r1", runId, "r2", runId);
+    BearerToken userToken = new BearerToken("user-token");
+
+    assertThrows(
+        DataIntegrityViolationException.class,
+        () ->
+            runSetsService.registerRunSetAndQueueSubmission(
+                runSetRequest,
+                user,
+                methodVersion,
+                recordIdToRunIdMapping,
+                methodVersion.url(),
+                userToken));
+
+    assertEquals(0, countRows("run_set"));
+    assertEquals(0, countRows("submission_job"));
+  }
+
+  @Test
+  void registersFirstChunkOfRunsWithLargeRunSet() throws Exception {
+    RegisterRunSetResponse registered =
+        runSetsService.registerLargeRunSetAndQueueSubmission(
+            runSetRequest, user, methodVersion, methodVersion.url(), new BearerToken("user-token"));
+
+    assertEquals(2, registered.runStateResponseList().size());
+    assertEquals(2, countRows("run"));
+    UUID runSetId = registered.runSet().runSetId();
+    assertEquals(2, submissionJobDao.getJob(runSetId).orElseThrow().recordsRegistered());
+  }
+
+  @Test
+  void registersRunChunkWhileHoldingTheLease() throws Exception {
+    RunSet runSet = registerLargeRunSet();
+    submissionJobDao.claimNextJob("worker", LEASE_SECONDS);
+
+    runSetsService.registerRunChunk(runSet, List.of("r1", "r2"), "worker", LEASE_SECONDS);
+
+    assertEquals(2, countRows("run"));
+    assertEquals(2, submissionJobDao.getJob(runSet.runSetId()).orElseThrow().recordsRegistered());
+  }
+
+  @Test
+  void registersNoRunsOnceTheLeaseIsLost() throws Exception {
+    RunSet runSet = registerLargeRunSet();
+    submissionJobDao.claimNextJob("other-worker", LEASE_SECONDS);
+
+    List<String> chunk = List.of("r1", "r2");
+    assertThrows(
+        SubmissionLeaseLostException.class,
+        () -> runSetsService.registerRunChunk(runSet, chunk, "worker", LEASE_SECONDS));
+
+    assertEquals(0, countRows("run"));
+    assertEquals(0, submissionJobDao.getJob(runSet.runSetId()).orElseThrow().recordsRegistered());
+  }
+
+  /** Registers a large run set of all the records of a type, which has no runs until claimed. */
+  private RunSet registerLargeRunSet() throws Exception {
+    RunSetRequest allRecordsRequest =
+        new RunSetRequest()
+            .runSetName("fetch_sra_to_bam workflow")
+            .methodVersionId(methodVersion.methodVersionId())
+            .workflowInputDefinitions(List.of())
+            .workflowOutputDefinitions(List.of())
+            .wdsRecords(new WdsRecordSet().recordType("sample").allRecords(true));
+    return runSetsService
+        .registerLargeRunSetAndQueueSubmission(
+            allRecordsRequest,
+            user,
+            methodVersion,
+            methodVersion.url(),
+            new BearerToken("user-token"))
+        .runSet();
+  }
+
+  private int countRows(String table) {
+    return jdbcTemplate.queryForObject(
+        "SELECT count(1) FROM %s".formatted(table), new MapSqlParameterSource(), Integer.class);
+  }
+}